@@ -0,0 +1,76 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.bench;
+
+import java.io.InputStream;
+import java.util.HashMap;
+
+import com.threerings.config.ConfigGroup;
+import com.threerings.config.ConfigManager;
+import com.threerings.config.ManagedConfig;
+
+/**
+ * A config manager that requires no resources (and thus contains only the configurations added
+ * with {@link #addConfig}), so that benchmarks may initialize objects that require a config
+ * manager without any game data.  References to other configurations simply fail to resolve.
+ */
+public class HeadlessConfigManager extends ConfigManager
+{
+    /**
+     * Creates and initializes the config manager.
+     */
+    public HeadlessConfigManager ()
+    {
+        super(null, null, "config/");
+        init();
+    }
+
+    /**
+     * Adds a configuration under its current name, creating its (empty) group if necessary.
+     */
+    public <T extends ManagedConfig> void addConfig (Class<T> clazz, T config)
+    {
+        ConfigGroup<T> group = getGroup(clazz);
+        if (group == null) {
+            _groups.put(clazz, group = new ConfigGroup<T>(clazz) {
+                @Override
+                protected InputStream getConfigStream (String path) {
+                    return null; // no resources
+                }
+            });
+            group.init(this);
+        }
+        group.addConfig(config);
+    }
+
+    @Override
+    protected void loadManagerProperties ()
+    {
+        // no types, no groups, and no resource classes
+        _classes = new HashMap<String, Class<?>[]>();
+        _classes.put("resource", new Class<?>[0]);
+    }
+}
@@ -0,0 +1,183 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.bench;
+
+import java.io.File;
+
+import com.threerings.config.ConfigManager;
+import com.threerings.expr.DynamicScope;
+import com.threerings.media.image.ColorPository;
+import com.threerings.resource.ResourceManager;
+import com.threerings.util.MessageManager;
+
+import com.threerings.openal.ClipProvider;
+import com.threerings.openal.SoundManager;
+import com.threerings.opengl.GlApp;
+import com.threerings.opengl.camera.CameraHandler;
+import com.threerings.opengl.compositor.Compositor;
+import com.threerings.opengl.renderer.Renderer;
+import com.threerings.opengl.util.GlContext;
+import com.threerings.opengl.util.ImageCache;
+import com.threerings.opengl.util.ShaderCache;
+
+/**
+ * A stand-in for a GL context that has no display and no GL state, so that code that only loads
+ * resources (decoding images, merging geometry) may be measured headless.  It supplies a
+ * resource manager rooted at a directory of the caller's choosing, a
+ * {@link HeadlessConfigManager}, and an image cache; anything that would reach the renderer
+ * fails.
+ */
+public class HeadlessGlContext
+    implements GlContext
+{
+    /**
+     * Creates a context whose resources are loaded from the specified directory.
+     */
+    public HeadlessGlContext (File resourceDir)
+    {
+        String dir = resourceDir.getPath() + File.separator;
+        _rsrcmgr = new ResourceManager(dir);
+        _rsrcmgr.initResourceDir(dir);
+        _cfgmgr = new HeadlessConfigManager();
+        _imgcache = new ImageCache(this, false);
+    }
+
+    // documentation inherited from interface GlContext
+    public GlApp getApp ()
+    {
+        throw noGL();
+    }
+
+    // documentation inherited from interface GlContext
+    public DynamicScope getScope ()
+    {
+        return _scope;
+    }
+
+    // documentation inherited from interface GlContext
+    public void makeCurrent ()
+    {
+        // nothing to make current
+    }
+
+    // documentation inherited from interface GlContext
+    public void setRenderer (Renderer renderer)
+    {
+        throw noGL();
+    }
+
+    // documentation inherited from interface GlContext
+    public Renderer getRenderer ()
+    {
+        throw noGL();
+    }
+
+    // documentation inherited from interface GlContext
+    public Compositor getCompositor ()
+    {
+        throw noGL();
+    }
+
+    // documentation inherited from interface GlContext
+    public void setCameraHandler (CameraHandler camhand)
+    {
+        throw noGL();
+    }
+
+    // documentation inherited from interface GlContext
+    public CameraHandler getCameraHandler ()
+    {
+        throw noGL();
+    }
+
+    // documentation inherited from interface GlContext
+    public ResourceManager getResourceManager ()
+    {
+        return _rsrcmgr;
+    }
+
+    // documentation inherited from interface GlContext
+    public MessageManager getMessageManager ()
+    {
+        return null;
+    }
+
+    // documentation inherited from interface GlContext
+    public ConfigManager getConfigManager ()
+    {
+        return _cfgmgr;
+    }
+
+    // documentation inherited from interface GlContext
+    public ColorPository getColorPository ()
+    {
+        return null;
+    }
+
+    // documentation inherited from interface GlContext
+    public ImageCache getImageCache ()
+    {
+        return _imgcache;
+    }
+
+    // documentation inherited from interface GlContext
+    public ShaderCache getShaderCache ()
+    {
+        throw noGL();
+    }
+
+    // documentation inherited from interface AlContext
+    public SoundManager getSoundManager ()
+    {
+        return null;
+    }
+
+    // documentation inherited from interface AlContext
+    public ClipProvider getClipProvider ()
+    {
+        return null;
+    }
+
+    /**
+     * Creates the exception thrown on attempts to reach the renderer.
+     */
+    protected static UnsupportedOperationException noGL ()
+    {
+        return new UnsupportedOperationException("No GL context.");
+    }
+
+    /** The resource manager. */
+    protected ResourceManager _rsrcmgr;
+
+    /** The config manager. */
+    protected ConfigManager _cfgmgr;
+
+    /** The image cache. */
+    protected ImageCache _imgcache;
+
+    /** The root scope. */
+    protected DynamicScope _scope = new DynamicScope(this, "root");
+}
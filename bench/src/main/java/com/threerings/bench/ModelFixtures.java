@@ -0,0 +1,140 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+
+import com.threerings.config.ConfigManager;
+
+import com.threerings.expr.Scope;
+
+import com.threerings.math.FloatMath;
+import com.threerings.math.Quaternion;
+import com.threerings.math.Transform3D;
+import com.threerings.math.Vector3f;
+
+import com.threerings.opengl.model.Animation;
+import com.threerings.opengl.model.Model;
+import com.threerings.opengl.model.config.AnimationConfig;
+import com.threerings.opengl.model.config.ArticulatedConfig;
+import com.threerings.opengl.model.config.ModelConfig;
+import com.threerings.opengl.util.GlContext;
+
+/**
+ * Creates synthetic articulated models and animations for the model benchmarks.  The models
+ * have skeletons but no meshes, so they may be created and ticked without a GL context.
+ */
+public class ModelFixtures
+{
+    /**
+     * Creates the config of an articulated model with a tree of the specified number of bones,
+     * each with up to three children.
+     */
+    public static ModelConfig createCharacter (ConfigManager cfgmgr, int bones)
+    {
+        ArticulatedConfig config = new ArticulatedConfig();
+        List<ArticulatedConfig.Node> nodes = Lists.newArrayList();
+        List<List<ArticulatedConfig.Node>> children = Lists.newArrayList();
+        for (int ii = 0; ii < bones; ii++) {
+            nodes.add(new ArticulatedConfig.Node("bone" + ii,
+                new Transform3D(new Vector3f(0f, 0f, 0.25f), new Quaternion()), null));
+            children.add(new ArrayList<ArticulatedConfig.Node>());
+            if (ii > 0) {
+                children.get((ii - 1) / 3).add(nodes.get(ii));
+            }
+        }
+        for (int ii = 0; ii < bones; ii++) {
+            List<ArticulatedConfig.Node> list = children.get(ii);
+            nodes.get(ii).children = list.toArray(new ArticulatedConfig.Node[list.size()]);
+        }
+        config.root = nodes.get(0);
+        config.skin = new ModelConfig.MeshSet(new ModelConfig.VisibleMesh[0], null);
+        ModelConfig model = new ModelConfig(config);
+        model.init(cfgmgr);
+        return model;
+    }
+
+    /**
+     * Creates a looping clip that animates every bone of a model created by
+     * {@link #createCharacter} with random rotations.
+     *
+     * @param weight the blend weight of the clip.  Clips at the same priority that don't
+     * override one another are blended together.
+     */
+    public static AnimationConfig createClip (
+        ConfigManager cfgmgr, Random random, int bones, int frames, float weight)
+    {
+        AnimationConfig.Imported impl = new AnimationConfig.Imported();
+        impl.rate = FRAME_RATE;
+        impl.loop = true;
+        impl.override = false;
+        impl.weight = weight;
+        impl.targets = new String[bones];
+        for (int ii = 0; ii < bones; ii++) {
+            impl.targets[ii] = "bone" + ii;
+        }
+        impl.transforms = new Transform3D[frames][bones];
+        for (int ii = 0; ii < frames; ii++) {
+            for (int jj = 0; jj < bones; jj++) {
+                impl.transforms[ii][jj] = new Transform3D(
+                    new Vector3f(0f, 0f, 0.25f), new Quaternion().fromAngles(
+                        random.nextFloat() * FloatMath.HALF_PI,
+                        random.nextFloat() * FloatMath.HALF_PI,
+                        random.nextFloat() * FloatMath.HALF_PI));
+            }
+        }
+        AnimationConfig config = new AnimationConfig();
+        config.implementation = impl;
+        config.init(cfgmgr);
+        return config;
+    }
+
+    /**
+     * Creates a model and starts the specified clips on it.
+     *
+     * @param parent the model's parent scope, or <code>null</code> for none.
+     */
+    public static Model createModel (
+        GlContext ctx, Scope parent, ModelConfig config, AnimationConfig... clips)
+    {
+        Model model = new Model(ctx);
+        model.setParentScope(parent);
+        model.setConfig(config);
+        for (int ii = 0; ii < clips.length; ii++) {
+            Animation anim = model.createAnimation();
+            anim.setConfig("clip" + ii, clips[ii]);
+            anim.start();
+        }
+        return model;
+    }
+
+    /** The frame rate of the created clips. */
+    public static final float FRAME_RATE = 30f;
+}
@@ -0,0 +1,86 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.bench;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.threerings.export.Exportable;
+import com.threerings.math.Quaternion;
+import com.threerings.math.Transform3D;
+import com.threerings.math.Vector3f;
+import com.threerings.util.DeepObject;
+
+/**
+ * A synthetic object graph resembling a typical configuration, used as a fixture for the
+ * copying, comparison, hashing, and export benchmarks.
+ */
+public class SampleObject extends DeepObject
+    implements Exportable
+{
+    /** Some primitive fields. */
+    public int id;
+    public float weight;
+    public boolean enabled;
+
+    /** A string field. */
+    public String name;
+
+    /** A primitive array. */
+    public float[] values;
+
+    /** A math object. */
+    public Transform3D transform;
+
+    /** The object's children. */
+    public ArrayList<SampleObject> children = new ArrayList<SampleObject>();
+
+    /**
+     * Creates a tree of objects with the specified depth and branching factor.
+     */
+    public static SampleObject createTree (Random random, int depth, int branching)
+    {
+        SampleObject object = new SampleObject();
+        object.id = random.nextInt();
+        object.weight = random.nextFloat();
+        object.enabled = random.nextBoolean();
+        object.name = "object" + object.id;
+        object.values = new float[8 + random.nextInt(8)];
+        for (int ii = 0; ii < object.values.length; ii++) {
+            object.values[ii] = random.nextFloat();
+        }
+        object.transform = new Transform3D(
+            new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()),
+            new Quaternion().fromAngleAxis(random.nextFloat(), Vector3f.UNIT_Z),
+            1f + random.nextFloat());
+        if (depth > 1) {
+            for (int ii = 0; ii < branching; ii++) {
+                object.children.add(createTree(random, depth - 1, branching));
+            }
+        }
+        return object;
+    }
+}
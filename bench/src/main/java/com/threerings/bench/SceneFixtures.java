@@ -0,0 +1,101 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.bench;
+
+import java.util.Random;
+
+import com.threerings.config.ConfigManager;
+import com.threerings.config.ConfigReference;
+
+import com.threerings.tudey.config.TileConfig;
+import com.threerings.tudey.data.TudeySceneModel;
+import com.threerings.tudey.data.TudeySceneModel.TileEntry;
+import com.threerings.tudey.util.CoordIntMap;
+
+/**
+ * Creates synthetic scenes and maps for the Tudey benchmarks.
+ */
+public class SceneFixtures
+{
+    /**
+     * Creates and initializes a scene model filled with a square of randomly chosen tiles.
+     *
+     * @param size the width and height of the square of tiles.
+     * @param configs the number of distinct tile configurations to use.
+     */
+    public static TudeySceneModel createModel (
+        ConfigManager cfgmgr, Random random, int size, int configs)
+    {
+        TudeySceneModel model = new TudeySceneModel();
+        model.init(cfgmgr);
+        for (int yy = 0; yy < size; yy++) {
+            for (int xx = 0; xx < size; xx++) {
+                TileEntry entry = new TileEntry();
+                entry.tile = new ConfigReference<TileConfig>(
+                    "bench/tile" + random.nextInt(configs));
+                entry.elevation = random.nextInt(4);
+                entry.rotation = random.nextInt(4);
+                entry.getLocation().set(xx, yy);
+                model.addEntry(entry);
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Creates a map of collision flags for a maze-like grid: a square of open cells, divided into
+     * rooms by walls with randomly placed openings.
+     *
+     * @param size the width and height of the grid.
+     * @param room the spacing between the walls.
+     */
+    public static CoordIntMap createMaze (Random random, int size, int room)
+    {
+        CoordIntMap flags = new CoordIntMap(3, 0);
+        for (int ii = 0; ii <= size; ii++) {
+            flags.put(ii, -1, WALL_FLAG);
+            flags.put(ii, size, WALL_FLAG);
+            flags.put(-1, ii, WALL_FLAG);
+            flags.put(size, ii, WALL_FLAG);
+        }
+        for (int ww = room; ww < size; ww += room) {
+            for (int ii = 0; ii < size; ii++) {
+                flags.put(ww, ii, WALL_FLAG);
+                flags.put(ii, ww, WALL_FLAG);
+            }
+            // open a door in each segment of the walls
+            for (int ss = 0; ss < size; ss += room) {
+                int door = ss + 1 + random.nextInt(Math.max(1, Math.min(room, size - ss) - 1));
+                flags.remove(ww, door);
+                flags.remove(door, ww);
+            }
+        }
+        return flags;
+    }
+
+    /** The collision flag used for the walls of mazes. */
+    public static final int WALL_FLAG = 0x01;
+}
@@ -0,0 +1,208 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.threerings.export.BinaryExporter;
+
+import com.threerings.tudey.config.ActorConfig;
+import com.threerings.tudey.config.BehaviorConfig;
+import com.threerings.tudey.shape.config.ShapeConfig;
+
+import com.threerings.bench.HeadlessConfigManager;
+
+/**
+ * Benchmarks the startup of a config group holding a large synthetic library of actor configs,
+ * comparing the binary format (which reads and initializes every config up front) with the
+ * indexed format (which reads configs as they're requested).  Each startup requests a small
+ * sample of the configs, as a server or tool that touches only part of the library would.  The
+ * <code>retainedHeap</code> benchmark reports the heap retained by the started group in its
+ * <code>retainedHeapMB</code> counter; its time includes full collections and should be ignored.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class ConfigGroupBenchmark
+{
+    /** The number of configs in the library. */
+    @Param({ "10000", "50000" })
+    public int count;
+
+    /** Whether or not to use the indexed format. */
+    @Param({ "false", "true" })
+    public boolean indexed;
+
+    /**
+     * Tracks the heap retained by a started group.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class HeapCounters
+    {
+        /** The heap retained by the most recently measured group, in megabytes. */
+        public double retainedHeapMB;
+
+        @Setup(Level.Iteration)
+        public void reset ()
+        {
+            _baseline = getUsedHeap();
+            retainedHeapMB = 0.0;
+        }
+
+        /**
+         * Measures the heap retained since the start of the iteration.
+         */
+        public void measure ()
+        {
+            retainedHeapMB = (getUsedHeap() - _baseline) / (1024.0 * 1024.0);
+        }
+
+        /**
+         * Returns the heap in use after a full collection.
+         */
+        protected static long getUsedHeap ()
+        {
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            System.gc();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+
+        /** The heap in use at the start of the iteration. */
+        protected long _baseline;
+    }
+
+    @Setup
+    public void setup ()
+        throws IOException
+    {
+        Random random = new Random(1199325877849L);
+        ActorConfig[] configs = new ActorConfig[count];
+        for (int ii = 0; ii < count; ii++) {
+            ActorConfig config = configs[ii] = new ActorConfig();
+            config.setName("bench/actor/" + ii);
+            ActorConfig.Agent impl = new ActorConfig.Agent();
+            impl.behavior = new ConfigReference<BehaviorConfig>(
+                "bench/behavior/" + random.nextInt(100));
+            ShapeConfig.Circle shape = new ShapeConfig.Circle();
+            shape.radius = random.nextFloat() * 2f;
+            impl.shape = shape;
+            impl.speed = random.nextFloat() * 10f;
+            impl.tags.tags = new String[] { "tag" + random.nextInt(50), "actor" + ii };
+            config.implementation = impl;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (indexed) {
+            ConfigIndex.write(configs, null, out);
+        } else {
+            BinaryExporter exporter = new BinaryExporter(out);
+            exporter.writeObject(configs);
+            exporter.close();
+        }
+        _data = out.toByteArray();
+
+        _names = new String[SAMPLE_SIZE];
+        for (int ii = 0; ii < SAMPLE_SIZE; ii++) {
+            _names[ii] = configs[random.nextInt(count)].getName();
+        }
+        _cfgmgr = new HeadlessConfigManager();
+    }
+
+    @Benchmark
+    public ConfigGroup<ActorConfig> startup ()
+    {
+        ConfigGroup<ActorConfig> group = new BenchGroup();
+        group.init(_cfgmgr);
+        for (String name : _names) {
+            group.getConfig(name);
+        }
+        return group;
+    }
+
+    @Benchmark
+    public ConfigGroup<ActorConfig> retainedHeap (HeapCounters counters)
+    {
+        ConfigGroup<ActorConfig> group = startup();
+        counters.measure();
+        return group;
+    }
+
+    /**
+     * A group that reads its configs from the benchmark's data rather than through a resource
+     * manager.
+     */
+    protected class BenchGroup extends ConfigGroup<ActorConfig>
+    {
+        public BenchGroup ()
+        {
+            super(ActorConfig.class);
+        }
+
+        @Override
+        protected InputStream getConfigStream (String path)
+        {
+            return path.endsWith(indexed ? ConfigIndex.EXTENSION : ".dat") ?
+                new ByteArrayInputStream(_data) : null;
+        }
+    }
+
+    /** The number of configs requested after each startup. */
+    protected static final int SAMPLE_SIZE = 100;
+
+    /** The encoded library. */
+    protected byte[] _data;
+
+    /** The names of the configs to request. */
+    protected String[] _names;
+
+    /** The config manager with which to initialize the groups. */
+    protected ConfigManager _cfgmgr;
+}
@@ -0,0 +1,158 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.config;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks cache lookups keyed on config references, with and without interning, and reports
+ * the heap retained by a large set of equal references.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class ConfigReferenceBenchmark
+{
+    /** Whether to intern the references (true) or use fresh copies (false). */
+    @Param({ "false", "true" })
+    public boolean intern;
+
+    /** The number of distinct references. */
+    @Param({ "16", "256" })
+    public int distinct;
+
+    @Setup
+    public void setup ()
+    {
+        Random random = new Random(1199325877849L);
+        for (int ii = 0; ii < distinct; ii++) {
+            ConfigReference<ManagedConfig> ref = createReference(ii);
+            _cache.put(intern ? ref.intern() : ref, ii);
+        }
+        for (int ii = 0; ii < LOOKUPS; ii++) {
+            ConfigReference<ManagedConfig> ref = createReference(random.nextInt(distinct));
+            _keys.add(intern ? ref.intern() : ref);
+        }
+
+        // measure the heap retained by a scene-sized set of references
+        System.gc();
+        long before = usedMemory();
+        List<ConfigReference<ManagedConfig>> retained = Lists.newArrayList();
+        for (int ii = 0; ii < RETAINED; ii++) {
+            ConfigReference<ManagedConfig> ref = createReference(random.nextInt(distinct));
+            retained.add(intern ? ref.intern() : ref);
+        }
+        System.gc();
+        _retainedBytes = usedMemory() - before;
+        _retainedCount = retained.size();
+    }
+
+    @TearDown
+    public void tearDown ()
+    {
+        System.out.println("\nRetained " + _retainedCount + " references in ~" +
+            (_retainedBytes / 1024) + " KB (intern: " + intern + ").");
+    }
+
+    @Benchmark
+    public int lookup ()
+    {
+        int total = 0;
+        for (int ii = 0, nn = _keys.size(); ii < nn; ii++) {
+            total += _cache.get(_keys.get(ii));
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int hashCodes ()
+    {
+        int total = 0;
+        for (int ii = 0, nn = _keys.size(); ii < nn; ii++) {
+            total += _keys.get(ii).hashCode();
+        }
+        return total;
+    }
+
+    /**
+     * Creates a new reference with arguments, equal to any other created with the same index.
+     */
+    protected static ConfigReference<ManagedConfig> createReference (int idx)
+    {
+        return new ConfigReference<ManagedConfig>(
+            "bench/config" + (idx % 8),
+            "scale", 1f + (idx / 8), "name", "variant" + idx, "flags", new int[] { idx, idx + 1 });
+    }
+
+    /**
+     * Returns the amount of heap memory currently in use.
+     */
+    protected static long usedMemory ()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /** The cache being looked up. */
+    protected Map<ConfigReference<ManagedConfig>, Integer> _cache = Maps.newHashMap();
+
+    /** The keys to look up. */
+    protected List<ConfigReference<ManagedConfig>> _keys = Lists.newArrayList();
+
+    /** The approximate number of bytes retained by the reference set. */
+    protected long _retainedBytes;
+
+    /** The number of references in the retained set. */
+    protected int _retainedCount;
+
+    /** The number of lookups per invocation. */
+    protected static final int LOOKUPS = 1024;
+
+    /** The number of references in the retained set. */
+    protected static final int RETAINED = 100000;
+}
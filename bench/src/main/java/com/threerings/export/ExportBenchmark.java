@@ -0,0 +1,126 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.export;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.threerings.bench.HeadlessConfigManager;
+import com.threerings.bench.SampleObject;
+import com.threerings.bench.SceneFixtures;
+
+/**
+ * Benchmarks binary export and import of a synthetic object tree and of a scene model.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class ExportBenchmark
+{
+    /** Whether or not to compress the exported data. */
+    @Param({ "false", "true" })
+    public boolean compress;
+
+    @Setup
+    public void setup ()
+        throws IOException
+    {
+        Random random = new Random(1199325877849L);
+        _object = SampleObject.createTree(random, 4, 4);
+        _scene = SceneFixtures.createModel(new HeadlessConfigManager(), random, 64, 16);
+        _objectBytes = export(_object);
+        _sceneBytes = export(_scene);
+    }
+
+    @Benchmark
+    public byte[] exportObject ()
+        throws IOException
+    {
+        return export(_object);
+    }
+
+    @Benchmark
+    public Object importObject ()
+        throws IOException
+    {
+        return new BinaryImporter(new ByteArrayInputStream(_objectBytes)).readObject();
+    }
+
+    @Benchmark
+    public byte[] exportScene ()
+        throws IOException
+    {
+        return export(_scene);
+    }
+
+    @Benchmark
+    public Object importScene ()
+        throws IOException
+    {
+        return new BinaryImporter(new ByteArrayInputStream(_sceneBytes)).readObject();
+    }
+
+    /**
+     * Exports the supplied object to a byte array.
+     */
+    protected byte[] export (Object object)
+        throws IOException
+    {
+        _out.reset();
+        BinaryExporter exporter = new BinaryExporter(_out, compress);
+        exporter.writeObject(object);
+        exporter.close();
+        return _out.toByteArray();
+    }
+
+    /** The objects to export. */
+    protected Object _object, _scene;
+
+    /** The exported objects. */
+    protected byte[] _objectBytes, _sceneBytes;
+
+    /** The stream to which we export. */
+    protected ByteArrayOutputStream _out = new ByteArrayOutputStream();
+}
@@ -0,0 +1,158 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.export;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.ByteStreams;
+
+import com.threerings.bench.SampleObject;
+
+/**
+ * Benchmarks XML export and import of a synthetic object tree, comparing the DOM-based
+ * implementations with the streaming ones.  Along with the time, reports the peak heap usage
+ * over each iteration; run with a small young generation (for example,
+ * <code>-jvmArgs -Xmn16m</code>) so that the peak reflects the data retained rather than the
+ * garbage awaiting collection.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class XMLBenchmark
+{
+    /** The depth of the object tree (each level multiplies the size by four). */
+    @Param({ "4", "6" })
+    public int depth;
+
+    /** Whether or not to use the streaming implementations. */
+    @Param({ "false", "true" })
+    public boolean streaming;
+
+    /**
+     * Tracks the peak heap usage.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class HeapCounters
+    {
+        /** The sum of the peak usages of the heap memory pools, in megabytes. */
+        public double peakHeapMB;
+
+        @Setup(Level.Iteration)
+        public void reset ()
+        {
+            System.gc();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    pool.resetPeakUsage();
+                }
+            }
+            peakHeapMB = 0.0;
+        }
+
+        /**
+         * Updates the peak usage.
+         */
+        public void update ()
+        {
+            long used = 0L;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    used += pool.getPeakUsage().getUsed();
+                }
+            }
+            peakHeapMB = Math.max(peakHeapMB, used / (1024.0 * 1024.0));
+        }
+    }
+
+    @Setup
+    public void setup ()
+        throws IOException
+    {
+        _object = SampleObject.createTree(new Random(1199325877849L), depth, 4);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Exporter exporter = new XMLExporter(out);
+        exporter.writeObject(_object);
+        exporter.close();
+        _bytes = out.toByteArray();
+    }
+
+    @Benchmark
+    public void exportObject (HeapCounters counters)
+        throws IOException
+    {
+        // write to nowhere so that only the exporter's own memory is counted
+        Exporter exporter = streaming ?
+            new StreamingXMLExporter(ByteStreams.nullOutputStream()) :
+            new XMLExporter(ByteStreams.nullOutputStream());
+        exporter.writeObject(_object);
+        exporter.close();
+        counters.update();
+    }
+
+    @Benchmark
+    public Object importObject (HeapCounters counters)
+        throws IOException
+    {
+        ByteArrayInputStream in = new ByteArrayInputStream(_bytes);
+        Importer importer = streaming ? new StreamingXMLImporter(in) : new XMLImporter(in);
+        Object object = importer.readObject();
+        counters.update();
+        return object;
+    }
+
+    /** The object to export. */
+    protected SampleObject _object;
+
+    /** The exported object. */
+    protected byte[] _bytes;
+}
@@ -0,0 +1,153 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.expr;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.threerings.expr.FloatExpression.Evaluator;
+import com.threerings.expr.util.ExpressionCompiler;
+
+/**
+ * Benchmarks the evaluation of float expressions, either interpreted (as a tree of evaluators) or
+ * compiled by the {@link ExpressionCompiler}.
+ */
+@State(org.openjdk.jmh.annotations.Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class FloatExpressionBenchmark
+{
+    /** Whether or not to compile the expression. */
+    @Param({ "false", "true" })
+    public boolean compile;
+
+    @Setup
+    public void setup ()
+    {
+        // amplitude * sin(time * frequency) + (offset - 0.5) * 2
+        FloatExpression expr = add(
+            multiply(reference("amplitude"), sin(multiply(reference("time"),
+                reference("frequency")))),
+            multiply(subtract(reference("offset"), constant(0.5f)), constant(2f)));
+
+        DynamicScope scope = new DynamicScope("bench");
+        scope.put("time", _time);
+        scope.put("amplitude", new MutableFloat(2f));
+        scope.put("frequency", new MutableFloat(3f));
+        scope.put("offset", new MutableFloat(0.25f));
+        _evaluator = compile ?
+            ExpressionCompiler.createEvaluator(expr, scope) : expr.createEvaluator(scope);
+    }
+
+    @Benchmark
+    public float evaluate ()
+    {
+        _time.value += 0.001f;
+        return _evaluator.evaluate();
+    }
+
+    /**
+     * Creates a constant expression.
+     */
+    protected static FloatExpression constant (float value)
+    {
+        return new FloatExpression.Constant(value);
+    }
+
+    /**
+     * Creates a reference expression.
+     */
+    protected static FloatExpression reference (String name)
+    {
+        FloatExpression.Reference ref = new FloatExpression.Reference();
+        ref.name = name;
+        return ref;
+    }
+
+    /**
+     * Creates a sine expression.
+     */
+    protected static FloatExpression sin (FloatExpression operand)
+    {
+        FloatExpression.Sin sin = new FloatExpression.Sin();
+        sin.operand = operand;
+        return sin;
+    }
+
+    /**
+     * Creates an addition expression.
+     */
+    protected static FloatExpression add (FloatExpression first, FloatExpression second)
+    {
+        return init(new FloatExpression.Add(), first, second);
+    }
+
+    /**
+     * Creates a subtraction expression.
+     */
+    protected static FloatExpression subtract (FloatExpression first, FloatExpression second)
+    {
+        return init(new FloatExpression.Subtract(), first, second);
+    }
+
+    /**
+     * Creates a multiplication expression.
+     */
+    protected static FloatExpression multiply (FloatExpression first, FloatExpression second)
+    {
+        return init(new FloatExpression.Multiply(), first, second);
+    }
+
+    /**
+     * Initializes the operands of a binary operation.
+     */
+    protected static FloatExpression init (
+        FloatExpression.BinaryOperation op, FloatExpression first, FloatExpression second)
+    {
+        op.firstOperand = first;
+        op.secondOperand = second;
+        return op;
+    }
+
+    /** The time variable, which we advance on each evaluation. */
+    protected MutableFloat _time = new MutableFloat();
+
+    /** The evaluator under test. */
+    protected Evaluator _evaluator;
+}
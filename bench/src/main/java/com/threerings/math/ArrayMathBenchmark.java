@@ -0,0 +1,228 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.math;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the bulk array transforms in {@link ArrayMath} with the equivalent per-object loops.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class ArrayMathBenchmark
+{
+    /** The number of vertices to transform. */
+    @Param({ "256", "4096" })
+    public int count;
+
+    @Setup
+    public void setup ()
+    {
+        Random random = new Random(1199325877849L);
+        _matrix = MathBenchmark.createTransform(random, Transform3D.AFFINE).getMatrix();
+        ArrayMath.getAffine(_matrix, _packed, 0);
+
+        // interleave the points and normals as they would be in a vertex buffer
+        _source = new float[count * STRIDE];
+        _dest = new float[count * STRIDE];
+        _points = new Vector3f[count];
+        _results = new Vector3f[count];
+        for (int ii = 0, idx = 0; ii < count; ii++, idx += STRIDE) {
+            for (int jj = 0; jj < STRIDE; jj++) {
+                _source[idx + jj] = random.nextFloat() * 2f - 1f;
+            }
+            _points[ii] = new Vector3f(_source[idx], _source[idx + 1], _source[idx + 2]);
+            _results[ii] = new Vector3f();
+        }
+
+        // create the bones and their influences
+        _bones = new Matrix4f[BONES];
+        for (int ii = 0; ii < BONES; ii++) {
+            _bones[ii] = MathBenchmark.createTransform(random, Transform3D.AFFINE).getMatrix();
+        }
+        _packedBones = ArrayMath.getAffine(_bones, new float[BONES * ArrayMath.AFFINE_SIZE]);
+        _indices = new int[count * INFLUENCES];
+        _weights = new float[count * INFLUENCES];
+        for (int ii = 0; ii < _indices.length; ii++) {
+            _indices[ii] = random.nextInt(BONES);
+            _weights[ii] = 1f / INFLUENCES;
+        }
+        _blended = new float[count * ArrayMath.AFFINE_SIZE];
+
+        // and the boxes
+        _boxes = new Box[count];
+        _boxResults = new Box[count];
+        _packedBoxes = new float[count * ArrayMath.BOX_SIZE];
+        _boxDest = new float[_packedBoxes.length];
+        for (int ii = 0, idx = 0; ii < count; ii++, idx += ArrayMath.BOX_SIZE) {
+            Vector3f min = new Vector3f(
+                random.nextFloat(), random.nextFloat(), random.nextFloat());
+            Vector3f max = min.add(random.nextFloat(), random.nextFloat(), random.nextFloat());
+            _boxes[ii] = new Box(min, max);
+            _boxResults[ii] = new Box();
+            _packedBoxes[idx] = min.x;
+            _packedBoxes[idx + 1] = min.y;
+            _packedBoxes[idx + 2] = min.z;
+            _packedBoxes[idx + 3] = max.x;
+            _packedBoxes[idx + 4] = max.y;
+            _packedBoxes[idx + 5] = max.z;
+        }
+        _transform = new Transform3D(_matrix);
+    }
+
+    @Benchmark
+    public Vector3f[] transformPointObjects ()
+    {
+        for (int ii = 0; ii < count; ii++) {
+            _matrix.transformPoint(_points[ii], _results[ii]);
+        }
+        return _results;
+    }
+
+    @Benchmark
+    public float[] transformPointArrays ()
+    {
+        ArrayMath.transformPoints(_packed, 0, _source, 0, STRIDE, _dest, 0, STRIDE, count);
+        return _dest;
+    }
+
+    @Benchmark
+    public float[] skinObjects ()
+    {
+        // the previous approach: transform by each bone matrix and blend the results
+        for (int ii = 0, sidx = 0, bidx = 0; ii < count; ii++) {
+            float snx = _source[sidx + 3], sny = _source[sidx + 4], snz = _source[sidx + 5];
+            float svx = _source[sidx], svy = _source[sidx + 1], svz = _source[sidx + 2];
+            float dnx = 0f, dny = 0f, dnz = 0f;
+            float dvx = 0f, dvy = 0f, dvz = 0f;
+            for (int jj = 0; jj < INFLUENCES; jj++) {
+                Matrix4f m = _bones[_indices[bidx]];
+                float weight = _weights[bidx++];
+                dnx += (m.m00*snx + m.m10*sny + m.m20*snz) * weight;
+                dny += (m.m01*snx + m.m11*sny + m.m21*snz) * weight;
+                dnz += (m.m02*snx + m.m12*sny + m.m22*snz) * weight;
+                dvx += (m.m00*svx + m.m10*svy + m.m20*svz + m.m30) * weight;
+                dvy += (m.m01*svx + m.m11*svy + m.m21*svz + m.m31) * weight;
+                dvz += (m.m02*svx + m.m12*svy + m.m22*svz + m.m32) * weight;
+            }
+            _dest[sidx++] = dvx;
+            _dest[sidx++] = dvy;
+            _dest[sidx++] = dvz;
+            _dest[sidx++] = dnx;
+            _dest[sidx++] = dny;
+            _dest[sidx++] = dnz;
+        }
+        return _dest;
+    }
+
+    @Benchmark
+    public float[] skinArrays ()
+    {
+        ArrayMath.blendAffine(_packedBones, _indices, _weights, INFLUENCES, 0, count, _blended);
+        ArrayMath.transformVectorsEach(_blended, _source, 3, STRIDE, _dest, 3, STRIDE, count);
+        ArrayMath.transformPointsEach(_blended, _source, 0, STRIDE, _dest, 0, STRIDE, count);
+        return _dest;
+    }
+
+    @Benchmark
+    public float[] skinPointArrays ()
+    {
+        ArrayMath.skinPoints(
+            _packedBones, _indices, _weights, INFLUENCES,
+            _source, 0, STRIDE, _dest, 0, STRIDE, count);
+        return _dest;
+    }
+
+    @Benchmark
+    public Box[] transformBoxObjects ()
+    {
+        for (int ii = 0; ii < count; ii++) {
+            _boxes[ii].transform(_transform, _boxResults[ii]);
+        }
+        return _boxResults;
+    }
+
+    @Benchmark
+    public float[] transformBoxArrays ()
+    {
+        ArrayMath.transformBoxes(_packed, 0, _packedBoxes, 0, _boxDest, 0, count);
+        return _boxDest;
+    }
+
+    /** The source matrix and its packed form. */
+    protected Matrix4f _matrix;
+    protected float[] _packed = new float[ArrayMath.AFFINE_SIZE];
+
+    /** The interleaved source and destination data. */
+    protected float[] _source, _dest;
+
+    /** The points in object form, and the results of transforming them. */
+    protected Vector3f[] _points, _results;
+
+    /** The bone matrices and their packed form. */
+    protected Matrix4f[] _bones;
+    protected float[] _packedBones;
+
+    /** The bone influences. */
+    protected int[] _indices;
+    protected float[] _weights;
+
+    /** Holds the blended matrices. */
+    protected float[] _blended;
+
+    /** The boxes in object and packed form, and the results of transforming them. */
+    protected Box[] _boxes, _boxResults;
+    protected float[] _packedBoxes, _boxDest;
+
+    /** The transform applied to the boxes. */
+    protected Transform3D _transform;
+
+    /** The number of floats per vertex (point followed by normal). */
+    protected static final int STRIDE = 6;
+
+    /** The number of bones. */
+    protected static final int BONES = 32;
+
+    /** The number of bones influencing each vertex. */
+    protected static final int INFLUENCES = 4;
+}
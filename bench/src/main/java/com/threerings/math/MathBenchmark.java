@@ -0,0 +1,143 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.math;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks matrix and transform composition and inversion.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class MathBenchmark
+{
+    /** The type to which the transforms are promoted. */
+    @Param({ "RIGID", "UNIFORM", "AFFINE", "GENERAL" })
+    public String type;
+
+    @Setup
+    public void setup ()
+    {
+        Random random = new Random(1199325877849L);
+        int type = getTypeCode(this.type);
+        _t1 = createTransform(random, type);
+        _t2 = createTransform(random, type);
+        _m1 = createTransform(random, Transform3D.GENERAL).getMatrix();
+        _m2 = createTransform(random, Transform3D.GENERAL).getMatrix();
+    }
+
+    @Benchmark
+    public Matrix4f multMatrices ()
+    {
+        return _m1.mult(_m2, _mresult);
+    }
+
+    @Benchmark
+    public Matrix4f invertMatrix ()
+    {
+        return _m1.invert(_mresult);
+    }
+
+    @Benchmark
+    public Matrix4f invertAffineMatrix ()
+    {
+        return _m1.invertAffine(_mresult);
+    }
+
+    @Benchmark
+    public Transform3D composeTransforms ()
+    {
+        return _t1.compose(_t2, _tresult);
+    }
+
+    @Benchmark
+    public Transform3D invertTransform ()
+    {
+        return _t1.invert(_tresult);
+    }
+
+    /**
+     * Creates a random transform of the specified type.
+     */
+    protected static Transform3D createTransform (Random random, int type)
+    {
+        Vector3f translation = new Vector3f(
+            random.nextFloat() * 10f, random.nextFloat() * 10f, random.nextFloat() * 10f);
+        Quaternion rotation = new Quaternion().fromAngles(
+            random.nextFloat() * FloatMath.TWO_PI, random.nextFloat() * FloatMath.TWO_PI,
+            random.nextFloat() * FloatMath.TWO_PI);
+        switch (type) {
+            case Transform3D.RIGID:
+                return new Transform3D(translation, rotation);
+            case Transform3D.UNIFORM:
+                return new Transform3D(translation, rotation, 0.5f + random.nextFloat());
+            default:
+                Vector3f scale = new Vector3f(
+                    0.5f + random.nextFloat(), 0.5f + random.nextFloat(),
+                    0.5f + random.nextFloat());
+                return new Transform3D(translation, rotation, scale).promote(type);
+        }
+    }
+
+    /**
+     * Returns the transform type code corresponding to the specified name.
+     */
+    protected static int getTypeCode (String type)
+    {
+        if (type.equals("RIGID")) {
+            return Transform3D.RIGID;
+        } else if (type.equals("UNIFORM")) {
+            return Transform3D.UNIFORM;
+        } else if (type.equals("AFFINE")) {
+            return Transform3D.AFFINE;
+        } else {
+            return Transform3D.GENERAL;
+        }
+    }
+
+    /** The transforms to compose and invert. */
+    protected Transform3D _t1, _t2, _tresult = new Transform3D();
+
+    /** The matrices to multiply and invert. */
+    protected Matrix4f _m1, _m2, _mresult = new Matrix4f();
+}
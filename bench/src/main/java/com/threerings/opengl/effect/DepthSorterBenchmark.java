@@ -0,0 +1,148 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.effect;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.samskivert.util.QuickSort;
+
+/**
+ * Benchmarks the {@link DepthSorter} in its various modes against sorting particle objects by
+ * depth (as depth-sorted layers used to do), over a sequence of frames in which the particles
+ * move slightly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class DepthSorterBenchmark
+{
+    /** The number of particles. */
+    @Param({ "1000", "10000", "50000" })
+    public int count;
+
+    /** The amount by which the depths change between frames. */
+    @Param({ "0.01", "1" })
+    public float jitter;
+
+    @Setup
+    public void setup ()
+    {
+        Random random = new Random(1199325877849L);
+        _depths = new float[FRAMES][count];
+        for (int ii = 0; ii < count; ii++) {
+            float depth = random.nextFloat() * 100f;
+            for (int ff = 0; ff < FRAMES; ff++) {
+                _depths[ff][ii] = (depth += (random.nextFloat() - 0.5f) * jitter);
+            }
+        }
+        _particles = new Particle[count];
+        for (int ii = 0; ii < count; ii++) {
+            _particles[ii] = new Particle();
+        }
+        _adaptive.setMode(DepthSorter.Mode.ADAPTIVE);
+        _radix.setMode(DepthSorter.Mode.RADIX);
+        _incremental.setMode(DepthSorter.Mode.INCREMENTAL);
+    }
+
+    @Benchmark
+    public int[] sortAdaptive ()
+    {
+        return _adaptive.sort(nextFrame(), count);
+    }
+
+    @Benchmark
+    public int[] sortRadix ()
+    {
+        return _radix.sort(nextFrame(), count);
+    }
+
+    @Benchmark
+    public int[] sortIncremental ()
+    {
+        return _incremental.sort(nextFrame(), count);
+    }
+
+    @Benchmark
+    public Particle[] quickSortParticles ()
+    {
+        // the particles keep their previous order, as they did when sorted in place
+        float[] depths = nextFrame();
+        for (int ii = 0; ii < count; ii++) {
+            _particles[ii].depth = depths[ii];
+        }
+        QuickSort.sort(_particles, 0, count - 1, DEPTH_COMP);
+        return _particles;
+    }
+
+    /**
+     * Returns the depths for the next frame.
+     */
+    protected float[] nextFrame ()
+    {
+        return _depths[_frame++ % FRAMES];
+    }
+
+    /** The depths of the particles in each frame. */
+    protected float[][] _depths;
+
+    /** The particles to sort in place. */
+    protected Particle[] _particles;
+
+    /** The index of the current frame. */
+    protected int _frame;
+
+    /** The sorters in each mode. */
+    protected DepthSorter _adaptive = new DepthSorter();
+    protected DepthSorter _radix = new DepthSorter();
+    protected DepthSorter _incremental = new DepthSorter();
+
+    /** The number of frames of depths to generate. */
+    protected static final int FRAMES = 16;
+
+    /** Sorts particles by depth. */
+    protected static final Comparator<Particle> DEPTH_COMP = new Comparator<Particle>() {
+        public int compare (Particle p1, Particle p2) {
+            return Float.compare(p1.depth, p2.depth);
+        }
+    };
+}
@@ -0,0 +1,113 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.effect;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the Euler integration step of particles stored as {@link Particle} objects with that
+ * of particles packed into {@link ParticleData} arrays.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class ParticleBenchmark
+{
+    /** The number of particles. */
+    @Param({ "1000", "10000" })
+    public int count;
+
+    @Setup
+    public void setup ()
+    {
+        Random random = new Random(1199325877849L);
+        _particles = new Particle[count];
+        _data = new ParticleData(count);
+        for (int ii = 0; ii < count; ii++) {
+            Particle particle = _particles[ii] = new Particle();
+            particle.getPosition().set(
+                random.nextFloat(), random.nextFloat(), random.nextFloat());
+            particle.getVelocity().set(
+                random.nextFloat(), random.nextFloat(), random.nextFloat());
+            particle.getAngularVelocity().set(
+                random.nextFloat(), random.nextFloat(), random.nextFloat());
+
+            int idx3 = ii*3;
+            _data.position[idx3] = particle.getPosition().x;
+            _data.position[idx3 + 1] = particle.getPosition().y;
+            _data.position[idx3 + 2] = particle.getPosition().z;
+            _data.velocity[idx3] = particle.getVelocity().x;
+            _data.velocity[idx3 + 1] = particle.getVelocity().y;
+            _data.velocity[idx3 + 2] = particle.getVelocity().z;
+            _data.angularVelocity[idx3] = particle.getAngularVelocity().x;
+            _data.angularVelocity[idx3 + 1] = particle.getAngularVelocity().y;
+            _data.angularVelocity[idx3 + 2] = particle.getAngularVelocity().z;
+        }
+    }
+
+    @Benchmark
+    public Particle[] integrateObjects ()
+    {
+        // the Euler step from Particle.tick
+        for (Particle particle : _particles) {
+            particle.getPosition().addScaledLocal(particle.getVelocity(), ELAPSED);
+            particle.getOrientation().integrateLocal(particle.getAngularVelocity(), ELAPSED);
+        }
+        return _particles;
+    }
+
+    @Benchmark
+    public ParticleData integratePacked ()
+    {
+        _data.integrate(ELAPSED, count);
+        return _data;
+    }
+
+    /** The particles as objects. */
+    protected Particle[] _particles;
+
+    /** The particles packed into arrays. */
+    protected ParticleData _data;
+
+    /** The length of the simulated frame. */
+    protected static final float ELAPSED = 1f / 60f;
+}
@@ -0,0 +1,205 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.geometry;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.lwjgl.BufferUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.threerings.math.FloatMath;
+import com.threerings.math.Matrix4f;
+import com.threerings.math.Quaternion;
+import com.threerings.math.Vector3f;
+
+import com.threerings.opengl.renderer.SimpleBatch.DrawCommand;
+import com.threerings.opengl.renderer.state.ArrayState;
+
+/**
+ * Measures the per-frame cost of software skinning a set of instances, only some of which change
+ * pose from frame to frame.  The <code>always</code> mode skins and uploads every instance every
+ * frame (the behavior before skipping unchanged poses), <code>serial</code> skips the unchanged
+ * instances, and <code>parallel</code> also skins the changed ones on worker threads.  The upload
+ * is to a plain float buffer, as there's no GL context.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class SkinningBenchmark
+{
+    /** The skinning mode. */
+    @Param({ "always", "serial", "parallel" })
+    public String mode;
+
+    /** The number of skinned instances. */
+    @Param({ "64" })
+    public int instances;
+
+    /** The number of vertices in each instance. */
+    @Param({ "2048" })
+    public int vertices;
+
+    /** The fraction of instances whose pose changes each frame. */
+    @Param({ "0.1", "0.5", "1.0" })
+    public float moving;
+
+    @Setup
+    public void setup ()
+    {
+        Random random = new Random(1199325877849L);
+        float[] source = new float[vertices * STRIDE];
+        for (int ii = 0; ii < source.length; ii++) {
+            source[ii] = random.nextFloat() * 2f - 1f;
+        }
+        int[] indices = new int[vertices * 4];
+        float[] weights = new float[indices.length];
+        for (int ii = 0; ii < indices.length; ii++) {
+            indices[ii] = random.nextInt(BONES);
+            weights[ii] = 0.25f;
+        }
+        if (mode.equals("parallel")) {
+            _scheduler = new SkinningScheduler();
+        }
+        _geometries = new BenchGeometry[instances];
+        _bones = new Matrix4f[instances][];
+        for (int ii = 0; ii < instances; ii++) {
+            Matrix4f[] bones = _bones[ii] = new Matrix4f[BONES];
+            for (int jj = 0; jj < BONES; jj++) {
+                bones[jj] = new Matrix4f().setToTransform(
+                    new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()),
+                    new Quaternion().fromAngleAxis(
+                        random.nextFloat() * FloatMath.TWO_PI, Vector3f.UNIT_Z));
+            }
+            _geometries[ii] = new BenchGeometry(
+                new float[source.length], source, bones, indices, weights, _scheduler);
+        }
+        _moving = Math.round(instances * moving);
+    }
+
+    @TearDown
+    public void tearDown ()
+    {
+        if (_scheduler != null) {
+            _scheduler.shutdown();
+        }
+    }
+
+    @Benchmark
+    public int frame ()
+    {
+        // move the bones of the moving instances
+        _frame++;
+        for (int ii = 0; ii < _moving; ii++) {
+            _bones[ii][_frame % BONES].m30 += ((_frame & 1) == 0) ? 0.01f : -0.01f;
+        }
+        boolean always = mode.equals("always");
+        for (BenchGeometry geometry : _geometries) {
+            if (always) {
+                geometry.updateData();
+                geometry.uploadData();
+            } else {
+                geometry.update();
+            }
+        }
+        if (_scheduler != null) {
+            _scheduler.finish();
+        }
+        return _frame;
+    }
+
+    /**
+     * A skinned geometry without a GL context.
+     */
+    protected static class BenchGeometry extends SkinnedGeometry
+    {
+        public BenchGeometry (
+            float[] data, float[] source, Matrix4f[] boneMatrices, int[] boneIndices,
+            float[] boneWeights, SkinningScheduler scheduler)
+        {
+            super(null, data, null, BufferUtils.createFloatBuffer(data.length), source,
+                boneMatrices, boneIndices, boneWeights, -1, 0, 3, STRIDE);
+            _scheduler = scheduler;
+        }
+
+        @Override
+        public ArrayState getArrayState (int pass)
+        {
+            return null;
+        }
+
+        @Override
+        public DrawCommand getDrawCommand (int pass)
+        {
+            return null;
+        }
+
+        @Override
+        protected SkinningScheduler getSkinningScheduler ()
+        {
+            return _scheduler;
+        }
+
+        /** The scheduler to use, if any. */
+        protected SkinningScheduler _scheduler;
+    }
+
+    /** The instances to skin. */
+    protected BenchGeometry[] _geometries;
+
+    /** The bone matrices of each instance. */
+    protected Matrix4f[][] _bones;
+
+    /** The number of instances that move each frame. */
+    protected int _moving;
+
+    /** The frame counter. */
+    protected int _frame;
+
+    /** The scheduler, if skinning in parallel. */
+    protected SkinningScheduler _scheduler;
+
+    /** The number of floats per vertex (normal followed by vertex). */
+    protected static final int STRIDE = 6;
+
+    /** The number of bones in each instance. */
+    protected static final int BONES = 32;
+}
@@ -0,0 +1,164 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.threerings.bench.HeadlessGlContext;
+import com.threerings.bench.ModelFixtures;
+
+import com.threerings.config.ConfigManager;
+
+import com.threerings.expr.DynamicScope;
+
+import com.threerings.opengl.model.config.AnimationConfig;
+import com.threerings.opengl.model.config.ArticulatedConfig;
+import com.threerings.opengl.model.config.ModelConfig;
+
+/**
+ * Measures the cost of ticking a crowd of idling NPCs, each playing one of a few idle loops from
+ * a random starting point.  The <code>unshared</code> mode evaluates every pose, as before pose
+ * sharing; <code>exact</code> shares only identical poses; and <code>quantized</code> rounds the
+ * phase so that NPCs at nearby points in the same loop share poses.  The cache hit rate is
+ * printed at the end of each iteration.
+ */
+@State(org.openjdk.jmh.annotations.Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class PoseCacheBenchmark
+{
+    /** The number of NPCs. */
+    @Param({ "200", "500" })
+    public int npcs;
+
+    /** The number of bones in each NPC. */
+    @Param({ "40" })
+    public int bones;
+
+    /** The sharing mode. */
+    @Param({ "unshared", "exact", "quantized" })
+    public String mode;
+
+    @Setup
+    public void setUp ()
+        throws IOException
+    {
+        Random random = new Random(1199325877849L);
+        _dir = File.createTempFile("models", "");
+        _dir.delete();
+        _dir.mkdirs();
+        _ctx = new HeadlessGlContext(_dir);
+        ConfigManager cfgmgr = _ctx.getConfigManager();
+        ModelConfig config = ModelFixtures.createCharacter(cfgmgr, bones);
+        ArticulatedConfig articulated = (ArticulatedConfig)config.implementation;
+        articulated.sharePoses = !mode.equals("unshared");
+        articulated.poseQuantization = mode.equals("quantized") ? QUANTIZATION : 0;
+
+        // the cache is found in the scope, as it is in the scene
+        _scope = new DynamicScope("npcs");
+        _scope.put("poseCache", _poseCache);
+
+        AnimationConfig[] idles = new AnimationConfig[IDLE_CLIPS];
+        for (int ii = 0; ii < idles.length; ii++) {
+            idles[ii] = ModelFixtures.createClip(cfgmgr, random, bones, IDLE_FRAMES, 1f);
+        }
+        _models = new Model[npcs];
+        for (int ii = 0; ii < npcs; ii++) {
+            _models[ii] = ModelFixtures.createModel(
+                _ctx, _scope, config, idles[random.nextInt(idles.length)]);
+            _models[ii].tick(random.nextFloat() * IDLE_FRAMES / ModelFixtures.FRAME_RATE);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void printHitRate ()
+    {
+        System.out.println("\n[pose cache] hit rate " + _poseCache.getHitRate() +
+            " (" + _poseCache.getHits() + " hits, " + _poseCache.getMisses() + " misses)");
+        _poseCache.resetStats();
+    }
+
+    @TearDown
+    public void tearDown ()
+    {
+        _dir.delete();
+    }
+
+    @Benchmark
+    public void tick ()
+    {
+        _poseCache.clear();
+        for (Model model : _models) {
+            model.tick(ELAPSED);
+        }
+    }
+
+    /** The temporary (empty) resource directory. */
+    protected File _dir;
+
+    /** The headless context. */
+    protected HeadlessGlContext _ctx;
+
+    /** The scope containing the pose cache. */
+    protected DynamicScope _scope;
+
+    /** The shared pose cache. */
+    protected PoseCache _poseCache = new PoseCache();
+
+    /** The models to tick. */
+    protected Model[] _models;
+
+    /** The number of distinct idle clips. */
+    protected static final int IDLE_CLIPS = 3;
+
+    /** The number of frames in each idle clip. */
+    protected static final int IDLE_FRAMES = 90;
+
+    /** The pose quantization in the quantized mode. */
+    protected static final int QUANTIZATION = 2;
+
+    /** The elapsed time per tick. */
+    protected static final float ELAPSED = 1f / 60f;
+}
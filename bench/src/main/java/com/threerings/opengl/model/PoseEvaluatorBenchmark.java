@@ -0,0 +1,147 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.threerings.bench.HeadlessGlContext;
+import com.threerings.bench.ModelFixtures;
+
+import com.threerings.config.ConfigManager;
+
+import com.threerings.opengl.model.config.AnimationConfig;
+import com.threerings.opengl.model.config.ModelConfig;
+
+/**
+ * Measures the cost of ticking a frame's worth of articulated characters, each blending two
+ * looping clips.  With no threads, the models are ticked serially (the default); otherwise,
+ * they're prepared and ticked around a {@link PoseEvaluator} with the given number of workers,
+ * as in {@link com.threerings.opengl.scene.Scene#tick}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class PoseEvaluatorBenchmark
+{
+    /** The number of characters. */
+    @Param({ "100", "500" })
+    public int characters;
+
+    /** The number of bones in each character. */
+    @Param({ "40" })
+    public int bones;
+
+    /** The number of pose evaluator workers, or zero to tick serially. */
+    @Param({ "0", "1", "3" })
+    public int threads;
+
+    @Setup
+    public void setUp ()
+        throws IOException
+    {
+        Random random = new Random(1199325877849L);
+        _dir = File.createTempFile("models", "");
+        _dir.delete();
+        _dir.mkdirs();
+        _ctx = new HeadlessGlContext(_dir);
+        ConfigManager cfgmgr = _ctx.getConfigManager();
+        ModelConfig config = ModelFixtures.createCharacter(cfgmgr, bones);
+        AnimationConfig walk = ModelFixtures.createClip(cfgmgr, random, bones, CLIP_FRAMES, 0.7f);
+        AnimationConfig wave = ModelFixtures.createClip(
+            cfgmgr, random, bones, CLIP_FRAMES / 2, 0.3f);
+        _models = new Model[characters];
+        for (int ii = 0; ii < characters; ii++) {
+            _models[ii] = ModelFixtures.createModel(_ctx, null, config, walk, wave);
+
+            // stagger the clips so that the characters are out of step
+            _models[ii].tick(random.nextFloat() * CLIP_FRAMES / ModelFixtures.FRAME_RATE);
+        }
+        if (threads > 0) {
+            _evaluator = new PoseEvaluator(threads);
+        }
+    }
+
+    @TearDown
+    public void tearDown ()
+    {
+        if (_evaluator != null) {
+            _evaluator.shutdown();
+        }
+        _dir.delete();
+    }
+
+    @Benchmark
+    public void tick ()
+    {
+        if (_evaluator != null) {
+            _evaluator.begin();
+            for (Model model : _models) {
+                model.prepareTick(ELAPSED, _evaluator);
+            }
+            _evaluator.evaluate();
+        }
+        for (Model model : _models) {
+            model.tick(ELAPSED);
+        }
+    }
+
+    /** The temporary (empty) resource directory. */
+    protected File _dir;
+
+    /** The headless context. */
+    protected HeadlessGlContext _ctx;
+
+    /** The models to tick. */
+    protected Model[] _models;
+
+    /** The pose evaluator, if ticking in parallel. */
+    protected PoseEvaluator _evaluator;
+
+    /** The number of frames in the longer clip. */
+    protected static final int CLIP_FRAMES = 60;
+
+    /** The elapsed time per tick. */
+    protected static final float ELAPSED = 1f / 60f;
+}
@@ -0,0 +1,175 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.renderer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of submitting a HUD-like frame (an inventory grid of slots, each with a tinted
+ * background, a nine-patch frame, an icon and a text label) through the {@link QuadBatch} with a
+ * recording backend.  The <code>immediate</code> mode flushes after every quad, as the interface
+ * did when each image issued its own draw; <code>batched</code> lets runs of quads that share
+ * textures merge.  The draw and quad counts of the last frame are printed on tear down.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class QuadBatchBenchmark
+{
+    /** The submission mode. */
+    @Param({ "immediate", "batched" })
+    public String mode;
+
+    /** The number of slots in the grid. */
+    @Param({ "64", "512" })
+    public int slots;
+
+    /** The number of distinct icon textures. */
+    @Param({ "1", "16" })
+    public int icons;
+
+    @Setup
+    public void setup ()
+    {
+        _backend = new QuadBatch.RecordingBackend(false);
+        _batch = new QuadBatch(_backend);
+        _frame = new TextureUnit[] { new TextureUnit() };
+        _glyphs = new TextureUnit[] { new TextureUnit() };
+        _icons = new TextureUnit[icons][];
+        for (int ii = 0; ii < icons; ii++) {
+            _icons[ii] = new TextureUnit[] { new TextureUnit() };
+        }
+        Random random = new Random(1199325877849L);
+        _slotIcons = new int[slots];
+        for (int ii = 0; ii < slots; ii++) {
+            _slotIcons[ii] = random.nextInt(icons);
+        }
+        _immediate = mode.equals("immediate");
+    }
+
+    @TearDown
+    public void tearDown ()
+    {
+        System.out.println("\n" + mode + ": " + _draws + " draws, " + _quads + " quads per frame");
+    }
+
+    @Benchmark
+    public int frame ()
+    {
+        _backend.clear();
+        int columns = (int)Math.ceil(Math.sqrt(slots));
+        for (int ii = 0; ii < slots; ii++) {
+            float x = (ii % columns) * SLOT_SIZE, y = (ii / columns) * SLOT_SIZE;
+            _batch.translate(x, y);
+            renderSlot(_icons[_slotIcons[ii]]);
+            _batch.translate(-x, -y);
+        }
+        _batch.flush();
+        _draws = _backend.getDrawCount();
+        _quads = _backend.getQuadCount();
+        return _draws;
+    }
+
+    /**
+     * Renders a single slot in its own coordinate space.
+     */
+    protected void renderSlot (TextureUnit[] icon)
+    {
+        // tinted background
+        add(null, 0f, 0f, SLOT_SIZE, SLOT_SIZE);
+
+        // nine-patch frame
+        float third = SLOT_SIZE / 3f;
+        for (int yy = 0; yy < 3; yy++) {
+            for (int xx = 0; xx < 3; xx++) {
+                add(_frame, xx * third, yy * third, (xx + 1) * third, (yy + 1) * third);
+            }
+        }
+
+        // icon
+        add(icon, 4f, 4f, SLOT_SIZE - 4f, SLOT_SIZE - 4f);
+
+        // stack count label
+        for (int ii = 0; ii < LABEL_LENGTH; ii++) {
+            add(_glyphs, 4f + ii * 7f, 2f, 11f + ii * 7f, 14f);
+        }
+    }
+
+    /**
+     * Adds a quad to the batch, flushing immediately if so configured.
+     */
+    protected void add (TextureUnit[] units, float lx, float ly, float ux, float uy)
+    {
+        _batch.add(units, lx, ly, ux, uy, 0f, 0f, 1f, 1f, 1f, 1f, 1f, 1f);
+        if (_immediate) {
+            _batch.flush();
+        }
+    }
+
+    /** The backend recording the draws. */
+    protected QuadBatch.RecordingBackend _backend;
+
+    /** The batch under test. */
+    protected QuadBatch _batch;
+
+    /** The units of the frame and glyph page textures. */
+    protected TextureUnit[] _frame, _glyphs;
+
+    /** The units of the icon textures. */
+    protected TextureUnit[][] _icons;
+
+    /** The icon index of each slot. */
+    protected int[] _slotIcons;
+
+    /** Whether to flush after every quad. */
+    protected boolean _immediate;
+
+    /** The draw and quad counts of the last frame. */
+    protected int _draws, _quads;
+
+    /** The size of each slot. */
+    protected static final float SLOT_SIZE = 48f;
+
+    /** The number of glyphs in each slot's label. */
+    protected static final int LABEL_LENGTH = 3;
+}
@@ -0,0 +1,168 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.renderer;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+
+import com.threerings.opengl.compositor.config.RenderQueueConfig.SortMode;
+import com.threerings.opengl.renderer.state.RenderState;
+
+/**
+ * Sorts and applies the states of a synthetic frame of batches that share a texture and shader
+ * but use a handful of interned material/alpha/depth/cull combinations, at depths spread
+ * uniformly through the view.  The <code>depth</code> mode sorts the batches front-to-back (as
+ * the state sort did when the batches had no state keys); <code>state</code> uses the state
+ * sort, which orders batches at similar depths by the ids of their shared states.  The states
+ * don't touch OpenGL when applied, and the numbers of states applied and skipped per frame are
+ * printed on tear down.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class RenderStateBenchmark
+{
+    /** The sort mode. */
+    @Param({ "depth", "state" })
+    public String mode;
+
+    /** The number of batches in the frame. */
+    @Param({ "1024" })
+    public int batches;
+
+    /** The number of distinct state combinations. */
+    @Param({ "4", "32" })
+    public int combinations;
+
+    @Setup
+    public void setup ()
+    {
+        _renderer = new Renderer();
+        RenderState[][] combos = new RenderState[combinations][];
+        for (int ii = 0; ii < combinations; ii++) {
+            RenderState[] combo = combos[ii] = RenderState.createEmptySet();
+            for (int type : SHARED_STATES) {
+                // share some of the states between combinations, as interning would
+                combo[type] = (ii > 0 && (ii + type) % 3 == 0) ?
+                    combos[ii - 1][type] : new RecordingState(type);
+            }
+        }
+        Random random = new Random(1199325877849L);
+        for (int ii = 0; ii < batches; ii++) {
+            RenderState[] states = combos[random.nextInt(combinations)].clone();
+            states[RenderState.TRANSFORM_STATE] = new RecordingState(RenderState.TRANSFORM_STATE);
+            SimpleBatch batch = new SimpleBatch(states, null);
+            batch.depth = -random.nextFloat() * DEPTH_RANGE;
+            _batches.add(batch);
+        }
+        _sortMode = mode.equals("depth") ? SortMode.FRONT_TO_BACK : SortMode.BY_STATE;
+    }
+
+    @TearDown
+    public void tearDown ()
+    {
+        System.out.println("\n" + mode + ": " + _applied + " states applied, " +
+            _skipped + " skipped per frame");
+    }
+
+    @Benchmark
+    public int frame ()
+    {
+        _renderer.resetStats();
+        _sortMode.sort(_batches);
+        for (int ii = 0, nn = _batches.size(); ii < nn; ii++) {
+            _renderer.setStates(((SimpleBatch)_batches.get(ii)).getStates());
+        }
+        _applied = _renderer.getStateChangeCount();
+        _skipped = _renderer.getStateSkipCount();
+        return _applied;
+    }
+
+    /**
+     * A state that leaves the OpenGL state untouched when applied.
+     */
+    protected static class RecordingState extends RenderState
+    {
+        public RecordingState (int type)
+        {
+            _type = type;
+        }
+
+        @Override
+        public int getType ()
+        {
+            return _type;
+        }
+
+        @Override
+        public void apply (Renderer renderer)
+        {
+            // no-op; the renderer counts the applications
+        }
+
+        /** The type of the state. */
+        protected int _type;
+    }
+
+    /** The renderer applying the states. */
+    protected Renderer _renderer;
+
+    /** The batches of the frame. */
+    protected List<Batch> _batches = Lists.newArrayList();
+
+    /** The mode used to sort the batches. */
+    protected SortMode _sortMode;
+
+    /** The numbers of states applied and skipped in the last frame. */
+    protected int _applied, _skipped;
+
+    /** The types of the states shared between batches. */
+    protected static final int[] SHARED_STATES = {
+        RenderState.ALPHA_STATE, RenderState.CULL_STATE, RenderState.DEPTH_STATE,
+        RenderState.MATERIAL_STATE };
+
+    /** The distance to the farthest batch. */
+    protected static final float DEPTH_RANGE = 100f;
+}
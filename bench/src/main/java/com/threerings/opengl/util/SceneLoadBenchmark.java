@@ -0,0 +1,308 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.util;
+
+import java.awt.image.BufferedImage;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.lwjgl.BufferUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+
+import com.threerings.math.Box;
+import com.threerings.math.FloatMath;
+import com.threerings.math.Quaternion;
+import com.threerings.math.Transform3D;
+import com.threerings.math.Vector3f;
+
+import com.threerings.opengl.geometry.config.GeometryConfig;
+import com.threerings.opengl.geometry.config.TransformedGeometry;
+import com.threerings.opengl.renderer.config.ClientArrayConfig;
+
+import com.threerings.bench.HeadlessGlContext;
+
+/**
+ * Measures the time to load the resources of a large synthetic scene (decoding its images and
+ * merging its static geometry) through a {@link HeadlessGlContext}, which stands in for the GL
+ * context.  Loading proceeds frame by frame as it does in the scene view: each frame spends up to
+ * the batch budget loading on the render thread, then the rest of the frame "rendering" (spinning,
+ * as a real render thread would keep a core busy).  With no threads, all of the work runs on the
+ * render thread within the budget, as before the loading pipeline; otherwise it runs on the
+ * pipeline's workers and the render thread only stores the results.  The per-stage timings of
+ * each iteration are printed at its end.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=2)
+@Measurement(iterations=5)
+@Fork(1)
+public class SceneLoadBenchmark
+{
+    /** The number of pipeline worker threads, or zero to load on the render thread. */
+    @Param({ "0", "1", "3" })
+    public int threads;
+
+    /** The number of images in the scene. */
+    @Param({ "200" })
+    public int images;
+
+    /** The number of merged static models in the scene. */
+    @Param({ "50" })
+    public int merges;
+
+    @Setup
+    public void setup ()
+        throws IOException
+    {
+        Random random = new Random(1199325877849L);
+
+        // write out the images, filled with noise so that they don't compress away
+        _dir = File.createTempFile("scene", "");
+        _dir.delete();
+        new File(_dir, "images").mkdirs();
+        _paths = new String[images];
+        for (int ii = 0; ii < images; ii++) {
+            BufferedImage image = new BufferedImage(
+                IMAGE_SIZE, IMAGE_SIZE, BufferedImage.TYPE_INT_ARGB);
+            for (int yy = 0; yy < IMAGE_SIZE; yy++) {
+                for (int xx = 0; xx < IMAGE_SIZE; xx++) {
+                    image.setRGB(xx, yy, random.nextInt());
+                }
+            }
+            _paths[ii] = "images/image" + ii + ".png";
+            ImageIO.write(image, "png", new File(_dir, _paths[ii]));
+        }
+        _ctx = new HeadlessGlContext(_dir);
+
+        // create the component geometry of each merged model
+        _components = new TransformedGeometry[merges][COMPONENTS];
+        for (int ii = 0; ii < merges; ii++) {
+            for (int jj = 0; jj < COMPONENTS; jj++) {
+                _components[ii][jj] = new TransformedGeometry(
+                    createGeometry(random), new Transform3D(
+                        new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()),
+                        new Quaternion().fromAngleAxis(
+                            random.nextFloat() * FloatMath.TWO_PI, Vector3f.UNIT_Z),
+                        1f));
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown ()
+    {
+        for (String path : _paths) {
+            new File(_dir, path).delete();
+        }
+        new File(_dir, "images").delete();
+        _dir.delete();
+    }
+
+    @TearDown(Level.Iteration)
+    public void printTimings ()
+    {
+        if (_timings != null) {
+            System.out.println("Stages: " + _timings);
+        }
+    }
+
+    @Benchmark
+    public int load ()
+    {
+        _ctx.getImageCache().clear();
+        return (threads == 0) ? loadSerially() : loadPipelined();
+    }
+
+    /**
+     * Loads everything on the render thread.
+     *
+     * @return the number of frames taken.
+     */
+    protected int loadSerially ()
+    {
+        LoadingPipeline.Stage decode = new LoadingPipeline.Stage(LoadingPipeline.DECODE);
+        LoadingPipeline.Stage merge = new LoadingPipeline.Stage(LoadingPipeline.MERGE);
+        ImageCache cache = _ctx.getImageCache();
+        int frames = 0, idx = 0, total = images + merges;
+        while (idx < total) {
+            long end = System.currentTimeMillis() + BATCH_LOAD_DURATION;
+            for (; idx < total && System.currentTimeMillis() < end; idx++) {
+                long start = System.nanoTime();
+                if (idx < images) {
+                    cache.putBufferedImage(_paths[idx], cache.decodeBufferedImage(_paths[idx]));
+                    decode.record(System.nanoTime() - start, false);
+                } else {
+                    mergeComponents(_components[idx - images]);
+                    merge.record(System.nanoTime() - start, false);
+                }
+            }
+            render();
+            frames++;
+        }
+        _timings = "[" + decode + ", " + merge + "]";
+        return frames;
+    }
+
+    /**
+     * Loads everything through a loading pipeline.
+     *
+     * @return the number of frames taken.
+     */
+    protected int loadPipelined ()
+    {
+        LoadingPipeline pipeline = new LoadingPipeline(_ctx, threads);
+        try {
+            for (String path : _paths) {
+                pipeline.decodeImage(path);
+            }
+            for (final TransformedGeometry[] components : _components) {
+                pipeline.submit(LoadingPipeline.MERGE, new Callable<List<GeometryConfig>>() {
+                    public List<GeometryConfig> call () {
+                        return mergeComponents(components);
+                    }
+                }, new LoadingPipeline.Completion<List<GeometryConfig>>() {
+                    public void complete (List<GeometryConfig> merged) {
+                        // nothing to upload without a GL context
+                    }
+                });
+            }
+            int frames = 0;
+            while (!pipeline.processCompletions(BATCH_LOAD_DURATION)) {
+                render();
+                frames++;
+            }
+            _timings = pipeline.getTimings();
+            return frames;
+
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+
+    /**
+     * Simulates the rendering portion of a frame.
+     */
+    protected static void render ()
+    {
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RENDER_DURATION);
+        while (System.nanoTime() < end);
+    }
+
+    /**
+     * Merges the supplied components as a merged static model does.
+     */
+    protected static List<GeometryConfig> mergeComponents (TransformedGeometry[] components)
+    {
+        List<TransformedGeometry> glist = Lists.newArrayList(components);
+        List<GeometryConfig> merged = Lists.newArrayList();
+        while (!glist.isEmpty()) {
+            GeometryConfig geom = glist.get(0).geometry.merge(glist);
+            if (geom != null) {
+                merged.add(geom);
+            } else {
+                glist.remove(0);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Creates a piece of indexed geometry with interleaved normals and vertices.
+     */
+    protected static GeometryConfig createGeometry (Random random)
+    {
+        FloatBuffer data = BufferUtils.createFloatBuffer(VERTICES * 6);
+        for (int ii = 0, nn = data.capacity(); ii < nn; ii++) {
+            data.put(ii, random.nextFloat() * 2f - 1f);
+        }
+        ShortBuffer indices = BufferUtils.createShortBuffer(VERTICES * 3);
+        for (int ii = 0, nn = indices.capacity(); ii < nn; ii++) {
+            indices.put(ii, (short)random.nextInt(VERTICES));
+        }
+        return new GeometryConfig.IndexedStored(
+            new Box(new Vector3f(-1f, -1f, -1f), new Vector3f(1f, 1f, 1f)),
+            GeometryConfig.Mode.TRIANGLES, null, null, null,
+            new ClientArrayConfig(3, 24, 0, data), new ClientArrayConfig(3, 24, 12, data),
+            0, VERTICES - 1, indices);
+    }
+
+    /** The stand-in GL context. */
+    protected HeadlessGlContext _ctx;
+
+    /** The resource directory. */
+    protected File _dir;
+
+    /** The resource paths of the images. */
+    protected String[] _paths;
+
+    /** The components of each merged model. */
+    protected TransformedGeometry[][] _components;
+
+    /** The stage timings of the last load. */
+    protected String _timings;
+
+    /** The size of the images. */
+    protected static final int IMAGE_SIZE = 256;
+
+    /** The number of components in each merged model. */
+    protected static final int COMPONENTS = 20;
+
+    /** The number of vertices in each component. */
+    protected static final int VERTICES = 1000;
+
+    /** The loading budget per frame, as in the scene view. */
+    protected static final long BATCH_LOAD_DURATION = 50L;
+
+    /** The rendering time per frame. */
+    protected static final long RENDER_DURATION = 16L;
+}
@@ -0,0 +1,247 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.util;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.threerings.opengl.util.PixelUtil.MipFilter;
+
+/**
+ * Compares the Java2D conversion of images to texture data with the array-based pipeline in
+ * {@link PixelUtil} and {@link TextureData}, for the image types commonly produced by the image
+ * decoders.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class TextureDataBenchmark
+{
+    /** The type of image to convert. */
+    @Param({ "4BYTE_ABGR", "3BYTE_BGR", "INT_ARGB", "BYTE_GRAY", "BYTE_INDEXED" })
+    public String type;
+
+    /** The (non-power-of-two) size of the image. */
+    @Param({ "200", "1000" })
+    public int size;
+
+    @Setup
+    public void setup ()
+        throws IOException
+    {
+        _image = new BufferedImage(size, size, getType(type));
+        Random random = new Random(1199325877849L);
+        for (int yy = 0; yy < size; yy++) {
+            for (int xx = 0; xx < size; xx++) {
+                _image.setRGB(xx, yy, random.nextInt());
+            }
+        }
+        _tsize = GlUtil.nextPowerOfTwo(size);
+        _pixels = PixelUtil.getPixels(_image, null);
+        _data = ByteBuffer.allocateDirect(_tsize * _tsize * PixelUtil.getComponents(_image));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TextureData.create(_image, true, _tsize, _tsize, true, true, MipFilter.BOX).write(out);
+        _serialized = out.toByteArray();
+    }
+
+    @Benchmark
+    public ByteBuffer java2DData ()
+    {
+        return getJava2DData(_image, true, _tsize, _tsize, true);
+    }
+
+    @Benchmark
+    public ByteBuffer pixelData ()
+    {
+        _data.clear();
+        PixelUtil.getData(
+            _pixels = PixelUtil.getPixels(_image, _pixels), size, size,
+            PixelUtil.getComponents(_image), true, _tsize, _tsize, true, _data);
+        return _data;
+    }
+
+    @Benchmark
+    public int java2DMipChain ()
+    {
+        // what Texture1D and TextureCubeMap used to do for each level
+        int bytes = 0;
+        BufferedImage image = _image;
+        for (int ss = _tsize; ss > 0; ss /= 2) {
+            bytes += getJava2DData(image, true, ss, ss, true).capacity();
+            image = halveJava2DImage(image);
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    public TextureData boxMipChain ()
+    {
+        return TextureData.create(_image, true, _tsize, _tsize, true, true, MipFilter.BOX);
+    }
+
+    @Benchmark
+    public TextureData kaiserMipChain ()
+    {
+        return TextureData.create(_image, true, _tsize, _tsize, true, true, MipFilter.KAISER);
+    }
+
+    @Benchmark
+    public TextureData readMipChain ()
+        throws IOException
+    {
+        return TextureData.read(new ByteArrayInputStream(_serialized));
+    }
+
+    /**
+     * The Java2D version of {@link com.threerings.opengl.renderer.Texture#getData}.
+     */
+    protected static ByteBuffer getJava2DData (
+        BufferedImage image, boolean premultiply, int width, int height, boolean rescale)
+    {
+        int iwidth = image.getWidth(), iheight = image.getHeight();
+        int ncomps = image.getColorModel().getNumComponents();
+        boolean hasAlpha = (ncomps == 2 || ncomps == 4);
+        ComponentColorModel cmodel = new ComponentColorModel(
+            ColorSpace.getInstance(ncomps >= 3 ? ColorSpace.CS_sRGB : ColorSpace.CS_GRAY),
+            hasAlpha,
+            hasAlpha && premultiply,
+            hasAlpha ? Transparency.TRANSLUCENT : Transparency.OPAQUE,
+            DataBuffer.TYPE_BYTE);
+        BufferedImage dest = new BufferedImage(
+            cmodel,
+            Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE, width, height, ncomps, null),
+            cmodel.isAlphaPremultiplied(), null);
+        double xscale, yscale;
+        if (rescale && (width != iwidth || height != iheight)) {
+            xscale = (double)width / iwidth;
+            yscale = -(double)height / iheight;
+        } else {
+            xscale = +1.0;
+            yscale = -1.0;
+        }
+        AffineTransform xform = AffineTransform.getScaleInstance(xscale, yscale);
+        xform.translate(0.0, -iheight);
+        Graphics2D graphics = dest.createGraphics();
+        try {
+            graphics.setComposite(AlphaComposite.Src);
+            graphics.setRenderingHint(
+                RenderingHints.KEY_INTERPOLATION,
+                rescale ? RenderingHints.VALUE_INTERPOLATION_BILINEAR :
+                    RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            graphics.drawRenderedImage(image, xform);
+        } finally {
+            graphics.dispose();
+        }
+        byte[] rgba = ((DataBufferByte)dest.getRaster().getDataBuffer()).getData();
+        ByteBuffer data = ByteBuffer.allocateDirect(width * height * ncomps);
+        data.put(rgba).rewind();
+        return data;
+    }
+
+    /**
+     * The Java2D version of {@link com.threerings.opengl.renderer.Texture#halveImage}.
+     */
+    protected static BufferedImage halveJava2DImage (BufferedImage image)
+    {
+        int width = Math.max(1, image.getWidth() / 2);
+        int height = Math.max(1, image.getHeight() / 2);
+        BufferedImage dest = new BufferedImage(width, height, image.getType());
+        Graphics2D graphics = dest.createGraphics();
+        try {
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return dest;
+    }
+
+    /**
+     * Returns the buffered image type constant with the specified name (less the prefix).
+     */
+    protected static int getType (String name)
+    {
+        if (name.equals("4BYTE_ABGR")) {
+            return BufferedImage.TYPE_4BYTE_ABGR;
+        } else if (name.equals("3BYTE_BGR")) {
+            return BufferedImage.TYPE_3BYTE_BGR;
+        } else if (name.equals("INT_ARGB")) {
+            return BufferedImage.TYPE_INT_ARGB;
+        } else if (name.equals("BYTE_GRAY")) {
+            return BufferedImage.TYPE_BYTE_GRAY;
+        } else {
+            return BufferedImage.TYPE_BYTE_INDEXED;
+        }
+    }
+
+    /** The image to convert. */
+    protected BufferedImage _image;
+
+    /** The power-of-two texture size. */
+    protected int _tsize;
+
+    /** The reused pixel array. */
+    protected byte[] _pixels;
+
+    /** The reused data buffer. */
+    protected ByteBuffer _data;
+
+    /** The serialized texture data. */
+    protected byte[] _serialized;
+}
@@ -0,0 +1,169 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.client;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Sets;
+
+import com.samskivert.util.ArrayIntSet;
+import com.samskivert.util.HashIntMap;
+
+import com.threerings.config.ConfigReference;
+import com.threerings.math.Vector2f;
+import com.threerings.util.PersistentIntMap;
+
+import com.threerings.tudey.config.ActorConfig;
+import com.threerings.tudey.data.actor.Actor;
+
+/**
+ * Benchmarks the work done by the view's update records for each scene delta: applying the
+ * changed actors to the reference state and finding the actors whose sprites need updating,
+ * either by cloning a hash map and visiting every actor (as the view formerly did) or by
+ * updating a persistent map and visiting the differences.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class UpdateRecordBenchmark
+{
+    /** The number of actors in the scene. */
+    @Param({ "100", "500", "2000" })
+    public int actors;
+
+    /** The number of actors changed by each delta. */
+    @Param({ "4", "32" })
+    public int changes;
+
+    @Setup
+    public void setup ()
+    {
+        Random random = new Random(1199325877849L);
+        ConfigReference<ActorConfig> ref = new ConfigReference<ActorConfig>("bench/actor");
+        _hashActors = new HashIntMap<Actor>();
+        _persistentActors = new PersistentIntMap<Actor>();
+        _changed = new Actor[actors];
+        for (int ii = 0; ii < actors; ii++) {
+            // space the ids out somewhat, as removed actors leave gaps
+            int id = ii * 3 + random.nextInt(3) + 1;
+            Vector2f translation = new Vector2f(random.nextFloat(), random.nextFloat());
+            Actor actor = new Actor(ref, id, 0, translation, 0f);
+            _hashActors.put(id, actor);
+            _persistentActors = _persistentActors.put(id, actor);
+            _changed[ii] = (Actor)actor.clone();
+        }
+        _visitor = new PersistentIntMap.Visitor<Actor>() {
+            public void entryAdded (int id, Actor actor) {
+                _visited += _uids.contains(id) ? 2 : 1;
+            }
+            public void entryUpdated (int id, Actor oactor, Actor nactor) {
+                _visited += _uids.contains(id) ? 2 : 1;
+            }
+            public void entryRemoved (int id, Actor actor) {
+                _visited++;
+            }
+        };
+    }
+
+    @Benchmark
+    public int hashMap ()
+    {
+        HashIntMap<Actor> actors = _hashActors.clone();
+        Set<Integer> uids = Sets.newHashSet();
+        for (int ii = 0; ii < changes; ii++) {
+            Actor actor = nextChanged();
+            actors.put(actor.getId(), actor);
+            uids.add(actor.getId());
+        }
+        int visited = 0;
+        for (Actor actor : actors.values()) {
+            visited += uids.contains(actor.getId()) ? 2 : 1;
+        }
+        return visited;
+    }
+
+    @Benchmark
+    public int persistentMap ()
+    {
+        PersistentIntMap<Actor> actors = _persistentActors;
+        _uids.clear();
+        for (int ii = 0; ii < changes; ii++) {
+            Actor actor = nextChanged();
+            actors = actors.put(actor.getId(), actor);
+            _uids.add(actor.getId());
+        }
+        _visited = 0;
+        PersistentIntMap.diff(_persistentActors, actors, _visitor);
+        return _visited;
+    }
+
+    /**
+     * Returns the next changed actor state in the rotation.
+     */
+    protected Actor nextChanged ()
+    {
+        _idx = (_idx + 7) % _changed.length;
+        return _changed[_idx];
+    }
+
+    /** The reference actor states as a hash map. */
+    protected HashIntMap<Actor> _hashActors;
+
+    /** The reference actor states as a persistent map. */
+    protected PersistentIntMap<Actor> _persistentActors;
+
+    /** Changed states for each actor. */
+    protected Actor[] _changed;
+
+    /** The ids of the changed actors. */
+    protected ArrayIntSet _uids = new ArrayIntSet();
+
+    /** Visits the differences between the persistent maps. */
+    protected PersistentIntMap.Visitor<Actor> _visitor;
+
+    /** The number of actors visited, weighted by whether they were updated. */
+    protected int _visited;
+
+    /** The index of the last changed state used. */
+    protected int _idx;
+}
@@ -0,0 +1,113 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.threerings.config.ConfigManager;
+import com.threerings.export.util.ExportUtil;
+
+import com.threerings.bench.HeadlessConfigManager;
+import com.threerings.bench.SceneFixtures;
+
+/**
+ * Benchmarks the startup of a number of instances of the same scene, computing the derived data
+ * for each, sharing it between them, or reading it from a precomputed sidecar.  Run with
+ * <code>-prof gc</code> to compare the allocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+public class SceneModelBenchmark
+{
+    /** The number of instances of the scene. */
+    @Param({ "1", "10", "50" })
+    public int instances;
+
+    /** How the instances obtain their derived data. */
+    @Param({ "compute", "share", "sidecar" })
+    public String source;
+
+    @Setup
+    public void setup ()
+        throws IOException
+    {
+        _cfgmgr = new HeadlessConfigManager();
+        TudeySceneModel model = SceneFixtures.createModel(
+            _cfgmgr, new Random(1199325877849L), 128, 16);
+        _data = model.getData();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        model.writeDerivedData(out);
+        _derived = out.toByteArray();
+    }
+
+    @Benchmark
+    public TudeySceneModel[] initInstances ()
+    {
+        TudeySceneModel[] models = new TudeySceneModel[instances];
+        TudeySceneModel.SharedData shared = null;
+        for (int ii = 0; ii < instances; ii++) {
+            TudeySceneModel model = models[ii] = (TudeySceneModel)ExportUtil.fromBytes(_data);
+            if (source.equals("share")) {
+                shared = model.init(_cfgmgr, shared);
+            } else if (source.equals("sidecar")) {
+                model.init(_cfgmgr, new ByteArrayInputStream(_derived));
+            } else {
+                model.init(_cfgmgr);
+            }
+        }
+        return models;
+    }
+
+    /** The config manager. */
+    protected ConfigManager _cfgmgr;
+
+    /** The exported scene. */
+    protected byte[] _data;
+
+    /** The scene's derived data. */
+    protected byte[] _derived;
+}
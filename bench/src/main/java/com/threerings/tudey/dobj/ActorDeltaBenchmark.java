@@ -0,0 +1,106 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.dobj;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.threerings.config.ConfigReference;
+import com.threerings.math.Vector2f;
+
+import com.threerings.delta.Delta;
+import com.threerings.delta.ReflectiveDelta;
+
+import com.threerings.tudey.config.ActorConfig;
+import com.threerings.tudey.data.actor.Mobile;
+
+/**
+ * Benchmarks the creation, application, and merging of actor deltas (which are computed
+ * reflectively by {@link ReflectiveDelta}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class ActorDeltaBenchmark
+{
+    @Setup
+    public void setup ()
+    {
+        ConfigReference<ActorConfig> config = new ConfigReference<ActorConfig>("bench/mobile");
+        _original = new Mobile(config, 1, 0, new Vector2f(10f, 20f), 0.5f);
+        _moved = (Mobile)_original.clone();
+        _moved.setTranslation(10.5f, 20.25f);
+        _moved.setDirection(0.75f);
+        _turned = (Mobile)_moved.clone();
+        _turned.setRotation(1.25f);
+        _turned.setFlags(Mobile.MOVING);
+        _delta = new ActorDelta(_original, _moved);
+        _next = new ActorDelta(_moved, _turned);
+    }
+
+    @Benchmark
+    public ActorDelta createDelta ()
+    {
+        return new ActorDelta(_original, _moved);
+    }
+
+    @Benchmark
+    public ReflectiveDelta createEmptyDelta ()
+    {
+        return new ActorDelta(_original, _original);
+    }
+
+    @Benchmark
+    public Object applyDelta ()
+    {
+        return _delta.apply(_original);
+    }
+
+    @Benchmark
+    public Delta mergeDeltas ()
+    {
+        return _delta.merge(_next);
+    }
+
+    /** The actor states between which we compute deltas. */
+    protected Mobile _original, _moved, _turned;
+
+    /** Precomputed deltas. */
+    protected ActorDelta _delta, _next;
+}
@@ -0,0 +1,169 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.threerings.config.ConfigReference;
+import com.threerings.math.FloatMath;
+import com.threerings.math.Vector2f;
+
+import com.threerings.bench.HeadlessConfigManager;
+
+import com.threerings.tudey.config.ActorConfig;
+import com.threerings.tudey.config.BehaviorConfig;
+import com.threerings.tudey.data.TudeySceneModel;
+import com.threerings.tudey.shape.config.ShapeConfig;
+
+/**
+ * Measures the cost of a scene tick with thousands of wandering agents spread over a large
+ * area, a few of which are near one of the viewers (stand-ins for the clients' pawns) that
+ * circle the area.  With dormancy enabled, the agents far from every viewer tick at the reduced
+ * rate.  The numbers of agents ticked at the full and reduced rates are printed at the end of
+ * each iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class AgentDormancyBenchmark
+{
+    /** The number of agents. */
+    @Param({ "2000", "5000" })
+    public int agents;
+
+    /** The number of viewers. */
+    @Param({ "4" })
+    public int viewers;
+
+    /** Whether or not the agents become dormant out of interest. */
+    @Param({ "false", "true" })
+    public boolean dormancy;
+
+    @Setup
+    public void setUp ()
+    {
+        Random random = new Random(1199325877849L);
+        HeadlessConfigManager cfgmgr = new HeadlessConfigManager();
+
+        BehaviorConfig behavior = new BehaviorConfig();
+        behavior.setName("bench/wander");
+        behavior.implementation = new BehaviorConfig.Wander();
+        cfgmgr.addConfig(BehaviorConfig.class, behavior);
+
+        ActorConfig.Agent agent = new ActorConfig.Agent();
+        ShapeConfig.Circle shape = new ShapeConfig.Circle();
+        shape.radius = 0.5f;
+        agent.shape = shape;
+        agent.speed = 4f;
+        agent.startInStasis = false;
+        agent.behavior = new ConfigReference<BehaviorConfig>("bench/wander");
+        agent.dormancyInterval = dormancy ? DORMANCY_INTERVAL : 0;
+        ActorConfig actor = new ActorConfig();
+        actor.setName("bench/agent");
+        actor.implementation = agent;
+        cfgmgr.addConfig(ActorConfig.class, actor);
+
+        TudeySceneModel model = new TudeySceneModel();
+        model.init(cfgmgr);
+        _scenemgr = new HeadlessSceneManager(model);
+        for (int ii = 0; ii < agents; ii++) {
+            _scenemgr.spawnActor(0, new Vector2f(
+                random.nextFloat() * WORLD_SIZE, random.nextFloat() * WORLD_SIZE),
+                random.nextFloat() * FloatMath.TWO_PI, "bench/agent");
+        }
+        _viewers = new Vector2f[viewers];
+        for (int ii = 0; ii < viewers; ii++) {
+            _scenemgr.addViewer(_viewers[ii] = new Vector2f());
+        }
+
+        // run long enough for the agents out of interest to fall asleep
+        for (int ii = 0, nn = 2 * DORMANCY_INTERVAL / TICK_INTERVAL; ii < nn; ii++) {
+            tick();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void printCounts ()
+    {
+        System.out.println("\n[agents] active " + _scenemgr.getActiveAgentCount() +
+            ", dormant " + _scenemgr.getDormantAgentCount());
+    }
+
+    @Benchmark
+    public void tick ()
+    {
+        // move the viewers around circles of different radii
+        _now += TICK_INTERVAL;
+        float angle = _now * VIEWER_SPEED;
+        float center = WORLD_SIZE * 0.5f;
+        for (int ii = 0; ii < _viewers.length; ii++) {
+            float radius = center * (ii + 1) / (_viewers.length + 1);
+            float theta = angle * center / radius + ii * FloatMath.TWO_PI / _viewers.length;
+            _viewers[ii].set(center + radius * FloatMath.cos(theta),
+                center + radius * FloatMath.sin(theta));
+        }
+        _scenemgr.tick(_now);
+    }
+
+    /** The scene manager. */
+    protected HeadlessSceneManager _scenemgr;
+
+    /** The locations of the viewers. */
+    protected Vector2f[] _viewers;
+
+    /** The simulated time. */
+    protected long _now;
+
+    /** The width and height of the area over which the agents are spread. */
+    protected static final float WORLD_SIZE = 1000f;
+
+    /** The dormancy interval, when enabled. */
+    protected static final int DORMANCY_INTERVAL = 2000;
+
+    /** The interval between ticks. */
+    protected static final int TICK_INTERVAL = 50;
+
+    /** The angular speed of the viewers at the center of their circles, in radians per ms. */
+    protected static final float VIEWER_SPEED = 0.00001f;
+}
@@ -0,0 +1,149 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import com.samskivert.util.ObserverList;
+
+import com.threerings.whirled.data.SceneImpl;
+
+import com.threerings.config.ConfigReference;
+import com.threerings.math.Rect;
+import com.threerings.math.Vector2f;
+
+import com.threerings.tudey.config.ActorConfig;
+import com.threerings.tudey.data.TudeySceneConfig;
+import com.threerings.tudey.data.TudeySceneModel;
+import com.threerings.tudey.data.actor.Actor;
+import com.threerings.tudey.server.logic.ActorLogic;
+import com.threerings.tudey.server.logic.Logic;
+import com.threerings.tudey.server.util.PathQueue;
+import com.threerings.tudey.server.util.Pathfinder;
+
+/**
+ * A scene manager that runs without a server, so that benchmarks may spawn actors into a scene
+ * and tick it with the real logic, pathfinder and path queue.  There is no place object manager,
+ * no injector and there are no clients; instead, the benchmark adds viewers, whose areas of
+ * interest are treated like those of the clients' pawns for the purpose of agent dormancy.  The
+ * scene is ticked with {@link #tick(long)} and the simulated time.
+ */
+public class HeadlessSceneManager extends TudeySceneManager
+{
+    /**
+     * Creates a new manager for the supplied (initialized) scene model.
+     */
+    public HeadlessSceneManager (TudeySceneModel model)
+    {
+        _config = new TudeySceneConfig();
+        _scene = new SceneImpl(model, _config);
+        _plobj = createPlaceObject();
+        _cfgmgr = model.getConfigManager();
+        _pathfinder = new Pathfinder(this);
+        _pathQueue = new PathQueue(this);
+        setTickedExternally(true);
+    }
+
+    /**
+     * Adds a viewer at the specified location.  The location is retained, so that the viewer may
+     * be moved by changing it.
+     */
+    public void addViewer (Vector2f location)
+    {
+        _viewers.add(location);
+    }
+
+    @Override
+    public ActorLogic spawnActor (
+        int timestamp, Vector2f translation, float rotation,
+        ConfigReference<ActorConfig> ref, Actor actor)
+    {
+        // as in the superclass, but without a place object to check or a recorder
+        ActorConfig config = _cfgmgr.getConfig(ActorConfig.class, ref);
+        ActorConfig.Original original = (config == null) ? null : config.getOriginal(_cfgmgr);
+        if (original == null) {
+            return null;
+        }
+        final ActorLogic logic = (ActorLogic)createLogic(original.getLogicClassName());
+        if (logic == null) {
+            return null;
+        }
+        int id = (actor == null) ? ++_lastActorId : actor.getId();
+        logic.init(this, ref, original, id, timestamp, translation, rotation, actor);
+        _actors.put(id, logic);
+        addMappings(logic);
+        if (logic.isStatic()) {
+            _staticActors.add(logic);
+            _staticActorsAdded.add(logic);
+        }
+        _actorObservers.apply(new ObserverList.ObserverOp<ActorObserver>() {
+            public boolean apply (ActorObserver observer) {
+                observer.actorAdded(logic);
+                return true;
+            }
+        });
+        return logic;
+    }
+
+    @Override
+    public Logic createLogic (String cname)
+    {
+        // there's no injector, so the logic classes must have no injected dependencies
+        try {
+            return (Logic)Class.forName(cname).newInstance();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Failed to instantiate logic: " + cname, e);
+        }
+    }
+
+    @Override
+    protected void noteClientInterest ()
+    {
+        super.noteClientInterest();
+        for (int ii = 0, nn = _viewers.size(); ii < nn; ii++) {
+            Vector2f location = _viewers.get(ii);
+            _defaultLocalInterest.getMinimumExtent().add(
+                location, _viewerInterest.getMinimumExtent());
+            _defaultLocalInterest.getMaximumExtent().add(
+                location, _viewerInterest.getMaximumExtent());
+            noteInterest(_viewerInterest);
+        }
+    }
+
+    @Override
+    protected long idleTickPeriod ()
+    {
+        return Long.MAX_VALUE; // never stop ticking for lack of occupants
+    }
+
+    /** The locations of the viewers. */
+    protected List<Vector2f> _viewers = Lists.newArrayList();
+
+    /** Holds a viewer's area of interest. */
+    protected Rect _viewerInterest = new Rect();
+}
@@ -0,0 +1,173 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.threerings.media.util.AStarPathUtil;
+import com.threerings.media.util.MathUtil;
+
+import com.threerings.math.Vector2f;
+
+import com.threerings.bench.SceneFixtures;
+import com.threerings.tudey.util.CoordIntMap;
+
+/**
+ * Compares the total cost of pathing for a group of followers chasing the same moving target:
+ * one A* search per follower with {@link PathSearch}, against a single {@link FlowField} that
+ * every follower reads its path from.  Each invocation moves the target to the next cell on its
+ * route and computes the paths of all of the followers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class FlowFieldBenchmark
+{
+    /** The number of followers. */
+    @Param({ "10", "100", "1000" })
+    public int followers;
+
+    /** The pathing implementation. */
+    @Param({ "astar", "flow" })
+    public String impl;
+
+    @Setup
+    public void setup ()
+    {
+        Random random = new Random(1199325877849L);
+        final CoordIntMap flags = SceneFixtures.createMaze(random, SIZE, 8);
+        _pred = new AStarPathUtil.TraversalPred() {
+            public boolean canTraverse (Object traverser, int x, int y) {
+                return (SceneFixtures.WALL_FLAG & flags.get(
+                    MathUtil.floorDiv(x, Pathfinder.SUBDIVISION),
+                    MathUtil.floorDiv(y, Pathfinder.SUBDIVISION))) == 0;
+            }
+        };
+        int extent = SIZE * Pathfinder.SUBDIVISION;
+
+        // the target wanders around the middle of the maze
+        _route = new int[ROUTE_LENGTH * 2];
+        int x = extent / 2, y = extent / 2;
+        while (!_pred.canTraverse(null, x, y)) {
+            x++;
+        }
+        for (int ii = 0; ii < _route.length; ) {
+            int nx = x + random.nextInt(3) - 1, ny = y + random.nextInt(3) - 1;
+            if (_pred.canTraverse(null, nx, ny)) {
+                _route[ii++] = x = nx;
+                _route[ii++] = y = ny;
+            }
+        }
+
+        // the followers are scattered around it
+        _followers = new int[followers * 2];
+        for (int ii = 0; ii < _followers.length; ) {
+            int fx = extent/2 + random.nextInt(SPREAD*2 + 1) - SPREAD;
+            int fy = extent/2 + random.nextInt(SPREAD*2 + 1) - SPREAD;
+            if (_pred.canTraverse(null, fx, fy)) {
+                _followers[ii++] = fx;
+                _followers[ii++] = fy;
+            }
+        }
+        _field = new FlowField(_pred, null, SPREAD * 2, OFFSET, OFFSET);
+        _search.setJumpPoints(true);
+    }
+
+    @Benchmark
+    public int pathAll ()
+    {
+        int ridx = (_ridx += 2) % _route.length;
+        int tx = _route[ridx], ty = _route[ridx + 1];
+        int total = 0;
+        if ("astar".equals(impl)) {
+            for (int ii = 0; ii < _followers.length; ii += 2) {
+                _search.init(_pred, null, LONGEST, _followers[ii], _followers[ii + 1],
+                    tx, ty, true);
+                _search.resume(Integer.MAX_VALUE);
+                total += _search.getPathLength();
+            }
+        } else {
+            _field.setTargetCell(tx, ty);
+            for (int ii = 0; ii < _followers.length; ii += 2) {
+                Vector2f[] path = _field.getPath(
+                    (_followers[ii] + OFFSET) / Pathfinder.SUBDIVISION,
+                    (_followers[ii + 1] + OFFSET) / Pathfinder.SUBDIVISION, LONGEST);
+                total += (path == null) ? 0 : path.length;
+            }
+        }
+        return total;
+    }
+
+    /** The traversal predicate. */
+    protected AStarPathUtil.TraversalPred _pred;
+
+    /** The cells visited by the target (x, y). */
+    protected int[] _route;
+
+    /** The index of the target's current cell on its route. */
+    protected int _ridx;
+
+    /** The locations of the followers (x, y). */
+    protected int[] _followers;
+
+    /** The shared flow field. */
+    protected FlowField _field;
+
+    /** The reusable search. */
+    protected PathSearch _search = new PathSearch();
+
+    /** The width and height of the maze (in entry cells). */
+    protected static final int SIZE = 64;
+
+    /** The number of cells on the target's route. */
+    protected static final int ROUTE_LENGTH = 256;
+
+    /** The maximum distance of the followers from the center of the maze, in cells (the flow
+     * field covers twice that distance around the target). */
+    protected static final int SPREAD = 24;
+
+    /** The maximum path length, in cells. */
+    protected static final int LONGEST = 1024;
+
+    /** The offset for converting the (single-cell) followers' cells to world coordinates. */
+    protected static final float OFFSET = Pathfinder.getOffset(1);
+}
@@ -0,0 +1,232 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Lists;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.threerings.config.ConfigReference;
+import com.threerings.math.Vector2f;
+
+import com.threerings.bench.HeadlessConfigManager;
+import com.threerings.bench.SceneFixtures;
+
+import com.threerings.tudey.config.ActorConfig;
+import com.threerings.tudey.config.TileConfig;
+import com.threerings.tudey.data.TudeySceneModel;
+import com.threerings.tudey.data.TudeySceneModel.TileEntry;
+import com.threerings.tudey.server.HeadlessSceneManager;
+import com.threerings.tudey.server.logic.ActorLogic;
+import com.threerings.tudey.shape.config.ShapeConfig;
+import com.threerings.tudey.util.CoordIntMap;
+
+/**
+ * Stress tests the path computation of a scene in which a thousand agents retarget
+ * simultaneously, sampling the time of each tick so that the results report the tick time
+ * distribution.  The agents are spawned into a {@link HeadlessSceneManager} over a maze of wall
+ * tiles.  In the <code>sync</code> mode, every agent computes its path with the scene's
+ * {@link Pathfinder} on the tick on which it retargets, as the behaviors did before the
+ * {@link PathQueue}.  In the <code>queued</code> mode, the agents request their paths from the
+ * scene's queue, which coalesces them and services them under its per-tick expansion budget as
+ * the scene ticks.  There are no clients, so all of the queued requests have the same priority.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class PathQueueBenchmark
+{
+    /** The scheduling mode. */
+    @Param({ "sync", "queued" })
+    public String mode;
+
+    /** The number of agents. */
+    @Param({ "1000" })
+    public int agents;
+
+    /** The number of ticks between simultaneous retargetings. */
+    @Param({ "30" })
+    public int period;
+
+    /** The number of search nodes to expand on each tick (queued mode only). */
+    @Param({ "20000" })
+    public int budget;
+
+    @Setup
+    public void setup ()
+    {
+        Random random = new Random(1199325877849L);
+        HeadlessConfigManager cfgmgr = new HeadlessConfigManager();
+
+        TileConfig.Original wall = new TileConfig.Original();
+        wall.collisionFlags = new int[][] { { SceneFixtures.WALL_FLAG } };
+        TileConfig tile = new TileConfig();
+        tile.setName("bench/wall");
+        tile.implementation = wall;
+        cfgmgr.addConfig(TileConfig.class, tile);
+
+        ActorConfig.Agent agent = new ActorConfig.Agent();
+        ShapeConfig.Circle shape = new ShapeConfig.Circle();
+        shape.radius = 0.25f;
+        agent.shape = shape;
+        agent.collisionMask = SceneFixtures.WALL_FLAG;
+        ActorConfig actor = new ActorConfig();
+        actor.setName("bench/agent");
+        actor.implementation = agent;
+        cfgmgr.addConfig(ActorConfig.class, actor);
+
+        // build the maze out of wall tiles
+        CoordIntMap flags = SceneFixtures.createMaze(random, MAZE_SIZE, 8);
+        TudeySceneModel model = new TudeySceneModel();
+        model.init(cfgmgr);
+        for (CoordIntMap.CoordIntEntry entry : flags.coordIntEntrySet()) {
+            TileEntry tentry = new TileEntry();
+            tentry.tile = new ConfigReference<TileConfig>("bench/wall");
+            tentry.getLocation().set(entry.getKey().x, entry.getKey().y);
+            model.addEntry(tentry);
+        }
+        _scenemgr = new HeadlessSceneManager(model);
+        _scenemgr.getPathQueue().setExpansionBudget(budget);
+
+        // place the agents in clusters around spawn points, and the players at random
+        Vector2f[] spawns = randomLocations(random, flags, agents / 4);
+        for (int ii = 0; ii < agents; ii++) {
+            _agents.add(_scenemgr.spawnActor(
+                0, spawns[random.nextInt(spawns.length)], 0f, "bench/agent"));
+        }
+        _players = randomLocations(random, flags, 4);
+        _longest = MAZE_SIZE * Pathfinder.SUBDIVISION * 4;
+    }
+
+    @Benchmark
+    public int tick ()
+    {
+        // every so often, all of the agents retarget to the closest player
+        if (_tick++ % period == 0) {
+            Pathfinder pathfinder = _scenemgr.getPathfinder();
+            PathQueue queue = _scenemgr.getPathQueue();
+            for (int ii = 0, nn = _agents.size(); ii < nn; ii++) {
+                ActorLogic agent = _agents.get(ii);
+                Vector2f player = getClosestPlayer(agent.getTranslation());
+                if ("sync".equals(mode)) {
+                    _listener.pathComputed(pathfinder.getEntryPath(
+                        agent, _longest, player.x, player.y, true, false));
+                } else {
+                    queue.request(false, agent, _longest, player.x, player.y, true, false,
+                        _listener);
+                }
+            }
+        }
+        _now += TICK_INTERVAL;
+        _scenemgr.tick(_now);
+        return _completed;
+    }
+
+    /**
+     * Returns the location of the player closest to the specified location.
+     */
+    protected Vector2f getClosestPlayer (Vector2f location)
+    {
+        Vector2f closest = null;
+        float cdist = Float.MAX_VALUE;
+        for (Vector2f player : _players) {
+            float dist = player.distanceSquared(location);
+            if (dist < cdist) {
+                closest = player;
+                cdist = dist;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Chooses the specified number of random locations at the centers of open cells of the maze.
+     */
+    protected static Vector2f[] randomLocations (Random random, CoordIntMap flags, int count)
+    {
+        Vector2f[] locations = new Vector2f[count];
+        for (int ii = 0; ii < count; ) {
+            int x = random.nextInt(MAZE_SIZE), y = random.nextInt(MAZE_SIZE);
+            if (flags.get(x, y) == 0) {
+                locations[ii++] = new Vector2f(x + 0.5f, y + 0.5f);
+            }
+        }
+        return locations;
+    }
+
+    /** The scene manager. */
+    protected HeadlessSceneManager _scenemgr;
+
+    /** The agents. */
+    protected List<ActorLogic> _agents = Lists.newArrayList();
+
+    /** The locations of the players. */
+    protected Vector2f[] _players;
+
+    /** The maximum path length. */
+    protected float _longest;
+
+    /** The current tick. */
+    protected int _tick;
+
+    /** The simulated time. */
+    protected long _now;
+
+    /** The number of paths computed. */
+    protected int _completed;
+
+    /** Counts the computed paths. */
+    protected PathQueue.Listener _listener = new PathQueue.Listener() {
+        public void pathComputed (Vector2f[] path) {
+            if (path != null) {
+                _completed++;
+            }
+        }
+    };
+
+    /** The width and height of the maze, in tiles. */
+    protected static final int MAZE_SIZE = 128;
+
+    /** The interval between ticks. */
+    protected static final int TICK_INTERVAL = 50;
+}
@@ -0,0 +1,131 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.threerings.media.util.AStarPathUtil;
+import com.threerings.media.util.MathUtil;
+
+import com.threerings.bench.SceneFixtures;
+import com.threerings.tudey.util.CoordIntMap;
+
+/**
+ * Benchmarks the path searches performed by the {@link Pathfinder}: A* over a subdivided grid of
+ * cells, with a traversal predicate that consults the entry collision flags.  The pathfinder
+ * itself requires a running scene manager, so this reproduces its search over a synthetic maze
+ * (or an open, walled square), comparing {@link AStarPathUtil} with {@link PathSearch} with and
+ * without jump points.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class PathfinderBenchmark
+{
+    /** The width and height of the maze (in entry cells). */
+    @Param({ "32", "128" })
+    public int size;
+
+    /** The layout of the map. */
+    @Param({ "maze", "open" })
+    public String map;
+
+    /** The search implementation. */
+    @Param({ "astar", "search", "jps" })
+    public String impl;
+
+    @Setup
+    public void setup ()
+    {
+        Random random = new Random(1199325877849L);
+        final CoordIntMap flags = SceneFixtures.createMaze(
+            random, size, "maze".equals(map) ? 8 : size);
+        _pred = new AStarPathUtil.TraversalPred() {
+            public boolean canTraverse (Object traverser, int x, int y) {
+                return (SceneFixtures.WALL_FLAG & flags.get(
+                    MathUtil.floorDiv(x, Pathfinder.SUBDIVISION),
+                    MathUtil.floorDiv(y, Pathfinder.SUBDIVISION))) == 0;
+            }
+        };
+
+        // choose pairs of open endpoints
+        _endpoints = new int[64 * 4];
+        int extent = size * Pathfinder.SUBDIVISION;
+        _longest = extent * extent;
+        for (int ii = 0; ii < _endpoints.length; ) {
+            int x = random.nextInt(extent), y = random.nextInt(extent);
+            if (_pred.canTraverse(null, x, y)) {
+                _endpoints[ii++] = x;
+                _endpoints[ii++] = y;
+            }
+        }
+        _search.setJumpPoints("jps".equals(impl));
+    }
+
+    @Benchmark
+    public Object getPath ()
+    {
+        int idx = (_idx += 4) & (_endpoints.length - 1);
+        if ("astar".equals(impl)) {
+            return AStarPathUtil.getPath(_pred, null, _longest, _endpoints[idx],
+                _endpoints[idx + 1], _endpoints[idx + 2], _endpoints[idx + 3], true);
+        }
+        _search.init(_pred, null, _longest, _endpoints[idx],
+            _endpoints[idx + 1], _endpoints[idx + 2], _endpoints[idx + 3], true);
+        return _search.resume(Integer.MAX_VALUE);
+    }
+
+    /** The traversal predicate. */
+    protected AStarPathUtil.TraversalPred _pred;
+
+    /** The path endpoints (start x, start y, end x, end y). */
+    protected int[] _endpoints;
+
+    /** The maximum path length. */
+    protected int _longest;
+
+    /** The reusable search. */
+    protected PathSearch _search = new PathSearch();
+
+    /** The index of the current set of endpoints. */
+    protected int _idx;
+}
@@ -0,0 +1,169 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.space;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Predicates;
+
+import com.threerings.math.Ray2D;
+import com.threerings.math.Rect;
+import com.threerings.math.Transform2D;
+import com.threerings.math.Vector2f;
+
+import com.threerings.tudey.shape.Circle;
+import com.threerings.tudey.shape.ShapeElement;
+
+/**
+ * Benchmarks queries against and updates to a {@link HashSpace} populated with circles.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class HashSpaceBenchmark
+{
+    /** The number of elements in the space. */
+    @Param({ "1000", "10000" })
+    public int elements;
+
+    @Setup
+    public void setup ()
+    {
+        Random random = new Random(1199325877849L);
+        _extent = (float)Math.sqrt(elements) * 4f;
+        _space = new HashSpace(64f, 6);
+        _elements = new ShapeElement[elements];
+        Transform2D transform = new Transform2D();
+        for (int ii = 0; ii < elements; ii++) {
+            ShapeElement element = _elements[ii] = new ShapeElement(
+                new Circle(Vector2f.ZERO, 0.25f + random.nextFloat()));
+            element.setTransform(transform.set(randomPoint(random), 0f));
+            _space.add(element);
+        }
+        _points = new Vector2f[1024];
+        for (int ii = 0; ii < _points.length; ii++) {
+            _points[ii] = randomPoint(random);
+        }
+    }
+
+    @Benchmark
+    public int getElements ()
+    {
+        Vector2f point = nextPoint();
+        _bounds.getMinimumExtent().set(point.x - 8f, point.y - 8f);
+        _bounds.getMaximumExtent().set(point.x + 8f, point.y + 8f);
+        _results.clear();
+        _space.getElements(_bounds, _results);
+        return _results.size();
+    }
+
+    @Benchmark
+    public int getIntersecting ()
+    {
+        _circle.getCenter().set(nextPoint());
+        _circle.updateBounds();
+        _results.clear();
+        _space.getIntersecting(_circle, Predicates.alwaysTrue(), _results);
+        return _results.size();
+    }
+
+    @Benchmark
+    public SpaceElement getIntersection ()
+    {
+        Vector2f origin = nextPoint(), target = nextPoint();
+        _ray.getOrigin().set(origin);
+        target.subtract(origin, _ray.getDirection()).normalizeLocal();
+        return _space.getIntersection(_ray, _location, Predicates.alwaysTrue());
+    }
+
+    @Benchmark
+    public void moveElement ()
+    {
+        ShapeElement element = _elements[_idx++ % _elements.length];
+        Vector2f translation = element.getTransform().getTranslation();
+        _transform.set(nextPoint().add(translation, _location).multLocal(0.5f), 0f);
+        element.setTransform(_transform);
+    }
+
+    /**
+     * Returns the next of the precomputed query points.
+     */
+    protected Vector2f nextPoint ()
+    {
+        return _points[_pidx++ & (_points.length - 1)];
+    }
+
+    /**
+     * Returns a random point within the extent of the space.
+     */
+    protected Vector2f randomPoint (Random random)
+    {
+        return new Vector2f(random.nextFloat() * _extent, random.nextFloat() * _extent);
+    }
+
+    /** The space being queried. */
+    protected HashSpace _space;
+
+    /** The elements in the space. */
+    protected ShapeElement[] _elements;
+
+    /** The extent of the populated area. */
+    protected float _extent;
+
+    /** Precomputed query points. */
+    protected Vector2f[] _points;
+
+    /** The indices of the next query point and element to move. */
+    protected int _pidx, _idx;
+
+    /** Query objects. */
+    protected Rect _bounds = new Rect();
+    protected Circle _circle = new Circle(Vector2f.ZERO, 4f);
+    protected Ray2D _ray = new Ray2D();
+    protected Vector2f _location = new Vector2f();
+    protected Transform2D _transform = new Transform2D();
+
+    /** Holds query results. */
+    protected List<SpaceElement> _results = new ArrayList<SpaceElement>();
+}
@@ -0,0 +1,169 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.util;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the access patterns of the pathfinder and scene queries (random lookups, raster scans,
+ * and neighbor probes along walks) between {@link CoordIntMap} and the original hash map of cells
+ * ({@link LegacyCoordIntMap}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class CoordIntMapAccessBenchmark
+{
+    /** The map implementation to use. */
+    @Param({ "flat", "legacy" })
+    public String impl;
+
+    /** The width and height of the square of cells. */
+    @Param({ "64", "512" })
+    public int size;
+
+    @Setup
+    public void setup ()
+    {
+        Random random = new Random(1199325877849L);
+        _legacy = "legacy".equals(impl);
+        _map = new CoordIntMap(3, 0);
+        _legacyMap = new LegacyCoordIntMap(3, 0);
+        for (int yy = 0; yy < size; yy++) {
+            for (int xx = 0; xx < size; xx++) {
+                // sparse flags, as in collision maps
+                if (random.nextInt(4) == 0) {
+                    int flags = 1 << random.nextInt(3);
+                    _map.put(xx, yy, flags);
+                    _legacyMap.put(xx, yy, flags);
+                }
+            }
+        }
+        _coords = new int[4096];
+        for (int ii = 0; ii < _coords.length; ii++) {
+            // include some misses outside of the populated area
+            _coords[ii] = random.nextInt(size + size/4) - size/8;
+        }
+        _region = new int[REGION_SIZE * REGION_SIZE];
+    }
+
+    @Benchmark
+    public int random ()
+    {
+        int total = 0;
+        if (_legacy) {
+            for (int ii = 0; ii < _coords.length; ii += 2) {
+                total += _legacyMap.get(_coords[ii], _coords[ii + 1]);
+            }
+        } else {
+            for (int ii = 0; ii < _coords.length; ii += 2) {
+                total += _map.get(_coords[ii], _coords[ii + 1]);
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int raster ()
+    {
+        // read a square region, as in rasterizing a shape's bounds
+        int idx = (_idx += 2) & (_coords.length - 1);
+        int x = _coords[idx], y = _coords[idx + 1], total = 0;
+        if (_legacy) {
+            for (int yy = y, ymax = y + REGION_SIZE; yy < ymax; yy++) {
+                for (int xx = x, xmax = x + REGION_SIZE; xx < xmax; xx++) {
+                    total += _legacyMap.get(xx, yy);
+                }
+            }
+        } else {
+            _map.getRegion(x, y, REGION_SIZE, REGION_SIZE, _region);
+            for (int value : _region) {
+                total += value;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int pathfind ()
+    {
+        // probe the eight neighbors of each step of a walk, as the pathfinder's
+        // traversal predicates do
+        int idx = (_idx += 2) & (_coords.length - 1);
+        int x = _coords[idx], y = _coords[idx + 1], total = 0;
+        for (int ii = 0; ii < WALK_LENGTH; ii++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    total += _legacy ? _legacyMap.get(x + dx, y + dy) : _map.get(x + dx, y + dy);
+                }
+            }
+            int dir = _coords[(idx + ii) & (_coords.length - 1)] & 3;
+            x += (dir == 0) ? 1 : (dir == 1 ? -1 : 0);
+            y += (dir == 2) ? 1 : (dir == 3 ? -1 : 0);
+        }
+        return total;
+    }
+
+    /** The map being benchmarked. */
+    protected CoordIntMap _map;
+
+    /** The original implementation, for comparison. */
+    protected LegacyCoordIntMap _legacyMap;
+
+    /** Whether to use the original implementation. */
+    protected boolean _legacy;
+
+    /** Precomputed coordinate pairs for random access. */
+    protected int[] _coords;
+
+    /** Holds the region read by the raster benchmark. */
+    protected int[] _region;
+
+    /** The current index into the coordinates. */
+    protected int _idx;
+
+    /** The width and height of the raster region. */
+    protected static final int REGION_SIZE = 32;
+
+    /** The number of steps in each walk. */
+    protected static final int WALK_LENGTH = 64;
+}
@@ -0,0 +1,121 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.util;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.threerings.tudey.util.CoordIntMap.CoordIntEntry;
+
+/**
+ * Benchmarks lookups, updates, and iteration in a {@link CoordIntMap} filled with a square of
+ * cells.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class CoordIntMapBenchmark
+{
+    /** The width and height of the square of cells. */
+    @Param({ "64", "512" })
+    public int size;
+
+    @Setup
+    public void setup ()
+    {
+        Random random = new Random(1199325877849L);
+        _map = new CoordIntMap(3, 0);
+        for (int yy = 0; yy < size; yy++) {
+            for (int xx = 0; xx < size; xx++) {
+                _map.put(xx, yy, random.nextInt());
+            }
+        }
+        _coords = new int[2048];
+        for (int ii = 0; ii < _coords.length; ii++) {
+            // include some misses outside of the populated area
+            _coords[ii] = random.nextInt(size + size/4) - size/8;
+        }
+    }
+
+    @Benchmark
+    public int getRandom ()
+    {
+        int idx = (_idx += 2) & (_coords.length - 1);
+        return _map.get(_coords[idx], _coords[idx + 1]);
+    }
+
+    @Benchmark
+    public int getSequential ()
+    {
+        // scan a row, as in region queries
+        int y = (_idx++) % size, total = 0;
+        for (int xx = 0; xx < size; xx++) {
+            total += _map.get(xx, y);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int putRandom ()
+    {
+        int idx = (_idx += 2) & (_coords.length - 1);
+        return _map.put(_coords[idx], _coords[idx + 1], idx);
+    }
+
+    @Benchmark
+    public int iterate ()
+    {
+        int total = 0;
+        for (CoordIntEntry entry : _map.coordIntEntrySet()) {
+            total += entry.getIntValue();
+        }
+        return total;
+    }
+
+    /** The map being benchmarked. */
+    protected CoordIntMap _map;
+
+    /** Precomputed coordinate pairs for random access. */
+    protected int[] _coords;
+
+    /** The current index into the coordinates (or row). */
+    protected int _idx;
+}
@@ -0,0 +1,90 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The lookup path of the original {@link CoordIntMap} (cells in a hash map keyed on a mutable
+ * {@link Coord}), kept as a baseline for {@link CoordIntMapAccessBenchmark}.
+ */
+public class LegacyCoordIntMap
+{
+    /**
+     * Creates a new map.
+     */
+    public LegacyCoordIntMap (int granularity, int empty)
+    {
+        _granularity = granularity;
+        _empty = empty;
+        _mask = (1 << granularity) - 1;
+    }
+
+    /**
+     * Retrieves the value at the specified coordinates.
+     */
+    public int get (int x, int y)
+    {
+        _coord.set(x >> _granularity, y >> _granularity);
+        int[] cell = _cells.get(_coord);
+        return (cell == null) ? _empty : cell[((y & _mask) << _granularity) | (x & _mask)];
+    }
+
+    /**
+     * Sets the value at the specified coordinates.
+     *
+     * @return the previously stored value.
+     */
+    public int put (int x, int y, int value)
+    {
+        _coord.set(x >> _granularity, y >> _granularity);
+        int[] cell = _cells.get(_coord);
+        if (cell == null) {
+            _cells.put(_coord.clone(), cell = new int[1 << _granularity << _granularity]);
+            Arrays.fill(cell, _empty);
+        }
+        int idx = ((y & _mask) << _granularity) | (x & _mask);
+        int ovalue = cell[idx];
+        cell[idx] = value;
+        return ovalue;
+    }
+
+    /** The size of the top-level cells as a power of two. */
+    protected int _granularity;
+
+    /** The value indicating an empty mapping. */
+    protected int _empty;
+
+    /** The mask value derived from the granularity. */
+    protected int _mask;
+
+    /** The top-level cells. */
+    protected HashMap<Coord, int[]> _cells = new HashMap<Coord, int[]>();
+
+    /** A coord to reuse for queries. */
+    protected Coord _coord = new Coord();
+}
@@ -0,0 +1,139 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.util;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.threerings.config.ConfigReference;
+import com.threerings.math.Vector2f;
+
+import com.threerings.tudey.config.ActorConfig;
+import com.threerings.tudey.config.BehaviorConfig;
+import com.threerings.tudey.data.actor.Agent;
+
+import com.threerings.bench.SampleObject;
+
+/**
+ * Benchmarks reflective deep copying, comparison, and hashing.  Run with
+ * <code>-jvmArgs -Dcom.threerings.util.no_deep_compile=true</code> to measure the reflective
+ * handlers rather than the generated ones.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class DeepUtilBenchmark
+{
+    /** The depth of the object tree. */
+    @Param({ "1", "3", "5" })
+    public int depth;
+
+    @Setup
+    public void setup ()
+    {
+        _object = SampleObject.createTree(new Random(1199325877849L), depth, 4);
+        _copy = DeepUtil.copy(_object);
+        _dest = DeepUtil.copy(_object);
+
+        _actor = new Agent(
+            new ConfigReference<ActorConfig>("bench/agent"), 1, 0, new Vector2f(1f, 2f), 0.5f);
+        _actor.setActivity(1, 100);
+        _config = new ActorConfig();
+        ActorConfig.Agent impl = new ActorConfig.Agent();
+        impl.behavior = new ConfigReference<BehaviorConfig>("bench/behavior");
+        _config.implementation = impl;
+        _configCopy = (ActorConfig)_config.clone();
+    }
+
+    @Benchmark
+    public SampleObject copy ()
+    {
+        return DeepUtil.copy(_object);
+    }
+
+    @Benchmark
+    public SampleObject copyInto ()
+    {
+        return DeepUtil.copy(_object, _dest);
+    }
+
+    @Benchmark
+    public boolean equals ()
+    {
+        return DeepUtil.equals(_object, _copy);
+    }
+
+    @Benchmark
+    public int hashCode ()
+    {
+        return DeepUtil.hashCode(_object);
+    }
+
+    @Benchmark
+    public Object actorClone ()
+    {
+        return _actor.clone();
+    }
+
+    @Benchmark
+    public boolean configEquals ()
+    {
+        return _config.equals(_configCopy);
+    }
+
+    /** The object to copy, compare, and hash. */
+    protected SampleObject _object;
+
+    /** An equal copy of the object. */
+    protected SampleObject _copy;
+
+    /** The destination for in-place copies. */
+    protected SampleObject _dest;
+
+    /** The actor to clone, as in the snapshot updates of the server logic. */
+    protected Agent _actor;
+
+    /** The config to compare. */
+    protected ActorConfig _config;
+
+    /** An equal copy of the config. */
+    protected ActorConfig _configCopy;
+}
@@ -35,6 +35,9 @@ import java.util.Map;
 import java.util.Set;
 
 import com.google.common.base.Objects;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Iterators;
 
 import com.samskivert.util.ObjectUtil;
 import com.samskivert.util.SortableArrayList;
@@ -47,7 +50,8 @@ import com.threerings.util.Copyable;
 import com.threerings.util.DeepUtil;
 
 /**
- * Stores arguments in a sorted entry list.
+ * Stores arguments in a sorted entry list.  Maps may be interned (see {@link #intern}), after
+ * which they are immutable and compare by identity against other interned maps.
  */
 public class ArgumentMap extends AbstractMap<String, Object>
     implements Copyable, Streamable
@@ -96,6 +100,35 @@ public class ArgumentMap extends AbstractMap<String, Object>
         }
     }
 
+    /**
+     * Returns the canonical instance of this map (that is, the single interned map equal to this
+     * one), interning this map if there is none.  Either way, this map becomes immutable (along
+     * with any references among its values, which are themselves interned), so callers must not
+     * intern maps that they (or others) may later modify; {@link #clone} the result to obtain a
+     * modifiable copy.
+     */
+    public ArgumentMap intern ()
+    {
+        if (_canonical) {
+            return this;
+        }
+        freeze();
+        ArgumentMap canon = _interner.intern(this);
+        if (canon == this) {
+            _canonical = true;
+        }
+        return canon;
+    }
+
+    /**
+     * Checks whether this map has been interned (or was interned and lost out to an existing
+     * equal map) and is therefore immutable.
+     */
+    public boolean isFrozen ()
+    {
+        return _frozen;
+    }
+
     // documentation inherited from interface Copyable
     public Object copy (Object dest)
     {
@@ -105,8 +138,9 @@ public class ArgumentMap extends AbstractMap<String, Object>
     // documentation inherited from interface Copyable
     public Object copy (Object dest, Object outer)
     {
+        // interned maps are immutable, so we can't copy into them
         ArgumentMap cmap;
-        if (dest instanceof ArgumentMap) {
+        if (dest instanceof ArgumentMap && !((ArgumentMap)dest)._frozen) {
             cmap = (ArgumentMap)dest;
             cmap.clear();
         } else {
@@ -142,7 +176,7 @@ public class ArgumentMap extends AbstractMap<String, Object>
         if (!(key instanceof String)) {
             return false;
         }
-        return _entries.binarySearch(_key.as((String)key)) >= 0;
+        return indexOf((String)key) >= 0;
     }
 
     @Override
@@ -151,7 +185,7 @@ public class ArgumentMap extends AbstractMap<String, Object>
         if (!(key instanceof String)) {
             return null;
         }
-        int idx = _entries.binarySearch(_key.as((String)key));
+        int idx = indexOf((String)key);
         return (idx >= 0) ? _entries.get(idx).getValue() : null;
     }
 
@@ -160,14 +194,15 @@ public class ArgumentMap extends AbstractMap<String, Object>
      */
     public <T> T get (String key, Class<T> type)
     {
-        int idx = _entries.binarySearch(_key.as(key));
+        int idx = indexOf(key);
         return (idx >= 0) ? ObjectUtil.as(_entries.get(idx).getValue(), type) : null;
     }
 
     @Override
     public Object put (String key, Object value)
     {
-        int idx = _entries.binarySearch(_key.as(key));
+        checkMutable();
+        int idx = indexOf(key);
         if (idx >= 0) {
             return _entries.get(idx).setValue(value);
         } else {
@@ -179,16 +214,18 @@ public class ArgumentMap extends AbstractMap<String, Object>
     @Override
     public Object remove (Object key)
     {
+        checkMutable();
         if (!(key instanceof String)) {
             return null;
         }
-        int idx = _entries.binarySearch(_key.as((String)key));
+        int idx = indexOf((String)key);
         return (idx >= 0) ? _entries.remove(idx).getValue() : null;
     }
 
     @Override
     public void clear ()
     {
+        checkMutable();
         _entries.clear();
     }
 
@@ -206,9 +243,11 @@ public class ArgumentMap extends AbstractMap<String, Object>
                 return containsKey(((Map.Entry<?,?>)o).getKey());
             }
             @Override public Iterator<Map.Entry<String, Object>> iterator () {
-                return _entries.iterator();
+                return _frozen ?
+                    Iterators.unmodifiableIterator(_entries.iterator()) : _entries.iterator();
             }
             @Override public boolean remove (Object o) {
+                checkMutable();
                 if (!(o instanceof Map.Entry<?,?>)) {
                     return false;
                 }
@@ -216,7 +255,7 @@ public class ArgumentMap extends AbstractMap<String, Object>
                 if (!(key instanceof String)) {
                     return false;
                 }
-                int idx = _entries.binarySearch(_key.as((String)key));
+                int idx = indexOf((String)key);
                 if (idx < 0) {
                     return false;
                 }
@@ -224,6 +263,7 @@ public class ArgumentMap extends AbstractMap<String, Object>
                 return true;
             }
             @Override public void clear () {
+                checkMutable();
                 _entries.clear();
             }
         };
@@ -239,18 +279,17 @@ public class ArgumentMap extends AbstractMap<String, Object>
             return false;
         }
         ArgumentMap omap = (ArgumentMap)other;
+        if (_canonical && omap._canonical) {
+            return false; // interned maps are equal only if identical
+        }
         int size = size();
-        if (size != omap.size()) {
+        if (size != omap.size() || (_frozen && omap._frozen && _hash != omap._hash)) {
             return false;
         }
         for (int ii = 0; ii < size; ii++) {
             Map.Entry<String, Object> entry = _entries.get(ii), oentry = omap._entries.get(ii);
-            if (!entry.getKey().equals(oentry.getKey())) {
-                return false;
-            }
-            _a1[0] = entry.getValue();
-            _a2[0] = oentry.getValue();
-            if (!Arrays.deepEquals(_a1, _a2)) {
+            if (!entry.getKey().equals(oentry.getKey()) ||
+                    !valueEquals(entry.getValue(), oentry.getValue())) {
                 return false;
             }
         }
@@ -260,13 +299,7 @@ public class ArgumentMap extends AbstractMap<String, Object>
     @Override
     public int hashCode ()
     {
-        int hash = 0;
-        for (int ii = 0, nn = _entries.size(); ii < nn; ii++) {
-            Map.Entry<String, Object> entry = _entries.get(ii);
-            _a1[0] = entry.getValue();
-            hash += entry.getKey().hashCode() ^ Arrays.deepHashCode(_a1);
-        }
-        return hash;
+        return _frozen ? _hash : computeHashCode();
     }
 
     @Override
@@ -276,40 +309,120 @@ public class ArgumentMap extends AbstractMap<String, Object>
     }
 
     /**
-     * Helper: create an Entry for the specified key/value, 
+     * Makes this map immutable, interning any references among its values and caching the hash
+     * code.
      */
-    protected static Map.Entry<String, Object> newEntry (String k, Object v)
+    protected void freeze ()
     {
-        return new SimpleEntry<String, Object>(k, v);
+        if (_frozen) {
+            return;
+        }
+        for (int ii = 0, nn = _entries.size(); ii < nn; ii++) {
+            Map.Entry<String, Object> entry = _entries.get(ii);
+            Object value = entry.getValue();
+            if (value instanceof ConfigReference) {
+                value = ((ConfigReference<?>)value).intern();
+            }
+            _entries.set(ii, new SimpleImmutableEntry<String, Object>(entry.getKey(), value));
+        }
+        _hash = computeHashCode();
+        _frozen = true;
     }
 
-    protected static class Key
-        implements Comparable<Map.Entry<String, Object>>
+    /**
+     * Throws an exception if the map has been frozen.
+     */
+    protected void checkMutable ()
     {
-        /**
-         * Update the value of this key, and return <tt>this</tt>.
-         */
-        public Key as (String key)
-        {
-            _key = key;
-            return this;
+        if (_frozen) {
+            throw new UnsupportedOperationException("Interned argument maps cannot be modified.");
         }
+    }
 
-        public int compareTo (Map.Entry<String, Object> entry)
-        {
-            return _key.compareTo(entry.getKey());
+    /**
+     * Computes the hash code of the map's contents.
+     */
+    protected int computeHashCode ()
+    {
+        int hash = 0;
+        for (int ii = 0, nn = _entries.size(); ii < nn; ii++) {
+            Map.Entry<String, Object> entry = _entries.get(ii);
+            hash += entry.getKey().hashCode() ^ valueHashCode(entry.getValue());
+        }
+        return hash;
+    }
+
+    /**
+     * Compares two argument values, comparing the contents of arrays.
+     */
+    protected static boolean valueEquals (Object v1, Object v2)
+    {
+        if (v1 == v2) {
+            return true;
         }
+        if (v1 == null || v2 == null) {
+            return false;
+        }
+        return v1.getClass().isArray() ?
+            Arrays.deepEquals(new Object[] { v1 }, new Object[] { v2 }) : v1.equals(v2);
+    }
 
-        protected String _key;
+    /**
+     * Computes the hash code of an argument value, hashing the contents of arrays.
+     */
+    protected static int valueHashCode (Object value)
+    {
+        if (value == null) {
+            return 0;
+        }
+        return value.getClass().isArray() ?
+            Arrays.deepHashCode(new Object[] { value }) : value.hashCode();
+    }
+
+    /**
+     * Searches for the entry with the specified key.  This doesn't use any scratch objects, as
+     * interned maps may be read by several threads at once.
+     *
+     * @return the index of the entry, or (-(insertion point) - 1) if not found.
+     */
+    protected int indexOf (String key)
+    {
+        int low = 0, high = _entries.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int comp = _entries.get(mid).getKey().compareTo(key);
+            if (comp < 0) {
+                low = mid + 1;
+            } else if (comp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Helper: create an Entry for the specified key/value, 
+     */
+    protected static Map.Entry<String, Object> newEntry (String k, Object v)
+    {
+        return new SimpleEntry<String, Object>(k, v);
     }
 
     /** The entries in the map. */
     protected transient SortableArrayList<Map.Entry<String, Object>> _entries =
         new SortableArrayList<Map.Entry<String, Object>>();
 
-    /** Dummy key used for searching. */
-    protected transient Key _key = new Key();
+    /** Set when the map has been frozen by {@link #intern}. */
+    protected transient boolean _frozen;
+
+    /** Set when this map is the canonical (interned) instance of its contents. */
+    protected transient boolean _canonical;
+
+    /** The cached hash code, if frozen. */
+    protected transient int _hash;
 
-    /** Used for {@link Arrays#deepHashCode} and {@link Arrays#deepEquals}. */
-    protected transient Object[] _a1 = new Object[1], _a2 = new Object[1];
+    /** Holds the canonical instances of the interned maps. */
+    protected static final Interner<ArgumentMap> _interner = Interners.newWeakInterner();
 }
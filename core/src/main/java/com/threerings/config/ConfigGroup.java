@@ -112,14 +112,16 @@ public class ConfigGroup<T extends ManagedConfig>
     {
         _cfgmgr = cfgmgr;
 
-        // load the existing configurations (first checking for an xml file, then a binary file)
-        if (_cfgmgr.getConfigPath() != null &&
-                (readConfigs(true, exceptionConsumer) || readConfigs(false, exceptionConsumer))) {
+        // load the existing configurations (first checking for an xml file, then an indexed
+        // file, then a binary file)
+        if (_cfgmgr.getConfigPath() != null && (readConfigs(true, exceptionConsumer) ||
+                readIndex(exceptionConsumer) || readConfigs(false, exceptionConsumer))) {
             log.debug("Read configurations for group " + _name + ".");
         }
 
-        // provide the configurations with a reference to the manager
-        for (ManagedConfig config : getRawConfigs()) {
+        // provide the configurations with a reference to the manager (any still in the index
+        // will be initialized as they're read)
+        for (ManagedConfig config : _configsByName.values()) {
             initConfig(config);
         }
     }
@@ -167,7 +169,13 @@ public class ConfigGroup<T extends ManagedConfig>
      */
     public ManagedConfig getRawConfig (String name)
     {
-        return _configsByName.get(name);
+        if (_index == null) {
+            return _configsByName.get(name);
+        }
+        synchronized (INDEX_LOCK) {
+            ManagedConfig config = _configsByName.get(name);
+            return (config == null && _index != null) ? readIndexedConfig(name) : config;
+        }
     }
 
     /**
@@ -186,10 +194,12 @@ public class ConfigGroup<T extends ManagedConfig>
     /**
      * Return all the <em>raw</em> configurations.
      * This method is for editing and other "configging the configs" uses and may
-     * return DerivedConfig instances.
+     * return DerivedConfig instances.  If the group was loaded from an indexed file, this reads
+     * any configurations not yet requested.
      */
     public Iterable<ManagedConfig> getRawConfigs ()
     {
+        readIndexedConfigs();
         return _configsByName.values();
     }
 
@@ -247,6 +257,7 @@ public class ConfigGroup<T extends ManagedConfig>
             throw new IllegalArgumentException(clazz + " is not of type " + _cclass);
         }
         ManagedConfig oldCfg = _configsByName.put(config.getName(), config);
+        removeIndexedConfig(config.getName());
         initConfig(config);
         if (fireEvents) {
             if (oldCfg != null) {
@@ -265,6 +276,7 @@ public class ConfigGroup<T extends ManagedConfig>
     public void removeConfig (ManagedConfig config)
     {
         ManagedConfig oldCfg = _configsByName.remove(config.getName());
+        removeIndexedConfig(config.getName());
         if (oldCfg != null) {
             // notify listeners that the config has "changed" and then remove it
             oldCfg.wasUpdated();
@@ -331,6 +343,39 @@ public class ConfigGroup<T extends ManagedConfig>
         }
     }
 
+    /**
+     * Saves this group's configurations to the specified file in the indexed format, from which
+     * configurations are read only as they're requested.
+     */
+    public final void saveIndexed (File file)
+    {
+        saveIndexed(getRawConfigs(), file);
+    }
+
+    /**
+     * Saves the specified configs to the specified file in the indexed format.
+     */
+    public void saveIndexed (Iterable<? extends ManagedConfig> rawConfigs, File file)
+    {
+        ManagedConfig[] array = toSaveableArray(rawConfigs);
+        if (array == null) {
+            return; // nothing to do
+        }
+        try {
+            Closer closer = Closer.create();
+            try {
+                LazyOutputStream stream = closer.register(new LazyOutputStream(file));
+                ConfigIndex.write(array, _cfgmgr.getSaveReplacer(this), stream);
+
+            } finally {
+                closer.close();
+            }
+
+        } catch (IOException e) {
+            log.warning("Error writing configurations [file=" + file + "].", e);
+        }
+    }
+
     /**
      * Return the raw configs as they should be saved, which may be an empty array,
      * or null if the entire group is stripped.
@@ -483,6 +528,7 @@ public class ConfigGroup<T extends ManagedConfig>
         ManagedConfig[] configs;
         try {
             Importer in = xml ? new XMLImporter(stream) : new BinaryImporter(stream);
+            in.setInternReferences(_cfgmgr != null && _cfgmgr.getInternReferences());
             configs = (ManagedConfig[])in.readObject();
             in.close();
 
@@ -499,13 +545,130 @@ public class ConfigGroup<T extends ManagedConfig>
         return true;
     }
 
+    /**
+     * Attempts to read the index of the initial set of configurations, which are then read as
+     * they're requested.
+     *
+     * @return true if successful, false otherwise.
+     */
+    protected boolean readIndex (ConfigManager.Consumer<Exception> exceptionConsumer)
+    {
+        InputStream stream = getConfigStream(getIndexPath());
+        if (stream == null) {
+            return false;
+        }
+        try {
+            try {
+                _index = new ConfigIndex(stream);
+            } finally {
+                stream.close();
+            }
+        } catch (IOException e) {
+            exceptionConsumer.accept(e);
+            log.warning("Error reading configuration index.", "group", _name, e);
+            return false;
+        }
+        if (_index.isEmpty()) {
+            _index = null;
+        }
+        return true;
+    }
+
+    /**
+     * Reads and initializes the named configuration from the index.  The caller must hold
+     * {@link #INDEX_LOCK}.
+     *
+     * @return the configuration, or <code>null</code> if it wasn't in the index or couldn't be
+     * read.
+     */
+    protected ManagedConfig readIndexedConfig (String name)
+    {
+        ManagedConfig config;
+        _readDepth++;
+        try {
+            try {
+                config = _index.read(name, _cfgmgr != null && _cfgmgr.getInternReferences());
+            } catch (Exception e) { // IOException, ClassCastException
+                log.warning("Error reading configuration.", "group", _name, "name", name, e);
+                config = null;
+            }
+            if (config != null) {
+                // map before initializing in case the config refers back to itself
+                _configsByName.put(name, config);
+                initConfig(config);
+            }
+        } finally {
+            _readDepth--;
+        }
+        // release the index only once the outermost read has mapped and initialized everything,
+        // since readers stop taking the lock as soon as they see it cleared
+        maybeReleaseIndex();
+        return config;
+    }
+
+    /**
+     * Reads and initializes any configurations remaining in the index.
+     */
+    protected void readIndexedConfigs ()
+    {
+        if (_index == null) {
+            return;
+        }
+        synchronized (INDEX_LOCK) {
+            if (_index == null) {
+                return;
+            }
+            for (String name : _index.getNames()) {
+                if (_index == null) {
+                    break; // the rest were read while initializing
+                }
+                readIndexedConfig(name);
+            }
+        }
+    }
+
+    /**
+     * Removes the named configuration from the index (if present) without reading it.
+     */
+    protected void removeIndexedConfig (String name)
+    {
+        if (_index == null) {
+            return;
+        }
+        synchronized (INDEX_LOCK) {
+            if (_index != null && _index.remove(name)) {
+                maybeReleaseIndex();
+            }
+        }
+    }
+
+    /**
+     * Clears the index if it is empty and no read is in progress.  The caller must hold
+     * {@link #INDEX_LOCK}.
+     */
+    protected void maybeReleaseIndex ()
+    {
+        if (_readDepth == 0 && _index != null && _index.isEmpty()) {
+            _index = null; // release the encoded records
+        }
+    }
+
     /**
      * Returns the configuration stream, or <code>null</code> if it doesn't exist.
      */
     protected InputStream getConfigStream (boolean xml)
+    {
+        return getConfigStream(getConfigPath(xml));
+    }
+
+    /**
+     * Returns the stream for the specified config resource, or <code>null</code> if it doesn't
+     * exist.
+     */
+    protected InputStream getConfigStream (String path)
     {
         try {
-            return _cfgmgr.getResourceManager().getResource(getConfigPath(xml));
+            return _cfgmgr.getResourceManager().getResource(path);
         } catch (IOException e) {
             return null;
         }
@@ -527,6 +690,14 @@ public class ConfigGroup<T extends ManagedConfig>
         return _cfgmgr.getConfigPath() + _name + (xml ? ".xml" : ".dat");
     }
 
+    /**
+     * Returns the path of the indexed config resource associated with this group.
+     */
+    protected String getIndexPath ()
+    {
+        return _cfgmgr.getConfigPath() + _name + ConfigIndex.EXTENSION;
+    }
+
     /**
      * Validates the outer object references of the supplied configs.
      */
@@ -664,6 +835,20 @@ public class ConfigGroup<T extends ManagedConfig>
     /** Configurations mapped by name. */
     protected HashMap<String, ManagedConfig> _configsByName = new HashMap<String, ManagedConfig>();
 
+    /** The index of the configurations not yet read, if loaded from an indexed file.  Volatile
+     * so that once it has been cleared, readers outside the lock see every configuration it
+     * materialized. */
+    protected volatile ConfigIndex _index;
+
+    /** The depth of nested reads from the index in progress (guarded by {@link #INDEX_LOCK}). */
+    protected int _readDepth;
+
     /** Configuration event listeners. */
     protected ObserverList<ConfigGroupListener> _listeners;
+
+    /** Guards the lazy reading of indexed configurations, which may be requested from several
+     * threads (the scene ticker and the event thread, for instance).  Shared by all groups
+     * because initializing one configuration may read others from different groups, and
+     * per-group locks could then be acquired in conflicting orders. */
+    protected static final Object INDEX_LOCK = new Object();
 }
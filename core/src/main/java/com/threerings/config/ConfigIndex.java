@@ -0,0 +1,351 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.config;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.google.common.collect.Lists;
+
+import com.threerings.export.BinaryExporter;
+import com.threerings.export.BinaryImporter;
+import com.threerings.export.Exporter;
+
+/**
+ * The contents of a config group stored in the indexed format: a table mapping config names to
+ * records that may be decoded independently of one another, so that a group need only read the
+ * configurations that are actually requested.  Each record is a complete (uncompressed) binary
+ * export of a single configuration, deflated against a dictionary shared by all of the records.
+ * The dictionary holds the class and field names that every export repeats, which would
+ * otherwise make the records much larger than the equivalent single binary export.  Instances
+ * are not thread-safe; {@link ConfigGroup} serializes access to the ones it reads from.
+ */
+public class ConfigIndex
+{
+    /** The extension of indexed config group files. */
+    public static final String EXTENSION = ".idx";
+
+    /** Identifies the file type. */
+    public static final int MAGIC_NUMBER = 0xFACEAF1D;
+
+    /** The format version. */
+    public static final short VERSION = 0x1000;
+
+    /**
+     * Writes the supplied configurations to a stream in the indexed format.
+     *
+     * @param replacer the replacer to use when exporting the configurations, or null for none.
+     */
+    public static void write (ManagedConfig[] configs, Exporter.Replacer replacer, OutputStream out)
+        throws IOException
+    {
+        // the table is searched by name, so it must be sorted
+        configs = configs.clone();
+        Arrays.sort(configs, new Comparator<ManagedConfig>() {
+            public int compare (ManagedConfig c1, ManagedConfig c2) {
+                return c1.getName().compareTo(c2.getName());
+            }
+        });
+
+        // export each configuration in its own stream
+        byte[][] exports = new byte[configs.length][];
+        for (int ii = 0; ii < configs.length; ii++) {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            BinaryExporter xport = new BinaryExporter(bout, false);
+            xport.setReplacer(replacer);
+            xport.writeObject(configs[ii]);
+            xport.close();
+            exports[ii] = bout.toByteArray();
+        }
+
+        // deflate the exports against a dictionary sampled from them
+        byte[] dictionary = createDictionary(exports);
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        int[] offsets = new int[configs.length];
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            byte[] buf = new byte[4096];
+            for (int ii = 0; ii < exports.length; ii++) {
+                offsets[ii] = records.size();
+                deflater.reset();
+                deflater.setDictionary(dictionary);
+                deflater.setInput(exports[ii]);
+                deflater.finish();
+                while (!deflater.finished()) {
+                    records.write(buf, 0, deflater.deflate(buf));
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+
+        // write the header and table, followed by the records
+        DataOutputStream dout = new DataOutputStream(out);
+        dout.writeInt(MAGIC_NUMBER);
+        dout.writeShort(VERSION);
+        dout.writeInt(dictionary.length);
+        dout.write(dictionary);
+        dout.writeInt(configs.length);
+        for (int ii = 0; ii < configs.length; ii++) {
+            dout.writeUTF(configs[ii].getName());
+            dout.writeInt(offsets[ii]);
+            dout.writeInt(exports[ii].length);
+        }
+        dout.writeInt(records.size());
+        records.writeTo(dout);
+        dout.flush();
+    }
+
+    /**
+     * Reads the table and the (still encoded) records from the specified stream, which the
+     * caller is responsible for closing.
+     */
+    public ConfigIndex (InputStream in)
+        throws IOException
+    {
+        DataInputStream din = new DataInputStream(new BufferedInputStream(in));
+        int magic = din.readInt();
+        if (magic != MAGIC_NUMBER) {
+            throw new IOException(String.format("Invalid magic number [magic=%#x].", magic));
+        }
+        short version = din.readShort();
+        if (version != VERSION) {
+            throw new IOException(String.format("Invalid version [version=%#x].", version));
+        }
+        _dictionary = new byte[readLength(din)];
+        din.readFully(_dictionary);
+        int count = readLength(din);
+        _names = new String[count];
+        _offsets = new int[count + 1];
+        _lengths = new int[count];
+        for (int ii = 0; ii < count; ii++) {
+            _names[ii] = din.readUTF();
+            _offsets[ii] = readLength(din);
+            _lengths[ii] = readLength(din);
+            if (ii > 0 && (_names[ii].compareTo(_names[ii - 1]) <= 0 ||
+                    _offsets[ii] < _offsets[ii - 1])) {
+                throw new IOException("Invalid table entry [name=" + _names[ii] + "].");
+            }
+        }
+        _offsets[count] = readLength(din);
+        if (count > 0 && _offsets[count] < _offsets[count - 1]) {
+            throw new IOException("Invalid record size [size=" + _offsets[count] + "].");
+        }
+        _records = new byte[_offsets[count]];
+        din.readFully(_records);
+
+        _pending = new BitSet(count);
+        _pending.set(0, count);
+        _remaining = count;
+    }
+
+    /**
+     * Checks whether there are no configurations left to read.
+     */
+    public boolean isEmpty ()
+    {
+        return _remaining == 0;
+    }
+
+    /**
+     * Returns the names of the configurations left to read.
+     */
+    public List<String> getNames ()
+    {
+        List<String> names = Lists.newArrayListWithCapacity(_remaining);
+        for (int ii = _pending.nextSetBit(0); ii >= 0; ii = _pending.nextSetBit(ii + 1)) {
+            names.add(_names[ii]);
+        }
+        return names;
+    }
+
+    /**
+     * Checks whether the named configuration is left to read.
+     */
+    public boolean contains (String name)
+    {
+        return getIndex(name) != -1;
+    }
+
+    /**
+     * Reads the named configuration, removing it from the set left to read.
+     *
+     * @param intern whether or not to intern the config references of the configuration.
+     * @return the configuration, or <code>null</code> if it is not (or is no longer) in the index.
+     */
+    public ManagedConfig read (String name, boolean intern)
+        throws IOException
+    {
+        int idx = getIndex(name);
+        if (idx == -1) {
+            return null;
+        }
+        remove(idx);
+        BinaryImporter in = new BinaryImporter(new ByteArrayInputStream(inflate(idx)));
+        try {
+            in.setInternReferences(intern);
+            return (ManagedConfig)in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Removes the named configuration from the set left to read without reading it.
+     *
+     * @return true if the configuration was in the index, false if not.
+     */
+    public boolean remove (String name)
+    {
+        int idx = getIndex(name);
+        if (idx == -1) {
+            return false;
+        }
+        remove(idx);
+        return true;
+    }
+
+    /**
+     * Returns the table index of the named configuration, or -1 if it is not left to read.
+     */
+    protected int getIndex (String name)
+    {
+        int idx = Arrays.binarySearch(_names, name);
+        return (idx >= 0 && _pending.get(idx)) ? idx : -1;
+    }
+
+    /**
+     * Removes the configuration at the specified table index from the set left to read.
+     */
+    protected void remove (int idx)
+    {
+        _pending.clear(idx);
+        _remaining--;
+    }
+
+    /**
+     * Inflates the record at the specified table index.
+     */
+    protected byte[] inflate (int idx)
+        throws IOException
+    {
+        byte[] data = new byte[_lengths[idx]];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(_records, _offsets[idx], _offsets[idx + 1] - _offsets[idx]);
+            int length = 0;
+            while (!inflater.finished()) {
+                int read = inflater.inflate(data, length, data.length - length);
+                if (read > 0) {
+                    length += read;
+                } else if (inflater.needsDictionary()) {
+                    inflater.setDictionary(_dictionary);
+                } else {
+                    break; // out of input or room
+                }
+            }
+            if (!inflater.finished() || length != data.length) {
+                throw new IOException("Invalid record [index=" + idx + "].");
+            }
+        } catch (DataFormatException e) {
+            throw (IOException)new IOException("Invalid record [index=" + idx + "].").initCause(e);
+        } finally {
+            inflater.end();
+        }
+        return data;
+    }
+
+    /**
+     * Creates a dictionary from samples spread across the supplied exports.
+     */
+    protected static byte[] createDictionary (byte[][] exports)
+    {
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream();
+        int step = Math.max(1, exports.length / DICTIONARY_SAMPLES);
+        for (int ii = 0; ii < exports.length; ii += step) {
+            int length = Math.min(exports[ii].length, DICTIONARY_SIZE - dictionary.size());
+            if (length == 0) {
+                break;
+            }
+            dictionary.write(exports[ii], 0, length);
+        }
+        return dictionary.toByteArray();
+    }
+
+    /**
+     * Reads a length or offset, making sure that it's not negative.
+     */
+    protected static int readLength (DataInputStream in)
+        throws IOException
+    {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid length [length=" + length + "].");
+        }
+        return length;
+    }
+
+    /** The sorted names of the configurations. */
+    protected String[] _names;
+
+    /** The offsets of the records within the record data, plus a final entry for the end. */
+    protected int[] _offsets;
+
+    /** The inflated lengths of the records. */
+    protected int[] _lengths;
+
+    /** The dictionary against which the records were deflated. */
+    protected byte[] _dictionary;
+
+    /** The deflated records. */
+    protected byte[] _records;
+
+    /** The table indices of the configurations left to read. */
+    protected BitSet _pending;
+
+    /** The number of configurations left to read. */
+    protected int _remaining;
+
+    /** The maximum size of the dictionary (the size of the deflate window). */
+    protected static final int DICTIONARY_SIZE = 32 * 1024;
+
+    /** The number of exports to sample for the dictionary. */
+    protected static final int DICTIONARY_SAMPLES = 64;
+}
@@ -383,6 +383,26 @@ public class ConfigManager
         return (_parent == null) ? null : _parent.getRawConfig(clazz, name);
     }
 
+    /**
+     * Sets whether to intern the config references in the configs read by this manager (see
+     * {@link ConfigReference#intern}).  This saves memory and speeds up reference comparisons, but
+     * makes the references immutable, so it should only be enabled when the configs will not be
+     * edited.
+     */
+    public void setInternReferences (boolean intern)
+    {
+        _internReferences = intern;
+    }
+
+    /**
+     * Checks whether this manager (or its parent) interns the config references in the configs it
+     * reads.
+     */
+    public boolean getInternReferences ()
+    {
+        return _internReferences || (_parent != null && _parent.getInternReferences());
+    }
+
     /**
      * Attempts to fetch a resource config through the cache.
      */
@@ -392,6 +412,7 @@ public class ConfigManager
         if (config == null) {
             try {
                 BinaryImporter in = new BinaryImporter(_rsrcmgr.getResource(name));
+                in.setInternReferences(getInternReferences());
                 _resources.put(name, config = (ManagedConfig)in.readObject());
                 config.setName(name);
                 config.init(getRoot());
@@ -557,6 +578,19 @@ public class ConfigManager
         }
     }
 
+    /**
+     * Saves the configurations in all groups in the indexed format, from which configurations
+     * are read only as they're requested.
+     *
+     * @param dir the directory in which to drop all the files.
+     */
+    public void saveAllIndexed (File dir)
+    {
+        for (ConfigGroup<?> group : _groups.values()) {
+            group.saveIndexed(new File(dir, group.getName() + ConfigIndex.EXTENSION));
+        }
+    }
+
     /**
      * Reverts the configurations in all groups to their last saved state.
      */
@@ -638,6 +672,7 @@ public class ConfigManager
             ManagedConfig nconfig;
             try {
                 BinaryImporter in = new BinaryImporter(_rsrcmgr.getResource(name));
+                in.setInternReferences(getInternReferences());
                 nconfig = (ManagedConfig)in.readObject();
                 nconfig.setName(name);
                 nconfig.init(getRoot());
@@ -841,4 +876,7 @@ public class ConfigManager
 
     /** Set when we should ignore config updates because we're refreshing. */
     protected boolean _ignoreUpdates;
+
+    /** Whether or not to intern the config references in the configs we read. */
+    protected boolean _internReferences;
 }
@@ -25,14 +25,20 @@
 
 package com.threerings.config;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
 import com.threerings.io.Intern;
 import com.threerings.io.Streamable;
 
 import com.threerings.export.Exportable;
 import com.threerings.util.DeepObject;
+import com.threerings.util.DeepOmit;
 
 /**
  * A reference to a configuration that can be embedded in, for example, other configurations.
+ * References may be interned (see {@link #intern}) so that large numbers of equal references share
+ * a single immutable instance.
  */
 public class ConfigReference<T extends ManagedConfig> extends DeepObject
     implements Exportable, Streamable
@@ -80,6 +86,36 @@ public class ConfigReference<T extends ManagedConfig> extends DeepObject
         return _arguments;
     }
 
+    /**
+     * Returns the canonical instance of this reference (that is, the single interned reference
+     * equal to this one), interning this reference if there is none.  Either way, this reference
+     * and its arguments become immutable, so callers must not intern references that they (or
+     * others) may later modify; {@link #clone} the result to obtain a modifiable copy.
+     */
+    public ConfigReference<T> intern ()
+    {
+        if (_canonical) {
+            return this;
+        }
+        _arguments = _arguments.intern();
+        _hash = 31*_name.hashCode() + _arguments.hashCode();
+        @SuppressWarnings("unchecked")
+        ConfigReference<T> canon = (ConfigReference<T>)_interner.intern(this);
+        if (canon == this) {
+            _canonical = true;
+        }
+        return canon;
+    }
+
+    /**
+     * Checks whether this reference has been interned (or was interned and lost out to an
+     * existing equal reference) and is therefore immutable.
+     */
+    public boolean isFrozen ()
+    {
+        return _arguments.isFrozen();
+    }
+
     /**
      * Fluent method to get the config.
      */
@@ -91,8 +127,9 @@ public class ConfigReference<T extends ManagedConfig> extends DeepObject
     @Override
     public Object copy (Object dest)
     {
+        // interned references are immutable, so we can't copy into them
         ConfigReference<?> cref;
-        if (dest instanceof ConfigReference) {
+        if (dest instanceof ConfigReference && !((ConfigReference<?>)dest).isFrozen()) {
             cref = (ConfigReference<?>)dest;
             cref._name = _name;
         } else {
@@ -102,20 +139,32 @@ public class ConfigReference<T extends ManagedConfig> extends DeepObject
         return cref;
     }
 
+    @Override
+    public Object copy (Object dest, Object outer)
+    {
+        return copy(dest);
+    }
+
     @Override
     public boolean equals (Object other)
     {
+        if (other == this) {
+            return true;
+        }
         if (!(other instanceof ConfigReference)) {
             return false;
         }
         ConfigReference<?> oref = (ConfigReference<?>)other;
+        if (_canonical && oref._canonical) {
+            return false; // interned references are equal only if identical
+        }
         return _name.equals(oref.getName()) && _arguments.equals(oref.getArguments());
     }
 
     @Override
     public int hashCode ()
     {
-        return 31*_name.hashCode() + _arguments.hashCode();
+        return isFrozen() ? _hash : (31*_name.hashCode() + _arguments.hashCode());
     }
 
     @Override
@@ -159,4 +208,15 @@ public class ConfigReference<T extends ManagedConfig> extends DeepObject
 
     /** The arguments of the reference, mapped by name. */
     protected ArgumentMap _arguments = new ArgumentMap();
+
+    /** The cached hash code, if frozen. */
+    @DeepOmit
+    protected transient int _hash;
+
+    /** Set when this reference is the canonical (interned) instance of its contents. */
+    @DeepOmit
+    protected transient boolean _canonical;
+
+    /** Holds the canonical instances of the interned references. */
+    protected static final Interner<ConfigReference<?>> _interner = Interners.newWeakInterner();
 }
@@ -78,12 +78,10 @@ public class ParameterizedConfig extends ManagedConfig
         }
         // filter the arguments, removing any non-parameters
         ArgumentMap filteredArgs = args;
-        ArgumentMap derivedArgs = null;
         for (String name : args.keySet()) {
             if (getParameter(name) == null) {
-                // We found an argument with no corresponding parameter: make a new args map.
-                // Normally derivedArgs will be a clone, but we don't a clone of a fresh copy
-                filteredArgs = derivedArgs = new ArgumentMap();
+                // we found an argument with no corresponding parameter: make a new args map
+                filteredArgs = new ArgumentMap();
                 for (Map.Entry<String, Object> entry : args.entrySet()) {
                     name = entry.getKey();
                     if (getParameter(name) != null) {
@@ -101,9 +99,11 @@ public class ParameterizedConfig extends ManagedConfig
         }
         ParameterizedConfig instance = _derived.get(filteredArgs);
         if (instance == null) {
-            if (derivedArgs == null) {
-                derivedArgs = filteredArgs.clone();
-            }
+            // intern the key so that lookups with interned arguments can match it by identity;
+            // interning freezes the map and any references among its values, so unless the
+            // arguments are already frozen, we intern a deep copy that the caller doesn't share
+            ArgumentMap derivedArgs =
+                (filteredArgs.isFrozen() ? filteredArgs : filteredArgs.clone()).intern();
             _derived.put(derivedArgs, instance = (ParameterizedConfig)clone());
             instance.init(_cfgmgr);
             instance._base = this;
@@ -50,6 +50,7 @@ import com.threerings.resource.ResourceManager;
 
 import com.threerings.config.ArgumentMap;
 import com.threerings.config.ConfigGroup;
+import com.threerings.config.ConfigIndex;
 import com.threerings.config.ConfigManager;
 import com.threerings.config.ConfigReference;
 import com.threerings.config.DerivedConfig;
@@ -154,6 +155,8 @@ public class ConfigFlattener
     {
         System.err.println("Args: <rsrcDir> <outDir> [fileExtension (default='.xml')]");
         System.err.println("If the extension is provided and not '.xml', output will be binary.");
+        System.err.println("If the extension is '" + ConfigIndex.EXTENSION +
+            "', output will be indexed binary.");
         System.exit(1);
     }
 
@@ -220,7 +223,11 @@ public class ConfigFlattener
         // Save everything!
 //        log.info("Saving...");
         // TODO: use the replacer for the "superflat" bundle
-        ctx.cfgmgr.saveAll(ctx.destDir, extension, isXML);
+        if (ConfigIndex.EXTENSION.equalsIgnoreCase(extension)) {
+            ctx.cfgmgr.saveAllIndexed(ctx.destDir);
+        } else {
+            ctx.cfgmgr.saveAll(ctx.destDir, extension, isXML);
+        }
 //        log.info("Done!");
 
         // also copy the manager properties over
@@ -410,6 +410,10 @@ public class BinaryImporter extends Importer
             _fields = cdata.readFields();
             if (value instanceof Exportable) {
                 readFields((Exportable)value);
+                Object cvalue = canonicalize(value);
+                if (cvalue != value) {
+                    _objects.put(objectId, value = cvalue);
+                }
             }
             _fields = null;
         }
@@ -38,6 +38,7 @@ import java.nio.IntBuffer;
 import java.nio.LongBuffer;
 import java.nio.ShortBuffer;
 
+import com.threerings.config.ConfigReference;
 import com.threerings.math.Matrix3f;
 import com.threerings.math.Matrix4f;
 import com.threerings.math.Quaternion;
@@ -54,6 +55,24 @@ import com.threerings.opengl.renderer.Color4f;
 public abstract class Importer
     implements Closeable
 {
+    /**
+     * Sets whether to intern the config references read (see {@link ConfigReference#intern}).
+     * This should only be enabled when the imported objects will not be edited in place, as the
+     * interned references are immutable.
+     */
+    public void setInternReferences (boolean intern)
+    {
+        _internReferences = intern;
+    }
+
+    /**
+     * Checks whether we intern the config references read.
+     */
+    public boolean getInternReferences ()
+    {
+        return _internReferences;
+    }
+
     /**
      * Imports an object from the underlying stream.
      */
@@ -368,9 +387,22 @@ public abstract class Importer
         }
     }
 
+    /**
+     * Returns the canonical instance of a newly read object: the interned reference if the object
+     * is a config reference and we're interning them; otherwise, the object itself.
+     */
+    protected Object canonicalize (Object value)
+    {
+        return (_internReferences && value instanceof ConfigReference) ?
+            ((ConfigReference<?>)value).intern() : value;
+    }
+
     /** The object whose fields are being read. */
     protected Object _object;
 
     /** The marshaller for the current object. */
     protected ObjectMarshaller _marshaller;
+
+    /** Whether or not to intern the config references read. */
+    protected boolean _internReferences;
 }
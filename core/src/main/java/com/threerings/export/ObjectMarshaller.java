@@ -64,6 +64,17 @@ public class ObjectMarshaller
         return _prototype;
     }
 
+    /**
+     * Returns the position of the named field in the order in which fields are written and read
+     * by default, or -1 if there is no such field or the class has custom read or write methods
+     * (in which case the order is unknown).
+     */
+    public int getFieldIndex (String name)
+    {
+        Integer idx = _fieldIndices.get(name);
+        return (idx == null) ? -1 : idx;
+    }
+
     /**
      * Reads the fields of an object from the specified importer.
      */
@@ -88,6 +99,24 @@ public class ObjectMarshaller
         }
     }
 
+    /**
+     * Reads a single field of an object from the specified importer.  Only supported for classes
+     * without custom read and write methods.
+     */
+    public void readField (Object object, String name, Importer importer)
+        throws IOException
+    {
+        Integer idx = _fieldIndices.get(name);
+        if (idx == null) {
+            throw new IllegalArgumentException("Unknown field [name=" + name + "].");
+        }
+        try {
+            _fields[idx].read(object, importer);
+        } catch (IllegalAccessException iae) {
+            throw (IOException)new IOException("Error reading field.").initCause(iae);
+        }
+    }
+
     /**
      * Writes the fields of an object to the specified exporter.
      */
@@ -145,6 +174,11 @@ public class ObjectMarshaller
                         "[class=" + clazz + ", field=" + _fields[ii]._name + "]");
             }
         }
+        if (_reader == null && _writer == null) {
+            for (int ii = 0; ii < _fields.length; ii++) {
+                _fieldIndices.put(_fields[ii]._name, ii);
+            }
+        }
 
         // create the prototype
         try {
@@ -234,6 +268,9 @@ public class ObjectMarshaller
     /** The object's field data. */
     protected FieldData[] _fields;
 
+    /** Maps the names of the fields to their positions, if the order is known. */
+    protected HashMap<String, Integer> _fieldIndices = new HashMap<String, Integer>();
+
     /** The prototype object. */
     protected Object _prototype;
 
@@ -0,0 +1,622 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.export;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.EnumSet;
+import java.util.TreeMap;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Multiset;
+
+import com.threerings.util.ReflectionUtil;
+
+/**
+ * Exports to the XML format of {@link XMLExporter}, writing the elements as they are generated
+ * rather than building the document in memory.  Because objects referenced more than once must
+ * be tagged with ids before their elements are written, each object graph is traversed twice:
+ * once to find the shared objects and once to write them out (so custom
+ * <code>writeFields</code> methods are called twice per object).  The output is identical to
+ * that of {@link XMLExporter}, except that each call to {@link #writeObject} adds another
+ * top-level object (which shares no references with the others) rather than replacing the last
+ * one, and writing the same field twice adds two elements rather than replacing the first.
+ */
+public class StreamingXMLExporter extends Exporter
+{
+    /**
+     * Creates an exporter to write to the specified stream.
+     */
+    public StreamingXMLExporter (OutputStream out)
+    {
+        _out = out;
+    }
+
+    @Override
+    public StreamingXMLExporter setReplacer (Replacer replacer)
+    {
+        super.setReplacer(replacer);
+        return this;
+    }
+
+    @Override
+    public void writeObject (Object object)
+        throws IOException
+    {
+        if (_finished) {
+            throw new IllegalStateException("Exporter already finished.");
+        }
+        if (_writer == null) {
+            startDocument();
+        }
+
+        // find the objects that are referenced more than once, then write for real
+        _referents.clear();
+        _scanning = true;
+        try {
+            write("object", object, Object.class);
+        } finally {
+            _scanning = false;
+        }
+        write("object", object, Object.class);
+    }
+
+    @Override
+    public void write (String name, boolean value)
+        throws IOException
+    {
+        setValue(name, Boolean.toString(value));
+    }
+
+    @Override
+    public void write (String name, byte value)
+        throws IOException
+    {
+        setValue(name, Byte.toString(value));
+    }
+
+    @Override
+    public void write (String name, char value)
+        throws IOException
+    {
+        setValue(name, Character.toString(value));
+    }
+
+    @Override
+    public void write (String name, double value)
+        throws IOException
+    {
+        setValue(name, Double.toString(value));
+    }
+
+    @Override
+    public void write (String name, float value)
+        throws IOException
+    {
+        setValue(name, Float.toString(value));
+    }
+
+    @Override
+    public void write (String name, int value)
+        throws IOException
+    {
+        setValue(name, Integer.toString(value));
+    }
+
+    @Override
+    public void write (String name, long value)
+        throws IOException
+    {
+        setValue(name, Long.toString(value));
+    }
+
+    @Override
+    public void write (String name, short value)
+        throws IOException
+    {
+        setValue(name, Short.toString(value));
+    }
+
+    @Override
+    public <T> void write (String name, T value, Class<T> clazz)
+        throws IOException
+    {
+        appendIndent();
+        startElement(name);
+        write(value, clazz);
+        endElement(name);
+        appendln();
+    }
+
+    @Override
+    public void close ()
+        throws IOException
+    {
+        // finish up, then close the underlying stream
+        finish();
+        _out.write('\n');
+        _out.close();
+    }
+
+    @Override
+    public void finish ()
+        throws IOException
+    {
+        if (_writer == null) {
+            startDocument();
+        }
+        if (!_finished) {
+            endElement("java");
+            _finished = true;
+        }
+        _writer.flush();
+    }
+
+    /**
+     * Writes the XML declaration and the start of the top-level element.
+     */
+    protected void startDocument ()
+        throws IOException
+    {
+        _writer = new BufferedWriter(new OutputStreamWriter(_out, Charsets.UTF_8));
+        _writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        startElement("java");
+        setAttribute("version", XMLExporter.VERSION);
+        setAttribute("class", XMLImporter.class.getName());
+        appendln();
+    }
+
+    /**
+     * Writes an object to the current element.
+     */
+    protected void write (Object value, Class<?> clazz)
+        throws IOException
+    {
+        if (_replacer != null) {
+            Replacement repl = _replacer.getReplacement(value, clazz);
+            if (repl != null) {
+                value = repl.value;
+                clazz = repl.clazz;
+            }
+        }
+
+        if (value == null) {
+            return;
+        }
+
+        // to help readability, always write the values for certain (immutable) types
+        if (value instanceof Boolean || value instanceof Byte || value instanceof Character ||
+            value instanceof Class<?> || value instanceof Double || value instanceof Enum ||
+            value instanceof Float || value instanceof Integer || value instanceof Long ||
+            value instanceof Short || value instanceof String || value instanceof File) {
+            writeValue(value, clazz);
+            return;
+        }
+        Referent referent = _referents.get(value);
+        if (_scanning) {
+            if (referent != null) {
+                if (_depths.containsKey(value)) {
+                    referent.depth = true;
+                } else if (referent.id == 0) {
+                    referent.id = ++_lastObjectId;
+                }
+                return;
+            }
+            _referents.put(value, new Referent());
+
+        } else if (referent != null && referent.written) {
+            Integer depth = _depths.get(value);
+            if (depth != null) {
+                setAttribute("rdepth", depth.toString());
+            } else {
+                setAttribute("ref", Integer.toString(referent.id));
+            }
+            return;
+
+        } else if (referent != null) {
+            // (replacers may create new objects, which won't have been scanned, but those
+            // cannot be referenced more than once)
+            referent.written = true;
+            if (referent.depth) {
+                setAttribute("depth", Integer.toString(_depth));
+            }
+            if (referent.id != 0) {
+                setAttribute("id", Integer.toString(referent.id));
+            }
+        }
+        _depths.put(value, _depth++);
+        writeValue(value, clazz);
+        _depths.remove(value);
+        _depth--;
+    }
+
+    /**
+     * Writes the value of an object to the current element.
+     */
+    protected void writeValue (Object value, Class<?> clazz)
+        throws IOException
+    {
+        // write the class unless we can determine that implicitly
+        Class<?> cclazz = getClass(value);
+        if (cclazz != clazz) {
+            setAttribute("class", cclazz.getName());
+        }
+        // see if we can convert the value to a string
+        @SuppressWarnings("unchecked") Stringifier<Object> stringifier =
+            (Stringifier<Object>)Stringifier.getStringifier(cclazz);
+        if (stringifier != null) {
+            if (!_scanning) {
+                // as in the DOM version, we use a comment to signify an empty string
+                String str = stringifier.toString(value);
+                if (str.isEmpty()) {
+                    appendComment("empty");
+                } else {
+                    appendText(str);
+                }
+            }
+            return;
+        }
+        // the enum class attribute must be set before we write the contents
+        if (value instanceof EnumSet) {
+            EnumSet<?> set = (EnumSet<?>)value;
+            EnumSet<?> typer = set.isEmpty() ? EnumSet.complementOf(set) : set;
+            setAttribute("eclass", typer.iterator().next().getDeclaringClass().getName());
+        }
+        String oindent = _indent;
+        _indent = _indent + "  ";
+        try {
+            appendln();
+            // write the outer class information, if applicable
+            if (!(value instanceof Collection) && !(value instanceof Map)) {
+                Object outer = ReflectionUtil.getOuter(value);
+                if (outer != null) {
+                    write("outer", outer, Object.class);
+                }
+            }
+            if (value instanceof Exportable) {
+                writeFields((Exportable)value);
+            } else if (value instanceof Object[]) {
+                @SuppressWarnings("unchecked") Class<Object> ctype =
+                    (Class<Object>)cclazz.getComponentType();
+                writeEntries((Object[])value, ctype);
+            } else if (value instanceof Collection) {
+                if (value instanceof Multiset) {
+                    writeEntries((Multiset)value);
+                } else {
+                    writeEntries((Collection)value);
+                }
+            } else if (value instanceof Map) {
+                writeEntries((Map)value);
+            } else {
+                throw new IOException("Value is not exportable [class=" + cclazz + "].");
+            }
+        } finally {
+            _indent = oindent;
+            appendIndent();
+        }
+    }
+
+    /**
+     * Writes out the entries of an array.
+     */
+    protected <T> void writeEntries (T[] array, Class<T> ctype)
+        throws IOException
+    {
+        for (T entry : array) {
+            write("entry", entry, ctype);
+        }
+    }
+
+    /**
+     * Writes out the entries of a collection.
+     */
+    protected void writeEntries (Collection<?> collection)
+        throws IOException
+    {
+        for (Object entry : collection) {
+            write("entry", entry, Object.class);
+        }
+    }
+
+    /**
+     * Writes out the entries of a multiset.
+     */
+    protected void writeEntries (Multiset<?> multiset)
+        throws IOException
+    {
+        for (Multiset.Entry<?> entry : multiset.entrySet()) {
+            write("element", entry.getElement(), Object.class);
+            write("count", entry.getCount(), Integer.class);
+        }
+    }
+
+    /**
+     * Writes out the entries of a map.
+     */
+    protected void writeEntries (Map<?, ?> map)
+        throws IOException
+    {
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            write("key", entry.getKey(), Object.class);
+            write("value", entry.getValue(), Object.class);
+        }
+    }
+
+    /**
+     * Writes a simple value element.
+     */
+    protected void setValue (String name, String value)
+        throws IOException
+    {
+        appendIndent();
+        startElement(name);
+        appendText(value);
+        endElement(name);
+        appendln();
+    }
+
+    /**
+     * Starts an element, deferring the start tag until we have all of its attributes.
+     */
+    protected void startElement (String name)
+        throws IOException
+    {
+        if (!_scanning) {
+            writeStartTag();
+            _startName = name;
+        }
+    }
+
+    /**
+     * Sets an attribute on the element most recently started.
+     */
+    protected void setAttribute (String name, String value)
+    {
+        if (!_scanning) {
+            _attributes.put(name, value);
+        }
+    }
+
+    /**
+     * Ends the specified element.
+     */
+    protected void endElement (String name)
+        throws IOException
+    {
+        if (_scanning) {
+            return;
+        }
+        if (_startName == null) {
+            _writer.write("</");
+            _writer.write(name);
+            _writer.write('>');
+        } else {
+            writeStartTag("/>"); // empty elements are written with a single tag
+        }
+    }
+
+    /**
+     * Writes the pending start tag, if any.
+     */
+    protected void writeStartTag ()
+        throws IOException
+    {
+        if (_startName != null) {
+            writeStartTag(">");
+        }
+    }
+
+    /**
+     * Writes the pending start tag with the specified terminator.
+     */
+    protected void writeStartTag (String end)
+        throws IOException
+    {
+        _writer.write('<');
+        _writer.write(_startName);
+        // the serializer writes the attributes in sorted order
+        for (Map.Entry<String, String> entry : _attributes.entrySet()) {
+            _writer.write(' ');
+            _writer.write(entry.getKey());
+            _writer.write("=\"");
+            writeEscaped(entry.getValue(), true);
+            _writer.write('"');
+        }
+        _writer.write(end);
+        _startName = null;
+        _attributes.clear();
+    }
+
+    /**
+     * Appends text to the current element.
+     */
+    protected void appendText (String text)
+        throws IOException
+    {
+        if (!(_scanning || text.isEmpty())) {
+            writeStartTag();
+            writeEscaped(text, false);
+        }
+    }
+
+    /**
+     * Appends a comment to the current element.
+     */
+    protected void appendComment (String comment)
+        throws IOException
+    {
+        if (!_scanning) {
+            writeStartTag();
+            _writer.write("<!--");
+            _writer.write(comment);
+            _writer.write("-->");
+        }
+    }
+
+    /**
+     * Appends the current indentation to the current element.
+     */
+    protected void appendIndent ()
+        throws IOException
+    {
+        appendText(_indent);
+    }
+
+    /**
+     * Appends a newline to the current element.
+     */
+    protected void appendln ()
+        throws IOException
+    {
+        appendText("\n");
+    }
+
+    /**
+     * Writes a string with the characters escaped as by the DOM serializer.
+     *
+     * @param attribute whether the string is an attribute value (as opposed to text content).
+     */
+    protected void writeEscaped (String string, boolean attribute)
+        throws IOException
+    {
+        int start = 0, length = string.length();
+        for (int ii = 0; ii < length; ii++) {
+            char c = string.charAt(ii);
+            if (attribute ? isAttributeChar(c) : isTextChar(c)) {
+                continue;
+            }
+            _writer.write(string, start, ii - start);
+            start = ii + 1;
+            switch (c) {
+                case '"': _writer.write("&quot;"); break;
+                case '&': _writer.write("&amp;"); break;
+                case '<': _writer.write("&lt;"); break;
+                case '>': _writer.write("&gt;"); break;
+                default:
+                    if (!Character.isHighSurrogate(c)) {
+                        writeCharacterReference(c);
+                    } else if (ii + 1 < length) {
+                        // like the serializer, we drop a high surrogate at the end of the
+                        // string, but reject one followed by anything other than a low one
+                        char d = string.charAt(++ii);
+                        if (!Character.isLowSurrogate(d)) {
+                            throw new IOException("Invalid UTF-16 surrogate detected [high=" +
+                                Integer.toHexString(c) + ", next=" + Integer.toHexString(d) + "].");
+                        }
+                        writeCharacterReference(Character.toCodePoint(c, d));
+                        start = ii + 1;
+                    }
+                    break;
+            }
+        }
+        _writer.write(string, start, length - start);
+    }
+
+    /**
+     * Writes a numeric character reference.
+     */
+    protected void writeCharacterReference (int codePoint)
+        throws IOException
+    {
+        _writer.write("&#");
+        _writer.write(Integer.toString(codePoint));
+        _writer.write(';');
+    }
+
+    /**
+     * Checks whether the specified character may be written to text content as-is.
+     */
+    protected static boolean isTextChar (char c)
+    {
+        return (c >= 0x20 && c < 0x7F) ? (c != '&' && c != '<' && c != '>') :
+            (c == '\t' || c == '\n' || (c >= 0xA0 && c < 0xD800) || c >= 0xE000);
+    }
+
+    /**
+     * Checks whether the specified character may be written to an attribute value as-is.
+     */
+    protected static boolean isAttributeChar (char c)
+    {
+        return (c >= 0x20 && c < 0xD800) ? (c != '"' && c != '&' && c != '<' && c != '>') :
+            (c >= 0xE000);
+    }
+
+    /**
+     * Tracks the references to an object.
+     */
+    protected static class Referent
+    {
+        /** The id assigned to the object, or zero if it is only referenced once. */
+        public int id;
+
+        /** Whether the object is referenced from within its own element. */
+        public boolean depth;
+
+        /** Whether the object's element has been written. */
+        public boolean written;
+    }
+
+    /** The output stream. */
+    protected OutputStream _out;
+
+    /** The writer wrapping the output stream. */
+    protected Writer _writer;
+
+    /** Whether we are scanning the object graph rather than writing it. */
+    protected boolean _scanning;
+
+    /** Whether we have written the end of the document. */
+    protected boolean _finished;
+
+    /** The name of the element whose start tag has yet to be written, if any. */
+    protected String _startName;
+
+    /** The attributes of the pending start tag, sorted by name. */
+    protected TreeMap<String, String> _attributes = new TreeMap<String, String>();
+
+    /** The current indentation string. */
+    protected String _indent = "";
+
+    /** Tracks the references to the objects in the current graph. */
+    protected IdentityHashMap<Object, Referent> _referents =
+        new IdentityHashMap<Object, Referent>();
+
+    /** The depths of the objects being written. */
+    protected IdentityHashMap<Object, Integer> _depths = new IdentityHashMap<Object, Integer>();
+
+    /** The last object id assigned. */
+    protected int _lastObjectId;
+
+    /** The current depth of the element being written. */
+    protected int _depth;
+}
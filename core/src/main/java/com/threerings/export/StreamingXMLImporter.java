@@ -0,0 +1,1072 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.export;
+
+import java.lang.reflect.Array;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.EnumSet;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+
+import com.threerings.util.ReflectionUtil;
+
+import static com.threerings.export.Log.log;
+
+/**
+ * Imports from the XML format generated by {@link XMLExporter} (or {@link StreamingXMLExporter}),
+ * pulling elements from the stream as they are read rather than parsing the entire document up
+ * front.  Only the elements on the path to the current object are held in memory, along with any
+ * siblings that must be skipped over to find a field that is read out of order.  For classes
+ * without custom read and write methods, we know the order in which the fields are written, and
+ * can thus tell that a field was omitted without searching for it (should a field turn up out of
+ * order anyway, it is read once we reach it).
+ */
+public class StreamingXMLImporter extends Importer
+{
+    /**
+     * Creates an importer to read from the specified stream.
+     */
+    public StreamingXMLImporter (InputStream in)
+    {
+        _in = in;
+    }
+
+    @Override
+    public Object readObject ()
+        throws IOException
+    {
+        if (_root == null) {
+            try {
+                _reader = _factory.createXMLStreamReader(_in);
+                while (_reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                    _reader.next();
+                }
+            } catch (XMLStreamException e) {
+                throw new IOException("Failed to parse input [error=" + e + "].");
+            }
+            _root = new StreamElement(_reader);
+            if (!_root.getName().equals("java")) {
+                throw new IOException("Invalid top-level element [name=" +
+                    _root.getName() + "].");
+            }
+            String vstr = _root.getAttribute("version");
+            if (!vstr.equals(XMLExporter.VERSION)) {
+                throw new IOException("Invalid version [version=" + vstr + ", expected=" +
+                    XMLExporter.VERSION + "].");
+            }
+            // the format identifies the DOM importer, which reads the same documents
+            String cstr = _root.getAttribute("class");
+            if (!cstr.equals(XMLImporter.class.getName())) {
+                throw new IOException("Invalid importer class [class=" + cstr + ", expected=" +
+                    XMLImporter.class.getName() + "].");
+            }
+        }
+        if ((_element = _root.nextChild("object")) == null) {
+            throw new EOFException();
+        }
+        return read(_element, Object.class);
+    }
+
+    @Override
+    public boolean read (String name, boolean defvalue)
+        throws IOException
+    {
+        String value = getValue(name);
+        return (value == null) ? defvalue : Boolean.parseBoolean(value);
+    }
+
+    @Override
+    public byte read (String name, byte defvalue)
+        throws IOException
+    {
+        String value = getValue(name);
+        try {
+            return (value == null) ? defvalue : Byte.parseByte(value);
+        } catch (NumberFormatException e) {
+            log.warning("Couldn't parse value as byte [value=" + value + "].", e);
+            return defvalue;
+        }
+    }
+
+    @Override
+    public char read (String name, char defvalue)
+        throws IOException
+    {
+        String value = getValue(name);
+        return (value == null) ? defvalue : value.charAt(0);
+    }
+
+    @Override
+    public double read (String name, double defvalue)
+        throws IOException
+    {
+        String value = getValue(name);
+        try {
+            return (value == null) ? defvalue : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            log.warning("Couldn't parse value as double [value=" + value + "].", e);
+            return defvalue;
+        }
+    }
+
+    @Override
+    public float read (String name, float defvalue)
+        throws IOException
+    {
+        String value = getValue(name);
+        try {
+            return (value == null) ? defvalue : Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            log.warning("Couldn't parse value as float [value=" + value + "].", e);
+            return defvalue;
+        }
+    }
+
+    @Override
+    public int read (String name, int defvalue)
+        throws IOException
+    {
+        String value = getValue(name);
+        try {
+            return (value == null) ? defvalue : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            log.warning("Couldn't parse value as int [value=" + value + "].", e);
+            return defvalue;
+        }
+    }
+
+    @Override
+    public long read (String name, long defvalue)
+        throws IOException
+    {
+        String value = getValue(name);
+        try {
+            return (value == null) ? defvalue : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            log.warning("Couldn't parse value as long [value=" + value + "].", e);
+            return defvalue;
+        }
+    }
+
+    @Override
+    public short read (String name, short defvalue)
+        throws IOException
+    {
+        String value = getValue(name);
+        try {
+            return (value == null) ? defvalue : Short.parseShort(value);
+        } catch (NumberFormatException e) {
+            log.warning("Couldn't parse value as short [value=" + value + "].", e);
+            return defvalue;
+        }
+    }
+
+    @Override
+    public <T> T read (String name, T defvalue, Class<T> clazz)
+        throws IOException
+    {
+        Element child = _element.findChild(name);
+        if (child == null) {
+            return defvalue;
+        }
+        return clazz.cast(read(child, clazz));
+    }
+
+    @Override
+    public void close ()
+        throws IOException
+    {
+        if (_reader != null) {
+            try {
+                _reader.close();
+            } catch (XMLStreamException e) {
+                log.warning("Failed to close reader.", e);
+            }
+        }
+        _in.close();
+    }
+
+    /**
+     * Reads an object of the supplied type from the given element.
+     */
+    protected Object read (Element element, Class<?> clazz)
+        throws IOException
+    {
+        String ref = element.getAttribute("ref");
+        String rdepth = element.getAttribute("rdepth");
+        if (rdepth.length() > 0) {
+            return _depths.get(rdepth);
+        } else if (ref.length() > 0) {
+            return _objects.get(ref);
+        } else if (!element.hasChildNodes()) {
+            return null;
+        } else {
+            return readValue(element, clazz);
+        }
+    }
+
+    /**
+     * Returns the named class, or null if not found.
+     */
+    protected Class<?> getClassByName (String cstr, Class<?> defval)
+    {
+        if (cstr.length() > 0) {
+            try {
+                return Class.forName(cstr);
+            } catch (ClassNotFoundException e) {
+                log.warning("Class not found.", e);
+                return null;
+            }
+        }
+        return defval;
+    }
+
+    /**
+     * Reads an object value of the specified class from the given element.
+     */
+    protected Object readValue (Element element, Class<?> clazz)
+        throws IOException
+    {
+        // see if we can read the value from a string
+        String id = element.getAttribute("id");
+        String depth = element.getAttribute("depth");
+        Class<?> cclazz = getClassByName(element.getAttribute("class"), clazz);
+        @SuppressWarnings("unchecked")
+        Stringifier<Object> stringifier = (Stringifier<Object>)Stringifier.getStringifier(cclazz);
+        if (stringifier != null) {
+            String string = element.getTextContent();
+            Object value = null;
+            try {
+                if ((value = stringifier.fromString(string)) == null) {
+                    log.warning("Failed to parse string.", "string", string, "class", cclazz);
+                }
+            } catch (Exception e) {
+                log.warning("Failed to parse string.", "string", string, "class", cclazz, e);
+            }
+            if (value != null) {
+                if (depth.length() > 0) {
+                    putObjectDepth(depth, value);
+                }
+                if (id.length() > 0) {
+                    putObject(id, value);
+                }
+            }
+            return value;
+        }
+        // otherwise, process the element
+        Element oelement = _element;
+        _element = element;
+        try {
+            Object value;
+            boolean wasRead = false;
+            if (cclazz.isArray()) {
+                Class<?> ctype = cclazz.getComponentType();
+                if (depth.length() == 0 && !ctype.isPrimitive()) {
+                    // the entries can only refer back to the array by depth, so without one we
+                    // can read them as they come and create the array afterwards
+                    List<Object> entries = readEntries(Lists.newArrayList(), ctype);
+                    value = entries.toArray((Object[])Array.newInstance(ctype, entries.size()));
+                    wasRead = true;
+                } else {
+                    // otherwise, we must count the entries before we can create the array
+                    _element = element = element.buffer();
+                    value = Array.newInstance(ctype, element.countChildren("entry"));
+                }
+
+            } else if (cclazz == ImmutableList.class) {
+                value = ImmutableList.copyOf(readEntries(Lists.newArrayList(), Object.class));
+                wasRead = true;
+
+            } else if (cclazz == ImmutableSet.class) {
+                value = ImmutableSet.copyOf(readEntries(Lists.newArrayList(), Object.class));
+                wasRead = true;
+
+            } else if (cclazz == ImmutableMap.class) {
+                value = ImmutableMap.copyOf(readEntries(Maps.newHashMap()));
+                wasRead = true;
+
+            } else if (cclazz == ImmutableMultiset.class) {
+                value = ImmutableMultiset.copyOf(readEntries(HashMultiset.create()));
+                wasRead = true;
+
+            } else if (EnumSet.class.isAssignableFrom(cclazz)) {
+                @SuppressWarnings("unchecked") Class<Exporter.DummyEnum> eclazz =
+                    (Class<Exporter.DummyEnum>)getClassByName(element.getAttribute("eclass"), null);
+                value = EnumSet.noneOf(eclazz);
+
+            } else {
+                value = ReflectionUtil.newInstance(cclazz,
+                    ReflectionUtil.isInner(cclazz) ? read("outer", null, Object.class) : null);
+            }
+            if (depth.length() > 0 && value != null) {
+                putObjectDepth(depth, value);
+            }
+            if (id.length() > 0) {
+                putObject(id, value);
+            }
+            if (wasRead) {
+                return value;
+            }
+            if (value instanceof Exportable) {
+                ObjectMarshaller marshaller =
+                    ObjectMarshaller.getObjectMarshaller(value.getClass());
+                element.setMarshaller(marshaller);
+                readFields((Exportable)value);
+                // read any fields that we skipped because they were out of order
+                for (String name : element.getMisplacedFields()) {
+                    marshaller.readField(value, name, this);
+                }
+                Object cvalue = canonicalize(value);
+                if (cvalue != value && id.length() > 0) {
+                    _objects.put(id, cvalue);
+                }
+                value = cvalue;
+            } else if (value instanceof Object[]) {
+                readEntries((Object[])value, cclazz.getComponentType());
+            } else if (value instanceof Collection) {
+                if (value instanceof Multiset) {
+                    @SuppressWarnings("unchecked") Multiset<Object> multiset =
+                        (Multiset<Object>)value;
+                    readEntries(multiset);
+                } else {
+                    @SuppressWarnings("unchecked") Collection<Object> collection =
+                        (Collection<Object>)value;
+                    readEntries(collection, Object.class);
+                }
+            } else if (value instanceof Map) {
+                @SuppressWarnings("unchecked") Map<Object, Object> map =
+                    (Map<Object, Object>)value;
+                readEntries(map);
+            }
+            return value;
+
+        } finally {
+            _element = oelement;
+            if (depth.length() > 0) {
+                _depths.remove(depth);
+            }
+        }
+    }
+
+    /**
+     * Stores an object in the map, logging a warning if we overwrite an existing entry.
+     */
+    protected void putObject (String id, Object value)
+    {
+        Object ovalue = _objects.put(id, value);
+        if (ovalue != null) {
+            log.warning("Duplicate id detected.", "id", id, "ovalue", ovalue, "nvalue", value);
+        }
+    }
+
+    /**
+     * Stores an object in the map, logging a warning if we overwrite an existing entry.
+     */
+    protected void putObjectDepth (String depth, Object value)
+    {
+        Object ovalue = _depths.put(depth, value);
+        if (ovalue != null) {
+            log.warning("Duplicate depth detected.",
+                    "depth", depth, "ovalue", ovalue, "nvalue", value);
+        }
+    }
+
+    /**
+     * Populates the supplied array with the entries under the current element.
+     */
+    protected void readEntries (Object[] array, Class<?> cclazz)
+        throws IOException
+    {
+        int idx = 0;
+        for (Element child; (child = _element.nextChild("entry")) != null; ) {
+            array[idx++] = read(child, cclazz);
+        }
+    }
+
+    /**
+     * Populates the supplied collection with the entries under the current element.
+     *
+     * @return a reference to the collection passed, for chaining.
+     */
+    protected <T extends Collection<Object>> T readEntries (T collection, Class<?> cclazz)
+        throws IOException
+    {
+        for (Element child; (child = _element.nextChild("entry")) != null; ) {
+            collection.add(read(child, cclazz));
+        }
+        return collection;
+    }
+
+    /**
+     * Populates the supplied multiset with the entries under the current element.
+     *
+     * @return a reference to the multiset passed, for chaining.
+     */
+    protected Multiset<Object> readEntries (Multiset<Object> multiset)
+        throws IOException
+    {
+        for (Element child; (child = _element.nextChild("element")) != null; ) {
+            Object element = read(child, Object.class);
+            if ((child = _element.nextChild("count")) != null) {
+                multiset.setCount(element, (Integer)read(child, Integer.class));
+            }
+        }
+        return multiset;
+    }
+
+    /**
+     * Populates the supplied map with the entries under the current element.
+     *
+     * @return a reference to the map passed, for chaining.
+     */
+    protected Map<Object, Object> readEntries (Map<Object, Object> map)
+        throws IOException
+    {
+        for (Element child; (child = _element.nextChild("key")) != null; ) {
+            Object key = read(child, Object.class);
+            if ((child = _element.nextChild("value")) != null) {
+                map.put(key, read(child, Object.class));
+            }
+        }
+        return map;
+    }
+
+    /**
+     * For simple text fields, retrieves the value from a child element.
+     */
+    protected String getValue (String name)
+        throws IOException
+    {
+        Element child = _element.findChild(name);
+        return (child == null) ? null : child.getFirstText();
+    }
+
+    /**
+     * Creates the factory for our stream readers.
+     */
+    protected static XMLInputFactory createInputFactory ()
+    {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * Advances the reader to the next event, converting any parse error to an IO exception.
+     */
+    protected static int next (XMLStreamReader reader)
+        throws IOException
+    {
+        try {
+            return reader.next();
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to parse input [error=" + e + "].");
+        }
+    }
+
+    /**
+     * Determines whether the specified event type is a text event.
+     */
+    protected static boolean isText (int type)
+    {
+        return type == XMLStreamConstants.CHARACTERS || type == XMLStreamConstants.CDATA ||
+            type == XMLStreamConstants.SPACE;
+    }
+
+    /**
+     * Consumes the element at which the reader is positioned, appending its text content to the
+     * supplied buffer (if non-null).  Leaves the reader at the element's end tag.
+     */
+    protected static void readText (XMLStreamReader reader, StringBuilder buf)
+        throws IOException
+    {
+        for (int depth = 1; depth > 0; ) {
+            int type = next(reader);
+            if (type == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (type == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (buf != null && isText(type)) {
+                buf.append(reader.getTextCharacters(),
+                    reader.getTextStart(), reader.getTextLength());
+            }
+        }
+    }
+
+    /**
+     * The view of an element used by the importer: either one being pulled from the stream or
+     * one that has been read into memory.
+     */
+    protected static abstract class Element
+    {
+        /**
+         * Creates an element with the name and attributes at which the reader is positioned.
+         */
+        public Element (XMLStreamReader reader)
+        {
+            _name = reader.getLocalName();
+            int count = reader.getAttributeCount();
+            _attributes = new String[count * 2];
+            for (int ii = 0; ii < count; ii++) {
+                _attributes[ii*2] = reader.getAttributeLocalName(ii);
+                _attributes[ii*2 + 1] = reader.getAttributeValue(ii);
+            }
+        }
+
+        /**
+         * Creates an element with the same name and attributes as another.
+         */
+        public Element (Element other)
+        {
+            _name = other._name;
+            _attributes = other._attributes;
+        }
+
+        /**
+         * Returns the name of the element.
+         */
+        public String getName ()
+        {
+            return _name;
+        }
+
+        /**
+         * Returns the value of the named attribute, or the empty string if not present.
+         */
+        public String getAttribute (String name)
+        {
+            for (int ii = 0; ii < _attributes.length; ii += 2) {
+                if (_attributes[ii].equals(name)) {
+                    return _attributes[ii + 1];
+                }
+            }
+            return "";
+        }
+
+        /**
+         * Sets the marshaller of the object represented by the element, which determines the
+         * order of its fields.
+         */
+        public void setMarshaller (ObjectMarshaller marshaller)
+        {
+            _marshaller = marshaller;
+        }
+
+        /**
+         * Checks whether the element has any child nodes.  Only valid before any of the children
+         * are read.
+         */
+        public abstract boolean hasChildNodes ()
+            throws IOException;
+
+        /**
+         * Returns the text content of the element and all of its descendants.
+         */
+        public abstract String getTextContent ()
+            throws IOException;
+
+        /**
+         * Returns the contents of the first text node under the element, or null if none.
+         */
+        public abstract String getFirstText ()
+            throws IOException;
+
+        /**
+         * Finds the first child element with the given name, or returns null if there is none.
+         */
+        public abstract Element findChild (String name)
+            throws IOException;
+
+        /**
+         * Returns the next child element with the given name following the last one returned by
+         * this method, or null if there are no more.
+         */
+        public abstract Element nextChild (String name)
+            throws IOException;
+
+        /**
+         * Returns the names of any fields that were assumed to have been omitted because the
+         * children that followed them in the field order were found first, but that turn up
+         * later after all.  Their elements may then be found with {@link #findChild}.
+         */
+        public abstract List<String> getMisplacedFields ()
+            throws IOException;
+
+        /**
+         * Returns the number of children with the given name.
+         */
+        public abstract int countChildren (String name)
+            throws IOException;
+
+        /**
+         * Returns a version of this element whose remaining children have been read into memory.
+         */
+        public abstract Element buffer ()
+            throws IOException;
+
+        /** The name of the element. */
+        protected String _name;
+
+        /** The names and values of the element's attributes. */
+        protected String[] _attributes;
+
+        /** The marshaller for the object represented by the element, if any. */
+        protected ObjectMarshaller _marshaller;
+    }
+
+    /**
+     * An element being pulled from the stream.
+     */
+    protected static class StreamElement extends Element
+    {
+        /**
+         * Creates an element for the start tag at which the reader is positioned.
+         */
+        public StreamElement (XMLStreamReader reader)
+        {
+            super(reader);
+            _reader = reader;
+        }
+
+        @Override
+        public boolean hasChildNodes ()
+            throws IOException
+        {
+            return peek() != XMLStreamConstants.END_ELEMENT;
+        }
+
+        @Override
+        public String getTextContent ()
+            throws IOException
+        {
+            StringBuilder buf = new StringBuilder();
+            for (int type; (type = peek()) != XMLStreamConstants.END_ELEMENT; _consumed = true) {
+                if (type == XMLStreamConstants.START_ELEMENT) {
+                    readText(_reader, buf);
+                } else if (isText(type)) {
+                    buf.append(_reader.getText());
+                }
+            }
+            return buf.toString();
+        }
+
+        @Override
+        public String getFirstText ()
+            throws IOException
+        {
+            StringBuilder buf = null;
+            for (int type; (type = peek()) != XMLStreamConstants.END_ELEMENT; _consumed = true) {
+                if (isText(type)) {
+                    if (buf == null) {
+                        buf = new StringBuilder();
+                    }
+                    buf.append(_reader.getText());
+                } else if (buf != null) {
+                    break;
+                } else if (type == XMLStreamConstants.START_ELEMENT) {
+                    readText(_reader, null);
+                }
+            }
+            return (buf == null) ? null : buf.toString();
+        }
+
+        @Override
+        public Element findChild (String name)
+            throws IOException
+        {
+            if (_skipped != null) {
+                for (BufferedElement child : _skipped) {
+                    if (child.getName().equals(name)) {
+                        return child;
+                    }
+                }
+            }
+            return pullChild(name, true);
+        }
+
+        @Override
+        public Element nextChild (String name)
+            throws IOException
+        {
+            if (_skipped != null) {
+                for (int ii = 0, nn = _skipped.size(); ii < nn; ii++) {
+                    if (_skipped.get(ii).getName().equals(name)) {
+                        return _skipped.remove(ii);
+                    }
+                }
+            }
+            return pullChild(name, false);
+        }
+
+        @Override
+        public List<String> getMisplacedFields ()
+            throws IOException
+        {
+            if (_omitted == null) {
+                return Collections.emptyList();
+            }
+            List<String> names = Lists.newArrayList();
+            if (_skipped != null) {
+                for (BufferedElement child : _skipped) {
+                    if (_omitted.remove(child.getName())) {
+                        names.add(child.getName());
+                    }
+                }
+            }
+            for (int type; (type = peek()) != XMLStreamConstants.END_ELEMENT; _consumed = true) {
+                if (type != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String cname = _reader.getLocalName();
+                if (_omitted.remove(cname)) {
+                    names.add(cname);
+                    bufferChild();
+                } else {
+                    readText(_reader, null);
+                }
+            }
+            return names;
+        }
+
+        @Override
+        public int countChildren (String name)
+            throws IOException
+        {
+            return buffer().countChildren(name);
+        }
+
+        @Override
+        public Element buffer ()
+            throws IOException
+        {
+            BufferedElement element = new BufferedElement(this);
+            if (_skipped != null) {
+                element._children.addAll(_skipped);
+                _skipped = null;
+            }
+            for (int type; (type = peek()) != XMLStreamConstants.END_ELEMENT; _consumed = true) {
+                element.addChild(_reader, type);
+            }
+            return element;
+        }
+
+        /**
+         * Skips the remainder of the element, leaving the reader positioned at its end tag.
+         */
+        public void finish ()
+            throws IOException
+        {
+            for (int type; (type = peek()) != XMLStreamConstants.END_ELEMENT; _consumed = true) {
+                if (type == XMLStreamConstants.START_ELEMENT) {
+                    readText(_reader, null);
+                }
+            }
+        }
+
+        /**
+         * Pulls children from the stream until we reach one with the given name, buffering any
+         * others that may be requested later.
+         *
+         * @param random if true, the caller is looking for a field that may appear anywhere
+         * among the children.
+         */
+        protected Element pullChild (String name, boolean random)
+            throws IOException
+        {
+            for (int type; (type = peek()) != XMLStreamConstants.END_ELEMENT; _consumed = true) {
+                if (type != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String cname = _reader.getLocalName();
+                if (cname.equals(name)) {
+                    _consumed = true;
+                    return (_child = new StreamElement(_reader));
+                }
+                // if we know the field order and the next child comes after the requested one,
+                // the requested field was omitted and we can leave the child in the stream
+                if (random && _marshaller != null) {
+                    int idx = _marshaller.getFieldIndex(name);
+                    if (idx != -1 && _marshaller.getFieldIndex(cname) > idx) {
+                        if (_omitted == null) {
+                            _omitted = Sets.newHashSet();
+                        }
+                        _omitted.add(name);
+                        return null;
+                    }
+                }
+                bufferChild();
+            }
+            return null;
+        }
+
+        /**
+         * Reads the child element at which the reader is positioned into the skipped list.
+         */
+        protected void bufferChild ()
+            throws IOException
+        {
+            if (_skipped == null) {
+                _skipped = Lists.newArrayList();
+            }
+            _skipped.add(new BufferedElement(_reader));
+        }
+
+        /**
+         * Returns the type of the next unconsumed event within the element (first finishing the
+         * last child returned), or {@link XMLStreamConstants#END_ELEMENT} if we've reached the
+         * end.
+         */
+        protected int peek ()
+            throws IOException
+        {
+            if (_child != null) {
+                _child.finish();
+                _child = null;
+            }
+            if (_ended) {
+                return XMLStreamConstants.END_ELEMENT;
+            }
+            if (_consumed) {
+                next(_reader);
+                _consumed = false;
+            }
+            int type = _reader.getEventType();
+            if (type == XMLStreamConstants.END_ELEMENT) {
+                _ended = true;
+            }
+            return type;
+        }
+
+        /** The stream reader. */
+        protected XMLStreamReader _reader;
+
+        /** The last child pulled from the stream, if it may not yet have been finished. */
+        protected StreamElement _child;
+
+        /** The children skipped over in order to find others. */
+        protected List<BufferedElement> _skipped;
+
+        /** The names of the fields assumed to have been omitted, if any. */
+        protected Set<String> _omitted;
+
+        /** Whether the current event of the reader has been consumed. */
+        protected boolean _consumed = true;
+
+        /** Whether we have reached the end of the element. */
+        protected boolean _ended;
+    }
+
+    /**
+     * An element that has been read into memory.
+     */
+    protected static class BufferedElement extends Element
+    {
+        /**
+         * Reads the element at which the reader is positioned, leaving the reader at its end tag.
+         */
+        public BufferedElement (XMLStreamReader reader)
+            throws IOException
+        {
+            super(reader);
+            for (int type; (type = next(reader)) != XMLStreamConstants.END_ELEMENT; ) {
+                addChild(reader, type);
+            }
+        }
+
+        /**
+         * Creates an empty element with the same name and attributes as another.
+         */
+        public BufferedElement (Element other)
+        {
+            super(other);
+        }
+
+        @Override
+        public boolean hasChildNodes ()
+        {
+            return !_children.isEmpty();
+        }
+
+        @Override
+        public String getTextContent ()
+        {
+            StringBuilder buf = new StringBuilder();
+            appendText(buf);
+            return buf.toString();
+        }
+
+        @Override
+        public String getFirstText ()
+        {
+            for (Object child : _children) {
+                if (child instanceof String) {
+                    return (String)child;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Element findChild (String name)
+        {
+            for (Object child : _children) {
+                if (child instanceof BufferedElement &&
+                        ((BufferedElement)child).getName().equals(name)) {
+                    return (BufferedElement)child;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Element nextChild (String name)
+        {
+            while (_cursor < _children.size()) {
+                Object child = _children.get(_cursor++);
+                if (child instanceof BufferedElement &&
+                        ((BufferedElement)child).getName().equals(name)) {
+                    return (BufferedElement)child;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public List<String> getMisplacedFields ()
+        {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public int countChildren (String name)
+        {
+            int count = 0;
+            for (Object child : _children) {
+                if (child instanceof BufferedElement &&
+                        ((BufferedElement)child).getName().equals(name)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public Element buffer ()
+        {
+            return this;
+        }
+
+        /**
+         * Adds the node at which the reader is positioned as a child of this element.
+         */
+        protected void addChild (XMLStreamReader reader, int type)
+            throws IOException
+        {
+            if (type == XMLStreamConstants.START_ELEMENT) {
+                _children.add(new BufferedElement(reader));
+
+            } else if (isText(type)) {
+                // merge adjacent text
+                String text = reader.getText();
+                int last = _children.size() - 1;
+                if (last >= 0 && _children.get(last) instanceof String) {
+                    _children.set(last, _children.get(last) + text);
+                } else {
+                    _children.add(text);
+                }
+            } else {
+                _children.add(OTHER_NODE);
+            }
+        }
+
+        /**
+         * Appends the text content of this element to the supplied buffer.
+         */
+        protected void appendText (StringBuilder buf)
+        {
+            for (Object child : _children) {
+                if (child instanceof String) {
+                    buf.append((String)child);
+                } else if (child instanceof BufferedElement) {
+                    ((BufferedElement)child).appendText(buf);
+                }
+            }
+        }
+
+        /** The child nodes: elements, text strings, and {@link #OTHER_NODE} for the rest. */
+        protected ArrayList<Object> _children = new ArrayList<Object>();
+
+        /** The position of the next child to examine in {@link #nextChild}. */
+        protected int _cursor;
+    }
+
+    /** The source stream. */
+    protected InputStream _in;
+
+    /** The stream reader. */
+    protected XMLStreamReader _reader;
+
+    /** The top-level element. */
+    protected StreamElement _root;
+
+    /** The element associated with the current object. */
+    protected Element _element;
+
+    /** Mappings from ids to referenced objects. */
+    protected HashMap<String, Object> _objects = new HashMap<String, Object>();
+    protected HashMap<String, Object> _depths = new HashMap<String, Object>();
+
+    /** The shared factory for stream readers (looking up the implementation is expensive). */
+    protected static final XMLInputFactory _factory = createInputFactory();
+
+    /** Stands in for comments and other nodes that are neither elements nor text. */
+    protected static final Object OTHER_NODE = new Object();
+}
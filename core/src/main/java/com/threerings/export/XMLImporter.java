@@ -334,6 +334,11 @@ public class XMLImporter extends Importer
             }
             if (value instanceof Exportable) {
                 readFields((Exportable)value);
+                Object cvalue = canonicalize(value);
+                if (cvalue != value && id.length() > 0) {
+                    _objects.put(id, cvalue);
+                }
+                value = cvalue;
             } else if (value instanceof Object[]) {
                 readEntries((Object[])value, cclazz.getComponentType());
             } else if (value instanceof Collection) {
@@ -37,7 +37,7 @@ import com.samskivert.util.ArrayUtil;
 import com.samskivert.util.FileUtil;
 
 import com.threerings.export.BinaryExporter;
-import com.threerings.export.XMLImporter;
+import com.threerings.export.StreamingXMLImporter;
 
 import static com.threerings.export.Log.log;
 
@@ -112,7 +112,7 @@ public class XMLToBinaryConverter
     public static void convert (String source, String dest, boolean compress)
         throws IOException
     {
-        XMLImporter in = new XMLImporter(new FileInputStream(source));
+        StreamingXMLImporter in = new StreamingXMLImporter(new FileInputStream(source));
         BinaryExporter out = new BinaryExporter(new FileOutputStream(dest), compress);
         try {
             while (true) {
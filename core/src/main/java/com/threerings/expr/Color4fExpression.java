@@ -29,6 +29,7 @@ import com.threerings.editor.Editable;
 import com.threerings.editor.EditorTypes;
 import com.threerings.opengl.renderer.Color4f;
 
+import com.threerings.expr.util.ExpressionCompiler;
 import com.threerings.expr.util.ScopeUtil;
 
 /**
@@ -107,7 +108,8 @@ public abstract class Color4fExpression extends ObjectExpression<Color4f>
         {
             final Evaluator<Color4f> eval1 = firstColor.createEvaluator(scope);
             final Evaluator<Color4f> eval2 = secondColor.createEvaluator(scope);
-            final FloatExpression.Evaluator beval = blendFactor.createEvaluator(scope);
+            final FloatExpression.Evaluator beval =
+                ExpressionCompiler.createEvaluator(blendFactor, scope);
             return new Evaluator<Color4f>() {
                 public Color4f evaluate () {
                     return eval1.evaluate().lerp(eval2.evaluate(), beval.evaluate(), _result);
@@ -38,6 +38,7 @@ import com.threerings.editor.EditorTypes;
 import com.threerings.editor.PathProperty;
 import com.threerings.editor.Property;
 import com.threerings.export.Exportable;
+import com.threerings.expr.util.ExpressionCompiler;
 import com.threerings.util.DeepObject;
 import com.threerings.util.DeepOmit;
 
@@ -77,7 +78,8 @@ public abstract class ExpressionBinding extends DeepObject
         @Override
         public Updater createUpdater (ConfigManager cfgmgr, Scope scope, Object object)
         {
-            final FloatExpression.Evaluator evaluator = expression.createEvaluator(scope);
+            final FloatExpression.Evaluator evaluator =
+                ExpressionCompiler.createEvaluator(expression, scope);
             final Tuple<Property, Object>[] targets = getTargets(cfgmgr, object, Float.TYPE);
             final Tuple<Property, Object>[] flags = getFlags(cfgmgr, object);
             return new Updater() {
@@ -96,7 +98,7 @@ public abstract class ExpressionBinding extends DeepObject
         @Override
         public void preload (GlContext ctx)
         {
-            expression.createEvaluator(ctx.getScope());
+            ExpressionCompiler.createEvaluator(expression, ctx.getScope());
         }
 
         @Override
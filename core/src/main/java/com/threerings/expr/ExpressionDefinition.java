@@ -30,6 +30,7 @@ import java.util.ArrayList;
 import com.threerings.editor.Editable;
 import com.threerings.editor.EditorTypes;
 import com.threerings.export.Exportable;
+import com.threerings.expr.util.ExpressionCompiler;
 import com.threerings.util.DeepObject;
 
 /**
@@ -57,7 +58,8 @@ public abstract class ExpressionDefinition extends DeepObject
         public Object getValue (Scope scope, ArrayList<Updater> updaters)
         {
             final MutableFloat mutable = new MutableFloat();
-            final FloatExpression.Evaluator evaluator = expression.createEvaluator(scope);
+            final FloatExpression.Evaluator evaluator =
+                ExpressionCompiler.createEvaluator(expression, scope);
             updaters.add(new Updater() {
                 public void update () {
                     mutable.value = evaluator.evaluate();
@@ -66,6 +66,14 @@ public abstract class FloatExpression extends DeepObject
 
         @Override
         public Evaluator createEvaluator (Scope scope)
+        {
+            return getParsedExpression().createEvaluator(scope);
+        }
+
+        /**
+         * Returns the parsed form of the expression (or a zero constant if it fails to parse).
+         */
+        public FloatExpression getParsedExpression ()
         {
             if (_expr == null) {
                 try {
@@ -77,7 +85,7 @@ public abstract class FloatExpression extends DeepObject
                     _expr = new Constant(0f);
                 }
             }
-            return _expr.createEvaluator(scope);
+            return _expr;
         }
 
         @Override
@@ -303,10 +311,18 @@ public abstract class FloatExpression extends DeepObject
         {
             return new Evaluator() {
                 public float evaluate () {
-                    return (FloatMath.ifloor(eval.evaluate() / FloatMath.PI) & 1) == 0 ? 1f : -1f;
+                    return wave(eval.evaluate());
                 }
             };
         }
+
+        /**
+         * Computes the square wave value of the supplied argument.
+         */
+        public static float wave (float value)
+        {
+            return (FloatMath.ifloor(value / FloatMath.PI) & 1) == 0 ? 1f : -1f;
+        }
     }
 
     /**
@@ -319,12 +335,20 @@ public abstract class FloatExpression extends DeepObject
         {
             return new Evaluator() {
                 public float evaluate () {
-                    float val = Math.abs(eval.evaluate() / FloatMath.PI + 0.5f);
-                    float mod = 2f * (val % 1f) - 1f;
-                    return (FloatMath.ifloor(val) & 1) == 0 ? +mod : -mod;
+                    return wave(eval.evaluate());
                 }
             };
         }
+
+        /**
+         * Computes the triangle wave value of the supplied argument.
+         */
+        public static float wave (float value)
+        {
+            float val = Math.abs(value / FloatMath.PI + 0.5f);
+            float mod = 2f * (val % 1f) - 1f;
+            return (FloatMath.ifloor(val) & 1) == 0 ? +mod : -mod;
+        }
     }
 
     /**
@@ -337,11 +361,19 @@ public abstract class FloatExpression extends DeepObject
         {
             return new Evaluator() {
                 public float evaluate () {
-                    float mod = (eval.evaluate() / FloatMath.TWO_PI + 0.5f) % 1f;
-                    return (mod < 0f ? +1f : -1f) + 2f*mod;
+                    return wave(eval.evaluate());
                 }
             };
         }
+
+        /**
+         * Computes the ramp wave value of the supplied argument.
+         */
+        public static float wave (float value)
+        {
+            float mod = (value / FloatMath.TWO_PI + 0.5f) % 1f;
+            return (mod < 0f ? +1f : -1f) + 2f*mod;
+        }
     }
 
     /**
@@ -354,11 +386,19 @@ public abstract class FloatExpression extends DeepObject
         {
             return new Evaluator() {
                 public float evaluate () {
-                    float mod = (eval.evaluate() / FloatMath.TWO_PI + 0.5f) % 1f;
-                    return (mod < 0f ? -1f : +1f) - 2f*mod;
+                    return wave(eval.evaluate());
                 }
             };
         }
+
+        /**
+         * Computes the sawtooth wave value of the supplied argument.
+         */
+        public static float wave (float value)
+        {
+            float mod = (value / FloatMath.TWO_PI + 0.5f) % 1f;
+            return (mod < 0f ? -1f : +1f) - 2f*mod;
+        }
     }
 
     /**
@@ -29,6 +29,7 @@ import com.threerings.editor.Editable;
 import com.threerings.editor.EditorTypes;
 import com.threerings.math.Quaternion;
 
+import com.threerings.expr.util.ExpressionCompiler;
 import com.threerings.expr.util.ScopeUtil;
 
 /**
@@ -105,9 +106,9 @@ public abstract class QuaternionExpression extends ObjectExpression<Quaternion>
         @Override
         public Evaluator<Quaternion> createEvaluator (Scope scope)
         {
-            final FloatExpression.Evaluator xeval = x.createEvaluator(scope);
-            final FloatExpression.Evaluator yeval = y.createEvaluator(scope);
-            final FloatExpression.Evaluator zeval = z.createEvaluator(scope);
+            final FloatExpression.Evaluator xeval = ExpressionCompiler.createEvaluator(x, scope);
+            final FloatExpression.Evaluator yeval = ExpressionCompiler.createEvaluator(y, scope);
+            final FloatExpression.Evaluator zeval = ExpressionCompiler.createEvaluator(z, scope);
             return new Evaluator<Quaternion>() {
                 public Quaternion evaluate () {
                     return _result.fromAngles(
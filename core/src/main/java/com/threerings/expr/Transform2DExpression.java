@@ -30,6 +30,7 @@ import com.threerings.editor.EditorTypes;
 import com.threerings.math.Transform2D;
 import com.threerings.math.Vector2f;
 
+import com.threerings.expr.util.ExpressionCompiler;
 import com.threerings.expr.util.ScopeUtil;
 
 /**
@@ -106,8 +107,10 @@ public abstract class Transform2DExpression extends ObjectExpression<Transform2D
         public Evaluator<Transform2D> createEvaluator (Scope scope)
         {
             final Evaluator<Vector2f> teval = translation.createEvaluator(scope);
-            final FloatExpression.Evaluator reval = rotation.createEvaluator(scope);
-            final FloatExpression.Evaluator seval = scale.createEvaluator(scope);
+            final FloatExpression.Evaluator reval =
+                ExpressionCompiler.createEvaluator(rotation, scope);
+            final FloatExpression.Evaluator seval =
+                ExpressionCompiler.createEvaluator(scale, scope);
             return new Evaluator<Transform2D>() {
                 public Transform2D evaluate () {
                     return _result.set(teval.evaluate(), reval.evaluate(), seval.evaluate());
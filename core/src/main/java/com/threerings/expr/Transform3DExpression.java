@@ -32,6 +32,7 @@ import com.threerings.math.Quaternion;
 import com.threerings.math.Transform3D;
 import com.threerings.math.Vector3f;
 
+import com.threerings.expr.util.ExpressionCompiler;
 import com.threerings.expr.util.ScopeUtil;
 
 /**
@@ -110,7 +111,8 @@ public abstract class Transform3DExpression extends ObjectExpression<Transform3D
         {
             final Evaluator<Vector3f> teval = translation.createEvaluator(scope);
             final Evaluator<Quaternion> reval = rotation.createEvaluator(scope);
-            final FloatExpression.Evaluator seval = scale.createEvaluator(scope);
+            final FloatExpression.Evaluator seval =
+                ExpressionCompiler.createEvaluator(scale, scope);
             return new Evaluator<Transform3D>() {
                 public Transform3D evaluate () {
                     return _result.set(teval.evaluate(), reval.evaluate(), seval.evaluate());
@@ -189,7 +191,8 @@ public abstract class Transform3DExpression extends ObjectExpression<Transform3D
         @Override
         public Evaluator<Transform3D> createEvaluator (Scope scope)
         {
-            final FloatExpression.Evaluator feval = frame.createEvaluator(scope);
+            final FloatExpression.Evaluator feval =
+                ExpressionCompiler.createEvaluator(frame, scope);
             final int udivs = divisionsS;
             final float uscale = 1f / divisionsS;
             final float vscale = 1f / divisionsT;
@@ -29,6 +29,7 @@ import com.threerings.editor.Editable;
 import com.threerings.editor.EditorTypes;
 import com.threerings.math.Vector2f;
 
+import com.threerings.expr.util.ExpressionCompiler;
 import com.threerings.expr.util.ScopeUtil;
 
 /**
@@ -116,8 +117,8 @@ public abstract class Vector2fExpression extends ObjectExpression<Vector2f>
         @Override
         public Evaluator<Vector2f> createEvaluator (Scope scope)
         {
-            final FloatExpression.Evaluator xeval = x.createEvaluator(scope);
-            final FloatExpression.Evaluator yeval = y.createEvaluator(scope);
+            final FloatExpression.Evaluator xeval = ExpressionCompiler.createEvaluator(x, scope);
+            final FloatExpression.Evaluator yeval = ExpressionCompiler.createEvaluator(y, scope);
             return new Evaluator<Vector2f>() {
                 public Vector2f evaluate () {
                     return _result.set(xeval.evaluate(), yeval.evaluate());
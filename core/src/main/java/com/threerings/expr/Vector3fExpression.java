@@ -29,6 +29,7 @@ import com.threerings.editor.Editable;
 import com.threerings.editor.EditorTypes;
 import com.threerings.math.Vector3f;
 
+import com.threerings.expr.util.ExpressionCompiler;
 import com.threerings.expr.util.ScopeUtil;
 
 /**
@@ -120,9 +121,9 @@ public abstract class Vector3fExpression extends ObjectExpression<Vector3f>
         @Override
         public Evaluator<Vector3f> createEvaluator (Scope scope)
         {
-            final FloatExpression.Evaluator xeval = x.createEvaluator(scope);
-            final FloatExpression.Evaluator yeval = y.createEvaluator(scope);
-            final FloatExpression.Evaluator zeval = z.createEvaluator(scope);
+            final FloatExpression.Evaluator xeval = ExpressionCompiler.createEvaluator(x, scope);
+            final FloatExpression.Evaluator yeval = ExpressionCompiler.createEvaluator(y, scope);
+            final FloatExpression.Evaluator zeval = ExpressionCompiler.createEvaluator(z, scope);
             return new Evaluator<Vector3f>() {
                 public Vector3f evaluate () {
                     return _result.set(xeval.evaluate(), yeval.evaluate(), zeval.evaluate());
@@ -0,0 +1,506 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.expr.util;
+
+import java.io.IOException;
+
+import java.lang.reflect.Constructor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import com.threerings.math.FloatMath;
+import com.threerings.util.ClassBuilder;
+import com.threerings.util.CodeBuilder;
+import com.threerings.util.NoiseUtil;
+
+import com.threerings.expr.FloatExpression;
+import com.threerings.expr.FloatExpression.Evaluator;
+import com.threerings.expr.MutableFloat;
+import com.threerings.expr.MutableLong;
+import com.threerings.expr.Scope;
+import com.threerings.expr.Variable;
+
+import static com.threerings.ClydeLog.log;
+
+/**
+ * Compiles float expression trees into evaluators that perform the whole computation in a single
+ * generated method.  Constant subtrees are folded, scope references are bound to the resolved
+ * {@link MutableFloat}/{@link Variable} instances, and one class is generated for each distinct
+ * expression shape (constants and references are passed to the constructor, so trees that differ
+ * only in those share a class).  Expression types unknown to the compiler are embedded as
+ * interpreted evaluators, and if generation fails for any reason we fall back to the interpreter.
+ */
+public class ExpressionCompiler
+{
+    /**
+     * Creates an evaluator for the supplied expression, compiling it if possible.
+     */
+    public static Evaluator createEvaluator (FloatExpression expr, Scope scope)
+    {
+        if (!_enabled) {
+            return expr.createEvaluator(scope);
+        }
+        Node node = build(expr, scope);
+        switch (node.op) {
+            case CONSTANT:
+                final float value = node.value;
+                return new Evaluator() {
+                    public float evaluate () {
+                        return value;
+                    }
+                };
+            case EVALUATOR:
+                return (Evaluator)node.slot;
+            default:
+                break;
+        }
+        StringBuilder shape = new StringBuilder();
+        List<Object> slots = Lists.newArrayList();
+        node.describe(shape, slots);
+        Constructor<?> ctor = getConstructor(shape.toString(), node, slots.size());
+        if (ctor != null) {
+            try {
+                return (Evaluator)ctor.newInstance((Object)slots.toArray());
+            } catch (Throwable t) {
+                log.warning("Failed to instantiate compiled expression.", "shape", shape, t);
+            }
+        }
+        return expr.createEvaluator(scope);
+    }
+
+    /**
+     * Enables or disables compilation (it is enabled by default unless the
+     * <code>com.threerings.expr.no_compile</code> system property is set).
+     */
+    public static void setEnabled (boolean enabled)
+    {
+        _enabled = enabled;
+    }
+
+    /**
+     * Returns the number of expression classes generated so far.
+     */
+    public static synchronized int getCompiledCount ()
+    {
+        return _constructors.size();
+    }
+
+    /**
+     * Returns the constructor for the class with the specified shape, generating it if
+     * necessary.
+     *
+     * @return the constructor, or <code>null</code> if the class could not be generated.
+     */
+    protected static synchronized Constructor<?> getConstructor (
+        String shape, Node node, int slots)
+    {
+        Constructor<?> ctor = _constructors.get(shape);
+        if (ctor != null || _failed.contains(shape)) {
+            return ctor;
+        }
+        if (_constructors.size() >= MAX_CLASSES || slots > MAX_SLOTS) {
+            return null;
+        }
+        String name = GENERATED_PACKAGE + "FloatEvaluator" + _constructors.size();
+        try {
+            byte[] bytes = generate(name, node);
+            Class<?> clazz = _loader.define(name.replace('/', '.'), bytes);
+            ctor = clazz.getConstructor(Object[].class);
+        } catch (Throwable t) {
+            log.warning("Failed to compile expression.", "shape", shape, t);
+            _failed.add(shape);
+            return null;
+        }
+        _constructors.put(shape, ctor);
+        return ctor;
+    }
+
+    /**
+     * Builds the intermediate representation of the supplied expression, resolving its references
+     * and folding its constant subtrees.
+     */
+    protected static Node build (FloatExpression expr, Scope scope)
+    {
+        if (expr instanceof FloatExpression.Parsed) {
+            return build(((FloatExpression.Parsed)expr).getParsedExpression(), scope);
+
+        } else if (expr instanceof FloatExpression.Constant) {
+            return new Node(((FloatExpression.Constant)expr).value);
+
+        } else if (expr instanceof FloatExpression.Reference) {
+            // resolve in the same manner as the interpreter: mutable reference, then variable
+            FloatExpression.Reference ref = (FloatExpression.Reference)expr;
+            MutableFloat reference = ScopeUtil.resolve(scope, ref.name, (MutableFloat)null);
+            if (reference != null) {
+                return new Node(Op.MUTABLE, reference);
+            }
+            Variable defvar = Variable.newInstance(ref.defvalue);
+            Variable variable = ScopeUtil.resolve(scope, ref.name, defvar);
+            return (variable == defvar) ? new Node(ref.defvalue) : new Node(Op.VARIABLE, variable);
+
+        } else if (expr instanceof FloatExpression.Clock) {
+            String name = ((FloatExpression.Clock)expr).scope.trim();
+            name = (name.length() > 0) ? (name + ":" + Scope.EPOCH) : Scope.EPOCH;
+            Node node = new Node(Op.CLOCK, ScopeUtil.resolveTimestamp(scope, Scope.NOW));
+            node.slot2 = ScopeUtil.resolveTimestamp(scope, name);
+            return node;
+
+        } else if (expr instanceof FloatExpression.UnaryOperation) {
+            Op op = UNARY_OPS.get(expr.getClass());
+            if (op != null) {
+                return new Node(op, build(((FloatExpression.UnaryOperation)expr).operand, scope),
+                    null).maybeFold();
+            }
+        } else if (expr instanceof FloatExpression.BinaryOperation) {
+            Op op = BINARY_OPS.get(expr.getClass());
+            if (op != null) {
+                FloatExpression.BinaryOperation bexpr = (FloatExpression.BinaryOperation)expr;
+                return new Node(op, build(bexpr.firstOperand, scope),
+                    build(bexpr.secondOperand, scope)).maybeFold();
+            }
+        }
+        // unknown type: use the interpreter for this subtree
+        return new Node(Op.EVALUATOR, expr.createEvaluator(scope));
+    }
+
+    /**
+     * Generates the bytecode for an evaluator class.
+     */
+    protected static byte[] generate (String name, Node node)
+        throws IOException
+    {
+        ClassBuilder cb = new ClassBuilder(name, EVALUATOR);
+
+        // generate the evaluation method first so that we know what fields we need
+        CodeBuilder eval = new CodeBuilder();
+        List<String> fields = Lists.newArrayList();
+        node.emit(cb, eval, fields);
+        eval.op(FRETURN, -1);
+
+        // the constructor assigns the fields from the slot array
+        CodeBuilder init = new CodeBuilder();
+        init.op(ALOAD_0, +1);
+        init.op2(INVOKESPECIAL, cb.methodRef(EVALUATOR, "<init>", "()V"), -1);
+        for (int ii = 0, nn = fields.size(); ii < nn; ii++) {
+            String desc = fields.get(ii);
+            cb.addField("s" + ii, desc);
+            init.op(ALOAD_0, +1);
+            init.op(ALOAD_1, +1);
+            init.pushInt(ii);
+            init.op(AALOAD, -1);
+            if (desc.equals("F")) {
+                init.op2(CHECKCAST, cb.classRef("java/lang/Float"), 0);
+                init.op2(INVOKEVIRTUAL, cb.methodRef("java/lang/Float", "floatValue", "()F"), 0);
+            } else {
+                init.op2(CHECKCAST, cb.classRef(desc.substring(1, desc.length() - 1)), 0);
+            }
+            init.op2(PUTFIELD, cb.fieldRef(name, "s" + ii, desc), -2);
+        }
+        init.op(RETURN, 0);
+
+        cb.addMethod("<init>", "([Ljava/lang/Object;)V", init, 2);
+        cb.addMethod("evaluate", "()F", eval, 1);
+        return cb.toByteArray();
+    }
+
+    /**
+     * Adds a field of the specified type to the class and pushes its value.
+     */
+    protected static void getSlot (
+        ClassBuilder cb, CodeBuilder code, List<String> fields, String desc)
+    {
+        int idx = fields.size();
+        fields.add(desc);
+        code.op(ALOAD_0, +1);
+        code.op2(GETFIELD, cb.fieldRef(cb.name, "s" + idx, desc), 0);
+    }
+
+    /**
+     * The operations understood by the compiler.
+     */
+    protected enum Op
+    {
+        CONSTANT, MUTABLE, VARIABLE, CLOCK, EVALUATOR,
+        NEGATE, EXP, SIN, COS, TAN, SQUARE, TRIANGLE, RAMP, SAW, NOISE1,
+        ADD, SUBTRACT, MULTIPLY, DIVIDE, REMAINDER, POW, NOISE2;
+    }
+
+    /**
+     * A node in the intermediate representation.
+     */
+    protected static class Node
+    {
+        /** The operation. */
+        public Op op;
+
+        /** The value, for constants. */
+        public float value;
+
+        /** The bound object, for references and embedded evaluators. */
+        public Object slot;
+
+        /** The second bound object (the epoch, for clocks). */
+        public Object slot2;
+
+        /** The operands. */
+        public Node first, second;
+
+        public Node (float value)
+        {
+            this.op = Op.CONSTANT;
+            this.value = value;
+        }
+
+        public Node (Op op, Object slot)
+        {
+            this.op = op;
+            this.slot = slot;
+        }
+
+        public Node (Op op, Node first, Node second)
+        {
+            this.op = op;
+            this.first = first;
+            this.second = second;
+        }
+
+        /**
+         * Folds this node into a constant if its operands are constant.
+         */
+        public Node maybeFold ()
+        {
+            if (first.op != Op.CONSTANT || (second != null && second.op != Op.CONSTANT)) {
+                return this;
+            }
+            float a = first.value, b = (second == null) ? 0f : second.value;
+            switch (op) {
+                case NEGATE: return new Node(-a);
+                case EXP: return new Node(FloatMath.exp(a));
+                case SIN: return new Node(FloatMath.sin(a));
+                case COS: return new Node(FloatMath.cos(a));
+                case TAN: return new Node(FloatMath.tan(a));
+                case SQUARE: return new Node(FloatExpression.Square.wave(a));
+                case TRIANGLE: return new Node(FloatExpression.Triangle.wave(a));
+                case RAMP: return new Node(FloatExpression.Ramp.wave(a));
+                case SAW: return new Node(FloatExpression.Saw.wave(a));
+                case NOISE1: return new Node(NoiseUtil.getNoise(a));
+                case ADD: return new Node(a + b);
+                case SUBTRACT: return new Node(a - b);
+                case MULTIPLY: return new Node(a * b);
+                case DIVIDE: return new Node(a / b);
+                case REMAINDER: return new Node(a % b);
+                case POW: return new Node(FloatMath.pow(a, b));
+                case NOISE2: return new Node(NoiseUtil.getNoise(a, b));
+                default: return this;
+            }
+        }
+
+        /**
+         * Appends the shape of this node to the supplied builder and its bound values to the
+         * slot list (in the order in which {@link #emit} will assign them to fields).
+         */
+        public void describe (StringBuilder shape, List<Object> slots)
+        {
+            shape.append(op.ordinal());
+            switch (op) {
+                case CONSTANT:
+                    slots.add(value);
+                    return;
+                case MUTABLE: case VARIABLE: case EVALUATOR:
+                    slots.add(slot);
+                    return;
+                case CLOCK:
+                    slots.add(slot);
+                    slots.add(slot2);
+                    return;
+                default:
+                    break;
+            }
+            shape.append('(');
+            first.describe(shape, slots);
+            if (second != null) {
+                shape.append(',');
+                second.describe(shape, slots);
+            }
+            shape.append(')');
+        }
+
+        /**
+         * Emits the code to evaluate this node, leaving the result on the stack.
+         *
+         * @param fields the list of field descriptors, to which we append any fields we use.
+         */
+        public void emit (ClassBuilder cb, CodeBuilder code, List<String> fields)
+        {
+            switch (op) {
+                case CONSTANT:
+                    getSlot(cb, code, fields, "F");
+                    return;
+                case MUTABLE:
+                    getSlot(cb, code, fields, MUTABLE_FLOAT);
+                    code.op2(GETFIELD, cb.fieldRef(MUTABLE_FLOAT_CLASS, "value", "F"), 0);
+                    return;
+                case VARIABLE:
+                    getSlot(cb, code, fields, VARIABLE_DESC);
+                    code.op2(INVOKEVIRTUAL, cb.methodRef(VARIABLE_CLASS, "getFloat", "()F"), 0);
+                    return;
+                case EVALUATOR:
+                    getSlot(cb, code, fields, "L" + EVALUATOR + ";");
+                    code.op2(INVOKEVIRTUAL, cb.methodRef(EVALUATOR, "evaluate", "()F"), 0);
+                    return;
+                case CLOCK:
+                    // (now.value - epoch.value) / 1000f
+                    getSlot(cb, code, fields, MUTABLE_LONG);
+                    code.op2(GETFIELD, cb.fieldRef(MUTABLE_LONG_CLASS, "value", "J"), +1);
+                    getSlot(cb, code, fields, MUTABLE_LONG);
+                    code.op2(GETFIELD, cb.fieldRef(MUTABLE_LONG_CLASS, "value", "J"), +1);
+                    code.op(LSUB, -2);
+                    code.op(L2F, -1);
+                    code.ldc(cb.floatConst(1000f));
+                    code.op(FDIV, -1);
+                    return;
+                default:
+                    break;
+            }
+            first.emit(cb, code, fields);
+            if (second != null) {
+                second.emit(cb, code, fields);
+            }
+            switch (op) {
+                case NEGATE: code.op(FNEG, 0); break;
+                case ADD: code.op(FADD, -1); break;
+                case SUBTRACT: code.op(FSUB, -1); break;
+                case MULTIPLY: code.op(FMUL, -1); break;
+                case DIVIDE: code.op(FDIV, -1); break;
+                case REMAINDER: code.op(FREM, -1); break;
+                case EXP: code.invokeStatic(cb, FLOAT_MATH, "exp", "(F)F"); break;
+                case SIN: code.invokeStatic(cb, FLOAT_MATH, "sin", "(F)F"); break;
+                case COS: code.invokeStatic(cb, FLOAT_MATH, "cos", "(F)F"); break;
+                case TAN: code.invokeStatic(cb, FLOAT_MATH, "tan", "(F)F"); break;
+                case POW: code.invokeStatic(cb, FLOAT_MATH, "pow", "(FF)F"); break;
+                case SQUARE: code.invokeStatic(cb, EXPR + "$Square", "wave", "(F)F"); break;
+                case TRIANGLE: code.invokeStatic(cb, EXPR + "$Triangle", "wave", "(F)F"); break;
+                case RAMP: code.invokeStatic(cb, EXPR + "$Ramp", "wave", "(F)F"); break;
+                case SAW: code.invokeStatic(cb, EXPR + "$Saw", "wave", "(F)F"); break;
+                case NOISE1: code.invokeStatic(cb, NOISE_UTIL, "getNoise", "(F)F"); break;
+                case NOISE2: code.invokeStatic(cb, NOISE_UTIL, "getNoise", "(FF)F"); break;
+                default: throw new IllegalStateException("Unknown op: " + op);
+            }
+        }
+    }
+
+    /**
+     * Defines the generated classes.
+     */
+    protected static class GeneratedClassLoader extends ClassLoader
+    {
+        public GeneratedClassLoader ()
+        {
+            super(ExpressionCompiler.class.getClassLoader());
+        }
+
+        /**
+         * Defines a class from the supplied bytecode.
+         */
+        public Class<?> define (String name, byte[] bytes)
+        {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /** Whether or not compilation is enabled. */
+    protected static volatile boolean _enabled =
+        !Boolean.getBoolean("com.threerings.expr.no_compile");
+
+    /** The constructors of the generated classes, mapped by shape. */
+    protected static Map<String, Constructor<?>> _constructors = Maps.newHashMap();
+
+    /** The shapes that we failed to compile. */
+    protected static Set<String> _failed = Sets.newHashSet();
+
+    /** The loader for the generated classes. */
+    protected static GeneratedClassLoader _loader = new GeneratedClassLoader();
+
+    /** Maps unary operation classes to ops. */
+    protected static final Map<Class<?>, Op> UNARY_OPS = Maps.newHashMap();
+    static {
+        UNARY_OPS.put(FloatExpression.Negate.class, Op.NEGATE);
+        UNARY_OPS.put(FloatExpression.Exp.class, Op.EXP);
+        UNARY_OPS.put(FloatExpression.Sin.class, Op.SIN);
+        UNARY_OPS.put(FloatExpression.Cos.class, Op.COS);
+        UNARY_OPS.put(FloatExpression.Tan.class, Op.TAN);
+        UNARY_OPS.put(FloatExpression.Square.class, Op.SQUARE);
+        UNARY_OPS.put(FloatExpression.Triangle.class, Op.TRIANGLE);
+        UNARY_OPS.put(FloatExpression.Ramp.class, Op.RAMP);
+        UNARY_OPS.put(FloatExpression.Saw.class, Op.SAW);
+        UNARY_OPS.put(FloatExpression.Noise1.class, Op.NOISE1);
+    }
+
+    /** Maps binary operation classes to ops. */
+    protected static final Map<Class<?>, Op> BINARY_OPS = Maps.newHashMap();
+    static {
+        BINARY_OPS.put(FloatExpression.Add.class, Op.ADD);
+        BINARY_OPS.put(FloatExpression.Subtract.class, Op.SUBTRACT);
+        BINARY_OPS.put(FloatExpression.Multiply.class, Op.MULTIPLY);
+        BINARY_OPS.put(FloatExpression.Divide.class, Op.DIVIDE);
+        BINARY_OPS.put(FloatExpression.Remainder.class, Op.REMAINDER);
+        BINARY_OPS.put(FloatExpression.Pow.class, Op.POW);
+        BINARY_OPS.put(FloatExpression.Noise2.class, Op.NOISE2);
+    }
+
+    /** The maximum number of classes we will generate. */
+    protected static final int MAX_CLASSES = 4096;
+
+    /** The maximum number of slots (fields) in a generated class. */
+    protected static final int MAX_SLOTS = 1024;
+
+    /** The package in which we place the generated classes. */
+    protected static final String GENERATED_PACKAGE = "com/threerings/expr/generated/";
+
+    /** Internal class names and descriptors. */
+    protected static final String EXPR = "com/threerings/expr/FloatExpression";
+    protected static final String EVALUATOR = EXPR + "$Evaluator";
+    protected static final String MUTABLE_FLOAT_CLASS = "com/threerings/expr/MutableFloat";
+    protected static final String MUTABLE_FLOAT = "L" + MUTABLE_FLOAT_CLASS + ";";
+    protected static final String MUTABLE_LONG_CLASS = "com/threerings/expr/MutableLong";
+    protected static final String MUTABLE_LONG = "L" + MUTABLE_LONG_CLASS + ";";
+    protected static final String VARIABLE_CLASS = "com/threerings/expr/Variable";
+    protected static final String VARIABLE_DESC = "L" + VARIABLE_CLASS + ";";
+    protected static final String FLOAT_MATH = "com/threerings/math/FloatMath";
+    protected static final String NOISE_UTIL = "com/threerings/util/NoiseUtil";
+
+    /** Opcodes. */
+    protected static final int ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, AALOAD = 0x32, FADD = 0x62,
+        LSUB = 0x65, FSUB = 0x66, FMUL = 0x6a, FDIV = 0x6e, FREM = 0x72, FNEG = 0x76, L2F = 0x89,
+        FRETURN = 0xae, RETURN = 0xb1, GETFIELD = 0xb4, PUTFIELD = 0xb5, INVOKEVIRTUAL = 0xb6,
+        INVOKESPECIAL = 0xb7, CHECKCAST = 0xc0;
+}
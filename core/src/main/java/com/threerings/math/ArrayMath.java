@@ -0,0 +1,339 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.math;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Bulk operations on points, vectors, normals, and boxes packed into float arrays.  Transforms
+ * are supplied as packed affine matrices (see {@link #getAffine(Matrix4f, float[], int)}), and
+ * element positions are given by an offset and a stride (both in floats), so that interleaved
+ * vertex data may be processed in place.  None of the methods allocate, and their inner loops
+ * are kept simple so that the compiler may unroll and vectorize them.
+ */
+public class ArrayMath
+{
+    /** The number of floats in a packed affine matrix (the first three rows of each of the four
+     * columns, in column-major order). */
+    public static final int AFFINE_SIZE = 12;
+
+    /** The number of floats in a packed box (the minimum extent followed by the maximum). */
+    public static final int BOX_SIZE = 6;
+
+    /**
+     * Packs the affine portion of the supplied matrix into the given array.
+     *
+     * @return a reference to the result array, for chaining.
+     */
+    public static float[] getAffine (Matrix4f matrix, float[] result, int offset)
+    {
+        result[offset] = matrix.m00;
+        result[offset + 1] = matrix.m01;
+        result[offset + 2] = matrix.m02;
+        result[offset + 3] = matrix.m10;
+        result[offset + 4] = matrix.m11;
+        result[offset + 5] = matrix.m12;
+        result[offset + 6] = matrix.m20;
+        result[offset + 7] = matrix.m21;
+        result[offset + 8] = matrix.m22;
+        result[offset + 9] = matrix.m30;
+        result[offset + 10] = matrix.m31;
+        result[offset + 11] = matrix.m32;
+        return result;
+    }
+
+    /**
+     * Packs the affine portions of the supplied matrices into the given array, one after
+     * another.
+     *
+     * @return a reference to the result array, for chaining.
+     */
+    public static float[] getAffine (Matrix4f[] matrices, float[] result)
+    {
+        for (int ii = 0, offset = 0; ii < matrices.length; ii++, offset += AFFINE_SIZE) {
+            getAffine(matrices[ii], result, offset);
+        }
+        return result;
+    }
+
+    /**
+     * Transforms a sequence of points.  The source and destination may be the same array.
+     *
+     * @param m the array containing the packed affine matrix.
+     * @param moff the offset of the matrix in its array.
+     */
+    public static void transformPoints (
+        float[] m, int moff, float[] src, int soff, int sstride,
+        float[] dest, int doff, int dstride, int count)
+    {
+        float m00 = m[moff], m01 = m[moff + 1], m02 = m[moff + 2];
+        float m10 = m[moff + 3], m11 = m[moff + 4], m12 = m[moff + 5];
+        float m20 = m[moff + 6], m21 = m[moff + 7], m22 = m[moff + 8];
+        float m30 = m[moff + 9], m31 = m[moff + 10], m32 = m[moff + 11];
+        for (int ii = 0; ii < count; ii++, soff += sstride, doff += dstride) {
+            float x = src[soff], y = src[soff + 1], z = src[soff + 2];
+            dest[doff] = m00*x + m10*y + m20*z + m30;
+            dest[doff + 1] = m01*x + m11*y + m21*z + m31;
+            dest[doff + 2] = m02*x + m12*y + m22*z + m32;
+        }
+    }
+
+    /**
+     * Transforms a sequence of vectors (ignoring the translation).  The source and destination
+     * may be the same array.
+     *
+     * @param m the array containing the packed affine matrix.
+     * @param moff the offset of the matrix in its array.
+     */
+    public static void transformVectors (
+        float[] m, int moff, float[] src, int soff, int sstride,
+        float[] dest, int doff, int dstride, int count)
+    {
+        float m00 = m[moff], m01 = m[moff + 1], m02 = m[moff + 2];
+        float m10 = m[moff + 3], m11 = m[moff + 4], m12 = m[moff + 5];
+        float m20 = m[moff + 6], m21 = m[moff + 7], m22 = m[moff + 8];
+        for (int ii = 0; ii < count; ii++, soff += sstride, doff += dstride) {
+            float x = src[soff], y = src[soff + 1], z = src[soff + 2];
+            dest[doff] = m00*x + m10*y + m20*z;
+            dest[doff + 1] = m01*x + m11*y + m21*z;
+            dest[doff + 2] = m02*x + m12*y + m22*z;
+        }
+    }
+
+    /**
+     * Transforms a sequence of normals (ignoring the translation) and normalizes the results.
+     * For transforms with non-uniform scale, the matrix should be the inverse transpose of the
+     * one applied to the points.  The source and destination may be the same array.
+     *
+     * @param m the array containing the packed affine matrix.
+     * @param moff the offset of the matrix in its array.
+     */
+    public static void transformNormals (
+        float[] m, int moff, float[] src, int soff, int sstride,
+        float[] dest, int doff, int dstride, int count)
+    {
+        float m00 = m[moff], m01 = m[moff + 1], m02 = m[moff + 2];
+        float m10 = m[moff + 3], m11 = m[moff + 4], m12 = m[moff + 5];
+        float m20 = m[moff + 6], m21 = m[moff + 7], m22 = m[moff + 8];
+        for (int ii = 0; ii < count; ii++, soff += sstride, doff += dstride) {
+            float x = src[soff], y = src[soff + 1], z = src[soff + 2];
+            float nx = m00*x + m10*y + m20*z;
+            float ny = m01*x + m11*y + m21*z;
+            float nz = m02*x + m12*y + m22*z;
+            float lsq = nx*nx + ny*ny + nz*nz;
+            float scale = (lsq > 0f) ? 1f / FloatMath.sqrt(lsq) : 0f;
+            dest[doff] = nx * scale;
+            dest[doff + 1] = ny * scale;
+            dest[doff + 2] = nz * scale;
+        }
+    }
+
+    /**
+     * Transforms a sequence of points in place in the supplied buffer (using absolute indices,
+     * so the buffer's position is unaffected).
+     *
+     * @param m the array containing the packed affine matrix.
+     * @param moff the offset of the matrix in its array.
+     */
+    public static void transformPoints (
+        float[] m, int moff, FloatBuffer buf, int offset, int stride, int count)
+    {
+        float m00 = m[moff], m01 = m[moff + 1], m02 = m[moff + 2];
+        float m10 = m[moff + 3], m11 = m[moff + 4], m12 = m[moff + 5];
+        float m20 = m[moff + 6], m21 = m[moff + 7], m22 = m[moff + 8];
+        float m30 = m[moff + 9], m31 = m[moff + 10], m32 = m[moff + 11];
+        for (int ii = 0; ii < count; ii++, offset += stride) {
+            float x = buf.get(offset), y = buf.get(offset + 1), z = buf.get(offset + 2);
+            buf.put(offset, m00*x + m10*y + m20*z + m30);
+            buf.put(offset + 1, m01*x + m11*y + m21*z + m31);
+            buf.put(offset + 2, m02*x + m12*y + m22*z + m32);
+        }
+    }
+
+    /**
+     * Transforms a sequence of vectors (ignoring the translation) in place in the supplied
+     * buffer (using absolute indices, so the buffer's position is unaffected).
+     *
+     * @param m the array containing the packed affine matrix.
+     * @param moff the offset of the matrix in its array.
+     */
+    public static void transformVectors (
+        float[] m, int moff, FloatBuffer buf, int offset, int stride, int count)
+    {
+        float m00 = m[moff], m01 = m[moff + 1], m02 = m[moff + 2];
+        float m10 = m[moff + 3], m11 = m[moff + 4], m12 = m[moff + 5];
+        float m20 = m[moff + 6], m21 = m[moff + 7], m22 = m[moff + 8];
+        for (int ii = 0; ii < count; ii++, offset += stride) {
+            float x = buf.get(offset), y = buf.get(offset + 1), z = buf.get(offset + 2);
+            buf.put(offset, m00*x + m10*y + m20*z);
+            buf.put(offset + 1, m01*x + m11*y + m21*z);
+            buf.put(offset + 2, m02*x + m12*y + m22*z);
+        }
+    }
+
+    /**
+     * Computes the weighted blends of packed affine matrices used to skin a sequence of
+     * vertices.
+     *
+     * @param matrices the packed matrices to blend.
+     * @param indices the matrix indices for each vertex (<code>influences</code> per vertex).
+     * @param weights the matrix weights for each vertex (<code>influences</code> per vertex).
+     * @param first the index of the first vertex to blend.
+     * @param count the number of vertices to blend.
+     * @param result the array to hold the blended matrices, one after another.
+     */
+    public static void blendAffine (
+        float[] matrices, int[] indices, float[] weights, int influences,
+        int first, int count, float[] result)
+    {
+        for (int ii = 0, widx = first * influences, ridx = 0; ii < count;
+                ii++, ridx += AFFINE_SIZE) {
+            // the first influence initializes the blend; the rest accumulate
+            int midx = indices[widx] * AFFINE_SIZE;
+            float weight = weights[widx++];
+            for (int kk = 0; kk < AFFINE_SIZE; kk++) {
+                result[ridx + kk] = matrices[midx + kk] * weight;
+            }
+            for (int jj = 1; jj < influences; jj++) {
+                midx = indices[widx] * AFFINE_SIZE;
+                weight = weights[widx++];
+                for (int kk = 0; kk < AFFINE_SIZE; kk++) {
+                    result[ridx + kk] += matrices[midx + kk] * weight;
+                }
+            }
+        }
+    }
+
+    /**
+     * Transforms a sequence of points, each by its own packed affine matrix (as computed by
+     * {@link #blendAffine}).
+     *
+     * @param matrices the packed matrices, one per point, starting at the beginning of the array.
+     */
+    public static void transformPointsEach (
+        float[] matrices, float[] src, int soff, int sstride,
+        float[] dest, int doff, int dstride, int count)
+    {
+        for (int ii = 0, m = 0; ii < count;
+                ii++, m += AFFINE_SIZE, soff += sstride, doff += dstride) {
+            float x = src[soff], y = src[soff + 1], z = src[soff + 2];
+            dest[doff] = matrices[m]*x + matrices[m + 3]*y + matrices[m + 6]*z + matrices[m + 9];
+            dest[doff + 1] =
+                matrices[m + 1]*x + matrices[m + 4]*y + matrices[m + 7]*z + matrices[m + 10];
+            dest[doff + 2] =
+                matrices[m + 2]*x + matrices[m + 5]*y + matrices[m + 8]*z + matrices[m + 11];
+        }
+    }
+
+    /**
+     * Transforms a sequence of vectors (ignoring the translations), each by its own packed
+     * affine matrix (as computed by {@link #blendAffine}).
+     *
+     * @param matrices the packed matrices, one per vector, starting at the beginning of the
+     * array.
+     */
+    public static void transformVectorsEach (
+        float[] matrices, float[] src, int soff, int sstride,
+        float[] dest, int doff, int dstride, int count)
+    {
+        for (int ii = 0, m = 0; ii < count;
+                ii++, m += AFFINE_SIZE, soff += sstride, doff += dstride) {
+            float x = src[soff], y = src[soff + 1], z = src[soff + 2];
+            dest[doff] = matrices[m]*x + matrices[m + 3]*y + matrices[m + 6]*z;
+            dest[doff + 1] = matrices[m + 1]*x + matrices[m + 4]*y + matrices[m + 7]*z;
+            dest[doff + 2] = matrices[m + 2]*x + matrices[m + 5]*y + matrices[m + 8]*z;
+        }
+    }
+
+    /**
+     * Skins a sequence of points, blending each point as transformed by each of its weighted
+     * matrices.  This is cheaper than blending the matrices when only the points are skinned.
+     *
+     * @param matrices the packed matrices to blend.
+     * @param indices the matrix indices for each point (<code>influences</code> per point).
+     * @param weights the matrix weights for each point (<code>influences</code> per point).
+     */
+    public static void skinPoints (
+        float[] matrices, int[] indices, float[] weights, int influences,
+        float[] src, int soff, int sstride, float[] dest, int doff, int dstride, int count)
+    {
+        for (int ii = 0, widx = 0; ii < count; ii++, soff += sstride, doff += dstride) {
+            float x = src[soff], y = src[soff + 1], z = src[soff + 2];
+            float dx = 0f, dy = 0f, dz = 0f;
+            for (int jj = 0; jj < influences; jj++) {
+                int m = indices[widx] * AFFINE_SIZE;
+                float weight = weights[widx++];
+                dx += (matrices[m]*x + matrices[m + 3]*y +
+                    matrices[m + 6]*z + matrices[m + 9]) * weight;
+                dy += (matrices[m + 1]*x + matrices[m + 4]*y +
+                    matrices[m + 7]*z + matrices[m + 10]) * weight;
+                dz += (matrices[m + 2]*x + matrices[m + 5]*y +
+                    matrices[m + 8]*z + matrices[m + 11]) * weight;
+            }
+            dest[doff] = dx;
+            dest[doff + 1] = dy;
+            dest[doff + 2] = dz;
+        }
+    }
+
+    /**
+     * Transforms a sequence of packed boxes, computing for each the axis-aligned box that
+     * contains the transformed original.  The source and destination may be the same array.
+     *
+     * @param m the array containing the packed affine matrix.
+     * @param moff the offset of the matrix in its array.
+     */
+    public static void transformBoxes (
+        float[] m, int moff, float[] src, int soff, float[] dest, int doff, int count)
+    {
+        float m00 = m[moff], m01 = m[moff + 1], m02 = m[moff + 2];
+        float m10 = m[moff + 3], m11 = m[moff + 4], m12 = m[moff + 5];
+        float m20 = m[moff + 6], m21 = m[moff + 7], m22 = m[moff + 8];
+        float m30 = m[moff + 9], m31 = m[moff + 10], m32 = m[moff + 11];
+        float a00 = Math.abs(m00), a01 = Math.abs(m01), a02 = Math.abs(m02);
+        float a10 = Math.abs(m10), a11 = Math.abs(m11), a12 = Math.abs(m12);
+        float a20 = Math.abs(m20), a21 = Math.abs(m21), a22 = Math.abs(m22);
+        for (int ii = 0; ii < count; ii++, soff += BOX_SIZE, doff += BOX_SIZE) {
+            // transform the center, and find the extent of the transformed half-size
+            float minx = src[soff], miny = src[soff + 1], minz = src[soff + 2];
+            float maxx = src[soff + 3], maxy = src[soff + 4], maxz = src[soff + 5];
+            float cx = (minx + maxx) * 0.5f, cy = (miny + maxy) * 0.5f, cz = (minz + maxz) * 0.5f;
+            float hx = (maxx - minx) * 0.5f, hy = (maxy - miny) * 0.5f, hz = (maxz - minz) * 0.5f;
+            float tx = m00*cx + m10*cy + m20*cz + m30;
+            float ty = m01*cx + m11*cy + m21*cz + m31;
+            float tz = m02*cx + m12*cy + m22*cz + m32;
+            float ex = a00*hx + a10*hy + a20*hz;
+            float ey = a01*hx + a11*hy + a21*hz;
+            float ez = a02*hx + a12*hy + a22*hz;
+            dest[doff] = tx - ex;
+            dest[doff + 1] = ty - ey;
+            dest[doff + 2] = tz - ez;
+            dest[doff + 3] = tx + ex;
+            dest[doff + 4] = ty + ey;
+            dest[doff + 5] = tz + ez;
+        }
+    }
+}
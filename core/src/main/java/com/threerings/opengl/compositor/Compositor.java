@@ -39,6 +39,7 @@ import com.samskivert.util.QuickSort;
 
 import com.threerings.opengl.camera.Camera;
 import com.threerings.opengl.compositor.config.RenderEffectConfig;
+import com.threerings.opengl.geometry.SkinningScheduler;
 import com.threerings.opengl.renderer.Color4f;
 import com.threerings.opengl.renderer.Renderer;
 import com.threerings.opengl.renderer.state.ColorMaskState;
@@ -373,7 +374,8 @@ public class Compositor
     }
 
     /**
-     * Enqueues and clears the current list of enqueueables.
+     * Enqueues and clears the current list of enqueueables.  If there's a skinning scheduler,
+     * this also waits for the geometry skinned during enqueueing and uploads it.
      */
     public void enqueueEnqueueables ()
     {
@@ -381,6 +383,30 @@ public class Compositor
             _enqueueables.get(ii).enqueue();
         }
         _enqueueables.clear();
+        if (_skinningScheduler != null) {
+            _skinningScheduler.finish();
+        }
+    }
+
+    /**
+     * Sets the scheduler to use to skin geometry on worker threads, or null to skin it on the
+     * render thread (the default).  The caller remains responsible for shutting the scheduler
+     * down.
+     */
+    public void setSkinningScheduler (SkinningScheduler scheduler)
+    {
+        if (_skinningScheduler != null) {
+            _skinningScheduler.finish();
+        }
+        _skinningScheduler = scheduler;
+    }
+
+    /**
+     * Returns a reference to the skinning scheduler, if any.
+     */
+    public SkinningScheduler getSkinningScheduler ()
+    {
+        return _skinningScheduler;
     }
 
     /**
@@ -526,6 +552,9 @@ public class Compositor
     /** The source of the current subrender operation. */
     protected Object _subrenderSource;
 
+    /** The scheduler used to skin geometry on worker threads, if any. */
+    protected SkinningScheduler _skinningScheduler;
+
     /** Cached render effects. */
     protected Map<RenderEffectConfig, SoftReference<RenderEffect>> _cachedEffects =
         Maps.newIdentityHashMap();
@@ -342,6 +342,9 @@ public class RenderQueue
                 int[] okey = _key;
                 _key = batch.key;
                 batch.key = okey;
+                okey = _stateKey;
+                _stateKey = batch.stateKey;
+                batch.stateKey = okey;
 
                 // swap the group state
                 _gstate.swap(batch.group);
@@ -350,8 +353,8 @@ public class RenderQueue
             /** The saved depth. */
             protected float _depth;
 
-            /** The saved key. */
-            protected int[] _key;
+            /** The saved keys. */
+            protected int[] _key, _stateKey;
 
             /** The saved group state. */
             protected Group.State _gstate = new Group.State();
@@ -377,7 +380,7 @@ public class RenderQueue
         {
             int total = 0;
             depth = 0f;
-            key = null;
+            key = stateKey = null;
 
             group.sortQueues();
             ComparableArrayList<RenderQueue> queues = group._queues;
@@ -389,6 +392,7 @@ public class RenderQueue
                         Batch batch = list.get(kk);
                         depth += batch.depth;
                         key = (batch.key == null) ? key : batch.key;
+                        stateKey = (batch.stateKey == null) ? stateKey : batch.stateKey;
                         total++;
                     }
                 }
@@ -62,11 +62,16 @@ public class RenderQueueConfig extends ManagedConfig
             }
         },
 
-        /** Sorts batches by state, then front-to-back. */
+        /** Sorts batches by state, then roughly front-to-back, then by shared render states,
+         * then front-to-back. */
         BY_STATE(new Comparator<Batch>() {
             public int compare (Batch b1, Batch b2) {
                 int comp = Batch.compareKeys(b1.key, b2.key);
-                return (comp == 0) ? Float.compare(b2.depth, b1.depth) : comp;
+                if (comp == 0 && (comp = Batch.compareDepthBuckets(b1.depth, b2.depth)) == 0 &&
+                        (comp = Batch.compareKeys(b1.stateKey, b2.stateKey)) == 0) {
+                    comp = Float.compare(b2.depth, b1.depth);
+                }
+                return comp;
             }
         }),
 
@@ -78,22 +78,6 @@ public abstract class BaseParticleSystem extends Model.Implementation
         {
             _config = config;
 
-            // recreate the particles and adjust the counts
-            Particle[] oparts = _particles;
-            _particles = new Particle[config.particleCount];
-            for (int ii = 0; ii < _particles.length; ii++) {
-                _particles[ii] = (oparts == null || oparts.length <= ii) ?
-                    new Particle() : oparts[ii];
-            }
-            if (oparts == null) {
-                _living.value = 0;
-                _preliving = _particles.length;
-            } else {
-                _living.value = Math.min(_living.value, _particles.length);
-                _preliving = Math.min(_living.value + _preliving, _particles.length) -
-                    _living.value;
-            }
-
             // create the counter, placer, and shooter
             _counter = config.counter.createCounter();
             _placer = config.placer.createPlacer(this);
@@ -104,6 +88,33 @@ public abstract class BaseParticleSystem extends Model.Implementation
             for (int ii = 0; ii < _influences.length; ii++) {
                 _influences[ii] = config.influences[ii].createInfluence(this);
             }
+
+            // recreate the particles (as objects or packed arrays) and adjust the counts
+            Particle[] oparts = _particles;
+            ParticleData odata = _particleData;
+            int capacity = config.particleCount;
+            boolean recycled;
+            if (shouldPackParticles()) {
+                _particles = null;
+                _particleData = (odata != null && odata.getCapacity() == capacity) ?
+                    odata : new ParticleData(capacity, odata);
+                recycled = (odata != null);
+            } else {
+                _particleData = null;
+                _particles = new Particle[capacity];
+                for (int ii = 0; ii < _particles.length; ii++) {
+                    _particles[ii] = (oparts == null || oparts.length <= ii) ?
+                        new Particle() : oparts[ii];
+                }
+                recycled = (oparts != null);
+            }
+            if (!recycled) {
+                _living.value = 0;
+                _preliving = capacity;
+            } else {
+                _living.value = Math.min(_living.value, capacity);
+                _preliving = Math.min(_living.value + _preliving, capacity) - _living.value;
+            }
         }
 
         /**
@@ -150,7 +161,7 @@ public abstract class BaseParticleSystem extends Model.Implementation
             // reset the counter and counts
             _counter.reset();
             _living.value = 0;
-            _preliving = _particles.length;
+            _preliving = getCapacity();
         }
 
         /**
@@ -183,36 +194,40 @@ public abstract class BaseParticleSystem extends Model.Implementation
             if (!_config.moveParticlesWithEmitter) {
                 scale = _worldTransform.approximateUniformScale();
             }
-            for (int ii = 0; ii < _living.value; ii++) {
-                Particle particle = _particles[ii];
-                if (particle.tick(elapsed)) {
-                    // apply the influences
-                    for (Influence influence : _influences) {
-                        influence.apply(particle);
-                    }
-                    // modulate by the inherited color, if any
-                    if (_colorState != null) {
-                        particle.getColor().multLocal(_colorState.getColor());
-                    }
-                    // multiply by the inherited scale, if any
-                    if (!_config.moveParticlesWithEmitter) {
-                        particle.setSize(particle.getSize() * scale);
-                    }
-                    // add to bounds
-                    _bounds.addLocal(particle.getPosition());
-                    msize = Math.max(msize, particle.getSize());
-
-                } else {
-                    killParticle(ii);
-
-                    // move this particle to the end of the list
-                    if (ii != --_living.value) {
-                        swapParticles(ii, _living.value);
-                        ii--; // update the swapped particle on the next iteration
-                    }
-                    // then to the end of the preliving list
-                    if (_preliving != 0) {
-                        swapParticles(_living.value, _living.value + _preliving);
+            if (_particleData != null) {
+                msize = tickPacked(elapsed, scale);
+            } else {
+                for (int ii = 0; ii < _living.value; ii++) {
+                    Particle particle = _particles[ii];
+                    if (particle.tick(elapsed)) {
+                        // apply the influences
+                        for (Influence influence : _influences) {
+                            influence.apply(particle);
+                        }
+                        // modulate by the inherited color, if any
+                        if (_colorState != null) {
+                            particle.getColor().multLocal(_colorState.getColor());
+                        }
+                        // multiply by the inherited scale, if any
+                        if (!_config.moveParticlesWithEmitter) {
+                            particle.setSize(particle.getSize() * scale);
+                        }
+                        // add to bounds
+                        _bounds.addLocal(particle.getPosition());
+                        msize = Math.max(msize, particle.getSize());
+
+                    } else {
+                        killParticle(ii);
+
+                        // move this particle to the end of the list
+                        if (ii != --_living.value) {
+                            swapParticles(ii, _living.value);
+                            ii--; // update the swapped particle on the next iteration
+                        }
+                        // then to the end of the preliving list
+                        if (_preliving != 0) {
+                            swapParticles(_living.value, _living.value + _preliving);
+                        }
                     }
                 }
             }
@@ -224,11 +239,11 @@ public abstract class BaseParticleSystem extends Model.Implementation
 
             // find out how many particles the counter thinks we should emit
             int count = _counter.count(elapsed, _config.respawnDeadParticles ?
-                (_particles.length - _living.value) : _preliving);
+                (getCapacity() - _living.value) : _preliving);
 
-            // spawn those particles
+            // spawn those particles (packed particles are placed using a scratch object)
             for (int ii = _living.value, nn = _living.value + count; ii < nn; ii++) {
-                Particle particle = _particles[ii];
+                Particle particle = (_particleData == null) ? _particles[ii] : _placement;
                 _placer.place(particle);
                 _config.orientation.getValue(particle.getOrientation());
                 vectorToLayer(
@@ -243,8 +258,12 @@ public abstract class BaseParticleSystem extends Model.Implementation
                 initParticle(ii);
                 _living.value++;
                 _preliving = Math.max(_preliving - 1, 0);
-                _bounds.addLocal(particle.getPosition());
-                msize = Math.max(msize, particle.getSize());
+                if (_particleData == null) {
+                    _bounds.addLocal(particle.getPosition());
+                    msize = Math.max(msize, particle.getSize());
+                } else {
+                    msize = Math.max(msize, _particleData.addBounds(_bounds, ii, ii + 1));
+                }
             }
 
             // expand the bounds (TODO: account for tails)
@@ -324,11 +343,86 @@ public abstract class BaseParticleSystem extends Model.Implementation
             return "layer";
         }
 
+        /**
+         * Determines whether the layer's particles should be stored in packed arrays rather
+         * than as individual objects.  Called after the influences are created.
+         */
+        protected boolean shouldPackParticles ()
+        {
+            return false;
+        }
+
+        /**
+         * Checks whether all of the layer's influences can be applied to packed particles.
+         */
+        protected boolean influencesSupportBatching ()
+        {
+            for (Influence influence : _influences) {
+                if (!(influence instanceof BatchInfluence)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the total number of particles in the layer.
+         */
+        protected int getCapacity ()
+        {
+            return (_particleData == null) ? _particles.length : _particleData.getCapacity();
+        }
+
+        /**
+         * Updates the living packed particles, running each stage of the update as a loop over
+         * all of them.
+         *
+         * @return the maximum size of the remaining particles.
+         */
+        protected float tickPacked (float elapsed, float scale)
+        {
+            // age the particles, moving the dead ones past the end of the list
+            ParticleData data = _particleData;
+            float[] age = data.age, lifescale = data.lifescale;
+            for (int ii = 0; ii < _living.value; ii++) {
+                if ((age[ii] += elapsed * lifescale[ii]) < 1f) {
+                    continue;
+                }
+                killParticle(ii);
+                if (ii != --_living.value) {
+                    swapParticles(ii, _living.value);
+                    ii--; // age the swapped particle on the next iteration
+                }
+                if (_preliving != 0) {
+                    swapParticles(_living.value, _living.value + _preliving);
+                }
+            }
+
+            // move, update, and influence the survivors
+            int living = _living.value;
+            data.integrate(elapsed, living);
+            data.updateFunctions(living);
+            for (Influence influence : _influences) {
+                ((BatchInfluence)influence).apply(data, living);
+            }
+            if (_colorState != null) {
+                data.modulateColors(_colorState.getColor(), living);
+            }
+            if (!_config.moveParticlesWithEmitter) {
+                data.scaleSizes(scale, living);
+            }
+            return data.addBounds(_bounds, 0, living);
+        }
+
         /**
          * Swaps the two particles at the specified indices.
          */
         protected void swapParticles (int idx0, int idx1)
         {
+            if (_particleData != null) {
+                _particleData.swap(idx0, idx1);
+                return;
+            }
             Particle tmp = _particles[idx0];
             _particles[idx0] = _particles[idx1];
             _particles[idx1] = tmp;
@@ -339,6 +433,11 @@ public abstract class BaseParticleSystem extends Model.Implementation
          */
         protected void initParticle (int idx)
         {
+            if (_particleData != null) {
+                _particleData.init(idx, _placement, _config.lifespan.getValue(),
+                    _config.alphaMode, _config.color, _config.size, null);
+                return;
+            }
             _particles[idx].init(_config.lifespan.getValue(), _config.alphaMode,
                 _config.color, _config.size, null, null, null);
         }
@@ -405,6 +504,14 @@ public abstract class BaseParticleSystem extends Model.Implementation
         @Scoped
         protected Particle[] _particles;
 
+        /** The packed particles, if the layer stores its particles in arrays (in which case
+         * {@link #_particles} is null). */
+        @Scoped
+        protected ParticleData _particleData;
+
+        /** Receives the placement of newly spawned packed particles. */
+        protected Particle _placement = new Particle();
+
         /** The particle counter. */
         protected Counter _counter;
 
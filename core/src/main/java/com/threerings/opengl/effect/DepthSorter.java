@@ -0,0 +1,280 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.effect;
+
+import java.util.Arrays;
+
+/**
+ * Orders particles by depth without moving them, producing an array of particle indices in order
+ * of increasing depth.  Depending on how much the order has changed since the previous frame,
+ * the sorter either fixes up the previous order with an insertion sort (cheap when the particles
+ * are nearly sorted already, as they usually are) or sorts from scratch with a radix sort on the
+ * bits of the depth values.
+ */
+public class DepthSorter
+{
+    /** The available sorting modes. */
+    public enum Mode
+    {
+        /** Chooses between insertion and radix sorting based on the disorder of the input. */
+        ADAPTIVE,
+
+        /** Always radix sorts. */
+        RADIX,
+
+        /** Always insertion sorts the previous order (radix sorting only the first time). */
+        INCREMENTAL
+    };
+
+    /**
+     * Sets the sorting mode.
+     */
+    public void setMode (Mode mode)
+    {
+        _mode = mode;
+    }
+
+    /**
+     * Returns the sorting mode.
+     */
+    public Mode getMode ()
+    {
+        return _mode;
+    }
+
+    /**
+     * Sorts the first <code>count</code> depths, which are indexed by particle.
+     *
+     * @return the array of particle indices in order of increasing depth (valid up to
+     * <code>count</code>).
+     */
+    public int[] sort (float[] depths, int count)
+    {
+        ensureCapacity(count);
+
+        // convert the depths to integer keys that sort like the floats (by flipping the
+        // magnitude bits of negative values)
+        int[] keys = _keys;
+        for (int ii = 0; ii < count; ii++) {
+            int bits = Float.floatToIntBits(depths[ii]);
+            keys[ii] = bits ^ ((bits >> 31) & Integer.MAX_VALUE);
+        }
+
+        // try to fix up the previous order, falling back to a full sort if it's too disordered
+        if (_mode == Mode.RADIX || !_valid || !(updatePrevious(count) && insertionSort(count))) {
+            radixSort(count);
+            _radixSorts++;
+        } else {
+            _insertionSorts++;
+        }
+        _count = count;
+        _valid = true;
+        return _order;
+    }
+
+    /**
+     * Returns the order computed by the last call to {@link #sort}, or null if the particles
+     * haven't been sorted since the sorter was created or reset.
+     */
+    public int[] getOrder ()
+    {
+        return _valid ? _order : null;
+    }
+
+    /**
+     * Resets the sorter, discarding the previous order.
+     */
+    public void reset ()
+    {
+        _valid = false;
+    }
+
+    /**
+     * Returns the number of times the sorter has performed a full radix sort.
+     */
+    public int getRadixSorts ()
+    {
+        return _radixSorts;
+    }
+
+    /**
+     * Returns the number of times the sorter has fixed up the previous order by insertion.
+     */
+    public int getInsertionSorts ()
+    {
+        return _insertionSorts;
+    }
+
+    /**
+     * Adjusts the previous order for the new particle count by removing the indices past the end
+     * and appending the new ones, then determines whether the result is sorted well enough to be
+     * worth fixing up by insertion.
+     */
+    protected boolean updatePrevious (int count)
+    {
+        int[] order = _order;
+        int ocount = _count, ncount = 0;
+        for (int ii = 0; ii < ocount; ii++) {
+            int idx = order[ii];
+            if (idx < count) {
+                order[ncount++] = idx;
+            }
+        }
+        for (int idx = ocount; idx < count; idx++) {
+            order[ncount++] = idx;
+        }
+        if (_mode == Mode.INCREMENTAL) {
+            return true;
+        }
+        // count the descents: each is at least one inversion that the insertion sort must fix
+        int[] keys = _keys;
+        int descents = 0, limit = count / MAX_DESCENT_FRACTION;
+        for (int ii = 1; ii < count; ii++) {
+            if (keys[order[ii]] < keys[order[ii - 1]] && ++descents > limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Insertion sorts the current order.
+     *
+     * @return true if the sort completed, false if it was abandoned because it required too many
+     * moves (in which case the order is still a valid permutation, but unsorted).
+     */
+    protected boolean insertionSort (int count)
+    {
+        int[] order = _order, keys = _keys;
+        int budget = (_mode == Mode.INCREMENTAL) ?
+            Integer.MAX_VALUE : count * MAX_MOVES_PER_ELEMENT;
+        for (int ii = 1; ii < count; ii++) {
+            int idx = order[ii], key = keys[idx];
+            int jj = ii - 1;
+            for (; jj >= 0 && keys[order[jj]] > key; jj--) {
+                order[jj + 1] = order[jj];
+            }
+            order[jj + 1] = idx;
+            if ((budget -= (ii - 1 - jj)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sorts the particle indices from scratch using a least significant digit radix sort.
+     */
+    protected void radixSort (int count)
+    {
+        int[] keys = _keys, src = _order, dest = _scratch;
+        for (int ii = 0; ii < count; ii++) {
+            src[ii] = ii;
+        }
+        if (count < 2) {
+            return;
+        }
+        // the keys are signed, so we flip the sign bit to get unsigned digits
+        int[] counts = _counts;
+        for (int shift = 0; shift < 32; shift += RADIX_BITS) {
+            // count the occurrences of each digit
+            Arrays.fill(counts, 0);
+            for (int ii = 0; ii < count; ii++) {
+                counts[((keys[src[ii]] ^ Integer.MIN_VALUE) >>> shift) & RADIX_MASK]++;
+            }
+            // skip the pass if every key has the same digit
+            if (counts[((keys[src[0]] ^ Integer.MIN_VALUE) >>> shift) & RADIX_MASK] == count) {
+                continue;
+            }
+            // convert the counts to offsets and distribute
+            for (int ii = 0, offset = 0; ii < counts.length; ii++) {
+                int digits = counts[ii];
+                counts[ii] = offset;
+                offset += digits;
+            }
+            for (int ii = 0; ii < count; ii++) {
+                int idx = src[ii];
+                dest[counts[((keys[idx] ^ Integer.MIN_VALUE) >>> shift) & RADIX_MASK]++] = idx;
+            }
+            int[] tmp = src;
+            src = dest;
+            dest = tmp;
+        }
+        _order = src;
+        _scratch = dest;
+    }
+
+    /**
+     * Makes sure the arrays can hold the specified number of particles.
+     */
+    protected void ensureCapacity (int count)
+    {
+        if (_keys.length >= count) {
+            return;
+        }
+        int[] oorder = _order;
+        _keys = new int[count];
+        _order = new int[count];
+        _scratch = new int[count];
+        System.arraycopy(oorder, 0, _order, 0, _count);
+    }
+
+    /** The sorting mode. */
+    protected Mode _mode = Mode.ADAPTIVE;
+
+    /** The sort keys, indexed by particle. */
+    protected int[] _keys = new int[0];
+
+    /** The particle indices in sorted order. */
+    protected int[] _order = new int[0];
+
+    /** Scratch space for the radix sort. */
+    protected int[] _scratch = new int[0];
+
+    /** The digit counts/offsets for the radix sort. */
+    protected int[] _counts = new int[1 << RADIX_BITS];
+
+    /** The number of particles in the last sort. */
+    protected int _count;
+
+    /** Whether or not the previous order is valid. */
+    protected boolean _valid;
+
+    /** Sort statistics. */
+    protected int _radixSorts, _insertionSorts;
+
+    /** The number of bits in each radix digit. */
+    protected static final int RADIX_BITS = 8;
+
+    /** Masks out a radix digit. */
+    protected static final int RADIX_MASK = (1 << RADIX_BITS) - 1;
+
+    /** If more than one in this many adjacent pairs are out of order, we radix sort. */
+    protected static final int MAX_DESCENT_FRACTION = 4;
+
+    /** The average number of moves per element after which we abandon the insertion sort. */
+    protected static final int MAX_MOVES_PER_ELEMENT = 4;
+}
@@ -0,0 +1,387 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.effect;
+
+import com.threerings.math.Box;
+import com.threerings.math.FloatMath;
+import com.threerings.math.Transform3D;
+import com.threerings.math.Vector3f;
+
+import com.threerings.probs.ColorFunctionVariable;
+import com.threerings.probs.FloatFunctionVariable;
+
+import com.threerings.opengl.renderer.Color4f;
+
+/**
+ * Contains the state of a layer's particles in parallel arrays (as opposed to one {@link Particle}
+ * object per particle), so that the per-frame updates can run as tight loops over the arrays.
+ * Vector quantities are stored interleaved: three floats per particle for positions and
+ * velocities, four for orientations and colors.
+ */
+public final class ParticleData
+{
+    /** The particles' proportional ages (0 to 1). */
+    public float[] age;
+
+    /** The reciprocals of the particles' lifespans. */
+    public float[] lifescale;
+
+    /** The particles' positions (x, y, z). */
+    public float[] position;
+
+    /** The particles' (linear) velocities (x, y, z). */
+    public float[] velocity;
+
+    /** The particles' orientations (x, y, z, w). */
+    public float[] orientation;
+
+    /** The particles' angular velocities (x, y, z). */
+    public float[] angularVelocity;
+
+    /** The particles' colors (r, g, b, a). */
+    public float[] color;
+
+    /** The particles' sizes. */
+    public float[] size;
+
+    /** The particles' texture frames. */
+    public float[] frame;
+
+    /** The particles' depths (used for depth sorting). */
+    public float[] depth;
+
+    /** Identifiers that stay with the particles as they move within the arrays. */
+    public int[] id;
+
+    /** The particles' alpha modes. */
+    public AlphaMode[] alphaMode;
+
+    /** The particles' colors as functions of their proportional ages. */
+    public ColorFunction[] colorFunc;
+
+    /** The particles' sizes as functions of their proportional ages. */
+    public FloatFunction[] sizeFunc;
+
+    /** The particles' texture frames as functions of their proportional ages, or null. */
+    public FloatFunction[] frameFunc;
+
+    /**
+     * Creates a new set of particle data with the specified capacity.
+     */
+    public ParticleData (int capacity)
+    {
+        this(capacity, null);
+    }
+
+    /**
+     * Creates a new set of particle data with the specified capacity, copying as many of the
+     * existing particles from the old data (if non-null) as will fit.
+     */
+    public ParticleData (int capacity, ParticleData odata)
+    {
+        age = new float[capacity];
+        lifescale = new float[capacity];
+        position = new float[capacity * 3];
+        velocity = new float[capacity * 3];
+        orientation = new float[capacity * 4];
+        angularVelocity = new float[capacity * 3];
+        color = new float[capacity * 4];
+        size = new float[capacity];
+        frame = new float[capacity];
+        depth = new float[capacity];
+        id = new int[capacity];
+        alphaMode = new AlphaMode[capacity];
+        colorFunc = new ColorFunction[capacity];
+        sizeFunc = new FloatFunction[capacity];
+        frameFunc = new FloatFunction[capacity];
+
+        int ocapacity = 0;
+        if (odata != null) {
+            ocapacity = Math.min(capacity, odata.getCapacity());
+            System.arraycopy(odata.age, 0, age, 0, ocapacity);
+            System.arraycopy(odata.lifescale, 0, lifescale, 0, ocapacity);
+            System.arraycopy(odata.position, 0, position, 0, ocapacity * 3);
+            System.arraycopy(odata.velocity, 0, velocity, 0, ocapacity * 3);
+            System.arraycopy(odata.orientation, 0, orientation, 0, ocapacity * 4);
+            System.arraycopy(odata.angularVelocity, 0, angularVelocity, 0, ocapacity * 3);
+            System.arraycopy(odata.color, 0, color, 0, ocapacity * 4);
+            System.arraycopy(odata.size, 0, size, 0, ocapacity);
+            System.arraycopy(odata.frame, 0, frame, 0, ocapacity);
+            System.arraycopy(odata.id, 0, id, 0, ocapacity);
+            System.arraycopy(odata.alphaMode, 0, alphaMode, 0, ocapacity);
+            System.arraycopy(odata.colorFunc, 0, colorFunc, 0, ocapacity);
+            System.arraycopy(odata.sizeFunc, 0, sizeFunc, 0, ocapacity);
+            System.arraycopy(odata.frameFunc, 0, frameFunc, 0, ocapacity);
+        }
+        for (int ii = ocapacity; ii < capacity; ii++) {
+            orientation[ii*4 + 3] = 1f;
+            alphaMode[ii] = AlphaMode.TRANSLUCENT;
+            id[ii] = ii * 0x9E3779B9; // spread the identifiers over the integer range
+        }
+    }
+
+    /**
+     * Returns the number of particles that the arrays can hold.
+     */
+    public int getCapacity ()
+    {
+        return age.length;
+    }
+
+    /**
+     * Initializes the particle at the specified index, copying its placement (position, velocity,
+     * orientation, and angular velocity) from the supplied particle object.
+     *
+     * @param frame the frame function variable, or null if the layer isn't animated.
+     */
+    public void init (
+        int idx, Particle placement, float lifespan, AlphaMode alphaMode,
+        ColorFunctionVariable color, FloatFunctionVariable size, FloatFunctionVariable frame)
+    {
+        age[idx] = 0f;
+        lifescale[idx] = 1f / lifespan;
+        int idx3 = idx*3, idx4 = idx*4;
+        set(position, idx3, placement.getPosition().x, placement.getPosition().y,
+            placement.getPosition().z);
+        set(velocity, idx3, placement.getVelocity().x, placement.getVelocity().y,
+            placement.getVelocity().z);
+        set(angularVelocity, idx3, placement.getAngularVelocity().x,
+            placement.getAngularVelocity().y, placement.getAngularVelocity().z);
+        orientation[idx4] = placement.getOrientation().x;
+        orientation[idx4 + 1] = placement.getOrientation().y;
+        orientation[idx4 + 2] = placement.getOrientation().z;
+        orientation[idx4 + 3] = placement.getOrientation().w;
+
+        this.alphaMode[idx] = alphaMode;
+        ColorFunction cfunc = colorFunc[idx] = color.getValue(colorFunc[idx]);
+        setColor(idx4, alphaMode.apply(cfunc.getValue(0f, _color)));
+        FloatFunction sfunc = sizeFunc[idx] = size.getValue(sizeFunc[idx]);
+        this.size[idx] = sfunc.getValue(0f);
+        if (frame == null) {
+            frameFunc[idx] = null;
+            this.frame[idx] = 0f;
+        } else {
+            FloatFunction ffunc = frameFunc[idx] = frame.getValue(frameFunc[idx]);
+            this.frame[idx] = ffunc.getValue(0f);
+        }
+    }
+
+    /**
+     * Swaps the particles at the specified indices.
+     */
+    public void swap (int idx0, int idx1)
+    {
+        swap(age, idx0, idx1);
+        swap(lifescale, idx0, idx1);
+        swap(size, idx0, idx1);
+        swap(frame, idx0, idx1);
+        for (int ii = 0; ii < 3; ii++) {
+            swap(position, idx0*3 + ii, idx1*3 + ii);
+            swap(velocity, idx0*3 + ii, idx1*3 + ii);
+            swap(angularVelocity, idx0*3 + ii, idx1*3 + ii);
+        }
+        for (int ii = 0; ii < 4; ii++) {
+            swap(orientation, idx0*4 + ii, idx1*4 + ii);
+            swap(color, idx0*4 + ii, idx1*4 + ii);
+        }
+        int tid = id[idx0];
+        id[idx0] = id[idx1];
+        id[idx1] = tid;
+        swap(alphaMode, idx0, idx1);
+        swap(colorFunc, idx0, idx1);
+        swap(sizeFunc, idx0, idx1);
+        swap(frameFunc, idx0, idx1);
+    }
+
+    /**
+     * Takes an Euler step for the first <code>count</code> particles, updating their positions
+     * and orientations.
+     */
+    public void integrate (float elapsed, int count)
+    {
+        float[] position = this.position, velocity = this.velocity;
+        for (int ii = 0, nn = count * 3; ii < nn; ii++) {
+            position[ii] += velocity[ii] * elapsed;
+        }
+        float[] orientation = this.orientation, angularVelocity = this.angularVelocity;
+        float hstep = 0.5f * elapsed;
+        for (int ii = 0, idx3 = 0, idx4 = 0; ii < count; ii++, idx3 += 3, idx4 += 4) {
+            float qx = hstep * angularVelocity[idx3];
+            float qy = hstep * angularVelocity[idx3 + 1];
+            float qz = hstep * angularVelocity[idx3 + 2];
+            if (qx == 0f && qy == 0f && qz == 0f) {
+                continue; // the normalized result would be unchanged
+            }
+            float x = orientation[idx4], y = orientation[idx4 + 1];
+            float z = orientation[idx4 + 2], w = orientation[idx4 + 3];
+            float nx = x + (qx*w + qy*z - qz*y);
+            float ny = y + (qy*w + qz*x - qx*z);
+            float nz = z + (qz*w + qx*y - qy*x);
+            float nw = w + (-qx*x - qy*y - qz*z);
+            float rlen = 1f / FloatMath.sqrt(nx*nx + ny*ny + nz*nz + nw*nw);
+            orientation[idx4] = nx * rlen;
+            orientation[idx4 + 1] = ny * rlen;
+            orientation[idx4 + 2] = nz * rlen;
+            orientation[idx4 + 3] = nw * rlen;
+        }
+    }
+
+    /**
+     * Evaluates the color, size, and frame functions of the first <code>count</code> particles
+     * at their current ages.
+     */
+    public void updateFunctions (int count)
+    {
+        float[] age = this.age, size = this.size, frame = this.frame;
+        Color4f scratch = _color;
+        for (int ii = 0; ii < count; ii++) {
+            float t = age[ii];
+            setColor(ii*4, alphaMode[ii].apply(colorFunc[ii].getValue(t, scratch)));
+            size[ii] = sizeFunc[ii].getValue(t);
+            FloatFunction ffunc = frameFunc[ii];
+            if (ffunc != null) {
+                frame[ii] = ffunc.getValue(t);
+            }
+        }
+    }
+
+    /**
+     * Modulates the colors of the first <code>count</code> particles by the supplied color.
+     */
+    public void modulateColors (Color4f modulate, int count)
+    {
+        float r = modulate.r, g = modulate.g, b = modulate.b, a = modulate.a;
+        float[] color = this.color;
+        for (int ii = 0, nn = count * 4; ii < nn; ii += 4) {
+            color[ii] *= r;
+            color[ii + 1] *= g;
+            color[ii + 2] *= b;
+            color[ii + 3] *= a;
+        }
+    }
+
+    /**
+     * Scales the sizes of the first <code>count</code> particles.
+     */
+    public void scaleSizes (float scale, int count)
+    {
+        float[] size = this.size;
+        for (int ii = 0; ii < count; ii++) {
+            size[ii] *= scale;
+        }
+    }
+
+    /**
+     * Expands the supplied bounds to include the positions of the particles in the specified
+     * range.
+     *
+     * @return the maximum size of the particles in the range (or zero if the range is empty).
+     */
+    public float addBounds (Box bounds, int start, int end)
+    {
+        if (start >= end) {
+            return 0f;
+        }
+        float[] position = this.position, size = this.size;
+        float minx = Float.POSITIVE_INFINITY, miny = minx, minz = minx;
+        float maxx = Float.NEGATIVE_INFINITY, maxy = maxx, maxz = maxx;
+        float msize = 0f;
+        for (int ii = start, idx3 = start*3; ii < end; ii++, idx3 += 3) {
+            float x = position[idx3], y = position[idx3 + 1], z = position[idx3 + 2];
+            minx = Math.min(minx, x);
+            miny = Math.min(miny, y);
+            minz = Math.min(minz, z);
+            maxx = Math.max(maxx, x);
+            maxy = Math.max(maxy, y);
+            maxz = Math.max(maxz, z);
+            msize = Math.max(msize, size[ii]);
+        }
+        _min.set(minx, miny, minz);
+        _max.set(maxx, maxy, maxz);
+        bounds.addLocal(_min).addLocal(_max);
+        return msize;
+    }
+
+    /**
+     * Computes the depths of the first <code>count</code> particles under the supplied transform.
+     */
+    public void computeDepths (Transform3D xform, int count)
+    {
+        float[] position = this.position, depth = this.depth;
+        Vector3f point = _min;
+        for (int ii = 0, idx3 = 0; ii < count; ii++, idx3 += 3) {
+            point.set(position[idx3], position[idx3 + 1], position[idx3 + 2]);
+            depth[ii] = xform.transformPointZ(point);
+        }
+    }
+
+    /**
+     * Stores a color in the color array.
+     */
+    protected void setColor (int idx4, Color4f value)
+    {
+        color[idx4] = value.r;
+        color[idx4 + 1] = value.g;
+        color[idx4 + 2] = value.b;
+        color[idx4 + 3] = value.a;
+    }
+
+    /**
+     * Stores a triplet in the specified array.
+     */
+    protected static void set (float[] array, int idx3, float x, float y, float z)
+    {
+        array[idx3] = x;
+        array[idx3 + 1] = y;
+        array[idx3 + 2] = z;
+    }
+
+    /**
+     * Swaps two elements of a float array.
+     */
+    protected static void swap (float[] array, int idx0, int idx1)
+    {
+        float tmp = array[idx0];
+        array[idx0] = array[idx1];
+        array[idx1] = tmp;
+    }
+
+    /**
+     * Swaps two elements of an object array.
+     */
+    protected static void swap (Object[] array, int idx0, int idx1)
+    {
+        Object tmp = array[idx0];
+        array[idx0] = array[idx1];
+        array[idx1] = tmp;
+    }
+
+    /** Scratch color. */
+    protected Color4f _color = new Color4f();
+
+    /** Scratch vectors. */
+    protected Vector3f _min = new Vector3f(), _max = new Vector3f();
+}
@@ -43,8 +43,8 @@ import com.threerings.expr.Bound;
 import com.threerings.expr.MutableInteger;
 import com.threerings.expr.Scope;
 import com.threerings.expr.util.ScopeUtil;
+import com.threerings.math.ArrayMath;
 import com.threerings.math.FloatMath;
-import com.threerings.math.Matrix4f;
 import com.threerings.math.Quaternion;
 import com.threerings.math.Transform3D;
 import com.threerings.math.Vector3f;
@@ -109,8 +109,13 @@ public abstract class ParticleGeometry extends DynamicGeometry
         @Override
         protected void updateData ()
         {
+            if (_particleData != null) {
+                updatePackedData();
+                return;
+            }
             // get everything into local variables
             Particle[] particles = _particles;
+            int[] order = getOrder();
             float[] data = _data;
             int stride = _stride;
             Vector3f n = _n;
@@ -127,7 +132,7 @@ public abstract class ParticleGeometry extends DynamicGeometry
             int normalIdx = _normalOffset;
             int vertexIdx = _vertexOffset;
             for (int ii = 0, nn = _living.value; ii < nn; ii++) {
-                Particle particle = particles[ii];
+                Particle particle = particles[(order == null) ? ii : order[ii]];
 
                 // determine the texture coordinate offsets
                 int frame = FloatMath.round(particle.getFrame());
@@ -143,6 +148,53 @@ public abstract class ParticleGeometry extends DynamicGeometry
                 vertexIdx = write(data, vertexIdx, stride, particle.getPosition());
             }
         }
+
+        /**
+         * Updates the data from the layer's packed particles.
+         */
+        protected void updatePackedData ()
+        {
+            // get everything into local variables
+            ParticleData pdata = _particleData;
+            float[] positions = pdata.position, colors = pdata.color;
+            float[] orientations = pdata.orientation, frames = pdata.frame;
+            int[] order = getOrder();
+            float[] data = _data;
+            int stride = _stride;
+            boolean normals = (_normalOffset >= 0);
+
+            // figure out the texture coordinate parameters
+            int udivs = _config.textureDivisionsS;
+            float uscale = 1f / udivs;
+            float vscale = 1f / _config.textureDivisionsT;
+
+            // update the living particles
+            int texCoordIdx = _texCoordOffset;
+            int colorIdx = _colorOffset;
+            int normalIdx = _normalOffset;
+            int vertexIdx = _vertexOffset;
+            for (int ii = 0, nn = _living.value; ii < nn; ii++) {
+                int idx = (order == null) ? ii : order[ii];
+                int idx3 = idx*3, idx4 = idx*4;
+
+                // determine the texture coordinate offsets
+                int frame = FloatMath.round(frames[idx]);
+                float uoff = (frame % udivs) * uscale, voff = (frame / udivs) * vscale;
+
+                // write the vertex attributes and advance the positions
+                texCoordIdx = write(data, texCoordIdx, stride, uoff, voff);
+                colorIdx = write(data, colorIdx, stride, colors[idx4], colors[idx4 + 1],
+                    colors[idx4 + 2], colors[idx4 + 3]);
+                if (normals) {
+                    float qx = orientations[idx4], qy = orientations[idx4 + 1];
+                    float qz = orientations[idx4 + 2], qw = orientations[idx4 + 3];
+                    normalIdx = write(data, normalIdx, stride, 2f*(qx*qz + qy*qw),
+                        2f*(qy*qz - qx*qw), 1f - 2f*(qx*qx + qy*qy));
+                }
+                vertexIdx = write(data, vertexIdx, stride, positions[idx3],
+                    positions[idx3 + 1], positions[idx3 + 2]);
+            }
+        }
     }
 
     /**
@@ -185,6 +237,7 @@ public abstract class ParticleGeometry extends DynamicGeometry
         {
             // get everything in local variables
             Particle[] particles = _particles;
+            int[] order = getOrder();
             float[] data = _data;
             int stride = _stride;
             Vector3f s = _s, n = _n;
@@ -208,7 +261,7 @@ public abstract class ParticleGeometry extends DynamicGeometry
             int normalIdx = _normalOffset;
             int vertexIdx = _vertexOffset;
             for (int ii = 0, nn = _living.value; ii < nn; ii++) {
-                Particle particle = particles[ii];
+                Particle particle = particles[(order == null) ? ii : order[ii]];
 
                 // determine the texture coordinate offsets
                 int frame = FloatMath.round(particle.getFrame());
@@ -320,6 +373,7 @@ public abstract class ParticleGeometry extends DynamicGeometry
         {
             // get everything in local variables
             Particle[] particles = _particles;
+            int[] order = getOrder();
             float[] data = _data;
             int stride = _stride;
             int segments = _segments;
@@ -338,7 +392,7 @@ public abstract class ParticleGeometry extends DynamicGeometry
             int normalIdx = _normalOffset;
             int vertexIdx = _vertexOffset;
             for (int ii = 0, nn = _living.value; ii < nn; ii++) {
-                Particle particle = particles[ii];
+                Particle particle = particles[(order == null) ? ii : order[ii]];
 
                 // determine the texture coordinate offsets
                 int frame = FloatMath.round(particle.getFrame());
@@ -415,8 +469,13 @@ public abstract class ParticleGeometry extends DynamicGeometry
         @Override
         protected void updateData ()
         {
+            if (_particleData != null) {
+                updatePackedData();
+                return;
+            }
             // get everything in local variables
             Particle[] particles = _particles;
+            int[] order = getOrder();
             float[] data = _data;
             int stride = _stride;
             Vector3f s = _s, t = _t, n = _n, view = _view;
@@ -445,7 +504,7 @@ public abstract class ParticleGeometry extends DynamicGeometry
             int normalIdx = _normalOffset;
             int vertexIdx = _vertexOffset;
             for (int ii = 0, nn = _living.value; ii < nn; ii++) {
-                Particle particle = particles[ii];
+                Particle particle = particles[(order == null) ? ii : order[ii]];
 
                 // determine the texture coordinate offsets
                 int frame = FloatMath.round(particle.getFrame());
@@ -532,6 +591,109 @@ public abstract class ParticleGeometry extends DynamicGeometry
                 }
             }
         }
+
+        /**
+         * Updates the data from the layer's packed particles.
+         */
+        protected void updatePackedData ()
+        {
+            // get everything in local variables
+            ParticleData pdata = _particleData;
+            float[] positions = pdata.position, velocities = pdata.velocity;
+            float[] orientations = pdata.orientation, colors = pdata.color;
+            float[] sizes = pdata.size, frames = pdata.frame;
+            int[] order = getOrder();
+            float[] data = _data;
+            int stride = _stride;
+            Vector3f s = _s, t = _t, n = _n, view = _view;
+            Quaternion rotation = _rotation, vrot = _vrot;
+            boolean normals = (_normalOffset >= 0);
+
+            // figure out the texture coordinate parameters
+            int udivs = _config.textureDivisionsS;
+            float uscale = 1f / udivs;
+            float vscale = 1f / _config.textureDivisionsT;
+
+            Alignment alignment = _config.alignment;
+            if (alignment == Alignment.VELOCITY) {
+                // find the view vector in local coordinates
+                _transformState.getModelview().invert(_xform).transformVector(
+                    Vector3f.UNIT_Z, view);
+
+            } else if (alignment == Alignment.BILLBOARD) {
+                // get the inverse of the modelview rotation
+                _transformState.getModelview().extractRotation(vrot).invertLocal();
+            }
+
+            // update the living particles
+            int texCoordIdx = _texCoordOffset;
+            int colorIdx = _colorOffset;
+            int normalIdx = _normalOffset;
+            int vertexIdx = _vertexOffset;
+            for (int ii = 0, nn = _living.value; ii < nn; ii++) {
+                int idx = (order == null) ? ii : order[ii];
+                int idx3 = idx*3, idx4 = idx*4;
+
+                // determine the texture coordinate offsets
+                int frame = FloatMath.round(frames[idx]);
+                float uoff = (frame % udivs) * uscale, voff = (frame / udivs) * vscale;
+                float vtop = voff + vscale, uright = uoff + uscale;
+
+                // extract the color and position
+                float cr = colors[idx4], cg = colors[idx4 + 1];
+                float cb = colors[idx4 + 2], ca = colors[idx4 + 3];
+                float px = positions[idx3], py = positions[idx3 + 1], pz = positions[idx3 + 2];
+
+                // compute the offsets
+                float size = sizes[idx];
+                if (alignment == Alignment.VELOCITY) {
+                    s.set(velocities[idx3], velocities[idx3 + 1], velocities[idx3 + 2]);
+                    view.cross(s, t);
+                    float length = t.length();
+                    if (length > FloatMath.EPSILON) {
+                        t.multLocal(size / length);
+                        s.normalizeLocal().multLocal(size);
+                    } else {
+                        s.set(Vector3f.ZERO);
+                        t.set(Vector3f.ZERO);
+                    }
+                    if (normals) {
+                        computeOffset(s, t, 1f, n);
+                    }
+                } else {
+                    rotation.set(orientations[idx4], orientations[idx4 + 1],
+                        orientations[idx4 + 2], orientations[idx4 + 3]);
+                    if (alignment == Alignment.BILLBOARD) {
+                        vrot.mult(rotation, rotation);
+                    }
+                    rotation.transformUnitX(s).multLocal(size);
+                    rotation.transformUnitY(t).multLocal(size);
+                    if (normals) {
+                        rotation.transformUnitZ(n);
+                    }
+                }
+                float sx = s.x, sy = s.y, sz = s.z;
+                float tx = t.x, ty = t.y, tz = t.z;
+
+                // write the vertices
+                texCoordIdx = write(data, texCoordIdx, stride, uoff, vtop);
+                texCoordIdx = write(data, texCoordIdx, stride, uoff, voff);
+                texCoordIdx = write(data, texCoordIdx, stride, uright, vtop);
+                texCoordIdx = write(data, texCoordIdx, stride, uright, voff);
+                for (int jj = 0; jj < 4; jj++) {
+                    colorIdx = write(data, colorIdx, stride, cr, cg, cb, ca);
+                }
+                if (normals) {
+                    for (int jj = 0; jj < 4; jj++) {
+                        normalIdx = write(data, normalIdx, stride, n.x, n.y, n.z);
+                    }
+                }
+                vertexIdx = write(data, vertexIdx, stride, px+tx-sx, py+ty-sy, pz+tz-sz);
+                vertexIdx = write(data, vertexIdx, stride, px-sx-tx, py-sy-ty, pz-sz-tz);
+                vertexIdx = write(data, vertexIdx, stride, px+sx+tx, py+sy+ty, pz+sz+tz);
+                vertexIdx = write(data, vertexIdx, stride, px+sx-tx, py+sy-ty, pz+sz-tz);
+            }
+        }
     }
 
     /**
@@ -586,6 +748,7 @@ public abstract class ParticleGeometry extends DynamicGeometry
         {
             // get everything in local variables
             Particle[] particles = _particles;
+            int[] order = getOrder();
             float[] data = _data;
             int stride = _stride;
             int segments = _segments;
@@ -609,7 +772,7 @@ public abstract class ParticleGeometry extends DynamicGeometry
             int normalIdx = _normalOffset;
             int vertexIdx = _vertexOffset;
             for (int ii = 0, nn = _living.value; ii < nn; ii++) {
-                Particle particle = particles[ii];
+                Particle particle = particles[(order == null) ? ii : order[ii]];
 
                 // extract the color and size
                 Color4f color = particle.getColor();
@@ -809,11 +972,13 @@ public abstract class ParticleGeometry extends DynamicGeometry
         {
             // get everything in local variables
             Particle[] particles = _particles;
+            int[] order = getOrder();
             float[] data = _data, source = _source;
             int stride = _stride, sourceStride = _sourceStride;
             Transform3D xform = _xform;
             Quaternion vrot = _vrot, rotation = _rotation;
             Vector3f s = _s, t = _t, r = _r, view = _view;
+            float[] matrix = _matrix, nmatrix = _nmatrix;
             boolean normals = (_normalOffset >= 0);
 
             // figure out the texture coordinate parameters
@@ -839,7 +1004,7 @@ public abstract class ParticleGeometry extends DynamicGeometry
             int normalIdx = _normalOffset;
             int vertexIdx = _vertexOffset;
             for (int ii = 0, nn = _living.value; ii < nn; ii++) {
-                Particle particle = particles[ii];
+                Particle particle = particles[(order == null) ? ii : order[ii]];
 
                 // determine the texture coordinate offsets
                 int frame = FloatMath.round(particle.getFrame());
@@ -850,9 +1015,6 @@ public abstract class ParticleGeometry extends DynamicGeometry
                 float cr = color.r, cg = color.g, cb = color.b, ca = color.a;
 
                 // compute the particle transform matrix
-                float m00, m10, m20, m30;
-                float m01, m11, m21, m31;
-                float m02, m12, m22, m32;
                 float size = particle.getSize();
                 if (alignment == Alignment.VELOCITY) {
                     Vector3f velocity = particle.getVelocity();
@@ -868,9 +1030,10 @@ public abstract class ParticleGeometry extends DynamicGeometry
                         r.set(Vector3f.ZERO);
                     }
                     Vector3f position = particle.getPosition();
-                    m00 = s.x*size; m10 = t.x*size; m20 = r.x*size; m30 = position.x;
-                    m01 = s.y*size; m11 = t.y*size; m21 = r.y*size; m31 = position.y;
-                    m02 = s.z*size; m12 = t.z*size; m22 = r.z*size; m32 = position.z;
+                    matrix[0] = s.x*size; matrix[1] = s.y*size; matrix[2] = s.z*size;
+                    matrix[3] = t.x*size; matrix[4] = t.y*size; matrix[5] = t.z*size;
+                    matrix[6] = r.x*size; matrix[7] = r.y*size; matrix[8] = r.z*size;
+                    matrix[9] = position.x; matrix[10] = position.y; matrix[11] = position.z;
 
                 } else {
                     xform.set(
@@ -880,76 +1043,41 @@ public abstract class ParticleGeometry extends DynamicGeometry
                             particle.getOrientation(),
                         size);
                     xform.update(Transform3D.AFFINE);
-                    Matrix4f m = xform.getMatrix();
-                    m00 = m.m00; m10 = m.m10; m20 = m.m20; m30 = m.m30;
-                    m01 = m.m01; m11 = m.m11; m21 = m.m21; m31 = m.m31;
-                    m02 = m.m02; m12 = m.m12; m22 = m.m22; m32 = m.m32;
+                    ArrayMath.getAffine(xform.getMatrix(), matrix, 0);
                 }
 
+                // write the texture coordinates and colors
                 int sourceTexCoordIdx = _sourceTexCoordOffset;
-                int sourceVertexIdx = _sourceVertexOffset;
-                if (normals) {
-                    int sourceNormalIdx = _sourceNormalOffset;
-                    float rsize = 1f / particle.getSize();
-                    float n00 = m00*rsize, n10 = m10*rsize, n20 = m20*rsize;
-                    float n01 = m01*rsize, n11 = m11*rsize, n21 = m21*rsize;
-                    float n02 = m02*rsize, n12 = m12*rsize, n22 = m22*rsize;
-
-                    for (int jj = 0; jj < vpp; jj++) {
-                        // write the texture coordinates
-                        texCoordIdx = write(data, texCoordIdx, stride,
-                            uoff + source[sourceTexCoordIdx]*uscale,
-                            voff + source[sourceTexCoordIdx + 1]*vscale);
-                        sourceTexCoordIdx += sourceStride;
-
-                        // write the color
-                        colorIdx = write(data, colorIdx, stride, cr, cg, cb, ca);
-
-                        // write the transformed normal
-                        float nx = source[sourceNormalIdx];
-                        float ny = source[sourceNormalIdx + 1];
-                        float nz = source[sourceNormalIdx + 2];
-                        normalIdx = write(data, normalIdx, stride,
-                            n00*nx + n10*ny + n20*nz,
-                            n01*nx + n11*ny + n21*nz,
-                            n02*nx + n12*ny + n22*nz);
-                        sourceNormalIdx += sourceStride;
-
-                        // write the transformed vertex
-                        float vx = source[sourceVertexIdx];
-                        float vy = source[sourceVertexIdx + 1];
-                        float vz = source[sourceVertexIdx + 2];
-                        vertexIdx = write(data, vertexIdx, stride,
-                            m00*vx + m10*vy + m20*vz + m30,
-                            m01*vx + m11*vy + m21*vz + m31,
-                            m02*vx + m12*vy + m22*vz + m32);
-                        sourceVertexIdx += sourceStride;
-                    }
-                } else {
-                    for (int jj = 0; jj < vpp; jj++) {
-                        // write the texture coordinates
-                        texCoordIdx = write(data, texCoordIdx, stride,
-                            uoff + source[sourceTexCoordIdx]*uscale,
-                            voff + source[sourceTexCoordIdx + 1]*vscale);
-                        sourceTexCoordIdx += sourceStride;
-
-                        // write the color
-                        colorIdx = write(data, colorIdx, stride, cr, cg, cb, ca);
+                for (int jj = 0; jj < vpp; jj++) {
+                    texCoordIdx = write(data, texCoordIdx, stride,
+                        uoff + source[sourceTexCoordIdx]*uscale,
+                        voff + source[sourceTexCoordIdx + 1]*vscale);
+                    sourceTexCoordIdx += sourceStride;
+                    colorIdx = write(data, colorIdx, stride, cr, cg, cb, ca);
+                }
 
-                        // write the transformed vertex
-                        float vx = source[sourceVertexIdx];
-                        float vy = source[sourceVertexIdx + 1];
-                        float vz = source[sourceVertexIdx + 2];
-                        vertexIdx = write(data, vertexIdx, stride,
-                            m00*vx + m10*vy + m20*vz + m30,
-                            m01*vx + m11*vy + m21*vz + m31,
-                            m02*vx + m12*vy + m22*vz + m32);
-                        sourceVertexIdx += sourceStride;
+                // write the transformed normals (without the scale) and vertices
+                if (normals) {
+                    float rsize = 1f / size;
+                    for (int jj = 0; jj < 9; jj++) {
+                        nmatrix[jj] = matrix[jj] * rsize;
                     }
+                    ArrayMath.transformVectors(nmatrix, 0, source, _sourceNormalOffset,
+                        sourceStride, data, normalIdx, stride, vpp);
+                    normalIdx += vpp * stride;
                 }
+                ArrayMath.transformPoints(matrix, 0, source, _sourceVertexOffset,
+                    sourceStride, data, vertexIdx, stride, vpp);
+                vertexIdx += vpp * stride;
             }
         }
 
+        /** The packed particle transform matrix. */
+        protected float[] _matrix = new float[ArrayMath.AFFINE_SIZE];
+
+        /** The packed normal transform matrix. */
+        protected float[] _nmatrix = new float[ArrayMath.AFFINE_SIZE];
+
         /** The geometry to render. */
         protected GeometryConfig.IndexedStored _geom;
 
@@ -1037,7 +1165,7 @@ public abstract class ParticleGeometry extends DynamicGeometry
         // (re)create the data array if necessary
         _data = (_config.data == null) ? null : _config.data.get();
         if (_data == null) {
-            int size = _particles.length * getParticleVertexCount() * _stride;
+            int size = getCapacity() * getParticleVertexCount() * _stride;
             _config.data = new SoftReference<float[]>(_data = new float[size]);
         }
 
@@ -1088,9 +1216,10 @@ public abstract class ParticleGeometry extends DynamicGeometry
     protected ShortBuffer createIndices ()
     {
         int[] prototype = getPrototypeIndices();
-        ShortBuffer indices = BufferUtils.createShortBuffer(_particles.length * prototype.length);
+        int capacity = getCapacity();
+        ShortBuffer indices = BufferUtils.createShortBuffer(capacity * prototype.length);
         int vpp = getParticleVertexCount();
-        for (int ii = 0, offset = 0; ii < _particles.length; ii++, offset += vpp) {
+        for (int ii = 0, offset = 0; ii < capacity; ii++, offset += vpp) {
             for (int index : prototype) {
                 indices.put((short)(offset + index));
             }
@@ -1099,6 +1228,22 @@ public abstract class ParticleGeometry extends DynamicGeometry
         return indices;
     }
 
+    /**
+     * Returns the total number of particles in the layer.
+     */
+    protected int getCapacity ()
+    {
+        return (_particleData == null) ? _particles.length : _particleData.getCapacity();
+    }
+
+    /**
+     * Returns the order in which to visit the particles, or null to visit them in array order.
+     */
+    protected int[] getOrder ()
+    {
+        return (_depthSorter == null) ? null : _depthSorter.getOrder();
+    }
+
     /**
      * Returns the primitive mode.
      */
@@ -1205,6 +1350,14 @@ public abstract class ParticleGeometry extends DynamicGeometry
     @Bound
     protected Particle[] _particles;
 
+    /** The packed particles to render, if the layer packs its particles. */
+    @Bound
+    protected ParticleData _particleData;
+
+    /** The depth sorter, if the layer is depth sorted. */
+    @Bound
+    protected DepthSorter _depthSorter;
+
     /** The number of particles currently active. */
     @Bound
     protected MutableInteger _living;
@@ -25,10 +25,6 @@
 
 package com.threerings.opengl.effect;
 
-import java.util.Comparator;
-
-import com.samskivert.util.QuickSort;
-
 import com.threerings.expr.Scope;
 import com.threerings.expr.Scoped;
 import com.threerings.expr.util.ScopeUtil;
@@ -74,15 +70,23 @@ public class ParticleSystem extends BaseParticleSystem
                 _transformState.setDirty(true);
             }
 
-            // sort by depth if so required (TODO: radix or incremental sort?)
+            // sort by depth if so required
             ParticleSystemConfig.Layer psconfig = (ParticleSystemConfig.Layer)_config;
-            if (psconfig.depthSort) {
+            if (_depthSorter != null) {
                 Transform3D xform = _transformState.getModelview();
-                for (int ii = 0, nn = _living.value; ii < nn; ii++) {
-                    Particle particle = _particles[ii];
-                    particle.depth = xform.transformPointZ(particle.getPosition());
+                float[] depths;
+                if (_particleData != null) {
+                    _particleData.computeDepths(xform, _living.value);
+                    depths = _particleData.depth;
+                } else {
+                    depths = _depths;
+                    for (int ii = 0, nn = _living.value; ii < nn; ii++) {
+                        Particle particle = _particles[ii];
+                        depths[ii] = particle.depth =
+                            xform.transformPointZ(particle.getPosition());
+                    }
                 }
-                QuickSort.sort(_particles, 0, _living.value - 1, DEPTH_COMP);
+                _depthSorter.sort(depths, _living.value);
             }
 
             // update the center if necessary
@@ -111,6 +115,15 @@ public class ParticleSystem extends BaseParticleSystem
                     _parentScope, "viewTransformState",
                     TransformState.IDENTITY, TransformState.class);
 
+            // create the depth sorter if necessary (the particle indices may have changed)
+            if (psconfig.depthSort) {
+                _depthSorter = new DepthSorter();
+                _depths = (_particles == null) ? null : new float[_particles.length];
+            } else {
+                _depthSorter = null;
+                _depths = null;
+            }
+
             // recreate the surface
             if (_surface != null) {
                 _surface.dispose();
@@ -145,10 +158,25 @@ public class ParticleSystem extends BaseParticleSystem
             }
         }
 
+        @Override
+        protected boolean shouldPackParticles ()
+        {
+            return ((ParticleSystemConfig.Layer)_config).shouldPackParticles() &&
+                influencesSupportBatching();
+        }
+
         @Override
         protected void initParticle (int idx)
         {
             ParticleSystemConfig.Layer psconfig = (ParticleSystemConfig.Layer)_config;
+            if (_particleData != null) {
+                _particleData.init(
+                    idx, _placement, _config.lifespan.getValue(), _config.alphaMode,
+                    _config.color, _config.size,
+                    (psconfig.textureDivisionsS > 1 || psconfig.textureDivisionsT > 1) ?
+                        psconfig.frame : null);
+                return;
+            }
             _particles[idx].init(
                 _config.lifespan.getValue(), _config.alphaMode, _config.color, _config.size,
                 (psconfig.geometry.getSegments() > 0) ? psconfig.length : null,
@@ -184,6 +212,13 @@ public class ParticleSystem extends BaseParticleSystem
         @Scoped
         protected Vector3f _center = new Vector3f();
 
+        /** Orders the particles by depth, if the layer is depth sorted. */
+        @Scoped
+        protected DepthSorter _depthSorter;
+
+        /** Holds the depths of the particles when they're stored as objects. */
+        protected float[] _depths;
+
         /** The layer surface. */
         protected Surface _surface;
 
@@ -233,11 +268,4 @@ public class ParticleSystem extends BaseParticleSystem
 
     /** World space bounds of each group. */
     protected Box[] _groupBounds = new Box[0];
-
-    /** Sorts particles by decreasing depth. */
-    protected static final Comparator<Particle> DEPTH_COMP = new Comparator<Particle>() {
-        public int compare (Particle p1, Particle p2) {
-            return Float.compare(p1.depth, p2.depth);
-        }
-    };
 }
@@ -36,8 +36,10 @@ import com.threerings.util.DeepObject;
 import com.threerings.util.NoiseUtil;
 
 import com.threerings.opengl.effect.BaseParticleSystem.Layer;
+import com.threerings.opengl.effect.BatchInfluence;
 import com.threerings.opengl.effect.Influence;
 import com.threerings.opengl.effect.Particle;
+import com.threerings.opengl.effect.ParticleData;
 
 /**
  * Modifies the state of a set of particles.
@@ -67,13 +69,16 @@ public abstract class InfluenceConfig extends DeepObject
         @Override
         public Influence createInfluence (final Layer layer)
         {
-            return new Influence() {
+            return new BatchInfluence() {
                 public void tick (float elapsed) {
                     layer.vectorToLayer(acceleration.mult(elapsed, _delta), rotateWithEmitter);
                 }
                 public void apply (Particle particle) {
                     particle.getVelocity().addLocal(_delta);
                 }
+                public void apply (ParticleData data, int count) {
+                    add(data.velocity, _delta, count);
+                }
                 protected Vector3f _delta = new Vector3f();
             };
         }
@@ -99,7 +104,7 @@ public abstract class InfluenceConfig extends DeepObject
         @Override
         public Influence createInfluence (final Layer layer)
         {
-            return new Influence() {
+            return new BatchInfluence() {
                 public void tick (float elapsed) {
                     layer.vectorToLayer(direction.mult(strength * elapsed, _delta),
                         rotateWithEmitter);
@@ -107,6 +112,9 @@ public abstract class InfluenceConfig extends DeepObject
                 public void apply (Particle particle) {
                     particle.getVelocity().addLocal(_delta);
                 }
+                public void apply (ParticleData data, int count) {
+                    add(data.velocity, _delta, count);
+                }
                 protected Vector3f _delta = new Vector3f();
             };
         }
@@ -124,13 +132,20 @@ public abstract class InfluenceConfig extends DeepObject
         @Override
         public Influence createInfluence (Layer layer)
         {
-            return new Influence() {
+            return new BatchInfluence() {
                 public void tick (float elapsed) {
                     _drag = Math.max(0f, 1f - amount*elapsed);
                 }
                 public void apply (Particle particle) {
                     particle.getVelocity().multLocal(_drag);
                 }
+                public void apply (ParticleData data, int count) {
+                    float[] velocity = data.velocity;
+                    float drag = _drag;
+                    for (int ii = 0, nn = count * 3; ii < nn; ii++) {
+                        velocity[ii] *= drag;
+                    }
+                }
                 protected float _drag;
             };
         }
@@ -149,7 +164,7 @@ public abstract class InfluenceConfig extends DeepObject
         @Override
         public Influence createInfluence (Layer layer)
         {
-            return new Influence() {
+            return new BatchInfluence() {
                 public void tick (float elapsed) {
                     _drag = amount * elapsed;
                 }
@@ -157,6 +172,17 @@ public abstract class InfluenceConfig extends DeepObject
                     Vector3f velocity = particle.getVelocity();
                     velocity.multLocal(Math.max(0f, 1f - _drag*velocity.length()));
                 }
+                public void apply (ParticleData data, int count) {
+                    float[] velocity = data.velocity;
+                    float drag = _drag;
+                    for (int ii = 0, nn = count * 3; ii < nn; ii += 3) {
+                        float vx = velocity[ii], vy = velocity[ii + 1], vz = velocity[ii + 2];
+                        float scale = Math.max(0f, 1f - drag*FloatMath.sqrt(vx*vx + vy*vy + vz*vz));
+                        velocity[ii] = vx * scale;
+                        velocity[ii + 1] = vy * scale;
+                        velocity[ii + 2] = vz * scale;
+                    }
+                }
                 protected float _drag;
             };
         }
@@ -186,7 +212,7 @@ public abstract class InfluenceConfig extends DeepObject
         @Override
         public Influence createInfluence (final Layer layer)
         {
-            return new Influence() {
+            return new BatchInfluence() {
                 public void tick (float elapsed) {
                     // compute the delta amount
                     _delta = strength * elapsed;
@@ -209,6 +235,19 @@ public abstract class InfluenceConfig extends DeepObject
                     particle.getVelocity().addLocal(
                         _rotation.transformLocal(_vector.multLocal(_delta / length)));
                 }
+                public void apply (ParticleData data, int count) {
+                    float[] position = data.position, velocity = data.velocity;
+                    for (int ii = 0, nn = count * 3; ii < nn; ii += 3) {
+                        _vector.set(position[ii], position[ii + 1], position[ii + 2]);
+                        _taxis.cross(_vector.subtractLocal(_torigin), _vector);
+                        float length = _vector.length();
+                        if (length < FloatMath.EPSILON) {
+                            continue;
+                        }
+                        _rotation.transformLocal(_vector.multLocal(_delta / length));
+                        add(velocity, ii, _vector);
+                    }
+                }
                 protected float _delta;
                 protected Vector3f _torigin = new Vector3f();
                 protected Vector3f _taxis = new Vector3f();
@@ -250,7 +289,7 @@ public abstract class InfluenceConfig extends DeepObject
         @Override
         public Influence createInfluence (final Layer layer)
         {
-            return new Influence() {
+            return new BatchInfluence() {
                 public void tick (float elapsed) {
                     // compute the delta amount
                     _delta = strength * elapsed;
@@ -288,6 +327,30 @@ public abstract class InfluenceConfig extends DeepObject
                     particle.getVelocity().addLocal(
                         _rotation.transformLocal(_vector.crossLocal(_tangent).multLocal(_delta)));
                 }
+                public void apply (ParticleData data, int count) {
+                    float[] position = data.position, velocity = data.velocity;
+                    for (int ii = 0, nn = count * 3; ii < nn; ii += 3) {
+                        _position.set(position[ii], position[ii + 1], position[ii + 2]);
+                        _position.subtractLocal(_torigin);
+                        _taxis.cross(_position, _tangent);
+                        float length = _tangent.length();
+                        if (length < FloatMath.EPSILON) {
+                            continue;
+                        }
+                        _tangent.multLocal(1f / length);
+                        _tangent.cross(_taxis, _vector);
+                        _vector.multLocal(radius).addScaledLocal(
+                            _taxis, height).subtractLocal(_position);
+                        length = _vector.length();
+                        if (length < FloatMath.EPSILON) {
+                            continue;
+                        }
+                        _vector.multLocal(1f / length);
+                        _rotation.fromAngleAxis(-divergence, _tangent);
+                        _rotation.transformLocal(_vector.crossLocal(_tangent).multLocal(_delta));
+                        add(velocity, ii, _vector);
+                    }
+                }
                 protected float _delta;
                 protected Vector3f _torigin = new Vector3f();
                 protected Vector3f _taxis = new Vector3f();
@@ -315,7 +378,7 @@ public abstract class InfluenceConfig extends DeepObject
         @Override
         public Influence createInfluence (Layer layer)
         {
-            return new Influence() {
+            return new BatchInfluence() {
                 public void tick (float elapsed) {
                     // the unscaled strength was based on an expected frame rate of sixty
                     // frames per second
@@ -333,6 +396,17 @@ public abstract class InfluenceConfig extends DeepObject
                         NoiseUtil.getNoise(time, pid + 1) * _sstrength,
                         NoiseUtil.getNoise(time, pid + 2) * _sstrength);
                 }
+                public void apply (ParticleData data, int count) {
+                    float[] velocity = data.velocity;
+                    int[] id = data.id;
+                    for (int ii = 0, idx = 0; ii < count; ii++, idx += 3) {
+                        int pid = id[ii];
+                        float time = _time + (pid & 255) / 256f;
+                        velocity[idx] += NoiseUtil.getNoise(time, pid) * _sstrength;
+                        velocity[idx + 1] += NoiseUtil.getNoise(time, pid + 1) * _sstrength;
+                        velocity[idx + 2] += NoiseUtil.getNoise(time, pid + 2) * _sstrength;
+                    }
+                }
                 protected float _time, _sstrength;
             };
         }
@@ -354,7 +428,7 @@ public abstract class InfluenceConfig extends DeepObject
         @Override
         public Influence createInfluence (Layer layer)
         {
-            return new Influence() {
+            return new BatchInfluence() {
                 public void tick (float elapsed) {
                     _time += elapsed * frequency;
                     _sstrength = strength * elapsed * 60f;
@@ -368,6 +442,17 @@ public abstract class InfluenceConfig extends DeepObject
                         NoiseUtil.getNoise(time, pid + 1) * _sstrength,
                         NoiseUtil.getNoise(time, pid + 2) * _sstrength);
                 }
+                public void apply (ParticleData data, int count) {
+                    float[] position = data.position;
+                    int[] id = data.id;
+                    for (int ii = 0, idx = 0; ii < count; ii++, idx += 3) {
+                        int pid = id[ii];
+                        float time = _time + (pid & 255) / 256f;
+                        position[idx] += NoiseUtil.getNoise(time, pid) * _sstrength;
+                        position[idx + 1] += NoiseUtil.getNoise(time, pid + 1) * _sstrength;
+                        position[idx + 2] += NoiseUtil.getNoise(time, pid + 2) * _sstrength;
+                    }
+                }
                 protected float _time, _sstrength;
             };
         }
@@ -385,13 +470,16 @@ public abstract class InfluenceConfig extends DeepObject
         @Override
         public Influence createInfluence (final Layer layer)
         {
-            return new Influence() {
+            return new BatchInfluence() {
                 public void tick (float elapsed) {
                     acceleration.mult(elapsed, _delta);
                 }
                 public void apply (Particle particle) {
                     particle.getAngularVelocity().addLocal(_delta);
                 }
+                public void apply (ParticleData data, int count) {
+                    add(data.angularVelocity, _delta, count);
+                }
                 protected Vector3f _delta = new Vector3f();
             };
         }
@@ -401,4 +489,27 @@ public abstract class InfluenceConfig extends DeepObject
      * Creates the influence corresponding to this config for the specified layer.
      */
     public abstract Influence createInfluence (Layer layer);
+
+    /**
+     * Adds a vector to the first <code>count</code> triplets of the supplied array.
+     */
+    protected static void add (float[] array, Vector3f vector, int count)
+    {
+        float x = vector.x, y = vector.y, z = vector.z;
+        for (int ii = 0, nn = count * 3; ii < nn; ii += 3) {
+            array[ii] += x;
+            array[ii + 1] += y;
+            array[ii + 2] += z;
+        }
+    }
+
+    /**
+     * Adds a vector to the triplet at the specified offset in the supplied array.
+     */
+    protected static void add (float[] array, int idx, Vector3f vector)
+    {
+        array[idx] += vector.x;
+        array[idx + 1] += vector.y;
+        array[idx + 2] += vector.z;
+    }
 }
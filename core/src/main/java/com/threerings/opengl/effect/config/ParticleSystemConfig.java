@@ -92,6 +92,11 @@ public class ParticleSystemConfig extends BaseParticleSystemConfig
         @Editable(category="appearance", weight=2.5)
         public boolean depthSort;
 
+        /** Whether or not to store the particles in packed arrays rather than as individual
+         * objects (faster for large layers, but only supported for untrailed points and quads). */
+        @Editable(category="appearance", weight=2.5)
+        public boolean packParticles;
+
         /** The render priority (higher priority layers are rendered above lower priority ones). */
         @Editable(category="appearance", weight=2.5, nullable=true)
         public GroupPriority priorityMode;
@@ -134,6 +139,14 @@ public class ParticleSystemConfig extends BaseParticleSystemConfig
             return alignment == Alignment.FIXED;
         }
 
+        /**
+         * Checks whether the layer's particles should be stored in packed arrays.
+         */
+        public boolean shouldPackParticles ()
+        {
+            return packParticles && geometry.supportsPackedParticles();
+        }
+
         @Override
         public void preload (GlContext ctx)
         {
@@ -162,6 +175,14 @@ public class ParticleSystemConfig extends BaseParticleSystemConfig
             return 0;
         }
 
+        /**
+         * Checks whether the geometry can render particles stored in packed arrays.
+         */
+        public boolean supportsPackedParticles ()
+        {
+            return false;
+        }
+
         /**
          * Returns whether or not to move the particle trails with the particles.
          */
@@ -190,6 +211,12 @@ public class ParticleSystemConfig extends BaseParticleSystemConfig
      */
     public static class Points extends ParticleGeometryConfig
     {
+        @Override
+        public boolean supportsPackedParticles ()
+        {
+            return true;
+        }
+
         @Override
         public float getRadius (GlContext ctx)
         {
@@ -270,6 +297,12 @@ public class ParticleSystemConfig extends BaseParticleSystemConfig
         {
         }
 
+        @Override
+        public boolean supportsPackedParticles ()
+        {
+            return segments == 0;
+        }
+
         @Override
         public int getSegments ()
         {
@@ -0,0 +1,217 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.geometry;
+
+import java.nio.FloatBuffer;
+
+import java.util.Arrays;
+
+import com.threerings.math.ArrayMath;
+import com.threerings.math.Matrix4f;
+
+import com.threerings.opengl.renderer.BufferObject;
+import com.threerings.opengl.util.GlContext;
+
+/**
+ * Base class for geometry skinned in software.  The bone matrices are compared with those used
+ * for the last skinning at each update, so that the (potentially expensive) skinning and the
+ * upload are skipped entirely when the pose and view haven't changed.  When the compositor has a
+ * {@link SkinningScheduler}, the skinning itself happens on its worker threads and only the
+ * upload remains on the render thread.
+ */
+public abstract class SkinnedGeometry extends DynamicGeometry
+{
+    /**
+     * Creates a new skinned geometry.
+     *
+     * @param data the array to hold the skinned vertex data (which may be shared with other
+     * instances until the geometry is first skinned off-thread).
+     * @param source the source data: for each vertex, the tangent (if skinning tangents), the
+     * normal (if skinning normals), and the vertex.
+     * @param tidx the index of the first tangent in the data array, or -1 to skip tangents.
+     * @param nidx the index of the first normal in the data array, or -1 to skip normals.
+     * @param vidx the index of the first vertex in the data array.
+     * @param dinc the stride between adjacent vertices in the data array.
+     */
+    public SkinnedGeometry (
+        GlContext ctx, float[] data, BufferObject arrayBuffer, FloatBuffer floatArray,
+        float[] source, Matrix4f[] boneMatrices, int[] boneIndices, float[] boneWeights,
+        int tidx, int nidx, int vidx, int dinc)
+    {
+        super(data, arrayBuffer, floatArray);
+        _ctx = ctx;
+        _source = source;
+        _boneMatrices = boneMatrices;
+        _boneIndices = boneIndices;
+        _boneWeights = boneWeights;
+        _tidx = tidx;
+        _nidx = nidx;
+        _vidx = vidx;
+        _dinc = dinc;
+        _bones = new float[boneMatrices.length * ArrayMath.AFFINE_SIZE];
+        _packed = new float[_bones.length];
+        if (tidx >= 0 || nidx >= 0) {
+            _blended = new float[SKIN_CHUNK_SIZE * ArrayMath.AFFINE_SIZE];
+        }
+    }
+
+    @Override
+    public void update ()
+    {
+        // pack the bone matrices and compare them to the ones with which we last skinned; if
+        // they're the same, the buffer already holds the skinned data
+        ArrayMath.getAffine(_boneMatrices, _packed);
+        if (_skinned && Arrays.equals(_packed, _bones)) {
+            return;
+        }
+        float[] obones = _bones;
+        _bones = _packed;
+        _packed = obones;
+        _skinned = true;
+
+        SkinningScheduler scheduler = getSkinningScheduler();
+        if (scheduler == null) {
+            super.update();
+            return;
+        }
+        if (!_ownData) {
+            // the data may be shared with other instances, so we need our own copy before we
+            // can skin into it in parallel
+            _data = _data.clone();
+            _ownData = true;
+        }
+        scheduler.add(this);
+    }
+
+    /**
+     * Returns the scheduler to use to skin the geometry, or <code>null</code> to skin it
+     * immediately.
+     */
+    protected SkinningScheduler getSkinningScheduler ()
+    {
+        return _ctx.getCompositor().getSkinningScheduler();
+    }
+
+    @Override
+    protected void updateData ()
+    {
+        skinVertices(
+            _source, _data, _bones, _boneIndices, _boneWeights,
+            _tidx, _nidx, _vidx, _dinc, _blended);
+    }
+
+    /**
+     * Skins a set of vertices and (optionally) normals and tangents.  The source array contains,
+     * for each vertex, the tangent (if skinning tangents), the normal (if skinning normals), and
+     * the vertex.
+     *
+     * @param bones the packed bone matrices (see {@link ArrayMath#getAffine(Matrix4f[], float[])}).
+     * @param tidx the index of the first tangent in the destination array, or -1 to skip
+     * tangents.
+     * @param nidx the index of the first normal in the destination array, or -1 to skip normals.
+     * @param vidx the index of the first vertex in the destination array.
+     * @param dinc the stride between adjacent vertices in the destination array.
+     * @param blended an array to hold the blended bone matrices for a chunk of vertices (only
+     * required when skinning tangents or normals).
+     */
+    public static void skinVertices (
+        float[] source, float[] dest, float[] bones, int[] boneIndices, float[] boneWeights,
+        int tidx, int nidx, int vidx, int dinc, float[] blended)
+    {
+        int sinc = 3 + (tidx >= 0 ? 3 : 0) + (nidx >= 0 ? 3 : 0);
+        int vcount = source.length / sinc;
+        if (tidx < 0 && nidx < 0) {
+            // with only the vertices to transform, it's cheaper not to blend the matrices
+            ArrayMath.skinPoints(
+                bones, boneIndices, boneWeights, 4, source, 0, sinc, dest, vidx, dinc, vcount);
+            return;
+        }
+
+        // blend the matrices for each chunk of vertices, then transform the attributes
+        int chunk = blended.length / ArrayMath.AFFINE_SIZE;
+        for (int first = 0; first < vcount; first += chunk) {
+            int count = Math.min(chunk, vcount - first);
+            ArrayMath.blendAffine(bones, boneIndices, boneWeights, 4, first, count, blended);
+            int sidx = first * sinc, didx = first * dinc;
+            if (tidx >= 0) {
+                ArrayMath.transformVectorsEach(
+                    blended, source, sidx, sinc, dest, tidx + didx, dinc, count);
+                sidx += 3;
+            }
+            if (nidx >= 0) {
+                ArrayMath.transformVectorsEach(
+                    blended, source, sidx, sinc, dest, nidx + didx, dinc, count);
+                sidx += 3;
+            }
+            ArrayMath.transformPointsEach(
+                blended, source, sidx, sinc, dest, vidx + didx, dinc, count);
+        }
+    }
+
+    /** The application context. */
+    protected GlContext _ctx;
+
+    /** The source data. */
+    protected float[] _source;
+
+    /** The bone matrices. */
+    protected Matrix4f[] _boneMatrices;
+
+    /** The bone indices and weights for each vertex. */
+    protected int[] _boneIndices;
+    protected float[] _boneWeights;
+
+    /** The indices of the first tangent, normal, and vertex in the data array. */
+    protected int _tidx, _nidx, _vidx;
+
+    /** The stride between adjacent vertices in the data array. */
+    protected int _dinc;
+
+    /** The packed bone matrices with which we last skinned. */
+    protected float[] _bones;
+
+    /** The packed bone matrices for the current update. */
+    protected float[] _packed;
+
+    /** Holds the blended bone matrices for each chunk of vertices. */
+    protected float[] _blended;
+
+    /** Set once we've skinned the data at least once. */
+    protected boolean _skinned;
+
+    /** Set once we've made our own copy of the data array. */
+    protected boolean _ownData;
+
+    /** Skins the data on a worker thread. */
+    protected final Runnable _skinner = new Runnable() {
+        public void run () {
+            updateData();
+        }
+    };
+
+    /** The number of vertices for which we blend the bone matrices at once. */
+    protected static final int SKIN_CHUNK_SIZE = 256;
+}
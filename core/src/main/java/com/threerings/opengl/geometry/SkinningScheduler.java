@@ -0,0 +1,149 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.geometry;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Lists;
+
+import static com.threerings.opengl.Log.log;
+
+/**
+ * Skins {@link SkinnedGeometry} instances on a pool of worker threads.  Geometries are added as
+ * they are enqueued (only those whose bone matrices have changed since they were last skinned
+ * are added at all), and their skinning starts immediately, overlapping with the rest of the
+ * enqueueing on the render thread.  {@link #finish}, called by the compositor before rendering
+ * the queues, waits for the skinning to complete and uploads the results on the render thread.
+ */
+public class SkinningScheduler
+{
+    /**
+     * Creates a new scheduler with one worker per available processor, less one for the render
+     * thread.
+     */
+    public SkinningScheduler ()
+    {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Creates a new scheduler with the specified number of worker threads.
+     */
+    public SkinningScheduler (int threads)
+    {
+        _executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread (Runnable runnable) {
+                Thread thread = new Thread(runnable,
+                    "Skinning Worker " + _threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Adds a geometry to skin before the next call to {@link #finish}.
+     */
+    public void add (SkinnedGeometry geometry)
+    {
+        _geometries.add(geometry);
+        _futures.add(_executor.submit(geometry._skinner));
+    }
+
+    /**
+     * Waits for the skinning of all geometries added since the last call to complete and uploads
+     * the results.  This must be called on the render thread.
+     */
+    public void finish ()
+    {
+        long start = System.nanoTime();
+        int count = _geometries.size();
+        for (int ii = 0; ii < count; ii++) {
+            try {
+                _futures.get(ii).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                log.warning("Error skinning geometry.", e.getCause());
+            }
+            _geometries.get(ii).uploadData();
+        }
+        _geometries.clear();
+        _futures.clear();
+        _lastCount = count;
+        _lastNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Returns the number of geometries skinned in the last batch.
+     */
+    public int getLastCount ()
+    {
+        return _lastCount;
+    }
+
+    /**
+     * Returns the time spent on the render thread waiting for and uploading the last batch, in
+     * nanoseconds.
+     */
+    public long getLastNanos ()
+    {
+        return _lastNanos;
+    }
+
+    /**
+     * Shuts down the worker threads.
+     */
+    public void shutdown ()
+    {
+        finish();
+        _executor.shutdown();
+    }
+
+    /** The worker pool. */
+    protected ExecutorService _executor;
+
+    /** The geometries in the current batch, in the order in which they were added. */
+    protected List<SkinnedGeometry> _geometries = Lists.newArrayList();
+
+    /** The futures of the skinning tasks for the current batch. */
+    protected List<Future<?>> _futures = Lists.newArrayList();
+
+    /** The number of geometries in the last batch. */
+    protected int _lastCount;
+
+    /** The time spent finishing the last batch. */
+    protected long _lastNanos;
+
+    /** Used to number the worker threads. */
+    protected static final AtomicInteger _threadCount = new AtomicInteger();
+}
@@ -41,8 +41,8 @@ import com.threerings.math.Matrix4f;
 import com.threerings.math.Vector3f;
 import com.threerings.util.DeepObject;
 
-import com.threerings.opengl.geometry.DynamicGeometry;
 import com.threerings.opengl.geometry.Geometry;
+import com.threerings.opengl.geometry.SkinnedGeometry;
 import com.threerings.opengl.renderer.BufferObject;
 import com.threerings.opengl.renderer.ClientArray;
 import com.threerings.opengl.renderer.SimpleBatch.DrawCommand;
@@ -131,16 +131,18 @@ public abstract class DeformerConfig extends DeepObject
             }
             final ArrayState[] arrayStates = config.createArrayStates(
                 ctx, passes, summary, false, vbos, arrayBuffer, floatArray);
-            final int tangentOffset = tangents ? getTangentOffset(passes, arrayStates) : 0;
-            final int normalOffset = normals ? getNormalOffset(arrayStates) : 0;
+            int tangentOffset = tangents ? getTangentOffset(passes, arrayStates) : -1;
+            int normalOffset = normals ? getNormalOffset(arrayStates) : -1;
             ClientArray vertexArray = arrayStates[0].getVertexArray();
-            final int vertexOffset = (int)(vertexArray.offset / 4);
-            final int vertexStride = vertexArray.stride / 4;
+            int vertexOffset = (int)(vertexArray.offset / 4);
+            int vertexStride = vertexArray.stride / 4;
 
             // finally, create the draw command and the geometry itself
             final Vector3f center = config.bounds.getCenter();
             final DrawCommand drawCommand = config.createDrawCommand(vbos);
-            return new DynamicGeometry(dest, arrayBuffer, floatArray) {
+            return new SkinnedGeometry(
+                    ctx, dest, arrayBuffer, floatArray, source, boneMatrices, boneIndices,
+                    boneWeights, tangentOffset, normalOffset, vertexOffset, vertexStride) {
                 public CoordSpace getCoordSpace (int pass) {
                     return CoordSpace.EYE;
                 }
@@ -153,22 +155,6 @@ public abstract class DeformerConfig extends DeepObject
                 public DrawCommand getDrawCommand (int pass) {
                     return drawCommand;
                 }
-                protected void updateData () {
-                    // skin based on attributes
-                    if (tangents && normals) {
-                        skinVertices(
-                            source, _data, boneMatrices, boneIndices, boneWeights,
-                            tangentOffset, normalOffset, vertexOffset, vertexStride);
-                    } else if (normals) {
-                        skinVertices(
-                            source, _data, boneMatrices, boneIndices, boneWeights,
-                            normalOffset, vertexOffset, vertexStride);
-                    } else {
-                        skinVertices(
-                            source, _data, boneMatrices, boneIndices,
-                            boneWeights, vertexOffset, vertexStride);
-                    }
-                }
             };
         }
 
@@ -206,148 +192,4 @@ public abstract class DeformerConfig extends DeepObject
      */
     public abstract Geometry createGeometry (
         GlContext ctx, Scope scope, GeometryConfig.Stored config, PassDescriptor[] passes);
-
-    /**
-     * Skins a set of vertices, normals, and tangents.
-     *
-     * @param tidx the index of the first tangent in the destination array.
-     * @param nidx the index of the first normal in the destination array.
-     * @param vidx the index of the first vertex in the destination array.
-     * @param dinc the stride between adjacent vertices in the destination array.
-     */
-    protected static void skinVertices (
-        float[] source, float[] dest, Matrix4f[] boneMatrices, int[] boneIndices,
-        float[] boneWeights, int tidx, int nidx, int vidx, int dinc)
-    {
-        for (int sidx = 0, bidx = 0; sidx < source.length; ) {
-            // retrieve the source tangent, normal, and vertex
-            float stx = source[sidx++], sty = source[sidx++], stz = source[sidx++];
-            float snx = source[sidx++], sny = source[sidx++], snz = source[sidx++];
-            float svx = source[sidx++], svy = source[sidx++], svz = source[sidx++];
-
-            // blend in the tangent, normal, and vertex as transformed by each indexed bone matrix
-            float dtx = 0f, dty = 0f, dtz = 0f;
-            float dnx = 0f, dny = 0f, dnz = 0f;
-            float dvx = 0f, dvy = 0f, dvz = 0f;
-            for (int ii = 0; ii < 4; ii++) {
-                Matrix4f m = boneMatrices[boneIndices[bidx]];
-                float weight = boneWeights[bidx++];
-
-                float m00 = m.m00, m10 = m.m10, m20 = m.m20;
-                float m01 = m.m01, m11 = m.m11, m21 = m.m21;
-                float m02 = m.m02, m12 = m.m12, m22 = m.m22;
-                dtx += (m00*stx + m10*sty + m20*stz) * weight;
-                dty += (m01*stx + m11*sty + m21*stz) * weight;
-                dtz += (m02*stx + m12*sty + m22*stz) * weight;
-
-                dnx += (m00*snx + m10*sny + m20*snz) * weight;
-                dny += (m01*snx + m11*sny + m21*snz) * weight;
-                dnz += (m02*snx + m12*sny + m22*snz) * weight;
-
-                dvx += (m00*svx + m10*svy + m20*svz + m.m30) * weight;
-                dvy += (m01*svx + m11*svy + m21*svz + m.m31) * weight;
-                dvz += (m02*svx + m12*svy + m22*svz + m.m32) * weight;
-            }
-
-            // write the blended tangent
-            dest[tidx] = dtx;
-            dest[tidx + 1] = dty;
-            dest[tidx + 2] = dtz;
-            tidx += dinc;
-
-            // and normal
-            dest[nidx] = dnx;
-            dest[nidx + 1] = dny;
-            dest[nidx + 2] = dnz;
-            nidx += dinc;
-
-            // and vertex
-            dest[vidx] = dvx;
-            dest[vidx + 1] = dvy;
-            dest[vidx + 2] = dvz;
-            vidx += dinc;
-        }
-    }
-
-    /**
-     * Skins a set of vertices and normals.
-     *
-     * @param nidx the index of the first normal in the destination array.
-     * @param vidx the index of the first vertex in the destination array.
-     * @param dinc the stride between adjacent vertices in the destination array.
-     */
-    protected static void skinVertices (
-        float[] source, float[] dest, Matrix4f[] boneMatrices,
-        int[] boneIndices, float[] boneWeights, int nidx, int vidx, int dinc)
-    {
-        for (int sidx = 0, bidx = 0; sidx < source.length; ) {
-            // retrieve the source normal and vertex
-            float snx = source[sidx++], sny = source[sidx++], snz = source[sidx++];
-            float svx = source[sidx++], svy = source[sidx++], svz = source[sidx++];
-
-            // blend in the normal and vertex as transformed by each indexed bone matrix
-            float dnx = 0f, dny = 0f, dnz = 0f;
-            float dvx = 0f, dvy = 0f, dvz = 0f;
-            for (int ii = 0; ii < 4; ii++) {
-                Matrix4f m = boneMatrices[boneIndices[bidx]];
-                float weight = boneWeights[bidx++];
-
-                float m00 = m.m00, m10 = m.m10, m20 = m.m20;
-                float m01 = m.m01, m11 = m.m11, m21 = m.m21;
-                float m02 = m.m02, m12 = m.m12, m22 = m.m22;
-                dnx += (m00*snx + m10*sny + m20*snz) * weight;
-                dny += (m01*snx + m11*sny + m21*snz) * weight;
-                dnz += (m02*snx + m12*sny + m22*snz) * weight;
-
-                dvx += (m00*svx + m10*svy + m20*svz + m.m30) * weight;
-                dvy += (m01*svx + m11*svy + m21*svz + m.m31) * weight;
-                dvz += (m02*svx + m12*svy + m22*svz + m.m32) * weight;
-            }
-
-            // write the blended normal
-            dest[nidx] = dnx;
-            dest[nidx + 1] = dny;
-            dest[nidx + 2] = dnz;
-            nidx += dinc;
-
-            // and vertex
-            dest[vidx] = dvx;
-            dest[vidx + 1] = dvy;
-            dest[vidx + 2] = dvz;
-            vidx += dinc;
-        }
-    }
-
-    /**
-     * Skins a set of vertices.
-     *
-     * @param vidx the index of the first vertex in the destination array.
-     * @param dinc the stride between adjacent vertices in the destination array.
-     */
-    protected static void skinVertices (
-        float[] source, float[] dest, Matrix4f[] boneMatrices,
-        int[] boneIndices, float[] boneWeights, int vidx, int dinc)
-    {
-        for (int sidx = 0, bidx = 0; sidx < source.length; ) {
-            // retrieve the source vertex
-            float svx = source[sidx++], svy = source[sidx++], svz = source[sidx++];
-
-            // blend in the vertex as transformed by each indexed bone matrix
-            float dvx = 0f, dvy = 0f, dvz = 0f;
-            for (int ii = 0; ii < 4; ii++) {
-                Matrix4f m = boneMatrices[boneIndices[bidx]];
-                float weight = boneWeights[bidx++];
-
-                dvx += (m.m00*svx + m.m10*svy + m.m20*svz + m.m30) * weight;
-                dvy += (m.m01*svx + m.m11*svy + m.m21*svz + m.m31) * weight;
-                dvz += (m.m02*svx + m.m12*svy + m.m22*svz + m.m32) * weight;
-            }
-
-            // write the blended vertex
-            dest[vidx] = dvx;
-            dest[vidx + 1] = dvy;
-            dest[vidx + 2] = dvz;
-            vidx += dinc;
-        }
-    }
 }
@@ -48,6 +48,7 @@ import com.threerings.export.Exportable;
 import com.threerings.expr.Function;
 import com.threerings.expr.Scope;
 import com.threerings.expr.util.ScopeUtil;
+import com.threerings.math.ArrayMath;
 import com.threerings.math.Box;
 import com.threerings.math.Matrix4f;
 import com.threerings.math.Transform3D;
@@ -459,6 +460,7 @@ public abstract class GeometryConfig extends DeepObject
             merged.vertexArray = new ClientArrayConfig(
                 vertexArray.size, vertexArray.stride, vertexArray.offset, vbuf);
             int vpos = 0;
+            float[] matrix = new float[ArrayMath.AFFINE_SIZE];
             for (int ii = merge.size() - 1; ii >= 0; ii--) {
                 TransformedGeometry tgeom = merge.get(ii);
                 Stored stored = (Stored)tgeom.geometry;
@@ -475,34 +477,14 @@ public abstract class GeometryConfig extends DeepObject
 
                 // then transform the vertices and normals in-place
                 tgeom.transform.update(Transform3D.AFFINE);
-                Matrix4f mat = tgeom.transform.getMatrix();
-                int voff = vertexArray.offset / 4;
-                if (normalArray == null) {
-                    for (int jj = 0; jj < count; jj++) {
-                        int pos = vpos + voff;
-                        float vx = vbuf.get(pos), vy = vbuf.get(pos + 1), vz = vbuf.get(pos + 2);
-                        vbuf.put(pos, mat.m00*vx + mat.m10*vy + mat.m20*vz + mat.m30);
-                        vbuf.put(pos + 1, mat.m01*vx + mat.m11*vy + mat.m21*vz + mat.m31);
-                        vbuf.put(pos + 2, mat.m02*vx + mat.m12*vy + mat.m22*vz + mat.m32);
-                        vpos += stride;
-                    }
-                } else {
-                    int noff = normalArray.offset / 4;
-                    for (int jj = 0; jj < count; jj++) {
-                        int pos = vpos + voff;
-                        float vx = vbuf.get(pos), vy = vbuf.get(pos + 1), vz = vbuf.get(pos + 2);
-                        vbuf.put(pos, mat.m00*vx + mat.m10*vy + mat.m20*vz + mat.m30);
-                        vbuf.put(pos + 1, mat.m01*vx + mat.m11*vy + mat.m21*vz + mat.m31);
-                        vbuf.put(pos + 2, mat.m02*vx + mat.m12*vy + mat.m22*vz + mat.m32);
-
-                        pos = vpos + noff;
-                        float nx = vbuf.get(pos), ny = vbuf.get(pos + 1), nz = vbuf.get(pos + 2);
-                        vbuf.put(pos, mat.m00*nx + mat.m10*ny + mat.m20*nz);
-                        vbuf.put(pos + 1, mat.m01*nx + mat.m11*ny + mat.m21*nz);
-                        vbuf.put(pos + 2, mat.m02*nx + mat.m12*ny + mat.m22*nz);
-                        vpos += stride;
-                    }
+                ArrayMath.getAffine(tgeom.transform.getMatrix(), matrix, 0);
+                ArrayMath.transformPoints(
+                    matrix, 0, vbuf, vpos + vertexArray.offset / 4, stride, count);
+                if (normalArray != null) {
+                    ArrayMath.transformVectors(
+                        matrix, 0, vbuf, vpos + normalArray.offset / 4, stride, count);
                 }
+                vpos += count * stride;
             }
             vbuf.rewind();
             return merged;
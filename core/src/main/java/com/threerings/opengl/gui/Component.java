@@ -48,6 +48,7 @@ import com.threerings.math.Transform2D;
 import com.threerings.math.Vector2f;
 
 import com.threerings.opengl.renderer.Color4f;
+import com.threerings.opengl.renderer.QuadBatch;
 import com.threerings.opengl.renderer.Renderer;
 import com.threerings.opengl.util.GlContext;
 
@@ -891,11 +892,13 @@ public class Component
         if (!_visible) {
             return;
         }
+        QuadBatch batch = renderer.getQuadBatch();
         if (_offset != null) {
+            batch.pushTransform();
             GL11.glPushMatrix();
             applyTransform();
         } else {
-            GL11.glTranslatef(_x, _y, 0);
+            batch.translate(_x, _y);
         }
 
         try {
@@ -910,9 +913,10 @@ public class Component
 
         } finally {
             if (_offset != null) {
+                batch.popTransform();
                 GL11.glPopMatrix();
             } else {
-                GL11.glTranslatef(-_x, -_y, 0);
+                batch.translate(-_x, -_y);
             }
         }
     }
@@ -178,19 +178,9 @@ public class Image
         float uy = (sy+sheight) / (float)_theight;
 
         float a = color.a * alpha;
-        renderer.setColorState(color.r * a, color.g * a, color.b * a, a);
-        renderer.setTextureState(_units);
-        renderer.setMatrixMode(GL11.GL_MODELVIEW);
-        GL11.glBegin(GL11.GL_QUADS);
-        GL11.glTexCoord2f(lx, ly);
-        GL11.glVertex2f(tx, ty);
-        GL11.glTexCoord2f(ux, ly);
-        GL11.glVertex2f(tx + twidth, ty);
-        GL11.glTexCoord2f(ux, uy);
-        GL11.glVertex2f(tx + twidth, ty + theight);
-        GL11.glTexCoord2f(lx, uy);
-        GL11.glVertex2f(tx, ty + theight);
-        GL11.glEnd();
+        renderer.getQuadBatch().add(
+            _units, tx, ty, tx + twidth, ty + theight, lx, ly, ux, uy,
+            color.r * a, color.g * a, color.b * a, a);
     }
 
     /**
@@ -60,6 +60,7 @@ import com.threerings.opengl.model.Model;
 import com.threerings.opengl.model.ModelAdapter;
 import com.threerings.opengl.model.config.ModelConfig;
 import com.threerings.opengl.renderer.Color4f;
+import com.threerings.opengl.renderer.QuadBatch;
 import com.threerings.opengl.renderer.Renderer;
 import com.threerings.opengl.renderer.Texture2D;
 import com.threerings.opengl.renderer.TextureRenderer;
@@ -416,6 +417,9 @@ public class RenderableView extends Component
         _viewTransformState.getModelview().set(_viewTransform);
         _viewTransformState.setDirty(true);
 
+        // the contents are rendered in their own space, so stop tracking the GUI's translation
+        QuadBatch batch = renderer.getQuadBatch();
+        batch.pushTransform();
         try {
             // push the modelview matrix
             if (!_static) {
@@ -464,6 +468,9 @@ public class RenderableView extends Component
             group.renderQueues(RenderQueue.NORMAL_TYPE);
 
         } finally {
+            // draw anything batched in the space of the contents
+            batch.popTransform();
+
             // clear out the dependencies, render queues
             compositor.clearDependencies();
             group.clearQueues();
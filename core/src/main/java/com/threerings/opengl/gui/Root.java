@@ -755,6 +755,9 @@ public abstract class Root extends SimpleOverlay
             _dicon.render(
                 renderer, _mouseX - _dicon.getWidth()/2, _mouseY - _dicon.getHeight()/2, 0.5f);
         }
+
+        // draw anything left in the quad batch
+        renderer.getQuadBatch().flush();
     }
 
     /**
@@ -25,12 +25,11 @@
 
 package com.threerings.opengl.gui;
 
-import org.lwjgl.opengl.GL11;
-
 import java.util.Collection;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.threerings.opengl.renderer.QuadBatch;
 import com.threerings.opengl.renderer.Renderer;
 import com.threerings.opengl.util.GlContext;
 
@@ -395,7 +394,8 @@ public abstract class ScrollingList<V, C extends Component> extends Container
         protected void renderComponent (Renderer renderer)
         {
             Insets insets = getInsets();
-            GL11.glTranslatef(0, _offset, 0);
+            QuadBatch batch = renderer.getQuadBatch();
+            batch.translate(0, _offset);
             Rectangle oscissor = intersectScissor(
                 renderer, _srect,
                 getAbsoluteX() + insets.left,
@@ -409,7 +409,7 @@ public abstract class ScrollingList<V, C extends Component> extends Container
                 }
             } finally {
                 renderer.setScissor(oscissor);
-                GL11.glTranslatef(0, -_offset, 0);
+                batch.translate(0, -_offset);
             }
         }
 
@@ -121,9 +121,10 @@ public class CharacterTextFactory extends TextFactory
      */
     public void render (Renderer renderer, String text, int x, int y, Color4f color)
     {
+        float a = color.a;
         for (int ii = 0, nn = text.length(); ii < nn; ii++) {
             Glyph glyph = getGlyph(text.charAt(ii));
-            glyph.render(renderer, x, y);
+            glyph.render(renderer, x, y, color.r * a, color.g * a, color.b * a, a);
             x += glyph.width;
         }
     }
@@ -208,10 +209,9 @@ public class CharacterTextFactory extends TextFactory
             }
             protected void renderGlyphs (
                 Renderer renderer, Glyph[] glyphs, Color4f color, int x, int y, float alpha) {
-                float a = color.a * alpha;
-                renderer.setColorState(color.r * a, color.g * a, color.b * a, a);
+                float a = color.a * alpha, r = color.r * a, g = color.g * a, b = color.b * a;
                 for (Glyph glyph : glyphs) {
-                    glyph.render(renderer, x, y);
+                    glyph.render(renderer, x, y, r, g, b, a);
                     x += glyph.width;
                 }
             }
@@ -367,9 +367,10 @@ public class CharacterTextFactory extends TextFactory
         }
 
         /**
-         * Renders this glyph at the specified position.
+         * Renders this glyph at the specified position in the specified (premultiplied) color.
          */
-        public void render (Renderer renderer, int x, int y)
+        public void render (
+            Renderer renderer, int x, int y, float r, float g, float b, float a)
         {
             if (_units == null) {
                 if (_bounds == null) {
@@ -398,18 +399,7 @@ public class CharacterTextFactory extends TextFactory
             int ux = lx + _bounds.width;
             int uy = ly + _bounds.height;
 
-            renderer.setTextureState(_units);
-            renderer.setMatrixMode(GL11.GL_MODELVIEW);
-            GL11.glBegin(GL11.GL_QUADS);
-            GL11.glTexCoord2f(_s1, _t1);
-            GL11.glVertex2f(lx, ly);
-            GL11.glTexCoord2f(_s2, _t1);
-            GL11.glVertex2f(ux, ly);
-            GL11.glTexCoord2f(_s2, _t2);
-            GL11.glVertex2f(ux, uy);
-            GL11.glTexCoord2f(_s1, _t2);
-            GL11.glVertex2f(lx, uy);
-            GL11.glEnd();
+            renderer.getQuadBatch().add(_units, lx, ly, ux, uy, _s1, _t1, _s2, _t2, r, g, b, a);
         }
 
         /** The glyph character. */
@@ -416,6 +416,7 @@ public class TechniqueConfig extends DeepObject
                 batch.getBatches().add(simple);
                 if (batch.key == null) {
                     batch.key = simple.key;
+                    batch.stateKey = simple.stateKey;
                 }
             }
             return batch;
@@ -152,6 +152,38 @@ public class Animation extends SimpleScope
             return false;
         }
 
+        /**
+         * Checks whether this animation's transforms may be updated or blended on a thread other
+         * than the render thread (concurrently with other models).
+         */
+        public boolean canEvaluateInParallel ()
+        {
+            return true;
+        }
+
+        /**
+         * Adds the state that determines this animation's contribution to the pose to the
+         * supplied key, so that the pose may be shared with other instances.
+         *
+         * @param quantization if greater than zero, the number of steps between frames to which
+         * the animation phase should be rounded.
+         * @param blending whether the animation is being blended with others (in which case its
+         * weight affects the pose).
+         * @return false if the pose can't be shared.
+         */
+        public boolean addPoseKey (PoseCache.Key key, int quantization, boolean blending)
+        {
+            return false;
+        }
+
+        /**
+         * Returns the nodes whose transforms this animation sets, for pose sharing.
+         */
+        public Articulated.Node[] getPoseTargets ()
+        {
+            return null;
+        }
+
         /**
          * Updates the transforms directly from this animation.
          */
@@ -295,6 +327,49 @@ public class Animation extends SimpleScope
                 _fidx = 0;
                 _eidx = 0;
             }
+            _promoted = false;
+            _quantization = 0;
+        }
+
+        @Override
+        public boolean canEvaluateInParallel ()
+        {
+            // interpolation lazily creates the alternate representations of the (shared)
+            // keyframes, so we create them all up front, before any other thread can see them
+            if (!_promoted) {
+                for (Transform3D[] frame : _transforms) {
+                    for (Transform3D transform : frame) {
+                        if (transform != null) {
+                            transform.update(Transform3D.RIGID);
+                            transform.update(Transform3D.AFFINE);
+                        }
+                    }
+                }
+                _promoted = true;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean addPoseKey (PoseCache.Key key, int quantization, boolean blending)
+        {
+            if (_transitioning) {
+                return false; // the snapshot is specific to this instance
+            }
+            _quantization = quantization;
+            key.add(_config);
+            key.add(_fidx);
+            key.add(getPhase());
+            if (blending) {
+                key.add(_weight);
+            }
+            return true;
+        }
+
+        @Override
+        public Articulated.Node[] getPoseTargets ()
+        {
+            return _targets;
         }
 
         @Override
@@ -411,11 +486,12 @@ public class Animation extends SimpleScope
                 t1 = _transforms[_fidx];
                 t2 = _transforms[(_fidx + 1) % _transforms.length];
             }
+            float phase = getPhase();
             for (int ii = 0; ii < _targets.length; ii++) {
                 // lerp into the target transform
                 Articulated.Node target = _targets[ii];
                 if (target != null) {
-                    t1[ii].lerp(t2[ii], _accum, target.getLocalTransform());
+                    t1[ii].lerp(t2[ii], phase, target.getLocalTransform());
                 }
             }
         }
@@ -431,6 +507,7 @@ public class Animation extends SimpleScope
                 t1 = _transforms[_fidx];
                 t2 = _transforms[(_fidx + 1) % _transforms.length];
             }
+            float phase = getPhase();
             for (int ii = 0; ii < _targets.length; ii++) {
                 // first make sure the target exists
                 Articulated.Node target = _targets[ii];
@@ -439,7 +516,7 @@ public class Animation extends SimpleScope
                 }
                 // then see if we're the first to touch it, in which case we can lerp directly
                 if (target.lastUpdate != update) {
-                    t1[ii].lerp(t2[ii], _accum, target.getLocalTransform());
+                    t1[ii].lerp(t2[ii], phase, target.getLocalTransform());
                     target.lastUpdate = update;
                     target.totalWeight = _weight;
                     continue;
@@ -450,7 +527,7 @@ public class Animation extends SimpleScope
                     continue;
                 }
                 float mweight = Math.min(_weight, 1f - target.totalWeight);
-                t1[ii].lerp(t2[ii], _accum, _xform);
+                t1[ii].lerp(t2[ii], phase, _xform);
                 target.getLocalTransform().lerpLocal(
                     _xform, mweight / (target.totalWeight += mweight));
             }
@@ -465,6 +542,16 @@ public class Animation extends SimpleScope
             }
         }
 
+        /**
+         * Returns the interpolation parameter between the current frame and the next (or the
+         * transition progress), rounded to the quantization step, if any.
+         */
+        protected float getPhase ()
+        {
+            return (_quantization > 0 && !_transitioning) ?
+                Math.round(_accum * _quantization) / (float)_quantization : _accum;
+        }
+
         /**
          * Returns the animation's frame rate.
          */
@@ -522,6 +609,12 @@ public class Animation extends SimpleScope
 
         /** A temporary transform for interpolation. */
         protected Transform3D _xform = new Transform3D();
+
+        /** Whether or not we've created all representations of the keyframe transforms. */
+        protected boolean _promoted;
+
+        /** The number of steps between frames to which to round the phase, or zero for none. */
+        protected int _quantization;
     }
 
     /**
@@ -612,6 +705,12 @@ public class Animation extends SimpleScope
             return _completed;
         }
 
+        @Override
+        public boolean canEvaluateInParallel ()
+        {
+            return false; // the transform expressions may reach outside the model
+        }
+
         @Override
         public void updateTransforms ()
         {
@@ -880,6 +979,24 @@ public class Animation extends SimpleScope
             return _animations[_aidx].hasCompleted();
         }
 
+        @Override
+        public boolean canEvaluateInParallel ()
+        {
+            return _animations[_aidx].canEvaluateInParallel();
+        }
+
+        @Override
+        public boolean addPoseKey (PoseCache.Key key, int quantization, boolean blending)
+        {
+            return _animations[_aidx].addPoseKey(key, quantization, blending);
+        }
+
+        @Override
+        public Articulated.Node[] getPoseTargets ()
+        {
+            return _animations[_aidx].getPoseTargets();
+        }
+
         @Override
         public void updateTransforms ()
         {
@@ -1109,6 +1226,34 @@ public class Animation extends SimpleScope
         return _impl.hasCompleted();
     }
 
+    /**
+     * Checks whether this animation's transforms may be updated or blended on a thread other than
+     * the render thread.
+     */
+    public boolean canEvaluateInParallel ()
+    {
+        return _impl.canEvaluateInParallel();
+    }
+
+    /**
+     * Adds the state that determines this animation's contribution to the pose to the supplied
+     * key, so that the pose may be shared with other instances.
+     *
+     * @return false if the pose can't be shared.
+     */
+    public boolean addPoseKey (PoseCache.Key key, int quantization, boolean blending)
+    {
+        return _impl.addPoseKey(key, quantization, blending);
+    }
+
+    /**
+     * Returns the nodes whose transforms this animation sets, for pose sharing.
+     */
+    public Articulated.Node[] getPoseTargets ()
+    {
+        return _impl.getPoseTargets();
+    }
+
     /**
      * Updates the transforms directly from this animation.
      */
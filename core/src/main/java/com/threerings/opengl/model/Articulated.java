@@ -628,47 +628,41 @@ public class Articulated extends Model.Implementation
         }
     }
 
+    @Override
+    public boolean prepareTick (float elapsed, PoseEvaluator evaluator)
+    {
+        if (_completed || _prepared) {
+            return false;
+        }
+        beginTick(elapsed);
+        _prepared = true;
+        if (canEvaluateInParallel()) {
+            evaluator.add(this);
+        } else {
+            evaluatePose();
+        }
+        return true;
+    }
+
     @Override
     public void tick (float elapsed)
     {
         // return immediately if completed
         if (_completed) {
+            _prepared = false;
             return;
         }
 
-        // update the world transform
-        if (_parentWorldTransform == null) {
-            _worldTransform.set(_localTransform);
+        // if we haven't already been prepared, do the first part of the tick now
+        if (_prepared) {
+            _prepared = false;
         } else {
-            _parentWorldTransform.compose(_localTransform, _worldTransform);
-        }
-
-        // initialize the bounds
-        _config.skin.bounds.transform(_worldTransform, _nbounds);
-
-        // start the automatic animations if appropriate
-        if (!_started) {
-            for (int ii = 0; ii < _animations.length; ii++) {
-               if (_config.animationMappings[ii].startAutomatically) {
-                   _animations[ii].start();
-               }
-            }
-            _started = true;
+            beginTick(elapsed);
+            evaluatePose();
         }
 
-        // copy the tracks to an array so that callbacks can manipulate the list;
-        // note if any tracks have completed
-        boolean tracksCompleted = false;
-        _playingArray = _playing.toArray(_playingArray);
-        for (int ii = 0, nn = _playing.size(); ii < nn; ii++) {
-            tracksCompleted |= _playingArray[ii].tick(elapsed);
-        }
-
-        // update the local node transforms
-        updateTransforms();
-
         // if any tracks have completed, remove them
-        if (tracksCompleted) {
+        if (_tracksCompleted) {
             for (int ii = _playing.size() - 1; ii >= 0; ii--) {
                 Animation animation = _playing.get(ii);
                 if (animation.hasCompleted()) {
@@ -677,11 +671,6 @@ public class Articulated extends Model.Implementation
             }
         }
 
-        // update the nodes and expand the bounds
-        for (Node node : _nodes) {
-            node.update();
-        }
-
         // tick the configured attachments
         _completed = _config.completable && _playing.isEmpty();
         for (Model model : _configAttachments) {
@@ -997,10 +986,147 @@ public class Articulated extends Model.Implementation
         }
     }
 
+    /**
+     * Performs the first part of the tick: updates the world transform and initializes the
+     * bounds, then ticks the animations (notifying any observers).
+     */
+    protected void beginTick (float elapsed)
+    {
+        // update the world transform
+        if (_parentWorldTransform == null) {
+            _worldTransform.set(_localTransform);
+        } else {
+            _parentWorldTransform.compose(_localTransform, _worldTransform);
+        }
+
+        // initialize the bounds
+        _config.skin.bounds.transform(_worldTransform, _nbounds);
+
+        // start the automatic animations if appropriate
+        if (!_started) {
+            for (int ii = 0; ii < _animations.length; ii++) {
+               if (_config.animationMappings[ii].startAutomatically) {
+                   _animations[ii].start();
+               }
+            }
+            _started = true;
+        }
+
+        // copy the tracks to an array so that callbacks can manipulate the list;
+        // note if any tracks have completed
+        _tracksCompleted = false;
+        _playingArray = _playing.toArray(_playingArray);
+        for (int ii = 0, nn = _playing.size(); ii < nn; ii++) {
+            _tracksCompleted |= _playingArray[ii].tick(elapsed);
+        }
+    }
+
+    /**
+     * Updates the local node transforms from the animations, then the nodes' world transforms
+     * and the bounds.  This touches only the state of this model, so when
+     * {@link #canEvaluateInParallel} returns true, it may be called from a worker thread.
+     */
+    protected void evaluatePose ()
+    {
+        // update the local node transforms
+        updateTransforms();
+
+        // update the nodes and expand the bounds
+        for (Node node : _nodes) {
+            node.update();
+        }
+    }
+
+    /**
+     * Checks whether the pose may be evaluated on a thread other than the render thread: that
+     * is, whether none of the nodes have world transform updaters (which may depend on other
+     * models) and all of the playing animations can be evaluated in parallel.
+     */
+    protected boolean canEvaluateInParallel ()
+    {
+        for (Node node : _nodes) {
+            if (node._updater instanceof WorldTransformUpdater) {
+                return false;
+            }
+        }
+        for (int ii = 0, nn = _playing.size(); ii < nn; ii++) {
+            if (!_playing.get(ii).canEvaluateInParallel()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cancels a prepared tick that was never completed, so that the next tick starts afresh.
+     */
+    protected void cancelPreparedTick ()
+    {
+        _prepared = false;
+    }
+
     /**
      * Updates the node transforms based on the current animation state.
      */
     protected void updateTransforms ()
+    {
+        if (!(_config.sharePoses && _poseCache != null && updateSharedTransforms())) {
+            computeTransforms();
+        }
+    }
+
+    /**
+     * Attempts to update the node transforms using (or populating) the shared pose cache.
+     *
+     * @return true if the transforms were updated, false if the pose can't be shared.
+     */
+    protected boolean updateSharedTransforms ()
+    {
+        int nn = _playing.size();
+        if (nn == 0) {
+            return false;
+        }
+        _poseKey.clear();
+        _poseKey.add(_config);
+        for (int ii = 0; ii < nn; ii++) {
+            if (!_playing.get(ii).addPoseKey(_poseKey, _config.poseQuantization, nn > 1)) {
+                return false;
+            }
+        }
+        Transform3D[][] pose = _poseCache.get(_poseKey);
+        if (pose != null) {
+            for (int ii = 0; ii < nn; ii++) {
+                Node[] targets = _playing.get(ii).getPoseTargets();
+                Transform3D[] xforms = pose[ii];
+                for (int jj = 0; jj < targets.length; jj++) {
+                    Node target = targets[jj];
+                    if (target != null) {
+                        target.getLocalTransform().set(xforms[jj]);
+                    }
+                }
+            }
+            return true;
+        }
+        computeTransforms();
+        pose = new Transform3D[nn][];
+        for (int ii = 0; ii < nn; ii++) {
+            Node[] targets = _playing.get(ii).getPoseTargets();
+            Transform3D[] xforms = pose[ii] = new Transform3D[targets.length];
+            for (int jj = 0; jj < targets.length; jj++) {
+                Node target = targets[jj];
+                if (target != null) {
+                    xforms[jj] = new Transform3D(target.getLocalTransform());
+                }
+            }
+        }
+        _poseCache.put(_poseKey, pose);
+        return true;
+    }
+
+    /**
+     * Computes the node transforms from the playing animations.
+     */
+    protected void computeTransforms ()
     {
         // handle the special (but likely common) case of a single animation
         int nn = _playing.size();
@@ -1127,4 +1253,17 @@ public class Articulated extends Model.Implementation
 
     /** If true, the model has completed. */
     protected boolean _completed;
+
+    /** Whether any of the tracks completed on the current tick. */
+    protected boolean _tracksCompleted;
+
+    /** If true, the first part of the next tick has been performed by {@link #prepareTick}. */
+    protected boolean _prepared;
+
+    /** The shared pose cache, if any. */
+    @Bound
+    protected PoseCache _poseCache;
+
+    /** Reused to look up poses in the cache. */
+    protected PoseCache.Key _poseKey = new PoseCache.Key();
 }
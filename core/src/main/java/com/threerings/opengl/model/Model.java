@@ -307,6 +307,16 @@ public class Model extends DynamicScope
             return this == impl;
         }
 
+        /**
+         * Optionally performs the first part of the next tick (on the render thread), handing
+         * off the rest of the work that may be done in parallel to the supplied evaluator.  If
+         * this returns true, the next call to {@link #tick} will complete the tick.
+         */
+        public boolean prepareTick (float elapsed, PoseEvaluator evaluator)
+        {
+            return false;
+        }
+
         // documentation inherited from interface Tickable
         public void tick (float elapsed)
         {
@@ -1049,6 +1059,16 @@ public class Model extends DynamicScope
         return true;
     }
 
+    /**
+     * Optionally performs the first part of the next tick, handing off the work that may be done
+     * in parallel to the supplied evaluator.  If this returns true, the next call to
+     * {@link #tick} will complete the tick.
+     */
+    public boolean prepareTick (float elapsed, PoseEvaluator evaluator)
+    {
+        return _impl.prepareTick(elapsed, evaluator);
+    }
+
     // documentation inherited from interface Tickable
     public void tick (float elapsed)
     {
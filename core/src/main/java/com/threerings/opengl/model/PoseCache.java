@@ -0,0 +1,215 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.threerings.math.Transform3D;
+
+/**
+ * Shares evaluated poses between {@link Articulated} instances that play the same animations at
+ * the same point on the same frame.  The cache is cleared at the start of each frame by its owner
+ * (normally the scene), and may be used from multiple threads at once.
+ */
+public class PoseCache
+{
+    /**
+     * Identifies a pose: the model configuration followed by the state of each playing track.
+     * Components are compared by identity (for references) or value (for integers).
+     */
+    public static class Key
+    {
+        /**
+         * Clears the key for reuse.
+         */
+        public void clear ()
+        {
+            _refCount = _valueCount = 0;
+            _hash = 1;
+        }
+
+        /**
+         * Adds a reference component.
+         */
+        public void add (Object ref)
+        {
+            if (_refCount == _refs.length) {
+                _refs = Arrays.copyOf(_refs, _refCount * 2);
+            }
+            _refs[_refCount++] = ref;
+            _hash = 31*_hash + System.identityHashCode(ref);
+        }
+
+        /**
+         * Adds an integer component.
+         */
+        public void add (int value)
+        {
+            if (_valueCount == _values.length) {
+                _values = Arrays.copyOf(_values, _valueCount * 2);
+            }
+            _values[_valueCount++] = value;
+            _hash = 31*_hash + value;
+        }
+
+        /**
+         * Adds a float component (compared by its bits).
+         */
+        public void add (float value)
+        {
+            add(Float.floatToIntBits(value));
+        }
+
+        @Override
+        public int hashCode ()
+        {
+            return _hash;
+        }
+
+        @Override
+        public boolean equals (Object other)
+        {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key okey = (Key)other;
+            if (_hash != okey._hash || _refCount != okey._refCount ||
+                    _valueCount != okey._valueCount) {
+                return false;
+            }
+            for (int ii = 0; ii < _refCount; ii++) {
+                if (_refs[ii] != okey._refs[ii]) {
+                    return false;
+                }
+            }
+            for (int ii = 0; ii < _valueCount; ii++) {
+                if (_values[ii] != okey._values[ii]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Creates an immutable copy of this key for use in the map.
+         */
+        protected Key copy ()
+        {
+            Key key = new Key();
+            key._refs = Arrays.copyOf(_refs, _refCount);
+            key._values = Arrays.copyOf(_values, _valueCount);
+            key._refCount = _refCount;
+            key._valueCount = _valueCount;
+            key._hash = _hash;
+            return key;
+        }
+
+        /** The reference components. */
+        protected Object[] _refs = new Object[4];
+
+        /** The integer components. */
+        protected int[] _values = new int[8];
+
+        /** The number of components of each type. */
+        protected int _refCount, _valueCount;
+
+        /** The hash code, computed as components are added. */
+        protected int _hash = 1;
+    }
+
+    /**
+     * Returns the pose stored under the specified key on this frame, or null if none has been
+     * stored.  The returned transforms must not be modified.
+     */
+    public Transform3D[][] get (Key key)
+    {
+        Transform3D[][] pose = _poses.get(key);
+        (pose == null ? _misses : _hits).incrementAndGet();
+        return pose;
+    }
+
+    /**
+     * Stores a pose under the specified key for the remainder of the frame.  The cache takes
+     * ownership of the transforms (but not the key, which is copied).
+     */
+    public void put (Key key, Transform3D[][] pose)
+    {
+        _poses.putIfAbsent(key.copy(), pose);
+    }
+
+    /**
+     * Clears the cache for a new frame.
+     */
+    public void clear ()
+    {
+        if (!_poses.isEmpty()) {
+            _poses.clear();
+        }
+    }
+
+    /**
+     * Returns the number of lookups that found a pose since the statistics were last reset.
+     */
+    public long getHits ()
+    {
+        return _hits.get();
+    }
+
+    /**
+     * Returns the number of lookups that found nothing since the statistics were last reset.
+     */
+    public long getMisses ()
+    {
+        return _misses.get();
+    }
+
+    /**
+     * Returns the proportion of lookups that found a pose (zero if there were no lookups).
+     */
+    public float getHitRate ()
+    {
+        long hits = _hits.get(), total = hits + _misses.get();
+        return (total == 0L) ? 0f : (float)hits / total;
+    }
+
+    /**
+     * Resets the hit and miss counts.
+     */
+    public void resetStats ()
+    {
+        _hits.set(0L);
+        _misses.set(0L);
+    }
+
+    /** The poses stored on the current frame. */
+    protected ConcurrentHashMap<Key, Transform3D[][]> _poses =
+        new ConcurrentHashMap<Key, Transform3D[][]>();
+
+    /** Lookup statistics. */
+    protected AtomicLong _hits = new AtomicLong(), _misses = new AtomicLong();
+}
@@ -0,0 +1,202 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.model;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Lists;
+
+import static com.threerings.opengl.Log.log;
+
+/**
+ * Evaluates the poses (local node transforms from the playing animations, followed by the node
+ * world transforms and bounds) of a batch of {@link Articulated} models in parallel.  Models are
+ * added to the batch from {@link Articulated#prepareTick}, which runs the animation ticks (and thus
+ * all of the callbacks) on the render thread; {@link #evaluate} then computes the poses on the
+ * worker threads (and the calling thread), and the remainder of each model's tick happens in the
+ * usual call to {@link Articulated#tick}.
+ */
+public class PoseEvaluator
+{
+    /**
+     * Creates a new evaluator with one worker per available processor, less one for the render
+     * thread.
+     */
+    public PoseEvaluator ()
+    {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Creates a new evaluator with the specified number of worker threads.
+     */
+    public PoseEvaluator (int threads)
+    {
+        _executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread (Runnable runnable) {
+                Thread thread = new Thread(runnable,
+                    "Pose Evaluator Worker " + _threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        _threads = threads;
+    }
+
+    /**
+     * Sets the minimum number of models in a batch for which we bother to use the worker threads
+     * (smaller batches are evaluated on the calling thread).
+     */
+    public void setMinimumParallelBatch (int size)
+    {
+        _minParallelBatch = size;
+    }
+
+    /**
+     * Prepares for a new batch.  Any models left over from the previous batch that were never
+     * ticked (because they were removed from the scene in the meantime, say) are reset so that
+     * their next tick is a complete one.
+     */
+    public void begin ()
+    {
+        for (int ii = 0, nn = _models.size(); ii < nn; ii++) {
+            _models.get(ii).cancelPreparedTick();
+        }
+        _models.clear();
+    }
+
+    /**
+     * Adds a model whose pose should be evaluated in the current batch.
+     */
+    public void add (Articulated model)
+    {
+        _models.add(model);
+    }
+
+    /**
+     * Evaluates the poses of all models in the current batch, returning when they are complete.
+     */
+    public void evaluate ()
+    {
+        long start = System.nanoTime();
+        final int count = _models.size();
+        if (count < Math.max(_minParallelBatch, 2)) {
+            for (int ii = 0; ii < count; ii++) {
+                _models.get(ii).evaluatePose();
+            }
+        } else {
+            // hand out the models in small chunks so that the load balances itself
+            final AtomicInteger next = new AtomicInteger();
+            final int chunk = Math.max(1, count / ((_threads + 1) * CHUNKS_PER_THREAD));
+            Runnable task = new Runnable() {
+                public void run () {
+                    for (int idx; (idx = next.getAndAdd(chunk)) < count; ) {
+                        for (int ii = idx, nn = Math.min(idx + chunk, count); ii < nn; ii++) {
+                            _models.get(ii).evaluatePose();
+                        }
+                    }
+                }
+            };
+            _futures.clear();
+            for (int ii = 0, nn = Math.min(_threads, count - 1); ii < nn; ii++) {
+                _futures.add(_executor.submit(task));
+            }
+            task.run(); // lend a hand
+            for (Future<?> future : _futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    log.warning("Error evaluating poses.", e.getCause());
+                }
+            }
+        }
+        _lastCount = count;
+        _lastNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Returns the number of models evaluated in the last batch.
+     */
+    public int getLastCount ()
+    {
+        return _lastCount;
+    }
+
+    /**
+     * Returns the time taken to evaluate the last batch, in nanoseconds.
+     */
+    public long getLastNanos ()
+    {
+        return _lastNanos;
+    }
+
+    /**
+     * Shuts down the worker threads.
+     */
+    public void shutdown ()
+    {
+        begin();
+        _executor.shutdown();
+    }
+
+    /** The worker pool. */
+    protected ExecutorService _executor;
+
+    /** The number of worker threads. */
+    protected int _threads;
+
+    /** The minimum batch size for parallel evaluation. */
+    protected int _minParallelBatch = DEFAULT_MIN_PARALLEL_BATCH;
+
+    /** The models in the current batch, in the order in which they were prepared. */
+    protected List<Articulated> _models = Lists.newArrayList();
+
+    /** The futures of the tasks submitted for the current batch. */
+    protected List<Future<?>> _futures = Lists.newArrayList();
+
+    /** The number of models in the last batch. */
+    protected int _lastCount;
+
+    /** The time taken to evaluate the last batch. */
+    protected long _lastNanos;
+
+    /** Used to number the worker threads. */
+    protected static final AtomicInteger _threadCount = new AtomicInteger();
+
+    /** The default minimum batch size for parallel evaluation. */
+    protected static final int DEFAULT_MIN_PARALLEL_BATCH = 8;
+
+    /** The number of chunks into which we divide the batch for each thread. */
+    protected static final int CHUNKS_PER_THREAD = 4;
+}
@@ -409,6 +409,17 @@ public class ArticulatedConfig extends ModelConfig.Imported
     @Editable(hgroup="t")
     public boolean completable;
 
+    /** Whether or not instances of the model playing the same animations at the same point
+     * should share their evaluated poses (useful for crowds of background characters). */
+    @Editable(hgroup="p")
+    public boolean sharePoses;
+
+    /** When sharing poses, the number of steps between animation frames to which the animation
+     * phase is rounded, or zero to share only exactly matching poses.  Smaller values give more
+     * sharing at the cost of smoothness. */
+    @Editable(min=0, hgroup="p")
+    public int poseQuantization;
+
     /** The model's animation mappings. */
     @Editable
     public AnimationMapping[] animationMappings = new AnimationMapping[0];
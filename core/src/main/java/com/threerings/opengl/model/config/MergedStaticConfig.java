@@ -30,6 +30,7 @@ import java.lang.ref.SoftReference;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -56,6 +57,7 @@ import com.threerings.opengl.model.config.ModelConfig.MeshSet;
 import com.threerings.opengl.model.config.ModelConfig.VisibleMesh;
 import com.threerings.opengl.model.config.StaticConfig.Resolved;
 import com.threerings.opengl.util.GlContext;
+import com.threerings.opengl.util.LoadingPipeline;
 import com.threerings.opengl.util.Preloadable;
 
 import static com.threerings.opengl.Log.log;
@@ -99,7 +101,14 @@ public class MergedStaticConfig extends ModelConfig.Implementation
     {
         Resolved resolved = (_resolved == null) ? null : _resolved.get();
         if (resolved == null) {
-            _resolved = new SoftReference<Resolved>(resolved = resolve(ctx));
+            if (_prepared != null && _preparedModels == models) {
+                resolved = _prepared;
+            } else {
+                resolved = resolve(ctx);
+            }
+            _prepared = null;
+            _preparedModels = null;
+            _resolved = new SoftReference<Resolved>(resolved);
         }
         if (impl instanceof Static) {
             ((Static)impl).setConfig(ctx, resolved);
@@ -115,18 +124,54 @@ public class MergedStaticConfig extends ModelConfig.Implementation
         _resolved = null;
     }
 
+    /**
+     * Resolves the data in the background.  The component models are gathered on the calling
+     * thread, then merged on one of the pipeline's workers.  Once the result is ready, it is
+     * stored for use by the next call to {@link #getModelImplementation} and the supplied
+     * callback is invoked on the calling thread (typically to fire a config update).
+     */
+    public void resolve (GlContext ctx, LoadingPipeline pipeline, final Runnable onResolved)
+    {
+        final ComponentModel[] omodels = models;
+        long start = System.nanoTime();
+        final Gathered gathered = gather(ctx);
+        pipeline.getStage(LoadingPipeline.RESOLVE).record(System.nanoTime() - start, false);
+        pipeline.submit(LoadingPipeline.MERGE, new Callable<Resolved>() {
+            public Resolved call () {
+                return gathered.merge();
+            }
+        }, new LoadingPipeline.Completion<Resolved>() {
+            public void complete (Resolved resolved) {
+                // make sure the models haven't changed in the meantime
+                if (resolved != null && models == omodels) {
+                    _prepared = resolved;
+                    _preparedModels = omodels;
+                }
+                onResolved.run();
+            }
+        });
+    }
+
     /**
      * (Re)resolves the data.
      */
     protected Resolved resolve (GlContext ctx)
     {
-        // process the component models, mapping geometry by material
+        return gather(ctx).merge();
+    }
+
+    /**
+     * Processes the component models, mapping geometry by material.  This requires access to
+     * the config manager, so it must be called on the render thread.
+     */
+    protected Gathered gather (GlContext ctx)
+    {
         ConfigManager cfgmgr = ctx.getConfigManager();
         IdentityHashMap<MaterialConfig, List<TransformedGeometry>> glists =
             Maps.newIdentityHashMap();
         Map<String, MaterialConfig> mmap = Maps.newHashMap();
         List<TransformedCollision> cmeshes = Lists.newArrayList();
-        final Box bounds = new Box();
+        Box bounds = new Box();
         int influenceFlags = 0;
         for (ComponentModel cmodel : models) {
             ModelConfig config = cfgmgr.getConfig(ModelConfig.class, cmodel.model);
@@ -164,46 +209,82 @@ public class MergedStaticConfig extends ModelConfig.Implementation
             mmap.clear();
             influenceFlags |= imported.influences.getFlags();
         }
+        return new Gathered(glists, cmeshes, bounds, influenceFlags);
+    }
 
-        // merge geometry of the same material
-        List<GeometryMaterial> gmats = Lists.newArrayList();
-        for (Map.Entry<MaterialConfig, List<TransformedGeometry>> entry : glists.entrySet()) {
-            MaterialConfig material = entry.getKey();
-            List<TransformedGeometry> glist = entry.getValue();
-            while (!glist.isEmpty()) {
-                GeometryConfig merged = glist.get(0).geometry.merge(glist);
-                if (merged != null) {
-                    gmats.add(new GeometryMaterial(merged, material));
-                } else {
-                    glist.remove(0);
-                }
-            }
+    /**
+     * The component geometry and collision meshes gathered from the config manager, ready to be
+     * merged.  Merging requires no further config access and may be performed on any thread.
+     */
+    protected static class Gathered
+    {
+        /** The transformed geometry, mapped by material. */
+        public final IdentityHashMap<MaterialConfig, List<TransformedGeometry>> glists;
+
+        /** The transformed collision meshes. */
+        public final List<TransformedCollision> cmeshes;
+
+        /** The combined bounds. */
+        public final Box bounds;
+
+        /** The combined influence flags. */
+        public final int influenceFlags;
+
+        public Gathered (
+            IdentityHashMap<MaterialConfig, List<TransformedGeometry>> glists,
+            List<TransformedCollision> cmeshes, Box bounds, int influenceFlags)
+        {
+            this.glists = glists;
+            this.cmeshes = cmeshes;
+            this.bounds = bounds;
+            this.influenceFlags = influenceFlags;
         }
 
-        // create the combined collision mesh
-        final TransformedCollision[] tcollisions = cmeshes.toArray(
-            new TransformedCollision[cmeshes.size()]);
-        CollisionMesh collision = new CollisionMesh() {
-            @Override public Box getBounds () {
-                return bounds;
-            }
-            @Override public boolean getIntersection (Ray3D ray, Vector3f result) {
-                // check the component meshes (transforming the ray into their space and back out
-                // again if we detect a hit)
-                Vector3f closest = result;
-                for (TransformedCollision tcoll : tcollisions) {
-                    if (tcoll.bounds.intersects(ray) && tcoll.collision.getIntersection(
-                            ray.transform(tcoll.invTransform), result)) {
-                        tcoll.transform.transformPointLocal(result);
-                        result = FloatMath.updateClosest(ray.getOrigin(), result, closest);
+        /**
+         * Merges the gathered data.
+         */
+        public Resolved merge ()
+        {
+            // merge geometry of the same material
+            List<GeometryMaterial> gmats = Lists.newArrayList();
+            for (Map.Entry<MaterialConfig, List<TransformedGeometry>> entry : glists.entrySet()) {
+                MaterialConfig material = entry.getKey();
+                List<TransformedGeometry> glist = entry.getValue();
+                while (!glist.isEmpty()) {
+                    GeometryConfig merged = glist.get(0).geometry.merge(glist);
+                    if (merged != null) {
+                        gmats.add(new GeometryMaterial(merged, material));
+                    } else {
+                        glist.remove(0);
                     }
                 }
-                // if we ever changed the result reference, that means we hit something
-                return (result != closest);
             }
-        };
-        return new Resolved(bounds, collision,
-            gmats.toArray(new GeometryMaterial[gmats.size()]), influenceFlags);
+
+            // create the combined collision mesh
+            final TransformedCollision[] tcollisions = cmeshes.toArray(
+                new TransformedCollision[cmeshes.size()]);
+            CollisionMesh collision = new CollisionMesh() {
+                @Override public Box getBounds () {
+                    return bounds;
+                }
+                @Override public boolean getIntersection (Ray3D ray, Vector3f result) {
+                    // check the component meshes (transforming the ray into their space and back
+                    // out again if we detect a hit)
+                    Vector3f closest = result;
+                    for (TransformedCollision tcoll : tcollisions) {
+                        if (tcoll.bounds.intersects(ray) && tcoll.collision.getIntersection(
+                                ray.transform(tcoll.invTransform), result)) {
+                            tcoll.transform.transformPointLocal(result);
+                            result = FloatMath.updateClosest(ray.getOrigin(), result, closest);
+                        }
+                    }
+                    // if we ever changed the result reference, that means we hit something
+                    return (result != closest);
+                }
+            };
+            return new Resolved(bounds, collision,
+                gmats.toArray(new GeometryMaterial[gmats.size()]), influenceFlags);
+        }
     }
 
     /**
@@ -235,4 +316,12 @@ public class MergedStaticConfig extends ModelConfig.Implementation
     /** The cached resolved config bits. */
     @DeepOmit
     protected transient SoftReference<Resolved> _resolved;
+
+    /** Config bits resolved in the background, awaiting use. */
+    @DeepOmit
+    protected transient Resolved _prepared;
+
+    /** The component models from which the prepared bits were resolved. */
+    @DeepOmit
+    protected transient ComponentModel[] _preparedModels;
 }
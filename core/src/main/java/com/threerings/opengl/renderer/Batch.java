@@ -49,12 +49,38 @@ public abstract class Batch
         return 0;
     }
 
+    /**
+     * Compares two depths front-to-back at a coarse granularity.  Each power of two is split
+     * into eight buckets (so that a bucket spans at most an eighth of its depths), and depths
+     * in the same bucket compare as equal.
+     */
+    public static int compareDepthBuckets (float d1, float d2)
+    {
+        int b1 = getDepthBucket(d1), b2 = getDepthBucket(d2);
+        return (b1 < b2) ? +1 : (b1 > b2 ? -1 : 0);
+    }
+
+    /**
+     * Returns the coarse bucket containing the specified depth.
+     */
+    protected static int getDepthBucket (float depth)
+    {
+        // flip the magnitude bits of negative values so that the integers sort like the floats,
+        // then drop all but the top three bits of the mantissa
+        int bits = Float.floatToIntBits(depth);
+        return (bits ^ ((bits >> 31) & 0x7FFFFFFF)) >> DEPTH_BUCKET_SHIFT;
+    }
+
     /** The batch's eye space z coordinate (negative if in front of the viewer). */
     public float depth;
 
     /** A comparable representation of the batch's state. */
     public int[] key;
 
+    /** A comparable representation of the batch's shared states (compared after the depth
+     * bucket). */
+    public int[] stateKey;
+
     /**
      * Draws this batch using the specified renderer.
      *
@@ -76,9 +102,13 @@ public abstract class Batch
         try {
             Batch cbatch = (Batch)super.clone();
             cbatch.key = (key == null) ? null : key.clone();
+            cbatch.stateKey = (stateKey == null) ? null : stateKey.clone();
             return cbatch;
         } catch (CloneNotSupportedException e) {
             throw new AssertionError(e);
         }
     }
+
+    /** The number of low mantissa bits ignored when bucketing depths. */
+    protected static final int DEPTH_BUCKET_SHIFT = 20;
 }
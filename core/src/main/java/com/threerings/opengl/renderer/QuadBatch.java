@@ -0,0 +1,432 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.renderer;
+
+import java.nio.FloatBuffer;
+
+import java.util.List;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Collects colored (and optionally textured) two-dimensional quads into a vertex array so that
+ * runs of quads sharing the same texture units can be drawn with a single call.  Quads are drawn
+ * in the order in which they were added; the batch is flushed whenever the texture changes, when
+ * it reaches its capacity, and (through the {@link Renderer}) before any other state change, so
+ * painter's order and scissor regions are preserved.
+ *
+ * <p> Quads are stored in the space of the modelview matrix at the time the batch was last
+ * emptied, offset by the translation tracked through {@link #translate}.  The batch cannot see
+ * changes made to the modelview matrix directly through OpenGL (<code>glTranslatef</code>,
+ * <code>glPushMatrix</code>, <code>glLoadIdentity</code>, etc.), so code that makes such changes
+ * while the batch may be in use (that is, anywhere in the GUI rendering path, including game
+ * components) must bracket them with {@link #pushTransform} and {@link #popTransform}.  Going
+ * through {@link Renderer#setMatrixMode} or {@link Renderer#setTransformState} flushes the batch,
+ * but doesn't reset the tracked translation.
+ */
+public class QuadBatch
+{
+    /**
+     * Performs the actual drawing (and translation) on behalf of the batch.
+     */
+    public interface Backend
+    {
+        /**
+         * Translates the modelview matrix.
+         */
+        public void translate (float x, float y);
+
+        /**
+         * Draws a run of quads.
+         *
+         * @param units the texture units to use, or <code>null</code> for none.
+         * @param data the interleaved vertex data ({@link #VERTEX_SIZE} floats per vertex).
+         * @param quads the number of quads to draw.
+         * @param tx the x component of the translation currently applied to the modelview
+         * matrix relative to the space in which the quads are stored.
+         * @param ty the y component of the translation.
+         */
+        public void draw (TextureUnit[] units, float[] data, int quads, float tx, float ty);
+    }
+
+    /**
+     * Draws the quads using OpenGL vertex arrays.
+     */
+    public static class GlBackend
+        implements Backend
+    {
+        /**
+         * Creates a new OpenGL backend.
+         */
+        public GlBackend (Renderer renderer)
+        {
+            _renderer = renderer;
+        }
+
+        // documentation inherited from interface Backend
+        public void translate (float x, float y)
+        {
+            GL11.glTranslatef(x, y, 0f);
+        }
+
+        // documentation inherited from interface Backend
+        public void draw (TextureUnit[] units, float[] data, int quads, float tx, float ty)
+        {
+            int size = quads * QUAD_SIZE;
+            if (_buffer == null || _buffer.capacity() < size) {
+                _buffer = BufferUtils.createFloatBuffer(data.length);
+                _vertexArray.floatArray = _texCoordArrays[0].floatArray =
+                    _colorArray.floatArray = _buffer;
+                _vertexArray.dirty = _texCoordArrays[0].dirty = _colorArray.dirty = true;
+            }
+            _buffer.put(data, 0, size).rewind();
+
+            _renderer.setTextureState(units);
+            _renderer.setArrayState(
+                0, null, (units == null) ? null : _texCoordArrays, _colorArray, null,
+                _vertexArray, null);
+            _renderer.setMatrixMode(GL11.GL_MODELVIEW);
+            boolean translated = (tx != 0f || ty != 0f);
+            if (translated) {
+                GL11.glTranslatef(-tx, -ty, 0f);
+            }
+            GL11.glDrawArrays(GL11.GL_QUADS, 0, quads * 4);
+            if (translated) {
+                GL11.glTranslatef(tx, ty, 0f);
+            }
+
+            // the current color is undefined after drawing with a color array
+            _renderer.invalidateColorState();
+            _renderer._batchCount++;
+            _renderer._primitiveCount += quads * 2;
+        }
+
+        /** The renderer. */
+        protected Renderer _renderer;
+
+        /** The buffer holding the vertex data. */
+        protected FloatBuffer _buffer;
+
+        /** The vertex array. */
+        protected ClientArray _vertexArray =
+            new ClientArray(2, VERTEX_SIZE * 4, 0, (FloatBuffer)null);
+
+        /** The texture coordinate arrays. */
+        protected ClientArray[] _texCoordArrays =
+            new ClientArray[] { new ClientArray(2, VERTEX_SIZE * 4, 2 * 4, (FloatBuffer)null) };
+
+        /** The color array. */
+        protected ClientArray _colorArray =
+            new ClientArray(4, VERTEX_SIZE * 4, 4 * 4, (FloatBuffer)null);
+    }
+
+    /**
+     * Records the draws issued by the batch without touching OpenGL, so that batching behavior
+     * can be tested and measured headless.
+     */
+    public static class RecordingBackend
+        implements Backend
+    {
+        /**
+         * A single recorded draw.
+         */
+        public static class Draw
+        {
+            /** The texture units used for the draw. */
+            public final TextureUnit[] units;
+
+            /** The number of quads drawn. */
+            public final int quads;
+
+            /** The vertex data, in the space of the modelview matrix at the time of the draw. */
+            public final float[] data;
+
+            /**
+             * Creates a new draw record.
+             */
+            public Draw (TextureUnit[] units, int quads, float[] data)
+            {
+                this.units = units;
+                this.quads = quads;
+                this.data = data;
+            }
+        }
+
+        /**
+         * Creates a new recording backend.
+         *
+         * @param retainData if true, retain a copy of the vertex data for each draw.
+         */
+        public RecordingBackend (boolean retainData)
+        {
+            _retainData = retainData;
+        }
+
+        /**
+         * Returns the number of draws recorded since the last call to {@link #clear}.
+         */
+        public int getDrawCount ()
+        {
+            return _drawCount;
+        }
+
+        /**
+         * Returns the number of quads recorded since the last call to {@link #clear}.
+         */
+        public int getQuadCount ()
+        {
+            return _quadCount;
+        }
+
+        /**
+         * Returns a reference to the list of recorded draws (empty unless retaining data).
+         */
+        public List<Draw> getDraws ()
+        {
+            return _draws;
+        }
+
+        /**
+         * Clears the recorded draws.
+         */
+        public void clear ()
+        {
+            _drawCount = _quadCount = 0;
+            _draws.clear();
+        }
+
+        // documentation inherited from interface Backend
+        public void translate (float x, float y)
+        {
+            // no-op
+        }
+
+        // documentation inherited from interface Backend
+        public void draw (TextureUnit[] units, float[] data, int quads, float tx, float ty)
+        {
+            _drawCount++;
+            _quadCount += quads;
+            if (!_retainData) {
+                return;
+            }
+            float[] copy = new float[quads * QUAD_SIZE];
+            for (int ii = 0; ii < copy.length; ii += VERTEX_SIZE) {
+                copy[ii] = data[ii] - tx;
+                copy[ii + 1] = data[ii + 1] - ty;
+                System.arraycopy(data, ii + 2, copy, ii + 2, VERTEX_SIZE - 2);
+            }
+            _draws.add(new Draw(units, quads, copy));
+        }
+
+        /** Whether or not to retain the vertex data. */
+        protected boolean _retainData;
+
+        /** The number of draws and quads recorded. */
+        protected int _drawCount, _quadCount;
+
+        /** The recorded draws. */
+        protected List<Draw> _draws = Lists.newArrayList();
+    }
+
+    /** The number of floats in each vertex (x, y, s, t, r, g, b, a). */
+    public static final int VERTEX_SIZE = 8;
+
+    /** The number of floats in each quad. */
+    public static final int QUAD_SIZE = VERTEX_SIZE * 4;
+
+    /** The default maximum number of quads in a single draw. */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * Creates a new batch with the default capacity.
+     */
+    public QuadBatch (Backend backend)
+    {
+        this(backend, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new batch.
+     *
+     * @param capacity the maximum number of quads to collect before drawing them.
+     */
+    public QuadBatch (Backend backend, int capacity)
+    {
+        _backend = backend;
+        _data = new float[QUAD_SIZE * capacity];
+    }
+
+    /**
+     * Returns a reference to the backend.
+     */
+    public Backend getBackend ()
+    {
+        return _backend;
+    }
+
+    /**
+     * Checks whether the batch is empty.
+     */
+    public boolean isEmpty ()
+    {
+        return _quads == 0;
+    }
+
+    /**
+     * Translates the modelview matrix, tracking the translation so that quads added before and
+     * after the translation can share a draw.
+     */
+    public void translate (float x, float y)
+    {
+        _backend.translate(x, y);
+        _tx += x;
+        _ty += y;
+    }
+
+    /**
+     * Flushes the batch and starts tracking translations relative to the current state.  Call this
+     * before applying an arbitrary transform (rotation, scale, matrix push, etc.) to the modelview
+     * matrix.
+     */
+    public void pushTransform ()
+    {
+        flush();
+        if (_depth * 2 == _stack.length) {
+            float[] nstack = new float[_stack.length * 2];
+            System.arraycopy(_stack, 0, nstack, 0, _stack.length);
+            _stack = nstack;
+        }
+        _stack[_depth * 2] = _tx;
+        _stack[_depth * 2 + 1] = _ty;
+        _depth++;
+        _tx = _ty = 0f;
+    }
+
+    /**
+     * Flushes the batch and restores the translation saved by the matching call to
+     * {@link #pushTransform}.  Call this before reverting the arbitrary transform.
+     */
+    public void popTransform ()
+    {
+        flush();
+        _depth--;
+        _tx = _stack[_depth * 2];
+        _ty = _stack[_depth * 2 + 1];
+    }
+
+    /**
+     * Adds an untextured quad.
+     */
+    public void add (float lx, float ly, float ux, float uy, float r, float g, float b, float a)
+    {
+        add(null, lx, ly, ux, uy, 0f, 0f, 0f, 0f, r, g, b, a);
+    }
+
+    /**
+     * Adds a quad.
+     *
+     * @param units the texture units to use, or <code>null</code> for none.  Runs of quads are
+     * merged only when they use the same units instance.
+     */
+    public void add (
+        TextureUnit[] units, float lx, float ly, float ux, float uy,
+        float ls, float lt, float us, float ut, float r, float g, float b, float a)
+    {
+        if (_quads > 0 && (units != _units || _quads * QUAD_SIZE == _data.length)) {
+            flush();
+        }
+        _units = units;
+        int idx = _quads * QUAD_SIZE;
+        lx += _tx;
+        ly += _ty;
+        ux += _tx;
+        uy += _ty;
+        idx = putVertex(idx, lx, ly, ls, lt, r, g, b, a);
+        idx = putVertex(idx, ux, ly, us, lt, r, g, b, a);
+        idx = putVertex(idx, ux, uy, us, ut, r, g, b, a);
+        putVertex(idx, lx, uy, ls, ut, r, g, b, a);
+        _quads++;
+    }
+
+    /**
+     * Draws any pending quads.
+     */
+    public void flush ()
+    {
+        if (_quads == 0) {
+            return;
+        }
+        // clear the count first, since the backend's state changes will call back into us
+        int quads = _quads;
+        TextureUnit[] units = _units;
+        _quads = 0;
+        _units = null;
+        _backend.draw(units, _data, quads, _tx, _ty);
+    }
+
+    /**
+     * Stores a single vertex.
+     *
+     * @return the index after the vertex.
+     */
+    protected int putVertex (
+        int idx, float x, float y, float s, float t, float r, float g, float b, float a)
+    {
+        _data[idx++] = x;
+        _data[idx++] = y;
+        _data[idx++] = s;
+        _data[idx++] = t;
+        _data[idx++] = r;
+        _data[idx++] = g;
+        _data[idx++] = b;
+        _data[idx++] = a;
+        return idx;
+    }
+
+    /** The backend that does the drawing. */
+    protected Backend _backend;
+
+    /** The texture units of the current run. */
+    protected TextureUnit[] _units;
+
+    /** The interleaved vertex data. */
+    protected float[] _data;
+
+    /** The number of quads in the current run. */
+    protected int _quads;
+
+    /** The tracked translation. */
+    protected float _tx, _ty;
+
+    /** The stack of saved translations. */
+    protected float[] _stack = new float[16];
+
+    /** The depth of the translation stack. */
+    protected int _depth;
+}
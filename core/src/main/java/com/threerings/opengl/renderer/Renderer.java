@@ -310,6 +310,26 @@ public class Renderer
         return _maxVertexAttribs;
     }
 
+    /**
+     * Returns a reference to the batch used to collect two-dimensional quads.  Code that changes
+     * the modelview matrix directly through OpenGL while rendering the GUI must bracket the
+     * change with {@link QuadBatch#pushTransform} and {@link QuadBatch#popTransform}.
+     */
+    public QuadBatch getQuadBatch ()
+    {
+        return _quadBatch;
+    }
+
+    /**
+     * Sets the batch used to collect two-dimensional quads (for instance, to install a batch with
+     * a recording backend).
+     */
+    public void setQuadBatch (QuadBatch batch)
+    {
+        flushQuads();
+        _quadBatch = batch;
+    }
+
     /**
      * Returns the number of texture changes since the last call to {@link #resetStats}.
      */
@@ -318,6 +338,24 @@ public class Renderer
         return _textureChangeCount;
     }
 
+    /**
+     * Returns the number of states applied through {@link #setStates} since the last call to
+     * {@link #resetStats}.
+     */
+    public int getStateChangeCount ()
+    {
+        return _stateChangeCount;
+    }
+
+    /**
+     * Returns the number of states passed to {@link #setStates} since the last call to
+     * {@link #resetStats} that were skipped because they were already current.
+     */
+    public int getStateSkipCount ()
+    {
+        return _stateSkipCount;
+    }
+
     /**
      * Returns the number of batches rendered since the last call to {@link #resetStats}.
      */
@@ -340,6 +378,8 @@ public class Renderer
     public void resetStats ()
     {
         _textureChangeCount = 0;
+        _stateChangeCount = 0;
+        _stateSkipCount = 0;
         _batchCount = 0;
         _primitiveCount = 0;
     }
@@ -461,6 +501,7 @@ public class Renderer
      */
     public void setViewport (Rectangle viewport)
     {
+        flushQuads();
         setViewport(viewport.x, viewport.y, viewport.width, viewport.height);
     }
 
@@ -469,6 +510,7 @@ public class Renderer
      */
     public void setViewport (int x, int y, int width, int height)
     {
+        flushQuads();
         if (_viewport.x != x || _viewport.y != y || _viewport.width != width ||
                 _viewport.height != height) {
             GL11.glViewport(
@@ -492,6 +534,7 @@ public class Renderer
         float left, float right, float bottom, float top, float near,
         float far, Vector3f nearFarNormal, boolean ortho)
     {
+        flushQuads();
         if (_left == left && _right == right && _bottom == bottom &&
             _top == top && _near == near && _far == far &&
             _nearFarNormal.equals(nearFarNormal) && _ortho == ortho) {
@@ -595,6 +638,7 @@ public class Renderer
      */
     public void setClipPlanes (Plane[] planes)
     {
+        flushQuads();
         // update the union of the requested planes and the ones already set
         int numPlanes = (planes == null) ? 0 : planes.length;
         for (int ii = 0, nn = Math.max(_clipPlaneEnd, numPlanes); ii < nn; ii++) {
@@ -631,6 +675,7 @@ public class Renderer
      */
     public void setScissor (Rectangle box)
     {
+        flushQuads();
         boolean scissorTestEnabled = (box != null);
         if (_scissorTestEnabled != Boolean.valueOf(scissorTestEnabled)) {
             setCapability(GL11.GL_SCISSOR_TEST, _scissorTestEnabled = scissorTestEnabled);
@@ -655,6 +700,7 @@ public class Renderer
      */
     public void setFrontFace (int face)
     {
+        flushQuads();
         if (_frontFace != face) {
             GL11.glFrontFace(_frontFace = face);
         }
@@ -673,6 +719,7 @@ public class Renderer
      */
     public void setNormalize (boolean normalize, boolean rescaleNormal)
     {
+        flushQuads();
         if (_normalize != Boolean.valueOf(normalize)) {
             setCapability(GL11.GL_NORMALIZE, _normalize = normalize);
         }
@@ -714,14 +761,22 @@ public class Renderer
      */
     public void setStates (RenderState[] states)
     {
+        int applied = 0, present = 0;
         for (int ii = 0; ii < RenderState.STATE_COUNT; ii++) {
             RenderState state = states[ii];
-            if (state != null && (_states[ii] != state || state.isDirty())) {
+            if (state == null) {
+                continue;
+            }
+            present++;
+            if (_states[ii] != state || state.isDirty()) {
                 state.apply(this);
                 state.setDirty(false);
                 _states[ii] = state;
+                applied++;
             }
         }
+        _stateChangeCount += applied;
+        _stateSkipCount += (present - applied);
     }
 
     /**
@@ -746,6 +801,7 @@ public class Renderer
     public void setAlphaState (
         int alphaTestFunc, float alphaTestRef, int srcBlendFactor, int destBlendFactor)
     {
+        flushQuads();
         // clear any cached reference
         _states[RenderState.ALPHA_STATE] = null;
 
@@ -787,6 +843,7 @@ public class Renderer
         ClientArray colorArray, ClientArray normalArray, ClientArray vertexArray,
         BufferObject elementArrayBuffer)
     {
+        flushQuads();
         // clear any cached reference
         _states[RenderState.ARRAY_STATE] = null;
 
@@ -930,6 +987,7 @@ public class Renderer
      */
     public void setColorState (Color4f color)
     {
+        flushQuads();
         if (!_color.equals(color)) {
             GL11.glColor4f(color.r, color.g, color.b, color.a);
             _color.set(color);
@@ -942,6 +1000,7 @@ public class Renderer
      */
     public void setColorState (float r, float g, float b, float a)
     {
+        flushQuads();
         if (_color.r != r || _color.g != g || _color.b != b || _color.a != a) {
             GL11.glColor4f(r, g, b, a);
             _color.set(r, g, b, a);
@@ -963,6 +1022,7 @@ public class Renderer
      */
     public void setColorMaskState (boolean red, boolean green, boolean blue, boolean alpha)
     {
+        flushQuads();
         if (_redMask != Boolean.valueOf(red) ||
             _greenMask != Boolean.valueOf(green) ||
             _blueMask != Boolean.valueOf(blue) ||
@@ -987,6 +1047,7 @@ public class Renderer
      */
     public void setCullState (int cullFace)
     {
+        flushQuads();
         // clear any cached reference
         _states[RenderState.CULL_STATE] = null;
 
@@ -1016,6 +1077,7 @@ public class Renderer
      */
     public void setDepthState (int depthTestFunc, boolean depthMask)
     {
+        flushQuads();
         // clear any cached reference
         _states[RenderState.DEPTH_STATE] = null;
 
@@ -1049,6 +1111,7 @@ public class Renderer
      */
     public void setFogState (int fogMode, float fogDensity, Color4f fogColor)
     {
+        flushQuads();
         // clear any cached reference
         _states[RenderState.FOG_STATE] = null;
 
@@ -1075,6 +1138,7 @@ public class Renderer
      */
     public void setFogState (int fogMode, float fogStart, float fogEnd, Color4f fogColor)
     {
+        flushQuads();
         // clear any cached reference
         _states[RenderState.FOG_STATE] = null;
 
@@ -1115,6 +1179,7 @@ public class Renderer
      */
     public void setLightState (Light[] lights, Color4f globalAmbient)
     {
+        flushQuads();
         // invalidate any cached reference
         _states[RenderState.LIGHT_STATE] = null;
 
@@ -1220,6 +1285,7 @@ public class Renderer
      */
     public void setLineState (float lineWidth)
     {
+        flushQuads();
         if (_lineWidth != lineWidth) {
             GL11.glLineWidth(_lineWidth = lineWidth);
             _states[RenderState.LINE_STATE] = null;
@@ -1246,6 +1312,7 @@ public class Renderer
         int colorMaterialMode, int colorMaterialFace,
         boolean twoSide, boolean localViewer, boolean separateSpecular, boolean flatShading)
     {
+        flushQuads();
         // invalidate any cached reference
         _states[RenderState.MATERIAL_STATE] = null;
 
@@ -1335,6 +1402,7 @@ public class Renderer
      */
     public void setPointState (float pointSize)
     {
+        flushQuads();
         if (_pointSize != pointSize) {
             GL11.glPointSize(_pointSize = pointSize);
             _states[RenderState.POINT_STATE] = null;
@@ -1357,6 +1425,7 @@ public class Renderer
         int frontPolygonMode, int backPolygonMode, float polygonOffsetFactor,
         float polygonOffsetUnits)
     {
+        flushQuads();
         // invalidate any cached reference
         _states[RenderState.POLYGON_STATE] = null;
 
@@ -1406,6 +1475,7 @@ public class Renderer
      */
     public void setShaderState (Program program, boolean vertexProgramTwoSide)
     {
+        flushQuads();
         if (_program != program) {
             int id = (program == null) ? 0 : program.getId();
             ARBShaderObjects.glUseProgramObjectARB(id);
@@ -1442,6 +1512,7 @@ public class Renderer
         int stencilFailOp, int stencilDepthFailOp, int stencilPassOp,
         int stencilWriteMask)
     {
+        flushQuads();
         // invalidate any cached reference
         _states[RenderState.STENCIL_STATE] = null;
 
@@ -1489,6 +1560,7 @@ public class Renderer
      */
     public void setTextureState (TextureUnit[] units)
     {
+        flushQuads();
         // clear any cached reference
         _states[RenderState.TEXTURE_STATE] = null;
 
@@ -1836,6 +1908,7 @@ public class Renderer
      */
     public void setTransformState (Transform3D modelview)
     {
+        flushQuads();
         if (!_modelview.equals(modelview)) {
             setMatrixMode(GL11.GL_MODELVIEW);
             loadTransformMatrix(_modelview.set(modelview));
@@ -1874,6 +1947,7 @@ public class Renderer
      */
     public void setMatrixMode (int matrixMode)
     {
+        flushQuads();
         if (_matrixMode != matrixMode) {
             GL11.glMatrixMode(_matrixMode = matrixMode);
         }
@@ -1884,6 +1958,7 @@ public class Renderer
      */
     public void render (List<Batch> batches)
     {
+        flushQuads();
         // for each batch, set the states and call its draw command
         int size = batches.size();
         for (int ii = 0; ii < size; ii++) {
@@ -1898,6 +1973,16 @@ public class Renderer
         _batchCount += size;
     }
 
+    /**
+     * Draws any quads pending in the quad batch so that they aren't affected by a state change.
+     */
+    protected final void flushQuads ()
+    {
+        if (_quadBatch != null && !_quadBatch.isEmpty()) {
+            _quadBatch.flush();
+        }
+    }
+
     /**
      * Sets one of the vertex attribute arrays to the one supplied.
      */
@@ -2721,9 +2806,15 @@ public class Renderer
     /** Vendor flags for special casery. */
     protected boolean _nvidia, _ati, _intel;
 
+    /** Collects two-dimensional quads, which must be flushed before any state change. */
+    protected QuadBatch _quadBatch = new QuadBatch(new QuadBatch.GlBackend(this));
+
     /** The number of texture changes in the current frame. */
     protected int _textureChangeCount;
 
+    /** The number of states applied and skipped in the current frame. */
+    protected int _stateChangeCount, _stateSkipCount;
+
     /** The number of batches rendered in the current frame. */
     protected int _batchCount;
 
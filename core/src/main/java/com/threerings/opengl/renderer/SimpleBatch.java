@@ -399,7 +399,7 @@ public class SimpleBatch extends Batch
     }
 
     /**
-     * Updates the batch's state key using the current set of states.
+     * Updates the batch's state keys using the current set of states.
      */
     public void updateKey ()
     {
@@ -436,6 +436,16 @@ public class SimpleBatch extends Batch
         } else {
             key[idx++] = 0;
         }
+
+        // the ids of the shared states go in a separate key that's compared after the coarse
+        // depth, so that they only reorder batches at similar depths
+        if (stateKey == null) {
+            stateKey = new int[KEYED_STATES.length];
+        }
+        for (int ii = 0; ii < KEYED_STATES.length; ii++) {
+            RenderState state = _states[KEYED_STATES[ii]];
+            stateKey[ii] = (state == null) ? 0 : state.getId();
+        }
     }
 
     @Override
@@ -499,4 +509,10 @@ public class SimpleBatch extends Batch
 
     /** The stateless draw command that actually draws the batch. */
     protected DrawCommand _command;
+
+    /** The types of the (usually interned) states whose ids make up the state key. */
+    protected static final int[] KEYED_STATES = {
+        RenderState.MATERIAL_STATE, RenderState.ALPHA_STATE, RenderState.DEPTH_STATE,
+        RenderState.CULL_STATE, RenderState.POLYGON_STATE, RenderState.STENCIL_STATE,
+        RenderState.COLOR_MASK_STATE };
 }
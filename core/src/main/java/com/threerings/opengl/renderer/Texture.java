@@ -25,12 +25,8 @@
 
 package com.threerings.opengl.renderer;
 
-import java.awt.AlphaComposite;
-import java.awt.Graphics2D;
 import java.awt.Transparency;
-import java.awt.RenderingHints;
 import java.awt.color.ColorSpace;
-import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.awt.image.ComponentColorModel;
 import java.awt.image.DataBuffer;
@@ -55,6 +51,8 @@ import org.lwjgl.opengl.SGISGenerateMipmap;
 import com.samskivert.util.ArrayUtil;
 import com.samskivert.util.IntListUtil;
 
+import com.threerings.opengl.util.PixelUtil;
+
 /**
  * An OpenGL texture object.
  */
@@ -420,69 +418,49 @@ public abstract class Texture
      */
     protected static BufferedImage halveImage (BufferedImage image)
     {
-        int width = Math.max(1, image.getWidth() / 2);
-        int height = Math.max(1, image.getHeight() / 2);
-        BufferedImage dest = new BufferedImage(width, height, image.getType());
-        Graphics2D graphics = dest.createGraphics();
-        try {
-            graphics.drawImage(image, 0, 0, width, height, null);
-        } finally {
-            graphics.dispose();
+        int iwidth = image.getWidth(), iheight = image.getHeight();
+        int ncomps = PixelUtil.getComponents(image);
+        byte[] pixels = PixelUtil.halve(
+            _pixels = PixelUtil.getPixels(image, _pixels),
+            iwidth, iheight, ncomps, PixelUtil.MipFilter.BOX, null);
+
+        // wrap the pixels in an image of the same number of components
+        int width = Math.max(1, iwidth / 2), height = Math.max(1, iheight / 2);
+        boolean hasAlpha = (ncomps == 2 || ncomps == 4);
+        ComponentColorModel cmodel = new ComponentColorModel(
+            ColorSpace.getInstance(ncomps >= 3 ? ColorSpace.CS_sRGB : ColorSpace.CS_GRAY),
+            hasAlpha, false, hasAlpha ? Transparency.TRANSLUCENT : Transparency.OPAQUE,
+            DataBuffer.TYPE_BYTE);
+        int[] offsets = new int[ncomps];
+        for (int ii = 0; ii < ncomps; ii++) {
+            offsets[ii] = ii;
         }
-        return dest;
+        return new BufferedImage(
+            cmodel,
+            Raster.createInterleavedRaster(
+                new DataBufferByte(pixels, width * height * ncomps), width, height,
+                width * ncomps, ncomps, offsets, null),
+            false, null);
     }
 
     /**
-     * Converts (and resizes) an image into a buffer of data to be passed to OpenGL.
+     * Converts (and resizes) an image into a buffer of data to be passed to OpenGL.  The
+     * returned buffer is shared, and is only valid until the next call.
      */
     protected static ByteBuffer getData (
         BufferedImage image, boolean premultiply, int width, int height, boolean rescale)
     {
-        int iwidth = image.getWidth(), iheight = image.getHeight();
-        int ncomps = image.getColorModel().getNumComponents();
-        // create a compatible color model
-        boolean hasAlpha = (ncomps == 2 || ncomps == 4);
-        ComponentColorModel cmodel = new ComponentColorModel(
-            ColorSpace.getInstance(ncomps >= 3 ? ColorSpace.CS_sRGB : ColorSpace.CS_GRAY),
-            hasAlpha,
-            hasAlpha && premultiply,
-            hasAlpha ? Transparency.TRANSLUCENT : Transparency.OPAQUE,
-            DataBuffer.TYPE_BYTE);
-
-        // create the target image
-        BufferedImage dest = new BufferedImage(
-            cmodel,
-            Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE, width, height, ncomps, null),
-            cmodel.isAlphaPremultiplied(), null);
-
-        // draw the image into the target buffer, scaling and flipping it in the process
-        double xscale, yscale;
-        if (rescale && (width != iwidth || height != iheight)) {
-            xscale = (double)width / iwidth;
-            yscale = -(double)height / iheight;
-        } else {
-            xscale = +1.0;
-            yscale = -1.0;
+        int ncomps = PixelUtil.getComponents(image);
+        int size = width * height * ncomps;
+        if (_data == null || _data.capacity() < size) {
+            _data = BufferUtils.createByteBuffer(size);
         }
-        AffineTransform xform = AffineTransform.getScaleInstance(xscale, yscale);
-        xform.translate(0.0, -iheight);
-        Graphics2D graphics = dest.createGraphics();
-        try {
-            graphics.setComposite(AlphaComposite.Src);
-            graphics.setRenderingHint(
-                RenderingHints.KEY_INTERPOLATION,
-                rescale ? RenderingHints.VALUE_INTERPOLATION_BILINEAR :
-                    RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
-            graphics.drawRenderedImage(image, xform);
-        } finally {
-            graphics.dispose();
-        }
-
-        // get the pixel data and copy it to a byte buffer
-        byte[] rgba = ((DataBufferByte)dest.getRaster().getDataBuffer()).getData();
-        ByteBuffer data = BufferUtils.createByteBuffer(width * height * ncomps);
-        data.put(rgba).rewind();
-        return data;
+        _data.clear();
+        PixelUtil.getData(
+            _pixels = PixelUtil.getPixels(image, _pixels), image.getWidth(), image.getHeight(),
+            ncomps, premultiply, width, height, rescale, _data);
+        _data.flip();
+        return _data;
     }
 
     /** The renderer responsible for this texture. */
@@ -536,6 +514,12 @@ public abstract class Texture
     /** A buffer for floating point values. */
     protected static FloatBuffer _vbuf = BufferUtils.createFloatBuffer(16);
 
+    /** Scratch array for extracted pixels. */
+    protected static byte[] _pixels;
+
+    /** Scratch buffer for texture data. */
+    protected static ByteBuffer _data;
+
     /** Formats corresponding to one, two, three, or four color components. */
     protected static final int[] FORMATS = {
         GL11.GL_LUMINANCE, GL11.GL_LUMINANCE_ALPHA, GL11.GL_RGB, GL11.GL_RGBA };
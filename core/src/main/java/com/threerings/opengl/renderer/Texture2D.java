@@ -34,9 +34,10 @@ import org.lwjgl.opengl.ARBTextureRectangle;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL12;
 import org.lwjgl.opengl.GLContext;
-import org.lwjgl.util.glu.GLU;
 
 import com.threerings.opengl.util.GlUtil;
+import com.threerings.opengl.util.PixelUtil.MipFilter;
+import com.threerings.opengl.util.TextureData;
 
 /**
  * A two-dimensional texture.
@@ -166,15 +167,27 @@ public class Texture2D extends Texture
             width = GlUtil.nextPowerOfTwo(width);
             height = GlUtil.nextPowerOfTwo(height);
         }
-        _format = format;
-        _width = width;
-        _height = height;
-        _renderer.setTexture(this);
-        ByteBuffer data = getData(image, premultiply, width, height, rescale);
-        GLU.gluBuild2DMipmaps(
-            _target, format, width, height,
-            getFormat(image), GL11.GL_UNSIGNED_BYTE, data);
-        setMipmapBytes(data.remaining(), width, height);
+        setImage(format, TextureData.create(
+            image, premultiply, width, height, rescale, true, MipFilter.BOX), true);
+    }
+
+    /**
+     * Sets this texture to the supplied prepared data.  The dimensions of the data must be
+     * supported by the texture (that is, they must be powers of two unless the texture is a
+     * rectangle or non-power-of-two textures are supported).
+     *
+     * @param mipmap if true, upload all of the levels in the data (which should form a complete
+     * chain); otherwise, just the first.
+     */
+    public void setImage (int format, TextureData data, boolean mipmap)
+    {
+        setGenerateMipmaps(false);
+        int dformat = FORMATS[data.getComponents() - 1];
+        for (int ii = 0, nn = mipmap ? data.getLevelCount() : 1; ii < nn; ii++) {
+            setImage(
+                ii, format, data.getLevelWidth(ii), data.getLevelHeight(ii), false,
+                dformat, GL11.GL_UNSIGNED_BYTE, data.getLevel(ii));
+        }
     }
 
     /**
@@ -240,19 +253,19 @@ public class Texture2D extends Texture
             width = GlUtil.nextPowerOfTwo(width);
             height = GlUtil.nextPowerOfTwo(height);
         }
+        if (mipmap && !isRectangle() && !GLContext.getCapabilities().GL_SGIS_generate_mipmap) {
+            setImage(getInternalFormat(image, compress), TextureData.create(
+                image, premultiply, width, height, rescale, true, MipFilter.BOX), true);
+            _format = getFormat(image);
+            return;
+        }
         _renderer.setTexture(this);
         ByteBuffer data = getData(image, premultiply, width, height, rescale);
         if (mipmap && !isRectangle()) { // rectangles cannot be mipmapped
-            if (GLContext.getCapabilities().GL_SGIS_generate_mipmap) {
-                setGenerateMipmaps(true);
-                GL11.glTexImage2D(
-                    _target, 0, getInternalFormat(image, compress), _width = width,
-                    _height = height, 0, _format = getFormat(image), GL11.GL_UNSIGNED_BYTE, data);
-            } else {
-                GLU.gluBuild2DMipmaps(
-                    _target, getInternalFormat(image, compress), _width = width, _height = height,
-                    _format = getFormat(image), GL11.GL_UNSIGNED_BYTE, data);
-            }
+            setGenerateMipmaps(true);
+            GL11.glTexImage2D(
+                _target, 0, getInternalFormat(image, compress), _width = width,
+                _height = height, 0, _format = getFormat(image), GL11.GL_UNSIGNED_BYTE, data);
             setMipmapBytes(data.remaining(), width, height);
 
         } else {
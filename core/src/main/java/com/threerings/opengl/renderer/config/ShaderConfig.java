@@ -49,6 +49,7 @@ import com.threerings.expr.ObjectExpression;
 import com.threerings.expr.Scope;
 import com.threerings.expr.Transform3DExpression;
 import com.threerings.expr.Updater;
+import com.threerings.expr.util.ExpressionCompiler;
 import com.threerings.expr.util.ScopeUtil;
 import com.threerings.util.DeepObject;
 
@@ -610,7 +611,8 @@ public class ShaderConfig extends ParameterizedConfig
         protected Uniform createUniform (int location, Scope scope, List<Updater> updaters)
         {
             final FloatUniform uniform = new FloatUniform(location);
-            final FloatExpression.Evaluator eval = expression.createEvaluator(scope);
+            final FloatExpression.Evaluator eval =
+                ExpressionCompiler.createEvaluator(expression, scope);
             updaters.add(new Updater() {
                 public void update () {
                     uniform.value = eval.evaluate();
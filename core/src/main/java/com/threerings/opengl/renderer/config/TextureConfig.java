@@ -58,6 +58,7 @@ import com.threerings.export.Exportable;
 import com.threerings.expr.FloatExpression;
 import com.threerings.expr.Scope;
 import com.threerings.expr.Updater;
+import com.threerings.expr.util.ExpressionCompiler;
 import com.threerings.expr.util.ScopeUtil;
 import com.threerings.math.Box;
 import com.threerings.math.FloatMath;
@@ -84,6 +85,7 @@ import com.threerings.opengl.renderer.state.TextureState;
 import com.threerings.opengl.scene.config.ShadowConfig;
 import com.threerings.opengl.util.DDSLoader;
 import com.threerings.opengl.util.GlContext;
+import com.threerings.opengl.util.TextureData;
 
 import static com.threerings.opengl.Log.log;
 
@@ -97,21 +99,27 @@ public class TextureConfig extends ParameterizedConfig
     {
         DEFAULT(-1) {
             public int getConstant (BufferedImage image) {
-                switch (image == null ? 4 : image.getColorModel().getNumComponents()) {
-                    case 1: return LUMINANCE.getConstant(image);
-                    case 2: return LUMINANCE_ALPHA.getConstant(image);
-                    case 3: return RGB.getConstant(image);
-                    default: return RGBA.getConstant(image);
+                return getConstant(image == null ? 4 : image.getColorModel().getNumComponents());
+            }
+            public int getConstant (int components) {
+                switch (components) {
+                    case 1: return LUMINANCE.getConstant(null);
+                    case 2: return LUMINANCE_ALPHA.getConstant(null);
+                    case 3: return RGB.getConstant(null);
+                    default: return RGBA.getConstant(null);
                 }
             }
         },
         COMPRESSED_DEFAULT(-1) {
             public int getConstant (BufferedImage image) {
-                switch (image == null ? 4 : image.getColorModel().getNumComponents()) {
-                    case 1: return COMPRESSED_LUMINANCE.getConstant(image);
-                    case 2: return COMPRESSED_LUMINANCE_ALPHA.getConstant(image);
-                    case 3: return COMPRESSED_RGB.getConstant(image);
-                    default: return COMPRESSED_RGBA.getConstant(image);
+                return getConstant(image == null ? 4 : image.getColorModel().getNumComponents());
+            }
+            public int getConstant (int components) {
+                switch (components) {
+                    case 1: return COMPRESSED_LUMINANCE.getConstant(null);
+                    case 2: return COMPRESSED_LUMINANCE_ALPHA.getConstant(null);
+                    case 3: return COMPRESSED_RGB.getConstant(null);
+                    default: return COMPRESSED_RGBA.getConstant(null);
                 }
             }
         },
@@ -144,6 +152,17 @@ public class TextureConfig extends ParameterizedConfig
             return _constant;
         }
 
+        /**
+         * Returns the OpenGL constant associated with this format.
+         *
+         * @param components the number of image components, used to guess the format if
+         * necessary.
+         */
+        public int getConstant (int components)
+        {
+            return getConstant((BufferedImage)null);
+        }
+
         public boolean isSupported (boolean fallback)
         {
             return (!_depth || GLContext.getCapabilities().GL_ARB_depth_texture);
@@ -766,6 +785,14 @@ public class TextureConfig extends ParameterizedConfig
                         // fall through to the buffered image loader
                     }
                 }
+                if (colorizations.length == 0 && !border) {
+                    TextureData data = ctx.getImageCache().getTextureData(
+                        file, premultiply, mipmap);
+                    if (data != null) {
+                        texture.setImage(format.getConstant(data.getComponents()), data, mipmap);
+                        return;
+                    }
+                }
                 BufferedImage image = getImage(ctx, file, colorizations);
                 texture.setImage(
                     format.getConstant(image), border, image, premultiply, true, mipmap);
@@ -1585,7 +1612,8 @@ public class TextureConfig extends ParameterizedConfig
             if (frames.length == 0) {
                 return null;
             }
-            final FloatExpression.Evaluator frame = this.frame.createEvaluator(scope);
+            final FloatExpression.Evaluator frame =
+                ExpressionCompiler.createEvaluator(this.frame, scope);
             final Texture[] textures = new Texture[frames.length];
             for (int ii = 0; ii < textures.length; ii++) {
                 textures[ii] = frames[ii].getTexture(ctx);
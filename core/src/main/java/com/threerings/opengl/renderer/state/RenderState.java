@@ -25,6 +25,8 @@
 
 package com.threerings.opengl.renderer.state;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.threerings.opengl.renderer.Renderer;
 
 /**
@@ -130,6 +132,16 @@ public abstract class RenderState
         }
     }
 
+    /**
+     * Returns the state's unique identifier.  Because the immutable states are interned (see, for
+     * example, {@link AlphaState#getInstance}), batches sharing a state also share its id, which
+     * allows them to be sorted next to one another.
+     */
+    public final int getId ()
+    {
+        return _id;
+    }
+
     /**
      * Returns the type of this state.
      */
@@ -156,9 +168,15 @@ public abstract class RenderState
         return _dirty;
     }
 
+    /** The state's unique identifier. */
+    protected final int _id = _lastId.incrementAndGet();
+
     /** Set when the state has changed and must be reapplied. */
     protected boolean _dirty;
 
+    /** The last identifier assigned. */
+    protected static final AtomicInteger _lastId = new AtomicInteger();
+
     /** The default states. */
     protected static RenderState[] _defaults;
 }
@@ -52,6 +52,8 @@ import com.threerings.openal.SoundClipManager;
 import com.threerings.opengl.compositor.Compositable;
 import com.threerings.opengl.model.Model;
 import com.threerings.opengl.model.ModelAdapter;
+import com.threerings.opengl.model.PoseCache;
+import com.threerings.opengl.model.PoseEvaluator;
 import com.threerings.opengl.model.config.ModelConfig;
 import com.threerings.opengl.scene.SceneElement.TickPolicy;
 import com.threerings.opengl.util.GlContext;
@@ -86,6 +88,13 @@ public abstract class Scene extends DynamicScope
             _updater = updater;
         }
 
+        @Override
+        public boolean prepareTick (float elapsed, PoseEvaluator evaluator)
+        {
+            // the updater must run before any part of the tick
+            return _updater == null && super.prepareTick(elapsed, evaluator);
+        }
+
         @Override
         public void tick (float elapsed)
         {
@@ -379,6 +388,38 @@ public abstract class Scene extends DynamicScope
      */
     public abstract void getEffects (Box bounds, Collection<ViewerEffect> results);
 
+    /**
+     * Sets the evaluator to use to compute the poses of the ticked models in parallel, or null
+     * to tick the models serially (the default).  When an evaluator is set, the animations of the
+     * eligible models are ticked (and their callbacks dispatched) at the start of the scene tick,
+     * in the order in which the models themselves are ticked, after which the evaluator computes
+     * all of their poses at once.  The caller remains responsible for shutting the evaluator down.
+     */
+    public void setPoseEvaluator (PoseEvaluator evaluator)
+    {
+        if (_poseEvaluator != null) {
+            _poseEvaluator.begin(); // release any models left over from the last tick
+        }
+        _poseEvaluator = evaluator;
+    }
+
+    /**
+     * Returns a reference to the pose evaluator, if any.
+     */
+    public PoseEvaluator getPoseEvaluator ()
+    {
+        return _poseEvaluator;
+    }
+
+    /**
+     * Returns a reference to the cache through which articulated models configured to share
+     * their poses exchange them.  The cache is cleared at the start of each tick.
+     */
+    public PoseCache getPoseCache ()
+    {
+        return _poseCache;
+    }
+
     /**
      * Returns the size of the list of elements that we tick on every frame.
      */
@@ -547,9 +588,17 @@ public abstract class Scene extends DynamicScope
         if (_dumpInfluences) {
             log.info("INFLUENCES!!!");
         }
+        // discard the poses shared during the last tick
+        _poseCache.clear();
+
+        // evaluate the poses of the models we're about to tick, if we can do so in parallel
+        long tick = System.nanoTime();
+        if (_poseEvaluator != null) {
+            preparePoses(elapsed);
+        }
+
         // tick the elements that we always tick (in reverse order,
         // so that they can remove themselves)
-        long tick = System.nanoTime();
         for (int ii = _alwaysTick.size() - 1; ii >= 0; ii--) {
             _alwaysTick.get(ii).tick(elapsed);
         }
@@ -624,6 +673,35 @@ public abstract class Scene extends DynamicScope
         _disposed = true;
     }
 
+    /**
+     * Prepares the ticks of the elements that we're about to tick (in the same order), then
+     * evaluates the poses of the prepared models.
+     */
+    protected void preparePoses (float elapsed)
+    {
+        _poseEvaluator.begin();
+        for (int ii = _alwaysTick.size() - 1; ii >= 0; ii--) {
+            prepareTick(_alwaysTick.get(ii), elapsed);
+        }
+        if (!_visible.isEmpty()) {
+            // snapshot the list, as in the tick loop, in case preparation removes elements
+            for (SceneElement element : _visible.toArray(new SceneElement[_visible.size()])) {
+                prepareTick(element, elapsed);
+            }
+        }
+        _poseEvaluator.evaluate();
+    }
+
+    /**
+     * Prepares the tick of the specified element, if it's a model.
+     */
+    protected void prepareTick (SceneElement element, float elapsed)
+    {
+        if (element instanceof Model) {
+            ((Model)element).prepareTick(elapsed, _poseEvaluator);
+        }
+    }
+
     /**
      * Sets the effects acting on the viewer.
      */
@@ -792,6 +870,13 @@ public abstract class Scene extends DynamicScope
     /** The visible elements to tick. */
     protected HashSet<SceneElement> _visible = new HashSet<SceneElement>();
 
+    /** The evaluator used to compute model poses in parallel, if any. */
+    protected PoseEvaluator _poseEvaluator;
+
+    /** The cache of poses shared between articulated models. */
+    @Scoped
+    protected PoseCache _poseCache = new PoseCache();
+
     /** The elements whose influence sets must be updated. */
     protected HashSet<SceneElement> _updateInfluences = new HashSet<SceneElement>();
 
@@ -0,0 +1,117 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.tools;
+
+import java.awt.image.BufferedImage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import javax.imageio.ImageIO;
+
+import org.apache.tools.ant.BuildException;
+
+import com.threerings.tools.FileSetTask;
+
+import com.threerings.opengl.util.GlUtil;
+import com.threerings.opengl.util.ImageCache;
+import com.threerings.opengl.util.PixelUtil.MipFilter;
+import com.threerings.opengl.util.TextureData;
+
+import static com.threerings.opengl.Log.log;
+
+/**
+ * An Ant task that prepares the texture data (with complete mipmap chains) for a group of images
+ * and writes it alongside them, to be read by the {@link ImageCache} in place of the images.
+ */
+public class TextureDataTask extends FileSetTask
+{
+    /**
+     * Sets whether or not to premultiply the alpha (as the texture configs do by default).
+     */
+    public void setPremultiply (boolean premultiply)
+    {
+        _premultiply = premultiply;
+    }
+
+    /**
+     * Sets whether or not to rescale the images to power-of-two dimensions, for compatibility
+     * with hardware that doesn't support non-power-of-two textures.
+     */
+    public void setPowerOfTwo (boolean powerOfTwo)
+    {
+        _powerOfTwo = powerOfTwo;
+    }
+
+    /**
+     * Sets the filter with which to generate the mipmaps ("box" or "kaiser").
+     */
+    public void setFilter (String filter)
+    {
+        _filter = MipFilter.valueOf(filter.toUpperCase());
+    }
+
+    @Override
+    public void execute ()
+        throws BuildException
+    {
+        for (File source : getFiles()) {
+            File target = new File(source.getPath() + ImageCache.TEXTURE_DATA_SUFFIX);
+            try {
+                BufferedImage image = ImageIO.read(source);
+                if (image == null) {
+                    log.warning("Unknown image format.", "file", source);
+                    continue;
+                }
+                int width = image.getWidth(), height = image.getHeight();
+                if (_powerOfTwo) {
+                    width = GlUtil.nextPowerOfTwo(width);
+                    height = GlUtil.nextPowerOfTwo(height);
+                }
+                TextureData data = TextureData.create(
+                    image, _premultiply, width, height, true, true, _filter);
+                data.setChecksum(TextureData.getChecksum(source));
+                FileOutputStream out = new FileOutputStream(target);
+                try {
+                    data.write(out);
+                } finally {
+                    out.close();
+                }
+            } catch (Exception e) { // IOException, IllegalArgumentException
+                log.warning("Failed to write texture data.", "file", source, e);
+            }
+        }
+    }
+
+    /** Whether or not to premultiply the alpha. */
+    protected boolean _premultiply = true;
+
+    /** Whether or not to rescale the images to power-of-two dimensions. */
+    protected boolean _powerOfTwo;
+
+    /** The filter with which to generate the mipmaps. */
+    protected MipFilter _filter = MipFilter.BOX;
+}
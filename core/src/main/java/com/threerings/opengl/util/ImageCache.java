@@ -27,12 +27,20 @@ package com.threerings.opengl.util;
 
 import java.awt.image.BufferedImage;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 
 import java.util.Arrays;
+import java.util.Map;
+
+import org.lwjgl.opengl.GLContext;
+
+import com.google.common.collect.Maps;
 
 import com.threerings.media.image.Colorization;
 import com.threerings.media.image.ImageUtil;
+import com.threerings.resource.ResourceManager;
 
 import com.threerings.opengl.gui.Image;
 import com.threerings.opengl.renderer.Texture2D;
@@ -73,6 +81,99 @@ public class ImageCache extends ResourceCache
         return _buffered.getResource(new ImageKey(path, zations));
     }
 
+    /**
+     * Reads a buffered image without consulting or populating the cache.  Unlike the other
+     * methods, this may be called from any thread.
+     */
+    public BufferedImage decodeBufferedImage (String path)
+    {
+        BufferedImage image = null;
+        try {
+            if ((image = _ctx.getResourceManager().getImageResource(path)) == null) {
+                log.warning("Unknown image format.", "path", path);
+            }
+        } catch (IOException e) {
+            log.warning("Failed to read image.", "path", path, e);
+        }
+        return (image == null) ? ImageUtil.createErrorImage(64, 64) : image;
+    }
+
+    /**
+     * Stores an image decoded with {@link #decodeBufferedImage} in the cache.
+     */
+    public void putBufferedImage (String path, BufferedImage image)
+    {
+        _buffered.putResource(new ImageKey(path, new Colorization[0]), image);
+    }
+
+    /**
+     * Retrieves the prepared texture data for an image (either supplied by
+     * {@link #putTextureData} or read from the file written alongside the image by
+     * {@link com.threerings.opengl.tools.TextureDataTask}), if available and suitable for
+     * uploading to a two-dimensional texture with the specified parameters.  Unlike the images,
+     * texture data is not retained once retrieved.
+     *
+     * @return the texture data, or <code>null</code> if not available.
+     */
+    public TextureData getTextureData (String path, boolean premultiply, boolean mipmap)
+    {
+        TextureData data = _textureData.remove(path);
+        if (data == null && (data = readTextureData(path)) == null) {
+            return null;
+        }
+        int width = data.getWidth(), height = data.getHeight();
+        boolean pot = (width == GlUtil.nextPowerOfTwo(width) &&
+            height == GlUtil.nextPowerOfTwo(height));
+        return (data.isPremultiplied() == premultiply &&
+            (pot || GLContext.getCapabilities().GL_ARB_texture_non_power_of_two) &&
+            (!mipmap || data.getLevelCount() == TextureData.getLevelCount(width, height))) ?
+                data : null;
+    }
+
+    /**
+     * Reads the texture data written alongside an image without consulting or populating the
+     * cache.  Unlike the other methods, this may be called from any thread.
+     *
+     * @return the texture data, or <code>null</code> if there is no data or it is out of date.
+     */
+    public TextureData readTextureData (String path)
+    {
+        ResourceManager rsrcmgr = _ctx.getResourceManager();
+        File file = rsrcmgr.getResourceFile(path + TEXTURE_DATA_SUFFIX);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            TextureData data;
+            FileInputStream in = new FileInputStream(file);
+            try {
+                data = TextureData.read(in);
+            } finally {
+                in.close();
+            }
+            if (data == null) {
+                log.warning("Invalid texture data.", "path", path);
+            } else if (data.getChecksum() != TextureData.getChecksum(
+                    rsrcmgr.getResourceFile(path))) {
+                log.warning("Texture data out of date.", "path", path);
+            } else {
+                return data;
+            }
+        } catch (IOException e) {
+            log.warning("Failed to read texture data.", "path", path, e);
+        }
+        return null;
+    }
+
+    /**
+     * Stores texture data read with {@link #readTextureData} for retrieval by
+     * {@link #getTextureData}.
+     */
+    public void putTextureData (String path, TextureData data)
+    {
+        _textureData.put(path, data);
+    }
+
     /**
      * Clears the cache, forcing resources to be reloaded.
      */
@@ -80,6 +181,7 @@ public class ImageCache extends ResourceCache
     {
         _images.clear();
         _buffered.clear();
+        _textureData.clear();
     }
 
     /**
@@ -113,6 +215,9 @@ public class ImageCache extends ResourceCache
         }
     }
 
+    /** Texture data read ahead of time, mapped by image path. */
+    protected Map<String, TextureData> _textureData = Maps.newHashMap();
+
     /** The GUI image subcache. */
     protected Subcache<ImageKey, Image> _images = new Subcache<ImageKey, Image>() {
         protected Image loadResource (ImageKey key) {
@@ -141,18 +246,13 @@ public class ImageCache extends ResourceCache
             if (key.zations.length > 0) {
                 return ImageUtil.recolorImage(getBufferedImage(key.path), key.zations);
             }
-            BufferedImage image = null;
-            try {
-                if ((image = _ctx.getResourceManager().getImageResource(key.path)) == null) {
-                    log.warning("Unknown image format.", "path", key.path);
-                }
-            } catch (IOException e) {
-                log.warning("Failed to read image.", "path", key.path, e);
-            }
-            return (image == null) ? ImageUtil.createErrorImage(64, 64) : image;
+            return decodeBufferedImage(key.path);
         }
         protected String getResourcePath (ImageKey key) {
             return key.path;
         }
     };
+
+    /** The suffix appended to image paths to get the paths of their prepared texture data. */
+    public static final String TEXTURE_DATA_SUFFIX = ".mips";
 }
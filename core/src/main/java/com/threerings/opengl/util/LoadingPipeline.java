@@ -0,0 +1,411 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.util;
+
+import java.awt.image.BufferedImage;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import com.threerings.config.ConfigManager;
+import com.threerings.config.ConfigReference;
+import com.threerings.config.ManagedConfig;
+import com.threerings.config.util.DependencyGatherer;
+
+import com.threerings.opengl.renderer.config.TextureConfig;
+
+import static com.threerings.opengl.Log.log;
+
+/**
+ * Runs the CPU-only portions of resource loading (image decoding, geometry merging) on a pool of
+ * worker threads and hands the results back to the render thread, which applies them (and
+ * performs any GL uploads) under a per-frame time budget.  Config resolution is not thread-safe,
+ * so it remains on the render thread, but it is timed as a stage of its own.
+ */
+public class LoadingPipeline
+{
+    /**
+     * Receives the result of a background task on the render thread.
+     */
+    public interface Completion<T>
+    {
+        /**
+         * Called on the render thread with the result of the task, or <code>null</code> if the
+         * task failed.
+         */
+        public void complete (T result);
+    }
+
+    /**
+     * Accumulates the time spent in a single stage of the pipeline.
+     */
+    public static class Stage
+    {
+        /**
+         * Creates a new stage with the supplied name.
+         */
+        public Stage (String name)
+        {
+            _name = name;
+        }
+
+        /**
+         * Returns the name of the stage.
+         */
+        public String getName ()
+        {
+            return _name;
+        }
+
+        /**
+         * Records the execution of a unit of work.
+         *
+         * @param nanos the time taken, in nanoseconds.
+         * @param worker whether the work was performed on a worker thread.
+         */
+        public void record (long nanos, boolean worker)
+        {
+            (worker ? _workerNanos : _mainNanos).addAndGet(nanos);
+            _count.incrementAndGet();
+        }
+
+        /**
+         * Returns the total time spent in this stage on worker threads, in milliseconds.
+         */
+        public long getWorkerMillis ()
+        {
+            return _workerNanos.get() / 1000000L;
+        }
+
+        /**
+         * Returns the total time spent in this stage on the render thread, in milliseconds.
+         */
+        public long getMainMillis ()
+        {
+            return _mainNanos.get() / 1000000L;
+        }
+
+        /**
+         * Returns the number of units of work recorded.
+         */
+        public int getCount ()
+        {
+            return _count.get();
+        }
+
+        @Override
+        public String toString ()
+        {
+            return _name + "(n=" + getCount() + ", main=" + getMainMillis() +
+                "ms, worker=" + getWorkerMillis() + "ms)";
+        }
+
+        /** The name of the stage. */
+        protected final String _name;
+
+        /** The accumulated times. */
+        protected final AtomicLong _workerNanos = new AtomicLong(), _mainNanos = new AtomicLong();
+
+        /** The number of units of work recorded. */
+        protected final AtomicInteger _count = new AtomicInteger();
+    }
+
+    /** The name of the config resolution stage. */
+    public static final String RESOLVE = "resolve";
+
+    /** The name of the image decoding stage. */
+    public static final String DECODE = "decode";
+
+    /** The name of the geometry merging stage. */
+    public static final String MERGE = "merge";
+
+    /** The name of the (render thread) preload and upload stage. */
+    public static final String UPLOAD = "upload";
+
+    /**
+     * Creates a new pipeline with one worker per available processor, less one for the render
+     * thread.
+     */
+    public LoadingPipeline (GlContext ctx)
+    {
+        this(ctx, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Creates a new pipeline with the specified number of worker threads.
+     */
+    public LoadingPipeline (GlContext ctx, int threads)
+    {
+        _ctx = ctx;
+        _executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread (Runnable runnable) {
+                Thread thread = new Thread(runnable,
+                    "Loading Pipeline Worker " + _threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Submits a task to be run on a worker thread.  When it completes, the completion will be
+     * notified on the render thread from within {@link #processCompletions}.
+     */
+    public <T> void submit (
+        final String stage, final Callable<T> task, final Completion<T> completion)
+    {
+        final Stage tstage = getStage(stage);
+        _pending.incrementAndGet();
+        _executor.execute(new Runnable() {
+            public void run () {
+                T result = null;
+                long start = System.nanoTime();
+                try {
+                    result = task.call();
+                } catch (Throwable t) {
+                    log.warning("Background loading task failed.", "stage", stage, t);
+                }
+                tstage.record(System.nanoTime() - start, true);
+                final T fresult = result;
+                _completions.add(new Runnable() {
+                    public void run () {
+                        completion.complete(fresult);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Processes the completions of finished background tasks on the render thread.
+     *
+     * @param duration the maximum amount of time to spend, in milliseconds.
+     * @return true if there are no more tasks pending.
+     */
+    public boolean processCompletions (long duration)
+    {
+        long end = System.currentTimeMillis() + duration;
+        Runnable completion;
+        while (System.currentTimeMillis() < end && (completion = _completions.poll()) != null) {
+            try {
+                completion.run();
+            } catch (Throwable t) {
+                log.warning("Loading completion failed.", t);
+            }
+            _pending.decrementAndGet();
+        }
+        return isIdle();
+    }
+
+    /**
+     * Checks whether all submitted tasks have run and been completed.
+     */
+    public boolean isIdle ()
+    {
+        return _pending.get() == 0;
+    }
+
+    /**
+     * Returns the number of tasks submitted but not yet completed.
+     */
+    public int getPendingCount ()
+    {
+        return _pending.get();
+    }
+
+    /**
+     * Resolves the supplied config's dependencies on the render thread and queues up the images
+     * referenced by any texture configs found for decoding on the worker threads.  Each config is
+     * only visited once over the life of the pipeline.
+     */
+    public void prefetchImages (Class<? extends ManagedConfig> clazz, ConfigReference<?> ref)
+    {
+        long start = System.nanoTime();
+        HashSet<String> paths = new HashSet<String>();
+        gatherImages(clazz, ref, paths);
+        for (String path : paths) {
+            if (_images.add(path)) {
+                decodeImage(path);
+            }
+        }
+        getStage(RESOLVE).record(System.nanoTime() - start, false);
+    }
+
+    /**
+     * Returns a reference to the named stage, creating it if necessary.
+     */
+    public Stage getStage (String name)
+    {
+        synchronized (_stages) {
+            Stage stage = _stages.get(name);
+            if (stage == null) {
+                _stages.put(name, stage = new Stage(name));
+            }
+            return stage;
+        }
+    }
+
+    /**
+     * Returns a summary of the time spent in each stage.
+     */
+    public String getTimings ()
+    {
+        synchronized (_stages) {
+            return _stages.values().toString();
+        }
+    }
+
+    /**
+     * Shuts down the worker threads.  Any completions not yet processed are discarded.
+     */
+    public void shutdown ()
+    {
+        _executor.shutdownNow();
+        _completions.clear();
+        _pending.set(0);
+    }
+
+    /**
+     * Adds the images referenced by the identified config and its dependencies to the set.
+     */
+    protected void gatherImages (
+        Class<? extends ManagedConfig> clazz, ConfigReference<?> ref, HashSet<String> paths)
+    {
+        if (ref == null || !_visited.add(new ConfigKey(clazz, ref))) {
+            return;
+        }
+        ConfigManager cfgmgr = _ctx.getConfigManager();
+        @SuppressWarnings("unchecked") Class<ManagedConfig> mclazz =
+            (Class<ManagedConfig>)clazz;
+        @SuppressWarnings("unchecked") ConfigReference<ManagedConfig> mref =
+            (ConfigReference<ManagedConfig>)ref;
+        ManagedConfig config = cfgmgr.getConfig(mclazz, mref);
+        if (config == null) {
+            return;
+        }
+        if (config instanceof TextureConfig) {
+            ((TextureConfig)config).implementation.getUpdateResources(paths);
+        }
+        for (Map.Entry<Class<? extends ManagedConfig>, ConfigReference<?>> entry :
+                DependencyGatherer.gather(cfgmgr, config).entries()) {
+            gatherImages(entry.getKey(), entry.getValue(), paths);
+        }
+    }
+
+    /**
+     * Decodes the specified image (or reads its prepared texture data) on a worker thread and
+     * adds it to the image cache.
+     */
+    protected void decodeImage (final String path)
+    {
+        if (path.endsWith(".dds")) {
+            return; // loaded directly into the texture
+        }
+        // if there's prepared texture data for the image, we can read that instead
+        final ImageCache cache = _ctx.getImageCache();
+        submit(DECODE, new Callable<Object>() {
+            public Object call () throws Exception {
+                TextureData data = cache.readTextureData(path);
+                return (data == null) ? cache.decodeBufferedImage(path) : data;
+            }
+        }, new Completion<Object>() {
+            public void complete (Object result) {
+                if (result instanceof TextureData) {
+                    cache.putTextureData(path, (TextureData)result);
+                } else if (result != null) {
+                    cache.putBufferedImage(path, (BufferedImage)result);
+                }
+            }
+        });
+    }
+
+    /**
+     * Identifies a visited config.
+     */
+    protected static class ConfigKey
+    {
+        public ConfigKey (Class<?> clazz, ConfigReference<?> ref)
+        {
+            _clazz = clazz;
+            _ref = ref;
+        }
+
+        @Override
+        public int hashCode ()
+        {
+            return 31*_clazz.hashCode() + _ref.hashCode();
+        }
+
+        @Override
+        public boolean equals (Object other)
+        {
+            ConfigKey okey = (ConfigKey)other;
+            return _clazz == okey._clazz && _ref.equals(okey._ref);
+        }
+
+        /** The config class. */
+        protected final Class<?> _clazz;
+
+        /** The config reference. */
+        protected final ConfigReference<?> _ref;
+    }
+
+    /** The application context. */
+    protected GlContext _ctx;
+
+    /** The worker threads. */
+    protected ExecutorService _executor;
+
+    /** The number of worker threads created. */
+    protected AtomicInteger _threadCount = new AtomicInteger();
+
+    /** The number of tasks submitted but not yet completed. */
+    protected AtomicInteger _pending = new AtomicInteger();
+
+    /** Completions waiting to be run on the render thread. */
+    protected ConcurrentLinkedQueue<Runnable> _completions = new ConcurrentLinkedQueue<Runnable>();
+
+    /** The configs visited when prefetching. */
+    protected Set<ConfigKey> _visited = Sets.newHashSet();
+
+    /** The image paths queued for decoding. */
+    protected Set<String> _images = Sets.newHashSet();
+
+    /** The stages, in order of creation. */
+    protected Map<String, Stage> _stages = Maps.newLinkedHashMap();
+}
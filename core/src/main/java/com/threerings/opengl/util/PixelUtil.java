@@ -0,0 +1,420 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pixel processing for texture data that works directly on arrays of interleaved unsigned bytes
+ * (luminance, luminance/alpha, RGB, or RGBA, according to the number of components), rather than
+ * drawing through Java2D.  None of the methods touch OpenGL, so they may be called from any
+ * thread.
+ */
+public class PixelUtil
+{
+    /** The filters available for generating mipmaps. */
+    public enum MipFilter
+    {
+        /** Averages each 2x2 block. */
+        BOX,
+
+        /** Applies a separable Kaiser-windowed sinc, which keeps the smaller levels sharper. */
+        KAISER;
+    }
+
+    /**
+     * Returns the number of components in the pixels of the specified image.
+     */
+    public static int getComponents (BufferedImage image)
+    {
+        return image.getColorModel().getNumComponents();
+    }
+
+    /**
+     * Extracts the pixels of an image, top row first, with non-premultiplied alpha.
+     *
+     * @param result an array to reuse if large enough, or <code>null</code>.
+     * @return the pixel array (which may be larger than necessary, if reused).
+     */
+    public static byte[] getPixels (BufferedImage image, byte[] result)
+    {
+        int width = image.getWidth(), height = image.getHeight();
+        int ncomps = getComponents(image);
+        int length = width * height * ncomps;
+        if (result == null || result.length < length) {
+            result = new byte[length];
+        }
+        if (!(getBytePixels(image, ncomps, result) || getIntPixels(image, ncomps, result))) {
+            getGenericPixels(image, ncomps, result);
+        }
+        return result;
+    }
+
+    /**
+     * Converts pixels (top row first) to texture data (bottom row first), resizing them if
+     * necessary and optionally premultiplying the alpha.  If not rescaling, the pixels are placed
+     * in the lower left corner of the destination and any remaining area is cleared.
+     *
+     * @param dest the buffer in which to place the data, starting at its current position.  Its
+     * position will be advanced past the data.
+     */
+    public static void getData (
+        byte[] pixels, int iwidth, int iheight, int ncomps, boolean premultiply,
+        int width, int height, boolean rescale, ByteBuffer dest)
+    {
+        if (rescale && (width != iwidth || height != iheight)) {
+            pixels = resample(pixels, iwidth, iheight, ncomps, width, height, null);
+            iwidth = width;
+            iheight = height;
+        }
+        int start = dest.position();
+        int rowLength = Math.min(width, iwidth) * ncomps;
+        int padding = width * ncomps - rowLength;
+        for (int yy = 0, rows = Math.min(height, iheight); yy < rows; yy++) {
+            dest.put(pixels, (iheight - yy - 1) * iwidth * ncomps, rowLength);
+            for (int ii = 0; ii < padding; ii++) {
+                dest.put((byte)0);
+            }
+        }
+        for (int ii = Math.max(0, height - iheight) * width * ncomps; ii > 0; ii--) {
+            dest.put((byte)0);
+        }
+        if (premultiply) {
+            premultiply(dest, start, width * height, ncomps);
+        }
+    }
+
+    /**
+     * Premultiplies the alpha of the specified pixels in the supplied buffer (using absolute
+     * indices, so the buffer's position is unaffected).  Pixels without alpha are left alone.
+     */
+    public static void premultiply (ByteBuffer buf, int offset, int count, int ncomps)
+    {
+        if (ncomps != 2 && ncomps != 4) {
+            return;
+        }
+        int aoff = ncomps - 1;
+        for (int ii = 0, idx = offset; ii < count; ii++, idx += ncomps) {
+            int alpha = buf.get(idx + aoff) & 0xFF;
+            if (alpha == 255) {
+                continue;
+            }
+            for (int cc = 0; cc < aoff; cc++) {
+                buf.put(idx + cc, (byte)(((buf.get(idx + cc) & 0xFF) * alpha + 127) / 255));
+            }
+        }
+    }
+
+    /**
+     * Resamples pixels to a new size using bilinear interpolation.
+     *
+     * @param result an array to reuse if large enough, or <code>null</code>.
+     */
+    public static byte[] resample (
+        byte[] src, int swidth, int sheight, int ncomps, int width, int height, byte[] result)
+    {
+        int length = width * height * ncomps;
+        if (result == null || result.length < length) {
+            result = new byte[length];
+        }
+        float xscale = (float)swidth / width, yscale = (float)sheight / height;
+        int sstride = swidth * ncomps;
+        for (int yy = 0, didx = 0; yy < height; yy++) {
+            float sy = Math.max(0f, (yy + 0.5f) * yscale - 0.5f);
+            int y0 = Math.min((int)sy, sheight - 1), y1 = Math.min(y0 + 1, sheight - 1);
+            float fy = sy - y0;
+            for (int xx = 0; xx < width; xx++) {
+                float sx = Math.max(0f, (xx + 0.5f) * xscale - 0.5f);
+                int x0 = Math.min((int)sx, swidth - 1), x1 = Math.min(x0 + 1, swidth - 1);
+                float fx = sx - x0;
+                int i00 = y0*sstride + x0*ncomps, i01 = y0*sstride + x1*ncomps;
+                int i10 = y1*sstride + x0*ncomps, i11 = y1*sstride + x1*ncomps;
+                for (int cc = 0; cc < ncomps; cc++) {
+                    float top = (src[i00 + cc] & 0xFF) +
+                        ((src[i01 + cc] & 0xFF) - (src[i00 + cc] & 0xFF)) * fx;
+                    float bottom = (src[i10 + cc] & 0xFF) +
+                        ((src[i11 + cc] & 0xFF) - (src[i10 + cc] & 0xFF)) * fx;
+                    result[didx++] = (byte)(top + (bottom - top) * fy + 0.5f);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the next level of a mipmap chain, halving each dimension (to no less than one).
+     *
+     * @param result an array to reuse if large enough, or <code>null</code>.
+     */
+    public static byte[] halve (
+        byte[] src, int swidth, int sheight, int ncomps, MipFilter filter, byte[] result)
+    {
+        int width = Math.max(1, swidth / 2), height = Math.max(1, sheight / 2);
+        int length = width * height * ncomps;
+        if (result == null || result.length < length) {
+            result = new byte[length];
+        }
+        if (filter == MipFilter.KAISER) {
+            halveKaiser(src, swidth, sheight, ncomps, width, height, result);
+        } else {
+            halveBox(src, swidth, sheight, ncomps, width, height, result);
+        }
+        return result;
+    }
+
+    /**
+     * Halves pixels by averaging each 2x2 block (or pair, for dimensions of one).
+     */
+    protected static void halveBox (
+        byte[] src, int swidth, int sheight, int ncomps, int width, int height, byte[] result)
+    {
+        int sstride = swidth * ncomps;
+        int xstep = (swidth > 1) ? ncomps : 0, ystep = (sheight > 1) ? sstride : 0;
+        for (int yy = 0, didx = 0; yy < height; yy++) {
+            int row = (sheight > 1 ? yy * 2 : yy) * sstride;
+            for (int xx = 0; xx < width; xx++) {
+                int sidx = row + (swidth > 1 ? xx * 2 : xx) * ncomps;
+                for (int cc = 0; cc < ncomps; cc++, sidx++) {
+                    result[didx++] = (byte)((
+                        (src[sidx] & 0xFF) + (src[sidx + xstep] & 0xFF) +
+                        (src[sidx + ystep] & 0xFF) + (src[sidx + ystep + xstep] & 0xFF) +
+                        2) >> 2);
+                }
+            }
+        }
+    }
+
+    /**
+     * Halves pixels with a separable Kaiser-windowed sinc filter, clamping at the edges.
+     */
+    protected static void halveKaiser (
+        byte[] src, int swidth, int sheight, int ncomps, int width, int height, byte[] result)
+    {
+        // filter horizontally into a float array, then vertically into the result
+        float[] tmp = new float[width * sheight * ncomps];
+        int taps = KAISER_WEIGHTS.length, radius = taps / 2;
+        for (int yy = 0; yy < sheight; yy++) {
+            int srow = yy * swidth * ncomps, trow = yy * width * ncomps;
+            for (int xx = 0; xx < width; xx++) {
+                int first = (swidth > 1 ? xx * 2 : xx) - radius + 1;
+                for (int cc = 0; cc < ncomps; cc++) {
+                    float sum = 0f;
+                    for (int tt = 0; tt < taps; tt++) {
+                        int sx = Math.min(Math.max(first + tt, 0), swidth - 1);
+                        sum += (src[srow + sx*ncomps + cc] & 0xFF) * KAISER_WEIGHTS[tt];
+                    }
+                    tmp[trow + xx*ncomps + cc] = sum;
+                }
+            }
+        }
+        int tstride = width * ncomps;
+        for (int yy = 0, didx = 0; yy < height; yy++) {
+            int first = (sheight > 1 ? yy * 2 : yy) - radius + 1;
+            for (int xx = 0; xx < tstride; xx++) {
+                float sum = 0f;
+                for (int tt = 0; tt < taps; tt++) {
+                    int sy = Math.min(Math.max(first + tt, 0), sheight - 1);
+                    sum += tmp[sy*tstride + xx] * KAISER_WEIGHTS[tt];
+                }
+                result[didx++] = (byte)Math.min(Math.max((int)(sum + 0.5f), 0), 255);
+            }
+        }
+    }
+
+    /**
+     * Extracts the pixels of an image backed by interleaved bytes, if possible.
+     *
+     * @return true if the pixels were extracted, false if the image is not of a suitable type.
+     */
+    protected static boolean getBytePixels (BufferedImage image, int ncomps, byte[] result)
+    {
+        Raster raster = image.getRaster();
+        if (!(raster.getDataBuffer() instanceof DataBufferByte &&
+                raster.getSampleModel() instanceof PixelInterleavedSampleModel &&
+                image.getColorModel() instanceof ComponentColorModel &&
+                !image.isAlphaPremultiplied() && raster.getNumBands() == ncomps)) {
+            return false;
+        }
+        ComponentColorModel cmodel = (ComponentColorModel)image.getColorModel();
+        if (ncomps >= 3 && !cmodel.getColorSpace().isCS_sRGB()) {
+            return false;
+        }
+        PixelInterleavedSampleModel smodel = (PixelInterleavedSampleModel)raster.getSampleModel();
+        DataBufferByte dbuf = (DataBufferByte)raster.getDataBuffer();
+        byte[] data = dbuf.getData();
+        int pstride = smodel.getPixelStride(), sstride = smodel.getScanlineStride();
+        int[] offsets = smodel.getBandOffsets();
+        int base = dbuf.getOffset() - raster.getSampleModelTranslateY()*sstride -
+            raster.getSampleModelTranslateX()*pstride;
+        int width = image.getWidth(), height = image.getHeight();
+        for (int yy = 0, didx = 0; yy < height; yy++) {
+            int sidx = base + yy*sstride;
+            for (int xx = 0; xx < width; xx++, sidx += pstride) {
+                for (int cc = 0; cc < ncomps; cc++) {
+                    result[didx++] = data[sidx + offsets[cc]];
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Extracts the pixels of an image backed by packed ints, if possible.
+     *
+     * @return true if the pixels were extracted, false if the image is not of a suitable type.
+     */
+    protected static boolean getIntPixels (BufferedImage image, int ncomps, byte[] result)
+    {
+        Raster raster = image.getRaster();
+        if (!(raster.getDataBuffer() instanceof DataBufferInt &&
+                raster.getSampleModel() instanceof SinglePixelPackedSampleModel &&
+                image.getColorModel() instanceof DirectColorModel &&
+                !image.isAlphaPremultiplied() && ncomps >= 3)) {
+            return false;
+        }
+        DirectColorModel cmodel = (DirectColorModel)image.getColorModel();
+        int[] masks = { cmodel.getRedMask(), cmodel.getGreenMask(), cmodel.getBlueMask(),
+            cmodel.getAlphaMask() };
+        int[] shifts = new int[ncomps];
+        for (int cc = 0; cc < ncomps; cc++) {
+            shifts[cc] = Integer.numberOfTrailingZeros(masks[cc]);
+            if ((masks[cc] >>> shifts[cc]) != 0xFF) {
+                return false;
+            }
+        }
+        SinglePixelPackedSampleModel smodel =
+            (SinglePixelPackedSampleModel)raster.getSampleModel();
+        DataBufferInt dbuf = (DataBufferInt)raster.getDataBuffer();
+        int[] data = dbuf.getData();
+        int sstride = smodel.getScanlineStride();
+        int base = dbuf.getOffset() - raster.getSampleModelTranslateY()*sstride -
+            raster.getSampleModelTranslateX();
+        int width = image.getWidth(), height = image.getHeight();
+        for (int yy = 0, didx = 0; yy < height; yy++) {
+            for (int xx = 0, sidx = base + yy*sstride; xx < width; xx++) {
+                int pixel = data[sidx++];
+                for (int cc = 0; cc < ncomps; cc++) {
+                    result[didx++] = (byte)(pixel >>> shifts[cc]);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Extracts the pixels of an arbitrary image a row at a time.
+     */
+    protected static void getGenericPixels (BufferedImage image, int ncomps, byte[] result)
+    {
+        int width = image.getWidth(), height = image.getHeight();
+        Raster raster = image.getRaster();
+        if (image.getColorModel() instanceof ComponentColorModel &&
+                !image.isAlphaPremultiplied() && raster.getNumBands() == ncomps &&
+                (ncomps < 3 || image.getColorModel().getColorSpace().isCS_sRGB())) {
+            // scale the samples (of 16 bits, say) down to bytes
+            int[] max = new int[ncomps];
+            for (int cc = 0; cc < ncomps; cc++) {
+                max[cc] = (1 << image.getColorModel().getComponentSize(cc)) - 1;
+            }
+            int[] row = new int[width * ncomps];
+            for (int yy = 0, didx = 0; yy < height; yy++) {
+                raster.getPixels(0, yy, width, 1, row);
+                for (int ii = 0; ii < row.length; ii++) {
+                    int mval = max[ii % ncomps];
+                    result[didx++] = (byte)(((long)row[ii] * 255 + mval/2) / mval);
+                }
+            }
+            return;
+        }
+
+        // otherwise, let the color model convert to (non-premultiplied) ARGB
+        int[] row = new int[width];
+        for (int yy = 0, didx = 0; yy < height; yy++) {
+            image.getRGB(0, yy, width, 1, row, 0, width);
+            for (int xx = 0; xx < width; xx++) {
+                int argb = row[xx];
+                if (ncomps <= 2) {
+                    result[didx++] = (byte)(argb >> 16);
+                } else {
+                    result[didx++] = (byte)(argb >> 16);
+                    result[didx++] = (byte)(argb >> 8);
+                    result[didx++] = (byte)argb;
+                }
+                if (ncomps == 2 || ncomps == 4) {
+                    result[didx++] = (byte)(argb >>> 24);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the weights of the Kaiser-windowed sinc filter used to halve images.
+     */
+    protected static float[] createKaiserWeights (int radius, float alpha)
+    {
+        float[] weights = new float[radius * 2];
+        float total = 0f;
+        for (int ii = 0; ii < weights.length; ii++) {
+            // the taps lie at half-pixel offsets from the center of the destination pixel, which
+            // is twice as wide as the source pixels
+            double x = (ii - radius + 0.5) / 2.0;
+            double sinc = Math.sin(Math.PI * x) / (Math.PI * x);
+            double t = (ii - radius + 0.5) / radius;
+            double window = besselI0(alpha * Math.sqrt(1.0 - t*t)) / besselI0(alpha);
+            total += (weights[ii] = (float)(sinc * window));
+        }
+        for (int ii = 0; ii < weights.length; ii++) {
+            weights[ii] /= total;
+        }
+        return weights;
+    }
+
+    /**
+     * Computes the zeroth order modified Bessel function of the first kind.
+     */
+    protected static double besselI0 (double x)
+    {
+        double sum = 1.0, term = 1.0, hx = x / 2.0;
+        for (int kk = 1; kk < 32 && term > sum * 1e-12; kk++) {
+            term *= (hx / kk) * (hx / kk);
+            sum += term;
+        }
+        return sum;
+    }
+
+    /** The weights of the Kaiser filter taps. */
+    protected static final float[] KAISER_WEIGHTS = createKaiserWeights(3, 4f);
+}
@@ -91,6 +91,12 @@ public abstract class Preloadable extends DeepObject
             return _ref;
         }
 
+        @Override
+        public void prefetch (LoadingPipeline pipeline)
+        {
+            pipeline.prefetchImages(_clazz, _ref);
+        }
+
         @Override
         public void preload (GlContext ctx)
         {
@@ -138,6 +144,12 @@ public abstract class Preloadable extends DeepObject
             return _ref;
         }
 
+        @Override
+        public void prefetch (LoadingPipeline pipeline)
+        {
+            pipeline.prefetchImages(ModelConfig.class, _ref);
+        }
+
         @Override
         public void preload (GlContext ctx)
         {
@@ -186,6 +198,12 @@ public abstract class Preloadable extends DeepObject
             return _ref;
         }
 
+        @Override
+        public void prefetch (LoadingPipeline pipeline)
+        {
+            pipeline.prefetchImages(AnimationConfig.class, _ref);
+        }
+
         @Override
         public void preload (GlContext ctx)
         {
@@ -212,6 +230,15 @@ public abstract class Preloadable extends DeepObject
         protected com.threerings.opengl.model.Animation _anim;
     }
 
+    /**
+     * Queues up any of this resource's CPU-only loading work (such as image decoding) on the
+     * supplied pipeline, so that it can proceed in the background before {@link #preload}.
+     */
+    public void prefetch (LoadingPipeline pipeline)
+    {
+        // nothing by default
+    }
+
     /**
      * Preloads this resource and creates a reference to it, preventing it from being
      * garbage-collected.
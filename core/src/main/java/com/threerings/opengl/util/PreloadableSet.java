@@ -43,6 +43,32 @@ public class PreloadableSet extends HashSet<Preloadable>
         _ctx = ctx;
     }
 
+    /**
+     * Prefetches a batch of resources in the set, resolving their configs and queuing their
+     * background work on the supplied pipeline.  This should be run to completion before
+     * {@link #preloadBatch} is first called.
+     *
+     * @param duration the maximum amount of time to spend on the batch.
+     * @return the percentage of the total resources prefetched, from zero to one.
+     */
+    public float prefetchBatch (LoadingPipeline pipeline, long duration)
+    {
+        if (_unfetched != null && _unfetched.isEmpty()) {
+            return 1f;
+        }
+        if (_unfetched == null) {
+            _unfetched = Lists.newArrayList(this);
+        }
+        long end = System.currentTimeMillis() + duration;
+        for (int ii = _unfetched.size() - 1; ii >= 0 && System.currentTimeMillis() < end; ii--) {
+            _unfetched.remove(ii).prefetch(pipeline);
+        }
+        if (_unfetched.isEmpty()) {
+            return 1f;
+        }
+        return 1f - (float)_unfetched.size() / size();
+    }
+
     /**
      * Preloads a batch of the default duration.
      *
@@ -96,6 +122,9 @@ public class PreloadableSet extends HashSet<Preloadable>
     /** The application context. */
     protected GlContext _ctx;
 
+    /** The list of resources remaining to be prefetched. */
+    protected List<Preloadable> _unfetched;
+
     /** The list of resources remaining to be preloaded. */
     protected List<Preloadable> _remaining;
 
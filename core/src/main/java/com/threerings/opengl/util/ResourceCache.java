@@ -69,10 +69,18 @@ public abstract class ResourceCache
                 }
             }
             V resource = loadResource(key);
-            _resources.put(key, new CachedResource<V>(resource, getResourceFile(key)));
+            putResource(key, resource);
             return resource;
         }
 
+        /**
+         * Stores a resource loaded elsewhere (for instance, on a background thread) in the cache.
+         */
+        public void putResource (K key, V resource)
+        {
+            _resources.put(key, new CachedResource<V>(resource, getResourceFile(key)));
+        }
+
         /**
          * Clears the subcache, forcing all resources to be reloaded.
          */
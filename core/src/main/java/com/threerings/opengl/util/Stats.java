@@ -69,6 +69,8 @@ public class Stats extends SimpleOverlay
             _stats = _textFactory.createText(
                 fps + " fps (" + "b: " + renderer.getBatchCount() + "; " + "p: " +
                 renderer.getPrimitiveCount() + "; tc: " + renderer.getTextureChangeCount() +
+                "; sc: " + renderer.getStateChangeCount() + "/" +
+                (renderer.getStateChangeCount() + renderer.getStateSkipCount()) +
                 ") [bo: " + renderer.getBufferObjectCount() + "/" +
                 renderer.getBufferObjectBytes()/1024 + "k, tx: " + renderer.getTextureCount() +
                 "/" + renderer.getTextureBytes()/1024 + "k]",
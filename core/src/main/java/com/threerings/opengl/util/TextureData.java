@@ -0,0 +1,308 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.util;
+
+import java.awt.image.BufferedImage;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.nio.ByteBuffer;
+
+import java.util.zip.CRC32;
+
+import org.lwjgl.BufferUtils;
+
+import com.threerings.opengl.util.PixelUtil.MipFilter;
+
+/**
+ * A chain of mipmap levels ready to be uploaded to a texture.  Texture data may be prepared on
+ * any thread (the levels are held in a single direct buffer), and may be written to a file at
+ * build time (see {@link com.threerings.opengl.tools.TextureDataTask}) so that at runtime, the
+ * image need not even be decoded.
+ */
+public class TextureData
+{
+    /**
+     * Prepares the texture data for an image.
+     *
+     * @param width the width of the first level.
+     * @param height the height of the first level.
+     * @param rescale if true, rescale the image to the requested size; otherwise, place it in
+     * the lower left corner.
+     * @param mipmap if true, generate the complete chain of mipmap levels.
+     */
+    public static TextureData create (
+        BufferedImage image, boolean premultiply, int width, int height,
+        boolean rescale, boolean mipmap, MipFilter filter)
+    {
+        // convert the image to the first level (without premultiplying, so that we can filter
+        // the smaller levels correctly)
+        int ncomps = PixelUtil.getComponents(image);
+        byte[] level = new byte[width * height * ncomps];
+        PixelUtil.getData(
+            PixelUtil.getPixels(image, null), image.getWidth(), image.getHeight(), ncomps,
+            false, width, height, rescale, ByteBuffer.wrap(level));
+
+        // allocate the buffer for all the levels and copy them in as we go
+        int count = mipmap ? getLevelCount(width, height) : 1;
+        int[] offsets = new int[count + 1];
+        for (int ii = 0, ww = width, hh = height; ii < count; ii++) {
+            offsets[ii + 1] = offsets[ii] + ww*hh*ncomps;
+            ww = Math.max(1, ww / 2);
+            hh = Math.max(1, hh / 2);
+        }
+        ByteBuffer data = BufferUtils.createByteBuffer(offsets[count]);
+        byte[] next = null;
+        for (int ii = 0, ww = width, hh = height; ii < count; ii++) {
+            data.put(level, 0, ww*hh*ncomps);
+            if (ii + 1 < count) {
+                next = PixelUtil.halve(level, ww, hh, ncomps, filter, next);
+                byte[] tmp = level;
+                level = next;
+                next = tmp;
+                ww = Math.max(1, ww / 2);
+                hh = Math.max(1, hh / 2);
+            }
+        }
+        if (premultiply) {
+            PixelUtil.premultiply(data, 0, offsets[count] / ncomps, ncomps);
+        }
+        data.rewind();
+        return new TextureData(ncomps, premultiply, width, height, offsets, data);
+    }
+
+    /**
+     * Reads texture data written by {@link #write}.
+     *
+     * @return the texture data, or <code>null</code> if the stream doesn't contain valid data.
+     */
+    public static TextureData read (InputStream in)
+        throws IOException
+    {
+        DataInputStream din = new DataInputStream(new BufferedInputStream(in));
+        if (din.readInt() != MAGIC || din.readShort() != VERSION) {
+            return null;
+        }
+        long checksum = din.readLong();
+        int ncomps = din.readByte();
+        boolean premultiplied = din.readBoolean();
+        int width = din.readInt(), height = din.readInt();
+        int count = din.readByte();
+        int[] offsets = new int[count + 1];
+        for (int ii = 0, ww = width, hh = height; ii < count; ii++) {
+            offsets[ii + 1] = offsets[ii] + ww*hh*ncomps;
+            ww = Math.max(1, ww / 2);
+            hh = Math.max(1, hh / 2);
+        }
+        byte[] bytes = new byte[offsets[count]];
+        din.readFully(bytes);
+        ByteBuffer data = BufferUtils.createByteBuffer(bytes.length);
+        data.put(bytes).rewind();
+        TextureData tdata = new TextureData(ncomps, premultiplied, width, height, offsets, data);
+        tdata._checksum = checksum;
+        return tdata;
+    }
+
+    /**
+     * Computes the checksum of a source image file, used to determine whether texture data
+     * generated from it is up-to-date.
+     */
+    public static long getChecksum (File file)
+        throws IOException
+    {
+        CRC32 crc = new CRC32();
+        FileInputStream in = new FileInputStream(file);
+        try {
+            byte[] buf = new byte[8192];
+            for (int read; (read = in.read(buf)) != -1; ) {
+                crc.update(buf, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Returns the number of levels in a complete mipmap chain for the specified dimensions.
+     */
+    public static int getLevelCount (int width, int height)
+    {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+
+    /**
+     * Creates a new texture data object.
+     *
+     * @param offsets the offsets of the levels within the data, followed by its total length.
+     */
+    public TextureData (
+        int components, boolean premultiplied, int width, int height,
+        int[] offsets, ByteBuffer data)
+    {
+        _components = components;
+        _premultiplied = premultiplied;
+        _width = width;
+        _height = height;
+        _offsets = offsets;
+        _data = data;
+    }
+
+    /**
+     * Returns the number of components in each pixel.
+     */
+    public int getComponents ()
+    {
+        return _components;
+    }
+
+    /**
+     * Checks whether the alpha has been premultiplied.
+     */
+    public boolean isPremultiplied ()
+    {
+        return _premultiplied;
+    }
+
+    /**
+     * Returns the width of the first level.
+     */
+    public int getWidth ()
+    {
+        return _width;
+    }
+
+    /**
+     * Returns the height of the first level.
+     */
+    public int getHeight ()
+    {
+        return _height;
+    }
+
+    /**
+     * Returns the number of levels.
+     */
+    public int getLevelCount ()
+    {
+        return _offsets.length - 1;
+    }
+
+    /**
+     * Returns the width of the specified level.
+     */
+    public int getLevelWidth (int level)
+    {
+        return Math.max(1, _width >> level);
+    }
+
+    /**
+     * Returns the height of the specified level.
+     */
+    public int getLevelHeight (int level)
+    {
+        return Math.max(1, _height >> level);
+    }
+
+    /**
+     * Returns the data for the specified level (a new view of the shared buffer, so that its
+     * position and limit may be modified freely).
+     */
+    public ByteBuffer getLevel (int level)
+    {
+        ByteBuffer buf = _data.duplicate();
+        buf.limit(_offsets[level + 1]).position(_offsets[level]);
+        return buf.slice();
+    }
+
+    /**
+     * Returns the checksum of the source image, if known (otherwise, zero).
+     */
+    public long getChecksum ()
+    {
+        return _checksum;
+    }
+
+    /**
+     * Sets the checksum of the source image, to be written with the data.
+     */
+    public void setChecksum (long checksum)
+    {
+        _checksum = checksum;
+    }
+
+    /**
+     * Writes the texture data to the specified stream.
+     */
+    public void write (OutputStream out)
+        throws IOException
+    {
+        DataOutputStream dout = new DataOutputStream(out);
+        dout.writeInt(MAGIC);
+        dout.writeShort(VERSION);
+        dout.writeLong(_checksum);
+        dout.writeByte(_components);
+        dout.writeBoolean(_premultiplied);
+        dout.writeInt(_width);
+        dout.writeInt(_height);
+        dout.writeByte(getLevelCount());
+        byte[] bytes = new byte[_data.capacity()];
+        _data.duplicate().get(bytes);
+        dout.write(bytes);
+        dout.flush();
+    }
+
+    /** The number of components in each pixel. */
+    protected int _components;
+
+    /** Whether or not the alpha has been premultiplied. */
+    protected boolean _premultiplied;
+
+    /** The dimensions of the first level. */
+    protected int _width, _height;
+
+    /** The offsets of the levels within the data, followed by the total length. */
+    protected int[] _offsets;
+
+    /** The data for all levels. */
+    protected ByteBuffer _data;
+
+    /** The checksum of the source image. */
+    protected long _checksum;
+
+    /** Identifies texture data files. */
+    protected static final int MAGIC = 0x54455844;
+
+    /** The version of the texture data format. */
+    protected static final short VERSION = 1;
+}
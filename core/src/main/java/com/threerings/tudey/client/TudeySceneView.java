@@ -30,7 +30,6 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.SortedMap;
 
 import com.google.common.base.Objects;
@@ -38,9 +37,9 @@ import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import com.google.common.collect.TreeBasedTable;
 
+import com.samskivert.util.ArrayIntSet;
 import com.samskivert.util.ArrayUtil;
 import com.samskivert.util.HashIntMap;
 import com.samskivert.util.IntMap.IntEntry;
@@ -65,6 +64,7 @@ import com.threerings.math.Ray3D;
 import com.threerings.math.Transform3D;
 import com.threerings.math.Vector2f;
 import com.threerings.math.Vector3f;
+import com.threerings.util.PersistentIntMap;
 
 import com.threerings.opengl.GlView;
 import com.threerings.opengl.camera.OrbitCameraHandler;
@@ -79,6 +79,7 @@ import com.threerings.opengl.model.config.ModelConfig;
 import com.threerings.opengl.scene.HashScene;
 import com.threerings.opengl.scene.SceneElement;
 import com.threerings.opengl.scene.ViewerEffect;
+import com.threerings.opengl.util.LoadingPipeline;
 import com.threerings.opengl.util.PreloadableSet;
 import com.threerings.opengl.util.Tickable;
 
@@ -230,7 +231,7 @@ public class TudeySceneView extends DynamicScope
 
         // insert the baseline (empty) update record
         _records.add(new UpdateRecord(
-            0, RunAnywhere.currentTimeMillis(), new HashIntMap<Actor>()));
+            0, RunAnywhere.currentTimeMillis(), new PersistentIntMap<Actor>()));
     }
 
     /**
@@ -290,6 +291,14 @@ public class TudeySceneView extends DynamicScope
         return _delayedTime;
     }
 
+    /**
+     * Returns the timestamp of the last update received from the server.
+     */
+    public int getLastUpdateTimestamp ()
+    {
+        return _records.get(_records.size() - 1).getTimestamp();
+    }
+
     /**
      * Returns the delay with which to display information received from the server in order to
      * compensate for network jitter and dropped packets.
@@ -697,6 +706,7 @@ public class TudeySceneView extends DynamicScope
         }
         ActorSprite sprite = new ActorSprite(_ctx, this, timestamp, actor);
         _actorSprites.put(id, sprite);
+        _prespawnedSprites.put(id, sprite);
         return sprite;
     }
 
@@ -752,7 +762,7 @@ public class TudeySceneView extends DynamicScope
         _elapsedAverage.record(elapsed);
 
         // look for the previous update in order to compute the jitter
-        int timestamp = event.getTimestamp();
+        final int timestamp = event.getTimestamp();
         long now = RunAnywhere.currentTimeMillis();
         UpdateRecord lrecord = _records.get(_records.size() - 1);
         if (lrecord.getTimestamp() + elapsed == timestamp) {
@@ -776,17 +786,17 @@ public class TudeySceneView extends DynamicScope
         if (!pruneRecords(event.getReference())) {
             return false;
         }
-        HashIntMap<Actor> oactors = _records.get(0).getActors();
         // start with all the old actors
-        HashIntMap<Actor> actors = oactors.clone();
-        Set<Integer> uids = Sets.newHashSet();
+        PersistentIntMap<Actor> actors = _records.get(0).getActors();
+        final ArrayIntSet uids = new ArrayIntSet();
 
         // add any new actors
         Actor[] added = event.getAddedActors();
         if (added != null) {
             for (Actor actor : added) {
                 actor.init(_ctx.getConfigManager());
-                Actor oactor = actors.put(actor.getId(), actor);
+                Actor oactor = actors.get(actor.getId());
+                actors = actors.put(actor.getId(), actor);
                 uids.add(actor.getId());
                 if (oactor != null) {
                     log.warning("Replacing existing actor.", "oactor", oactor, "nactor", actor);
@@ -803,7 +813,7 @@ public class TudeySceneView extends DynamicScope
                 if (oactor != null) {
                     Actor nactor = (Actor)delta.apply(oactor);
                     nactor.init(_ctx.getConfigManager());
-                    actors.put(id, nactor);
+                    actors = actors.put(id, nactor);
                     uids.add(id);
                 } else {
                     log.warning("Missing actor for delta.", "delta", delta);
@@ -815,7 +825,7 @@ public class TudeySceneView extends DynamicScope
         int[] removed = event.getRemovedActorIds();
         if (removed != null) {
             for (int id : removed) {
-                actors.remove(id);
+                actors = actors.remove(id);
             }
         }
 
@@ -827,63 +837,50 @@ public class TudeySceneView extends DynamicScope
             ((TudeySceneModel)_ctx.getSceneDirector().getScene().getSceneModel()).getPreloads(
                 _preloads = new PreloadableSet(_ctx));
             ConfigManager cfgmgr = _ctx.getConfigManager();
-            for (Actor actor : actors.values()) {
+            for (Actor actor : actors) {
                 actor.getPreloads(cfgmgr, _preloads);
             }
-            _loadingActors = actors.clone();
+            _loadingActors = createActorMap(actors);
             addExtraPreloads();
             return true;
         }
 
-        // update loading actors, create/update the sprites for actors in the set
-        for (Actor actor : actors.values()) {
-            int id = actor.getId();
-            ActorSprite sprite = _actorSprites.get(id);
-            if (sprite != null) {
-                if (_ctrl.isControlledId(id)) {
-                    _ctrl.controlledActorUpdated(timestamp, actor);
-                } else {
-                    sprite.update(timestamp, actor, uids.contains(id));
-                }
-
-            } else if (_loadingActors != null && _loadingActors.containsKey(id)) {
-                _loadingActors.put(id, actor);
-
-            } else {
-                addActorSprite(actor);
+        // the sprites reflect the previous update, so we need only visit the actors that have
+        // changed since then: update loading actors, create/update their sprites, and remove
+        // those of actors no longer in the set (unchanged states are held by the sprites)
+        final int previous = lrecord.getTimestamp();
+        PersistentIntMap<Actor> pactors = lrecord.getActors();
+        PersistentIntMap.diff(pactors, actors, new PersistentIntMap.Visitor<Actor>() {
+            public void entryAdded (int id, Actor actor) {
+                updateActorSprite(previous, timestamp, actor, uids.contains(id));
+            }
+            public void entryUpdated (int id, Actor oactor, Actor nactor) {
+                updateActorSprite(previous, timestamp, nactor, uids.contains(id));
             }
+            public void entryRemoved (int id, Actor actor) {
+                removeActorSprite(previous, timestamp, id);
+            }
+        });
+
+        // the controller hears about the controlled actor at every update
+        int cid = _ctrl.getControlledId();
+        Actor cactor = actors.get(cid);
+        if (cactor != null && cactor == pactors.get(cid) && _actorSprites.containsKey(cid)) {
+            _ctrl.controlledActorUpdated(timestamp, cactor);
         }
 
-        // remove sprites for actors no longer in the set
-        for (Iterator<IntEntry<ActorSprite>> it = _actorSprites.intEntrySet().iterator();
+        // remove any prespawned sprites that the server should have confirmed by now
+        for (Iterator<IntEntry<ActorSprite>> it = _prespawnedSprites.intEntrySet().iterator();
                 it.hasNext(); ) {
             IntEntry<ActorSprite> entry = it.next();
-            int id = entry.getIntKey();
-            if (id < 0) {
-                ActorSprite sprite = entry.getValue();
-                if (sprite.getActor().getCreated() <= timestamp) {
-                    sprite.remove(timestamp);
-                    it.remove();
-                }
-            } else if (!actors.containsKey(id)) {
-                ActorSprite sprite = entry.getValue();
+            ActorSprite sprite = entry.getValue();
+            if (sprite.getActor().getCreated() <= timestamp) {
                 sprite.remove(timestamp);
-                if (_controlledSprite == sprite) {
-                    _controlledSprite = null;
-                    _ctrl.controlledSpriteRemoved(timestamp);
-                }
-                if (_targetSprite == sprite) {
-                    _targetSprite = _controlledSprite;
-                }
+                _actorSprites.remove(entry.getIntKey());
                 it.remove();
             }
         }
 
-        // same deal with loading actors
-        if (_loadingActors != null) {
-            _loadingActors.keySet().retainAll(actors.keySet());
-        }
-
         // create handlers for any effects fired since the last update
         Effect[] fired = event.getEffectsFired();
         if (fired != null) {
@@ -1039,6 +1036,10 @@ public class TudeySceneView extends DynamicScope
             _ctx.getRoot().removeWindow(_loadingWindow);
             _loadingWindow = null;
         }
+        if (_loadingPipeline != null) {
+            _loadingPipeline.shutdown();
+            _loadingPipeline = null;
+        }
         if (_ctrl != null) {
             _ctrl.wasRemoved();
         }
@@ -1054,6 +1055,7 @@ public class TudeySceneView extends DynamicScope
         }
         _entrySprites.clear();
         _actorSprites.clear();
+        _prespawnedSprites.clear();
         _mergedSprites.clear();
     }
 
@@ -1063,8 +1065,11 @@ public class TudeySceneView extends DynamicScope
         // if we are loading, preload the next batch of resources or
         // create the next batch of sprites
         if (doLoading()) {
+            if (_loadingPipeline == null) {
+                _loadingPipeline = createLoadingPipeline();
+            }
             float ppct = 0f, epct = 0f, mpct = 0f, apct = 0f;
-            if ((ppct = _preloads.preloadBatch(BATCH_LOAD_DURATION)) == 1f) {
+            if ((ppct = preloadBatch()) == 1f) {
                 if ((epct = createEntrySpriteBatch()) == 1f) {
                     if ((mpct = initMergedSpriteBatch()) == 1f) {
                         apct = createActorSpriteBatch();
@@ -1079,6 +1084,11 @@ public class TudeySceneView extends DynamicScope
                 _loadingEntries = null;
                 _loadingMerged = null;
                 _loadingActors = null;
+                if (_loadingPipeline != null) {
+                    log.info("Finished loading scene.", "stages", _loadingPipeline.getTimings());
+                    _loadingPipeline.shutdown();
+                    _loadingPipeline = null;
+                }
             }
         }
 
@@ -1418,6 +1428,41 @@ public class TudeySceneView extends DynamicScope
         return null;
     }
 
+    /**
+     * Creates the pipeline used to perform loading work in the background, or returns
+     * <code>null</code> to perform it all on the render thread.
+     */
+    protected LoadingPipeline createLoadingPipeline ()
+    {
+        return new LoadingPipeline(_ctx);
+    }
+
+    /**
+     * Preloads a batch of resources as part of the loading process.  When using a loading
+     * pipeline, the resources' configs are first resolved and their images decoded in the
+     * background; only then are the resources themselves preloaded.
+     *
+     * @return the completion percentage.
+     */
+    protected float preloadBatch ()
+    {
+        if (_loadingPipeline == null) {
+            return _preloads.preloadBatch(BATCH_LOAD_DURATION);
+        }
+        float fpct = _preloads.prefetchBatch(_loadingPipeline, BATCH_LOAD_DURATION);
+        if (fpct < 1f) {
+            _loadingPipeline.processCompletions(BATCH_LOAD_DURATION);
+            return fpct * PREFETCH_PERCENT;
+        }
+        if (!_loadingPipeline.processCompletions(BATCH_LOAD_DURATION)) {
+            return PREFETCH_PERCENT;
+        }
+        long start = System.nanoTime();
+        float ppct = _preloads.preloadBatch(BATCH_LOAD_DURATION);
+        _loadingPipeline.getStage(LoadingPipeline.UPLOAD).record(System.nanoTime() - start, false);
+        return PREFETCH_PERCENT + ppct * (1f - PREFETCH_PERCENT);
+    }
+
     /**
      * Creates a batch of entry sprites as part of the loading process.
      *
@@ -1461,6 +1506,9 @@ public class TudeySceneView extends DynamicScope
             _loadingMerged = Lists.newArrayList(_mergedSprites.values());
             _suppressMergeUpdates = false;
         }
+        if (_loadingPipeline != null) {
+            return initMergedSpriteBatch(_loadingPipeline);
+        }
         long end = System.currentTimeMillis() + BATCH_LOAD_DURATION;
         for (int ii = _loadingMerged.size() - 1;
                 ii >= 0 && System.currentTimeMillis() < end; ii--) {
@@ -1473,6 +1521,35 @@ public class TudeySceneView extends DynamicScope
         return 1f - (float)size / _mergedSprites.size();
     }
 
+    /**
+     * Initializes a batch of merged sprites using the loading pipeline, gathering their
+     * components here and merging their geometry in the background.
+     *
+     * @return the completion percentage.
+     */
+    protected float initMergedSpriteBatch (LoadingPipeline pipeline)
+    {
+        long end = System.currentTimeMillis() + BATCH_LOAD_DURATION;
+        for (int ii = _loadingMerged.size() - 1;
+                ii >= 0 && System.currentTimeMillis() < end; ii--) {
+            final ModelConfig mconfig = _loadingMerged.remove(ii).getModel().getConfig();
+            ((MergedStaticConfig)mconfig.implementation).resolve(_ctx, pipeline, new Runnable() {
+                public void run () {
+                    if (!_disposed) {
+                        mconfig.wasUpdated();
+                    }
+                }
+            });
+        }
+        if (pipeline.processCompletions(Math.max(0L, end - System.currentTimeMillis())) &&
+                _loadingMerged.isEmpty()) {
+            return 1f;
+        }
+        int total = _mergedSprites.size();
+        return (total == 0) ? 0f :
+            1f - (float)(_loadingMerged.size() + pipeline.getPendingCount()) / total;
+    }
+
     /**
      * Creates a batch of actor sprites as part of the loading process.
      *
@@ -1483,9 +1560,9 @@ public class TudeySceneView extends DynamicScope
         if (_loadingActors != null && _loadingActors.isEmpty()) {
             return 1f;
         }
-        HashIntMap<Actor> actors = _records.get(_records.size() - 1).getActors();
+        PersistentIntMap<Actor> actors = _records.get(_records.size() - 1).getActors();
         if (_loadingActors == null) {
-            _loadingActors = actors.clone();
+            _loadingActors = createActorMap(actors);
         }
         long end = System.currentTimeMillis() + BATCH_LOAD_DURATION;
         for (Iterator<Actor> it = _loadingActors.values().iterator();
@@ -1534,6 +1611,7 @@ public class TudeySceneView extends DynamicScope
                 ((Prespawnable)actor).getClientOid() == _ctx.getClient().getClientOid()) {
             ActorSprite sprite = _actorSprites.remove(-actor.getCreated());
             if (sprite != null) {
+                _prespawnedSprites.remove(-actor.getCreated());
                 _actorSprites.put(id, sprite);
                 sprite.reinit(timestamp, actor);
                 return;
@@ -1550,6 +1628,70 @@ public class TudeySceneView extends DynamicScope
         }
     }
 
+    /**
+     * Brings the sprite for the specified actor up-to-date with its changed state, creating it
+     * if necessary.
+     *
+     * @param previous the timestamp of the previous update, as of which the sprite's state was
+     * current.
+     * @param updated whether the actor was updated relative to the reference update.
+     */
+    protected void updateActorSprite (int previous, int timestamp, Actor actor, boolean updated)
+    {
+        int id = actor.getId();
+        ActorSprite sprite = _actorSprites.get(id);
+        if (sprite != null) {
+            if (_ctrl.isControlledId(id)) {
+                _ctrl.controlledActorUpdated(timestamp, actor);
+            } else {
+                sprite.hold(previous);
+                sprite.update(timestamp, actor, updated);
+            }
+
+        } else if (_loadingActors != null && _loadingActors.containsKey(id)) {
+            _loadingActors.put(id, actor);
+
+        } else {
+            addActorSprite(actor);
+        }
+    }
+
+    /**
+     * Removes the sprite for an actor no longer in the set.
+     *
+     * @param previous the timestamp of the previous update, the last to contain the actor.
+     */
+    protected void removeActorSprite (int previous, int timestamp, int id)
+    {
+        ActorSprite sprite = _actorSprites.remove(id);
+        if (sprite != null) {
+            sprite.hold(previous);
+            sprite.remove(timestamp);
+            if (_controlledSprite == sprite) {
+                _controlledSprite = null;
+                _ctrl.controlledSpriteRemoved(timestamp);
+            }
+            if (_targetSprite == sprite) {
+                _targetSprite = _controlledSprite;
+            }
+        }
+        if (_loadingActors != null) {
+            _loadingActors.remove(id);
+        }
+    }
+
+    /**
+     * Creates a mutable copy of the supplied actor map for loading.
+     */
+    protected static HashIntMap<Actor> createActorMap (PersistentIntMap<Actor> actors)
+    {
+        HashIntMap<Actor> map = new HashIntMap<Actor>();
+        for (Actor actor : actors) {
+            map.put(actor.getId(), actor);
+        }
+        return map;
+    }
+
     /**
      * Adds the specified entry's preloads to the set if appropriate.
      */
@@ -1687,7 +1829,7 @@ public class TudeySceneView extends DynamicScope
         /**
          * Creates a new update record.
          */
-        public UpdateRecord (int timestamp, long received, HashIntMap<Actor> actors)
+        public UpdateRecord (int timestamp, long received, PersistentIntMap<Actor> actors)
         {
             _timestamp = timestamp;
             _received = received;
@@ -1713,7 +1855,7 @@ public class TudeySceneView extends DynamicScope
         /**
          * Returns the map of actors.
          */
-        public HashIntMap<Actor> getActors ()
+        public PersistentIntMap<Actor> getActors ()
         {
             return _actors;
         }
@@ -1724,8 +1866,8 @@ public class TudeySceneView extends DynamicScope
         /** The wall clock time at which the update was received. */
         protected long _received;
 
-        /** The states of the actors. */
-        protected HashIntMap<Actor> _actors;
+        /** The states of the actors, sharing structure with those of the other records. */
+        protected PersistentIntMap<Actor> _actors;
     }
 
     /**
@@ -1780,6 +1922,9 @@ public class TudeySceneView extends DynamicScope
     /** The set of resources to preload. */
     protected PreloadableSet _preloads;
 
+    /** The pipeline performing background loading work, if any. */
+    protected LoadingPipeline _loadingPipeline;
+
     /** The remaining entries to add during loading. */
     protected List<Entry> _loadingEntries;
 
@@ -1832,6 +1977,9 @@ public class TudeySceneView extends DynamicScope
     /** Sprites corresponding to the actors in the scene. */
     protected HashIntMap<ActorSprite> _actorSprites = new HashIntMap<ActorSprite>();
 
+    /** The subset of actor sprites that were prespawned and not yet confirmed by the server. */
+    protected HashIntMap<ActorSprite> _prespawnedSprites = new HashIntMap<ActorSprite>();
+
     /** The actor space (used for client-side collision detection). */
     protected HashSpace _actorSpace = new HashSpace(64f, 6);
 
@@ -1895,6 +2043,9 @@ public class TudeySceneView extends DynamicScope
     /** The percentage of load progress devoted to preloading. */
     protected static final float PRELOAD_PERCENT = 0.4f;
 
+    /** The portion of preloading progress devoted to prefetching (when using a pipeline). */
+    protected static final float PREFETCH_PERCENT = 0.5f;
+
     /** The percentage of load progress devoted to loading entries. */
     protected static final float ENTRY_LOAD_PERCENT = 0.3f;
 
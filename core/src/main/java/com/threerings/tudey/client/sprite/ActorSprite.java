@@ -1235,6 +1235,18 @@ public class ActorSprite extends Sprite
         }
     }
 
+    /**
+     * Notes that the state of the actor remained unchanged as of the specified update.  The view
+     * only informs sprites of changed states; unchanged ones are held until the last update.
+     */
+    public void hold (int timestamp)
+    {
+        if (_advancer == null) {
+            Actor actor = _history.getLastKnownActor();
+            _history.hold(timestamp, !isStatic(actor));
+        }
+    }
+
     /**
      * Notes that the actor has been removed.
      */
@@ -1444,7 +1456,10 @@ public class ActorSprite extends Sprite
     protected boolean updateActor ()
     {
         if (_advancer == null) {
-            return _history.get(_view.getDelayedTime(), _actor, isStatic(_actor));
+            // the states of server actors still present are held until the last update
+            int heldUntil = (_removed == Integer.MAX_VALUE && _actor.getId() >= 0) ?
+                _view.getLastUpdateTimestamp() : Integer.MIN_VALUE;
+            return _history.get(_view.getDelayedTime(), _actor, isStatic(_actor), heldUntil);
         } else {
             _advancer.advance(_view.getAdvancedTime());
         }
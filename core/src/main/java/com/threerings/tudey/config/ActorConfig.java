@@ -300,6 +300,17 @@ public class ActorConfig extends ParameterizedConfig
         @Strippable
         public ConfigReference<BehaviorConfig> behavior;
 
+        /** Tick the agent at a reduced rate when it's been out of every client's interest for
+         * this long (zero if we should always tick it at the full rate). */
+        @Editable(min=0, hgroup="d")
+        @Strippable
+        public int dormancyInterval;
+
+        /** The interval at which to tick the agent while it's dormant. */
+        @Editable(min=0, hgroup="d")
+        @Strippable
+        public int dormantTickInterval = 500;
+
         @Override
         public String getLogicClassName ()
         {
@@ -249,6 +249,11 @@ public class BehaviorConfig extends ParameterizedConfig
         @Editable(min=0.0, step=0.1, hgroup="d")
         public float maximumDistance = 5f;
 
+        /** Whether or not to steer using a flow field shared with the other followers of the
+         * target rather than computing an individual path. */
+        @Editable
+        public boolean flowField;
+
         @Override
         public String getLogicClassName ()
         {
@@ -25,6 +25,8 @@
 
 package com.threerings.tudey.config;
 
+import com.google.common.hash.Hashing;
+
 import com.threerings.config.ConfigManager;
 import com.threerings.config.ConfigReference;
 import com.threerings.config.ConfigReferenceSet;
@@ -33,6 +35,7 @@ import com.threerings.editor.Editable;
 import com.threerings.editor.EditorTypes;
 import com.threerings.editor.Strippable;
 import com.threerings.export.Exportable;
+import com.threerings.export.util.ExportUtil;
 import com.threerings.expr.Scope;
 import com.threerings.math.Transform3D;
 import com.threerings.util.DeepObject;
@@ -260,6 +263,19 @@ public class TileConfig extends ParameterizedConfig
             }
         }
 
+        /**
+         * Returns a digest of the exported state of the tile, which changes whenever the tile
+         * does (used to validate data derived from the tile).
+         */
+        public long getDigest ()
+        {
+            if (_digest == null) {
+                _digest = Hashing.murmur3_128().hashBytes(
+                    ExportUtil.toBytes(this, false)).asLong();
+            }
+            return _digest;
+        }
+
         @Override
         public Original getOriginal (ConfigManager cfgmgr)
         {
@@ -297,6 +313,7 @@ public class TileConfig extends ParameterizedConfig
                 handler.invalidate();
             }
             _modelStatic = null;
+            _digest = null;
         }
 
         /**
@@ -334,6 +351,10 @@ public class TileConfig extends ParameterizedConfig
         /** Cached flag indicating whether or not the model is static. */
         @DeepOmit
         protected transient Boolean _modelStatic;
+
+        /** The cached digest of the tile's exported state. */
+        @DeepOmit
+        protected transient Long _digest;
     }
 
     /**
@@ -25,11 +25,19 @@
 
 package com.threerings.tudey.data;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 
 import java.lang.ref.SoftReference;
 
+import java.nio.ByteBuffer;
+
 import java.util.AbstractCollection;
 import java.util.AbstractList;
 import java.util.ArrayList;
@@ -39,7 +47,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.WeakHashMap;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
@@ -51,6 +58,8 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.primitives.Ints;
 
 import com.samskivert.util.ArrayUtil;
@@ -1345,6 +1354,57 @@ public class TudeySceneModel extends SceneModel
         }
     }
 
+    /**
+     * Data derived from the tiles and entries of a scene that may be shared between models with
+     * the same content (such as multiple instances of the same scene).
+     */
+    public static class SharedData
+    {
+        /**
+         * Creates a new shared data object from the derived data of the specified model.
+         */
+        public SharedData (TudeySceneModel model)
+        {
+            tileCoords = model._tileCoords;
+            collisionFlags = model._collisionFlags;
+            directionFlags = model._directionFlags;
+            space = model._space;
+            elements = model._elements;
+            tagged = model._tagged;
+            _tileCount = model._tiles.size();
+            _entryCount = model._entries.size();
+        }
+
+        /**
+         * Performs a sanity check on the model to which the data is to be assigned.
+         */
+        public boolean matches (TudeySceneModel model)
+        {
+            return model._tiles.size() == _tileCount && model._entries.size() == _entryCount;
+        }
+
+        /** Maps locations to the encoded coordinates of any tiles intersecting them. */
+        public final CoordIntMap tileCoords;
+
+        /** Collision flags for each location. */
+        public final CoordIntMap collisionFlags;
+
+        /** Direction flags for each location. */
+        public final CoordIntMap directionFlags;
+
+        /** The space containing the (non-tile) entry shapes. */
+        public final HashSpace space;
+
+        /** Maps entry keys to space elements. */
+        public final HashMap<Object, SpaceElement> elements;
+
+        /** Maps tags to lists of tagged entries. */
+        public final ListMultimap<String, Entry> tagged;
+
+        /** The number of tiles and entries in the model from which the data was derived. */
+        protected int _tileCount, _entryCount;
+    }
+
     /**
      * Creates a new, empty scene model.
      */
@@ -1358,23 +1418,148 @@ public class TudeySceneModel extends SceneModel
      * Initializes the model.
      */
     public void init (ConfigManager cfgmgr)
+    {
+        init(cfgmgr, (InputStream)null);
+    }
+
+    /**
+     * Initializes the model, reading the data derived from the tiles from a stream written by
+     * {@link #writeDerivedData} if possible (that is, if the stream is non-null and its data
+     * is current).  The stream will be closed.
+     */
+    public void init (ConfigManager cfgmgr, InputStream derived)
     {
         // make sure we're not already initialized
         if (_cfgmgr.isInitialized()) {
             return;
         }
         _cfgmgr.init("scene", cfgmgr);
+        createDerivedData(derived);
+    }
 
-        // create the tile shadows now that we have the config manager
+    /**
+     * Initializes the model, adopting the supplied derived data (computed by another model with
+     * the same content) rather than computing it anew.  The derived data is shared read-only:
+     * this model will make its own copy when its entries are first added, updated or removed.
+     * Because queries on the shared structures use internal scratch state, models sharing data
+     * must only be accessed from a single thread.
+     * Note also that queries on the shared structures return the (equal) entries of the model
+     * that created them.
+     *
+     * @param shared the data to adopt, or null to compute it.
+     * @return the derived data used by the model, which may be passed to other models with the
+     * same content.
+     */
+    public SharedData init (ConfigManager cfgmgr, SharedData shared)
+    {
+        return init(cfgmgr, shared, null);
+    }
+
+    /**
+     * Initializes the model, adopting the supplied derived data if possible or otherwise reading
+     * the data derived from the tiles from a stream written by {@link #writeDerivedData} (if it's
+     * current) or computing it anew.
+     *
+     * @param derived the stream from which to read the derived data, or null to compute it.  The
+     * stream will be closed.
+     * @see #init(ConfigManager, SharedData)
+     */
+    public SharedData init (ConfigManager cfgmgr, SharedData shared, InputStream derived)
+    {
+        // make sure we're not already initialized
+        if (_cfgmgr.isInitialized()) {
+            return _shared;
+        }
+        _cfgmgr.init("scene", cfgmgr);
+        if (shared != null && shared.matches(this)) {
+            _tileCoords = shared.tileCoords;
+            _collisionFlags = shared.collisionFlags;
+            _directionFlags = shared.directionFlags;
+            _space = shared.space;
+            _elements = shared.elements;
+            _tagged = shared.tagged;
+            closeQuietly(derived);
+        } else {
+            createDerivedData(derived);
+            shared = new SharedData(this);
+        }
+        return (_shared = shared);
+    }
+
+    /**
+     * Computes a hash of the content from which the tile shadows are derived (the tiles and the
+     * configurations that they reference), used to validate stored derived data.  The model must
+     * be initialized.
+     */
+    public long getDerivedDataHash ()
+    {
+        // combine the tile hashes in a way that doesn't depend on the iteration order
+        long tiles = 0L;
         for (CoordIntEntry entry : _tiles.coordIntEntrySet()) {
-            TileEntry tentry = decodeTileEntry(entry.getKey(), entry.getIntValue());
-            createShadow(tentry);
+            long value = ((long)entry.getKey().encode() << 32) |
+                (entry.getIntValue() & 0xFFFFFFFFL);
+            tiles += Hashing.murmur3_128().hashLong(value).asLong();
+        }
+        Hasher hasher = Hashing.murmur3_128().newHasher().putLong(tiles);
+        for (TileConfigMapping mapping : _tileConfigs) {
+            TileConfig config = (mapping == null) ?
+                null : _cfgmgr.getConfig(TileConfig.class, mapping.tile);
+            TileConfig.Original original = (config == null) ? null : config.getOriginal(_cfgmgr);
+            if (original == null) {
+                hasher.putBoolean(false);
+            } else {
+                hasher.putBoolean(true).putLong(original.getDigest());
+            }
         }
+        return hasher.hash().asLong();
+    }
 
-        // likewise with the shapes
-        for (Entry entry : _entries.values()) {
-            addElement(entry);
+    /**
+     * Writes the data derived from the tiles (the tile shadows and tag mappings) to the
+     * specified stream, so that it may later be read by {@link #init(ConfigManager,InputStream)}
+     * rather than being recomputed.  The model must be initialized.
+     */
+    public void writeDerivedData (OutputStream out)
+        throws IOException
+    {
+        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(out));
+        dout.writeInt(DERIVED_DATA_MAGIC);
+        dout.writeShort(DERIVED_DATA_VERSION);
+        dout.writeInt(version);
+        dout.writeLong(getDerivedDataHash());
+
+        // write the shadow cells
+        dout.writeInt(_tileCoords.size());
+        for (CoordIntEntry entry : _tileCoords.coordIntEntrySet()) {
+            Coord coord = entry.getKey();
+            dout.writeInt(coord.x);
+            dout.writeInt(coord.y);
+            dout.writeInt(entry.getIntValue());
+            dout.writeInt(_collisionFlags.get(coord.x, coord.y));
+            dout.writeInt(_directionFlags.get(coord.x, coord.y));
+        }
+
+        // write the tile tag mappings (in order)
+        List<Map.Entry<String, Entry>> tags = Lists.newArrayList();
+        for (Map.Entry<String, Entry> mapping : _tagged.entries()) {
+            if (mapping.getValue() instanceof TileEntry) {
+                tags.add(mapping);
+            }
+        }
+        dout.writeInt(tags.size());
+        for (Map.Entry<String, Entry> mapping : tags) {
+            dout.writeUTF(mapping.getKey());
+            dout.writeInt(((TileEntry)mapping.getValue()).getLocation().encode());
         }
+        dout.flush();
+    }
+
+    /**
+     * Checks whether the model is currently using derived data shared with other models.
+     */
+    public boolean isSharingDerivedData ()
+    {
+        return _shared != null;
     }
 
     /**
@@ -2070,8 +2255,8 @@ public class TudeySceneModel extends SceneModel
 
         // read the entries, initialize the reference map, find the highest entry id
         for (Entry entry : in.read("entries", new Entry[0], Entry[].class)) {
+            canonicalizeReference(entry, true);
             _entries.put(entry.getKey(), entry);
-            _references.put(entry.getReference(), entry.getReference());
             if (entry instanceof IdEntry) {
                 _lastEntryId = Math.max(_lastEntryId, ((IdEntry)entry).getId());
             }
@@ -2120,7 +2305,6 @@ public class TudeySceneModel extends SceneModel
         _paintConfigs = nmodel._paintConfigs;
         _paintConfigIds = nmodel._paintConfigIds;
         _entries = nmodel._entries;
-        _references = nmodel._references;
         _layers = nmodel._layers;
         _layerMap = nmodel._layerMap;
 
@@ -2517,7 +2701,7 @@ public class TudeySceneModel extends SceneModel
         // and the entries
         for (Entry entry : _entries.values()) {
             entry = DeepUtil.copy(entry, null);
-            model.canonicalizeReference(entry);
+            model.canonicalizeReference(entry, true);
             model._entries.put(entry.getKey(), entry);
         }
 
@@ -2528,6 +2712,163 @@ public class TudeySceneModel extends SceneModel
         return model;
     }
 
+    /**
+     * Creates the data derived from the tiles and entries (the tile shadows, the space of entry
+     * elements, and the tag mappings).
+     */
+    protected void createDerivedData ()
+    {
+        createDerivedData(null);
+    }
+
+    /**
+     * Creates the data derived from the tiles and entries, reading the tile data from the
+     * supplied stream if possible.
+     *
+     * @param derived the stream containing the derived data, or null to compute it.
+     */
+    protected void createDerivedData (InputStream derived)
+    {
+        // create the tile shadows now that we have the config manager
+        if (derived == null || !readDerivedData(derived)) {
+            for (CoordIntEntry entry : _tiles.coordIntEntrySet()) {
+                TileEntry tentry = decodeTileEntry(entry.getKey(), entry.getIntValue());
+                createShadow(tentry);
+            }
+        }
+
+        // likewise with the shapes
+        for (Entry entry : _entries.values()) {
+            addElement(entry);
+        }
+    }
+
+    /**
+     * Attempts to read the data derived from the tiles from the supplied stream (and closes it).
+     *
+     * @return true if the data was read, false if it wasn't current (or couldn't be read).
+     */
+    protected boolean readDerivedData (InputStream in)
+    {
+        boolean read = false;
+        try {
+            DataInputStream din = new DataInputStream(new BufferedInputStream(in));
+            if (din.readInt() != DERIVED_DATA_MAGIC ||
+                    din.readShort() != DERIVED_DATA_VERSION || din.readInt() != version) {
+                return false;
+            }
+            long hash = din.readLong();
+            if (hash != getDerivedDataHash()) {
+                log.info("Stored derived data is out of date.", "scene", name);
+                return false;
+            }
+
+            // the tiles bound the numbers of cells and tags, which we check before allocating
+            // anything (a short stream will then simply fail to fill the arrays)
+            long maxCells = 0L, maxTags = 0L;
+            for (TileConfigMapping mapping : _tileConfigs) {
+                if (mapping != null) {
+                    TileConfig config = _cfgmgr.getConfig(TileConfig.class, mapping.tile);
+                    TileConfig.Original original =
+                        (config == null) ? null : config.getOriginal(_cfgmgr);
+                    if (original == null) {
+                        original = TileConfig.NULL_ORIGINAL;
+                    }
+                    maxCells += (long)mapping.count * original.width * original.height;
+                    maxTags += (long)mapping.count * original.tags.getLength();
+                }
+            }
+
+            // read the cells in bulk
+            int ncells = din.readInt();
+            if (ncells < 0 || ncells > Math.min(maxCells, Integer.MAX_VALUE / (5 * 4))) {
+                log.warning("Invalid derived data cell count.", "scene", name,
+                    "ncells", ncells, "max", maxCells);
+                return false;
+            }
+            byte[] bytes = new byte[ncells * 5 * 4];
+            din.readFully(bytes);
+            int[] cells = new int[ncells * 5];
+            ByteBuffer.wrap(bytes).asIntBuffer().get(cells);
+
+            // read the tag mappings
+            int ntags = din.readInt();
+            if (ntags < 0 || ntags > maxTags) {
+                log.warning("Invalid derived data tag count.", "scene", name,
+                    "ntags", ntags, "max", maxTags);
+                return false;
+            }
+            String[] tags = new String[ntags];
+            int[] pairs = new int[ntags];
+            for (int ii = 0; ii < ntags; ii++) {
+                tags[ii] = din.readUTF();
+                pairs[ii] = din.readInt();
+            }
+
+            // now that we have everything, populate the structures
+            for (int ii = 0, idx = 0; ii < ncells; ii++) {
+                int x = cells[idx++], y = cells[idx++];
+                _tileCoords.put(x, y, cells[idx++]);
+                int flags = cells[idx++];
+                if (flags != 0) {
+                    _collisionFlags.put(x, y, flags);
+                }
+                flags = cells[idx++];
+                if (flags != 0) {
+                    _directionFlags.put(x, y, flags);
+                }
+            }
+            for (int ii = 0; ii < ntags; ii++) {
+                TileEntry entry = getTileEntry(pairs[ii]);
+                if (entry != null) {
+                    _tagged.put(tags[ii], entry);
+                }
+            }
+            read = true;
+            return true;
+
+        } catch (IOException e) {
+            log.warning("Failed to read derived data.", "scene", name, e);
+            return false;
+
+        } catch (RuntimeException e) {
+            log.warning("Invalid derived data.", "scene", name, e);
+            return false;
+
+        } finally {
+            // clear anything read before failing so that the data can be computed from scratch
+            if (!read) {
+                _tileCoords.clear();
+                _collisionFlags.clear();
+                _directionFlags.clear();
+                _tagged.clear();
+            }
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Replaces any derived data shared with other models with our own copy, which we may then
+     * modify.
+     */
+    protected void copyOnWrite ()
+    {
+        if (_shared == null) {
+            return;
+        }
+        _shared = null;
+
+        // the space elements are bound to the shared space and the tag mappings reference the
+        // entries of the model that created them, so we simply recreate everything
+        _tileCoords = new CoordIntMap(3, Coord.EMPTY);
+        _collisionFlags = new CoordIntMap(3, 0);
+        _directionFlags = new CoordIntMap(3, 0);
+        _space = new HashSpace(64f, 6);
+        _elements = Maps.newHashMap();
+        _tagged = ArrayListMultimap.create();
+        createDerivedData();
+    }
+
     /**
      * Performs the actual addition of the specified entry.
      *
@@ -2535,6 +2876,7 @@ public class TudeySceneModel extends SceneModel
      */
     protected Entry add (Entry entry, int layer)
     {
+        copyOnWrite();
         validateLayer(layer);
         if (entry instanceof TileEntry) {
             TileEntry tentry = (TileEntry)entry;
@@ -2572,6 +2914,7 @@ public class TudeySceneModel extends SceneModel
      */
     protected Entry update (Entry nentry)
     {
+        copyOnWrite();
         if (!(nentry instanceof TileEntry)) {
             Entry oentry = _entries.put(nentry.getKey(), nentry);
             if (oentry == null) {
@@ -2610,6 +2953,7 @@ public class TudeySceneModel extends SceneModel
      */
     protected Entry remove (Object key)
     {
+        copyOnWrite();
         if (!(key instanceof Coord)) {
             _layerMap.remove(key);
             Entry oentry = _entries.remove(key);
@@ -2763,20 +3107,32 @@ public class TudeySceneModel extends SceneModel
     }
 
     /**
-     * Ensures that the entry's reference, if non-null, points to one of the references in the
-     * {@link #_references} set (that is, that all entries whose references are equal point to
-     * the same reference instance).
+     * Ensures that the reference of an entry supplied from outside the model, if non-null, is
+     * the interned instance.  Interning freezes the reference, so we intern a copy, leaving the
+     * caller's reference (which the editors, for instance, modify in place) untouched.
      */
     protected void canonicalizeReference (Entry entry)
+    {
+        canonicalizeReference(entry, false);
+    }
+
+    /**
+     * Ensures that the entry's reference, if non-null, is the interned instance (so that all
+     * entries whose references are equal, in this or any other scene, point to the same
+     * reference instance).
+     *
+     * @param owned if true, the reference belongs to the model (having been read or copied by
+     * it) and may be interned itself rather than copied.
+     */
+    protected void canonicalizeReference (Entry entry, boolean owned)
     {
         ConfigReference<?> eref = entry.getReference();
         if (eref == null) {
             return;
         }
-        ConfigReference<?> cref = _references.get(eref);
-        if (cref == null) {
-            _references.put(eref, eref);
-        } else {
+        ConfigReference<?> cref = (owned || eref.isFrozen()) ?
+            eref.intern() : eref.clone().intern();
+        if (cref != eref) {
             entry.setReference(cref);
         }
     }
@@ -2928,6 +3284,21 @@ public class TudeySceneModel extends SceneModel
         return Preconditions.checkElementIndex(layer, _layers.size() + 1);
     }
 
+    /**
+     * Closes the supplied stream (if non-null), ignoring any exception.
+     */
+    protected static void closeQuietly (InputStream in)
+    {
+        if (in == null) {
+            return;
+        }
+        try {
+            in.close();
+        } catch (IOException e) {
+            // no need to report this
+        }
+    }
+
     /**
      * Extracts the tile configuration index from the supplied encoded tile.
      */
@@ -3057,12 +3428,6 @@ public class TudeySceneModel extends SceneModel
     /** The last entry id assigned. */
     protected transient int _lastEntryId;
 
-    /** The set of entry references (used to ensure that entries with equal references use the same
-     * instance. */
-    @DeepOmit
-    protected transient WeakHashMap<ConfigReference<?>, ConfigReference<?>> _references =
-        new WeakHashMap<ConfigReference<?>, ConfigReference<?>>();
-
     /** Maps locations to the encoded coordinates of any tiles intersecting them. */
     @DeepOmit
     protected transient CoordIntMap _tileCoords = new CoordIntMap(3, Coord.EMPTY);
@@ -3083,6 +3448,10 @@ public class TudeySceneModel extends SceneModel
     @DeepOmit
     protected transient HashMap<Object, SpaceElement> _elements = Maps.newHashMap();
 
+    /** The derived data we share with other models, if any. */
+    @DeepOmit
+    protected transient SharedData _shared;
+
     /** The scene model observers. */
     @DeepOmit
     protected transient ObserverList<Observer> _observers = ObserverList.newFastUnsafe();
@@ -3118,4 +3487,10 @@ public class TudeySceneModel extends SceneModel
     /** Used to find the floor. */
     @DeepOmit
     protected transient Point _point = new Point();
+
+    /** Identifies streams of derived data written by {@link #writeDerivedData}. */
+    protected static final int DERIVED_DATA_MAGIC = 0x54534444;
+
+    /** The version of the derived data format. */
+    protected static final short DERIVED_DATA_VERSION = 1;
 }
@@ -129,6 +129,20 @@ public class ClientLiaison
         _localInterest = TudeySceneMetrics.getLocalInterest(config, aspect);
     }
 
+    /**
+     * Computes the client's area of interest in world space.
+     *
+     * @return a reference to the result rect, for chaining.
+     */
+    public Rect getWorldInterest (Rect result)
+    {
+        Vector2f translation = (_target == null) ?
+            Vector2f.ZERO : _target.getActor().getTranslation();
+        _localInterest.getMinimumExtent().add(translation, result.getMinimumExtent());
+        _localInterest.getMaximumExtent().add(translation, result.getMaximumExtent());
+        return result;
+    }
+
     /**
      * Computes and returns the difference between the time at which the client depicts actors that
      * it controls (its advanced time) and the time at which it depicts all other actors (its
@@ -232,10 +246,7 @@ public class ClientLiaison
         }
 
         // translate the local interest bounds based on the actor translation
-        Vector2f translation = (_target == null) ?
-            Vector2f.ZERO : _target.getActor().getTranslation();
-        _localInterest.getMinimumExtent().add(translation, _worldInterest.getMinimumExtent());
-        _localInterest.getMaximumExtent().add(translation, _worldInterest.getMaximumExtent());
+        getWorldInterest(_worldInterest);
 
         // find all currently visible actors and compare to previous set
         populateVisibleActors();
@@ -359,6 +370,7 @@ public class ClientLiaison
             (nfired == 0) ? null : _fired.toArray(new Effect[nfired]));
         record.event.setTransport(transport);
         _bodyobj.postEvent(record.event);
+        _scenemgr.deltaPosted(this, record.event);
 
         // clear the arrays
         _added.clear();
@@ -84,12 +84,16 @@ import com.threerings.tudey.data.TudeySceneModel.Entry;
 import com.threerings.tudey.data.TudeySceneObject;
 import com.threerings.tudey.data.actor.Actor;
 import com.threerings.tudey.data.effect.Effect;
+import com.threerings.tudey.dobj.SceneDeltaEvent;
 import com.threerings.tudey.server.logic.ActorLogic;
+import com.threerings.tudey.server.logic.AgentLogic;
 import com.threerings.tudey.server.logic.EffectLogic;
 import com.threerings.tudey.server.logic.EntryLogic;
 import com.threerings.tudey.server.logic.Logic;
 import com.threerings.tudey.server.logic.PawnLogic;
+import com.threerings.tudey.server.util.PathQueue;
 import com.threerings.tudey.server.util.Pathfinder;
+import com.threerings.tudey.server.util.SceneRecorder;
 import com.threerings.tudey.server.util.SceneTicker;
 import com.threerings.tudey.shape.Segment;
 import com.threerings.tudey.shape.Shape;
@@ -170,6 +174,17 @@ public class TudeySceneManager extends SceneManager
         public void didShutdown ();
     }
 
+    /**
+     * An interface for objects to notify when scene deltas are posted to clients.
+     */
+    public interface DeltaObserver
+    {
+        /**
+         * Notes that a delta has been posted to a client.
+         */
+        public void deltaPosted (ClientLiaison client, SceneDeltaEvent event);
+    }
+
     /**
      * An interface for objects that should be notified when actors intersect them.
      */
@@ -322,6 +337,65 @@ public class TudeySceneManager extends SceneManager
         _actorObservers.remove(observer);
     }
 
+    /**
+     * Adds an observer for posted scene deltas.
+     */
+    public void addDeltaObserver (DeltaObserver observer)
+    {
+        _deltaObservers.add(observer);
+    }
+
+    /**
+     * Removes a delta observer.
+     */
+    public void removeDeltaObserver (DeltaObserver observer)
+    {
+        _deltaObservers.remove(observer);
+    }
+
+    /**
+     * Sets the recorder to which we should write our external inputs, or null for none.  The
+     * caller remains responsible for closing the recorder.
+     */
+    public void setRecorder (SceneRecorder recorder)
+    {
+        _recorder = recorder;
+    }
+
+    /**
+     * Returns a reference to the recorder, if any.
+     */
+    public SceneRecorder getRecorder ()
+    {
+        return _recorder;
+    }
+
+    /**
+     * Sets whether the scene is ticked externally (by calling {@link #tick(long)} with a
+     * simulated time) rather than by its ticker.
+     */
+    public void setTickedExternally (boolean external)
+    {
+        if ((_tickedExternally = external) && _ticker != null) {
+            _ticker.remove(this);
+        }
+        if (external) {
+            // the first simulated tick will establish the clock
+            _seedClock = true;
+        } else {
+            // go back to the system clock
+            _lastTick = _emptyTime = RunAnywhere.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Checks whether the scene is ticked externally.
+     */
+    public boolean isTickedExternally ()
+    {
+        return _tickedExternally;
+    }
+
     /**
      * Adds a shutdown observer.
      */
@@ -413,6 +487,14 @@ public class TudeySceneManager extends SceneManager
         return _pathfinder;
     }
 
+    /**
+     * Returns a reference to the queue used to compute paths asynchronously.
+     */
+    public PathQueue getPathQueue ()
+    {
+        return _pathQueue;
+    }
+
     /**
      * Sets the default untransformed area of interest region for clients.
      */
@@ -429,6 +511,63 @@ public class TudeySceneManager extends SceneManager
         return _defaultLocalInterest;
     }
 
+    /**
+     * Sets the distance beyond the edges of the clients' areas of interest within which agents
+     * are kept awake (and dormant agents are woken).
+     */
+    public void setDormancyMargin (float margin)
+    {
+        _dormancyMargin = margin;
+    }
+
+    /**
+     * Returns the distance beyond the clients' areas of interest within which agents are kept
+     * awake.
+     */
+    public float getDormancyMargin ()
+    {
+        return _dormancyMargin;
+    }
+
+    /**
+     * Notes that an agent subject to dormancy has been added to the scene, so that we must start
+     * informing agents of the clients' interest.
+     */
+    public void enableDormancy ()
+    {
+        _dormancyEnabled = true;
+    }
+
+    /**
+     * Notes that an agent was ticked.
+     *
+     * @param dormant whether the agent is dormant (i.e., ticking at a reduced rate).
+     */
+    public void agentTicked (boolean dormant)
+    {
+        if (dormant) {
+            _dormantAgentTicks++;
+        } else {
+            _activeAgentTicks++;
+        }
+    }
+
+    /**
+     * Returns the number of agents ticked at the full rate on the last tick.
+     */
+    public int getActiveAgentCount ()
+    {
+        return _activeAgents;
+    }
+
+    /**
+     * Returns the number of dormant agents ticked (at a reduced rate) on the last tick.
+     */
+    public int getDormantAgentCount ()
+    {
+        return _dormantAgents;
+    }
+
     /**
      * Checks whether we should show region debug effects.
      */
@@ -500,6 +639,9 @@ public class TudeySceneManager extends SceneManager
         logic.init(this, ref, original, id, timestamp, translation, rotation, actor);
         _actors.put(id, logic);
         addMappings(logic);
+        if (_recorder != null) {
+            _recorder.recordSpawn(id, ref.getName());
+        }
 
         // special processing for static actors
         if (logic.isStatic()) {
@@ -699,6 +841,22 @@ public class TudeySceneManager extends SceneManager
         return (client == null) ? null : client.getTarget();
     }
 
+    /**
+     * Adds the targets of all clients that have them to the supplied list.
+     *
+     * @return a reference to the list, for chaining.
+     */
+    public List<PawnLogic> getClientTargets (List<PawnLogic> result)
+    {
+        for (ClientLiaison client : _clients.values()) {
+            PawnLogic target = client.getTarget();
+            if (target != null) {
+                result.add(target);
+            }
+        }
+        return result;
+    }
+
     /**
      * Removes the logic mapping for the actor with the given id.
      */
@@ -954,6 +1112,12 @@ public class TudeySceneManager extends SceneManager
     @Override // from PlaceManager
     public void bodyWillEnter (BodyObject body)
     {
+        if (_recorder != null) {
+            Object portalKey = _entering.get(body.getOid());
+            _recorder.recordEnter(body.getOid(), body.username,
+                (portalKey instanceof String) ? (String)portalKey : null);
+        }
+
         // configure the client's message throttle to 1.5 times the absolute minimum
         PresentsSession client = _clmgr.getClient(body.username);
         if (client != null) {
@@ -1023,6 +1187,9 @@ public class TudeySceneManager extends SceneManager
     @Override // from PlaceManager
     public void bodyWillLeave (BodyObject body)
     {
+        if (_recorder != null) {
+            _recorder.recordLeave(body.getOid());
+        }
         super.bodyWillLeave(body);
         TudeyBodyObject tbody = (TudeyBodyObject)body;
         if (tbody.pawnId != 0) {
@@ -1047,6 +1214,9 @@ public class TudeySceneManager extends SceneManager
                 "who", caller, "where", where());
             return;
         }
+        if (_recorder != null) {
+            _recorder.recordEnteredPlace(caller.getOid());
+        }
         client.enteredPlace();
     }
 
@@ -1062,18 +1232,30 @@ public class TudeySceneManager extends SceneManager
     // documentation inherited from interface TudeySceneProvider
     public void enqueueInputUnreliable (
         ClientObject caller, int acknowledge, int smoothedTime, InputFrame[] frames)
+    {
+        // ping is current time minus client's smoothed time estimate
+        int currentTime = _timestamp + (int)(RunAnywhere.currentTimeMillis() - _lastTick);
+        enqueueInput(caller.getOid(), acknowledge, currentTime - smoothedTime, frames);
+    }
+
+    /**
+     * Enqueues a batch of input frames received from a client.
+     *
+     * @param ping the ping computed from the current time and the client's time estimate.
+     */
+    public void enqueueInput (int cloid, int acknowledge, int ping, InputFrame[] frames)
     {
         // forward to client liaison
-        ClientLiaison client = _clients.get(caller.getOid());
+        ClientLiaison client = _clients.get(cloid);
         if (client != null) {
-            // ping is current time minus client's smoothed time estimate
-            int currentTime = _timestamp + (int)(RunAnywhere.currentTimeMillis() - _lastTick);
-            client.enqueueInput(acknowledge, currentTime - smoothedTime, frames);
+            if (_recorder != null) {
+                _recorder.recordInput(cloid, acknowledge, ping, frames);
+            }
+            client.enqueueInput(acknowledge, ping, frames);
         } else {
             // this doesn't require a warning; it's probably an out-of-date packet from a client
             // that has just left the scene
-            log.debug("Received input from unknown client.",
-                "who", caller, "where", where());
+            log.debug("Received input from unknown client.", "cloid", cloid, "where", where());
         }
     }
 
@@ -1090,6 +1272,9 @@ public class TudeySceneManager extends SceneManager
         }
 
         // retrieve the actor and ensure it's a pawn
+        if (_recorder != null) {
+            _recorder.recordTarget(cloid, pawnId);
+        }
         ActorLogic target = _actors.get(pawnId);
         if (target instanceof PawnLogic) {
             client.setTarget((PawnLogic)target);
@@ -1113,6 +1298,9 @@ public class TudeySceneManager extends SceneManager
         // forward to client liaison
         ClientLiaison client = _clients.get(caller.getOid());
         if (client != null) {
+            if (_recorder != null) {
+                _recorder.recordCameraParams(caller.getOid(), config, aspect);
+            }
             client.setCameraParams(config, aspect);
         } else {
             log.warning("Received camera params from unknown client.",
@@ -1281,8 +1469,9 @@ public class TudeySceneManager extends SceneManager
         TudeySceneModel sceneModel = (TudeySceneModel)_scene.getSceneModel();
         _cfgmgr = sceneModel.getConfigManager();
 
-        // create the pathfinder
+        // create the pathfinder and path queue
         _pathfinder = new Pathfinder(this);
+        _pathQueue = new PathQueue(this);
 
         // get a reference to the ticker
         _ticker = getTicker();
@@ -1341,7 +1530,9 @@ public class TudeySceneManager extends SceneManager
         _ticker.remove(this);
         _ticker = null;
 
-        // shut down the pathfinder
+        // clear the path queue and shut down the pathfinder
+        _pathQueue.clear();
+        _pathQueue = null;
         _pathfinder.shutdown();
         _pathfinder = null;
     }
@@ -1357,7 +1548,7 @@ public class TudeySceneManager extends SceneManager
         _clients.put(bodyOid, createClientLiaison(bodyobj, session));
 
         // register with the ticker when the first occupant enters
-        if (!_ticker.contains(this)) {
+        if (!(_tickedExternally || _ticker.contains(this))) {
             _lastTick = RunAnywhere.currentTimeMillis();
             _ticker.add(this);
         }
@@ -1377,8 +1568,8 @@ public class TudeySceneManager extends SceneManager
     {
         super.placeBecameEmpty();
 
-        // record the time
-        _emptyTime = RunAnywhere.currentTimeMillis();
+        // record the time (the last simulated time, if ticked externally)
+        _emptyTime = _tickedExternally ? _lastTick : RunAnywhere.currentTimeMillis();
     }
 
     @Override
@@ -1513,12 +1704,30 @@ public class TudeySceneManager extends SceneManager
      */
     public void tick ()
     {
+        tick(RunAnywhere.currentTimeMillis());
+    }
+
+    /**
+     * Updates the scene.
+     *
+     * @param now the current system time (or the simulated time, when replaying).
+     */
+    public void tick (long now)
+    {
+        long tickStarted = RunAnywhere.currentTimeMillis();
+        if (_seedClock) {
+            _lastTick = _emptyTime = now;
+            _seedClock = false;
+        }
+
         // cancel the ticker if enough time has elapsed with no occupants
-        long now = RunAnywhere.currentTimeMillis();
         if (_plobj.occupants.size() == 0 && (now - _emptyTime) >= idleTickPeriod()) {
             _ticker.remove(this);
             return;
         }
+        if (_recorder != null) {
+            _recorder.recordTick(now);
+        }
 
         // update the scene timestamp
         _previousTimestamp = _timestamp;
@@ -1531,6 +1740,15 @@ public class TudeySceneManager extends SceneManager
             _runnables.clear();
         }
         _ticking = true;
+
+        // let the agents near the clients know that they're of interest
+        if (_dormancyEnabled) {
+            noteClientInterest();
+        }
+
+        // compute the paths requested on previous ticks
+        _pathQueue.process();
+
         if (_tickProfEnabled) {
             // tick the participants
             _profileTickOp.init(_timestamp);
@@ -1604,8 +1822,57 @@ public class TudeySceneManager extends SceneManager
         _staticActorsRemoved.clear();
         _effectsFired.clear();
 
+        // roll over the agent counts
+        _activeAgents = _activeAgentTicks;
+        _dormantAgents = _dormantAgentTicks;
+        _activeAgentTicks = _dormantAgentTicks = 0;
+
         // note how long the tick took
-        _tickDuration = (RunAnywhere.currentTimeMillis() - _lastTick);
+        _tickDuration = (RunAnywhere.currentTimeMillis() - tickStarted);
+    }
+
+    /**
+     * Notifies the agents within the (expanded) areas of interest of the clients that they are
+     * of interest, waking any that are dormant.
+     */
+    protected void noteClientInterest ()
+    {
+        for (ClientLiaison client : _clients.values()) {
+            noteInterest(client.getWorldInterest(_interest));
+        }
+    }
+
+    /**
+     * Notifies the agents within the specified area of interest (expanded by the dormancy margin)
+     * that they are of interest, waking any that are dormant.
+     */
+    protected void noteInterest (Rect interest)
+    {
+        interest.expandLocal(_dormancyMargin, _dormancyMargin);
+        _actorSpace.getElements(interest, _elements);
+        for (int ii = 0, nn = _elements.size(); ii < nn; ii++) {
+            Object logic = _elements.get(ii).getUserObject();
+            if (logic instanceof AgentLogic) {
+                ((AgentLogic)logic).noteInterest(_timestamp);
+            }
+        }
+        _elements.clear();
+    }
+
+    /**
+     * Called by the client liaisons when they post scene deltas.
+     */
+    protected void deltaPosted (final ClientLiaison client, final SceneDeltaEvent event)
+    {
+        if (_deltaObservers.isEmpty()) {
+            return;
+        }
+        _deltaObservers.apply(new ObserverList.ObserverOp<DeltaObserver>() {
+            public boolean apply (DeltaObserver observer) {
+                observer.deltaPosted(client, event);
+                return true;
+            }
+        });
     }
 
     /**
@@ -1762,9 +2029,19 @@ public class TudeySceneManager extends SceneManager
     /** The ticker. */
     protected SceneTicker _ticker;
 
-    /** The system time of the last tick. */
+    /** Whether the scene is ticked externally rather than by the ticker. */
+    protected boolean _tickedExternally;
+
+    /** The recorder to which we write our external inputs, if any. */
+    protected SceneRecorder _recorder;
+
+    /** The system time of the last tick (or the simulated time, if ticked externally). */
     protected long _lastTick;
 
+    /** Set when the next tick's time should be taken as the last (when first ticked
+     * externally). */
+    protected boolean _seedClock;
+
     /** The duration of processing for the last tick. */
     protected long _tickDuration;
 
@@ -1792,6 +2069,9 @@ public class TudeySceneManager extends SceneManager
     /** The list of actor observers. */
     protected ObserverList<ActorObserver> _actorObservers = ObserverList.newFastUnsafe();
 
+    /** The list of delta observers. */
+    protected ObserverList<DeltaObserver> _deltaObservers = ObserverList.newFastUnsafe();
+
     /** The list of shutdown observers. */
     protected ObserverList<ShutdownObserver> _shutdownObservers = ObserverList.newFastUnsafe();
 
@@ -1822,6 +2102,9 @@ public class TudeySceneManager extends SceneManager
     /** The pathfinder used for path computation. */
     protected Pathfinder _pathfinder;
 
+    /** The queue used for asynchronous path computation. */
+    protected PathQueue _pathQueue;
+
     /** The logic for static actors added on the current tick. */
     protected Set<ActorLogic> _staticActorsAdded = Sets.newHashSet();
 
@@ -1840,6 +2123,21 @@ public class TudeySceneManager extends SceneManager
     /** The default local interest region. */
     protected Rect _defaultLocalInterest = TudeySceneMetrics.getDefaultLocalInterest();
 
+    /** The margin beyond the clients' areas of interest within which agents are kept awake. */
+    protected float _dormancyMargin = 10f;
+
+    /** Set once we've added an agent subject to dormancy. */
+    protected boolean _dormancyEnabled;
+
+    /** The numbers of active and dormant agents ticked on the last tick. */
+    protected int _activeAgents, _dormantAgents;
+
+    /** The numbers of active and dormant agents ticked so far on the current tick. */
+    protected int _activeAgentTicks, _dormantAgentTicks;
+
+    /** Holds an expanded area of interest during queries. */
+    protected Rect _interest = new Rect();
+
     /** Holds collected elements during queries. */
     protected ArrayList<SpaceElement> _elements = Lists.newArrayList();
 
@@ -25,7 +25,12 @@
 
 package com.threerings.tudey.server;
 
+import java.io.InputStream;
+
 import java.util.Iterator;
+import java.util.Map;
+
+import com.google.common.hash.Hashing;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
@@ -49,6 +54,7 @@ import com.threerings.whirled.server.SceneRegistry;
 import com.threerings.whirled.util.UpdateList;
 
 import com.threerings.config.ConfigManager;
+import com.threerings.util.CacheUtil;
 
 import com.threerings.tudey.data.TudeyCodes;
 import com.threerings.tudey.data.TudeySceneModel;
@@ -133,12 +139,53 @@ public class TudeySceneRegistry extends SceneRegistry
     protected void processSuccessfulResolution (
         SceneModel model, UpdateList updates, Object extras)
     {
-        // initialize the scene model
-        ((TudeySceneModel)model).init(_cfgmgr);
+        // initialize the scene model, sharing its derived data with any other models that have
+        // the same content
+        TudeySceneModel tmodel = (TudeySceneModel)model;
+        Object key = shouldShareDerivedData() ? getDerivedDataKey(tmodel) : null;
+        if (key == null) {
+            tmodel.init(_cfgmgr, getDerivedDataStream(tmodel));
+        } else {
+            TudeySceneModel.SharedData shared = _derivedData.get(key);
+            _derivedData.put(key, tmodel.init(_cfgmgr, shared,
+                (shared == null) ? getDerivedDataStream(tmodel) : null));
+        }
 
         super.processSuccessfulResolution(model, updates, extras);
     }
 
+    /**
+     * Determines whether scene models with the same content should share their derived data.
+     * Queries on the shared structures use internal scratch state, so sharing is only safe if
+     * every scene (and anything else that queries the scene models, such as path searches) runs
+     * on the same thread.  The default implementation returns false; registries whose scenes
+     * are all ticked on the event thread (the default ticker) may override it to return true.
+     */
+    protected boolean shouldShareDerivedData ()
+    {
+        return false;
+    }
+
+    /**
+     * Returns the key identifying the content of the specified model for the purpose of sharing
+     * derived data, or null if the model's data should not be shared.  The default
+     * implementation uses a digest of the model's exported representation.
+     */
+    protected Object getDerivedDataKey (TudeySceneModel model)
+    {
+        return Hashing.md5().hashBytes(model.getData());
+    }
+
+    /**
+     * Returns a stream from which to read the precomputed derived data for the specified model
+     * (as written by {@link TudeySceneModel#writeDerivedData}), or null to compute it.  Stored
+     * data that is out of date is ignored.  The default implementation returns null.
+     */
+    protected InputStream getDerivedDataStream (TudeySceneModel model)
+    {
+        return null;
+    }
+
     /**
      * Creates the default scene ticker.
      */
@@ -241,6 +288,9 @@ public class TudeySceneRegistry extends SceneRegistry
     /** Maps body oids to the keys of their destination portals. */
     protected HashIntMap<PortalMapping> _portals = IntMaps.newHashIntMap();
 
+    /** Derived data shared between scene models, mapped by content key. */
+    protected Map<Object, TudeySceneModel.SharedData> _derivedData = CacheUtil.softValues();
+
     /** The default scene ticker. */
     protected SceneTicker _defaultTicker;
 
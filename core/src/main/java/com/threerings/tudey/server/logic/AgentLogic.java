@@ -33,6 +33,7 @@ import com.threerings.math.Vector2f;
 
 import com.threerings.tudey.config.ActorConfig;
 import com.threerings.tudey.config.BehaviorConfig;
+import com.threerings.tudey.data.actor.Actor;
 import com.threerings.tudey.data.actor.Agent;
 import com.threerings.tudey.data.actor.Mobile;
 import com.threerings.tudey.util.ActiveAdvancer;
@@ -178,6 +179,41 @@ public class AgentLogic extends ActiveLogic
         _actor.clear(Mobile.MOVING);
     }
 
+    /**
+     * Checks whether the agent is dormant (that is, ticking at a reduced rate because it has been
+     * out of every client's interest).
+     */
+    public boolean isDormant ()
+    {
+        return _dormant;
+    }
+
+    /**
+     * Notes that the agent is within the (expanded) area of interest of a client, waking it if
+     * it's dormant.
+     */
+    public void noteInterest (int timestamp)
+    {
+        _interestTime = timestamp;
+        if (_dormant) {
+            wake();
+        }
+    }
+
+    /**
+     * Wakes the agent from dormancy (if dormant), so that it ticks at the full rate until it has
+     * again been out of interest for the dormancy interval.  Should be called when something
+     * happens to the agent that requires a timely response, such as being damaged.
+     */
+    public void wake ()
+    {
+        _interestTime = Math.max(_interestTime, _scenemgr.getTimestamp());
+        if (_dormant) {
+            _dormant = false;
+            leftDormancy();
+        }
+    }
+
     /**
      * Creates a behavior for this agent.
      */
@@ -209,12 +245,51 @@ public class AgentLogic extends ActiveLogic
         _targetRotation = asource._targetRotation;
         _turnRate = asource._turnRate;
         _timestamp = asource._timestamp;
+        _interestTime = asource._interestTime;
+        _dormant = asource._dormant;
+        _nextDormantTick = asource._nextDormantTick;
         _behavior.transfer(asource._behavior, refs);
     }
 
+    @Override
+    public Actor getSnapshot ()
+    {
+        // if someone's looking at us, we should be awake
+        wake();
+        return super.getSnapshot();
+    }
+
+    @Override
+    public void signal (int timestamp, Logic source, String name)
+    {
+        wake();
+        super.signal(timestamp, source, name);
+    }
+
     @Override
     public boolean tick (int timestamp)
     {
+        // when dormant, skip all but the occasional tick
+        int dormancyInterval = ((ActorConfig.Agent)_config).dormancyInterval;
+        if (dormancyInterval > 0) {
+            if (!_dormant && timestamp - _interestTime > dormancyInterval) {
+                _dormant = true;
+                _nextDormantTick = timestamp;
+                enteredDormancy();
+            }
+            if (_dormant) {
+                _scenemgr.agentTicked(true);
+                if (timestamp < _nextDormantTick) {
+                    return true;
+                }
+                _nextDormantTick = timestamp + ((ActorConfig.Agent)_config).dormantTickInterval;
+            } else {
+                _scenemgr.agentTicked(false);
+            }
+        } else {
+            _scenemgr.agentTicked(false);
+        }
+
         // advance to current time
         super.tick(timestamp);
 
@@ -261,6 +336,12 @@ public class AgentLogic extends ActiveLogic
         _targetRotation = _actor.getRotation();
         _timestamp = _actor.getCreated();
 
+        // start out awake
+        _interestTime = _timestamp;
+        if (((ActorConfig.Agent)_config).dormancyInterval > 0) {
+            _scenemgr.enableDormancy();
+        }
+
         // initialize the behavior logic
         _behavior = createBehavior(((ActorConfig.Agent)_config).behavior);
         _behavior.startup();
@@ -276,6 +357,22 @@ public class AgentLogic extends ActiveLogic
         _behavior.penetratedEnvironment(penetration);
     }
 
+    /**
+     * Called when the agent enters dormancy.
+     */
+    protected void enteredDormancy ()
+    {
+        // nothing by default
+    }
+
+    /**
+     * Called when the agent leaves dormancy.
+     */
+    protected void leftDormancy ()
+    {
+        // nothing by default
+    }
+
     /**
      * Called when we reach our target rotation.
      */
@@ -299,4 +396,13 @@ public class AgentLogic extends ActiveLogic
 
     /** The timestamp of the last tick. */
     protected int _timestamp;
+
+    /** The last time at which the agent was of interest to a client. */
+    protected int _interestTime;
+
+    /** Whether or not the agent is dormant. */
+    protected boolean _dormant;
+
+    /** The time of the next tick to process while dormant. */
+    protected int _nextDormantTick;
 }
@@ -43,6 +43,7 @@ import com.threerings.tudey.data.EntityKey;
 import com.threerings.tudey.data.actor.Actor;
 import com.threerings.tudey.data.actor.Mobile;
 import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.util.PathQueue;
 
 import static com.threerings.tudey.Log.log;
 
@@ -54,6 +55,12 @@ public abstract class BehaviorLogic extends Logic
     /** The maximum path length for following. */
     public static final float MAX_FOLLOW_PATH_LENGTH = 8f;
 
+    /** The radius of the flow fields used for following. */
+    public static final float FOLLOW_FLOW_FIELD_RADIUS = 16f;
+
+    /** The maximum number of flow field steps to follow between evaluations. */
+    public static final int MAX_FOLLOW_FLOW_FIELD_STEPS = 32;
+
     /**
      * Handles the idle behavior.
      */
@@ -527,6 +534,57 @@ public abstract class BehaviorLogic extends Logic
             _pidx = psource._pidx;
         }
 
+        @Override
+        public void suspend ()
+        {
+            super.suspend();
+            cancelPathRequest();
+        }
+
+        @Override
+        public void shutdown ()
+        {
+            super.shutdown();
+            cancelPathRequest();
+        }
+
+        /**
+         * Requests a path from the actor's current location, to be computed asynchronously and
+         * passed to {@link #pathComputed} on a later tick.  Any path currently being followed
+         * remains in effect until then.
+         *
+         * @param longest the maximum path length.
+         * @param partial if true, return a partial path even if the destination is unreachable.
+         * @param shortcut if true, use swept shapes to find path shortcuts.
+         */
+        protected void requestPath (
+            float longest, float bx, float by, boolean partial, boolean shortcut)
+        {
+            _pathRequest = _scenemgr.getPathQueue().request(
+                true, _agent, longest, bx, by, partial, shortcut, _pathListener);
+        }
+
+        /**
+         * Cancels the pending path request, if any.
+         */
+        protected void cancelPathRequest ()
+        {
+            if (_pathRequest != null) {
+                _pathRequest.cancel();
+                _pathRequest = null;
+            }
+        }
+
+        /**
+         * Called when a path requested with {@link #requestPath} has been computed.
+         *
+         * @param path the computed path, or null if the destination is unreachable.
+         */
+        protected void pathComputed (Vector2f[] path)
+        {
+            // nothing by default
+        }
+
         /**
          * Sets the path to follow.
          */
@@ -539,10 +597,11 @@ public abstract class BehaviorLogic extends Logic
         }
 
         /**
-         * Clears the path.
+         * Clears the path, canceling any pending path request.
          */
         protected void clearPath ()
         {
+            cancelPathRequest();
             if (_path != null) {
                 _agent.stopMoving();
                 _path = null;
@@ -595,6 +654,17 @@ public abstract class BehaviorLogic extends Logic
 
         /** The angular range we need to be within before starting to move. */
         protected float _moveFaceRange;
+
+        /** The pending path request, if any. */
+        protected PathQueue.Request _pathRequest;
+
+        /** Receives the results of our path requests. */
+        protected PathQueue.Listener _pathListener = new PathQueue.Listener() {
+            public void pathComputed (Vector2f[] path) {
+                _pathRequest = null;
+                Pathing.this.pathComputed(path);
+            }
+        };
     }
 
     /**
@@ -779,13 +849,31 @@ public abstract class BehaviorLogic extends Logic
                 return;
             }
 
-            // compute a path to the target
+            // if so configured, follow the target's flow field when within it
+            if (config.flowField) {
+                Vector2f[] path = _scenemgr.getPathfinder().getFlowField(
+                    _currentTarget, _agent, false, FOLLOW_FLOW_FIELD_RADIUS).getPath(
+                        trans.x, trans.y, MAX_FOLLOW_FLOW_FIELD_STEPS);
+                if (path != null) {
+                    cancelPathRequest();
+                    setPath(path);
+                    return;
+                }
+            }
+
+            // request a path to the target, continuing on the current path in the meantime
             Vector2f loc = _currentTarget.getTranslation();
-            Vector2f[] path = _scenemgr.getPathfinder().getPath(
-                _agent, MAX_FOLLOW_PATH_LENGTH, loc.x, loc.y, true, true);
+            requestPath(MAX_FOLLOW_PATH_LENGTH, loc.x, loc.y, true, true);
+        }
+
+        @Override
+        protected void pathComputed (Vector2f[] path)
+        {
             if (path == null) {
                 clearPath();
-                _agent.face(_currentTarget);
+                if (_currentTarget != null) {
+                    _agent.face(_currentTarget);
+                }
                 return;
             }
 
@@ -0,0 +1,447 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Longs;
+
+import com.threerings.media.util.AStarPathUtil;
+
+import com.threerings.math.Vector2f;
+
+/**
+ * A distance field over the pathfinder's grid of cells, measuring the length of the shortest
+ * path from each cell to a target, from which any number of actors may read their steering
+ * directions.  It uses the same step model as {@link PathSearch} (eight-way movement, with
+ * diagonal steps only when both adjacent cells are traversable) and covers a square region
+ * centered on the target.
+ *
+ * <p> The field is computed lazily: Dijkstra's algorithm expands outward from the target only
+ * until the cells queried so far have been settled, so the cost is proportional to the distance
+ * of the farthest follower rather than to the size of the region.  When the target moves to
+ * another cell (or the field is invalidated), the settled distances are discarded by advancing a
+ * generation stamp and the expansion starts over from the new target cell.
+ */
+public class FlowField
+{
+    /**
+     * Creates a new flow field.
+     *
+     * @param radius the radius of the region covered by the field, in cells.
+     * @param xoff the offset with which the pathfinder converts the x coordinates of the
+     * followers between world and cell coordinates, which depends on their extents.
+     * @param yoff the offset for the y coordinates.
+     */
+    public FlowField (
+        AStarPathUtil.TraversalPred pred, Object traverser, int radius, float xoff, float yoff)
+    {
+        _pred = pred;
+        _traverser = traverser;
+        _radius = radius;
+        _xoff = xoff;
+        _yoff = yoff;
+        _size = radius*2 + 1;
+        int cells = _size * _size;
+        _dist = new int[cells];
+        _stamps = new int[cells];
+        _passStamps = new int[cells];
+        _passable = new boolean[cells];
+    }
+
+    /**
+     * Returns the radius of the region covered by the field, in cells.
+     */
+    public int getRadius ()
+    {
+        return _radius;
+    }
+
+    /**
+     * Sets the location of the target in world coordinates.
+     */
+    public void setTarget (float x, float y)
+    {
+        setTargetCell(toCellX(x), toCellY(y));
+    }
+
+    /**
+     * Sets the location of the target in cell coordinates.  If the target has not changed cells
+     * and the field has not been invalidated, the settled distances are retained.
+     */
+    public void setTargetCell (int x, int y)
+    {
+        if (x == _tx && y == _ty && !_invalid) {
+            return;
+        }
+        _tx = x;
+        _ty = y;
+        _ox = x - _radius;
+        _oy = y - _radius;
+        _invalid = false;
+        if (_generation == Integer.MAX_VALUE) {
+            // clear the stamps before they wrap around, so that stale cells can't match
+            Arrays.fill(_stamps, 0);
+            Arrays.fill(_passStamps, 0);
+            _generation = 0;
+        }
+        _generation++;
+        _heapSize = 0;
+        int idx = getIndex(x, y);
+        _dist[idx] = 0;
+        _stamps[idx] = _generation;
+        push(0, idx);
+    }
+
+    /**
+     * Returns the x coordinate of the target cell.
+     */
+    public int getTargetX ()
+    {
+        return _tx;
+    }
+
+    /**
+     * Returns the y coordinate of the target cell.
+     */
+    public int getTargetY ()
+    {
+        return _ty;
+    }
+
+    /**
+     * Discards the computed distances, forcing them to be recomputed from the target when next
+     * queried.  This should be called when the traversability of the cells changes.
+     */
+    public void invalidate ()
+    {
+        _invalid = true;
+    }
+
+    /**
+     * Checks whether the region covered by the field intersects the specified region (in cell
+     * coordinates, inclusive).
+     */
+    public boolean intersects (int minx, int miny, int maxx, int maxy)
+    {
+        return maxx >= _ox && minx < _ox + _size && maxy >= _oy && miny < _oy + _size;
+    }
+
+    /**
+     * Returns the length of the shortest path from the specified cell to the target, in units
+     * of one tenth of an adjacent step, or -1 if the cell is outside the region or unreachable.
+     */
+    public int getDistance (int x, int y)
+    {
+        if (_invalid) {
+            setTargetCell(_tx, _ty);
+        }
+        int idx = getIndex(x, y);
+        if (idx == -1) {
+            return -1;
+        }
+        while (_stamps[idx] != -_generation && _heapSize > 0) {
+            expand();
+        }
+        return (_stamps[idx] == -_generation) ? _dist[idx] : -1;
+    }
+
+    /**
+     * Determines the direction in which to move from the specified location (in world
+     * coordinates) in order to follow the field towards the target.
+     *
+     * @return true if a direction was found, false if the location is at the target, outside of
+     * the region, or unreachable.
+     */
+    public boolean getDirection (float x, float y, Vector2f result)
+    {
+        int cx = toCellX(x), cy = toCellY(y);
+        int next = getNextStep(cx, cy);
+        if (next == -1) {
+            return false;
+        }
+        result.set(STEP_X[next], STEP_Y[next]).normalizeLocal();
+        return true;
+    }
+
+    /**
+     * Follows the field from the specified location (in world coordinates) towards the target,
+     * returning the waypoints at which the direction changes.
+     *
+     * @param maxLength the maximum number of steps to take.
+     * @return the waypoints (the locations of the cells in world coordinates, as used by the
+     * pathfinder), or null if the location is at the target, outside of the region, or
+     * unreachable.
+     */
+    public Vector2f[] getPath (float x, float y, int maxLength)
+    {
+        int cx = toCellX(x), cy = toCellY(y);
+        int last = -1;
+        for (int ii = 0; ii < maxLength; ii++) {
+            int next = getNextStep(cx, cy);
+            if (next == -1) {
+                break;
+            }
+            if (last != -1 && next != last) {
+                _waypoints.add(toWorld(cx, cy));
+            }
+            cx += STEP_X[next];
+            cy += STEP_Y[next];
+            last = next;
+        }
+        if (last == -1) {
+            return null;
+        }
+        _waypoints.add(toWorld(cx, cy));
+        Vector2f[] path = _waypoints.toArray(new Vector2f[_waypoints.size()]);
+        _waypoints.clear();
+        return path;
+    }
+
+    /**
+     * Finds the step to take from the specified cell: the one towards the neighbor closest to
+     * the target.  The cell itself need not be traversable (it may be occupied by the actor
+     * following the field, for instance).
+     *
+     * @return the index of the step, or -1 if none.
+     */
+    public int getNextStep (int x, int y)
+    {
+        if (_invalid) {
+            setTargetCell(_tx, _ty);
+        }
+        if (x == _tx && y == _ty) {
+            return -1;
+        }
+        int cidx = -1, cdist = Integer.MAX_VALUE;
+        for (int ii = 0; ii < STEP_X.length; ii++) {
+            int dx = STEP_X[ii], dy = STEP_Y[ii];
+            if (dx != 0 && dy != 0 && !(canTraverse(x + dx, y) && canTraverse(x, y + dy))) {
+                continue; // no cutting corners
+            }
+            int dist = getDistance(x + dx, y + dy);
+            if (dist != -1 && dist < cdist) {
+                cidx = ii;
+                cdist = dist;
+            }
+        }
+        return cidx;
+    }
+
+    /**
+     * Settles the closest cell on the frontier and relaxes its neighbors.
+     */
+    protected void expand ()
+    {
+        long entry = pop();
+        int idx = (int)entry, dist = (int)(entry >>> 32);
+        if (_stamps[idx] != _generation || _dist[idx] != dist) {
+            return; // already settled or superseded
+        }
+        _stamps[idx] = -_generation;
+        int x = _ox + idx % _size, y = _oy + idx / _size;
+        for (int ii = 0; ii < STEP_X.length; ii++) {
+            int dx = STEP_X[ii], dy = STEP_Y[ii];
+            int nx = x + dx, ny = y + dy;
+            int nidx = getIndex(nx, ny);
+            if (nidx == -1 || _stamps[nidx] == -_generation || !canTraverse(nx, ny)) {
+                continue;
+            }
+            int ndist;
+            if (dx == 0 || dy == 0) {
+                ndist = dist + ADJACENT_COST;
+            } else if (canTraverse(nx, y) && canTraverse(x, ny)) {
+                ndist = dist + DIAGONAL_COST;
+            } else {
+                continue;
+            }
+            if (_stamps[nidx] != _generation || ndist < _dist[nidx]) {
+                _stamps[nidx] = _generation;
+                _dist[nidx] = ndist;
+                push(ndist, nidx);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the specified cell is traversable, caching the result for the current
+     * generation.
+     */
+    protected boolean canTraverse (int x, int y)
+    {
+        int idx = getIndex(x, y);
+        if (idx == -1) {
+            return _pred.canTraverse(_traverser, x, y);
+        }
+        if (_passStamps[idx] != _generation) {
+            _passStamps[idx] = _generation;
+            _passable[idx] = _pred.canTraverse(_traverser, x, y);
+        }
+        return _passable[idx];
+    }
+
+    /**
+     * Returns the index of the specified cell within the region, or -1 if it lies outside.
+     */
+    protected int getIndex (int x, int y)
+    {
+        int rx = x - _ox, ry = y - _oy;
+        return (rx < 0 || ry < 0 || rx >= _size || ry >= _size) ? -1 : ry*_size + rx;
+    }
+
+    /**
+     * Adds an entry to the frontier.
+     */
+    protected void push (int dist, int idx)
+    {
+        _heap = Longs.ensureCapacity(_heap, _heapSize + 1, _heap.length);
+        long entry = ((long)dist << 32) | idx;
+        int pos = _heapSize++;
+        while (pos > 0) {
+            int parent = (pos - 1) >> 1;
+            if (_heap[parent] <= entry) {
+                break;
+            }
+            _heap[pos] = _heap[parent];
+            pos = parent;
+        }
+        _heap[pos] = entry;
+    }
+
+    /**
+     * Removes and returns the closest entry on the frontier.
+     */
+    protected long pop ()
+    {
+        long top = _heap[0];
+        long last = _heap[--_heapSize];
+        int pos = 0;
+        while (true) {
+            int child = pos*2 + 1;
+            if (child >= _heapSize) {
+                break;
+            }
+            if (child + 1 < _heapSize && _heap[child + 1] < _heap[child]) {
+                child++;
+            }
+            if (last <= _heap[child]) {
+                break;
+            }
+            _heap[pos] = _heap[child];
+            pos = child;
+        }
+        _heap[pos] = last;
+        return top;
+    }
+
+    /**
+     * Converts a world x coordinate to a cell coordinate as the pathfinder does.
+     */
+    protected int toCellX (float x)
+    {
+        return Math.round(x * Pathfinder.SUBDIVISION - _xoff);
+    }
+
+    /**
+     * Converts a world y coordinate to a cell coordinate as the pathfinder does.
+     */
+    protected int toCellY (float y)
+    {
+        return Math.round(y * Pathfinder.SUBDIVISION - _yoff);
+    }
+
+    /**
+     * Returns the location of the specified cell in world coordinates, as used by the pathfinder.
+     */
+    protected Vector2f toWorld (int x, int y)
+    {
+        return new Vector2f(
+            (x + _xoff) / Pathfinder.SUBDIVISION, (y + _yoff) / Pathfinder.SUBDIVISION);
+    }
+
+    /** The traversal predicate. */
+    protected AStarPathUtil.TraversalPred _pred;
+
+    /** The traverser passed to the predicate. */
+    protected Object _traverser;
+
+    /** The radius of the region, in cells. */
+    protected int _radius;
+
+    /** The offsets for converting to/from cell coordinates. */
+    protected float _xoff, _yoff;
+
+    /** The width and height of the region, in cells. */
+    protected int _size;
+
+    /** The target cell. */
+    protected int _tx = Integer.MIN_VALUE, _ty = Integer.MIN_VALUE;
+
+    /** The origin of the region. */
+    protected int _ox, _oy;
+
+    /** Set when the distances must be recomputed. */
+    protected boolean _invalid;
+
+    /** The tentative or settled distance of each cell. */
+    protected int[] _dist;
+
+    /** For each cell, the generation if its distance is tentative, or the negated generation if
+     * it has been settled. */
+    protected int[] _stamps;
+
+    /** For each cell, the generation in which its traversability was cached. */
+    protected int[] _passStamps;
+
+    /** The cached traversability of each cell. */
+    protected boolean[] _passable;
+
+    /** The current generation. */
+    protected int _generation;
+
+    /** The frontier, as a binary heap of distances (high bits) and cell indices (low bits). */
+    protected long[] _heap = new long[64];
+
+    /** The number of entries in the frontier. */
+    protected int _heapSize;
+
+    /** Holds waypoints while following the field. */
+    protected List<Vector2f> _waypoints = Lists.newArrayList();
+
+    /** The x offsets of the steps to the neighbors of a cell. */
+    protected static final int[] STEP_X = { 1, 1, 0, -1, -1, -1, 0, 1 };
+
+    /** The y offsets of the steps to the neighbors of a cell. */
+    protected static final int[] STEP_Y = { 0, 1, 1, 1, 0, -1, -1, -1 };
+
+    /** The cost of a step to an adjacent cell. */
+    protected static final int ADJACENT_COST = 10;
+
+    /** The cost of a step to a diagonal cell. */
+    protected static final int DIAGONAL_COST = 14;
+}
@@ -0,0 +1,594 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.threerings.math.FloatMath;
+import com.threerings.math.Rect;
+import com.threerings.math.Vector2f;
+
+import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.logic.ActorLogic;
+import com.threerings.tudey.server.logic.PawnLogic;
+
+import static com.threerings.tudey.Log.log;
+
+/**
+ * Computes paths on behalf of the scene's actors under a per-tick budget of search node
+ * expansions.  The work is metered in expansions rather than time so that the tick on which
+ * each result arrives depends only on the requests made, keeping the simulation deterministic
+ * (and replayable).  Requests are serviced in order of their distance to the clients' pawns
+ * (with requests that have waited too long promoted ahead of the rest), and requests that share
+ * a start region, destination region, and movement profile are coalesced into a single search.
+ * The path computed from the location of the first request is delivered to all of them, with
+ * the first waypoint moved to each actor's own location; the rest of the path (including any
+ * shortcuts) is shared.  An actor that replaces its pending request (as when following a moving
+ * target) keeps the time it has already waited.  Results are delivered through {@link Listener}
+ * callbacks when the queue is processed at the start of a later tick.
+ */
+public class PathQueue
+{
+    /**
+     * Notified when a requested path has been computed.
+     */
+    public interface Listener
+    {
+        /**
+         * Called when the path has been computed.
+         *
+         * @param path the computed path, or null if the destination is unreachable.
+         */
+        public void pathComputed (Vector2f[] path);
+    }
+
+    /**
+     * An incremental path computation serviced by the queue.
+     */
+    public interface Task
+    {
+        /**
+         * Continues the computation until it completes or has expanded the specified number of
+         * nodes.
+         *
+         * @return true if the computation is complete.
+         */
+        public boolean resume (int budget);
+
+        /**
+         * Stops the computation.
+         */
+        public void abort ();
+
+        /**
+         * Returns the number of nodes expanded so far.
+         */
+        public int getExpansions ();
+
+        /**
+         * Returns the computed path, or null if the destination is unreachable.
+         */
+        public Vector2f[] getResult ();
+    }
+
+    /**
+     * A handle on a pending path request.
+     */
+    public class Request
+    {
+        /**
+         * Checks whether the request is still awaiting its result.
+         */
+        public boolean isPending ()
+        {
+            return _search != null;
+        }
+
+        /**
+         * Cancels the request (if still pending), ensuring that its listener will not be
+         * notified.
+         */
+        public void cancel ()
+        {
+            if (_search == null) {
+                return;
+            }
+            _requests.remove(_logic);
+            _search.requests.remove(this);
+            if (_search.requests.isEmpty()) {
+                removeSearch(_search);
+            }
+            _search = null;
+        }
+
+        /**
+         * Creates a new request.
+         */
+        protected Request (ActorLogic logic, Listener listener, Search search, int enqueued)
+        {
+            _logic = logic;
+            _listener = listener;
+            _search = search;
+            _enqueued = enqueued;
+        }
+
+        /** The logic of the requesting actor. */
+        protected ActorLogic _logic;
+
+        /** The listener to notify with the result. */
+        protected Listener _listener;
+
+        /** The search computing the path, or null if no longer pending. */
+        protected Search _search;
+
+        /** The tick on which the actor's request was first enqueued (carried over when the
+         * request is replaced). */
+        protected int _enqueued;
+    }
+
+    /**
+     * Creates a new path queue.
+     */
+    public PathQueue (TudeySceneManager scenemgr)
+    {
+        _scenemgr = scenemgr;
+    }
+
+    /**
+     * Sets the (positive) number of search nodes to expand on each tick.
+     */
+    public void setExpansionBudget (int budget)
+    {
+        _expansionBudget = budget;
+    }
+
+    /**
+     * Returns the number of search nodes to expand on each tick.
+     */
+    public int getExpansionBudget ()
+    {
+        return _expansionBudget;
+    }
+
+    /**
+     * Sets the number of ticks after which a request is serviced ahead of those closer to the
+     * clients.
+     */
+    public void setMaxWait (int maxWait)
+    {
+        _maxWait = maxWait;
+    }
+
+    /**
+     * Returns the number of ticks after which a request is serviced ahead of those closer to
+     * the clients.
+     */
+    public int getMaxWait ()
+    {
+        return _maxWait;
+    }
+
+    /**
+     * Returns the number of requests awaiting their results.
+     */
+    public int getPendingCount ()
+    {
+        return _requests.size();
+    }
+
+    /**
+     * Returns the number of searches awaiting completion (which may be fewer than the number of
+     * pending requests, since equivalent requests are coalesced).
+     */
+    public int getSearchCount ()
+    {
+        return _searches.size();
+    }
+
+    /**
+     * Returns the time taken by the last call to {@link #process}, in nanoseconds.
+     */
+    public long getProcessDuration ()
+    {
+        return _processDuration;
+    }
+
+    /**
+     * Requests a path for the specified actor from its current location, replacing any request
+     * already pending for the actor.  If the pending request is equivalent to the new one (and
+     * has the same listener), it is retained so that it does not lose its place in the queue.
+     * Likewise, a request whose search is already under way is retained as long as the movement
+     * profile is unchanged, since restarting the search would discard its progress.  A request
+     * that is replaced passes the time it has waited on to its replacement.
+     *
+     * @param collideActor if true, consider the actors as well as the scene entries.
+     * @param longest the maximum path length.
+     * @param partial if true, return a partial path even if the destination is unreachable.
+     * @param shortcut if true, use swept shapes to find path shortcuts.
+     * @return the pending request.
+     */
+    public Request request (
+        boolean collideActor, ActorLogic logic, float longest, float bx, float by,
+        boolean partial, boolean shortcut, Listener listener)
+    {
+        Rect bounds = logic.getShape().getBounds();
+        Vector2f translation = logic.getTranslation();
+        int flags = (collideActor ? COLLIDE_ACTOR : 0) | (partial ? PARTIAL : 0) |
+            (shortcut ? SHORTCUT : 0);
+        Key key = new Key(
+            FloatMath.ifloor(translation.x / REGION_SIZE),
+            FloatMath.ifloor(translation.y / REGION_SIZE),
+            FloatMath.ifloor(bx / REGION_SIZE), FloatMath.ifloor(by / REGION_SIZE),
+            logic.getActor().getCollisionMask(),
+            FloatMath.iceil(bounds.getWidth() * Pathfinder.SUBDIVISION),
+            FloatMath.iceil(bounds.getHeight() * Pathfinder.SUBDIVISION),
+            Float.floatToIntBits(longest), flags);
+
+        // check for an existing request
+        int enqueued = _ticks;
+        Request request = _requests.get(logic);
+        if (request != null) {
+            Key okey = request._search.key;
+            if (request._listener == listener && (okey.equals(key) ||
+                    (request._search == _active && okey.hasProfile(key)))) {
+                return request;
+            }
+            enqueued = request._enqueued;
+            request.cancel();
+        }
+
+        // join an equivalent search or create a new one
+        Search search = _searches.get(key);
+        if (search == null) {
+            _searches.put(key, search = new Search(key, bx, by));
+            _waiting.add(search);
+        }
+        search.requests.add(request = new Request(logic, listener, search, enqueued));
+        _requests.put(logic, request);
+        return request;
+    }
+
+    /**
+     * Computes paths until the expansion budget for the tick is exhausted, notifying the
+     * listeners of any requests completed.
+     */
+    public void process ()
+    {
+        _ticks++;
+        if (_active == null && _waiting.isEmpty()) {
+            _processDuration = 0L;
+            return;
+        }
+        long started = System.nanoTime();
+        prioritize();
+        for (int remaining = _expansionBudget; remaining > 0; ) {
+            if (_active == null) {
+                if (_waiting.isEmpty()) {
+                    break;
+                }
+                _active = _waiting.remove(_waiting.size() - 1);
+                _active.computation = startComputation(_active);
+            }
+            Task computation = _active.computation;
+            int expansions = computation.getExpansions();
+            boolean done = computation.resume(remaining);
+            remaining -= computation.getExpansions() - expansions;
+            if (done) {
+                Search search = _active;
+                _active = null;
+                deliver(search);
+            }
+        }
+        _processDuration = System.nanoTime() - started;
+    }
+
+    /**
+     * Cancels all pending requests without notifying their listeners.
+     */
+    public void clear ()
+    {
+        if (_active != null) {
+            _active.computation.abort();
+            _active = null;
+        }
+        for (Request request : _requests.values()) {
+            request._search = null;
+        }
+        _requests.clear();
+        _searches.clear();
+        _waiting.clear();
+    }
+
+    /**
+     * Starts the computation for a search on behalf of its first request.
+     */
+    protected Task startComputation (Search search)
+    {
+        Request leader = search.requests.get(0);
+        return _scenemgr.getPathfinder().startPath(
+            _search, (search.key.flags & COLLIDE_ACTOR) != 0, leader._logic,
+            Float.intBitsToFloat(search.key.longest), search.bx, search.by,
+            (search.key.flags & PARTIAL) != 0, (search.key.flags & SHORTCUT) != 0);
+    }
+
+    /**
+     * Drops the requests of removed actors and sorts the waiting searches so that the next one
+     * to service is at the end of the list.
+     */
+    protected void prioritize ()
+    {
+        _scenemgr.getClientTargets(_targets);
+        for (int ii = _waiting.size() - 1; ii >= 0; ii--) {
+            Search search = _waiting.get(ii);
+            List<Request> requests = search.requests;
+            int enqueued = _ticks;
+            for (int jj = requests.size() - 1; jj >= 0; jj--) {
+                Request request = requests.get(jj);
+                if (request._logic.isRemoved()) {
+                    request.cancel(); // may remove the search from the waiting list
+                } else {
+                    enqueued = Math.min(enqueued, request._enqueued);
+                }
+            }
+            if (requests.isEmpty()) {
+                continue;
+            }
+            int waited = _ticks - enqueued;
+            if (waited >= _maxWait) {
+                search.priority = -waited;
+                continue;
+            }
+            Vector2f translation = requests.get(0)._logic.getTranslation();
+            float priority = Float.MAX_VALUE;
+            for (int jj = 0, nn = _targets.size(); jj < nn; jj++) {
+                priority = Math.min(
+                    priority, _targets.get(jj).getTranslation().distanceSquared(translation));
+            }
+            search.priority = priority;
+        }
+        _targets.clear();
+        Collections.sort(_waiting, PRIORITY_ORDER);
+    }
+
+    /**
+     * Removes an abandoned search.
+     */
+    protected void removeSearch (Search search)
+    {
+        _searches.remove(search.key);
+        if (search == _active) {
+            _active.computation.abort();
+            _active = null;
+        } else {
+            _waiting.remove(search);
+        }
+    }
+
+    /**
+     * Delivers the result of a completed search to its requests.
+     */
+    protected void deliver (Search search)
+    {
+        _searches.remove(search.key);
+        Vector2f[] path = search.computation.getResult();
+        for (int ii = 0, nn = search.requests.size(); ii < nn; ii++) {
+            Request request = search.requests.get(ii);
+            request._search = null;
+            _requests.remove(request._logic);
+        }
+        for (int ii = 0, nn = search.requests.size(); ii < nn; ii++) {
+            Request request = search.requests.get(ii);
+            // the first requester may have moved if its search was retained
+            try {
+                request._listener.pathComputed((path == null ||
+                    (ii == 0 && path[0].equals(request._logic.getTranslation()))) ?
+                        path : rebase(path, request._logic));
+            } catch (Throwable t) {
+                log.warning("Caught throwable delivering path.",
+                    "where", _scenemgr.where(), "logic", request._logic, t);
+            }
+        }
+    }
+
+    /**
+     * Copies a path computed for the first request of a search, moving its first waypoint to the
+     * location of another requester.
+     */
+    protected static Vector2f[] rebase (Vector2f[] path, ActorLogic logic)
+    {
+        Vector2f[] rebased = path.clone();
+        rebased[0] = new Vector2f(logic.getTranslation());
+        return rebased;
+    }
+
+    /**
+     * A search shared by one or more equivalent requests.
+     */
+    protected static class Search
+    {
+        /** The key identifying equivalent requests. */
+        public final Key key;
+
+        /** The destination of the first request. */
+        public final float bx, by;
+
+        /** The requests awaiting the result. */
+        public List<Request> requests = Lists.newArrayListWithExpectedSize(1);
+
+        /** The priority of the search (lower values are serviced first). */
+        public float priority;
+
+        /** The computation, once started. */
+        public Task computation;
+
+        /**
+         * Creates a new search.
+         */
+        public Search (Key key, float bx, float by)
+        {
+            this.key = key;
+            this.bx = bx;
+            this.by = by;
+        }
+    }
+
+    /**
+     * Identifies equivalent requests: those sharing start and destination regions and movement
+     * profiles.
+     */
+    protected static class Key
+    {
+        /** The start and destination regions. */
+        public final int sx, sy, dx, dy;
+
+        /** The collision mask and extents (in subdivided cells) of the actor. */
+        public final int mask, width, height;
+
+        /** The raw bits of the maximum path length. */
+        public final int longest;
+
+        /** The search flags. */
+        public final int flags;
+
+        /**
+         * Creates a new key.
+         */
+        public Key (
+            int sx, int sy, int dx, int dy, int mask, int width, int height,
+            int longest, int flags)
+        {
+            this.sx = sx;
+            this.sy = sy;
+            this.dx = dx;
+            this.dy = dy;
+            this.mask = mask;
+            this.width = width;
+            this.height = height;
+            this.longest = longest;
+            this.flags = flags;
+        }
+
+        /**
+         * Checks whether this key has the same movement profile (collision mask, extents,
+         * maximum length, and flags) as another, regardless of the regions.
+         */
+        public boolean hasProfile (Key other)
+        {
+            return mask == other.mask && width == other.width && height == other.height &&
+                longest == other.longest && flags == other.flags;
+        }
+
+        @Override
+        public int hashCode ()
+        {
+            int hash = sx;
+            hash = 31*hash + sy;
+            hash = 31*hash + dx;
+            hash = 31*hash + dy;
+            hash = 31*hash + mask;
+            hash = 31*hash + width;
+            hash = 31*hash + height;
+            hash = 31*hash + longest;
+            return 31*hash + flags;
+        }
+
+        @Override
+        public boolean equals (Object other)
+        {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key okey = (Key)other;
+            return sx == okey.sx && sy == okey.sy && dx == okey.dx && dy == okey.dy &&
+                hasProfile(okey);
+        }
+    }
+
+    /** The owning scene manager. */
+    protected TudeySceneManager _scenemgr;
+
+    /** The search used to compute paths. */
+    protected PathSearch _search = new PathSearch();
+
+    /** The number of search nodes to expand on each tick. */
+    protected int _expansionBudget = DEFAULT_EXPANSION_BUDGET;
+
+    /** The number of ticks after which requests are serviced ahead of the rest. */
+    protected int _maxWait = DEFAULT_MAX_WAIT;
+
+    /** The pending requests, mapped by actor. */
+    protected Map<ActorLogic, Request> _requests = Maps.newHashMap();
+
+    /** The pending searches, mapped by key. */
+    protected Map<Key, Search> _searches = Maps.newHashMap();
+
+    /** The searches awaiting their turn, in reverse order of priority. */
+    protected ArrayList<Search> _waiting = Lists.newArrayList();
+
+    /** The search being computed, if any. */
+    protected Search _active;
+
+    /** The number of times the queue has been processed. */
+    protected int _ticks;
+
+    /** The time taken by the last call to {@link #process}, in nanoseconds. */
+    protected long _processDuration;
+
+    /** Holds the client targets during prioritization. */
+    protected List<PawnLogic> _targets = Lists.newArrayList();
+
+    /** Sorts searches in reverse order of priority. */
+    protected static final Comparator<Search> PRIORITY_ORDER = new Comparator<Search>() {
+        public int compare (Search s1, Search s2) {
+            return Float.compare(s2.priority, s1.priority);
+        }
+    };
+
+    /** The size of the regions within which requests are coalesced. */
+    protected static final float REGION_SIZE = 1f;
+
+    /** Search flag indicating that the actors should be considered. */
+    protected static final int COLLIDE_ACTOR = (1 << 0);
+
+    /** Search flag indicating that partial paths are acceptable. */
+    protected static final int PARTIAL = (1 << 1);
+
+    /** Search flag indicating that shortcuts should be computed. */
+    protected static final int SHORTCUT = (1 << 2);
+
+    /** The default number of search nodes to expand on each tick. */
+    protected static final int DEFAULT_EXPANSION_BUDGET = 20000;
+
+    /** The default number of ticks after which requests are serviced ahead of the rest. */
+    protected static final int DEFAULT_MAX_WAIT = 10;
+}
@@ -0,0 +1,762 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.awt.Point;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+
+import com.threerings.media.util.AStarPathUtil;
+
+/**
+ * A reusable A* search over the pathfinder's grid of cells, with the same step model and
+ * {@link AStarPathUtil.TraversalPred} semantics as {@link AStarPathUtil}: eight-way movement,
+ * diagonal steps only when both adjacent cells are traversable, and a maximum path cost of
+ * <code>longest</code> adjacent steps.
+ *
+ * <p> Nodes are stored in pooled primitive arrays and located through a generation-stamped hash
+ * table, so starting a new search clears nothing.  Because every step on the grid has uniform
+ * cost, the search by default expands only jump points (Harabor and Grastien's jump point
+ * search, in the variant that forbids cutting corners), then fills in the cells between them
+ * when building the path.  Work is metered in node expansions: {@link #resume} stops after a
+ * given number, and a suspended search can be resumed later (on a subsequent tick, for instance)
+ * or abandoned with {@link #abort}.  So that each expansion does a bounded amount of work, the
+ * cells scanned by the jumps from a node are limited, and a jump that reaches the limit stops at
+ * an intermediate jump point.
+ */
+public class PathSearch
+{
+    /** The states of a search. */
+    public enum Status
+    {
+        /** The search has not finished. */
+        PENDING,
+
+        /** A path to the destination was found. */
+        FOUND,
+
+        /** The destination was unreachable; the path leads to the closest point found. */
+        PARTIAL,
+
+        /** No path was found. */
+        FAILED
+    }
+
+    /**
+     * Sets whether to use jump point pruning (the default) or plain A*.
+     */
+    public void setJumpPoints (boolean jumpPoints)
+    {
+        _jumpPoints = jumpPoints;
+    }
+
+    /**
+     * Checks whether the search uses jump point pruning.
+     */
+    public boolean getJumpPoints ()
+    {
+        return _jumpPoints;
+    }
+
+    /**
+     * Sets the (positive) maximum number of cells to scan when jumping from a single node.
+     */
+    public void setScanLimit (int scanLimit)
+    {
+        _scanLimit = scanLimit;
+    }
+
+    /**
+     * Returns the maximum number of cells to scan when jumping from a single node.
+     */
+    public int getScanLimit ()
+    {
+        return _scanLimit;
+    }
+
+    /**
+     * Starts a new search, releasing the state of the previous one.
+     *
+     * @param longest the maximum path length, in adjacent steps.
+     * @param partial if true, return a partial path even if the destination is unreachable.
+     */
+    public void init (
+        AStarPathUtil.TraversalPred pred, Object traverser, int longest,
+        int ax, int ay, int bx, int by, boolean partial)
+    {
+        _pred = pred;
+        _traverser = traverser;
+        _maxCost = (int)Math.min((long)longest * ADJACENT_COST, Integer.MAX_VALUE);
+        _ax = ax;
+        _ay = ay;
+        _bx = bx;
+        _by = by;
+        _partial = partial;
+        _expansions = 0;
+        _pathLength = 0;
+        start(_jumpPoints);
+    }
+
+    /**
+     * Continues the search.
+     *
+     * @param budget the maximum number of nodes to expand before suspending the search.
+     * @return the status of the search: {@link Status#PENDING} if the budget ran out first.
+     */
+    public Status resume (int budget)
+    {
+        if (_status != Status.PENDING) {
+            return _status;
+        }
+        for (int remaining = budget; remaining > 0; remaining--) {
+            if (_heapSize == 0) {
+                if (_pruning && _partial) {
+                    // the destination is unreachable; the closest reachable cell may lie
+                    // between jump points, so search again expanding every cell
+                    start(false);
+                    continue;
+                }
+                return finish(_partial ? _best : -1, Status.PARTIAL);
+            }
+            int node = pop();
+            _expansions++;
+            int x = _x[node], y = _y[node];
+            if (x == _bx && y == _by) {
+                return finish(node, Status.FOUND);
+            }
+            if (_partial) {
+                long dist = distanceSq(x, y);
+                if (dist < _bestDist) {
+                    _bestDist = dist;
+                    _best = node;
+                }
+            }
+            if (_pruning) {
+                _scanRemaining = _scanLimit;
+                expandJumpPoints(node);
+            } else {
+                expandNeighbors(node);
+            }
+        }
+        return _status;
+    }
+
+    /**
+     * Stops a pending search, completing it with the closest point found so far if a partial
+     * path was requested.
+     */
+    public Status abort ()
+    {
+        return (_status == Status.PENDING) ?
+            finish(_partial ? _best : -1, Status.PARTIAL) : _status;
+    }
+
+    /**
+     * Returns the status of the search.
+     */
+    public Status getStatus ()
+    {
+        return _status;
+    }
+
+    /**
+     * Returns the number of nodes expanded so far by the search.
+     */
+    public int getExpansions ()
+    {
+        return _expansions;
+    }
+
+    /**
+     * Returns the number of cells in the computed path (including the start), or zero if none.
+     */
+    public int getPathLength ()
+    {
+        return _pathLength;
+    }
+
+    /**
+     * Returns the x coordinate of the cell at the specified index in the path.
+     */
+    public int getPathX (int idx)
+    {
+        return _pathX[idx];
+    }
+
+    /**
+     * Returns the y coordinate of the cell at the specified index in the path.
+     */
+    public int getPathY (int idx)
+    {
+        return _pathY[idx];
+    }
+
+    /**
+     * Returns the computed path as a list of points, or <code>null</code> if none, as
+     * {@link AStarPathUtil#getPath} would.
+     */
+    public List<Point> getPath ()
+    {
+        if (_pathLength == 0) {
+            return null;
+        }
+        List<Point> path = Lists.newArrayListWithCapacity(_pathLength);
+        for (int ii = 0; ii < _pathLength; ii++) {
+            path.add(new Point(_pathX[ii], _pathY[ii]));
+        }
+        return path;
+    }
+
+    /**
+     * (Re)starts the search from the start node.
+     */
+    protected void start (boolean pruning)
+    {
+        _pruning = pruning;
+        if (++_generation == 0) {
+            Arrays.fill(_stamps, 0);
+            _generation = 1;
+        }
+        _nodeCount = 0;
+        _heapSize = 0;
+        _best = -1;
+        _bestDist = Long.MAX_VALUE;
+        _status = Status.PENDING;
+
+        int node = getNode(_ax, _ay);
+        _g[node] = 0;
+        _f[node] = _h[node];
+        push(node);
+    }
+
+    /**
+     * Completes the search, building the path to the specified node (if any).
+     *
+     * @param status the status to report if there is a node.
+     */
+    protected Status finish (int node, Status status)
+    {
+        _pred = null;
+        _traverser = null;
+        if (node == -1) {
+            return _status = Status.FAILED;
+        }
+
+        // count the cells, then fill them in from the end
+        int length = 1;
+        for (int child = node, parent = _parent[node]; parent != -1;
+                child = parent, parent = _parent[parent]) {
+            length += Math.max(Math.abs(_x[child] - _x[parent]), Math.abs(_y[child] - _y[parent]));
+        }
+        if (_pathX.length < length) {
+            _pathX = new int[length];
+            _pathY = new int[length];
+        }
+        int idx = length - 1;
+        _pathX[idx] = _x[node];
+        _pathY[idx] = _y[node];
+        for (int child = node, parent = _parent[node]; parent != -1;
+                child = parent, parent = _parent[parent]) {
+            int x = _x[child], y = _y[child], px = _x[parent], py = _y[parent];
+            int dx = Integer.signum(px - x), dy = Integer.signum(py - y);
+            while (x != px || y != py) {
+                x += dx;
+                y += dy;
+                idx--;
+                _pathX[idx] = x;
+                _pathY[idx] = y;
+            }
+        }
+        _pathLength = length;
+        return _status = status;
+    }
+
+    /**
+     * Relaxes the neighbors of the specified node without pruning.
+     */
+    protected void expandNeighbors (int node)
+    {
+        int x = _x[node], y = _y[node];
+        boolean left = canTraverse(x - 1, y), right = canTraverse(x + 1, y);
+        boolean down = canTraverse(x, y - 1), up = canTraverse(x, y + 1);
+        if (left) {
+            relax(node, x - 1, y, ADJACENT_COST);
+        }
+        if (right) {
+            relax(node, x + 1, y, ADJACENT_COST);
+        }
+        if (down) {
+            relax(node, x, y - 1, ADJACENT_COST);
+            if (left && canTraverse(x - 1, y - 1)) {
+                relax(node, x - 1, y - 1, DIAGONAL_COST);
+            }
+            if (right && canTraverse(x + 1, y - 1)) {
+                relax(node, x + 1, y - 1, DIAGONAL_COST);
+            }
+        }
+        if (up) {
+            relax(node, x, y + 1, ADJACENT_COST);
+            if (left && canTraverse(x - 1, y + 1)) {
+                relax(node, x - 1, y + 1, DIAGONAL_COST);
+            }
+            if (right && canTraverse(x + 1, y + 1)) {
+                relax(node, x + 1, y + 1, DIAGONAL_COST);
+            }
+        }
+    }
+
+    /**
+     * Jumps in each of the natural and forced directions from the specified node, relaxing the
+     * jump points found.
+     */
+    protected void expandJumpPoints (int node)
+    {
+        int x = _x[node], y = _y[node], parent = _parent[node];
+        if (parent == -1) {
+            // the start node has no direction; try all eight
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    if ((dx != 0 || dy != 0) && (dx == 0 || dy == 0 ||
+                            (canTraverse(x + dx, y) && canTraverse(x, y + dy)))) {
+                        jumpFrom(node, dx, dy);
+                    }
+                }
+            }
+            return;
+        }
+        int dx = Integer.signum(x - _x[parent]), dy = Integer.signum(y - _y[parent]);
+        if (dx != 0 && dy != 0) {
+            boolean vertical = canTraverse(x, y + dy), horizontal = canTraverse(x + dx, y);
+            if (vertical) {
+                jumpFrom(node, 0, dy);
+            }
+            if (horizontal) {
+                jumpFrom(node, dx, 0);
+            }
+            if (vertical && horizontal) {
+                jumpFrom(node, dx, dy);
+            }
+        } else if (dx != 0) {
+            boolean up = canTraverse(x, y + 1), down = canTraverse(x, y - 1);
+            if (canTraverse(x + dx, y)) {
+                jumpFrom(node, dx, 0);
+                if (up) {
+                    jumpFrom(node, dx, 1);
+                }
+                if (down) {
+                    jumpFrom(node, dx, -1);
+                }
+            }
+            if (up) {
+                jumpFrom(node, 0, 1);
+            }
+            if (down) {
+                jumpFrom(node, 0, -1);
+            }
+        } else {
+            boolean right = canTraverse(x + 1, y), left = canTraverse(x - 1, y);
+            if (canTraverse(x, y + dy)) {
+                jumpFrom(node, 0, dy);
+                if (right) {
+                    jumpFrom(node, 1, dy);
+                }
+                if (left) {
+                    jumpFrom(node, -1, dy);
+                }
+            }
+            if (right) {
+                jumpFrom(node, 1, 0);
+            }
+            if (left) {
+                jumpFrom(node, -1, 0);
+            }
+        }
+    }
+
+    /**
+     * Jumps from the specified node in the given direction, relaxing the jump point if found.
+     */
+    protected void jumpFrom (int node, int dx, int dy)
+    {
+        int steps = jump(_x[node], _y[node], dx, dy, _g[node]);
+        if (steps > 0) {
+            int cost = (dx != 0 && dy != 0) ? DIAGONAL_COST : ADJACENT_COST;
+            relax(node, _x[node] + dx*steps, _y[node] + dy*steps, cost*steps);
+        }
+    }
+
+    /**
+     * Moves from the specified cell in the given direction until reaching a jump point (the
+     * destination, a cell with a forced neighbor, for diagonal moves, a cell from which a
+     * straight jump succeeds, or the cell at which the scan limit of the expansion runs out).
+     *
+     * @param g the cost of reaching the starting cell.
+     * @return the number of steps to the jump point, or -1 if there is none within the maximum
+     * cost.
+     */
+    protected int jump (int x, int y, int dx, int dy, int g)
+    {
+        boolean diagonal = (dx != 0 && dy != 0);
+        int cost = diagonal ? DIAGONAL_COST : ADJACENT_COST;
+        for (int steps = 1;; steps++) {
+            // compare before adding so that the cost can't overflow
+            if (g > _maxCost - cost) {
+                return -1;
+            }
+            x += dx;
+            y += dy;
+            g += cost;
+            if (!canTraverse(x, y)) {
+                return -1;
+            }
+            // stopping early is safe: expanding any cell yields all of its natural neighbors
+            if ((x == _bx && y == _by) || --_scanRemaining <= 0) {
+                return steps;
+            }
+            if (diagonal) {
+                if (jump(x, y, dx, 0, g) != -1 || jump(x, y, 0, dy, g) != -1) {
+                    return steps;
+                }
+                if (!(canTraverse(x + dx, y) && canTraverse(x, y + dy))) {
+                    return -1;
+                }
+            } else if (dx != 0) {
+                if ((canTraverse(x, y - 1) && !canTraverse(x - dx, y - 1)) ||
+                        (canTraverse(x, y + 1) && !canTraverse(x - dx, y + 1))) {
+                    return steps;
+                }
+            } else {
+                if ((canTraverse(x - 1, y) && !canTraverse(x - 1, y - dy)) ||
+                        (canTraverse(x + 1, y) && !canTraverse(x + 1, y - dy))) {
+                    return steps;
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the node at the specified coordinates if the step from the given node improves its
+     * cost.
+     */
+    protected void relax (int node, int x, int y, int cost)
+    {
+        if (_g[node] > _maxCost - cost) {
+            return;
+        }
+        int g = _g[node] + cost;
+        int next = getNode(x, y);
+        int hidx = _heapIndex[next];
+        if (hidx == CLOSED || g >= _g[next]) {
+            return;
+        }
+        _g[next] = g;
+        _f[next] = (int)Math.min((long)g + _h[next], Integer.MAX_VALUE);
+        _parent[next] = node;
+        if (hidx == UNSEEN) {
+            push(next);
+        } else {
+            siftUp(hidx);
+        }
+    }
+
+    /**
+     * Checks whether the specified cell is traversable.
+     */
+    protected final boolean canTraverse (int x, int y)
+    {
+        return _pred.canTraverse(_traverser, x, y);
+    }
+
+    /**
+     * Returns the squared distance from the specified cell to the destination.
+     */
+    protected final long distanceSq (int x, int y)
+    {
+        long dx = _bx - x, dy = _by - y;
+        return dx*dx + dy*dy;
+    }
+
+    /**
+     * Returns the index of the node at the specified coordinates, creating it if necessary.
+     */
+    protected int getNode (int x, int y)
+    {
+        long key = ((long)x << 32) | (y & 0xFFFFFFFFL);
+        int slot = getSlot(key);
+        if (_stamps[slot] == _generation) {
+            return _nodes[slot];
+        }
+        // keep the table at most half full
+        if ((_nodeCount + 1) * 2 > _keys.length) {
+            rehash(_keys.length * 2);
+            slot = getSlot(key);
+        }
+        int node = _nodeCount++;
+        if (node == _x.length) {
+            int ncapacity = node * 2;
+            _x = Ints.ensureCapacity(_x, ncapacity, 0);
+            _y = Ints.ensureCapacity(_y, ncapacity, 0);
+            _g = Ints.ensureCapacity(_g, ncapacity, 0);
+            _h = Ints.ensureCapacity(_h, ncapacity, 0);
+            _f = Ints.ensureCapacity(_f, ncapacity, 0);
+            _parent = Ints.ensureCapacity(_parent, ncapacity, 0);
+            _heapIndex = Ints.ensureCapacity(_heapIndex, ncapacity, 0);
+            _heap = Ints.ensureCapacity(_heap, ncapacity, 0);
+        }
+        _x[node] = x;
+        _y[node] = y;
+        _g[node] = Integer.MAX_VALUE;
+        _h[node] = estimate(x, y);
+        _parent[node] = -1;
+        _heapIndex[node] = UNSEEN;
+        _stamps[slot] = _generation;
+        _keys[slot] = key;
+        _nodes[slot] = node;
+        return node;
+    }
+
+    /**
+     * Returns the table slot that holds, or would hold, the specified key.
+     */
+    protected int getSlot (long key)
+    {
+        int mask = _keys.length - 1;
+        int slot = (int)((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while (_stamps[slot] == _generation && _keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Rebuilds the node table with the specified (power-of-two) length.
+     */
+    protected void rehash (int length)
+    {
+        _keys = new long[length];
+        _nodes = new int[length];
+        _stamps = new int[length];
+        for (int ii = 0; ii < _nodeCount; ii++) {
+            long key = ((long)_x[ii] << 32) | (_y[ii] & 0xFFFFFFFFL);
+            int slot = getSlot(key);
+            _stamps[slot] = _generation;
+            _keys[slot] = key;
+            _nodes[slot] = ii;
+        }
+    }
+
+    /**
+     * Computes the (octile) estimate of the cost from the specified cell to the destination.
+     */
+    protected int estimate (int x, int y)
+    {
+        int dx = Math.abs(_bx - x), dy = Math.abs(_by - y);
+        return ADJACENT_COST * Math.max(dx, dy) +
+            (DIAGONAL_COST - ADJACENT_COST) * Math.min(dx, dy);
+    }
+
+    /**
+     * Adds a node to the open heap.
+     */
+    protected void push (int node)
+    {
+        _heap[_heapSize] = node;
+        _heapIndex[node] = _heapSize;
+        siftUp(_heapSize++);
+    }
+
+    /**
+     * Removes the best node from the open heap and marks it closed.
+     */
+    protected int pop ()
+    {
+        int node = _heap[0];
+        _heapIndex[node] = CLOSED;
+        if (--_heapSize > 0) {
+            int last = _heap[_heapSize];
+            _heap[0] = last;
+            _heapIndex[last] = 0;
+            siftDown(0);
+        }
+        return node;
+    }
+
+    /**
+     * Moves the node at the specified heap index up until the heap is ordered.
+     */
+    protected void siftUp (int idx)
+    {
+        int node = _heap[idx];
+        while (idx > 0) {
+            int pidx = (idx - 1) >> 1, parent = _heap[pidx];
+            if (!isBetter(node, parent)) {
+                break;
+            }
+            _heap[idx] = parent;
+            _heapIndex[parent] = idx;
+            idx = pidx;
+        }
+        _heap[idx] = node;
+        _heapIndex[node] = idx;
+    }
+
+    /**
+     * Moves the node at the specified heap index down until the heap is ordered.
+     */
+    protected void siftDown (int idx)
+    {
+        int node = _heap[idx];
+        while (true) {
+            int cidx = (idx << 1) + 1;
+            if (cidx >= _heapSize) {
+                break;
+            }
+            int child = _heap[cidx];
+            if (cidx + 1 < _heapSize && isBetter(_heap[cidx + 1], child)) {
+                child = _heap[++cidx];
+            }
+            if (!isBetter(child, node)) {
+                break;
+            }
+            _heap[idx] = child;
+            _heapIndex[child] = idx;
+            idx = cidx;
+        }
+        _heap[idx] = node;
+        _heapIndex[node] = idx;
+    }
+
+    /**
+     * Determines whether the first node should be expanded before the second: the lower
+     * estimated total cost first, then (to favor progress) the greater cost so far.
+     */
+    protected final boolean isBetter (int n1, int n2)
+    {
+        int f1 = _f[n1], f2 = _f[n2];
+        return f1 < f2 || (f1 == f2 && _g[n1] > _g[n2]);
+    }
+
+    /** Whether to use jump point pruning for new searches. */
+    protected boolean _jumpPoints = true;
+
+    /** The maximum number of cells to scan when jumping from a node. */
+    protected int _scanLimit = DEFAULT_SCAN_LIMIT;
+
+    /** The number of cells left to scan from the node being expanded. */
+    protected int _scanRemaining;
+
+    /** The traversal predicate and traverser of the current search. */
+    protected AStarPathUtil.TraversalPred _pred;
+
+    /** The traverser passed to the predicate. */
+    protected Object _traverser;
+
+    /** The maximum path cost. */
+    protected int _maxCost;
+
+    /** The start and destination coordinates. */
+    protected int _ax, _ay, _bx, _by;
+
+    /** Whether to return a partial path if the destination is unreachable. */
+    protected boolean _partial;
+
+    /** Whether the current pass uses jump point pruning. */
+    protected boolean _pruning;
+
+    /** The status of the search. */
+    protected Status _status = Status.FAILED;
+
+    /** The number of nodes expanded by the search. */
+    protected int _expansions;
+
+    /** The closest node to the destination expanded so far, or -1. */
+    protected int _best;
+
+    /** The squared distance from the best node to the destination. */
+    protected long _bestDist;
+
+    /** The node coordinates. */
+    protected int[] _x = new int[INITIAL_CAPACITY], _y = new int[INITIAL_CAPACITY];
+
+    /** The node costs so far, estimates to the destination, and estimated totals. */
+    protected int[] _g = new int[INITIAL_CAPACITY], _h = new int[INITIAL_CAPACITY],
+        _f = new int[INITIAL_CAPACITY];
+
+    /** The node parents (-1 for none). */
+    protected int[] _parent = new int[INITIAL_CAPACITY];
+
+    /** The node positions in the heap, or {@link #UNSEEN} or {@link #CLOSED}. */
+    protected int[] _heapIndex = new int[INITIAL_CAPACITY];
+
+    /** The number of nodes in use. */
+    protected int _nodeCount;
+
+    /** The open nodes, as a binary heap. */
+    protected int[] _heap = new int[INITIAL_CAPACITY];
+
+    /** The number of nodes in the heap. */
+    protected int _heapSize;
+
+    /** The packed coordinates in the node table. */
+    protected long[] _keys = new long[INITIAL_CAPACITY * 2];
+
+    /** The node indices in the table. */
+    protected int[] _nodes = new int[INITIAL_CAPACITY * 2];
+
+    /** The generations in which the table slots were filled (only current slots are valid). */
+    protected int[] _stamps = new int[INITIAL_CAPACITY * 2];
+
+    /** The current generation. */
+    protected int _generation;
+
+    /** The coordinates of the path cells. */
+    protected int[] _pathX = new int[0], _pathY = new int[0];
+
+    /** The number of cells in the path. */
+    protected int _pathLength;
+
+    /** The cost of an adjacent step (as in {@link AStarPathUtil}). */
+    protected static final int ADJACENT_COST = 10;
+
+    /** The cost of a diagonal step. */
+    protected static final int DIAGONAL_COST = 14;
+
+    /** Heap index of nodes not yet opened. */
+    protected static final int UNSEEN = -1;
+
+    /** Heap index of closed nodes. */
+    protected static final int CLOSED = -2;
+
+    /** The default maximum number of cells to scan when jumping from a node. */
+    protected static final int DEFAULT_SCAN_LIMIT = 64;
+
+    /** The initial node capacity. */
+    protected static final int INITIAL_CAPACITY = 256;
+}
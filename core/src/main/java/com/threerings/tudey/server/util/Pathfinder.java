@@ -25,11 +25,13 @@
 
 package com.threerings.tudey.server.util;
 
-import java.awt.Point;
-
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import com.samskivert.util.IntMap;
 import com.samskivert.util.IntMaps;
@@ -49,7 +51,6 @@ import com.threerings.tudey.config.TileConfig;
 import com.threerings.tudey.data.TudeySceneModel;
 import com.threerings.tudey.data.TudeySceneModel.Entry;
 import com.threerings.tudey.data.TudeySceneModel.TileEntry;
-import com.threerings.tudey.data.actor.Actor;
 import com.threerings.tudey.server.TudeySceneManager;
 import com.threerings.tudey.server.logic.ActorLogic;
 import com.threerings.tudey.server.logic.Logic;
@@ -70,6 +71,231 @@ public class Pathfinder
     implements TudeySceneModel.Observer, TudeySceneManager.ActorObserver,
         Logic.ShapeObserver, ActorLogic.CollisionFlagObserver
 {
+    /**
+     * An incremental path computation, which may be resumed across several ticks.  The
+     * computation uses the supplied search until it completes or is aborted, so a search may
+     * only back one computation at a time.
+     */
+    public class Computation
+        implements PathQueue.Task
+    {
+        /**
+         * Creates a new computation.  Trivial paths (when the actor is already at the
+         * destination or may simply slide over to it) are computed immediately.
+         *
+         * @param longest the maximum path length.
+         * @param partial if true, return a partial path even if the destination is unreachable.
+         * @param shortcut if true, use swept shapes to compute shortcuts in the path.
+         */
+        public Computation (
+            PathSearch search, boolean collideActor, ActorLogic logic, float longest,
+            float ax, float ay, float bx, float by, boolean partial, boolean shortcut)
+        {
+            _search = search;
+            _collideActor = collideActor;
+            _logic = logic;
+            _shortcut = shortcut;
+
+            // first things first: are we there already?
+            _start = new Vector2f(ax, ay);
+            if (ax == bx && ay == by) {
+                _result = new Vector2f[] { _start };
+                _done = true;
+                return;
+            }
+
+            // can we simply slide on over?
+            Vector2f end = new Vector2f(bx, by);
+            if (!sweptShapeCollides(collideActor, logic, _start, end)) {
+                _result = new Vector2f[] { _start, end };
+                _done = true;
+                return;
+            }
+
+            // determine the actor's extents
+            Rect bounds = logic.getShape().getBounds();
+            int width = Math.max(1, FloatMath.iceil(bounds.getWidth() * SUBDIVISION));
+            int height = Math.max(1, FloatMath.iceil(bounds.getHeight() * SUBDIVISION));
+
+            // compute the offsets for converting to/from integer coordinates
+            _xoff = getOffset(width);
+            _yoff = getOffset(height);
+            ax *= SUBDIVISION;
+            ay *= SUBDIVISION;
+            bx *= SUBDIVISION;
+            by *= SUBDIVISION;
+            _search.init(
+                createPredicate(collideActor, logic.getActor().getCollisionMask(), width, height),
+                logic.getActor(),
+                (int)longest, Math.round(ax - _xoff), Math.round(ay - _yoff),
+                Math.round(bx - _xoff), Math.round(by - _yoff), partial);
+        }
+
+        /**
+         * Continues the computation until it completes or has expanded the specified number of
+         * nodes.  The computation gives up (or settles for the closest point, if partial) once
+         * the search has expanded the pathfinder's maximum number of nodes.
+         *
+         * @param budget the maximum number of nodes to expand before suspending the search, or
+         * {@link Integer#MAX_VALUE} to run it to completion.
+         * @return true if the computation is complete.
+         */
+        public boolean resume (int budget)
+        {
+            if (_done) {
+                return true;
+            }
+
+            // if the actor is in the space and can collide with its own flags,
+            // remove them while we search
+            boolean remove = (!_logic.isRemoved() && _collideActor &&
+                _logic.getActor().canCollide(_logic.getCollisionFlags()));
+            if (remove) {
+                removeFlags(_logic);
+            }
+            try {
+                int remaining = _maxExpansions - _search.getExpansions();
+                if (_search.resume(Math.min(budget, remaining)) == PathSearch.Status.PENDING &&
+                        budget >= remaining) {
+                    _search.abort();
+                }
+            } finally {
+                // add the flags back if we removed them
+                if (remove) {
+                    addFlags(_logic);
+                }
+            }
+            _expansions = _search.getExpansions();
+            if (_search.getStatus() != PathSearch.Status.PENDING) {
+                finish();
+            }
+            return _done;
+        }
+
+        /**
+         * Stops the computation, completing it with the closest point found so far if a
+         * partial path was requested.
+         */
+        public void abort ()
+        {
+            if (!_done) {
+                _search.abort();
+                finish();
+            }
+        }
+
+        /**
+         * Checks whether the computation is complete.
+         */
+        public boolean isDone ()
+        {
+            return _done;
+        }
+
+        /**
+         * Returns the number of nodes expanded so far (zero for trivial paths).
+         */
+        public int getExpansions ()
+        {
+            return _expansions;
+        }
+
+        /**
+         * Returns the computed path, or null if the computation is incomplete or the
+         * destination is unreachable.
+         */
+        public Vector2f[] getResult ()
+        {
+            return _result;
+        }
+
+        /**
+         * Converts the result of the search to fractional coordinates, processing it for
+         * shortcuts if requested.
+         */
+        protected void finish ()
+        {
+            _done = true;
+            if (_search.getStatus() == PathSearch.Status.FAILED) {
+                return;
+            }
+            Vector2f[] waypoints = new Vector2f[_search.getPathLength()];
+            for (int ii = 0; ii < waypoints.length; ii++) {
+                waypoints[ii] = new Vector2f(
+                    (_search.getPathX(ii) + _xoff) / SUBDIVISION,
+                    (_search.getPathY(ii) + _yoff) / SUBDIVISION);
+            }
+            if (!_shortcut) {
+                _result = waypoints;
+                return;
+            }
+            Vector2f current = _start;
+            for (int ii = 0; ii < waypoints.length; ) {
+                for (int jj = waypoints.length - 1; jj >= ii; jj--) {
+                    Vector2f waypoint = waypoints[jj];
+                    if (jj == ii || !sweptShapeCollides(_collideActor, _logic, current, waypoint)) {
+                        _waypoints.add(current = waypoint);
+                        ii = jj + 1;
+                        break;
+                    }
+                }
+            }
+            _result = _waypoints.toArray(new Vector2f[_waypoints.size()]);
+            _waypoints.clear();
+        }
+
+        /** The search backing the computation. */
+        protected PathSearch _search;
+
+        /** Whether or not to consider the actors as well as the scene entries. */
+        protected boolean _collideActor;
+
+        /** The logic of the actor for which we're computing the path. */
+        protected ActorLogic _logic;
+
+        /** Whether or not to compute shortcuts. */
+        protected boolean _shortcut;
+
+        /** The start of the path. */
+        protected Vector2f _start;
+
+        /** The offsets for converting to/from integer coordinates. */
+        protected float _xoff, _yoff;
+
+        /** The number of nodes expanded by the search. */
+        protected int _expansions;
+
+        /** The computed path, if any. */
+        protected Vector2f[] _result;
+
+        /** Set when the computation is complete. */
+        protected boolean _done;
+    }
+
+    /**
+     * A flow field along with its bookkeeping.
+     */
+    protected static class FlowFieldRecord
+    {
+        /** The field. */
+        public final FlowField field;
+
+        /** Whether or not the field considers the actors. */
+        public final boolean collideActor;
+
+        /** The timestamp at which the field was last requested. */
+        public int lastUsed;
+
+        /**
+         * Creates a new record.
+         */
+        public FlowFieldRecord (FlowField field, boolean collideActor)
+        {
+            this.field = field;
+            this.collideActor = collideActor;
+        }
+    }
+
     /**
      * Creates a new pathfinder.
      */
@@ -95,6 +321,44 @@ public class Pathfinder
     {
         ((TudeySceneModel)_scenemgr.getScene().getSceneModel()).removeObserver(this);
         _scenemgr.removeActorObserver(this);
+        _flowFields.clear();
+    }
+
+    /**
+     * Sets the maximum number of nodes a single path search may expand (unlimited by default, in
+     * which case searches are bounded only by their maximum path lengths).  Searches that exceed
+     * the budget fail, or return a path to the closest point found if partial paths were
+     * requested.
+     */
+    public void setMaxExpansions (int maxExpansions)
+    {
+        _maxExpansions = maxExpansions;
+    }
+
+    /**
+     * Returns the maximum number of nodes a single path search may expand.
+     */
+    public int getMaxExpansions ()
+    {
+        return _maxExpansions;
+    }
+
+    /**
+     * Starts an incremental path computation for the specified actor from its current location.
+     *
+     * @param search the search to use for the computation.
+     * @param collideActor if true, consider the actors as well as the scene entries.
+     * @param longest the maximum path length.
+     * @param partial if true, return a partial path even if the destination is unreachable.
+     * @param shortcut if true, use swept shapes to find path shortcuts.
+     */
+    public Computation startPath (
+        PathSearch search, boolean collideActor, ActorLogic actor, float longest,
+        float bx, float by, boolean partial, boolean shortcut)
+    {
+        Vector2f translation = actor.getTranslation();
+        return new Computation(search, collideActor, actor, longest,
+            translation.x, translation.y, bx, by, partial, shortcut);
     }
 
     /**
@@ -116,7 +380,7 @@ public class Pathfinder
 
     /**
      * Computes a path for the specified actor, considering only the scene entries (not the
-     * actors).
+     * actors).  The search is subject to the limit set with {@link #setMaxExpansions}, if any.
      *
      * @param longest the maximum path length.
      * @param partial if true, return a partial path even if the destination is unreachable.
@@ -146,7 +410,8 @@ public class Pathfinder
     }
 
     /**
-     * Computes a path for the specified actor.
+     * Computes a path for the specified actor.  The search is subject to the limit set with
+     * {@link #setMaxExpansions}, if any.
      *
      * @param longest the maximum path length.
      * @param partial if true, return a partial path even if the destination is unreachable.
@@ -160,10 +425,57 @@ public class Pathfinder
         return getPath(true, actor, longest, ax, ay, bx, by, partial, shortcut);
     }
 
+    /**
+     * Returns a flow field leading to the specified target, shared by all followers with the
+     * same collision mask and extents.  Followers may use the field to steer towards the target
+     * instead of computing individual paths.  The field is updated for the current location of
+     * the target and discarded when it goes unused for a time.
+     *
+     * @param follower an actor that will follow the field.
+     * @param collideActor if true, consider the actors as well as the scene entries.  The actors'
+     * flags are read as the field expands, so moving actors will be out of date until the target
+     * changes cells.
+     * @param radius the radius of the region covered by the field.
+     */
+    public FlowField getFlowField (
+        Logic target, ActorLogic follower, boolean collideActor, float radius)
+    {
+        // discard any fields that have gone unused
+        int now = _scenemgr.getTimestamp();
+        if (now - _lastFlowFieldPrune >= FLOW_FIELD_EXPIRY) {
+            for (Iterator<FlowFieldRecord> it = _flowFields.values().iterator(); it.hasNext(); ) {
+                if (now - it.next().lastUsed >= FLOW_FIELD_EXPIRY) {
+                    it.remove();
+                }
+            }
+            _lastFlowFieldPrune = now;
+        }
+
+        // find or create the field
+        Rect bounds = follower.getShape().getBounds();
+        int width = Math.max(1, FloatMath.iceil(bounds.getWidth() * SUBDIVISION));
+        int height = Math.max(1, FloatMath.iceil(bounds.getHeight() * SUBDIVISION));
+        int collisionMask = follower.getActor().getCollisionMask();
+        int cells = Math.max(1, FloatMath.iceil(radius * SUBDIVISION));
+        List<Object> key = ImmutableList.<Object>of(
+            target, collideActor, collisionMask, width, height, cells);
+        FlowFieldRecord record = _flowFields.get(key);
+        if (record == null) {
+            _flowFields.put(key, record = new FlowFieldRecord(new FlowField(
+                createPredicate(collideActor, collisionMask, width, height), null, cells,
+                getOffset(width), getOffset(height)), collideActor));
+        }
+        record.lastUsed = now;
+        Vector2f translation = target.getTranslation();
+        record.field.setTarget(translation.x, translation.y);
+        return record.field;
+    }
+
     // documentation inherited from interface TudeySceneModel.Observer
     public void entryAdded (Entry entry)
     {
         addFlags(entry);
+        invalidateFlowFields();
     }
 
     // documentation inherited from interface TudeySceneModel.Observer
@@ -171,12 +483,14 @@ public class Pathfinder
     {
         removeFlags(oentry);
         addFlags(nentry);
+        invalidateFlowFields();
     }
 
     // documentation inherited from interface TudeySceneModel.Observer
     public void entryRemoved (Entry oentry)
     {
         removeFlags(oentry);
+        invalidateFlowFields();
     }
 
     // documentation inherited from interface TudeySceneManager.ActorObserver
@@ -258,6 +572,28 @@ public class Pathfinder
                 }
             }
         }
+
+        // invalidate any affected flow fields that consider the actors
+        if (_flowFields.isEmpty()) {
+            return;
+        }
+        int sminx = minx * SUBDIVISION, sminy = miny * SUBDIVISION;
+        int smaxx = (maxx + 1) * SUBDIVISION - 1, smaxy = (maxy + 1) * SUBDIVISION - 1;
+        for (FlowFieldRecord record : _flowFields.values()) {
+            if (record.collideActor && record.field.intersects(sminx, sminy, smaxx, smaxy)) {
+                record.field.invalidate();
+            }
+        }
+    }
+
+    /**
+     * Invalidates all flow fields, forcing them to be recomputed when next queried.
+     */
+    protected void invalidateFlowFields ()
+    {
+        for (FlowFieldRecord record : _flowFields.values()) {
+            record.field.invalidate();
+        }
     }
 
     /**
@@ -269,34 +605,35 @@ public class Pathfinder
      * @return the computed path, or null if unreachable.
      */
     protected Vector2f[] getPath (
-        final boolean collideActor, ActorLogic logic, float longest, float ax, float ay,
+        boolean collideActor, ActorLogic logic, float longest, float ax, float ay,
         float bx, float by, boolean partial, boolean shortcut)
     {
-        // first things first: are we there already?
-        Vector2f start = new Vector2f(ax, ay);
-        if (ax == bx && ay == by) {
-            return new Vector2f[] { start };
-        }
-
-        // can we simply slide on over?
-        Vector2f end = new Vector2f(bx, by);
-        if (!sweptShapeCollides(collideActor, logic, start, end)) {
-            return new Vector2f[] { start, end };
-        }
+        Computation computation = new Computation(
+            _search, collideActor, logic, longest, ax, ay, bx, by, partial, shortcut);
+        computation.resume(Integer.MAX_VALUE);
+        return computation.getResult();
+    }
 
-        // determine the actor's extents
-        Rect bounds = logic.getShape().getBounds();
-        int width = Math.max(1, FloatMath.iceil(bounds.getWidth() * SUBDIVISION));
-        int height = Math.max(1, FloatMath.iceil(bounds.getHeight() * SUBDIVISION));
+    /**
+     * Returns the offset used to convert between world and cell coordinates for an actor with
+     * the specified extent (in subdivided cells).
+     */
+    protected static float getOffset (int extent)
+    {
+        return (extent % 2) * 0.5f / SUBDIVISION;
+    }
 
-        // create the traversal predicate
-        AStarPathUtil.TraversalPred pred;
-        final Actor actor = logic.getActor();
-        final int collisionMask = actor.getCollisionMask();
+    /**
+     * Creates the traversal predicate for an actor with the specified collision mask and
+     * extents (in subdivided cells).
+     */
+    protected AStarPathUtil.TraversalPred createPredicate (
+        boolean collideActor, final int collisionMask, int width, int height)
+    {
         if (width == 1 && height == 1) {
             // simpler predicates for the common case of 1x1 actors
             if (collideActor) {
-                pred = new AStarPathUtil.TraversalPred() {
+                return new AStarPathUtil.TraversalPred() {
                     public boolean canTraverse (Object traverser, int x, int y) {
                         return (collisionMask & _entryFlags.get(
                             MathUtil.floorDiv(x, SUBDIVISION),
@@ -305,7 +642,7 @@ public class Pathfinder
                     }
                 };
             } else {
-                pred = new AStarPathUtil.TraversalPred() {
+                return new AStarPathUtil.TraversalPred() {
                     public boolean canTraverse (Object traverser, int x, int y) {
                         return (collisionMask & _entryFlags.get(
                             MathUtil.floorDiv(x, SUBDIVISION),
@@ -313,97 +650,41 @@ public class Pathfinder
                     }
                 };
             }
-        } else {
-            final int left = width / 2, right = (width - 1) / 2;
-            final int bottom = height / 2, top = (height - 1) / 2;
-            if (collideActor) {
-                pred = new AStarPathUtil.TraversalPred() {
-                    public boolean canTraverse (Object traverser, int x, int y) {
-                        for (int yy = y - bottom, yymax = y + top; yy <= yymax; yy++) {
-                            for (int xx = x - left, xxmax = x + right; xx <= xxmax; xx++) {
-                                if ((collisionMask & _entryFlags.get(
-                                        MathUtil.floorDiv(xx, SUBDIVISION),
-                                        MathUtil.floorDiv(yy, SUBDIVISION))) != 0 ||
-                                            (collisionMask & _actorFlags.get(xx, yy)) != 0) {
-                                    return false;
-                                }
+        }
+        final int left = width / 2, right = (width - 1) / 2;
+        final int bottom = height / 2, top = (height - 1) / 2;
+        if (collideActor) {
+            return new AStarPathUtil.TraversalPred() {
+                public boolean canTraverse (Object traverser, int x, int y) {
+                    for (int yy = y - bottom, yymax = y + top; yy <= yymax; yy++) {
+                        for (int xx = x - left, xxmax = x + right; xx <= xxmax; xx++) {
+                            if ((collisionMask & _entryFlags.get(
+                                    MathUtil.floorDiv(xx, SUBDIVISION),
+                                    MathUtil.floorDiv(yy, SUBDIVISION))) != 0 ||
+                                        (collisionMask & _actorFlags.get(xx, yy)) != 0) {
+                                return false;
                             }
                         }
-                        return true;
                     }
-                };
-            } else {
-                pred = new AStarPathUtil.TraversalPred() {
-                    public boolean canTraverse (Object traverser, int x, int y) {
-                        for (int yy = y - bottom, yymax = y + top; yy <= yymax; yy++) {
-                            for (int xx = x - left, xxmax = x + right; xx <= xxmax; xx++) {
-                                if ((collisionMask & _entryFlags.get(
-                                        MathUtil.floorDiv(xx, SUBDIVISION),
-                                        MathUtil.floorDiv(yy, SUBDIVISION))) != 0) {
-                                    return false;
-                                }
+                    return true;
+                }
+            };
+        } else {
+            return new AStarPathUtil.TraversalPred() {
+                public boolean canTraverse (Object traverser, int x, int y) {
+                    for (int yy = y - bottom, yymax = y + top; yy <= yymax; yy++) {
+                        for (int xx = x - left, xxmax = x + right; xx <= xxmax; xx++) {
+                            if ((collisionMask & _entryFlags.get(
+                                    MathUtil.floorDiv(xx, SUBDIVISION),
+                                    MathUtil.floorDiv(yy, SUBDIVISION))) != 0) {
+                                return false;
                             }
                         }
-                        return true;
                     }
-                };
-            }
-        }
-
-        // compute the offsets for converting to/from integer coordinates
-        float xoff = (width % 2) * 0.5f / SUBDIVISION;
-        float yoff = (height % 2) * 0.5f / SUBDIVISION;
-        ax *= SUBDIVISION;
-        ay *= SUBDIVISION;
-        bx *= SUBDIVISION;
-        by *= SUBDIVISION;
-
-        // if the actor is in the space and can collide with its own flags,
-        // remove them before we compute the path
-        boolean remove = (!logic.isRemoved() && collideActor &&
-            actor.canCollide(logic.getCollisionFlags()));
-        if (remove) {
-            removeFlags(logic);
-        }
-
-        // compute the path
-        List<Point> path = AStarPathUtil.getPath(
-            pred, actor, (int)longest, Math.round(ax - xoff), Math.round(ay - yoff),
-            Math.round(bx - xoff), Math.round(by - yoff), partial);
-
-        // add the flags back if we removed them
-        if (remove) {
-            addFlags(logic);
-        }
-
-        // convert to fractional coordinates
-        if (path == null) {
-            return null;
-        }
-        Vector2f[] waypoints = new Vector2f[path.size()];
-        for (int ii = 0; ii < waypoints.length; ii++) {
-            Point pt = path.get(ii);
-            waypoints[ii] = new Vector2f((pt.x + xoff) / SUBDIVISION, (pt.y + yoff) / SUBDIVISION);
-        }
-
-        // process for shortcuts if requested
-        if (!shortcut) {
-            return waypoints;
-        }
-        Vector2f current = start;
-        for (int ii = 0; ii < waypoints.length; ) {
-            for (int jj = waypoints.length - 1; jj >= ii; jj--) {
-                Vector2f waypoint = waypoints[jj];
-                if (jj == ii || !sweptShapeCollides(collideActor, logic, current, waypoint)) {
-                    _waypoints.add(current = waypoint);
-                    ii = jj + 1;
-                    break;
+                    return true;
                 }
-            }
+            };
         }
-        waypoints = _waypoints.toArray(new Vector2f[_waypoints.size()]);
-        _waypoints.clear();
-        return waypoints;
     }
 
     /**
@@ -671,9 +952,21 @@ public class Pathfinder
     /** Holds elements during intersection testing. */
     protected List<SpaceElement> _elements = Lists.newArrayList();
 
+    /** The search used to compute paths. */
+    protected PathSearch _search = new PathSearch();
+
+    /** The maximum number of nodes a single search may expand. */
+    protected int _maxExpansions = Integer.MAX_VALUE;
+
     /** Holds waypoints during shortcut processing. */
     protected List<Vector2f> _waypoints = Lists.newArrayList();
 
+    /** The flow fields, mapped by target, collision mask, extents, and radius. */
+    protected Map<List<Object>, FlowFieldRecord> _flowFields = Maps.newHashMap();
+
+    /** The timestamp at which we last discarded unused flow fields. */
+    protected int _lastFlowFieldPrune;
+
     /** Region object to reuse. */
     protected Rectangle _region = new Rectangle();
 
@@ -691,4 +984,7 @@ public class Pathfinder
 
     /** The subdivision of the actor collision map. */
     protected static final int SUBDIVISION = 2;
+
+    /** The time after which unused flow fields are discarded, in milliseconds. */
+    protected static final int FLOW_FIELD_EXPIRY = 5000;
 }
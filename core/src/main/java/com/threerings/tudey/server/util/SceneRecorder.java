@@ -0,0 +1,283 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.threerings.io.ObjectOutputStream;
+import com.threerings.util.Name;
+
+import com.threerings.tudey.config.CameraConfig;
+import com.threerings.tudey.data.InputFrame;
+
+import static com.threerings.tudey.Log.log;
+
+/**
+ * Records the external inputs to a scene (the tick times, the bodies entering and leaving, and
+ * the requests and input frames received from the clients) so that the scene's load may later
+ * be reproduced offline with a {@link SceneReplayer}.  The actors spawned are also recorded so
+ * that the replayer can detect divergence.  The record is written as a compressed stream.
+ */
+public class SceneRecorder
+{
+    /**
+     * Creates a recorder that will write to the specified file.
+     */
+    public SceneRecorder (File file, int sceneId)
+        throws IOException
+    {
+        this(new FileOutputStream(file), sceneId);
+    }
+
+    /**
+     * Creates a recorder that will write to the specified stream.
+     */
+    public SceneRecorder (OutputStream out, int sceneId)
+        throws IOException
+    {
+        _out = new ObjectOutputStream(new BufferedOutputStream(new GZIPOutputStream(out)));
+        _out.writeInt(MAGIC);
+        _out.writeShort(VERSION);
+        _out.writeInt(sceneId);
+    }
+
+    /**
+     * Records the start of a tick.
+     *
+     * @param now the system time of the tick.
+     */
+    public void recordTick (long now)
+    {
+        try {
+            if (_out != null) {
+                _out.writeByte(TICK);
+                _out.writeLong(now);
+            }
+        } catch (IOException e) {
+            writeFailed(e);
+        }
+    }
+
+    /**
+     * Records that a body is entering the scene.
+     *
+     * @param portalKey the key of the portal through which the body is entering, if it's one
+     * that can be replayed (that is, a tag or entry key string), otherwise null.
+     */
+    public void recordEnter (int bodyOid, Name username, String portalKey)
+    {
+        try {
+            if (_out != null) {
+                _out.writeByte(ENTER);
+                _out.writeInt(bodyOid);
+                _out.writeObject(username);
+                _out.writeObject(portalKey);
+            }
+        } catch (IOException e) {
+            writeFailed(e);
+        }
+    }
+
+    /**
+     * Records that a body is leaving the scene.
+     */
+    public void recordLeave (int bodyOid)
+    {
+        try {
+            if (_out != null) {
+                _out.writeByte(LEAVE);
+                _out.writeInt(bodyOid);
+            }
+        } catch (IOException e) {
+            writeFailed(e);
+        }
+    }
+
+    /**
+     * Records that a client has reported that it's ready to receive deltas.
+     */
+    public void recordEnteredPlace (int bodyOid)
+    {
+        try {
+            if (_out != null) {
+                _out.writeByte(ENTERED_PLACE);
+                _out.writeInt(bodyOid);
+            }
+        } catch (IOException e) {
+            writeFailed(e);
+        }
+    }
+
+    /**
+     * Records a batch of input frames received from a client.
+     *
+     * @param ping the ping computed for the batch on receipt.
+     */
+    public void recordInput (int bodyOid, int acknowledge, int ping, InputFrame[] frames)
+    {
+        try {
+            if (_out != null) {
+                _out.writeByte(INPUT);
+                _out.writeInt(bodyOid);
+                _out.writeInt(acknowledge);
+                _out.writeInt(ping);
+                _out.writeObject(frames);
+            }
+        } catch (IOException e) {
+            writeFailed(e);
+        }
+    }
+
+    /**
+     * Records a client's request to change its target.
+     */
+    public void recordTarget (int bodyOid, int pawnId)
+    {
+        try {
+            if (_out != null) {
+                _out.writeByte(TARGET);
+                _out.writeInt(bodyOid);
+                _out.writeInt(pawnId);
+            }
+        } catch (IOException e) {
+            writeFailed(e);
+        }
+    }
+
+    /**
+     * Records a client's camera parameters.
+     */
+    public void recordCameraParams (int bodyOid, CameraConfig config, float aspect)
+    {
+        try {
+            if (_out != null) {
+                _out.writeByte(CAMERA_PARAMS);
+                _out.writeInt(bodyOid);
+                _out.writeObject(config);
+                _out.writeFloat(aspect);
+            }
+        } catch (IOException e) {
+            writeFailed(e);
+        }
+    }
+
+    /**
+     * Records the spawning of an actor.
+     */
+    public void recordSpawn (int actorId, String config)
+    {
+        try {
+            if (_out != null) {
+                _out.writeByte(SPAWN);
+                _out.writeInt(actorId);
+                _out.writeObject(config);
+            }
+        } catch (IOException e) {
+            writeFailed(e);
+        }
+    }
+
+    /**
+     * Checks whether the recorder is still recording (that is, it hasn't been closed and hasn't
+     * encountered an error).
+     */
+    public boolean isRecording ()
+    {
+        return _out != null;
+    }
+
+    /**
+     * Writes the end marker and closes the recording.
+     */
+    public void close ()
+    {
+        if (_out == null) {
+            return;
+        }
+        try {
+            _out.writeByte(END);
+            _out.close();
+        } catch (IOException e) {
+            log.warning("Error closing scene recording.", e);
+        }
+        _out = null;
+    }
+
+    /**
+     * Handles a failure to write a record by logging it and abandoning the recording.
+     */
+    protected void writeFailed (IOException e)
+    {
+        log.warning("Error writing scene recording; abandoning.", e);
+        try {
+            _out.close();
+        } catch (IOException ce) {
+            // no need to report this one
+        }
+        _out = null;
+    }
+
+    /** The stream to which we write, or null if closed. */
+    protected ObjectOutputStream _out;
+
+    /** Identifies scene recordings. */
+    protected static final int MAGIC = 0x54535243;
+
+    /** The version of the recording format. */
+    protected static final short VERSION = 1;
+
+    /** Record type: the start of a tick. */
+    protected static final byte TICK = 0;
+
+    /** Record type: a body entering the scene. */
+    protected static final byte ENTER = 1;
+
+    /** Record type: a body leaving the scene. */
+    protected static final byte LEAVE = 2;
+
+    /** Record type: a client reporting that it's ready to receive deltas. */
+    protected static final byte ENTERED_PLACE = 3;
+
+    /** Record type: a batch of input frames. */
+    protected static final byte INPUT = 4;
+
+    /** Record type: a target request. */
+    protected static final byte TARGET = 5;
+
+    /** Record type: a client's camera parameters. */
+    protected static final byte CAMERA_PARAMS = 6;
+
+    /** Record type: an actor spawned. */
+    protected static final byte SPAWN = 7;
+
+    /** Record type: the end of the recording. */
+    protected static final byte END = 8;
+}
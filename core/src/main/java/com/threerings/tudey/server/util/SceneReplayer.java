@@ -0,0 +1,519 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+
+import com.google.inject.Inject;
+
+import com.samskivert.util.HashIntMap;
+import com.samskivert.util.IntMaps;
+import com.samskivert.util.ResultListener;
+
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+import com.threerings.util.Name;
+
+import com.threerings.presents.server.InvocationException;
+import com.threerings.presents.server.PresentsDObjectMgr;
+
+import com.threerings.crowd.server.LocationManager;
+
+import com.threerings.tudey.config.CameraConfig;
+import com.threerings.tudey.data.InputFrame;
+import com.threerings.tudey.data.TudeyBodyObject;
+import com.threerings.tudey.dobj.SceneDeltaEvent;
+import com.threerings.tudey.server.ClientLiaison;
+import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.logic.ActorLogic;
+
+import static com.threerings.tudey.Log.log;
+
+/**
+ * Replays a recording made with a {@link SceneRecorder} against a running (but otherwise
+ * unoccupied) scene manager, as fast as the scene can be ticked.  The recorded bodies are
+ * represented by local body objects without sessions, so the replay requires no clients.  The
+ * server's own object and location managers are used rather than stand-ins: they dispatch
+ * locally (nothing is sent over the network without sessions), and the occupant tracking, client
+ * liaisons and delta encoding that we want to measure depend on their event dispatch.  Each
+ * tick is processed as a separate unit on the event thread so that the distributed object events
+ * it generates are dispatched before the next.  On completion, the replayer reports the CPU time
+ * and memory allocated per tick, the size of the scene deltas posted, and whether the actors
+ * spawned matched the recording.  The tick profiles are also enabled for the duration of the
+ * replay and dumped on completion.
+ */
+public class SceneReplayer
+    implements TudeySceneManager.ActorObserver, TudeySceneManager.DeltaObserver
+{
+    /**
+     * The results of a replay.
+     */
+    public static class Report
+    {
+        /** The number of ticks replayed. */
+        public int ticks;
+
+        /** The amount of scene time replayed, in milliseconds. */
+        public long sceneTime;
+
+        /** The wall-clock time taken by the ticks, in nanoseconds. */
+        public long wallTime;
+
+        /** The total and maximum CPU time taken by the ticks, in nanoseconds (or -1 if
+         * unavailable). */
+        public long cpuTime, maxCpuTime;
+
+        /** The total and maximum number of bytes allocated by the ticks (or -1 if
+         * unavailable). */
+        public long allocated, maxAllocated;
+
+        /** The number of scene deltas posted. */
+        public int deltas;
+
+        /** The total and maximum encoded size of the scene deltas. */
+        public long deltaBytes, maxDeltaBytes;
+
+        /** The number of actors spawned in the recording and in the replay. */
+        public int recordedSpawns, replayedSpawns;
+
+        /** The index of the first tick at which the spawns diverged from the recording, or -1 if
+         * they never did. */
+        public int divergedTick = -1;
+
+        @Override
+        public String toString ()
+        {
+            long ticks = Math.max(this.ticks, 1);
+            return "[ticks=" + this.ticks + ", sceneTime=" + sceneTime +
+                ", speedup=" + (wallTime == 0L ? 0f : sceneTime * 1000000f / wallTime) +
+                ", avgCpuUs=" + (cpuTime < 0L ? -1L : cpuTime / ticks / 1000L) +
+                ", maxCpuUs=" + (maxCpuTime < 0L ? -1L : maxCpuTime / 1000L) +
+                ", avgAlloc=" + (allocated < 0L ? -1L : allocated / ticks) +
+                ", maxAlloc=" + maxAllocated + ", deltas=" + deltas +
+                ", avgDeltaBytes=" + (deltaBytes / Math.max(deltas, 1)) +
+                ", maxDeltaBytes=" + maxDeltaBytes + ", recordedSpawns=" + recordedSpawns +
+                ", replayedSpawns=" + replayedSpawns + ", divergedTick=" + divergedTick + "]";
+        }
+    }
+
+    /**
+     * Replays the recording in the supplied stream against the specified scene manager.  Must be
+     * called on the event thread.  The scene will be ticked externally for the duration of the
+     * replay, and the stream will be closed on completion.
+     */
+    public void replay (
+        TudeySceneManager scenemgr, InputStream in, ResultListener<Report> listener)
+    {
+        if (_scenemgr != null) {
+            listener.requestFailed(new IllegalStateException("Already replaying."));
+            return;
+        }
+        try {
+            _in = new ObjectInputStream(new BufferedInputStream(new GZIPInputStream(in)));
+            if (_in.readInt() != SceneRecorder.MAGIC) {
+                throw new IOException("Not a scene recording.");
+            }
+            short version = _in.readShort();
+            if (version != SceneRecorder.VERSION) {
+                throw new IOException("Unsupported recording version [version=" + version + "].");
+            }
+            int sceneId = _in.readInt();
+            if (sceneId != scenemgr.getScene().getId()) {
+                log.warning("Replaying recording made in a different scene.",
+                    "recorded", sceneId, "where", scenemgr.where());
+            }
+        } catch (IOException e) {
+            closeInput();
+            listener.requestFailed(e);
+            return;
+        }
+        _scenemgr = scenemgr;
+        _listener = listener;
+        _report = new Report();
+        _wasTickedExternally = scenemgr.isTickedExternally();
+        _wasTickProfEnabled = TudeySceneManager.isTickProfEnabled();
+        scenemgr.setTickedExternally(true);
+        scenemgr.addActorObserver(this);
+        scenemgr.addDeltaObserver(this);
+        TudeySceneManager.clearTickProfiles();
+        TudeySceneManager.setTickProfEnabled(true);
+        _threads = ManagementFactory.getThreadMXBean();
+        if (!_threads.isCurrentThreadCpuTimeSupported()) {
+            _report.cpuTime = _report.maxCpuTime = -1L;
+        }
+        if (!(_threads instanceof com.sun.management.ThreadMXBean)) {
+            _report.allocated = _report.maxAllocated = -1L;
+        }
+        postStep();
+    }
+
+    // documentation inherited from interface TudeySceneManager.ActorObserver
+    public void actorAdded (ActorLogic logic)
+    {
+        _report.replayedSpawns++;
+        if (_report.divergedTick != -1) {
+            return;
+        }
+        String config = logic.getActor().getConfig().getName();
+        if (_expectedSpawns.isEmpty()) {
+            _pendingSpawns.add(new Object[] { logic.getActor().getId(), config });
+            return;
+        }
+        Object[] expected = _expectedSpawns.remove(0);
+        if (!(expected[0].equals(logic.getActor().getId()) && equals(expected[1], config))) {
+            diverged();
+        }
+    }
+
+    // documentation inherited from interface TudeySceneManager.ActorObserver
+    public void actorRemoved (ActorLogic logic)
+    {
+        // no-op
+    }
+
+    // documentation inherited from interface TudeySceneManager.DeltaObserver
+    public void deltaPosted (ClientLiaison client, SceneDeltaEvent event)
+    {
+        // encode the event on a stream for the client (so that class names are only written the
+        // first time, as they would be on its connection)
+        int cloid = event.getTargetOid();
+        ObjectOutputStream out = _deltaStreams.get(cloid);
+        if (out == null) {
+            _deltaStreams.put(cloid, out = new ObjectOutputStream(_counter));
+        }
+        long before = _counter.getCount();
+        try {
+            out.writeObject(event);
+            out.flush();
+        } catch (IOException e) {
+            log.warning("Error encoding scene delta.", "event", event, e);
+            return;
+        }
+        long bytes = _counter.getCount() - before;
+        _report.deltas++;
+        _report.deltaBytes += bytes;
+        _report.maxDeltaBytes = Math.max(_report.maxDeltaBytes, bytes);
+    }
+
+    /**
+     * Posts the next step of the replay to the event thread.
+     */
+    protected void postStep ()
+    {
+        _omgr.postRunnable(new Runnable() {
+            public void run () {
+                step();
+            }
+        });
+    }
+
+    /**
+     * Processes records up to and including the next tick (or the next record that generates
+     * events that must be dispatched before we continue).
+     */
+    protected void step ()
+    {
+        try {
+            while (true) {
+                byte type = _in.readByte();
+                switch (type) {
+                    case SceneRecorder.TICK:
+                        tick(_in.readLong());
+                        postStep();
+                        return;
+
+                    case SceneRecorder.ENTER: {
+                        int oid = _in.readInt();
+                        Name username = (Name)_in.readObject();
+                        String portalKey = (String)_in.readObject();
+                        enter(oid, username, portalKey);
+                        postStep();
+                        return;
+                    }
+                    case SceneRecorder.LEAVE: {
+                        TudeyBodyObject body = _bodies.remove(_in.readInt());
+                        if (body != null) {
+                            _locmgr.leaveOccupiedPlace(body);
+                            _omgr.destroyObject(body.getOid());
+                        }
+                        postStep();
+                        return;
+                    }
+                    case SceneRecorder.ENTERED_PLACE: {
+                        TudeyBodyObject body = _bodies.get(_in.readInt());
+                        if (body != null) {
+                            _scenemgr.enteredPlace(body);
+                        }
+                        break;
+                    }
+                    case SceneRecorder.INPUT: {
+                        TudeyBodyObject body = _bodies.get(_in.readInt());
+                        int acknowledge = _in.readInt();
+                        int ping = _in.readInt();
+                        InputFrame[] frames = (InputFrame[])_in.readObject();
+                        if (body != null) {
+                            _scenemgr.enqueueInput(body.getOid(), acknowledge, ping, frames);
+                        }
+                        break;
+                    }
+                    case SceneRecorder.TARGET: {
+                        TudeyBodyObject body = _bodies.get(_in.readInt());
+                        int pawnId = _in.readInt();
+                        if (body != null) {
+                            _scenemgr.setTarget(body, pawnId);
+                        }
+                        break;
+                    }
+                    case SceneRecorder.CAMERA_PARAMS: {
+                        TudeyBodyObject body = _bodies.get(_in.readInt());
+                        CameraConfig config = (CameraConfig)_in.readObject();
+                        float aspect = _in.readFloat();
+                        if (body != null) {
+                            _scenemgr.setCameraParams(body, config, aspect);
+                        }
+                        break;
+                    }
+                    case SceneRecorder.SPAWN: {
+                        int id = _in.readInt();
+                        String config = (String)_in.readObject();
+                        spawnRecorded(id, config);
+                        break;
+                    }
+                    case SceneRecorder.END:
+                        finish(null);
+                        return;
+
+                    default:
+                        throw new IOException("Unknown record type [type=" + type + "].");
+                }
+            }
+        } catch (EOFException e) {
+            finish(null); // recording was not closed cleanly; treat as complete
+        } catch (Exception e) {
+            finish(e);
+        }
+    }
+
+    /**
+     * Ticks the scene, recording the tick's statistics.
+     */
+    protected void tick (long now)
+    {
+        if (_lastNow != 0L) {
+            _report.sceneTime += (now - _lastNow);
+        }
+        _lastNow = now;
+        long tid = Thread.currentThread().getId();
+        long cpu = (_report.cpuTime < 0L) ? 0L : _threads.getCurrentThreadCpuTime();
+        long alloc = (_report.allocated < 0L) ? 0L :
+            ((com.sun.management.ThreadMXBean)_threads).getThreadAllocatedBytes(tid);
+        long wall = System.nanoTime();
+
+        _scenemgr.tick(now);
+
+        _report.wallTime += (System.nanoTime() - wall);
+        if (_report.cpuTime >= 0L) {
+            cpu = _threads.getCurrentThreadCpuTime() - cpu;
+            _report.cpuTime += cpu;
+            _report.maxCpuTime = Math.max(_report.maxCpuTime, cpu);
+        }
+        if (_report.allocated >= 0L) {
+            alloc = ((com.sun.management.ThreadMXBean)_threads).getThreadAllocatedBytes(tid) -
+                alloc;
+            _report.allocated += alloc;
+            _report.maxAllocated = Math.max(_report.maxAllocated, alloc);
+        }
+        _report.ticks++;
+    }
+
+    /**
+     * Creates a body to stand in for a recorded one and moves it into the scene.
+     */
+    protected void enter (int oid, Name username, String portalKey)
+    {
+        TudeyBodyObject body = new TudeyBodyObject();
+        body.username = username;
+        _omgr.registerObject(body);
+        _bodies.put(oid, body);
+        if (portalKey != null) {
+            _scenemgr.mapEnteringBody(body, portalKey);
+        }
+        try {
+            _locmgr.moveTo(body, _scenemgr.getPlaceObject().getOid());
+        } catch (InvocationException e) {
+            log.warning("Failed to move replayed body into scene.",
+                "who", username, "where", _scenemgr.where(), "cause", e.getMessage());
+            _scenemgr.clearEnteringBody(body);
+        }
+    }
+
+    /**
+     * Notes that the recording has an actor spawned.
+     */
+    protected void spawnRecorded (int id, String config)
+    {
+        _report.recordedSpawns++;
+        if (_report.divergedTick != -1) {
+            return;
+        }
+        if (_pendingSpawns.isEmpty()) {
+            _expectedSpawns.add(new Object[] { id, config });
+            return;
+        }
+        Object[] spawned = _pendingSpawns.remove(0);
+        if (!(spawned[0].equals(id) && equals(spawned[1], config))) {
+            diverged();
+        }
+    }
+
+    /**
+     * Notes that the replay has diverged from the recording.
+     */
+    protected void diverged ()
+    {
+        _report.divergedTick = _report.ticks;
+        _expectedSpawns.clear();
+        _pendingSpawns.clear();
+        log.warning("Replay diverged from recording.", "tick", _report.ticks,
+            "where", _scenemgr.where());
+    }
+
+    /**
+     * Completes the replay.
+     *
+     * @param error the error that terminated the replay, or null if it completed normally.
+     */
+    protected void finish (Exception error)
+    {
+        closeInput();
+        if (_report.divergedTick == -1 &&
+                !(_expectedSpawns.isEmpty() && _pendingSpawns.isEmpty())) {
+            _report.divergedTick = _report.ticks;
+        }
+        for (TudeyBodyObject body : _bodies.values()) {
+            _locmgr.leaveOccupiedPlace(body);
+            _omgr.destroyObject(body.getOid());
+        }
+        _bodies.clear();
+        _deltaStreams.clear();
+        _expectedSpawns.clear();
+        _pendingSpawns.clear();
+        _scenemgr.removeActorObserver(this);
+        _scenemgr.removeDeltaObserver(this);
+        _scenemgr.setTickedExternally(_wasTickedExternally);
+        TudeySceneManager.dumpTickProfiles();
+        TudeySceneManager.setTickProfEnabled(_wasTickProfEnabled);
+        _scenemgr = null;
+        _lastNow = 0L;
+
+        ResultListener<Report> listener = _listener;
+        _listener = null;
+        if (error == null) {
+            log.info("Finished replay.", "report", _report);
+            listener.requestCompleted(_report);
+        } else {
+            listener.requestFailed(error);
+        }
+    }
+
+    /**
+     * Closes the input stream, if open.
+     */
+    protected void closeInput ()
+    {
+        if (_in == null) {
+            return;
+        }
+        try {
+            _in.close();
+        } catch (IOException e) {
+            // no need to report this one
+        }
+        _in = null;
+    }
+
+    /**
+     * Compares two possibly null objects for equality.
+     */
+    protected static boolean equals (Object o1, Object o2)
+    {
+        return (o1 == null) ? (o2 == null) : o1.equals(o2);
+    }
+
+    /** The distributed object manager. */
+    @Inject protected PresentsDObjectMgr _omgr;
+
+    /** The location manager. */
+    @Inject protected LocationManager _locmgr;
+
+    /** The scene being replayed, if any. */
+    protected TudeySceneManager _scenemgr;
+
+    /** The stream from which we read the recording. */
+    protected ObjectInputStream _in;
+
+    /** The listener to notify on completion. */
+    protected ResultListener<Report> _listener;
+
+    /** The report being compiled. */
+    protected Report _report;
+
+    /** The thread management bean, used to measure CPU time and allocation. */
+    protected ThreadMXBean _threads;
+
+    /** The time of the last tick replayed. */
+    protected long _lastNow;
+
+    /** The state to restore on completion. */
+    protected boolean _wasTickedExternally, _wasTickProfEnabled;
+
+    /** Maps recorded body oids to the bodies standing in for them. */
+    protected HashIntMap<TudeyBodyObject> _bodies = IntMaps.newHashIntMap();
+
+    /** Maps target oids to the streams used to encode their deltas. */
+    protected HashIntMap<ObjectOutputStream> _deltaStreams = IntMaps.newHashIntMap();
+
+    /** Counts the bytes written to the delta streams. */
+    protected CountingOutputStream _counter =
+        new CountingOutputStream(ByteStreams.nullOutputStream());
+
+    /** Recorded spawns (id, config) not yet matched by the replay. */
+    protected List<Object[]> _expectedSpawns = Lists.newArrayList();
+
+    /** Replayed spawns (id, config) not yet matched by the recording. */
+    protected List<Object[]> _pendingSpawns = Lists.newArrayList();
+}
@@ -0,0 +1,112 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+
+import java.util.List;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.FileSet;
+
+import com.google.common.collect.Lists;
+
+import com.threerings.resource.ResourceManager;
+import com.threerings.util.MessageManager;
+
+import com.threerings.config.ConfigManager;
+import com.threerings.export.BinaryImporter;
+
+import com.threerings.tudey.data.TudeySceneModel;
+
+import static com.threerings.tudey.Log.log;
+
+/**
+ * An Ant task that precomputes the derived data for a group of scenes and writes it alongside
+ * them (to be read at startup by an overridden
+ * {@link com.threerings.tudey.server.TudeySceneRegistry#getDerivedDataStream}).
+ */
+public class SceneDerivedDataTask extends Task
+{
+    /**
+     * Sets the suffix to append to the scene file names to get the derived data file names.
+     */
+    public void setSuffix (String suffix)
+    {
+        _suffix = suffix;
+    }
+
+    /**
+     * Adds a fileset to the list of sets to process.
+     */
+    public void addFileset (FileSet set)
+    {
+        _filesets.add(set);
+    }
+
+    @Override
+    public void execute ()
+        throws BuildException
+    {
+        ResourceManager rsrcmgr = new ResourceManager("rsrc/");
+        MessageManager msgmgr = new MessageManager("rsrc.i18n");
+        rsrcmgr.initResourceDir("rsrc/");
+        ConfigManager cfgmgr = new ConfigManager(rsrcmgr, msgmgr, "config/");
+        cfgmgr.init();
+
+        for (FileSet fs : _filesets) {
+            DirectoryScanner ds = fs.getDirectoryScanner(getProject());
+            File fromDir = fs.getDir(getProject());
+            for (String file : ds.getIncludedFiles()) {
+                File source = new File(fromDir, file);
+                File target = new File(fromDir, file + _suffix);
+                try {
+                    TudeySceneModel model = (TudeySceneModel)new BinaryImporter(
+                        new FileInputStream(source)).readObject();
+                    model.init(cfgmgr);
+                    FileOutputStream out = new FileOutputStream(target);
+                    try {
+                        model.writeDerivedData(out);
+                    } finally {
+                        out.close();
+                    }
+                } catch (Exception e) { // IOException, ClassCastException
+                    log.warning("Failed to write derived data.", "file", source, e);
+                }
+            }
+        }
+    }
+
+    /** The suffix for derived data files. */
+    protected String _suffix = ".derived";
+
+    /** A list of filesets that contain scenes. */
+    protected List<FileSet> _filesets = Lists.newArrayList();
+}
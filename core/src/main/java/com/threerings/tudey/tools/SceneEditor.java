@@ -606,7 +606,7 @@ public class SceneEditor extends TudeyTool
         @SuppressWarnings("unchecked") // safe: all ConfigReferences are <T extends ManagedConfig>
         // ... and we know that the entry type works with the tool
         ConfigReference<ManagedConfig> ref = (ConfigReference<ManagedConfig>)entry.getReference();
-        tool.setReference(ref);
+        tool.setReference(ref == null ? null : ref.clone()); // the model's references are frozen
 
         // and we need to customize some stuff for a few tools
         if (entry instanceof PlaceableEntry) {
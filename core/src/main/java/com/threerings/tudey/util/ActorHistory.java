@@ -66,13 +66,30 @@ public class ActorHistory
             _seenLast = false;
         }
 
-        // remove any out-of-date entries
+        // remove any out-of-date entries, retaining the start of any state held since
         int oldest = timestamp - _duration;
-        while (_entries.get(0).getTimestamp() < oldest) {
+        for (Entry first = _entries.get(0); first.getTimestamp() < oldest;
+                first = _entries.get(0)) {
+            Entry next = _entries.get(1);
+            if (next.getActor() == first.getActor() && next.getTimestamp() >= oldest) {
+                break;
+            }
             _entries.remove(0);
         }
     }
 
+    /**
+     * Notes that the last recorded state remained current as of the specified time.  This has
+     * the same effect as recording that state again, but only if the time is later than that of
+     * the last entry.
+     */
+    public void hold (int timestamp, boolean updated)
+    {
+        if (timestamp > _entries.get(_entries.size() - 1).getTimestamp()) {
+            record(timestamp, getLastKnownActor(), updated);
+        }
+    }
+
     /**
      * Determines whether the actor has yet been created at the specified timestamp.
      */
@@ -101,19 +118,40 @@ public class ActorHistory
      * Finds the state at the specified timestamp and places it into the result object.
      */
     public boolean get (int timestamp, Actor result, boolean isStatic)
+    {
+        return get(timestamp, result, isStatic, Integer.MIN_VALUE);
+    }
+
+    /**
+     * Finds the state at the specified timestamp and places it into the result object, treating
+     * the last recorded state as though it had been {@link #hold held} until the given time.
+     * This allows the owner to skip recording unchanged states without altering the results.
+     */
+    public boolean get (int timestamp, Actor result, boolean isStatic, int heldUntil)
     {
         if (_seenLast && isStatic) {
             return false;
         }
-        _seenLast = timestamp >= _lastUpdate;
+        int eidx = _entries.size() - 1;
+        Entry end = _entries.get(eidx);
+        boolean held = heldUntil > end.getTimestamp();
+        _seenLast = timestamp >= ((held && !isStatic) ? heldUntil : _lastUpdate);
+
         // extrapolate if before start or after end
         Entry start = _entries.get(0);
         if (timestamp <= start.getTimestamp()) {
             start.extrapolate(timestamp, result);
             return true;
         }
-        int eidx = _entries.size() - 1;
-        Entry end = _entries.get(eidx);
+        if (held && timestamp >= end.getTimestamp()) {
+            Actor actor = end.getActor();
+            if (timestamp >= heldUntil) {
+                actor.extrapolate((timestamp - heldUntil) / 1000f, timestamp, result);
+            } else {
+                actor.interpolate(actor, end.getTimestamp(), heldUntil, timestamp, result);
+            }
+            return true;
+        }
         if (timestamp >= end.getTimestamp()) {
             end.extrapolate(timestamp, result);
             return true;
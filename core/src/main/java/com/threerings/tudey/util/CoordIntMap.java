@@ -33,16 +33,22 @@ import java.util.Arrays;
 import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
-import com.samskivert.util.IntListUtil;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
 
 import com.threerings.export.Exportable;
+import com.threerings.export.Exporter;
 import com.threerings.export.Importer;
-import com.threerings.util.DeepObject;
 
 /**
- * Maps pairs of integer coordinates to integer values.
+ * Maps pairs of integer coordinates to integer values.  The values are grouped into square
+ * top-level cells stored end to end in a single array, and the cells are located through an
+ * open-addressing table keyed on their packed coordinates, so lookups allocate nothing and
+ * follow no object pointers.
  */
 public class CoordIntMap extends AbstractMap<Coord, Integer>
     implements Exportable
@@ -162,8 +168,44 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
      */
     public int get (int x, int y)
     {
-        Cell cell = getCell(x, y);
-        return (cell == null) ? _empty : cell.get(x & _mask, y & _mask);
+        int cell = getCellIndex(x >> _granularity, y >> _granularity);
+        return (cell == -1) ? _empty : _values[getValueIndex(cell, x, y)];
+    }
+
+    /**
+     * Copies the values in a rectangular region into an array in row-major order, with the empty
+     * value for coordinates without an entry.
+     *
+     * @param result an array to hold the result, or <code>null</code> (or an array too small to
+     * hold the region) to create a new one.
+     * @return a reference to the result array.
+     */
+    public int[] getRegion (int x, int y, int width, int height, int[] result)
+    {
+        if (result == null || result.length < width*height) {
+            result = new int[width*height];
+        }
+        int xmax = x + width - 1, ymax = y + height - 1;
+        for (int cy = y >> _granularity, cymax = ymax >> _granularity; cy <= cymax; cy++) {
+            int ly = Math.max(y, cy << _granularity);
+            int uy = Math.min(ymax, (cy << _granularity) | _mask);
+            for (int cx = x >> _granularity, cxmax = xmax >> _granularity; cx <= cxmax; cx++) {
+                int lx = Math.max(x, cx << _granularity);
+                int ux = Math.min(xmax, (cx << _granularity) | _mask);
+                int cell = getCellIndex(cx, cy), length = ux - lx + 1;
+                for (int yy = ly; yy <= uy; yy++) {
+                    // rows within a cell are contiguous, so each span is a single copy
+                    int didx = (yy - y)*width + (lx - x);
+                    if (cell == -1) {
+                        Arrays.fill(result, didx, didx + length, _empty);
+                    } else {
+                        System.arraycopy(
+                            _values, getValueIndex(cell, lx, yy), result, didx, length);
+                    }
+                }
+            }
+        }
+        return result;
     }
 
     /**
@@ -177,15 +219,15 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
             // putting the empty value is equivalent to removing
             return remove(x, y);
         }
-        _coord.set(x >> _granularity, y >> _granularity);
-        Cell cell = _cells.get(_coord);
-        if (cell == null) {
-            _cells.put(_coord.clone(), cell = new Cell());
-        }
-        int ovalue = cell.put(x & _mask, y & _mask, value);
+        int cell = getOrCreateCellIndex(x >> _granularity, y >> _granularity);
+        int idx = getValueIndex(cell, x, y);
+        int ovalue = _values[idx];
+        _values[idx] = value;
         if (ovalue == _empty) {
+            _counts[cell]++;
             _size++;
         }
+        _modcount++;
         return ovalue;
     }
 
@@ -197,18 +239,23 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
      */
     public int setBits (int x, int y, int bits)
     {
-        if (bits == 0) {
-            return get(x, y);
+        int cell = getCellIndex(x >> _granularity, y >> _granularity);
+        if (cell == -1) {
+            return (bits == 0 || (_empty | bits) == _empty) ? _empty : put(x, y, _empty | bits);
         }
-        _coord.set(x >> _granularity, y >> _granularity);
-        Cell cell = _cells.get(_coord);
-        if (cell == null) {
-            _cells.put(_coord.clone(), cell = new Cell());
+        int idx = getValueIndex(cell, x, y);
+        int ovalue = _values[idx], nvalue = ovalue | bits;
+        if (nvalue == ovalue) {
+            return ovalue;
+        } else if (nvalue == _empty) {
+            return remove(x, y);
         }
-        int ovalue = cell.setBits(x & _mask, y & _mask, bits);
+        _values[idx] = nvalue;
         if (ovalue == _empty) {
+            _counts[cell]++;
             _size++;
         }
+        _modcount++;
         return ovalue;
     }
 
@@ -219,16 +266,18 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
      */
     public int remove (int x, int y)
     {
-        _coord.set(x >> _granularity, y >> _granularity);
-        Cell cell = _cells.get(_coord);
-        if (cell == null) {
+        int cell = getCellIndex(x >> _granularity, y >> _granularity);
+        if (cell == -1) {
             return _empty;
         }
-        int ovalue = cell.remove(x & _mask, y & _mask);
+        int idx = getValueIndex(cell, x, y);
+        int ovalue = _values[idx];
         if (ovalue != _empty) {
+            _values[idx] = _empty;
             _size--;
-            if (cell.size() == 0) {
-                _cells.remove(_coord);
+            _modcount++;
+            if (--_counts[cell] == 0) {
+                removeCell(cell);
             }
         }
         return ovalue;
@@ -239,8 +288,7 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
      */
     public boolean containsKey (int x, int y)
     {
-        Cell cell = getCell(x, y);
-        return cell != null && cell.get(x & _mask, y & _mask) != _empty;
+        return get(x, y) != _empty;
     }
 
     /**
@@ -248,14 +296,29 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
      */
     public boolean containsValue (int value)
     {
-        for (Cell cell : _cells.values()) {
-            if (cell.containsValue(value)) {
+        for (int ii = 0, nn = _cellCount << _cellShift; ii < nn; ii++) {
+            if (_values[ii] == value) {
                 return true;
             }
         }
         return false;
     }
 
+    /**
+     * Custom field write method.
+     */
+    public void writeFields (Exporter out)
+        throws IOException
+    {
+        // write the cells in their original form (a map from cell coordinates to values)
+        _cells = createCellMap();
+        try {
+            out.defaultWriteFields();
+        } finally {
+            _cells = null;
+        }
+    }
+
     /**
      * Custom field read method.
      */
@@ -264,11 +327,29 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
     {
         in.defaultReadFields();
         initTransientFields();
+        if (_cells == null) {
+            return;
+        }
 
-        // compute the size
-        for (Cell cell : _cells.values()) {
-            _size += cell.size();
+        // transfer the cells to the table
+        for (Map.Entry<Coord, Cell> entry : _cells.entrySet()) {
+            Coord coord = entry.getKey();
+            int[] values = entry.getValue()._values;
+            int count = 0;
+            for (int value : values) {
+                if (value != _empty) {
+                    count++;
+                }
+            }
+            if (count == 0) {
+                continue;
+            }
+            int cell = getOrCreateCellIndex(coord.x, coord.y);
+            System.arraycopy(values, 0, _values, cell << _cellShift, _cellSize);
+            _counts[cell] = count;
+            _size += count;
         }
+        _cells = null;
     }
 
     /**
@@ -285,50 +366,48 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
                     }
                     public CoordIntEntry next () {
                         checkConcurrentModification();
-                        if (_centry == null) {
-                            _centry = _cit.next();
-                        }
-                        while (true) {
-                            int[] values = _centry.getValue().getValues();
-                            for (; _idx < values.length; _idx++) {
-                                int value = values[_idx];
-                                if (value != _empty) {
-                                    Coord coord = _centry.getKey();
+                        for (; _cell < _cellCount; _cell++, _idx = 0) {
+                            int base = _cell << _cellShift;
+                            for (; _idx < _cellSize; _idx++) {
+                                if (_values[base + _idx] != _empty) {
+                                    long key = _cellKeys[_cell];
                                     _dummy.getKey().set(
-                                        (coord.x << _granularity) | (_idx & _mask),
-                                        (coord.y << _granularity) | (_idx >> _granularity));
-                                    _dummy._values = values;
-                                    _dummy._idx = _idx;
-                                    _idx++;
+                                        ((int)(key >> 32) << _granularity) | (_idx & _mask),
+                                        ((int)key << _granularity) | (_idx >> _granularity));
+                                    _dummy._values = _values;
+                                    _dummy._idx = base + _idx;
+                                    _lastIdx = _idx++;
                                     _count++;
                                     return _dummy;
                                 }
                             }
-                            _centry = _cit.next();
-                            _idx = 0;
                         }
+                        throw new NoSuchElementException();
                     }
                     public void remove () {
                         checkConcurrentModification();
-                        Cell cell = _centry.getValue();
-                        cell.remove(_idx);
-                        if (cell.size() == 0) {
-                            _cit.remove();
-                            _centry = null;
+                        if (_lastIdx == -1) {
+                            throw new IllegalStateException();
+                        }
+                        _values[(_cell << _cellShift) + _lastIdx] = _empty;
+                        if (--_counts[_cell] == 0) {
+                            // the last cell moves into this one's place; visit it next
+                            removeCell(_cell);
                             _idx = 0;
                         }
+                        _lastIdx = -1;
                         _size--;
                         _count--;
-                        _omodcount = _modcount;
+                        _omodcount = ++_modcount;
                     }
                     protected void checkConcurrentModification () {
                         if (_modcount != _omodcount) {
                             throw new ConcurrentModificationException();
                         }
                     }
-                    protected Iterator<Entry<Coord, Cell>> _cit = _cells.entrySet().iterator();
-                    protected Entry<Coord, Cell> _centry;
+                    protected int _cell;
                     protected int _idx;
+                    protected int _lastIdx = -1;
                     protected int _count;
                     protected int _omodcount = _modcount;
                     protected CoordIntEntry _dummy = new CoordIntEntry();
@@ -397,8 +476,7 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
     @Override
     public void clear ()
     {
-        _cells.clear();
-        _size = 0;
+        initStorage();
         _modcount++;
     }
 
@@ -420,147 +498,200 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
     protected void initTransientFields ()
     {
         _mask = (1 << _granularity) - 1;
+        _cellShift = _granularity << 1;
+        _cellSize = 1 << _cellShift;
+        initStorage();
     }
 
     /**
-     * Returns the cell corresponding to the specified coordinates.
+     * (Re)creates the empty cell table and storage.
      */
-    protected Cell getCell (int x, int y)
+    protected void initStorage ()
     {
-        _coord.set(x >> _granularity, y >> _granularity);
-        return _cells.get(_coord);
+        _keys = new long[INITIAL_TABLE_LENGTH];
+        _slots = new int[INITIAL_TABLE_LENGTH];
+        Arrays.fill(_slots, -1);
+        _cellKeys = new long[INITIAL_CELL_CAPACITY];
+        _counts = new int[INITIAL_CELL_CAPACITY];
+        _values = new int[INITIAL_CELL_CAPACITY << _cellShift];
+        Arrays.fill(_values, _empty);
+        _cellCount = 0;
+        _size = 0;
     }
 
     /**
-     * Represents a single top-level cell.
+     * Returns the index in the value array of the specified coordinates within the given cell.
      */
-    protected class Cell extends DeepObject
-        implements Exportable
+    protected final int getValueIndex (int cell, int x, int y)
     {
-        /**
-         * Creates a new cell.
-         */
-        public Cell ()
-        {
-            _values = new int[1 << _granularity << _granularity];
-            Arrays.fill(_values, _empty);
-        }
+        return (cell << _cellShift) | ((y & _mask) << _granularity) | (x & _mask);
+    }
 
-        /**
-         * Returns a reference to the cell's array of values.
-         */
-        public int[] getValues ()
-        {
-            return _values;
+    /**
+     * Returns the index of the cell with the specified cell coordinates, or -1 if there is no
+     * such cell.
+     */
+    protected final int getCellIndex (int cx, int cy)
+    {
+        long key = getKey(cx, cy);
+        int mask = _keys.length - 1;
+        for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+            int cell = _slots[slot];
+            if (cell == -1 || _keys[slot] == key) {
+                return cell;
+            }
         }
+    }
 
-        /**
-         * Determines whether this cell contains the specified value.
-         */
-        public boolean containsValue (int value)
-        {
-            return IntListUtil.contains(_values, value);
+    /**
+     * Returns the index of the cell with the specified cell coordinates, creating it if
+     * necessary.
+     */
+    protected int getOrCreateCellIndex (int cx, int cy)
+    {
+        long key = getKey(cx, cy);
+        int slot = getSlot(key);
+        if (_slots[slot] != -1) {
+            return _slots[slot];
         }
-
-        /**
-         * Retrieves the value at the specified coordinates within the cell.
-         */
-        public int get (int x, int y)
-        {
-            return _values[(y << _granularity) | x];
+        // keep the table at most half full
+        if ((_cellCount + 1) * 2 > _keys.length) {
+            rehash(_keys.length * 2);
+            slot = getSlot(key);
         }
+        int cell = _cellCount++;
+        if (cell == _counts.length) {
+            int ncapacity = cell * 2;
+            _cellKeys = Longs.ensureCapacity(_cellKeys, ncapacity, 0);
+            _counts = Ints.ensureCapacity(_counts, ncapacity, 0);
+            int olength = _values.length;
+            _values = Ints.ensureCapacity(_values, ncapacity << _cellShift, 0);
+            Arrays.fill(_values, olength, _values.length, _empty);
+        }
+        _cellKeys[cell] = key;
+        _counts[cell] = 0;
+        _keys[slot] = key;
+        _slots[slot] = cell;
+        return cell;
+    }
 
-        /**
-         * Sets the value at the specified coordinates within the cell.
-         *
-         * @return the previously stored value.
-         */
-        public int put (int x, int y, int nvalue)
-        {
-            int idx = (y << _granularity) | x;
-            int ovalue = _values[idx];
-            _values[idx] = nvalue;
-            if (ovalue == _empty) {
-                _size++;
-            }
-            _modcount++;
-            return ovalue;
+    /**
+     * Removes the (empty) cell at the specified index, moving the last cell into its place.
+     */
+    protected void removeCell (int cell)
+    {
+        removeSlot(getSlot(_cellKeys[cell]));
+        int last = --_cellCount;
+        if (cell != last) {
+            System.arraycopy(_values, last << _cellShift, _values, cell << _cellShift, _cellSize);
+            _cellKeys[cell] = _cellKeys[last];
+            _counts[cell] = _counts[last];
+            _slots[getSlot(_cellKeys[cell])] = cell;
         }
+        int base = last << _cellShift;
+        Arrays.fill(_values, base, base + _cellSize, _empty);
+    }
 
-        /**
-         * Sets the value at the specified coordinates to the bitwise OR of the previous
-         * value and the new value.
-         *
-         * @return the previously stored value.
-         */
-        public int setBits (int x, int y, int bits)
-        {
-            int idx = (y << _granularity) | x;
-            int ovalue = _values[idx];
-            _values[idx] |= bits;
-            if (ovalue == _empty) {
-                _size++;
-            }
-            _modcount++;
-            return ovalue;
+    /**
+     * Returns the table slot that holds, or would hold, the specified key.
+     */
+    protected int getSlot (long key)
+    {
+        int mask = _keys.length - 1;
+        int slot = hash(key) & mask;
+        while (_slots[slot] != -1 && _keys[slot] != key) {
+            slot = (slot + 1) & mask;
         }
+        return slot;
+    }
 
-        /**
-         * Removes the value at the specified coordinates within the cell.
-         *
-         * @return the previously stored value.
-         */
-        public int remove (int x, int y)
-        {
-            int idx = (y << _granularity) | x;
-            int ovalue = _values[idx];
-            if (ovalue != _empty) {
-                _values[idx] = _empty;
-                _size--;
-                _modcount++;
+    /**
+     * Clears the specified slot, shifting back any entries in the probe sequence that follows so
+     * that no tombstones are needed.
+     */
+    protected void removeSlot (int hole)
+    {
+        int mask = _keys.length - 1;
+        for (int slot = (hole + 1) & mask; _slots[slot] != -1; slot = (slot + 1) & mask) {
+            // move the entry into the hole if its home slot is not between the hole and it
+            int home = hash(_keys[slot]) & mask;
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                _keys[hole] = _keys[slot];
+                _slots[hole] = _slots[slot];
+                hole = slot;
             }
-            return ovalue;
         }
+        _slots[hole] = -1;
+    }
 
-        /**
-         * Removes the value at the specified index.
-         */
-        public void remove (int idx)
-        {
-            _values[idx] = _empty;
-            _size--;
-            _modcount++;
+    /**
+     * Rebuilds the table with the specified (power-of-two) length.
+     */
+    protected void rehash (int length)
+    {
+        _keys = new long[length];
+        _slots = new int[length];
+        Arrays.fill(_slots, -1);
+        for (int ii = 0; ii < _cellCount; ii++) {
+            int slot = getSlot(_cellKeys[ii]);
+            _keys[slot] = _cellKeys[ii];
+            _slots[slot] = ii;
         }
+    }
 
-        /**
-         * Returns the number of entries in the cell.
-         */
-        public int size ()
-        {
-            return _size;
+    /**
+     * Creates a map containing copies of the cells, as used in the export format.
+     */
+    protected HashMap<Coord, Cell> createCellMap ()
+    {
+        if (_cellCount == 0) {
+            return null;
         }
+        HashMap<Coord, Cell> cells = new HashMap<Coord, Cell>();
+        for (int ii = 0; ii < _cellCount; ii++) {
+            Cell cell = new Cell();
+            System.arraycopy(_values, ii << _cellShift, cell._values, 0, _cellSize);
+            long key = _cellKeys[ii];
+            cells.put(new Coord((int)(key >> 32), (int)key), cell);
+        }
+        return cells;
+    }
+
+    /**
+     * Packs a pair of cell coordinates into a table key.
+     */
+    protected static long getKey (int cx, int cy)
+    {
+        return ((long)cx << 32) | (cy & 0xFFFFFFFFL);
+    }
 
+    /**
+     * Computes the hash of a table key.
+     */
+    protected static int hash (long key)
+    {
+        // take the high bits of a multiplicative hash (folding the halves together would map
+        // every cell on a diagonal to the same slot)
+        return (int)((key * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    /**
+     * The exported form of a single top-level cell.
+     */
+    protected class Cell
+        implements Exportable
+    {
         /**
-         * Custom field read method.
+         * Creates a new, empty cell.
          */
-        public void readFields (Importer in)
-            throws IOException
+        public Cell ()
         {
-            in.defaultReadFields();
-
-            // compute the size
-            for (int value : _values) {
-                if (value != _empty) {
-                    _size++;
-                }
-            }
+            _values = new int[1 << _granularity << _granularity];
+            Arrays.fill(_values, _empty);
         }
 
         /** The values in the cell. */
         protected int[] _values;
-
-        /** The number of entries in the cell. */
-        protected transient int _size;
     }
 
     /** The size of the top-level cells as a power of two. */
@@ -569,18 +700,45 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
     /** The value indicating an empty mapping. */
     protected int _empty;
 
-    /** The top-level cells. */
-    protected HashMap<Coord, Cell> _cells = new HashMap<Coord, Cell>();
+    /** The top-level cells, present only while reading or writing. */
+    protected HashMap<Coord, Cell> _cells;
 
     /** The mask value derived from the granularity. */
     protected transient int _mask;
 
+    /** The shift that converts a cell index to the offset of its values. */
+    protected transient int _cellShift;
+
+    /** The number of values in each cell. */
+    protected transient int _cellSize;
+
+    /** The cell keys in the open-addressing table. */
+    protected transient long[] _keys;
+
+    /** The cell indices in the table, or -1 for free slots. */
+    protected transient int[] _slots;
+
+    /** The keys of the cells, by index. */
+    protected transient long[] _cellKeys;
+
+    /** The number of entries in each cell. */
+    protected transient int[] _counts;
+
+    /** The values of all cells, end to end (empty beyond the last cell). */
+    protected transient int[] _values;
+
+    /** The number of cells in use. */
+    protected transient int _cellCount;
+
     /** The number of entries in the map. */
     protected transient int _size;
 
     /** The modification count (used to detect concurrent modifications). */
     protected transient int _modcount;
 
-    /** A coord to reuse for queries. */
-    protected transient Coord _coord = new Coord();
+    /** The initial length of the cell table. */
+    protected static final int INITIAL_TABLE_LENGTH = 8;
+
+    /** The initial number of cells allocated. */
+    protected static final int INITIAL_CELL_CAPACITY = 4;
 }
@@ -0,0 +1,258 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Assembles a (public, final) class file for the runtime code generators.  The classes are
+ * written in the 1.6 format, which doesn't require stack map frames for methods with branches.
+ */
+public class ClassBuilder
+{
+    /** The internal name of the class. */
+    public final String name;
+
+    public ClassBuilder (String name, String superName)
+    {
+        this.name = name;
+        _thisIndex = classRef(name);
+        _superIndex = classRef(superName);
+    }
+
+    /**
+     * Returns the index of a UTF-8 constant.
+     */
+    public int utf8 (String value)
+    {
+        String key = "U" + value;
+        Integer index = _constants.get(key);
+        if (index == null) {
+            write(1);
+            writeUTF(value);
+            _constants.put(key, index = _constantCount++);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of a class constant.
+     */
+    public int classRef (String internalName)
+    {
+        return constant(7, "C" + internalName, utf8(internalName), -1);
+    }
+
+    /**
+     * Returns the index of a field reference constant.
+     */
+    public int fieldRef (String owner, String name, String desc)
+    {
+        return memberRef(9, owner, name, desc);
+    }
+
+    /**
+     * Returns the index of a method reference constant.
+     */
+    public int methodRef (String owner, String name, String desc)
+    {
+        return memberRef(10, owner, name, desc);
+    }
+
+    /**
+     * Returns the index of a float constant.
+     */
+    public int floatConst (float value)
+    {
+        int bits = Float.floatToIntBits(value);
+        String key = "F" + bits;
+        Integer index = _constants.get(key);
+        if (index == null) {
+            write(4);
+            writeInt(bits);
+            _constants.put(key, index = _constantCount++);
+        }
+        return index;
+    }
+
+    /**
+     * Adds a private final field to the class.
+     */
+    public void addField (String name, String desc)
+    {
+        _fields.add(new int[] { ACC_PRIVATE | ACC_FINAL, utf8(name), utf8(desc) });
+    }
+
+    /**
+     * Adds a public method to the class.
+     */
+    public void addMethod (String name, String desc, CodeBuilder code, int maxLocals)
+    {
+        _methods.add(new Object[] { utf8(name), utf8(desc), code, maxLocals });
+    }
+
+    /**
+     * Returns the assembled class file.
+     */
+    public byte[] toByteArray ()
+        throws IOException
+    {
+        int codeIndex = utf8("Code");
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bout);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0); // minor version
+        out.writeShort(50); // major version (1.6)
+        out.writeShort(_constantCount);
+        _pool.writeTo(out);
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.writeShort(_thisIndex);
+        out.writeShort(_superIndex);
+        out.writeShort(0); // interfaces
+        out.writeShort(_fields.size());
+        for (int[] field : _fields) {
+            out.writeShort(field[0]);
+            out.writeShort(field[1]);
+            out.writeShort(field[2]);
+            out.writeShort(0); // attributes
+        }
+        out.writeShort(_methods.size());
+        for (Object[] method : _methods) {
+            CodeBuilder code = (CodeBuilder)method[2];
+            byte[] bytes = code.toByteArray();
+            out.writeShort(ACC_PUBLIC);
+            out.writeShort((Integer)method[0]);
+            out.writeShort((Integer)method[1]);
+            out.writeShort(1); // attributes
+            out.writeShort(codeIndex);
+            out.writeInt(12 + bytes.length);
+            out.writeShort(code.maxStack);
+            out.writeShort((Integer)method[3]);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeShort(0); // exception table
+            out.writeShort(0); // attributes
+        }
+        out.writeShort(0); // attributes
+        out.flush();
+        return bout.toByteArray();
+    }
+
+    /**
+     * Returns the index of a member reference constant.
+     */
+    protected int memberRef (int tag, String owner, String name, String desc)
+    {
+        int nameAndType = constant(12, "N" + name + " " + desc, utf8(name), utf8(desc));
+        return constant(tag, tag + owner + "." + name + " " + desc,
+            classRef(owner), nameAndType);
+    }
+
+    /**
+     * Returns the index of a constant consisting of one or two constant indices.
+     */
+    protected int constant (int tag, String key, int first, int second)
+    {
+        Integer index = _constants.get(key);
+        if (index == null) {
+            write(tag);
+            writeShort(first);
+            if (second != -1) {
+                writeShort(second);
+            }
+            _constants.put(key, index = _constantCount++);
+        }
+        return index;
+    }
+
+    /**
+     * Writes a byte to the constant pool.
+     */
+    protected void write (int value)
+    {
+        _pool.write(value);
+    }
+
+    /**
+     * Writes a short to the constant pool.
+     */
+    protected void writeShort (int value)
+    {
+        _pool.write(value >> 8);
+        _pool.write(value);
+    }
+
+    /**
+     * Writes an int to the constant pool.
+     */
+    protected void writeInt (int value)
+    {
+        writeShort(value >> 16);
+        writeShort(value);
+    }
+
+    /**
+     * Writes a (modified) UTF-8 string to the constant pool.
+     */
+    protected void writeUTF (String value)
+    {
+        try {
+            new DataOutputStream(_pool).writeUTF(value);
+        } catch (IOException e) {
+            throw new RuntimeException(e); // shouldn't happen with a byte array
+        }
+    }
+
+    /** The constant pool. */
+    protected ByteArrayOutputStream _pool = new ByteArrayOutputStream();
+
+    /** Maps constant keys to their indices. */
+    protected Map<String, Integer> _constants = Maps.newHashMap();
+
+    /** The number of constants (plus one, since indices start at one). */
+    protected int _constantCount = 1;
+
+    /** The indices of this class and the superclass. */
+    protected int _thisIndex, _superIndex;
+
+    /** The fields (access flags, name index, descriptor index). */
+    protected List<int[]> _fields = Lists.newArrayList();
+
+    /** The methods (name index, descriptor index, code, max locals). */
+    protected List<Object[]> _methods = Lists.newArrayList();
+
+    /** Access flags. */
+    protected static final int ACC_PUBLIC = 0x0001, ACC_PRIVATE = 0x0002, ACC_FINAL = 0x0010,
+        ACC_SUPER = 0x0020;
+}
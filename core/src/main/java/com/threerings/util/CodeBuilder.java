@@ -0,0 +1,202 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.util;
+
+import java.io.ByteArrayOutputStream;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Accumulates the bytecode for a single method of a class assembled with {@link ClassBuilder}.
+ * Branches are emitted with placeholder offsets and patched once their targets are marked.
+ */
+public class CodeBuilder
+{
+    /** The current and maximum stack depths (in words). */
+    public int stack, maxStack;
+
+    /**
+     * Emits a single-byte instruction.
+     *
+     * @param delta the change in stack depth (in words).
+     */
+    public void op (int opcode, int delta)
+    {
+        _bytes.write(opcode);
+        adjustStack(delta);
+    }
+
+    /**
+     * Emits an instruction with a two-byte operand.
+     */
+    public void op2 (int opcode, int operand, int delta)
+    {
+        _bytes.write(opcode);
+        _bytes.write(operand >> 8);
+        _bytes.write(operand);
+        adjustStack(delta);
+    }
+
+    /**
+     * Pushes an integer constant.
+     */
+    public void pushInt (int value)
+    {
+        if (value >= -1 && value <= 5) {
+            op(ICONST_0 + value, +1);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            _bytes.write(BIPUSH);
+            _bytes.write(value);
+            adjustStack(+1);
+        } else {
+            op2(SIPUSH, value, +1);
+        }
+    }
+
+    /**
+     * Loads a (single-word) constant from the pool.
+     */
+    public void ldc (int index)
+    {
+        if (index <= 255) {
+            _bytes.write(LDC);
+            _bytes.write(index);
+            adjustStack(+1);
+        } else {
+            op2(LDC_W, index, +1);
+        }
+    }
+
+    /**
+     * Invokes a static method.
+     */
+    public void invokeStatic (ClassBuilder cb, String owner, String name, String desc)
+    {
+        op2(INVOKESTATIC, cb.methodRef(owner, name, desc), getStackDelta(desc));
+    }
+
+    /**
+     * Invokes a virtual method.
+     */
+    public void invokeVirtual (ClassBuilder cb, String owner, String name, String desc)
+    {
+        op2(INVOKEVIRTUAL, cb.methodRef(owner, name, desc), getStackDelta(desc) - 1);
+    }
+
+    /**
+     * Emits a branch instruction whose target is yet to be determined.
+     *
+     * @param delta the change in stack depth (in words).
+     * @return the branch, to be passed to {@link #mark} at the target.
+     */
+    public int branch (int opcode, int delta)
+    {
+        int branch = _bytes.size();
+        op2(opcode, 0, delta);
+        return branch;
+    }
+
+    /**
+     * Makes the current position the target of the specified branches.
+     */
+    public void mark (List<Integer> branches)
+    {
+        for (Integer branch : branches) {
+            mark(branch);
+        }
+    }
+
+    /**
+     * Makes the current position the target of the specified branch.
+     */
+    public void mark (int branch)
+    {
+        _targets.add(new int[] { branch, _bytes.size() });
+    }
+
+    /**
+     * Returns the code bytes with the branch offsets filled in.
+     */
+    public byte[] toByteArray ()
+    {
+        byte[] bytes = _bytes.toByteArray();
+        for (int[] target : _targets) {
+            int offset = target[1] - target[0];
+            bytes[target[0] + 1] = (byte)(offset >> 8);
+            bytes[target[0] + 2] = (byte)offset;
+        }
+        return bytes;
+    }
+
+    /**
+     * Adjusts the stack depth, tracking the maximum.
+     */
+    protected void adjustStack (int delta)
+    {
+        stack += delta;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    /**
+     * Returns the change in stack depth effected by invoking a method with the supplied
+     * descriptor, not counting the target object (if any).
+     */
+    protected static int getStackDelta (String desc)
+    {
+        int delta = 0;
+        for (int ii = 1, nn = desc.length(); ii < nn; ii++) {
+            char c = desc.charAt(ii);
+            int words = (c == 'J' || c == 'D') ? 2 : 1;
+            if (c == '[') {
+                do {
+                    c = desc.charAt(++ii);
+                } while (c == '[');
+                words = 1;
+            }
+            if (c == 'L') {
+                ii = desc.indexOf(';', ii);
+            }
+            if (c == ')') {
+                char r = desc.charAt(ii + 1);
+                return delta + (r == 'V' ? 0 : (r == 'J' || r == 'D') ? 2 : 1);
+            }
+            delta -= words;
+        }
+        throw new IllegalArgumentException("Invalid method descriptor: " + desc);
+    }
+
+    /** The code bytes. */
+    protected ByteArrayOutputStream _bytes = new ByteArrayOutputStream();
+
+    /** The branches and their targets. */
+    protected List<int[]> _targets = Lists.newArrayList();
+
+    /** Opcodes. */
+    protected static final int ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, LDC = 0x12,
+        LDC_W = 0x13, INVOKEVIRTUAL = 0xb6, INVOKESTATIC = 0xb8;
+}
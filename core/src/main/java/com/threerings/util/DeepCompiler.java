@@ -0,0 +1,612 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.util;
+
+import java.io.IOException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import java.security.ProtectionDomain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import static com.threerings.ClydeLog.log;
+
+/**
+ * Generates the {@link DeepUtil} handlers for mutable classes.  Each generated handler copies,
+ * compares, and hashes the fields of its class in straight-line code, accessing the fields that
+ * it can reach directly (without boxing primitive values) and delegating the rest (private and
+ * final fields, for instance) to the reflective field handlers.  When the JVM allows it, the
+ * handler is defined in the loader and package of its class, so that it can reach protected and
+ * package-private fields as well as public ones; otherwise, it is defined in our own loader and
+ * can only reach public fields of public classes.  If generation fails for any reason (or if
+ * no fields can be reached directly), {@link DeepUtil} uses the reflective object handler.
+ */
+public class DeepCompiler
+{
+    /**
+     * Enables or disables compilation (it is enabled by default unless the
+     * <code>com.threerings.util.no_deep_compile</code> system property is set).  This only
+     * affects the handlers of classes not yet seen by {@link DeepUtil}.
+     */
+    public static void setEnabled (boolean enabled)
+    {
+        _enabled = enabled;
+    }
+
+    /**
+     * Returns the number of handler classes generated so far.
+     */
+    public static synchronized int getCompiledCount ()
+    {
+        return _constructors.size();
+    }
+
+    /**
+     * Creates a generated handler for the specified (non-array, mutable) class.
+     *
+     * @return the handler, or <code>null</code> if compilation is disabled or the handler could
+     * not (or need not) be generated.
+     */
+    protected static DeepUtil.ObjectHandler<?> createHandler (Class<?> clazz)
+    {
+        if (!_enabled) {
+            return null;
+        }
+        Constructor<?> ctor = getConstructor(clazz);
+        if (ctor == null) {
+            return null;
+        }
+        try {
+            return (DeepUtil.ObjectHandler<?>)ctor.newInstance(clazz);
+        } catch (Exception e) {
+            log.warning("Failed to create deep handler.", "class", clazz, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the constructor of the handler class for the specified class, generating it if
+     * necessary.
+     *
+     * @return the constructor, or <code>null</code> if the class could not be generated.
+     */
+    protected static synchronized Constructor<?> getConstructor (Class<?> clazz)
+    {
+        Constructor<?> ctor = _constructors.get(clazz);
+        if (ctor != null || _skipped.contains(clazz)) {
+            return ctor;
+        }
+        _skipped.add(clazz); // until we succeed
+
+        // define the handler alongside the class if we can, otherwise in our own loader
+        ClassLoader loader = clazz.getClassLoader();
+        String pkg = getPackageName(clazz);
+        boolean local = (DEFINE_CLASS != null && loader != null && !pkg.startsWith("java.") &&
+            isVisible(CompiledObjectHandler.class, loader));
+        if (!local) {
+            loader = _loader;
+            pkg = GENERATED_PACKAGE;
+        }
+
+        // determine which fields we can access directly
+        ArrayList<Field> list = new ArrayList<Field>();
+        DeepUtil.getInstanceFields(clazz, list);
+        Field[] fields = list.toArray(new Field[list.size()]);
+        boolean[] direct = new boolean[fields.length];
+        int ndirect = 0;
+        for (int ii = 0; ii < fields.length; ii++) {
+            if (direct[ii] = isDirect(fields[ii], loader, pkg)) {
+                ndirect++;
+            }
+        }
+        if (ndirect == 0) {
+            return null; // nothing to gain over the reflective handler
+        }
+        String name = (pkg.length() == 0 ? "" : pkg + ".") + "DeepHandler$" + _count++;
+        try {
+            byte[] bytes = generate(name.replace('.', '/'), fields, direct);
+            Class<?> hclazz = local ?
+                (Class<?>)DEFINE_CLASS.invoke(loader, name, bytes, 0, bytes.length,
+                    clazz.getProtectionDomain()) :
+                _loader.define(name, bytes);
+            ctor = hclazz.getConstructor(Class.class);
+        } catch (Throwable t) {
+            log.warning("Failed to compile deep handler.", "class", clazz, t);
+            return null;
+        }
+        _skipped.remove(clazz);
+        _constructors.put(clazz, ctor);
+        return ctor;
+    }
+
+    /**
+     * Determines whether the generated handler may access the specified field directly.
+     *
+     * @param loader the loader in which the handler will be defined.
+     * @param pkg the package in which the handler will be defined.
+     */
+    protected static boolean isDirect (Field field, ClassLoader loader, String pkg)
+    {
+        // we leave private fields and final fields (which can only be set reflectively) alone
+        int mods = field.getModifiers();
+        if (Modifier.isPrivate(mods) || Modifier.isFinal(mods)) {
+            return false;
+        }
+        Class<?> owner = field.getDeclaringClass();
+        if (!(isLocal(owner, loader, pkg) ||
+                (Modifier.isPublic(mods) && isAccessible(owner, loader, pkg)))) {
+            return false;
+        }
+        // copied object values must be cast back to the type of the field
+        Class<?> type = field.getType();
+        return type.isPrimitive() || field.isAnnotationPresent(Shallow.class) ||
+            isAccessible(type, loader, pkg);
+    }
+
+    /**
+     * Determines whether the specified class (or array class) may be referenced by the
+     * generated handler.
+     */
+    protected static boolean isAccessible (Class<?> clazz, ClassLoader loader, String pkg)
+    {
+        while (clazz.isArray()) {
+            clazz = clazz.getComponentType();
+        }
+        if (clazz.isPrimitive() || isLocal(clazz, loader, pkg)) {
+            return true;
+        }
+        // protected member classes are public as far as the JVM is concerned
+        return (clazz.getModifiers() & (Modifier.PUBLIC | Modifier.PROTECTED)) != 0 &&
+            isVisible(clazz, loader);
+    }
+
+    /**
+     * Determines whether the specified class is in the same runtime package as the handler.
+     */
+    protected static boolean isLocal (Class<?> clazz, ClassLoader loader, String pkg)
+    {
+        return clazz.getClassLoader() == loader && getPackageName(clazz).equals(pkg);
+    }
+
+    /**
+     * Determines whether the specified class may be resolved by name through the given loader.
+     */
+    protected static boolean isVisible (Class<?> clazz, ClassLoader loader)
+    {
+        try {
+            return Class.forName(clazz.getName(), false, loader) == clazz;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the name of the package containing the specified class.
+     */
+    protected static String getPackageName (Class<?> clazz)
+    {
+        String name = clazz.getName();
+        int idx = name.lastIndexOf('.');
+        return (idx == -1) ? "" : name.substring(0, idx);
+    }
+
+    /**
+     * Generates the bytecode for a handler class.
+     *
+     * @param direct for each field, whether or not to access it directly.
+     */
+    protected static byte[] generate (String name, Field[] fields, boolean[] direct)
+        throws IOException
+    {
+        ClassBuilder cb = new ClassBuilder(name, HANDLER);
+
+        // the constructor passes the class up to the reflective handler
+        CodeBuilder init = new CodeBuilder();
+        init.op(ALOAD_0, +1);
+        init.op(ALOAD_1, +1);
+        init.op2(INVOKESPECIAL, cb.methodRef(HANDLER, "<init>", "(Ljava/lang/Class;)V"), -2);
+        init.op(RETURN, 0);
+        cb.addMethod("<init>", "(Ljava/lang/Class;)V", init, 2);
+
+        // copyFields (this, source, dest), equals (this, o1, o2), and hashCode (this, object)
+        CodeBuilder copy = new CodeBuilder(), equals = new CodeBuilder(), hash = new CodeBuilder();
+        List<Integer> unequal = Lists.newArrayList();
+        hash.pushInt(1);
+        for (int ii = 0; ii < fields.length; ii++) {
+            if (direct[ii]) {
+                emitDirect(cb, copy, equals, hash, unequal, fields[ii]);
+            } else {
+                emitReflective(cb, copy, equals, hash, unequal, ii);
+            }
+        }
+        copy.op(RETURN, 0);
+        equals.pushInt(1);
+        equals.op(IRETURN, -1);
+        equals.mark(unequal);
+        equals.pushInt(0);
+        equals.op(IRETURN, -1);
+        hash.op(IRETURN, -1);
+
+        cb.addMethod("copyFields", "(" + OBJECT + OBJECT + ")V", copy, 3);
+        cb.addMethod("equals", "(" + OBJECT + OBJECT + ")Z", equals, 3);
+        cb.addMethod("hashCode", "(" + OBJECT + ")I", hash, 2);
+        return cb.toByteArray();
+    }
+
+    /**
+     * Emits the code to copy, compare, and hash a field that we access directly.  The semantics
+     * are those of the reflective field handlers.
+     */
+    protected static void emitDirect (
+        ClassBuilder cb, CodeBuilder copy, CodeBuilder equals, CodeBuilder hash,
+        List<Integer> unequal, Field field)
+    {
+        Class<?> type = field.getType();
+        String desc = getDescriptor(type);
+        int words = (type == Long.TYPE || type == Double.TYPE) ? 2 : 1;
+        String owner = getInternalName(field.getDeclaringClass());
+        int ref = cb.fieldRef(owner, field.getName(), desc);
+        int ownerRef = cb.classRef(owner);
+        char kind = type.isPrimitive() ? desc.charAt(0) :
+            (field.isAnnotationPresent(Deep.class) ? DEEP :
+                (field.isAnnotationPresent(Shallow.class) ? SHALLOW : DEFAULT));
+
+        // dest.field = <copy of source.field>
+        copy.op(ALOAD_2, +1);
+        copy.op2(CHECKCAST, ownerRef, 0);
+        getField(copy, ALOAD_1, ownerRef, ref, words);
+        if (kind == DEFAULT || kind == DEEP) {
+            getField(copy, ALOAD_2, ownerRef, ref, words);
+            copy.op(ALOAD_2, +1);
+            if (kind == DEFAULT) {
+                copy.invokeStatic(cb, HANDLER, "copyValue", "(" + OBJECT + OBJECT + OBJECT + ")" +
+                    OBJECT);
+            } else {
+                copy.invokeStatic(cb, DEEP_UTIL, "copy", "(" + OBJECT + OBJECT + OBJECT + ")" +
+                    OBJECT);
+            }
+            copy.op2(CHECKCAST, cb.classRef(type.isArray() ? desc : getInternalName(type)), 0);
+        }
+        copy.op2(PUTFIELD, ref, -1 - words);
+
+        // if (o1.field != o2.field) return false
+        getField(equals, ALOAD_1, ownerRef, ref, words);
+        getField(equals, ALOAD_2, ownerRef, ref, words);
+        switch (kind) {
+            case 'J':
+                equals.op(LCMP, -3);
+                unequal.add(equals.branch(IFNE, -1));
+                break;
+            case 'F':
+                equals.op(FCMPL, -1);
+                unequal.add(equals.branch(IFNE, -1));
+                break;
+            case 'D':
+                equals.op(DCMPL, -3);
+                unequal.add(equals.branch(IFNE, -1));
+                break;
+            case SHALLOW:
+                unequal.add(equals.branch(IF_ACMPNE, -2));
+                break;
+            case DEFAULT:
+                equals.invokeStatic(cb, HANDLER, "valueEquals", "(" + OBJECT + OBJECT + ")Z");
+                unequal.add(equals.branch(IFEQ, -1));
+                break;
+            case DEEP:
+                equals.invokeStatic(cb, DEEP_UTIL, "equals", "(" + OBJECT + OBJECT + ")Z");
+                unequal.add(equals.branch(IFEQ, -1));
+                break;
+            default: // boolean, byte, char, short, int
+                unequal.add(equals.branch(IF_ICMPNE, -2));
+                break;
+        }
+
+        // hash = 31*hash + <hash of object.field>
+        hash.pushInt(31);
+        hash.op(IMUL, -1);
+        getField(hash, ALOAD_1, ownerRef, ref, words);
+        switch (kind) {
+            case 'Z':
+                hash.invokeStatic(cb, HANDLER, "hashBoolean", "(Z)I");
+                break;
+            case 'J':
+                hash.invokeStatic(cb, HANDLER, "hashLong", "(J)I");
+                break;
+            case 'F':
+                hash.invokeStatic(cb, "java/lang/Float", "floatToIntBits", "(F)I");
+                break;
+            case 'D':
+                hash.invokeStatic(cb, HANDLER, "hashDouble", "(D)I");
+                break;
+            case SHALLOW:
+                hash.invokeStatic(cb, "java/lang/System", "identityHashCode", "(" + OBJECT + ")I");
+                break;
+            case DEFAULT:
+                hash.invokeStatic(cb, HANDLER, "valueHashCode", "(" + OBJECT + ")I");
+                break;
+            case DEEP:
+                hash.invokeStatic(cb, DEEP_UTIL, "hashCode", "(" + OBJECT + ")I");
+                break;
+            default: // byte, char, short, int
+                break;
+        }
+        hash.op(IADD, -1);
+    }
+
+    /**
+     * Emits the code to copy, compare, and hash a field through its reflective field handler.
+     *
+     * @param idx the index of the field in the handler's arrays.
+     */
+    protected static void emitReflective (
+        ClassBuilder cb, CodeBuilder copy, CodeBuilder equals, CodeBuilder hash,
+        List<Integer> unequal, int idx)
+    {
+        // _handlers[idx].copy(_fields[idx], source, dest)
+        getFieldHandler(cb, copy, idx);
+        copy.op(ALOAD_1, +1);
+        copy.op(ALOAD_2, +1);
+        copy.invokeVirtual(cb, FIELD_HANDLER, "copy", "(" + FIELD + OBJECT + OBJECT + ")V");
+
+        // if (!_handlers[idx].equals(_fields[idx], o1, o2)) return false
+        getFieldHandler(cb, equals, idx);
+        equals.op(ALOAD_1, +1);
+        equals.op(ALOAD_2, +1);
+        equals.invokeVirtual(cb, FIELD_HANDLER, "equals", "(" + FIELD + OBJECT + OBJECT + ")Z");
+        unequal.add(equals.branch(IFEQ, -1));
+
+        // hash = 31*hash + _handlers[idx].hashCode(_fields[idx], object)
+        hash.pushInt(31);
+        hash.op(IMUL, -1);
+        getFieldHandler(cb, hash, idx);
+        hash.op(ALOAD_1, +1);
+        hash.invokeVirtual(cb, FIELD_HANDLER, "hashCode", "(" + FIELD + OBJECT + ")I");
+        hash.op(IADD, -1);
+    }
+
+    /**
+     * Pushes the value of a field of one of the method arguments.
+     *
+     * @param aload the opcode that loads the argument.
+     */
+    protected static void getField (CodeBuilder code, int aload, int ownerRef, int ref, int words)
+    {
+        code.op(aload, +1);
+        code.op2(CHECKCAST, ownerRef, 0);
+        code.op2(GETFIELD, ref, words - 1);
+    }
+
+    /**
+     * Pushes the reflective handler and the field at the specified index.
+     */
+    protected static void getFieldHandler (ClassBuilder cb, CodeBuilder code, int idx)
+    {
+        code.op(ALOAD_0, +1);
+        code.op2(GETFIELD, cb.fieldRef(HANDLER, "_handlers", "[L" + FIELD_HANDLER + ";"), 0);
+        code.pushInt(idx);
+        code.op(AALOAD, -1);
+        code.op(ALOAD_0, +1);
+        code.op2(GETFIELD, cb.fieldRef(HANDLER, "_fields", "[" + FIELD), 0);
+        code.pushInt(idx);
+        code.op(AALOAD, -1);
+    }
+
+    /**
+     * Returns the internal name of the specified (non-array) class.
+     */
+    protected static String getInternalName (Class<?> clazz)
+    {
+        return clazz.getName().replace('.', '/');
+    }
+
+    /**
+     * Returns the type descriptor of the specified class.
+     */
+    protected static String getDescriptor (Class<?> clazz)
+    {
+        if (clazz.isArray()) {
+            return getInternalName(clazz);
+        } else if (!clazz.isPrimitive()) {
+            return "L" + getInternalName(clazz) + ";";
+        } else if (clazz == Boolean.TYPE) {
+            return "Z";
+        } else if (clazz == Byte.TYPE) {
+            return "B";
+        } else if (clazz == Character.TYPE) {
+            return "C";
+        } else if (clazz == Double.TYPE) {
+            return "D";
+        } else if (clazz == Float.TYPE) {
+            return "F";
+        } else if (clazz == Integer.TYPE) {
+            return "I";
+        } else if (clazz == Long.TYPE) {
+            return "J";
+        } else {
+            return "S";
+        }
+    }
+
+    /**
+     * The superclass of the generated handlers, which fall back to the reflective handlers of
+     * their superclass for the fields that they can't access directly and for string conversion.
+     * The static methods are called from the generated code.
+     */
+    protected static class CompiledObjectHandler extends DeepUtil.ReflectiveObjectHandler
+    {
+        protected CompiledObjectHandler (Class<?> clazz)
+        {
+            super(clazz);
+        }
+
+        /**
+         * Copies an object value as the default field handler does.
+         */
+        protected static Object copyValue (Object v1, Object v2, Object outer)
+        {
+            if (v1 == null) {
+                return null;
+            } else if (v1 instanceof Copyable) {
+                return ((Copyable)v1).copy(v2, outer);
+            } else {
+                return DeepUtil.copy(v1, v2, outer);
+            }
+        }
+
+        /**
+         * Compares object values as the default field handler does.
+         */
+        protected static boolean valueEquals (Object v1, Object v2)
+        {
+            if (v1 == null) {
+                return v2 == null;
+            } else if (v1.getClass().isArray()) {
+                return DeepUtil.equals(v1, v2);
+            } else {
+                return v1.equals(v2);
+            }
+        }
+
+        /**
+         * Hashes an object value as the default field handler does.
+         */
+        protected static int valueHashCode (Object value)
+        {
+            if (value == null) {
+                return 0;
+            } else if (value.getClass().isArray()) {
+                return DeepUtil.hashCode(value);
+            } else {
+                return value.hashCode();
+            }
+        }
+
+        /**
+         * Hashes a boolean value as the boolean field handler does.
+         */
+        protected static int hashBoolean (boolean value)
+        {
+            return value ? 1231 : 1237;
+        }
+
+        /**
+         * Hashes a long value as the long field handler does.
+         */
+        protected static int hashLong (long value)
+        {
+            return (int)(value ^ (value >>> 32));
+        }
+
+        /**
+         * Hashes a double value as the double field handler does.
+         */
+        protected static int hashDouble (double value)
+        {
+            return hashLong(Double.doubleToLongBits(value));
+        }
+    }
+
+    /**
+     * Defines the handler classes that can't be defined alongside their classes.
+     */
+    protected static class GeneratedClassLoader extends ClassLoader
+    {
+        public GeneratedClassLoader ()
+        {
+            super(DeepCompiler.class.getClassLoader());
+        }
+
+        /**
+         * Defines a class from the supplied bytecode.
+         */
+        public Class<?> define (String name, byte[] bytes)
+        {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /** Whether or not compilation is enabled. */
+    protected static volatile boolean _enabled =
+        !Boolean.getBoolean("com.threerings.util.no_deep_compile");
+
+    /** The constructors of the generated handler classes, mapped by class. */
+    protected static Map<Class<?>, Constructor<?>> _constructors = Maps.newHashMap();
+
+    /** The classes for which we have not generated (and will not generate) handlers. */
+    protected static Set<Class<?>> _skipped = Sets.newHashSet();
+
+    /** Used to name the generated classes. */
+    protected static int _count;
+
+    /** The loader for the classes that can't be defined alongside their classes. */
+    protected static GeneratedClassLoader _loader = new GeneratedClassLoader();
+
+    /** The (protected) method used to define classes in other loaders, if accessible. */
+    protected static final Method DEFINE_CLASS;
+    static {
+        Method method;
+        try {
+            method = ClassLoader.class.getDeclaredMethod("defineClass", String.class,
+                byte[].class, Integer.TYPE, Integer.TYPE, ProtectionDomain.class);
+            method.setAccessible(true);
+        } catch (Exception e) {
+            // newer JVMs don't allow this without opening java.lang to our module
+            method = null;
+        }
+        DEFINE_CLASS = method;
+    }
+
+    /** The package in which we place the classes defined in our own loader. */
+    protected static final String GENERATED_PACKAGE = "com.threerings.util.generated";
+
+    /** Internal class names and descriptors. */
+    protected static final String HANDLER =
+        "com/threerings/util/DeepCompiler$CompiledObjectHandler";
+    protected static final String FIELD_HANDLER = "com/threerings/util/DeepUtil$FieldHandler";
+    protected static final String DEEP_UTIL = "com/threerings/util/DeepUtil";
+    protected static final String OBJECT = "Ljava/lang/Object;";
+    protected static final String FIELD = "Ljava/lang/reflect/Field;";
+
+    /** Field kinds, in addition to the primitive descriptors. */
+    protected static final char DEFAULT = 'L', DEEP = 'P', SHALLOW = 'W';
+
+    /** Opcodes. */
+    protected static final int ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, ALOAD_2 = 0x2c, AALOAD = 0x32,
+        IADD = 0x60, IMUL = 0x68, LCMP = 0x94, FCMPL = 0x95, DCMPL = 0x97, IFEQ = 0x99,
+        IFNE = 0x9a, IF_ICMPNE = 0xa0, IF_ACMPNE = 0xa6, IRETURN = 0xac, RETURN = 0xb1,
+        GETFIELD = 0xb4, PUTFIELD = 0xb5, INVOKESPECIAL = 0xb7, CHECKCAST = 0xc0;
+}
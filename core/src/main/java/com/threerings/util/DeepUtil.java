@@ -47,7 +47,8 @@ import static com.threerings.ClydeLog.log;
 
 /**
  * Various methods that use reflection to perform "deep" operations: copying, comparison, etc.
- * The usual warnings about circular references apply.
+ * The usual warnings about circular references apply.  Where possible, the handlers for mutable
+ * classes are generated by {@link DeepCompiler}.
  */
 public class DeepUtil
 {
@@ -209,7 +210,10 @@ public class DeepUtil
             } else if (clazz.isArray()) {
                 handler = ARRAY_OBJECT_HANDLER;
             } else {
-                handler = new ReflectiveObjectHandler(clazz);
+                handler = DeepCompiler.createHandler(clazz);
+                if (handler == null) {
+                    handler = new ReflectiveObjectHandler(clazz);
+                }
             }
             _objectHandlers.put(clazz, handler);
         }
@@ -309,11 +313,19 @@ public class DeepUtil
                     return null; // an error will have been logged
                 }
             }
-            // deep-copy the fields
+            copyFields(source, dest);
+            return dest;
+        }
+
+        /**
+         * Deep-copies the fields of the source object into the destination object.
+         */
+        public void copyFields (Object source, Object dest)
+            throws IllegalAccessException
+        {
             for (int ii = 0; ii < _fields.length; ii++) {
                 _handlers[ii].copy(_fields[ii], source, dest);
             }
-            return dest;
         }
 
         @Override
@@ -0,0 +1,491 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.util;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable map from integer keys to values.  Adding or removing a mapping creates a new map
+ * that shares all but the modified path of its hash trie with the original, so successive
+ * versions of a large map cost time and space proportional to the number of changes between
+ * them, and the differences between two versions can be found without visiting the structure
+ * they share.  Values are compared by identity.
+ */
+public class PersistentIntMap<V>
+    implements Iterable<V>
+{
+    /**
+     * Receives the differences between two maps.
+     */
+    public interface Visitor<V>
+    {
+        /**
+         * Notes that a mapping is present only in the new map.
+         */
+        public void entryAdded (int key, V value);
+
+        /**
+         * Notes that the key maps to different values in the old and new maps.
+         */
+        public void entryUpdated (int key, V ovalue, V nvalue);
+
+        /**
+         * Notes that a mapping is present only in the old map.
+         */
+        public void entryRemoved (int key, V value);
+    }
+
+    /**
+     * Reports the differences between two maps to the supplied visitor.  Subtrees that the maps
+     * share are skipped, so maps derived from one another are compared in time proportional to
+     * the number of changes between them.
+     */
+    public static <V> void diff (
+        PersistentIntMap<V> omap, PersistentIntMap<V> nmap, Visitor<? super V> visitor)
+    {
+        Node.diff(omap._root, nmap._root, 0, visitor);
+    }
+
+    /**
+     * Creates an empty map.
+     */
+    public PersistentIntMap ()
+    {
+        this(Node.EMPTY, 0);
+    }
+
+    /**
+     * Returns the number of mappings in the map.
+     */
+    public int size ()
+    {
+        return _size;
+    }
+
+    /**
+     * Checks whether the map is empty.
+     */
+    public boolean isEmpty ()
+    {
+        return _size == 0;
+    }
+
+    /**
+     * Checks whether the map contains a mapping for the specified key.
+     */
+    public boolean containsKey (int key)
+    {
+        return _root.containsKey(key, 0);
+    }
+
+    /**
+     * Returns the value mapped to the specified key, or <code>null</code> if none.
+     */
+    @SuppressWarnings("unchecked")
+    public V get (int key)
+    {
+        return (V)_root.get(key, 0);
+    }
+
+    /**
+     * Returns a map with the specified key mapped to the given value.
+     *
+     * @return the new map, or this map if the key was already mapped to the value.
+     */
+    public PersistentIntMap<V> put (int key, V value)
+    {
+        Node root = _root.put(key, value, 0);
+        return (root == _root) ? this :
+            new PersistentIntMap<V>(root, _root.containsKey(key, 0) ? _size : _size + 1);
+    }
+
+    /**
+     * Returns a map without any mapping for the specified key.
+     *
+     * @return the new map, or this map if the key was not mapped.
+     */
+    public PersistentIntMap<V> remove (int key)
+    {
+        Node root = _root.remove(key, 0);
+        return (root == _root) ? this : new PersistentIntMap<V>(root, _size - 1);
+    }
+
+    // documentation inherited from interface Iterable
+    public Iterator<V> iterator ()
+    {
+        return new Iterator<V>() {
+            public boolean hasNext () {
+                while (_depth >= 0) {
+                    Node node = _nodes[_depth];
+                    if (_dataIndices[_depth] < node._keys.length) {
+                        return true;
+                    }
+                    int idx = _nodeIndices[_depth];
+                    if (idx < node._nodes.length) {
+                        _nodeIndices[_depth] = idx + 1;
+                        _depth++;
+                        _nodes[_depth] = node._nodes[idx];
+                        _dataIndices[_depth] = _nodeIndices[_depth] = 0;
+                    } else {
+                        _nodes[_depth--] = null;
+                    }
+                }
+                return false;
+            }
+            @SuppressWarnings("unchecked")
+            public V next () {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return (V)_nodes[_depth]._values[_dataIndices[_depth]++];
+            }
+            public void remove () {
+                throw new UnsupportedOperationException();
+            }
+            protected Node[] _nodes = new Node[MAX_DEPTH];
+            protected int[] _dataIndices = new int[MAX_DEPTH];
+            protected int[] _nodeIndices = new int[MAX_DEPTH];
+            protected int _depth;
+            {
+                _nodes[0] = _root;
+            }
+        };
+    }
+
+    /**
+     * Creates a map with the supplied root and size.
+     */
+    protected PersistentIntMap (Node root, int size)
+    {
+        _root = root;
+        _size = size;
+    }
+
+    /**
+     * A node in the hash trie.  Each node consumes {@link #BITS} bits of the key and holds its
+     * entries inline, except for those sharing their bits with another entry, which are pushed
+     * down into child nodes.  Child nodes always contain at least two entries, which keeps the
+     * structure of a map a function of its contents alone.
+     */
+    protected static final class Node
+    {
+        /** The empty node. */
+        public static final Node EMPTY = new Node(0, 0, new int[0], new Object[0], new Node[0]);
+
+        /**
+         * Reports the differences between two nodes at the same level.
+         */
+        @SuppressWarnings("unchecked")
+        public static <V> void diff (Node onode, Node nnode, int shift, Visitor<V> visitor)
+        {
+            if (onode == nnode) {
+                return;
+            }
+            int cshift = shift + BITS;
+            for (int bits = onode.getBitmap() | nnode.getBitmap(); bits != 0; bits &= bits - 1) {
+                int bit = bits & -bits;
+                if ((onode._dataMap & bit) != 0) {
+                    int oidx = index(onode._dataMap, bit);
+                    int okey = onode._keys[oidx];
+                    V ovalue = (V)onode._values[oidx];
+                    if ((nnode._dataMap & bit) != 0) {
+                        int nidx = index(nnode._dataMap, bit);
+                        int nkey = nnode._keys[nidx];
+                        V nvalue = (V)nnode._values[nidx];
+                        if (okey != nkey) {
+                            visitor.entryRemoved(okey, ovalue);
+                            visitor.entryAdded(nkey, nvalue);
+                        } else if (ovalue != nvalue) {
+                            visitor.entryUpdated(okey, ovalue, nvalue);
+                        }
+                    } else if ((nnode._nodeMap & bit) != 0) {
+                        diff(singleton(okey, ovalue, cshift),
+                            nnode._nodes[index(nnode._nodeMap, bit)], cshift, visitor);
+                    } else {
+                        visitor.entryRemoved(okey, ovalue);
+                    }
+                } else if ((onode._nodeMap & bit) != 0) {
+                    Node ochild = onode._nodes[index(onode._nodeMap, bit)];
+                    if ((nnode._dataMap & bit) != 0) {
+                        int nidx = index(nnode._dataMap, bit);
+                        diff(ochild, singleton(nnode._keys[nidx], nnode._values[nidx], cshift),
+                            cshift, visitor);
+                    } else if ((nnode._nodeMap & bit) != 0) {
+                        diff(ochild, nnode._nodes[index(nnode._nodeMap, bit)], cshift, visitor);
+                    } else {
+                        diff(ochild, EMPTY, cshift, visitor);
+                    }
+                } else if ((nnode._dataMap & bit) != 0) {
+                    int nidx = index(nnode._dataMap, bit);
+                    visitor.entryAdded(nnode._keys[nidx], (V)nnode._values[nidx]);
+                } else {
+                    diff(EMPTY, nnode._nodes[index(nnode._nodeMap, bit)], cshift, visitor);
+                }
+            }
+        }
+
+        /**
+         * Creates a new node.
+         */
+        public Node (int dataMap, int nodeMap, int[] keys, Object[] values, Node[] nodes)
+        {
+            _dataMap = dataMap;
+            _nodeMap = nodeMap;
+            _keys = keys;
+            _values = values;
+            _nodes = nodes;
+        }
+
+        /**
+         * Returns the bitmap of all occupied positions in the node.
+         */
+        public int getBitmap ()
+        {
+            return _dataMap | _nodeMap;
+        }
+
+        /**
+         * Checks whether the subtree rooted at this node contains the specified key.
+         */
+        public boolean containsKey (int key, int shift)
+        {
+            Node node = this;
+            for (int bit = bit(key, shift); (node._nodeMap & bit) != 0;
+                    bit = bit(key, shift += BITS)) {
+                node = node._nodes[index(node._nodeMap, bit)];
+            }
+            int bit = bit(key, shift);
+            return (node._dataMap & bit) != 0 && node._keys[index(node._dataMap, bit)] == key;
+        }
+
+        /**
+         * Returns the value mapped to the specified key in the subtree rooted at this node.
+         */
+        public Object get (int key, int shift)
+        {
+            Node node = this;
+            for (int bit = bit(key, shift); (node._nodeMap & bit) != 0;
+                    bit = bit(key, shift += BITS)) {
+                node = node._nodes[index(node._nodeMap, bit)];
+            }
+            int bit = bit(key, shift);
+            if ((node._dataMap & bit) == 0) {
+                return null;
+            }
+            int idx = index(node._dataMap, bit);
+            return (node._keys[idx] == key) ? node._values[idx] : null;
+        }
+
+        /**
+         * Returns a node with the specified mapping added to this one.
+         */
+        public Node put (int key, Object value, int shift)
+        {
+            int bit = bit(key, shift);
+            if ((_dataMap & bit) != 0) {
+                int idx = index(_dataMap, bit);
+                int okey = _keys[idx];
+                if (okey == key) {
+                    if (_values[idx] == value) {
+                        return this;
+                    }
+                    Object[] values = _values.clone();
+                    values[idx] = value;
+                    return new Node(_dataMap, _nodeMap, _keys, values, _nodes);
+                }
+                // push both entries down into a new child
+                Node child = merge(okey, _values[idx], key, value, shift + BITS);
+                return new Node(_dataMap ^ bit, _nodeMap | bit, remove(_keys, idx),
+                    remove(_values, idx, new Object[_values.length - 1]),
+                    insert(_nodes, index(_nodeMap, bit), child, new Node[_nodes.length + 1]));
+            }
+            if ((_nodeMap & bit) != 0) {
+                int idx = index(_nodeMap, bit);
+                Node ochild = _nodes[idx], nchild = ochild.put(key, value, shift + BITS);
+                if (nchild == ochild) {
+                    return this;
+                }
+                Node[] nodes = _nodes.clone();
+                nodes[idx] = nchild;
+                return new Node(_dataMap, _nodeMap, _keys, _values, nodes);
+            }
+            int idx = index(_dataMap, bit);
+            return new Node(_dataMap | bit, _nodeMap, insert(_keys, idx, key),
+                insert(_values, idx, value, new Object[_values.length + 1]), _nodes);
+        }
+
+        /**
+         * Returns a node with the mapping for the specified key removed from this one.
+         */
+        public Node remove (int key, int shift)
+        {
+            int bit = bit(key, shift);
+            if ((_dataMap & bit) != 0) {
+                int idx = index(_dataMap, bit);
+                return (_keys[idx] != key) ? this : new Node(_dataMap ^ bit, _nodeMap,
+                    remove(_keys, idx), remove(_values, idx, new Object[_values.length - 1]),
+                    _nodes);
+            }
+            if ((_nodeMap & bit) == 0) {
+                return this;
+            }
+            int idx = index(_nodeMap, bit);
+            Node ochild = _nodes[idx], nchild = ochild.remove(key, shift + BITS);
+            if (nchild == ochild) {
+                return this;
+            }
+            if (nchild._nodeMap == 0 && nchild._keys.length == 1) {
+                // pull the remaining entry up into this node
+                int didx = index(_dataMap, bit);
+                return new Node(_dataMap | bit, _nodeMap ^ bit,
+                    insert(_keys, didx, nchild._keys[0]),
+                    insert(_values, didx, nchild._values[0], new Object[_values.length + 1]),
+                    remove(_nodes, idx, new Node[_nodes.length - 1]));
+            }
+            Node[] nodes = _nodes.clone();
+            nodes[idx] = nchild;
+            return new Node(_dataMap, _nodeMap, _keys, _values, nodes);
+        }
+
+        /**
+         * Creates a node containing the two specified (distinct) keys.
+         */
+        protected static Node merge (int key1, Object value1, int key2, Object value2, int shift)
+        {
+            int frag1 = (key1 >>> shift) & MASK, frag2 = (key2 >>> shift) & MASK;
+            if (frag1 == frag2) {
+                return new Node(0, 1 << frag1, EMPTY._keys, EMPTY._values,
+                    new Node[] { merge(key1, value1, key2, value2, shift + BITS) });
+            }
+            return (frag1 < frag2) ?
+                new Node((1 << frag1) | (1 << frag2), 0, new int[] { key1, key2 },
+                    new Object[] { value1, value2 }, EMPTY._nodes) :
+                new Node((1 << frag1) | (1 << frag2), 0, new int[] { key2, key1 },
+                    new Object[] { value2, value1 }, EMPTY._nodes);
+        }
+
+        /**
+         * Creates a node containing a single entry, for comparison against a child node.
+         */
+        protected static Node singleton (int key, Object value, int shift)
+        {
+            return new Node(bit(key, shift), 0, new int[] { key },
+                new Object[] { value }, EMPTY._nodes);
+        }
+
+        /**
+         * Returns the bit corresponding to the key at the specified level.
+         */
+        protected static int bit (int key, int shift)
+        {
+            return 1 << ((key >>> shift) & MASK);
+        }
+
+        /**
+         * Returns the index in the array corresponding to the bitmap of the specified bit.
+         */
+        protected static int index (int bitmap, int bit)
+        {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        /**
+         * Returns a copy of the array with the value inserted at the specified index.
+         */
+        protected static int[] insert (int[] array, int idx, int value)
+        {
+            int[] result = new int[array.length + 1];
+            System.arraycopy(array, 0, result, 0, idx);
+            result[idx] = value;
+            System.arraycopy(array, idx, result, idx + 1, array.length - idx);
+            return result;
+        }
+
+        /**
+         * Returns a copy of the array with the value at the specified index removed.
+         */
+        protected static int[] remove (int[] array, int idx)
+        {
+            int[] result = new int[array.length - 1];
+            System.arraycopy(array, 0, result, 0, idx);
+            System.arraycopy(array, idx + 1, result, idx, result.length - idx);
+            return result;
+        }
+
+        /**
+         * Populates the result array with the array and the value inserted at the specified
+         * index.
+         */
+        protected static <T> T[] insert (T[] array, int idx, T value, T[] result)
+        {
+            System.arraycopy(array, 0, result, 0, idx);
+            result[idx] = value;
+            System.arraycopy(array, idx, result, idx + 1, array.length - idx);
+            return result;
+        }
+
+        /**
+         * Populates the result array with the array minus the value at the specified index.
+         */
+        protected static <T> T[] remove (T[] array, int idx, T[] result)
+        {
+            System.arraycopy(array, 0, result, 0, idx);
+            System.arraycopy(array, idx + 1, result, idx, result.length - idx);
+            return result;
+        }
+
+        /** The bitmap of the positions holding inline entries. */
+        protected final int _dataMap;
+
+        /** The bitmap of the positions holding child nodes. */
+        protected final int _nodeMap;
+
+        /** The keys of the inline entries. */
+        protected final int[] _keys;
+
+        /** The values of the inline entries. */
+        protected final Object[] _values;
+
+        /** The child nodes. */
+        protected final Node[] _nodes;
+    }
+
+    /** The root of the trie. */
+    protected final Node _root;
+
+    /** The number of mappings in the map. */
+    protected final int _size;
+
+    /** The number of key bits consumed at each level of the trie. */
+    protected static final int BITS = 5;
+
+    /** The mask for the key bits at each level. */
+    protected static final int MASK = (1 << BITS) - 1;
+
+    /** The maximum depth of the trie. */
+    protected static final int MAX_DEPTH = (32 + BITS - 1) / BITS;
+}
@@ -0,0 +1,302 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+
+import junit.framework.TestCase;
+
+import com.samskivert.util.RandomUtil;
+
+/**
+ * Tests the {@link ConfigIndex} format and the lazy loading of indexed {@link ConfigGroup}s.
+ */
+public class ConfigIndexTest extends TestCase
+{
+    public ConfigIndexTest (String name)
+    {
+        super(name);
+    }
+
+    @Override
+    public void setUp ()
+    {
+        // use a fixed seed so that our results are reproducible
+        RandomUtil.rand.setSeed(1199325877849L);
+    }
+
+    public void testRoundTrip ()
+        throws IOException
+    {
+        TestConfig[] configs = createConfigs(100);
+        ConfigIndex index = new ConfigIndex(new ByteArrayInputStream(write(configs)));
+
+        // the names come back sorted
+        List<String> names = index.getNames();
+        assertEquals(configs.length, names.size());
+        for (int ii = 1; ii < names.size(); ii++) {
+            assertTrue(names.get(ii - 1).compareTo(names.get(ii)) < 0);
+        }
+
+        // each record may be read on its own, and only once
+        for (int ii = configs.length - 1; ii >= 0; ii -= 2) {
+            String name = configs[ii].getName();
+            assertTrue(index.contains(name));
+            assertEquals(configs[ii], index.read(name, false));
+            assertFalse(index.contains(name));
+            assertNull(index.read(name, false));
+        }
+        assertNull(index.read("missing", false));
+
+        // the rest may be dropped without reading
+        for (String name : index.getNames()) {
+            assertTrue(index.remove(name));
+            assertFalse(index.remove(name));
+        }
+        assertTrue(index.isEmpty());
+    }
+
+    public void testInvalid ()
+        throws IOException
+    {
+        byte[] data = write(createConfigs(10));
+        try {
+            new ConfigIndex(new ByteArrayInputStream(data, 1, data.length - 1));
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        try {
+            new ConfigIndex(new ByteArrayInputStream(data, 0, data.length - 1));
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testLazyGroup ()
+        throws IOException
+    {
+        TestConfig[] configs = createConfigs(50);
+        TestGroup group = new TestGroup(write(configs));
+        group.init(new ConfigManager(null, null, "config/"));
+        assertTrue(group._configsByName.isEmpty());
+
+        // configurations are read and initialized on request
+        TestConfig config = group.getConfig(configs[7].getName());
+        assertEquals(configs[7], config);
+        assertSame(config, group.getConfig(configs[7].getName()));
+        assertNotNull(config.getConfigManager());
+        assertEquals(1, group._configsByName.size());
+        assertNull(group.getConfig("missing"));
+
+        // added configurations replace those in the index, removed ones stay removed
+        TestConfig added = new TestConfig();
+        added.setName(configs[3].getName());
+        group.addConfig(added);
+        group.removeConfig(group.getConfig(configs[4].getName()));
+
+        // iteration reads the rest
+        List<TestConfig> all = Lists.newArrayList(group.getConfigs());
+        assertEquals(configs.length - 1, all.size());
+        assertNull(group._index);
+        assertSame(added, group.getConfig(configs[3].getName()));
+        assertNull(group.getConfig(configs[4].getName()));
+        for (TestConfig oconfig : configs) {
+            if (oconfig != configs[3] && oconfig != configs[4]) {
+                assertEquals(oconfig, group.getConfig(oconfig.getName()));
+            }
+        }
+
+        // saving and reloading gives the same configurations
+        File file = File.createTempFile("test", ConfigIndex.EXTENSION);
+        try {
+            group.saveIndexed(file);
+            FileInputStream in = new FileInputStream(file);
+            TestGroup ngroup;
+            try {
+                ngroup = new TestGroup(ByteStreams.toByteArray(in));
+            } finally {
+                in.close();
+            }
+            ngroup.init(new ConfigManager(null, null, "config/"));
+            assertEquals(all.size(), Lists.newArrayList(ngroup.getRawConfigs()).size());
+            for (TestConfig oconfig : all) {
+                assertEquals(oconfig, ngroup.getConfig(oconfig.getName()));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testConcurrentReads ()
+        throws Exception
+    {
+        TestConfig[] configs = createConfigs(4);
+        byte[] data = write(configs);
+        for (int ii = 0; ii < 20; ii++) {
+            // read all but the last configuration
+            TestGroup group = new TestGroup(data);
+            group.init(new ConfigManager(null, null, "config/"));
+            for (int jj = 1; jj < configs.length; jj++) {
+                assertNotNull(group.getConfig(configs[jj].getName()));
+            }
+
+            // slow down initialization so that the later threads arrive during it
+            group._initDelay = 20L;
+            final TestGroup fgroup = group;
+            final String name = configs[0].getName();
+            final CountDownLatch start = new CountDownLatch(1);
+            final TestConfig[] results = new TestConfig[8];
+            final boolean[] initialized = new boolean[results.length];
+            final Throwable[] errors = new Throwable[results.length];
+            Thread[] threads = new Thread[results.length];
+            for (int jj = 0; jj < threads.length; jj++) {
+                final int idx = jj;
+                threads[jj] = new Thread() {
+                    @Override public void run () {
+                        try {
+                            start.await();
+                            Thread.sleep(idx * 2L);
+                            results[idx] = fgroup.getConfig(name);
+                            initialized[idx] = (results[idx].getConfigManager() != null);
+                        } catch (Throwable t) {
+                            errors[idx] = t;
+                        }
+                    }
+                };
+                threads[jj].start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            // every thread gets the same, fully initialized configuration
+            for (int jj = 0; jj < results.length; jj++) {
+                assertNull(errors[jj]);
+                assertEquals(configs[0], results[jj]);
+                assertSame(results[0], results[jj]);
+                assertTrue(initialized[jj]);
+            }
+            assertNull(group._index);
+        }
+    }
+
+    /**
+     * Creates an array of randomized configs in no particular order.
+     */
+    protected static TestConfig[] createConfigs (int count)
+    {
+        TestConfig[] configs = new TestConfig[count];
+        for (int ii = 0; ii < count; ii++) {
+            TestConfig config = configs[ii] = new TestConfig();
+            config.setName("config/" + Integer.toString(RandomUtil.getInt(Integer.MAX_VALUE), 36) +
+                "/" + ii);
+            config.value = RandomUtil.rand.nextInt();
+            config.values = new float[RandomUtil.getInt(10)];
+            for (int jj = 0; jj < config.values.length; jj++) {
+                config.values[jj] = RandomUtil.rand.nextFloat();
+            }
+            config.label = RandomUtil.rand.nextBoolean() ? null : config.getName();
+        }
+        return configs;
+    }
+
+    /**
+     * Writes the supplied configs in the indexed format.
+     */
+    protected static byte[] write (TestConfig[] configs)
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ConfigIndex.write(configs, null, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * A simple config.
+     */
+    public static class TestConfig extends ManagedConfig
+    {
+        /** A value. */
+        public int value;
+
+        /** Some more values. */
+        public float[] values = new float[0];
+
+        /** A label, or null. */
+        public String label;
+    }
+
+    /**
+     * A group that reads its index from memory rather than through the resource manager.
+     */
+    protected static class TestGroup extends ConfigGroup<TestConfig>
+    {
+        public TestGroup (byte[] data)
+        {
+            super(TestConfig.class);
+            _data = data;
+        }
+
+        @Override
+        protected InputStream getConfigStream (String path)
+        {
+            return path.endsWith(ConfigIndex.EXTENSION) ? new ByteArrayInputStream(_data) : null;
+        }
+
+        @Override
+        protected void initConfig (ManagedConfig config)
+        {
+            if (_initDelay > 0L) {
+                try {
+                    Thread.sleep(_initDelay);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            super.initConfig(config);
+        }
+
+        /** The indexed group data. */
+        protected byte[] _data;
+
+        /** The time to spend initializing each configuration, in milliseconds. */
+        protected long _initDelay;
+    }
+}
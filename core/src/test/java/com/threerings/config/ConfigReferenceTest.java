@@ -0,0 +1,148 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.config;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the interning of {@link ConfigReference}s and {@link ArgumentMap}s.
+ */
+public class ConfigReferenceTest extends TestCase
+{
+    public ConfigReferenceTest (String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Verifies that equal references intern to the same frozen instance.
+     */
+    public void testIntern ()
+    {
+        ConfigReference<TestConfig> r1 = createReference(), r2 = createReference();
+        assertNotSame(r1, r2);
+        assertEquals(r1, r2);
+        assertEquals(r1.hashCode(), r2.hashCode());
+        assertFalse(r1.isFrozen());
+
+        ConfigReference<TestConfig> c1 = r1.intern(), c2 = r2.intern();
+        assertSame(c1, c2);
+        assertSame(c1, c1.intern());
+        assertTrue(c1.isFrozen());
+        assertTrue(c1.getArguments().isFrozen());
+
+        // the nested reference is interned along with its container
+        assertSame(createReference().intern().getArguments().get("nested"),
+            c1.getArguments().get("nested"));
+
+        // interned references still equal (and hash like) their uninterned counterparts
+        ConfigReference<TestConfig> fresh = createReference();
+        assertEquals(fresh, c1);
+        assertEquals(c1, fresh);
+        assertEquals(fresh.hashCode(), c1.hashCode());
+        fresh.getArguments().put("count", 4);
+        assertFalse(fresh.equals(c1));
+        assertNotSame(c1, fresh.intern());
+    }
+
+    /**
+     * Verifies that interned references and their arguments can't be modified, but that their
+     * clones can.
+     */
+    public void testImmutability ()
+    {
+        ConfigReference<TestConfig> canon = createReference().intern();
+        try {
+            canon.getArguments().put("count", 4);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            canon.getArguments().remove("count");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        @SuppressWarnings("unchecked")
+        ConfigReference<TestConfig> nested =
+            (ConfigReference<TestConfig>)canon.getArguments().get("nested");
+        try {
+            nested.getArguments().put("count", 4);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        // clones are deep and mutable
+        ConfigReference<TestConfig> copy = canon.clone();
+        assertFalse(copy.isFrozen());
+        assertEquals(canon, copy);
+        copy.getArguments().put("count", 4);
+        @SuppressWarnings("unchecked")
+        ConfigReference<TestConfig> cnested =
+            (ConfigReference<TestConfig>)copy.getArguments().get("nested");
+        assertNotSame(nested, cnested);
+        cnested.getArguments().put("count", 5);
+        assertEquals(createReference(), canon);
+    }
+
+    /**
+     * Verifies that interning a clone leaves the original (and the references it contains)
+     * modifiable, which is how references owned by others must be interned.
+     */
+    public void testInternCopy ()
+    {
+        ConfigReference<TestConfig> ref = createReference();
+        ConfigReference<TestConfig> canon = ref.clone().intern();
+        assertFalse(ref.isFrozen());
+        assertFalse(((ConfigReference<?>)ref.getArguments().get("nested")).isFrozen());
+        ref.getArguments().put("count", 4);
+        assertEquals(createReference(), canon);
+
+        ArgumentMap args = createReference().getArguments();
+        ArgumentMap cargs = args.clone().intern();
+        assertFalse(args.isFrozen());
+        assertFalse(((ConfigReference<?>)args.get("nested")).isFrozen());
+        assertEquals(args, cargs);
+    }
+
+    /**
+     * Creates a reference with a nested reference among its arguments.
+     */
+    protected static ConfigReference<TestConfig> createReference ()
+    {
+        return new ConfigReference<TestConfig>("outer", "count", 3,
+            "nested", new ConfigReference<TestConfig>("inner", "count", 2));
+    }
+
+    /**
+     * A trivial config class.
+     */
+    protected static class TestConfig extends ManagedConfig
+    {
+    }
+}
@@ -0,0 +1,355 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.export;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Tests the {@link StreamingXMLExporter} and {@link StreamingXMLImporter} against the DOM-based
+ * {@link XMLExporter} and {@link XMLImporter}.
+ */
+public class StreamingXMLTest extends TestCase
+{
+    public StreamingXMLTest (String name)
+    {
+        super(name);
+    }
+
+    public void testRoundTrip ()
+        throws IOException
+    {
+        // use a fixed seed so that our results are reproducible
+        Random random = new Random(1199325877849L);
+        for (int ii = 0; ii < 50; ii++) {
+            Node node = createNode(random, null, new ArrayList<Node>(), 4);
+
+            // the streaming exporter should produce exactly the same output
+            byte[] bytes = exportDOM(node);
+            assertEquals(new String(bytes, Charsets.UTF_8),
+                new String(exportStreaming(node), Charsets.UTF_8));
+
+            // and both importers should read back the same graph
+            Object domValue = new XMLImporter(new ByteArrayInputStream(bytes)).readObject();
+            Object streamingValue =
+                new StreamingXMLImporter(new ByteArrayInputStream(bytes)).readObject();
+            assertEquals(new String(exportDOM(domValue), Charsets.UTF_8),
+                new String(exportDOM(streamingValue), Charsets.UTF_8));
+        }
+    }
+
+    public void testEscaping ()
+        throws IOException
+    {
+        Random random = new Random(1199325877849L);
+        for (int ii = 0; ii < 200; ii++) {
+            // the output should match for any characters that the serializer accepts (which
+            // excludes high surrogates followed by anything but low ones)
+            char[] chars = new char[random.nextInt(16)];
+            for (int jj = 0; jj < chars.length; jj++) {
+                chars[jj] = (jj > 0 && Character.isHighSurrogate(chars[jj - 1])) ?
+                    (char)(Character.MIN_LOW_SURROGATE + random.nextInt(0x400)) :
+                    (char)random.nextInt(random.nextBoolean() ? 0x100 : 0x10000);
+            }
+            Node node = new Node();
+            node.string = new String(chars);
+            assertEquals(new String(exportDOM(node), Charsets.UTF_8),
+                new String(exportStreaming(node), Charsets.UTF_8));
+
+            // and valid ones should survive the round trip
+            node.string = createString(random);
+            Node result = (Node)new StreamingXMLImporter(
+                new ByteArrayInputStream(exportStreaming(node))).readObject();
+            assertEquals(node.string, result.string);
+        }
+    }
+
+    public void testFieldOrder ()
+        throws IOException
+    {
+        // fields out of order, comments, and unknown elements should be handled as in the DOM
+        String xml =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+            "<java class=\"com.threerings.export.XMLImporter\" version=\"1.0\">\n" +
+            "<object class=\"com.threerings.export.StreamingXMLTest$Node\">" +
+            "<!-- comment --><unknown><intValue>5</intValue></unknown>" +
+            "<custom><a>1</a><b>2</b></custom>" +
+            "<string><!--empty--></string>" +
+            "<list><entry class=\"java.lang.Integer\">3</entry><other/>" +
+            "<entry class=\"java.lang.String\">four</entry></list>" +
+            "<intValue><!-- comment -->6<!-- comment -->7</intValue>" +
+            "<charValue>x</charValue>" +
+            "</object>\n" +
+            "</java>";
+        byte[] bytes = xml.getBytes(Charsets.UTF_8);
+        Node domValue = (Node)new XMLImporter(new ByteArrayInputStream(bytes)).readObject();
+        Node streamingValue =
+            (Node)new StreamingXMLImporter(new ByteArrayInputStream(bytes)).readObject();
+        assertEquals(6, streamingValue.intValue);
+        assertEquals(new String(exportDOM(domValue), Charsets.UTF_8),
+            new String(exportDOM(streamingValue), Charsets.UTF_8));
+    }
+
+    public void testMultipleObjects ()
+        throws IOException
+    {
+        Random random = new Random(1199325877849L);
+        List<Node> nodes = new ArrayList<Node>();
+        for (int ii = 0; ii < 3; ii++) {
+            nodes.add(createNode(random, null, new ArrayList<Node>(), 3));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingXMLExporter exporter = new StreamingXMLExporter(out);
+        for (Node node : nodes) {
+            exporter.writeObject(node);
+        }
+        exporter.close();
+
+        StreamingXMLImporter importer =
+            new StreamingXMLImporter(new ByteArrayInputStream(out.toByteArray()));
+        for (Node node : nodes) {
+            assertEquals(new String(exportDOM(node), Charsets.UTF_8),
+                new String(exportDOM(importer.readObject()), Charsets.UTF_8));
+        }
+        try {
+            importer.readObject();
+            fail();
+        } catch (EOFException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Exports an object using the DOM exporter.
+     */
+    protected static byte[] exportDOM (Object object)
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLExporter exporter = new XMLExporter(out);
+        exporter.writeObject(object);
+        exporter.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Exports an object using the streaming exporter.
+     */
+    protected static byte[] exportStreaming (Object object)
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingXMLExporter exporter = new StreamingXMLExporter(out);
+        exporter.writeObject(object);
+        exporter.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Creates a random graph of nodes.
+     *
+     * @param nodes the nodes created so far, which may be referenced by the new ones.
+     */
+    protected static Node createNode (Random random, Node parent, List<Node> nodes, int depth)
+    {
+        Node node = new Node();
+        nodes.add(node);
+        if (random.nextBoolean()) {
+            node.intValue = random.nextInt();
+        }
+        if (random.nextBoolean()) {
+            node.floatValue = random.nextFloat();
+        }
+        if (random.nextBoolean()) {
+            node.charValue = (char)(0x20 + random.nextInt(0x60));
+        }
+        if (random.nextBoolean()) {
+            node.string = random.nextBoolean() ? "" : createString(random);
+        }
+        if (random.nextBoolean()) {
+            node.ints = new int[random.nextInt(4)];
+            for (int ii = 0; ii < node.ints.length; ii++) {
+                node.ints[ii] = random.nextInt();
+            }
+        }
+        if (random.nextBoolean()) {
+            node.color = Color.values()[random.nextInt(Color.values().length)];
+            node.colors = EnumSet.noneOf(Color.class);
+            for (Color color : Color.values()) {
+                if (random.nextBoolean()) {
+                    node.colors.add(color);
+                }
+            }
+        }
+        if (random.nextBoolean()) {
+            node.type = random.nextBoolean() ? String.class : Node.class;
+            node.file = new File("dir", createString(random));
+        }
+        node.parent = parent;
+        if (random.nextBoolean()) {
+            node.shared = nodes.get(random.nextInt(nodes.size()));
+        }
+        if (random.nextBoolean()) {
+            // an array containing itself must be created before its entries are read
+            node.array = new Object[1 + random.nextInt(3)];
+            node.array[0] = random.nextBoolean() ? node.array : node;
+        }
+        if (random.nextBoolean()) {
+            node.inner = node.new Inner();
+            node.inner.value = random.nextInt();
+        }
+        if (random.nextBoolean()) {
+            node.custom = new Custom();
+            node.custom.a = random.nextInt();
+            node.custom.b = random.nextInt();
+        }
+        if (random.nextBoolean()) {
+            node.map = new HashMap<String, Object>();
+            node.map.put("node", nodes.get(random.nextInt(nodes.size())));
+            node.map.put("null", null);
+            node.multiset = HashMultiset.create();
+            node.multiset.add("one");
+            node.multiset.add("two", 2);
+            node.immutables = ImmutableList.<Object>of(
+                ImmutableSet.of(1, 2), ImmutableMap.of("key", "value"),
+                ImmutableMultiset.of("a", "a", "b"));
+        }
+        if (depth > 1) {
+            node.list = new ArrayList<Object>();
+            for (int ii = random.nextInt(4); ii > 0; ii--) {
+                node.list.add(createNode(random, node, nodes, depth - 1));
+            }
+            if (random.nextBoolean()) {
+                node.list.add(null);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Creates a random, nonempty string of characters valid in XML.
+     */
+    protected static String createString (Random random)
+    {
+        StringBuilder buf = new StringBuilder();
+        for (int ii = 1 + random.nextInt(8); ii > 0; ii--) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    buf.append("\t\n\r <>&\"'".charAt(random.nextInt(9)));
+                    break;
+                case 1:
+                    buf.append((char)(0x20 + random.nextInt(0x60)));
+                    break;
+                case 2:
+                    buf.append((char)(0xA0 + random.nextInt(0xD800 - 0xA0)));
+                    break;
+                case 3:
+                    buf.appendCodePoint(0x10000 + random.nextInt(0x100000));
+                    break;
+            }
+        }
+        return buf.toString();
+    }
+
+    /** An enumeration to export. */
+    public enum Color { RED, GREEN, BLUE };
+
+    /**
+     * An object with fields of all sorts.
+     */
+    public static class Node
+        implements Exportable
+    {
+        public int intValue;
+        public float floatValue;
+        public char charValue;
+        public String string;
+        public int[] ints;
+        public Color color;
+        public EnumSet<Color> colors;
+        public Class<?> type;
+        public File file;
+        public Node parent;
+        public Node shared;
+        public Object[] array;
+        public Inner inner;
+        public Custom custom;
+        public HashMap<String, Object> map;
+        public HashMultiset<String> multiset;
+        public ImmutableList<Object> immutables;
+        public ArrayList<Object> list;
+
+        /**
+         * An inner class, whose instances must be created with a reference to the outer one.
+         */
+        public class Inner
+            implements Exportable
+        {
+            public int value;
+        }
+    }
+
+    /**
+     * An object that reads and writes its fields in different orders.
+     */
+    public static class Custom
+        implements Exportable
+    {
+        public int a, b;
+
+        public void writeFields (Exporter out)
+            throws IOException
+        {
+            out.write("b", b);
+            out.write("a", a);
+        }
+
+        public void readFields (Importer in)
+            throws IOException
+        {
+            a = in.read("a", 0);
+            b = in.read("b", 0);
+        }
+    }
+}
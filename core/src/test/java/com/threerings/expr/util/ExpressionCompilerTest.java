@@ -0,0 +1,367 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.expr.util;
+
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+
+import com.threerings.expr.DynamicScope;
+import com.threerings.expr.FloatExpression;
+import com.threerings.expr.FloatExpression.Evaluator;
+import com.threerings.expr.MutableFloat;
+import com.threerings.expr.MutableLong;
+import com.threerings.expr.Scope;
+import com.threerings.expr.Variable;
+
+/**
+ * Checks that the evaluators created by {@link ExpressionCompiler} agree with the interpreted
+ * ones.
+ */
+public class ExpressionCompilerTest extends TestCase
+{
+    public ExpressionCompilerTest (String name)
+    {
+        super(name);
+    }
+
+    @Override
+    public void setUp ()
+    {
+        ExpressionCompiler.setEnabled(true);
+        _scope = new DynamicScope("test");
+        _scope.put("a", _a = new MutableFloat(1.5f));
+        _scope.put("b", _b = new MutableFloat(-0.25f));
+        _scope.put("v", Variable.newInstance(3f));
+        _scope.put(Scope.NOW, _now = new MutableLong(10000L));
+        _scope.put(Scope.EPOCH, new MutableLong(2500L));
+        _calls.clear();
+    }
+
+    public void testConstants ()
+    {
+        assertEquivalent(constant(2.5f));
+        assertEquivalent(binary(new FloatExpression.Add(), constant(1f), constant(2f)));
+        assertEquivalent(unary(new FloatExpression.Sin(),
+            binary(new FloatExpression.Multiply(), constant(0.5f), constant(3f))));
+        assertEquivalent(binary(new FloatExpression.Divide(), constant(1f), constant(0f)));
+        assertEquivalent(binary(new FloatExpression.Remainder(), constant(1f), constant(0f)));
+    }
+
+    public void testVariables ()
+    {
+        FloatExpression.Reference missing = reference("missing");
+        missing.defvalue = 7.25f;
+        assertEquivalent(missing);
+        assertEquivalent(reference("v"));
+        assertEquivalent(binary(new FloatExpression.Subtract(), reference("a"), reference("v")));
+
+        // the compiled evaluators must see later changes to the bound references
+        FloatExpression expr = binary(new FloatExpression.Multiply(),
+            reference("a"), binary(new FloatExpression.Add(), reference("b"), constant(1f)));
+        Evaluator compiled = ExpressionCompiler.createEvaluator(expr, _scope);
+        Evaluator interpreted = expr.createEvaluator(_scope);
+        for (int ii = 0; ii < 10; ii++) {
+            _a.value = ii * 0.75f - 2f;
+            _b.value = -ii * 1.5f;
+            assertSame(interpreted.evaluate(), compiled.evaluate());
+        }
+
+        // as must the clock
+        FloatExpression clock = binary(new FloatExpression.Add(),
+            new FloatExpression.Clock(), reference("a"));
+        compiled = ExpressionCompiler.createEvaluator(clock, _scope);
+        interpreted = clock.createEvaluator(_scope);
+        for (int ii = 0; ii < 10; ii++) {
+            _now.value += 1234L;
+            assertSame(interpreted.evaluate(), compiled.evaluate());
+        }
+    }
+
+    public void testOperators ()
+    {
+        float[] values = { 0f, -0f, 1f, -1f, 0.3f, -2.75f, 17.5f, 1e-6f,
+            Float.MAX_VALUE, Float.POSITIVE_INFINITY, Float.NaN };
+        for (FloatExpression.UnaryOperation op : createUnaryOperations()) {
+            op.operand = reference("a");
+            for (float value : values) {
+                _a.value = value;
+                assertEquivalent(op);
+            }
+        }
+        for (FloatExpression.BinaryOperation op : createBinaryOperations()) {
+            op.firstOperand = reference("a");
+            op.secondOperand = reference("b");
+            for (float first : values) {
+                for (float second : values) {
+                    _a.value = first;
+                    _b.value = second;
+                    assertEquivalent(op);
+                }
+            }
+        }
+    }
+
+    public void testNested ()
+    {
+        // use a fixed seed so that our results are reproducible
+        Random random = new Random(1199325877849L);
+        for (int ii = 0; ii < 500; ii++) {
+            FloatExpression expr = createRandomExpression(random, 6);
+            Evaluator compiled = ExpressionCompiler.createEvaluator(expr, _scope);
+            Evaluator interpreted = expr.createEvaluator(_scope);
+            for (int jj = 0; jj < 5; jj++) {
+                _a.value = random.nextFloat() * 20f - 10f;
+                _b.value = random.nextFloat() * 4f - 2f;
+                _now.value += random.nextInt(5000);
+                assertSame(interpreted.evaluate(), compiled.evaluate());
+            }
+        }
+    }
+
+    public void testParsed ()
+    {
+        String[] expressions = {
+            "1 + 2 * 3", "a * (b + 2) / 4", "-a % 3 - b", "pow(a, 2) + noise2(a, b)",
+            "clock() * 0.5 + v", "a / (b - b)", "missing * 2" };
+        for (String expression : expressions) {
+            FloatExpression.Parsed parsed = new FloatExpression.Parsed();
+            parsed.expression = expression;
+            assertEquivalent(parsed);
+        }
+    }
+
+    public void testEmbedded ()
+    {
+        // float expressions have no conditional or boolean operators, so nothing is ever
+        // short-circuited: every operand is evaluated exactly once and in order, even when
+        // a constant operand determines the result.  embedded (interpreted) subtrees must
+        // observe the same sequence of calls as in the interpreter
+        FloatExpression expr = binary(new FloatExpression.Add(),
+            binary(new FloatExpression.Multiply(), constant(0f), new Counted("x", 1f)),
+            binary(new FloatExpression.Subtract(), new Counted("y", 2f),
+                unary(new FloatExpression.Negate(), new Counted("z", 3f))));
+        Evaluator compiled = ExpressionCompiler.createEvaluator(expr, _scope);
+        Evaluator interpreted = expr.createEvaluator(_scope);
+
+        for (int ii = 0; ii < 3; ii++) {
+            _calls.clear();
+            float expected = interpreted.evaluate();
+            List<String> icalls = Lists.newArrayList(_calls);
+            _calls.clear();
+            assertSame(expected, compiled.evaluate());
+            assertEquals(icalls, _calls);
+        }
+        assertEquals(Lists.newArrayList("x", "y", "z"), _calls);
+
+        // an infinite operand multiplied by a constant zero still yields NaN
+        FloatExpression nan = binary(new FloatExpression.Multiply(),
+            constant(0f), new Counted("w", Float.POSITIVE_INFINITY));
+        assertEquivalent(nan);
+        assertTrue(Float.isNaN(ExpressionCompiler.createEvaluator(nan, _scope).evaluate()));
+    }
+
+    public void testShapes ()
+    {
+        // expressions with the same shape share a generated class
+        FloatExpression first = binary(new FloatExpression.Pow(), reference("a"), constant(2f));
+        FloatExpression second = binary(new FloatExpression.Pow(), reference("b"), constant(3f));
+        Evaluator eval1 = ExpressionCompiler.createEvaluator(first, _scope);
+        int count = ExpressionCompiler.getCompiledCount();
+        Evaluator eval2 = ExpressionCompiler.createEvaluator(second, _scope);
+        assertEquals(count, ExpressionCompiler.getCompiledCount());
+        assertSame(eval1.getClass(), eval2.getClass());
+        assertSame(first.createEvaluator(_scope).evaluate(), eval1.evaluate());
+        assertSame(second.createEvaluator(_scope).evaluate(), eval2.evaluate());
+
+        // disabling compilation falls back to the interpreter
+        ExpressionCompiler.setEnabled(false);
+        try {
+            assertNotSame(eval1.getClass(),
+                ExpressionCompiler.createEvaluator(first, _scope).getClass());
+        } finally {
+            ExpressionCompiler.setEnabled(true);
+        }
+    }
+
+    /**
+     * Verifies that the compiled and interpreted evaluators of the supplied expression produce
+     * the same result.
+     */
+    protected void assertEquivalent (FloatExpression expr)
+    {
+        assertSame(expr.createEvaluator(_scope).evaluate(),
+            ExpressionCompiler.createEvaluator(expr, _scope).evaluate());
+    }
+
+    /**
+     * Asserts that two floats are identical (treating all NaNs as equal, but distinguishing
+     * between positive and negative zero).
+     */
+    protected static void assertSame (float expected, float actual)
+    {
+        if (Float.compare(expected, actual) != 0) {
+            fail("Expected " + expected + ", got " + actual);
+        }
+    }
+
+    /**
+     * Creates a random expression tree.
+     */
+    protected FloatExpression createRandomExpression (Random random, int depth)
+    {
+        switch (depth == 0 ? random.nextInt(3) : random.nextInt(8)) {
+            case 0:
+                return constant(random.nextFloat() * 8f - 4f);
+            case 1:
+                return reference(REFERENCES[random.nextInt(REFERENCES.length)]);
+            case 2:
+                return (random.nextInt(4) == 0) ? new FloatExpression.Clock() :
+                    new Counted("c", random.nextFloat());
+            case 3: case 4: {
+                List<FloatExpression.UnaryOperation> ops = createUnaryOperations();
+                return unary(ops.get(random.nextInt(ops.size())),
+                    createRandomExpression(random, depth - 1));
+            }
+            default: {
+                List<FloatExpression.BinaryOperation> ops = createBinaryOperations();
+                return binary(ops.get(random.nextInt(ops.size())),
+                    createRandomExpression(random, depth - 1),
+                    createRandomExpression(random, depth - 1));
+            }
+        }
+    }
+
+    /**
+     * Creates a constant expression.
+     */
+    protected static FloatExpression.Constant constant (float value)
+    {
+        return new FloatExpression.Constant(value);
+    }
+
+    /**
+     * Creates a reference expression.
+     */
+    protected static FloatExpression.Reference reference (String name)
+    {
+        FloatExpression.Reference ref = new FloatExpression.Reference();
+        ref.name = name;
+        return ref;
+    }
+
+    /**
+     * Initializes a unary operation.
+     */
+    protected static FloatExpression unary (
+        FloatExpression.UnaryOperation op, FloatExpression operand)
+    {
+        op.operand = operand;
+        return op;
+    }
+
+    /**
+     * Initializes a binary operation.
+     */
+    protected static FloatExpression binary (
+        FloatExpression.BinaryOperation op, FloatExpression first, FloatExpression second)
+    {
+        op.firstOperand = first;
+        op.secondOperand = second;
+        return op;
+    }
+
+    /**
+     * Creates an instance of each unary operation.
+     */
+    protected static List<FloatExpression.UnaryOperation> createUnaryOperations ()
+    {
+        return Lists.<FloatExpression.UnaryOperation>newArrayList(
+            new FloatExpression.Negate(), new FloatExpression.Exp(),
+            new FloatExpression.Sin(), new FloatExpression.Cos(), new FloatExpression.Tan(),
+            new FloatExpression.Square(), new FloatExpression.Triangle(),
+            new FloatExpression.Ramp(), new FloatExpression.Saw(), new FloatExpression.Noise1());
+    }
+
+    /**
+     * Creates an instance of each binary operation.
+     */
+    protected static List<FloatExpression.BinaryOperation> createBinaryOperations ()
+    {
+        return Lists.<FloatExpression.BinaryOperation>newArrayList(
+            new FloatExpression.Add(), new FloatExpression.Subtract(),
+            new FloatExpression.Multiply(), new FloatExpression.Divide(),
+            new FloatExpression.Remainder(), new FloatExpression.Pow(),
+            new FloatExpression.Noise2());
+    }
+
+    /**
+     * An expression type unknown to the compiler that records its evaluations.
+     */
+    protected class Counted extends FloatExpression
+    {
+        public Counted (String name, float value)
+        {
+            _name = name;
+            _value = value;
+        }
+
+        @Override
+        public Evaluator createEvaluator (Scope scope)
+        {
+            return new Evaluator() {
+                public float evaluate () {
+                    _calls.add(_name);
+                    return _value;
+                }
+            };
+        }
+
+        /** The name to record. */
+        protected String _name;
+
+        /** The value to return. */
+        protected float _value;
+    }
+
+    /** The scope in which we evaluate. */
+    protected DynamicScope _scope;
+
+    /** The mutable references bound in the scope. */
+    protected MutableFloat _a, _b;
+
+    /** The current time. */
+    protected MutableLong _now;
+
+    /** The names of the embedded evaluators called, in order. */
+    protected List<String> _calls = Lists.newArrayList();
+
+    /** The names available to random references. */
+    protected static final String[] REFERENCES = { "a", "b", "v", "missing" };
+}
@@ -0,0 +1,216 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.renderer;
+
+import java.util.List;
+
+import org.lwjgl.opengl.GL11;
+
+import junit.framework.TestCase;
+
+import com.threerings.opengl.renderer.QuadBatch.RecordingBackend;
+
+/**
+ * Tests the conditions under which the {@link QuadBatch} draws its pending quads.
+ */
+public class QuadBatchTest extends TestCase
+{
+    public QuadBatchTest (String name)
+    {
+        super(name);
+    }
+
+    @Override
+    public void setUp ()
+    {
+        _backend = new RecordingBackend(true);
+        _batch = new QuadBatch(_backend, CAPACITY);
+    }
+
+    /**
+     * Verifies that runs of quads are broken when the texture units change.
+     */
+    public void testTextureChange ()
+    {
+        TextureUnit[] units1 = { new TextureUnit() }, units2 = { new TextureUnit() };
+        addQuads(null, 2);
+        addQuads(units1, 3);
+        addQuads(units2, 1);
+        addQuads(units1, 2);
+        assertEquals(3, _backend.getDrawCount());
+        _batch.flush();
+
+        List<RecordingBackend.Draw> draws = _backend.getDraws();
+        assertEquals(4, draws.size());
+        assertDraw(draws.get(0), null, 2);
+        assertDraw(draws.get(1), units1, 3);
+        assertDraw(draws.get(2), units2, 1);
+        assertDraw(draws.get(3), units1, 2);
+
+        // flushing an empty batch draws nothing
+        _batch.flush();
+        assertEquals(4, _backend.getDrawCount());
+        assertTrue(_batch.isEmpty());
+    }
+
+    /**
+     * Verifies that the batch draws when it fills up.
+     */
+    public void testCapacity ()
+    {
+        addQuads(null, CAPACITY);
+        assertEquals(0, _backend.getDrawCount());
+        addQuads(null, CAPACITY + 2);
+        assertEquals(2, _backend.getDrawCount());
+        _batch.flush();
+        assertEquals(3, _backend.getDrawCount());
+        assertEquals(CAPACITY * 2 + 2, _backend.getQuadCount());
+        assertEquals(2, _backend.getDraws().get(2).quads);
+    }
+
+    /**
+     * Verifies that tracked translations don't break runs and are applied to the quads.
+     */
+    public void testTranslation ()
+    {
+        _batch.translate(5f, 5f);
+        _batch.add(0f, 0f, 2f, 2f, 1f, 1f, 1f, 1f);
+        _batch.translate(10f, 0f);
+        _batch.add(0f, 0f, 2f, 2f, 1f, 1f, 1f, 1f);
+        _batch.flush();
+        assertEquals(1, _backend.getDrawCount());
+
+        // the vertices are relative to the modelview matrix at the time of the draw
+        float[] data = _backend.getDraws().get(0).data;
+        assertEquals(-10f, data[0], 0f);
+        assertEquals(0f, data[1], 0f);
+        assertEquals(0f, data[QuadBatch.QUAD_SIZE], 0f);
+        assertEquals(0f, data[QuadBatch.QUAD_SIZE + 1], 0f);
+    }
+
+    /**
+     * Verifies that pushing and popping transforms draws the pending quads and saves and
+     * restores the tracked translation.
+     */
+    public void testTransform ()
+    {
+        _batch.translate(5f, 5f);
+        addQuads(null, 1);
+        _batch.pushTransform();
+        assertEquals(1, _backend.getDrawCount());
+
+        // quads within the transform aren't offset by the outer translation
+        _batch.add(1f, 1f, 2f, 2f, 1f, 1f, 1f, 1f);
+        _batch.popTransform();
+        assertEquals(2, _backend.getDrawCount());
+        assertEquals(1f, _backend.getDraws().get(1).data[0], 0f);
+
+        // nothing pending means nothing to draw
+        _batch.pushTransform();
+        _batch.popTransform();
+        assertEquals(2, _backend.getDrawCount());
+
+        // the outer translation is restored; nest deeply enough to grow the stack
+        for (int ii = 0; ii < 20; ii++) {
+            _batch.translate(1f, 0f);
+            _batch.pushTransform();
+        }
+        for (int ii = 0; ii < 20; ii++) {
+            _batch.popTransform();
+            _batch.translate(-1f, 0f);
+        }
+        _batch.add(1f, 1f, 2f, 2f, 1f, 1f, 1f, 1f);
+        _batch.translate(-5f, -5f);
+        _batch.flush();
+        assertEquals(3, _backend.getDrawCount());
+        assertEquals(6f, _backend.getDraws().get(2).data[0], 0f);
+        assertEquals(6f, _backend.getDraws().get(2).data[1], 0f);
+    }
+
+    /**
+     * Verifies that the renderer draws the pending quads before changing any state.  The
+     * requested states match the renderer's defaults, so no OpenGL context is required.
+     */
+    public void testStateChange ()
+    {
+        Renderer renderer = new Renderer();
+        renderer.setQuadBatch(_batch);
+        assertSame(_batch, renderer.getQuadBatch());
+
+        addQuads(null, 3);
+        renderer.setColorState(1f, 1f, 1f, 1f);
+        assertEquals(1, _backend.getDrawCount());
+        renderer.setColorState(1f, 1f, 1f, 1f);
+        assertEquals(1, _backend.getDrawCount());
+
+        addQuads(null, 1);
+        renderer.setMatrixMode(GL11.GL_MODELVIEW);
+        assertEquals(2, _backend.getDrawCount());
+
+        addQuads(null, 1);
+        renderer.setLineState(1f);
+        assertEquals(3, _backend.getDrawCount());
+
+        addQuads(null, 1);
+        renderer.setFrontFace(GL11.GL_CCW);
+        assertEquals(4, _backend.getDrawCount());
+
+        // replacing the batch draws the old one
+        addQuads(null, 2);
+        renderer.setQuadBatch(new QuadBatch(new RecordingBackend(false)));
+        assertEquals(5, _backend.getDrawCount());
+        assertEquals(8, _backend.getQuadCount());
+    }
+
+    /**
+     * Adds the specified number of unit quads.
+     */
+    protected void addQuads (TextureUnit[] units, int count)
+    {
+        for (int ii = 0; ii < count; ii++) {
+            _batch.add(units, ii, 0f, ii + 1f, 1f, 0f, 0f, 1f, 1f, 1f, 1f, 1f, 1f);
+        }
+    }
+
+    /**
+     * Checks the units and quad count of a draw.
+     */
+    protected void assertDraw (RecordingBackend.Draw draw, TextureUnit[] units, int quads)
+    {
+        assertSame(units, draw.units);
+        assertEquals(quads, draw.quads);
+        assertEquals(quads * QuadBatch.QUAD_SIZE, draw.data.length);
+    }
+
+    /** The backend recording the draws. */
+    protected RecordingBackend _backend;
+
+    /** The batch under test. */
+    protected QuadBatch _batch;
+
+    /** The capacity of the batch. */
+    protected static final int CAPACITY = 8;
+}
@@ -0,0 +1,303 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.data;
+
+import java.io.InputStream;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import junit.framework.TestCase;
+
+import com.threerings.config.ConfigGroup;
+import com.threerings.config.ConfigManager;
+import com.threerings.config.ConfigReference;
+import com.threerings.math.Vector2f;
+
+import com.threerings.tudey.config.TileConfig;
+import com.threerings.tudey.data.TudeySceneModel.AreaEntry;
+import com.threerings.tudey.data.TudeySceneModel.Entry;
+import com.threerings.tudey.data.TudeySceneModel.SharedData;
+import com.threerings.tudey.data.TudeySceneModel.TileEntry;
+import com.threerings.tudey.data.TudeySceneModel.Vertex;
+import com.threerings.tudey.data.actor.Actor;
+import com.threerings.tudey.shape.Circle;
+import com.threerings.tudey.shape.Segment;
+import com.threerings.tudey.shape.Shape;
+
+/**
+ * Tests the sharing of derived data between scene models with the same content.
+ */
+public class SharedDerivedDataTest extends TestCase
+{
+    public SharedDerivedDataTest (String name)
+    {
+        super(name);
+    }
+
+    @Override
+    public void setUp ()
+    {
+        _cfgmgr = new TestConfigManager();
+        for (int ii = 0; ii < TILE_FLAGS.length; ii++) {
+            TileConfig config = new TileConfig();
+            config.setName("tile" + ii);
+            TileConfig.Original original = new TileConfig.Original();
+            original.collisionFlags = new int[][] { { TILE_FLAGS[ii][0] } };
+            original.directionFlags = new int[][] { { TILE_FLAGS[ii][1] } };
+            config.implementation = original;
+            _cfgmgr.addConfig(config);
+        }
+
+        // use a fixed seed so that our results are reproducible
+        _random = new Random(1199325877849L);
+        _template = createModel();
+    }
+
+    /**
+     * Verifies that models sharing their derived data answer queries exactly as a model that
+     * computed its own.
+     */
+    public void testQueries ()
+    {
+        TudeySceneModel first = _template.clone(), second = _template.clone();
+        TudeySceneModel unshared = _template.clone();
+        SharedData shared = first.init(_cfgmgr, (SharedData)null);
+        assertSame(shared, second.init(_cfgmgr, shared));
+        unshared.init(_cfgmgr);
+        assertTrue(first.isSharingDerivedData());
+        assertTrue(second.isSharingDerivedData());
+        assertFalse(unshared.isSharingDerivedData());
+
+        // alternate between the sharing models so that they use each other's scratch state
+        for (int ii = 0; ii < 2000; ii++) {
+            compareQueries(ii % 2 == 0 ? first : second, unshared);
+        }
+    }
+
+    /**
+     * Verifies that a model stops sharing when it's modified and that the modification doesn't
+     * affect the model with which it shared.
+     */
+    public void testCopyOnWrite ()
+    {
+        TudeySceneModel first = _template.clone(), second = _template.clone();
+        TudeySceneModel unshared = _template.clone(), modified = _template.clone();
+        SharedData shared = first.init(_cfgmgr, (SharedData)null);
+        second.init(_cfgmgr, shared);
+        unshared.init(_cfgmgr);
+        modified.init(_cfgmgr);
+
+        // make the same changes to one of the sharing models and one of the unshared ones
+        for (int ii = 0; ii < 20; ii++) {
+            Object key = Lists.newArrayList(second.getEntries()).get(
+                _random.nextInt(second.getEntries().size())).getKey();
+            second.removeEntry(key);
+            modified.removeEntry(key);
+        }
+        TileEntry tentry = createTile(SIZE + 1, SIZE + 1);
+        second.addEntry((TileEntry)tentry.clone());
+        modified.addEntry((TileEntry)tentry.clone());
+        assertTrue(first.isSharingDerivedData());
+        assertFalse(second.isSharingDerivedData());
+
+        for (int ii = 0; ii < 1000; ii++) {
+            compareQueries(first, unshared);
+            compareQueries(second, modified);
+        }
+    }
+
+    /**
+     * Compares the results of a random query on the two models.
+     */
+    protected void compareQueries (TudeySceneModel model, TudeySceneModel expected)
+    {
+        Shape shape = createShape();
+        int mask = 1 << _random.nextInt(3);
+        _actor.mask = mask;
+        assertEquals(expected.collides(mask, shape), model.collides(mask, shape));
+        assertEquals(expected.collides(_actor, shape), model.collides(_actor, shape));
+        assertEquals(expected.getDirections(_actor, shape), model.getDirections(_actor, shape));
+
+        Vector2f epen = new Vector2f(), pen = new Vector2f();
+        assertEquals(expected.getPenetration(_actor, shape, epen),
+            model.getPenetration(_actor, shape, pen));
+        assertEquals(epen, pen);
+
+        // the entries returned by the shared structures may belong to another model, so we
+        // compare their keys
+        List<Entry> eresults = Lists.newArrayList(), results = Lists.newArrayList();
+        expected.getEntries(shape, eresults);
+        model.getEntries(shape, results);
+        assertEquals(getKeys(eresults), getKeys(results));
+    }
+
+    /**
+     * Creates a model containing random tiles and areas.
+     */
+    protected TudeySceneModel createModel ()
+    {
+        TudeySceneModel model = new TudeySceneModel();
+        model.init(_cfgmgr);
+        for (int yy = 0; yy < SIZE; yy++) {
+            for (int xx = 0; xx < SIZE; xx++) {
+                if (_random.nextInt(8) != 0) {
+                    model.addEntry(createTile(xx, yy));
+                }
+            }
+        }
+        for (int ii = 0; ii < 50; ii++) {
+            AreaEntry entry = new AreaEntry();
+            entry.vertices = new Vertex[1 + _random.nextInt(4)];
+            float x = _random.nextFloat() * SIZE, y = _random.nextFloat() * SIZE;
+            for (int jj = 0; jj < entry.vertices.length; jj++) {
+                entry.vertices[jj] = new Vertex();
+                entry.vertices[jj].set(
+                    x + _random.nextFloat() * 4f, y + _random.nextFloat() * 4f, 0f);
+            }
+            model.addEntry(entry);
+        }
+        return model;
+    }
+
+    /**
+     * Creates a tile entry at the specified location using a random configuration.
+     */
+    protected TileEntry createTile (int x, int y)
+    {
+        TileEntry entry = new TileEntry();
+        entry.tile = new ConfigReference<TileConfig>("tile" + _random.nextInt(TILE_FLAGS.length));
+        entry.rotation = _random.nextInt(4);
+        entry.getLocation().set(x, y);
+        return entry;
+    }
+
+    /**
+     * Creates a random query shape within (or near) the bounds of the scene.
+     */
+    protected Shape createShape ()
+    {
+        Vector2f center = new Vector2f(
+            _random.nextFloat() * (SIZE + 4) - 2f, _random.nextFloat() * (SIZE + 4) - 2f);
+        if (_random.nextBoolean()) {
+            return new Circle(center, 0.1f + _random.nextFloat() * 2f);
+        }
+        return new Segment(center, center.add(
+            _random.nextFloat() * 8f - 4f, _random.nextFloat() * 8f - 4f));
+    }
+
+    /**
+     * Returns the set of keys of the supplied entries.
+     */
+    protected static Set<Object> getKeys (List<Entry> entries)
+    {
+        Set<Object> keys = Sets.newHashSet();
+        for (Entry entry : entries) {
+            keys.add(entry.getKey());
+        }
+        return keys;
+    }
+
+    /**
+     * A config manager that requires no resources.
+     */
+    protected static class TestConfigManager extends ConfigManager
+    {
+        public TestConfigManager ()
+        {
+            super(null, null, "config/");
+            init();
+        }
+
+        public void addConfig (TileConfig config)
+        {
+            ConfigGroup<TileConfig> group = getGroup(TileConfig.class);
+            if (group == null) {
+                _groups.put(TileConfig.class, group = new ConfigGroup<TileConfig>(
+                        TileConfig.class) {
+                    @Override
+                    protected InputStream getConfigStream (String path) {
+                        return null;
+                    }
+                });
+                group.init(this);
+            }
+            group.addConfig(config);
+        }
+
+        @Override
+        protected void loadManagerProperties ()
+        {
+            _classes = new HashMap<String, Class<?>[]>();
+            _classes.put("resource", new Class<?>[0]);
+        }
+    }
+
+    /**
+     * An actor whose collision mask may be set directly and that is affected by directions.
+     */
+    protected static class TestActor extends Actor
+    {
+        /** The actor's collision mask. */
+        public int mask;
+
+        @Override
+        public int getCollisionMask ()
+        {
+            return mask;
+        }
+
+        @Override
+        public boolean directionAffected ()
+        {
+            return true;
+        }
+    }
+
+    /** The config manager containing the tile configs. */
+    protected TestConfigManager _cfgmgr;
+
+    /** The source of randomness. */
+    protected Random _random;
+
+    /** The model from which the models under test are cloned. */
+    protected TudeySceneModel _template;
+
+    /** The actor used for queries. */
+    protected TestActor _actor = new TestActor();
+
+    /** The width and height of the scenes. */
+    protected static final int SIZE = 32;
+
+    /** The collision and direction flags of each tile config. */
+    protected static final int[][] TILE_FLAGS = {
+        { 0x00, 0x00 }, { 0x01, 0x00 }, { 0x02, 0x00 }, { 0x00, 0x01 }, { 0x04, 0x04 } };
+}
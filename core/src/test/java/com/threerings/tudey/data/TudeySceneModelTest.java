@@ -0,0 +1,335 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import com.google.common.collect.Sets;
+
+import junit.framework.TestCase;
+
+import com.threerings.config.ConfigReference;
+
+import com.threerings.tudey.config.AreaConfig;
+import com.threerings.tudey.config.TileConfig;
+import com.threerings.tudey.data.TudeySceneModel.AreaEntry;
+import com.threerings.tudey.data.TudeySceneModel.Entry;
+import com.threerings.tudey.data.TudeySceneModel.TileEntry;
+import com.threerings.tudey.data.TudeySceneModel.Vertex;
+import com.threerings.tudey.util.CoordIntMap;
+import com.threerings.tudey.util.CoordIntMap.CoordIntEntry;
+
+/**
+ * Tests the {@link TudeySceneModel}'s handling of entry references and stored derived data.
+ */
+public class TudeySceneModelTest extends TestCase
+{
+    public TudeySceneModelTest (String name)
+    {
+        super(name);
+    }
+
+    @Override
+    public void setUp ()
+    {
+        _model = new TudeySceneModel();
+        _model.init(new SharedDerivedDataTest.TestConfigManager());
+    }
+
+    /**
+     * Verifies that entries with equal references share an interned instance, but that the
+     * references supplied by the caller (such as an editor's current reference) stay mutable.
+     */
+    public void testEntryReferences ()
+    {
+        ConfigReference<AreaConfig> ref = createReference();
+        AreaEntry e1 = createEntry(ref), e2 = createEntry(ref);
+        assertTrue(_model.addEntry(e1));
+        assertTrue(_model.addEntry(e2));
+
+        ConfigReference<?> r1 = _model.getEntry(e1.getKey()).getReference();
+        ConfigReference<?> r2 = _model.getEntry(e2.getKey()).getReference();
+        assertSame(r1, r2);
+        assertTrue(r1.isFrozen());
+        assertEquals(ref, r1);
+
+        // the caller's reference can still be modified, without affecting the model
+        assertFalse(ref.isFrozen());
+        ref.getArguments().put("count", 4);
+        assertEquals(createReference(), r1);
+
+        // an entry added with the modified reference gets a different instance
+        AreaEntry e3 = createEntry(ref);
+        assertTrue(_model.addEntry(e3));
+        ConfigReference<?> r3 = _model.getEntry(e3.getKey()).getReference();
+        assertNotSame(r1, r3);
+        assertEquals(ref, r3);
+
+        // updating an entry likewise leaves the supplied reference alone
+        AreaEntry nentry = (AreaEntry)e3.clone();
+        nentry.area = ref;
+        _model.updateEntry(nentry);
+        assertFalse(ref.isFrozen());
+        assertSame(r3, _model.getEntry(e3.getKey()).getReference());
+
+        // clones of the model share the interned instances
+        TudeySceneModel clone = _model.clone();
+        assertSame(r1, clone.getEntry(e1.getKey()).getReference());
+    }
+
+    /**
+     * Verifies that derived data read from a stream matches the data computed from the tiles,
+     * and that it's actually the stored data that's used.
+     */
+    public void testDerivedData ()
+        throws IOException
+    {
+        SharedDerivedDataTest.TestConfigManager cfgmgr = createTileConfigs();
+        TudeySceneModel template = createTileModel(cfgmgr);
+        TudeySceneModel computed = template.clone();
+        computed.init(cfgmgr);
+        assertTrue(computed._tileCoords.size() > 0);
+        assertTrue(computed._tagged.size() > 0);
+        byte[] bytes = writeDerivedData(computed);
+
+        TudeySceneModel read = template.clone();
+        read.init(cfgmgr, new ByteArrayInputStream(bytes));
+        assertDerivedDataEquals(computed, read);
+
+        // change the collision flags of the first cell in the stream to show that they're used
+        ByteBuffer.wrap(bytes).putInt(FIRST_CELL_OFFSET + 3*4, 0x40);
+        read = template.clone();
+        read.init(cfgmgr, new ByteArrayInputStream(bytes));
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        int x = buf.getInt(FIRST_CELL_OFFSET), y = buf.getInt(FIRST_CELL_OFFSET + 4);
+        assertEquals(0x40, read._collisionFlags.get(x, y));
+    }
+
+    /**
+     * Verifies that derived data written before a tile config changed is recomputed.
+     */
+    public void testStaleDerivedData ()
+        throws IOException
+    {
+        SharedDerivedDataTest.TestConfigManager cfgmgr = createTileConfigs();
+        TudeySceneModel template = createTileModel(cfgmgr);
+        TudeySceneModel computed = template.clone();
+        computed.init(cfgmgr);
+        byte[] bytes = writeDerivedData(computed);
+
+        // change one of the configs' flags and tags
+        TileConfig config = cfgmgr.getConfig(TileConfig.class, "tile1");
+        TileConfig.Original original = config.getOriginal(cfgmgr);
+        original.collisionFlags = new int[][] { { 0x08 } };
+        original.tags.tags = new String[] { "changed" };
+        config.wasUpdated();
+
+        TudeySceneModel read = template.clone();
+        read.init(cfgmgr, new ByteArrayInputStream(bytes));
+        TudeySceneModel recomputed = template.clone();
+        recomputed.init(cfgmgr);
+        assertDerivedDataEquals(recomputed, read);
+        assertFalse(recomputed._tagged.get("changed").isEmpty());
+        assertFalse(getTileTags(computed).equals(getTileTags(recomputed)));
+    }
+
+    /**
+     * Verifies that derived data with invalid counts or missing contents is recomputed.
+     */
+    public void testInvalidDerivedData ()
+        throws IOException
+    {
+        SharedDerivedDataTest.TestConfigManager cfgmgr = createTileConfigs();
+        TudeySceneModel template = createTileModel(cfgmgr);
+        TudeySceneModel computed = template.clone();
+        computed.init(cfgmgr);
+        byte[] bytes = writeDerivedData(computed);
+        int tagsOffset = FIRST_CELL_OFFSET + computed._tileCoords.size() * 5*4;
+
+        byte[][] invalid = {
+            setInt(bytes, CELL_COUNT_OFFSET, -1),
+            setInt(bytes, CELL_COUNT_OFFSET, Integer.MAX_VALUE),
+            setInt(bytes, CELL_COUNT_OFFSET, computed._tileCoords.size() + 1),
+            setInt(bytes, tagsOffset, -1),
+            setInt(bytes, tagsOffset, Integer.MAX_VALUE),
+            Arrays.copyOf(bytes, tagsOffset - 3),
+            Arrays.copyOf(bytes, bytes.length - 1) };
+        for (byte[] data : invalid) {
+            TudeySceneModel read = template.clone();
+            read.init(cfgmgr, new ByteArrayInputStream(data));
+            assertDerivedDataEquals(computed, read);
+        }
+    }
+
+    /**
+     * Creates a config manager with tile configs of various sizes, flags, and tags.
+     */
+    protected static SharedDerivedDataTest.TestConfigManager createTileConfigs ()
+    {
+        SharedDerivedDataTest.TestConfigManager cfgmgr =
+            new SharedDerivedDataTest.TestConfigManager();
+        for (int ii = 0; ii < TILE_SIZES.length; ii++) {
+            TileConfig config = new TileConfig();
+            config.setName("tile" + ii);
+            TileConfig.Original original = new TileConfig.Original();
+            original.width = TILE_SIZES[ii][0];
+            original.height = TILE_SIZES[ii][1];
+            original.collisionFlags = new int[][] { { ii }, { 0x01 } };
+            original.directionFlags = new int[][] { { 0x00, ii & 0x03 } };
+            original.tags.tags = new String[ii % 3];
+            for (int jj = 0; jj < original.tags.tags.length; jj++) {
+                original.tags.tags[jj] = "tag" + (ii + jj) % 4;
+            }
+            config.implementation = original;
+            cfgmgr.addConfig(config);
+        }
+        return cfgmgr;
+    }
+
+    /**
+     * Creates a model containing random tiles (each within its own two by two block).
+     */
+    protected static TudeySceneModel createTileModel (
+        SharedDerivedDataTest.TestConfigManager cfgmgr)
+    {
+        // use a fixed seed so that our results are reproducible
+        Random random = new Random(1199325877849L);
+        TudeySceneModel model = new TudeySceneModel();
+        model.init(cfgmgr);
+        for (int yy = 0; yy < 32; yy += 2) {
+            for (int xx = 0; xx < 32; xx += 2) {
+                if (random.nextInt(8) != 0) {
+                    TileEntry entry = new TileEntry();
+                    entry.tile = new ConfigReference<TileConfig>(
+                        "tile" + random.nextInt(TILE_SIZES.length));
+                    entry.rotation = random.nextInt(4);
+                    entry.getLocation().set(xx, yy);
+                    model.addEntry(entry);
+                }
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Writes the derived data of the supplied model to an array.
+     */
+    protected static byte[] writeDerivedData (TudeySceneModel model)
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        model.writeDerivedData(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns a copy of the supplied data with an int replaced.
+     */
+    protected static byte[] setInt (byte[] bytes, int offset, int value)
+    {
+        byte[] copy = bytes.clone();
+        ByteBuffer.wrap(copy).putInt(offset, value);
+        return copy;
+    }
+
+    /**
+     * Verifies that the model's tile shadows and tile tag mappings match the expected ones.
+     */
+    protected static void assertDerivedDataEquals (
+        TudeySceneModel expected, TudeySceneModel model)
+    {
+        assertMapEquals(expected._tileCoords, model._tileCoords);
+        assertMapEquals(expected._collisionFlags, model._collisionFlags);
+        assertMapEquals(expected._directionFlags, model._directionFlags);
+        assertEquals(getTileTags(expected), getTileTags(model));
+    }
+
+    /**
+     * Verifies that the supplied coordinate maps contain the same mappings.
+     */
+    protected static void assertMapEquals (CoordIntMap expected, CoordIntMap map)
+    {
+        assertEquals(expected.size(), map.size());
+        for (CoordIntEntry entry : expected.coordIntEntrySet()) {
+            assertEquals(entry.getIntValue(), map.get(entry.getKey().x, entry.getKey().y));
+        }
+    }
+
+    /**
+     * Returns the tile tag mappings of the supplied model as tag/location strings.
+     */
+    protected static Set<String> getTileTags (TudeySceneModel model)
+    {
+        Set<String> tags = Sets.newHashSet();
+        for (Map.Entry<String, Entry> mapping : model._tagged.entries()) {
+            if (mapping.getValue() instanceof TileEntry) {
+                tags.add(mapping.getKey() + "@" + ((TileEntry)mapping.getValue()).getLocation());
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * Creates a reference to an area config.
+     */
+    protected static ConfigReference<AreaConfig> createReference ()
+    {
+        return new ConfigReference<AreaConfig>("area", "count", 3);
+    }
+
+    /**
+     * Creates an area entry with the supplied reference.
+     */
+    protected static AreaEntry createEntry (ConfigReference<AreaConfig> area)
+    {
+        AreaEntry entry = new AreaEntry();
+        entry.area = area;
+        entry.vertices = new Vertex[] { new Vertex() };
+        return entry;
+    }
+
+    /** The model under test. */
+    protected TudeySceneModel _model;
+
+    /** The widths and heights of the tile configs. */
+    protected static final int[][] TILE_SIZES = { { 1, 1 }, { 2, 1 }, { 2, 2 }, { 1, 2 } };
+
+    /** The offset of the cell count in the derived data (after the magic number, format
+     * version, scene version, and hash). */
+    protected static final int CELL_COUNT_OFFSET = 4 + 2 + 4 + 8;
+
+    /** The offset of the first cell in the derived data. */
+    protected static final int FIRST_CELL_OFFSET = CELL_COUNT_OFFSET + 4;
+}
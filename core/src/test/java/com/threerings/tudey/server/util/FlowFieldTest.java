@@ -0,0 +1,119 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import junit.framework.TestCase;
+
+import com.threerings.math.FloatMath;
+import com.threerings.math.Vector2f;
+
+import com.threerings.media.util.AStarPathUtil;
+
+/**
+ * Tests the {@link FlowField} class.
+ */
+public class FlowFieldTest extends TestCase
+{
+    public FlowFieldTest (String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Verifies that a follower two cells wide, starting against a wall, is led around a ledge
+     * without its shape entering the walls.
+     */
+    public void testWideFollower ()
+    {
+        // the follower is one unit wide (two subdivided cells), and its cells extend one to the
+        // left and below its location, as in the pathfinder's predicate
+        AStarPathUtil.TraversalPred pred = new AStarPathUtil.TraversalPred() {
+            public boolean canTraverse (Object traverser, int x, int y) {
+                for (int yy = y - 1; yy <= y; yy++) {
+                    for (int xx = x - 1; xx <= x; xx++) {
+                        if (isWall(FloatMath.ifloor(xx / (float)Pathfinder.SUBDIVISION),
+                                FloatMath.ifloor(yy / (float)Pathfinder.SUBDIVISION))) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+        };
+        float offset = Pathfinder.getOffset(2);
+        FlowField field = new FlowField(pred, null, 32, offset, offset);
+        field.setTarget(0.5f, 6f);
+
+        // start flush against the wall on the right, below the ledge
+        Vector2f start = new Vector2f(0.5f, 1f);
+        assertFalse(overlapsWall(start));
+        Vector2f direction = new Vector2f();
+        assertTrue(field.getDirection(start.x, start.y, direction));
+
+        Vector2f[] path = field.getPath(start.x, start.y, 100);
+        assertNotNull(path);
+        assertEquals(new Vector2f(0.5f, 6f), path[path.length - 1]);
+        Vector2f previous = start;
+        for (Vector2f waypoint : path) {
+            // sample the segment leading to the waypoint
+            for (int ii = 1; ii <= 10; ii++) {
+                Vector2f point = previous.lerp(waypoint, ii / 10f);
+                assertFalse("Follower enters wall at " + point, overlapsWall(point));
+            }
+            previous = waypoint;
+        }
+    }
+
+    /**
+     * Checks whether the follower's (unit square) shape at the specified location overlaps a
+     * wall.
+     */
+    protected static boolean overlapsWall (Vector2f location)
+    {
+        // allow for rounding error at the edges
+        float epsilon = 0.001f;
+        for (int yy = FloatMath.ifloor(location.y - 0.5f + epsilon),
+                yymax = FloatMath.ifloor(location.y + 0.5f - epsilon); yy <= yymax; yy++) {
+            for (int xx = FloatMath.ifloor(location.x - 0.5f + epsilon),
+                    xxmax = FloatMath.ifloor(location.x + 0.5f - epsilon); xx <= xxmax; xx++) {
+                if (isWall(xx, yy)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines whether the specified (unit) cell is a wall: the cells to the right of x = 1,
+     * those to the left of x = -4, and a ledge extending from the right wall at y = 3 that
+     * leaves a gap of one unit.
+     */
+    protected static boolean isWall (int x, int y)
+    {
+        return x >= 1 || x < -4 || (y == 3 && x >= -3);
+    }
+}
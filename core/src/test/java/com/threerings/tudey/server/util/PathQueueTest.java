@@ -0,0 +1,241 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.threerings.math.Vector2f;
+
+import com.threerings.tudey.data.actor.Actor;
+import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.logic.ActorLogic;
+import com.threerings.tudey.server.logic.PawnLogic;
+import com.threerings.tudey.shape.Point;
+import com.threerings.tudey.shape.Shape;
+
+/**
+ * Tests the {@link PathQueue} class.
+ */
+public class PathQueueTest extends TestCase
+{
+    public PathQueueTest (String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Verifies that an actor far from the clients, replacing its request on every tick as it
+     * moves, is still served within the maximum wait while closer actors saturate the queue.
+     */
+    public void testMovingRequester ()
+    {
+        // each search takes an entire tick's budget
+        PathQueue queue = createQueue(BUDGET);
+        TestLogic[] near = new TestLogic[5];
+        for (int ii = 0; ii < near.length; ii++) {
+            near[ii] = new TestLogic(ii * 2f, 0f);
+        }
+        TestLogic mover = new TestLogic(100f, 0f);
+        TestListener nearListener = new TestListener(), moverListener = new TestListener();
+        int tick = 0;
+        while (moverListener.path == null && tick < 50) {
+            queue.process();
+            tick++;
+            for (TestLogic logic : near) {
+                queue.request(false, logic, 100f, 10f, 10f, true, false, nearListener);
+            }
+            if (moverListener.path == null) {
+                // move into a new region and follow a target that moves along with us
+                Vector2f translation = mover.getTranslation();
+                translation.x += 1.5f;
+                queue.request(false, mover, 100f, translation.x + 10f, 0f, true, false,
+                    moverListener);
+            }
+        }
+        assertTrue(nearListener.count > 0);
+        assertNotNull(moverListener.path);
+
+        // the first request was made on the first tick and served on the last
+        assertTrue("Served after " + (tick - 1) + " ticks", tick - 1 <= MAX_WAIT);
+    }
+
+    /**
+     * Verifies that a search spanning several ticks is not restarted when its requester moves
+     * into a new region, and that the result starts from the requester's current location.
+     */
+    public void testLongSearch ()
+    {
+        PathQueue queue = createQueue(BUDGET * 7 / 2);
+        TestLogic mover = new TestLogic(100f, 0f);
+        TestListener listener = new TestListener();
+        queue.request(false, mover, 100f, 110f, 0f, true, false, listener);
+        int tick = 0;
+        while (listener.path == null && tick < 50) {
+            queue.process();
+            tick++;
+            if (listener.path == null) {
+                Vector2f translation = mover.getTranslation();
+                translation.x += 1.5f;
+                queue.request(false, mover, 100f, translation.x + 10f, 0f, true, false,
+                    listener);
+            }
+        }
+        assertEquals(4, tick);
+        assertEquals(mover.getTranslation(), listener.path[0]);
+    }
+
+    /**
+     * Creates a queue whose searches take the specified number of expansions, with a client
+     * target at the origin.
+     */
+    protected static PathQueue createQueue (final int cost)
+    {
+        final PawnLogic target = new PawnLogic() {
+            @Override public Vector2f getTranslation () {
+                return Vector2f.ZERO;
+            }
+        };
+        TudeySceneManager scenemgr = new TudeySceneManager() {
+            @Override public List<PawnLogic> getClientTargets (List<PawnLogic> result) {
+                result.add(target);
+                return result;
+            }
+        };
+        PathQueue queue = new PathQueue(scenemgr) {
+            @Override protected Task startComputation (Search search) {
+                ActorLogic leader = search.requests.get(0)._logic;
+                return new TestTask(cost, new Vector2f[] {
+                    new Vector2f(leader.getTranslation()), new Vector2f(search.bx, search.by) });
+            }
+        };
+        queue.setExpansionBudget(BUDGET);
+        queue.setMaxWait(MAX_WAIT);
+        return queue;
+    }
+
+    /**
+     * A computation that completes after a fixed number of expansions.
+     */
+    protected static class TestTask
+        implements PathQueue.Task
+    {
+        public TestTask (int cost, Vector2f[] path)
+        {
+            _cost = cost;
+            _path = path;
+        }
+
+        // documentation inherited from interface PathQueue.Task
+        public boolean resume (int budget)
+        {
+            _expansions += Math.min(budget, _cost - _expansions);
+            return _expansions == _cost;
+        }
+
+        // documentation inherited from interface PathQueue.Task
+        public void abort ()
+        {
+            _cost = _expansions;
+        }
+
+        // documentation inherited from interface PathQueue.Task
+        public int getExpansions ()
+        {
+            return _expansions;
+        }
+
+        // documentation inherited from interface PathQueue.Task
+        public Vector2f[] getResult ()
+        {
+            return (_expansions == _cost) ? _path : null;
+        }
+
+        /** The number of expansions required to complete. */
+        protected int _cost;
+
+        /** The number of expansions so far. */
+        protected int _expansions;
+
+        /** The path to return. */
+        protected Vector2f[] _path;
+    }
+
+    /**
+     * A point actor that is never removed.
+     */
+    protected static class TestLogic extends ActorLogic
+    {
+        public TestLogic (float x, float y)
+        {
+            _actor = new Actor() {
+                @Override public int getCollisionMask () {
+                    return 0;
+                }
+            };
+            _actor.getTranslation().set(x, y);
+        }
+
+        @Override
+        public Shape getShape ()
+        {
+            return new Point(getTranslation());
+        }
+
+        @Override
+        public boolean isRemoved ()
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Records the last path computed.
+     */
+    protected static class TestListener
+        implements PathQueue.Listener
+    {
+        /** The last path computed. */
+        public Vector2f[] path;
+
+        /** The number of paths computed. */
+        public int count;
+
+        // documentation inherited from interface PathQueue.Listener
+        public void pathComputed (Vector2f[] path)
+        {
+            this.path = path;
+            count++;
+        }
+    }
+
+    /** The number of expansions per tick. */
+    protected static final int BUDGET = 100;
+
+    /** The maximum number of ticks to wait before promotion. */
+    protected static final int MAX_WAIT = 10;
+}
@@ -0,0 +1,280 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.awt.Point;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.google.common.primitives.Ints;
+
+import com.threerings.media.util.AStarPathUtil;
+
+/**
+ * Tests the {@link PathSearch} class against {@link AStarPathUtil} and an exhaustive search.
+ */
+public class PathSearchTest extends TestCase
+{
+    public PathSearchTest (String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Verifies that both modes of the search, resumed with random budgets, find paths of the
+     * same cost as {@link AStarPathUtil} and the exhaustive search, and that partial paths lead
+     * to the closest reachable cell.
+     */
+    public void testEquivalence ()
+    {
+        // use a fixed seed so that our results are reproducible
+        Random random = new Random(1199325877849L);
+        PathSearch jump = new PathSearch(), plain = new PathSearch(), capped = new PathSearch();
+        plain.setJumpPoints(false);
+        capped.setScanLimit(3);
+        for (int ii = 0; ii < 1000; ii++) {
+            Grid grid = new Grid(random);
+            int ax = random.nextInt(grid.size), ay = random.nextInt(grid.size);
+            int bx = random.nextInt(grid.size), by = random.nextInt(grid.size);
+            if (ax == bx && ay == by) {
+                continue; // the pathfinder handles trivial paths itself
+            }
+            grid.set(ax, ay, true);
+            int longest = random.nextBoolean() ?
+                grid.size * grid.size : 1 + random.nextInt(grid.size * 2);
+            boolean partial = random.nextBoolean();
+            int[] costs = grid.getCosts(ax, ay, longest * PathSearch.ADJACENT_COST);
+            int cost = costs[grid.getIndex(bx, by)];
+
+            List<Point> expected = AStarPathUtil.getPath(
+                grid, null, longest, ax, ay, bx, by, partial);
+            if (cost == -1) {
+                if (!partial) {
+                    assertNull(expected);
+                }
+            } else {
+                assertEquals(cost, grid.getCost(expected));
+            }
+            for (PathSearch search : new PathSearch[] { jump, plain, capped }) {
+                search.init(grid, null, longest, ax, ay, bx, by, partial);
+                PathSearch.Status status;
+                do {
+                    status = search.resume(1 + random.nextInt(8));
+                } while (status == PathSearch.Status.PENDING);
+
+                List<Point> path = search.getPath();
+                if (path != null) {
+                    assertEquals(new Point(ax, ay), path.get(0));
+                }
+                if (cost != -1) {
+                    assertEquals(PathSearch.Status.FOUND, status);
+                    assertEquals(cost, grid.getCost(path));
+                    assertEquals(new Point(bx, by), path.get(path.size() - 1));
+
+                } else if (partial) {
+                    // the path should lead as close to the destination as any reachable cell
+                    assertEquals(PathSearch.Status.PARTIAL, status);
+                    grid.getCost(path);
+                    Point end = path.get(path.size() - 1);
+                    assertEquals(grid.getClosestDistance(costs, bx, by), end.distanceSq(bx, by));
+
+                } else {
+                    assertEquals(PathSearch.Status.FAILED, status);
+                    assertNull(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Verifies that the cells scanned in each expansion are limited (and that the costs don't
+     * overflow) when jumping through open space with no maximum path length.
+     */
+    public void testScanLimit ()
+    {
+        final int[] calls = new int[1];
+        AStarPathUtil.TraversalPred pred = new AStarPathUtil.TraversalPred() {
+            public boolean canTraverse (Object traverser, int x, int y) {
+                calls[0]++;
+                return x != 3 || y < -10 || y > 10;
+            }
+        };
+        PathSearch search = new PathSearch();
+        search.init(pred, null, Integer.MAX_VALUE, 0, 0, 6, 1, false);
+        PathSearch.Status status;
+        do {
+            calls[0] = 0;
+            status = search.resume(1);
+
+            // each cell scanned takes at most five calls, and once the limit is reached, each of
+            // the (at most eight) remaining jumps scans one cell; the start checks eight more
+            assertTrue(calls[0] + " calls", calls[0] <= (search.getScanLimit() + 8) * 5 + 8);
+        } while (status == PathSearch.Status.PENDING);
+        assertEquals(PathSearch.Status.FOUND, status);
+        assertEquals(new Point(6, 1), search.getPath().get(search.getPathLength() - 1));
+    }
+
+    /**
+     * A random grid of traversable and blocked cells.
+     */
+    protected static class Grid
+        implements AStarPathUtil.TraversalPred
+    {
+        /** The width and height of the grid. */
+        public final int size;
+
+        /**
+         * Creates a new random grid.
+         */
+        public Grid (Random random)
+        {
+            size = 5 + random.nextInt(40);
+            _cells = new boolean[size * size];
+            double density = random.nextDouble() * 0.45;
+            for (int ii = 0; ii < _cells.length; ii++) {
+                _cells[ii] = random.nextDouble() >= density;
+            }
+        }
+
+        /**
+         * Sets whether the specified cell is traversable.
+         */
+        public void set (int x, int y, boolean traversable)
+        {
+            _cells[getIndex(x, y)] = traversable;
+        }
+
+        /**
+         * Returns the index of the specified cell.
+         */
+        public int getIndex (int x, int y)
+        {
+            return y*size + x;
+        }
+
+        /**
+         * Computes the cost of the cheapest path from the start to every cell by exhaustive
+         * search.
+         *
+         * @return the costs, indexed by cell, with -1 for cells that cannot be reached within the
+         * maximum cost.
+         */
+        public int[] getCosts (int ax, int ay, int maxCost)
+        {
+            int[] costs = new int[_cells.length];
+            Arrays.fill(costs, -1);
+            costs[getIndex(ax, ay)] = 0;
+            PriorityQueue<int[]> queue = new PriorityQueue<int[]>(11, new Comparator<int[]>() {
+                public int compare (int[] e1, int[] e2) {
+                    return Ints.compare(e1[0], e2[0]);
+                }
+            });
+            queue.add(new int[] { 0, ax, ay });
+            while (!queue.isEmpty()) {
+                int[] entry = queue.poll();
+                int cost = entry[0], x = entry[1], y = entry[2];
+                if (cost > costs[getIndex(x, y)]) {
+                    continue;
+                }
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        if (!canStep(x, y, dx, dy)) {
+                            continue;
+                        }
+                        int ncost = cost + ((dx == 0 || dy == 0) ?
+                            PathSearch.ADJACENT_COST : PathSearch.DIAGONAL_COST);
+                        int idx = getIndex(x + dx, y + dy);
+                        if (ncost <= maxCost && (costs[idx] == -1 || ncost < costs[idx])) {
+                            costs[idx] = ncost;
+                            queue.add(new int[] { ncost, x + dx, y + dy });
+                        }
+                    }
+                }
+            }
+            return costs;
+        }
+
+        /**
+         * Returns the squared distance from the destination of the closest reachable cell.
+         */
+        public double getClosestDistance (int[] costs, int bx, int by)
+        {
+            double closest = Double.MAX_VALUE;
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    if (costs[getIndex(x, y)] != -1) {
+                        closest = Math.min(closest, Point.distanceSq(x, y, bx, by));
+                    }
+                }
+            }
+            return closest;
+        }
+
+        /**
+         * Verifies that the specified path consists of valid steps and returns its cost.
+         */
+        public int getCost (List<Point> path)
+        {
+            assertNotNull(path);
+            assertTrue(canTraverse(null, path.get(0).x, path.get(0).y));
+            int cost = 0;
+            for (int ii = 1, nn = path.size(); ii < nn; ii++) {
+                Point p1 = path.get(ii - 1), p2 = path.get(ii);
+                int dx = p2.x - p1.x, dy = p2.y - p1.y;
+                assertTrue(Math.abs(dx) <= 1 && Math.abs(dy) <= 1);
+                assertTrue(canStep(p1.x, p1.y, dx, dy));
+                cost += (dx == 0 || dy == 0) ? PathSearch.ADJACENT_COST : PathSearch.DIAGONAL_COST;
+            }
+            return cost;
+        }
+
+        // documentation inherited from interface AStarPathUtil.TraversalPred
+        public boolean canTraverse (Object traverser, int x, int y)
+        {
+            return x >= 0 && y >= 0 && x < size && y < size && _cells[getIndex(x, y)];
+        }
+
+        /**
+         * Determines whether a step may be taken in the specified direction from the given cell
+         * (diagonal steps may not cut corners).
+         */
+        protected boolean canStep (int x, int y, int dx, int dy)
+        {
+            return (dx != 0 || dy != 0) && canTraverse(null, x + dx, y + dy) &&
+                (dx == 0 || dy == 0 ||
+                    (canTraverse(null, x + dx, y) && canTraverse(null, x, y + dy)));
+        }
+
+        /** Whether each cell is traversable. */
+        protected boolean[] _cells;
+    }
+}
@@ -0,0 +1,155 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.util;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.threerings.config.ConfigReference;
+import com.threerings.math.Vector2f;
+
+import com.threerings.tudey.config.ActorConfig;
+import com.threerings.tudey.data.actor.Actor;
+import com.threerings.tudey.data.actor.Mobile;
+
+/**
+ * Tests the {@link ActorHistory} class.
+ */
+public class ActorHistoryTest extends TestCase
+{
+    public ActorHistoryTest (String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Verifies that holding unchanged states yields the same results as recording the state at
+     * every update, which is what allows the view to visit only the actors that have changed.
+     */
+    public void testHold ()
+    {
+        // use a fixed seed so that our results are reproducible
+        Random random = new Random(1199325877849L);
+        for (int ii = 0; ii < 50; ii++) {
+            testHold(random, ii % 2 == 0);
+        }
+    }
+
+    /**
+     * Runs a sequence of updates through two histories, one recording every update and the
+     * other only the changes.
+     */
+    protected void testHold (Random random, boolean isStatic)
+    {
+        Actor actor = createActor(random, 0);
+        ActorHistory recorded = new ActorHistory(0, actor, DURATION);
+        ActorHistory held = new ActorHistory(0, actor, DURATION);
+        Actor rresult = createActor(random, 0), hresult = (Actor)rresult.clone();
+        int timestamp = 0;
+        for (int ii = 0; ii < 200; ii++) {
+            int previous = timestamp;
+            timestamp += INTERVAL + random.nextInt(INTERVAL);
+            boolean changed = (random.nextInt(4) == 0);
+            boolean updated = changed && random.nextInt(8) != 0;
+            if (changed) {
+                actor = createActor(random, timestamp);
+                held.hold(previous, !isStatic);
+                held.record(timestamp, actor, updated || !isStatic);
+            }
+            recorded.record(timestamp, actor, updated || !isStatic);
+
+            // sample around the delayed time
+            for (int jj = 0; jj < 4; jj++) {
+                int time = timestamp - DELAY + random.nextInt(DELAY * 2);
+                assertEquals(recorded.get(time, rresult, isStatic),
+                    held.get(time, hresult, isStatic, timestamp));
+                assertState(rresult, hresult);
+            }
+        }
+
+        // remove the actor, holding its state until the last update that contained it
+        held.hold(timestamp, !isStatic);
+        for (int ii = 0; ii < 4; ii++) {
+            int time = timestamp - DELAY + random.nextInt(DELAY * 2);
+            assertEquals(recorded.get(time, rresult, isStatic), held.get(time, hresult, isStatic));
+            assertState(rresult, hresult);
+        }
+    }
+
+    /**
+     * Creates a randomly positioned actor.
+     */
+    protected static Actor createActor (Random random, int timestamp)
+    {
+        Actor actor = new TestMobile(timestamp, new Vector2f(
+            random.nextFloat() * 100f, random.nextFloat() * 100f), random.nextFloat() * 6f);
+        ((Mobile)actor).setDirection(random.nextFloat() * 6f);
+        actor.set(Mobile.MOVING, random.nextBoolean());
+        actor.set(Actor.WARP, random.nextInt(8) == 0);
+        return actor;
+    }
+
+    /**
+     * Asserts that two actor states are identical.
+     */
+    protected static void assertState (Actor expected, Actor actual)
+    {
+        assertEquals(expected.getTranslation(), actual.getTranslation());
+        assertEquals(expected.getRotation(), actual.getRotation());
+    }
+
+    /**
+     * A mobile with a fixed speed, so that it can be extrapolated without a config.
+     */
+    protected static class TestMobile extends Mobile
+    {
+        public TestMobile (int created, Vector2f translation, float rotation)
+        {
+            super(new ConfigReference<ActorConfig>("test/actor"), 1, created,
+                translation, rotation);
+        }
+
+        public TestMobile ()
+        {
+        }
+
+        @Override
+        public float getSpeed ()
+        {
+            return 5f;
+        }
+    }
+
+    /** The interval between updates. */
+    protected static final int INTERVAL = 50;
+
+    /** The delay with which the state is displayed. */
+    protected static final int DELAY = INTERVAL * 2;
+
+    /** The amount of time to retain entries. */
+    protected static final int DURATION = DELAY * 4;
+}
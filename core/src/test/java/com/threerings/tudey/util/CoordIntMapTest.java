@@ -0,0 +1,271 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import com.google.common.base.Charsets;
+
+import com.threerings.export.BinaryExporter;
+import com.threerings.export.BinaryImporter;
+import com.threerings.export.XMLExporter;
+import com.threerings.export.XMLImporter;
+
+/**
+ * Tests the {@link CoordIntMap} class.
+ */
+public class CoordIntMapTest extends TestCase
+{
+    public CoordIntMapTest (String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Verifies that maps exported in binary form by the original (hash map based) implementation
+     * can still be read.
+     */
+    public void testLegacyBinary ()
+        throws IOException
+    {
+        CoordIntMap map = (CoordIntMap)new BinaryImporter(
+            new ByteArrayInputStream(LEGACY_BINARY)).readObject();
+
+        // the map should survive another round trip
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryExporter exporter = new BinaryExporter(out);
+        exporter.writeObject(map);
+        exporter.close();
+        checkLegacyContents(map);
+        checkLegacyContents((CoordIntMap)new BinaryImporter(
+            new ByteArrayInputStream(out.toByteArray())).readObject());
+    }
+
+    /**
+     * Verifies that maps exported in XML form by the original implementation can still be read,
+     * and that the current implementation writes them in the same form.
+     */
+    public void testLegacyXML ()
+        throws IOException
+    {
+        CoordIntMap map = (CoordIntMap)new XMLImporter(
+            new ByteArrayInputStream(LEGACY_XML.getBytes(Charsets.UTF_8))).readObject();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLExporter exporter = new XMLExporter(out);
+        exporter.writeObject(map);
+        exporter.close();
+        assertEquals(LEGACY_XML, new String(out.toByteArray(), Charsets.UTF_8));
+        checkLegacyContents(map);
+    }
+
+    /**
+     * Verifies that removing entries through the iterator (which moves the last cell into the
+     * place of any cell that it empties) visits every entry exactly once.
+     */
+    public void testIteratorRemove ()
+    {
+        // use a fixed seed so that our results are reproducible
+        Random random = new Random(1199325877849L);
+        for (int ii = 0; ii < 200; ii++) {
+            int granularity = 1 + random.nextInt(2);
+            CoordIntMap map = new CoordIntMap(granularity);
+            Map<Coord, Integer> expected = new HashMap<Coord, Integer>();
+            int range = 4 + random.nextInt(16);
+            for (int jj = 0, nn = random.nextInt(100); jj < nn; jj++) {
+                int x = random.nextInt(range) - range/2, y = random.nextInt(range) - range/2;
+                int value = random.nextInt(1000);
+                map.put(x, y, value);
+                expected.put(new Coord(x, y), value);
+            }
+            // remove all of the entries in some cells and a random selection in others
+            int removeCells = random.nextInt(4);
+            Set<Coord> visited = new HashSet<Coord>();
+            for (Iterator<CoordIntMap.CoordIntEntry> it = map.coordIntEntrySet().iterator();
+                    it.hasNext(); ) {
+                CoordIntMap.CoordIntEntry entry = it.next();
+                Coord key = entry.getKey().clone();
+                assertTrue(visited.add(key));
+                assertEquals(expected.get(key).intValue(), entry.getIntValue());
+                int cell = (key.x >> granularity) + (key.y >> granularity);
+                if ((cell & 3) < removeCells || random.nextInt(3) == 0) {
+                    it.remove();
+                    expected.remove(key);
+                }
+            }
+            checkContents(map, expected, range);
+
+            // remove the rest through the iterator
+            visited.clear();
+            for (Iterator<CoordIntMap.CoordIntEntry> it = map.coordIntEntrySet().iterator();
+                    it.hasNext(); ) {
+                assertTrue(visited.add(it.next().getKey().clone()));
+                it.remove();
+            }
+            assertEquals(expected.keySet(), visited);
+            assertTrue(map.isEmpty());
+            checkContents(map, new HashMap<Coord, Integer>(), range);
+        }
+    }
+
+    /**
+     * Verifies that emptying the first of several cells through the iterator still visits the
+     * cell moved into its place.
+     */
+    public void testIteratorCompaction ()
+    {
+        CoordIntMap map = new CoordIntMap(1);
+        map.put(0, 0, 1);
+        map.put(1, 1, 2);
+        map.put(10, 10, 3);
+        map.put(-10, 4, 4);
+        Map<Coord, Integer> expected = new HashMap<Coord, Integer>();
+        expected.put(new Coord(10, 10), 3);
+        expected.put(new Coord(-10, 4), 4);
+
+        Set<Coord> visited = new HashSet<Coord>();
+        for (Iterator<CoordIntMap.CoordIntEntry> it = map.coordIntEntrySet().iterator();
+                it.hasNext(); ) {
+            CoordIntMap.CoordIntEntry entry = it.next();
+            visited.add(entry.getKey().clone());
+            if (entry.getIntValue() <= 2) {
+                it.remove();
+            }
+        }
+        assertEquals(4, visited.size());
+        checkContents(map, expected, 24);
+
+        // the map should remain usable after the cells have moved
+        map.put(0, 1, 5);
+        expected.put(new Coord(0, 1), 5);
+        assertEquals(3, map.remove(10, 10));
+        expected.remove(new Coord(10, 10));
+        checkContents(map, expected, 24);
+    }
+
+    /**
+     * Checks the contents of a map imported from the legacy fixtures (which have a granularity
+     * of one and an empty value of zero), then modifies it.
+     */
+    protected static void checkLegacyContents (CoordIntMap map)
+    {
+        Map<Coord, Integer> expected = new HashMap<Coord, Integer>();
+        expected.put(new Coord(0, 0), 1);
+        expected.put(new Coord(1, 1), 2);
+        expected.put(new Coord(-1, 0), 3);
+        expected.put(new Coord(-3, -5), 4);
+        expected.put(new Coord(100, -100), 5);
+        assertEquals(0, map.get(1, 0)); // the empty value
+        checkContents(map, expected, 256);
+
+        // modifying the imported cells should work as usual
+        assertEquals(0, map.put(0, 1, 6));
+        assertEquals(3, map.remove(-1, 0));
+        assertEquals(0, map.put(7, 7, 7));
+        expected.put(new Coord(0, 1), 6);
+        expected.remove(new Coord(-1, 0));
+        expected.put(new Coord(7, 7), 7);
+        checkContents(map, expected, 256);
+    }
+
+    /**
+     * Checks the contents of the map against the expected entries, looking up every coordinate
+     * within the specified range of the origin.
+     */
+    protected static void checkContents (CoordIntMap map, Map<Coord, Integer> expected, int range)
+    {
+        assertEquals(expected.size(), map.size());
+        int empty = map._empty;
+        for (int y = -range; y <= range; y++) {
+            for (int x = -range; x <= range; x++) {
+                Integer value = expected.get(new Coord(x, y));
+                assertEquals(value == null ? empty : value.intValue(), map.get(x, y));
+            }
+        }
+        Map<Coord, Integer> actual = new HashMap<Coord, Integer>();
+        for (CoordIntMap.CoordIntEntry entry : map.coordIntEntrySet()) {
+            assertNull(actual.put(entry.getKey().clone(), entry.getIntValue()));
+        }
+        assertEquals(expected, actual);
+    }
+
+    /** A map exported by the original implementation with {@link BinaryExporter}. */
+    protected static final byte[] LEGACY_BINARY = {
+        -6, -50, -81, 14, 16, 2, 16, 0, 120, -100, -115, -114, 75, 14, -126, 48, 16, -122, -89,
+        -123, 34, 80, 124, 94, -64, -115, 110, 92, -80, -16, 10, 108, 116, -31, 9, 92, 53, -48, 32,
+        -90, -128, 41, -123, -124, 75, 122, 35, 31, -45, 40, -47, -99, -2, -55, 52, -99, -12, -21,
+        55, 67, 2, 88, -89, 117, 25, -101, -109, -106, 82, 23, 85, -34, -60, -90, -51, 100, 31,
+        -73, -90, 80, 113, 82, -41, 58, -37, 87, -26, 32, 46, -32, 0, 5, -106, 74, -91, -102, 16,
+        -26, 103, -47, -119, 23, -78, 19, -51, 9, -97, 125, 39, 116, 93, 14, -53, 31, 46, 24, -62,
+        34, -40, -4, 53, 119, -107, -32, 72, 74, 8, 120, -32, 117, 66, -75, -78, 25, 3, 61, -18,
+        -55, 8, 37, 46, 22, -127, 79, -88, -49, 31, 24, 123, 13, 34, -4, 18, -66, 25, 27, 103,
+        -128, 56, -57, 99, -117, -40, 53, -78, -52, -8, -51, -80, 47, 15, 76, -84, -25, -114, 117,
+        -101, 90, 102, -10, -27, 25, -30, -110, 57, -16, 92, -117, -86, 85, 66, 23, -90, -9, -20,
+        46, 116, 1, 76, -106, -105, 87, 7, 79, 52, -23, 78, -9 };
+
+    /** The same map, exported by the original implementation with {@link XMLExporter}. */
+    protected static final String LEGACY_XML =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+        "<java class=\"com.threerings.export.XMLImporter\" version=\"1.0\">\n" +
+        "<object class=\"com.threerings.tudey.util.CoordIntMap\" depth=\"0\">\n" +
+        "  <granularity>1</granularity>\n" +
+        "  <empty>0</empty>\n" +
+        "  <cells>\n" +
+        "    <key class=\"com.threerings.tudey.util.Coord\">0, 0</key>\n" +
+        "    <value class=\"com.threerings.tudey.util.CoordIntMap$Cell\">\n" +
+        "      <outer rdepth=\"0\"/>\n" +
+        "      <values>1, 0, 0, 2</values>\n" +
+        "    </value>\n" +
+        "    <key class=\"com.threerings.tudey.util.Coord\">-1, 0</key>\n" +
+        "    <value class=\"com.threerings.tudey.util.CoordIntMap$Cell\">\n" +
+        "      <outer rdepth=\"0\"/>\n" +
+        "      <values>0, 3, 0, 0</values>\n" +
+        "    </value>\n" +
+        "    <key class=\"com.threerings.tudey.util.Coord\">50, -50</key>\n" +
+        "    <value class=\"com.threerings.tudey.util.CoordIntMap$Cell\">\n" +
+        "      <outer rdepth=\"0\"/>\n" +
+        "      <values>5, 0, 0, 0</values>\n" +
+        "    </value>\n" +
+        "    <key class=\"com.threerings.tudey.util.Coord\">-2, -3</key>\n" +
+        "    <value class=\"com.threerings.tudey.util.CoordIntMap$Cell\">\n" +
+        "      <outer rdepth=\"0\"/>\n" +
+        "      <values>0, 0, 0, 4</values>\n" +
+        "    </value>\n" +
+        "  </cells>\n" +
+        "</object>\n" +
+        "</java>\n";
+}
@@ -25,6 +25,9 @@
 
 package com.threerings.util;
 
+import java.lang.reflect.Field;
+
+import java.util.ArrayList;
 import java.util.Arrays;
 
 import junit.framework.TestCase;
@@ -134,6 +137,63 @@ public class DeepUtilTest extends TestCase
         assertEquals(false, DeepUtil.hashCode(c1) == DeepUtil.hashCode(c2));
     }
 
+    public void testCompiledHandler ()
+        throws IllegalAccessException
+    {
+        DeepCompiler.setEnabled(true);
+        assertTrue(DeepUtil.getObjectHandler(Child.class) instanceof
+            DeepCompiler.CompiledObjectHandler);
+
+        // the compiled and reflective handlers should agree on every operation
+        @SuppressWarnings("unchecked") DeepUtil.ObjectHandler<Object> compiled =
+            (DeepUtil.ObjectHandler<Object>)DeepCompiler.createHandler(Mixed.class);
+        assertTrue(compiled instanceof DeepCompiler.CompiledObjectHandler);
+        assertSame(compiled.getClass(), DeepCompiler.createHandler(Mixed.class).getClass());
+        DeepUtil.ObjectHandler<Object> reflective =
+            new DeepUtil.ReflectiveObjectHandler(Mixed.class);
+        Mixed m1 = new Mixed(), m2 = new Mixed();
+        assertEquals(reflective.hashCode(m1), compiled.hashCode(m1));
+        assertEquals(true, compiled.equals(m1, m2));
+        for (int ii = 0; ii < 20; ii++) {
+            m1.randomize();
+            assertEquals(reflective.hashCode(m1), compiled.hashCode(m1));
+            assertEquals(reflective.equals(m1, m2), compiled.equals(m1, m2));
+
+            Mixed c1 = (Mixed)compiled.copy(m1, null, null);
+            Mixed c2 = (Mixed)reflective.copy(m1, null, null);
+            assertEquals(true, reflective.equals(c1, c2));
+            assertEquals(true, compiled.equals(m1, c1));
+            assertNotSame(m1.other, c1.other);
+            assertNotSame(m1.deep, c1.deep);
+            assertSame(m1.shallow, c1.shallow);
+            assertEquals(0, c1.omitted);
+
+            // copy into an existing object
+            assertSame(m2, compiled.copy(m1, m2, null));
+            assertEquals(true, reflective.equals(m1, m2));
+        }
+
+        // changing any one field should make both handlers report a difference
+        ArrayList<Field> fields = new ArrayList<Field>();
+        DeepUtil.getInstanceFields(Mixed.class, fields);
+        Mixed m3 = new Mixed();
+        for (Field field : fields) {
+            compiled.copy(m1, m2, null);
+            do {
+                m3.randomize();
+                field.set(m2, field.get(m3));
+            } while (reflective.equals(m1, m2));
+            assertEquals(false, compiled.equals(m1, m2));
+            assertEquals(reflective.hashCode(m2), compiled.hashCode(m2));
+        }
+
+        // shallow fields compare by identity
+        compiled.copy(m1, m2, null);
+        m2.shallow = m1.shallow.clone();
+        assertEquals(false, compiled.equals(m1, m2));
+        assertEquals(reflective.equals(m1, m2), compiled.equals(m1, m2));
+    }
+
     protected abstract class Parent
     {
         public byte v1;
@@ -192,6 +252,57 @@ public class DeepUtilTest extends TestCase
         }
     }
 
+    protected static class Mixed
+    {
+        public boolean z;
+        public byte b;
+        public char c;
+        public double d;
+        public float f;
+        public int i;
+        public long j;
+        public short s;
+        public volatile int v;
+        public String str;
+        public int[] array;
+        public Other other = new Other();
+
+        @Deep
+        public Other deep = new Other();
+
+        @Shallow
+        public int[] shallow;
+
+        @DeepOmit
+        public int omitted;
+
+        protected float prot;
+        private long priv;
+        public final int[] fin = new int[2];
+
+        public void randomize ()
+        {
+            z = RandomUtil.rand.nextBoolean();
+            b = (byte)RandomUtil.rand.nextInt();
+            c = (char)RandomUtil.rand.nextInt();
+            d = RandomUtil.rand.nextDouble();
+            f = RandomUtil.rand.nextFloat();
+            i = RandomUtil.rand.nextInt();
+            j = RandomUtil.rand.nextLong();
+            s = (short)RandomUtil.rand.nextInt();
+            v = RandomUtil.rand.nextInt();
+            str = RandomUtil.rand.nextBoolean() ? null : String.valueOf(RandomUtil.rand.nextInt());
+            array = new int[] { RandomUtil.rand.nextInt(), RandomUtil.rand.nextInt() };
+            other.randomize();
+            deep.randomize();
+            shallow = new int[] { RandomUtil.rand.nextInt() };
+            omitted = RandomUtil.rand.nextInt();
+            prot = RandomUtil.rand.nextFloat();
+            priv = RandomUtil.rand.nextLong();
+            fin[0] = RandomUtil.rand.nextInt();
+        }
+    }
+
     protected static class Other
     {
         public float v1;
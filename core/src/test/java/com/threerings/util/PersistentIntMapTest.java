@@ -0,0 +1,127 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.util;
+
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Tests the {@link PersistentIntMap} class.
+ */
+public class PersistentIntMapTest extends TestCase
+{
+    public PersistentIntMapTest (String name)
+    {
+        super(name);
+    }
+
+    public void testOperations ()
+    {
+        // use a fixed seed so that our results are reproducible
+        Random random = new Random(1199325877849L);
+        for (int ii = 0; ii < 20; ii++) {
+            // alternate between dense and sparse keys
+            int range = (ii % 2 == 0) ? 100 : Integer.MAX_VALUE;
+            PersistentIntMap<Object> map = new PersistentIntMap<Object>();
+            Map<Integer, Object> expected = Maps.newHashMap();
+            for (int jj = 0; jj < 2000; jj++) {
+                PersistentIntMap<Object> omap = map;
+                Map<Integer, Object> oexpected = Maps.newHashMap(expected);
+                int key = random.nextInt(range) - range/4;
+                if (random.nextInt(3) == 0) {
+                    map = map.remove(key);
+                    expected.remove(key);
+                } else {
+                    Object value = new Object();
+                    map = map.put(key, value);
+                    expected.put(key, value);
+                }
+                assertEquals(expected.size(), map.size());
+                assertEquals(oexpected.size(), omap.size());
+                assertDiff(oexpected, omap, map, expected);
+            }
+            for (Map.Entry<Integer, Object> entry : expected.entrySet()) {
+                assertTrue(map.containsKey(entry.getKey()));
+                assertSame(entry.getValue(), map.get(entry.getKey()));
+            }
+            int count = 0;
+            for (Object value : map) {
+                assertTrue(expected.containsValue(value));
+                count++;
+            }
+            assertEquals(expected.size(), count);
+        }
+    }
+
+    public void testSharing ()
+    {
+        PersistentIntMap<Object> map = new PersistentIntMap<Object>();
+        Object value = new Object();
+        for (int ii = 0; ii < 1000; ii++) {
+            map = map.put(ii, value);
+        }
+        assertSame(map, map.put(500, value));
+        assertSame(map, map.remove(1000));
+
+        // maps with the same contents have the same structure regardless of history
+        PersistentIntMap<Object> other = new PersistentIntMap<Object>();
+        for (int ii = 1499; ii >= 0; ii--) {
+            other = other.put(ii, value);
+        }
+        for (int ii = 1000; ii < 1500; ii++) {
+            other = other.remove(ii);
+        }
+        assertDiff(Maps.<Integer, Object>newHashMap(), map, other,
+            Maps.<Integer, Object>newHashMap());
+    }
+
+    /**
+     * Verifies that applying the differences between the maps to the old contents yields the new.
+     */
+    protected static void assertDiff (
+        final Map<Integer, Object> ocontents, PersistentIntMap<Object> omap,
+        PersistentIntMap<Object> nmap, Map<Integer, Object> ncontents)
+    {
+        PersistentIntMap.diff(omap, nmap, new PersistentIntMap.Visitor<Object>() {
+            public void entryAdded (int key, Object value) {
+                assertFalse(ocontents.containsKey(key));
+                ocontents.put(key, value);
+            }
+            public void entryUpdated (int key, Object ovalue, Object nvalue) {
+                assertNotSame(ovalue, nvalue);
+                assertSame(ovalue, ocontents.put(key, nvalue));
+            }
+            public void entryRemoved (int key, Object value) {
+                assertSame(value, ocontents.remove(key));
+            }
+        });
+        assertEquals(ncontents, ocontents);
+    }
+}